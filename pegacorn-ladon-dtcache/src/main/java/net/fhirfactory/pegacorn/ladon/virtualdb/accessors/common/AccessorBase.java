@@ -30,6 +30,7 @@ import net.fhirfactory.pegacorn.ladon.model.virtualdb.operations.VirtualDBMethod
 import net.fhirfactory.pegacorn.ladon.model.virtualdb.operations.VirtualDBMethodOutcomeFactory;
 import net.fhirfactory.pegacorn.ladon.model.virtualdb.searches.SearchNameEnum;
 import net.fhirfactory.pegacorn.ladon.virtualdb.audit.VirtualDBAuditEntryManager;
+import net.fhirfactory.pegacorn.ladon.virtualdb.audit.VirtualDBAuditTransaction;
 import net.fhirfactory.pegacorn.ladon.model.virtualdb.businesskey.VirtualDBKeyManagement;
 import net.fhirfactory.pegacorn.ladon.virtualdb.engine.common.ResourceDBEngine;
 import org.hl7.fhir.r4.model.*;
@@ -41,7 +42,6 @@ import net.fhirfactory.pegacorn.common.model.RDN;
 import net.fhirfactory.pegacorn.datasets.fhir.r4.internal.topics.FHIRElementTopicIDBuilder;
 import net.fhirfactory.pegacorn.deployment.topology.manager.DeploymentTopologyIM;
 import net.fhirfactory.pegacorn.ladon.processingplant.LadonProcessingPlant;
-import net.fhirfactory.pegacorn.petasos.audit.model.PetasosParcelAuditTrailEntry;
 import net.fhirfactory.pegacorn.petasos.model.topology.NodeElement;
 import net.fhirfactory.pegacorn.petasos.model.topology.NodeElementFunctionToken;
 import net.fhirfactory.pegacorn.petasos.model.topology.NodeElementIdentifier;
@@ -136,7 +136,7 @@ abstract public class AccessorBase {
      * @param action
      * @return
      */
-    protected PetasosParcelAuditTrailEntry beginTransaction(Map<Property, Serializable> parameterSet, VirtualDBActionTypeEnum action){
+    protected VirtualDBAuditTransaction beginTransaction(Map<Property, Serializable> parameterSet, VirtualDBActionTypeEnum action){
         String searchSummary = "Search Criteria(";
         Set<Property> propertySet = parameterSet.keySet();
         if(propertySet.isEmpty()){
@@ -151,7 +151,7 @@ abstract public class AccessorBase {
             }
             searchSummary = searchSummary + ")";
         }
-        PetasosParcelAuditTrailEntry parcelEntry = auditEntryManager.beginTransaction(searchSummary, getResourceTypeName(), null, action, this.accessorIdentifier, this.version );
+        VirtualDBAuditTransaction parcelEntry = auditEntryManager.beginTransaction(searchSummary, getResourceTypeName(), null, action, this.accessorIdentifier, this.version );
         return(parcelEntry);
     }
 
@@ -162,9 +162,9 @@ abstract public class AccessorBase {
      * @param action
      * @return
      */
-    protected PetasosParcelAuditTrailEntry beginTransaction(Identifier resourceIdentifier, Resource fhirResource, VirtualDBActionTypeEnum action){
+    protected VirtualDBAuditTransaction beginTransaction(Identifier resourceIdentifier, Resource fhirResource, VirtualDBActionTypeEnum action){
         String resourceKey = virtualDBKeyManagement.generatePrintableInformationFromIdentifier(resourceIdentifier);
-        PetasosParcelAuditTrailEntry parcelEntry = auditEntryManager.beginTransaction(resourceKey, getResourceTypeName(), fhirResource, action, this.accessorIdentifier, this.version );
+        VirtualDBAuditTransaction parcelEntry = auditEntryManager.beginTransaction(resourceKey, getResourceTypeName(), fhirResource, action, this.accessorIdentifier, this.version );
         return(parcelEntry);
     }
 
@@ -175,9 +175,9 @@ abstract public class AccessorBase {
      * @param action
      * @return
      */
-    protected PetasosParcelAuditTrailEntry beginTransaction(IdType id, Resource fhirResource, VirtualDBActionTypeEnum action){
+    protected VirtualDBAuditTransaction beginTransaction(IdType id, Resource fhirResource, VirtualDBActionTypeEnum action){
         String resourceKey = id.asStringValue();
-        PetasosParcelAuditTrailEntry parcelEntry = auditEntryManager.beginTransaction(resourceKey, getResourceTypeName(),  fhirResource, action, this.accessorIdentifier, this.version );
+        VirtualDBAuditTransaction parcelEntry = auditEntryManager.beginTransaction(resourceKey, getResourceTypeName(),  fhirResource, action, this.accessorIdentifier, this.version );
         return(parcelEntry);
     }
 
@@ -189,7 +189,7 @@ abstract public class AccessorBase {
      * @param success
      * @param startingTransaction
      */
-    protected void endTransaction(Identifier resourceIdentifier, Resource fhirResource, VirtualDBActionTypeEnum action, boolean success, PetasosParcelAuditTrailEntry startingTransaction){
+    protected void endTransaction(Identifier resourceIdentifier, Resource fhirResource, VirtualDBActionTypeEnum action, boolean success, VirtualDBAuditTransaction startingTransaction){
         String resourceKey = resourceIdentifier.toString();
         auditEntryManager.endTransaction(resourceKey, getResourceTypeName(),fhirResource,action,success,startingTransaction,this.accessorIdentifier, this.version);
     }
@@ -202,7 +202,7 @@ abstract public class AccessorBase {
      * @param success
      * @param startingTransaction
      */
-    protected void endSearchTransaction(Bundle resultSet, int returnedResourceCount, VirtualDBActionTypeEnum action, boolean success, PetasosParcelAuditTrailEntry startingTransaction){
+    protected void endSearchTransaction(Bundle resultSet, int returnedResourceCount, VirtualDBActionTypeEnum action, boolean success, VirtualDBAuditTransaction startingTransaction){
         String searchAnswerCount = buildSearchResultString(resultSet);
         auditEntryManager.endTransaction(searchAnswerCount, getResourceTypeName(), null,action,success,startingTransaction,this.accessorIdentifier, this.version);
     }
@@ -215,7 +215,7 @@ abstract public class AccessorBase {
      * @param success
      * @param startingTransaction
      */
-    protected void endTransaction(IdType id, Resource fhirResource, VirtualDBActionTypeEnum action, boolean success, PetasosParcelAuditTrailEntry startingTransaction){
+    protected void endTransaction(IdType id, Resource fhirResource, VirtualDBActionTypeEnum action, boolean success, VirtualDBAuditTransaction startingTransaction){
         String resourceKey = id.asStringValue();
         auditEntryManager.endTransaction(resourceKey, getResourceTypeName(), fhirResource,action,success,startingTransaction,this.accessorIdentifier, this.version);
     }
@@ -269,7 +269,7 @@ abstract public class AccessorBase {
 
     public VirtualDBMethodOutcome getResource(IdType id) {
         getLogger().debug(".getResource(): Entry, id (IdType) --> {}", id);
-        PetasosParcelAuditTrailEntry currentTransaction = this.beginTransaction(id, null, VirtualDBActionTypeEnum.REVIEW);
+        VirtualDBAuditTransaction currentTransaction = this.beginTransaction(id, null, VirtualDBActionTypeEnum.REVIEW);
         VirtualDBMethodOutcome outcome = getResourceDBEngine().getResource(id);
         if(outcome.getStatusEnum() == VirtualDBActionStatusEnum.REVIEW_FINISH) {
             this.endTransaction(id, (Resource)outcome.getResource(), VirtualDBActionTypeEnum.REVIEW, true, currentTransaction);
@@ -290,7 +290,7 @@ abstract public class AccessorBase {
     public VirtualDBMethodOutcome createResource(Resource newResource){
         getLogger().debug(".createResource(): Entry, newResource (Resource) --> {}", newResource);
         Identifier bestIdentifier = virtualDBKeyManagement.getBestIdentifier(resolveIdentifierList(newResource));
-        PetasosParcelAuditTrailEntry currentTransaction = this.beginTransaction(bestIdentifier, newResource, VirtualDBActionTypeEnum.CREATE);
+        VirtualDBAuditTransaction currentTransaction = this.beginTransaction(bestIdentifier, newResource, VirtualDBActionTypeEnum.CREATE);
         VirtualDBMethodOutcome outcome = getResourceDBEngine().createResource(newResource);
         if(outcome.getStatusEnum() == VirtualDBActionStatusEnum.CREATION_FINISH) {
             this.endTransaction(bestIdentifier, newResource, VirtualDBActionTypeEnum.CREATE, true, currentTransaction);
@@ -304,7 +304,7 @@ abstract public class AccessorBase {
     public VirtualDBMethodOutcome deleteResource(Resource resourceToRemove){
         getLogger().debug(".deleteResource(): Entry, resourceToRemove --> {}", resourceToRemove);
         Identifier bestIdentifier = virtualDBKeyManagement.getBestIdentifier(resolveIdentifierList(resourceToRemove));
-        PetasosParcelAuditTrailEntry currentTransaction = this.beginTransaction(bestIdentifier, resourceToRemove, VirtualDBActionTypeEnum.DELETE);
+        VirtualDBAuditTransaction currentTransaction = this.beginTransaction(bestIdentifier, resourceToRemove, VirtualDBActionTypeEnum.DELETE);
         VirtualDBMethodOutcome outcome  = getResourceDBEngine().deleteResource(resourceToRemove);
         if(outcome.getStatusEnum() != VirtualDBActionStatusEnum.DELETE_FINISH) {
             this.endTransaction(bestIdentifier, null, VirtualDBActionTypeEnum.DELETE, true, currentTransaction);
@@ -318,7 +318,7 @@ abstract public class AccessorBase {
     public VirtualDBMethodOutcome updateResource(Resource resourceToUpdate){
         getLogger().debug(".updateResource(): Entry, resourceToUpdate --> {}", resourceToUpdate);
         Identifier bestIdentifier = virtualDBKeyManagement.getBestIdentifier(resolveIdentifierList(resourceToUpdate));
-        PetasosParcelAuditTrailEntry currentTransaction = this.beginTransaction(bestIdentifier, resourceToUpdate, VirtualDBActionTypeEnum.UPDATE);
+        VirtualDBAuditTransaction currentTransaction = this.beginTransaction(bestIdentifier, resourceToUpdate, VirtualDBActionTypeEnum.UPDATE);
         VirtualDBMethodOutcome outcome  = getResourceDBEngine().deleteResource(resourceToUpdate);
         if(outcome.getStatusEnum() != VirtualDBActionStatusEnum.UPDATE_FINISH) {
             this.endTransaction(bestIdentifier, resourceToUpdate, VirtualDBActionTypeEnum.UPDATE, true, currentTransaction);
@@ -337,7 +337,7 @@ abstract public class AccessorBase {
      */
     public VirtualDBMethodOutcome searchUsingCriteria(ResourceType resourceType, SearchNameEnum searchName, Map<Property, Serializable> parameterSet) {
         getLogger().debug(".searchUsingCriteria(): Entry, Search Name --> {}, parameterSet --> {}", searchName, parameterSet);
-        PetasosParcelAuditTrailEntry currentTransaction = this.beginTransaction(parameterSet, VirtualDBActionTypeEnum.SEARCH);
+        VirtualDBAuditTransaction currentTransaction = this.beginTransaction(parameterSet, VirtualDBActionTypeEnum.SEARCH);
         VirtualDBMethodOutcome outcome = getResourceDBEngine().getResourcesViaSearchCriteria(resourceType, searchName, parameterSet);
         if(outcome == null){
             endSearchTransaction(null, 0, VirtualDBActionTypeEnum.SEARCH, false, currentTransaction);
@@ -390,7 +390,7 @@ abstract public class AccessorBase {
 
     public VirtualDBMethodOutcome findResourceViaIdentifier(Identifier identifier) {
         getLogger().debug(".findResourceViaIdentifier(): Entry, identifier (Identifier) --> {}", identifier);
-        PetasosParcelAuditTrailEntry currentTransaction = this.beginTransaction(identifier, null, VirtualDBActionTypeEnum.REVIEW);
+        VirtualDBAuditTransaction currentTransaction = this.beginTransaction(identifier, null, VirtualDBActionTypeEnum.REVIEW);
         VirtualDBMethodOutcome outcome = getResourceDBEngine().findResourceViaIdentifier(identifier);
         if(getLogger().isTraceEnabled()) {
             getLogger().trace(".findResourceViaIdentifier(): outcome.id --> {}", outcome.getId());
@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.virtualdb.audit;
+
+/**
+ * What the VirtualDBAuditPublisher does with a new audit record when its (bounded) ring buffer is full.
+ */
+public enum VirtualDBAuditBackpressurePolicyEnum {
+    /**
+     * The calling thread waits until the publisher has made room in the ring buffer.
+     */
+    AUDIT_BACKPRESSURE_BLOCK("ladon.audit.backpressure.block"),
+    /**
+     * The record is discarded and the publisher's dropped-record counter is incremented.
+     */
+    AUDIT_BACKPRESSURE_DROP("ladon.audit.backpressure.drop"),
+    /**
+     * The record is appended to a local spill file, which the publisher replays (in order) once it has caught up.
+     */
+    AUDIT_BACKPRESSURE_SPILL_TO_DISK("ladon.audit.backpressure.spill_to_disk");
+
+    private String backpressurePolicy;
+
+    private VirtualDBAuditBackpressurePolicyEnum(String policy){
+        this.backpressurePolicy = policy;
+    }
+
+    public String getBackpressurePolicy(){
+        return(this.backpressurePolicy);
+    }
+}
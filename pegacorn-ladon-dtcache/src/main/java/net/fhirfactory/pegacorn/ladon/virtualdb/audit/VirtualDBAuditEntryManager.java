@@ -40,14 +40,67 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 
+/**
+ * Builds the VirtualDB audit trail. beginTransaction() and endTransaction() only capture the audit payload and queue
+ * it (via the VirtualDBAuditPublisher) - constructing the UoW and the (blocking) servicesBroker.transactionAuditEntry()
+ * round trip are done, in batches, on the publisher's background thread.
+ *
+ * By default a Resource is audited as its reference, versionId and a content digest (AUDIT_PAYLOAD_DIGEST); the
+ * full body is only captured for the resource types listed in "ladon.audit.payload.fullbody.types", or for the
+ * percentage of transactions given by "ladon.audit.payload.fullbody.sample". Either way the Resource is only
+ * encoded when the record is published.
+ *
+ * If servicesBroker fails, the record (and every record after it) is appended to a local VirtualDBAuditJournal
+ * instead, and forwarded from there - in order - once servicesBroker accepts entries again. Records still in the
+ * journal at shutdown are forwarded after the next start.
+ *
+ * The queue capacity, flush size/interval, backpressure policy, spill directory and journal settings can be set via
+ * the "ladon.audit.*" system properties, or by overriding the specify*() methods.
+ */
 @ApplicationScoped
-public class VirtualDBAuditEntryManager {
+public class VirtualDBAuditEntryManager implements VirtualDBAuditRecordSink {
     private static final Logger LOG = LoggerFactory.getLogger(VirtualDBAuditEntryManager.class);
 
     private static final String FHIR_VERSION = "4.0.1";
+
+    private static final String AUDIT_QUEUE_CAPACITY_PROPERTY = "ladon.audit.queue.capacity";
+    private static final String AUDIT_FLUSH_SIZE_PROPERTY = "ladon.audit.flush.size";
+    private static final String AUDIT_FLUSH_INTERVAL_PROPERTY = "ladon.audit.flush.interval";
+    private static final String AUDIT_BACKPRESSURE_PROPERTY = "ladon.audit.backpressure";
+    private static final String AUDIT_SPILL_DIRECTORY_PROPERTY = "ladon.audit.spill.directory";
+    private static final String AUDIT_JOURNAL_DIRECTORY_PROPERTY = "ladon.audit.journal.directory";
+    private static final String AUDIT_JOURNAL_SEGMENT_SIZE_PROPERTY = "ladon.audit.journal.segment.size";
+    private static final String AUDIT_JOURNAL_ROTATION_INTERVAL_PROPERTY = "ladon.audit.journal.rotation.interval";
+    private static final String AUDIT_JOURNAL_RETRY_INTERVAL_PROPERTY = "ladon.audit.journal.retry.interval";
+    private static final String AUDIT_FULL_BODY_TYPES_PROPERTY = "ladon.audit.payload.fullbody.types";
+    private static final String AUDIT_FULL_BODY_SAMPLE_PROPERTY = "ladon.audit.payload.fullbody.sample";
+    private static final int DEFAULT_AUDIT_QUEUE_CAPACITY = 8192;
+    private static final int DEFAULT_AUDIT_FLUSH_SIZE = 128;
+    private static final long DEFAULT_AUDIT_FLUSH_INTERVAL_IN_MILLIS = 250;
+    private static final long DEFAULT_AUDIT_SHUTDOWN_WAIT_IN_MILLIS = 10000;
+    private static final String DEFAULT_AUDIT_SPILL_DIRECTORY_NAME = "ladon-audit-spill";
+    private static final String DEFAULT_AUDIT_JOURNAL_DIRECTORY_NAME = "ladon-audit-journal";
+    private static final int DEFAULT_AUDIT_JOURNAL_SEGMENT_SIZE = 64 * 1024 * 1024;
+    private static final long DEFAULT_AUDIT_JOURNAL_ROTATION_INTERVAL_IN_MILLIS = 60L * 60L * 1000L;
+    private static final long DEFAULT_AUDIT_JOURNAL_RETRY_INTERVAL_IN_MILLIS = 5000;
+    private static final int MAXIMUM_JOURNAL_FORWARD_BATCHES = 64;
+    private static final double DEFAULT_AUDIT_FULL_BODY_SAMPLE_PERCENTAGE = 0.0;
+    private static final int MAXIMUM_OPEN_TRANSACTIONS = 16384;
     
     @Inject 
     private FHIRContextUtility FHIRContextUtility;
@@ -60,19 +113,181 @@ public class VirtualDBAuditEntryManager {
     @Inject
     private PetasosSTAServicesAuditOnlyBroker servicesBroker;
 
+    private VirtualDBAuditPayloadEncoder payloadEncoder;
+    private Set<String> fullBodyResourceTypes;
+    private double fullBodySamplePercentage;
+    private VirtualDBAuditRecordCodec recordCodec;
+    private VirtualDBAuditJournal auditJournal;
+    private long nextJournalForwardTime;
+    private VirtualDBAuditPublisher auditPublisher;
+    private AtomicLong transactionIdSequence;
+    private Map<Long, PetasosParcelAuditTrailEntry> openTransactions;
+
     @PostConstruct
     protected void initialise() {
         LOG.debug(".initialise(): Entry");
         this.parserR4 = FHIRContextUtility.getJsonParser();
+        this.payloadEncoder = new VirtualDBAuditPayloadEncoder(() -> FHIRContextUtility.getJsonParser());
+        this.fullBodyResourceTypes = specifyFullBodyAuditResourceTypes();
+        this.fullBodySamplePercentage = specifyFullBodyAuditSamplePercentage();
+        // Seeded from the clock, so ids don't collide with those of journalled records from an earlier run
+        this.transactionIdSequence = new AtomicLong(System.currentTimeMillis() * 1000L);
+        this.openTransactions = new LinkedHashMap<Long, PetasosParcelAuditTrailEntry>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, PetasosParcelAuditTrailEntry> eldest) {
+                return(size() > MAXIMUM_OPEN_TRANSACTIONS);
+            }
+        };
+        this.recordCodec = new VirtualDBAuditRecordCodec();
+        try {
+            this.auditJournal = new VirtualDBAuditJournal(specifyAuditJournalDirectory(), specifyAuditJournalSegmentSizeInBytes(),
+                    specifyAuditJournalRotationIntervalInMillis(), recordCodec);
+        } catch (IOException | RuntimeException journalFailure) {
+            LOG.error(".initialise(): Unable to open the audit journal, audit entries will be lost if the audit service fails --> {}", journalFailure.toString());
+            this.auditJournal = null;
+        }
+        this.nextJournalForwardTime = 0;
+        this.auditPublisher = new VirtualDBAuditPublisher(this, specifyAuditQueueCapacity(), specifyAuditFlushSize(),
+                specifyAuditFlushIntervalInMillis(), specifyAuditBackpressurePolicy(), specifyAuditSpillDirectory(), recordCodec);
+        this.auditPublisher.start();
         LOG.debug(".initialise(): Exit");
     }
 
-    public PetasosParcelAuditTrailEntry beginTransaction(String auditStringPayload, String resourceType, Resource fhirResource, VirtualDBActionTypeEnum action, WUPIdentifier wupInstance, String version) {
+    @PreDestroy
+    protected void shutdown() {
+        LOG.debug(".shutdown(): Entry");
+        if(auditPublisher != null) {
+            auditPublisher.shutdown(DEFAULT_AUDIT_SHUTDOWN_WAIT_IN_MILLIS);
+        }
+        if(auditJournal != null) {
+            auditJournal.close();
+        }
+        LOG.debug(".shutdown(): Exit");
+    }
+
+    //
+    // Configuration
+    //
+
+    protected int specifyAuditQueueCapacity(){
+        return(Integer.getInteger(AUDIT_QUEUE_CAPACITY_PROPERTY, DEFAULT_AUDIT_QUEUE_CAPACITY));
+    }
+
+    protected int specifyAuditFlushSize(){
+        return(Integer.getInteger(AUDIT_FLUSH_SIZE_PROPERTY, DEFAULT_AUDIT_FLUSH_SIZE));
+    }
+
+    protected long specifyAuditFlushIntervalInMillis(){
+        return(Long.getLong(AUDIT_FLUSH_INTERVAL_PROPERTY, DEFAULT_AUDIT_FLUSH_INTERVAL_IN_MILLIS));
+    }
+
+    protected VirtualDBAuditBackpressurePolicyEnum specifyAuditBackpressurePolicy(){
+        String configuredPolicy = System.getProperty(AUDIT_BACKPRESSURE_PROPERTY);
+        if(configuredPolicy != null) {
+            for (VirtualDBAuditBackpressurePolicyEnum policy : VirtualDBAuditBackpressurePolicyEnum.values()) {
+                if (policy.name().equalsIgnoreCase(configuredPolicy) || policy.getBackpressurePolicy().equalsIgnoreCase(configuredPolicy)) {
+                    return (policy);
+                }
+            }
+            LOG.warn(".specifyAuditBackpressurePolicy(): Unknown {} value --> {}, using the default", AUDIT_BACKPRESSURE_PROPERTY, configuredPolicy);
+        }
+        return(VirtualDBAuditBackpressurePolicyEnum.AUDIT_BACKPRESSURE_BLOCK);
+    }
+
+    protected File specifyAuditSpillDirectory(){
+        String configuredDirectory = System.getProperty(AUDIT_SPILL_DIRECTORY_PROPERTY);
+        if(configuredDirectory != null){
+            return(new File(configuredDirectory));
+        }
+        return(new File(System.getProperty("java.io.tmpdir"), DEFAULT_AUDIT_SPILL_DIRECTORY_NAME));
+    }
+
+    protected File specifyAuditJournalDirectory(){
+        String configuredDirectory = System.getProperty(AUDIT_JOURNAL_DIRECTORY_PROPERTY);
+        if(configuredDirectory != null){
+            return(new File(configuredDirectory));
+        }
+        return(new File(System.getProperty("java.io.tmpdir"), DEFAULT_AUDIT_JOURNAL_DIRECTORY_NAME));
+    }
+
+    protected int specifyAuditJournalSegmentSizeInBytes(){
+        return(Integer.getInteger(AUDIT_JOURNAL_SEGMENT_SIZE_PROPERTY, DEFAULT_AUDIT_JOURNAL_SEGMENT_SIZE));
+    }
+
+    protected long specifyAuditJournalRotationIntervalInMillis(){
+        return(Long.getLong(AUDIT_JOURNAL_ROTATION_INTERVAL_PROPERTY, DEFAULT_AUDIT_JOURNAL_ROTATION_INTERVAL_IN_MILLIS));
+    }
+
+    /**
+     * How long to wait, after servicesBroker has failed, before trying to forward the journalled records again.
+     */
+    protected long specifyAuditJournalRetryIntervalInMillis(){
+        return(Long.getLong(AUDIT_JOURNAL_RETRY_INTERVAL_PROPERTY, DEFAULT_AUDIT_JOURNAL_RETRY_INTERVAL_IN_MILLIS));
+    }
+
+    /**
+     * The resource types for which every audit entry carries the full (JSON encoded) Resource.
+     */
+    protected Set<String> specifyFullBodyAuditResourceTypes(){
+        Set<String> resourceTypes = new HashSet<>();
+        String configuredTypes = System.getProperty(AUDIT_FULL_BODY_TYPES_PROPERTY);
+        if(configuredTypes != null) {
+            for (String resourceType : configuredTypes.split(",")) {
+                if (!resourceType.trim().isEmpty()) {
+                    resourceTypes.add(resourceType.trim());
+                }
+            }
+        }
+        return(Collections.unmodifiableSet(resourceTypes));
+    }
+
+    /**
+     * The percentage (0 - 100) of the remaining audit transactions that carry the full (JSON encoded) Resource.
+     */
+    protected double specifyFullBodyAuditSamplePercentage(){
+        String configuredPercentage = System.getProperty(AUDIT_FULL_BODY_SAMPLE_PROPERTY);
+        if(configuredPercentage != null) {
+            try {
+                return (Double.parseDouble(configuredPercentage));
+            } catch (NumberFormatException badPercentage) {
+                LOG.warn(".specifyFullBodyAuditSamplePercentage(): Invalid {} value --> {}, using the default", AUDIT_FULL_BODY_SAMPLE_PROPERTY, configuredPercentage);
+            }
+        }
+        return(DEFAULT_AUDIT_FULL_BODY_SAMPLE_PERCENTAGE);
+    }
+
+    protected VirtualDBAuditPayloadModeEnum selectPayloadMode(String resourceType){
+        if(fullBodyResourceTypes.contains(resourceType)){
+            return(VirtualDBAuditPayloadModeEnum.AUDIT_PAYLOAD_FULL_BODY);
+        }
+        if(fullBodySamplePercentage > 0 && ThreadLocalRandom.current().nextDouble(100.0) < fullBodySamplePercentage){
+            return(VirtualDBAuditPayloadModeEnum.AUDIT_PAYLOAD_FULL_BODY);
+        }
+        return(VirtualDBAuditPayloadModeEnum.AUDIT_PAYLOAD_DIGEST);
+    }
+
+    protected VirtualDBAuditPublisher getAuditPublisher(){
+        return(auditPublisher);
+    }
+
+    protected VirtualDBAuditJournal getAuditJournal(){
+        return(auditJournal);
+    }
+
+    //
+    // Caller side: describe the audit payload and queue it
+    //
+
+    public VirtualDBAuditTransaction beginTransaction(String auditStringPayload, String resourceType, Resource fhirResource, VirtualDBActionTypeEnum action, WUPIdentifier wupInstance, String version) {
         LOG.debug(".beginTransaction(): Entry, auditEntryString --> {}, fhriResource --> {}, action --> {}", auditStringPayload, fhirResource, action);
-        LOG.trace(".beginTransaction(): Create the UoW for accessor utilisation");
-        UoWPayload payload = new UoWPayload();
-        boolean encodingFailure = false;
-        String errorString = "";
+        VirtualDBAuditTransaction currentTransaction = new VirtualDBAuditTransaction(transactionIdSequence.incrementAndGet(), action, selectPayloadMode(resourceType));
+        VirtualDBAuditRecord beginRecord = new VirtualDBAuditRecord();
+        beginRecord.setRecordType(VirtualDBAuditRecordTypeEnum.AUDIT_RECORD_BEGIN);
+        beginRecord.setTransactionId(currentTransaction.getTransactionId());
+        beginRecord.setAction(action);
+        beginRecord.setResourceType(resourceType);
+        beginRecord.setResourceVersion(version);
+        beginRecord.setWupInstance(wupInstance);
         String auditTrailPayload = "";
         switch (action) {
             case REVIEW:
@@ -93,60 +308,28 @@ public class VirtualDBAuditEntryManager {
                 break;
         }
         if(fhirResource != null) {
-            LOG.trace(".beginTransaction(): Converting FHIR element into a (JSON) String");
-            String resourceAsString = null;
-            try {
-                LOG.trace(".beginTransaction(): Using IParser --> {}", parserR4);
-                resourceAsString = parserR4.encodeResourceToString(fhirResource);
-                LOG.trace(".beginTransaction(): Add JSON String (encoded FHIR element) to the UoWPayload");
-                String fullPayloadString = auditTrailPayload + resourceAsString;
-                payload.setPayload(fullPayloadString);
-                LOG.trace(".beginTransaction(): Construct a TopicToken to describe the payload & add it to the Payload");
-                TopicToken payloadToken = topicIDBuilder.createTopicToken(resourceType, FHIR_VERSION);
-                payload.setPayloadTopicID(payloadToken);
-            } catch (Exception Ex) {
-                LOG.error(".beginTransaction(): Failed to Encode --> {}", Ex.toString());
-                errorString = Ex.toString();
-                encodingFailure = true;
-            }
-        } else {
-            String fullPayloadString = auditTrailPayload + auditStringPayload;
-            payload.setPayload(fullPayloadString);
-            LOG.trace(".beginTransaction(): Construct a TopicToken to describe the payload & add it to the Payload");
-            TopicToken payloadToken = topicIDBuilder.createTopicToken(resourceType, FHIR_VERSION);
-            payload.setPayloadTopicID(payloadToken);
-        }
-        UoW theUoW;
-        if (encodingFailure) {
-            LOG.trace(".beginTransaction(): Failed to encode incoming content....");
-            payload.setPayload("Error encoding content --> " + errorString);
-            FDN payloadTopicFDN = new FDN();
-            payloadTopicFDN.appendRDN(new RDN(TopicTypeEnum.DATASET_DEFINER.getTopicType(), "AETHER"));
-            payloadTopicFDN.appendRDN(new RDN(TopicTypeEnum.DATASET_CATEGORY.getTopicType(), "DataTypes"));
-            payloadTopicFDN.appendRDN(new RDN(TopicTypeEnum.DATASET_SUBCATEGORY.getTopicType(), "Error"));
-            payloadTopicFDN.appendRDN(new RDN(TopicTypeEnum.DATASET_RESOURCE.getTopicType(), "JSONConversionErrorMessage"));
-            TopicToken newToken = new TopicToken();
-            newToken.setIdentifier(payloadTopicFDN.getToken());
-            newToken.setVersion("1.0.0");
-            payload.setPayloadTopicID(newToken);
-            LOG.trace(".beginTransaction(): Create the UoW with the fhirResource/TopicToken as the Ingres Payload");
-            theUoW = new UoW(payload);
-            theUoW.setProcessingOutcome(UoWProcessingOutcomeEnum.UOW_OUTCOME_FAILED);
+            LOG.trace(".beginTransaction(): Deferring the conversion of the FHIR element, payloadMode --> {}", currentTransaction.getPayloadMode());
+            beginRecord.setDeferredPayload(buildDeferredPayload(auditTrailPayload, fhirResource, currentTransaction.getPayloadMode()));
         } else {
-            LOG.trace(".beginTransaction(): Instantiate the UoW with the fhirResource/TopicToken as the Ingres Payload");
-            theUoW = new UoW(payload);
-            theUoW.setProcessingOutcome(UoWProcessingOutcomeEnum.UOW_OUTCOME_NOTSTARTED);
+            beginRecord.setAuditPayload(auditTrailPayload + auditStringPayload);
         }
-        PetasosParcelAuditTrailEntry currentTransaction = servicesBroker.transactionAuditEntry(wupInstance, action.toString(), theUoW, null);
-        LOG.debug(".beginTransaction(): Exit --> Registration aftermath: currentTransaction (PetasosParcelAuditTrailEntry) --> {}", currentTransaction);
+        auditPublisher.submit(beginRecord);
+        LOG.debug(".beginTransaction(): Exit --> currentTransaction (VirtualDBAuditTransaction) --> {}", currentTransaction);
         return (currentTransaction);
     }
 
-    public void endTransaction(String auditEntryString, String resourceType, Resource fhirResource, VirtualDBActionTypeEnum action, boolean success, PetasosParcelAuditTrailEntry startingTransaction, WUPIdentifier wupInstance, String version) {
+    public void endTransaction(String auditEntryString, String resourceType, Resource fhirResource, VirtualDBActionTypeEnum action, boolean success, VirtualDBAuditTransaction startingTransaction, WUPIdentifier wupInstance, String version) {
         LOG.debug(".endTransaction(): Entry");
-        UoW updatedUoW = startingTransaction.getActualUoW();
-        String auditTrailPayload = null;
+        VirtualDBAuditRecord endRecord = new VirtualDBAuditRecord();
+        endRecord.setRecordType(VirtualDBAuditRecordTypeEnum.AUDIT_RECORD_END);
+        endRecord.setTransactionId(startingTransaction.getTransactionId());
+        endRecord.setAction(action);
+        endRecord.setResourceType(resourceType);
+        endRecord.setResourceVersion(version);
+        endRecord.setWupInstance(wupInstance);
+        endRecord.setSuccess(success);
         if (success) {
+            String auditTrailPayload = null;
             switch (action) {
                 case REVIEW:
                     LOG.trace(".endTransaction(): Successful Review/Get --> Logging the outcome");
@@ -171,24 +354,172 @@ public class VirtualDBAuditEntryManager {
             }
             if(fhirResource != null) {
                 LOG.trace(".endTransaction(): fhirResource.type --> {}", fhirResource.getResourceType());
-                if(parserR4 == null) {LOG.error("Warning Will Robinson!!!!");}
-                auditTrailPayload = auditTrailPayload  + parserR4.encodeResourceToString(fhirResource);
+                endRecord.setDeferredPayload(buildDeferredPayload(auditTrailPayload, fhirResource, startingTransaction.getPayloadMode()));
             } else {
-                auditTrailPayload = auditTrailPayload + auditEntryString;
+                endRecord.setAuditPayload(auditTrailPayload + auditEntryString);
+            }
+        }
+        auditPublisher.submit(endRecord);
+        LOG.debug(".endTransaction(): exit, my work is done!");
+    }
+
+    private Supplier<String> buildDeferredPayload(String auditTrailPayload, Resource fhirResource, VirtualDBAuditPayloadModeEnum payloadMode){
+        return(payloadEncoder.deferEncoding(auditTrailPayload, fhirResource, payloadMode));
+    }
+
+    //
+    // Publisher side: encode the payload, build the UoW and call the audit trail generator
+    //
+
+    @Override
+    public synchronized void publishAuditRecords(List<VirtualDBAuditRecord> auditRecordBatch) {
+        LOG.debug(".publishAuditRecords(): Entry, auditRecordBatch.size() --> {}", auditRecordBatch.size());
+        for(VirtualDBAuditRecord auditRecord: auditRecordBatch){
+            auditRecord.resolvePayload();
+            if(isJournalling()){
+                journalAuditRecord(auditRecord);
+                continue;
+            }
+            try {
+                publishAuditRecord(auditRecord);
+            } catch(RuntimeException publishFailure){
+                if(auditJournal == null){
+                    LOG.error(".publishAuditRecords(): Failed to publish audit record {} --> {}", auditRecord, publishFailure.toString());
+                } else {
+                    LOG.warn(".publishAuditRecords(): Failed to publish audit record, journalling it (and its successors) --> {}", publishFailure.toString());
+                    nextJournalForwardTime = System.currentTimeMillis() + specifyAuditJournalRetryIntervalInMillis();
+                    journalAuditRecord(auditRecord);
+                }
+            }
+        }
+        forwardJournalledRecords();
+        LOG.debug(".publishAuditRecords(): Exit");
+    }
+
+    @Override
+    public synchronized void onPublisherIdle() {
+        forwardJournalledRecords();
+    }
+
+    protected void publishAuditRecord(VirtualDBAuditRecord auditRecord) {
+        switch (auditRecord.getRecordType()) {
+            case AUDIT_RECORD_BEGIN: {
+                PetasosParcelAuditTrailEntry startingTransaction = publishBeginRecord(auditRecord);
+                openTransactions.put(auditRecord.getTransactionId(), startingTransaction);
+                break;
+            }
+            case AUDIT_RECORD_END: {
+                PetasosParcelAuditTrailEntry startingTransaction = openTransactions.get(auditRecord.getTransactionId());
+                if (startingTransaction == null) {
+                    LOG.warn(".publishAuditRecord(): No starting transaction for (end) audit record --> {}", auditRecord);
+                } else {
+                    publishEndRecord(auditRecord, startingTransaction);
+                    openTransactions.remove(auditRecord.getTransactionId());
+                }
+                break;
+            }
+        }
+    }
+
+    private boolean isJournalling(){
+        return(auditJournal != null && auditJournal.hasPendingRecords());
+    }
+
+    private void journalAuditRecord(VirtualDBAuditRecord auditRecord){
+        try {
+            auditJournal.append(auditRecord);
+        } catch(IOException journalFailure){
+            LOG.error(".journalAuditRecord(): Unable to journal audit record {}, it is lost --> {}", auditRecord, journalFailure.toString());
+        }
+    }
+
+    /**
+     * Forwards journalled records to servicesBroker (if the retry interval has passed since it last failed), until
+     * the journal is empty, servicesBroker fails again or MAXIMUM_JOURNAL_FORWARD_BATCHES batches have been sent.
+     */
+    private void forwardJournalledRecords(){
+        if(!isJournalling() || System.currentTimeMillis() < nextJournalForwardTime){
+            return;
+        }
+        LOG.debug(".forwardJournalledRecords(): Entry, pendingCount --> {}", auditJournal.getPendingCount());
+        boolean[] forwardFailed = new boolean[1];
+        try {
+            for(int batch = 0; batch < MAXIMUM_JOURNAL_FORWARD_BATCHES && !forwardFailed[0] && auditJournal.hasPendingRecords(); batch++) {
+                auditJournal.forward(specifyAuditFlushSize(), journalledRecord -> {
+                    try {
+                        publishAuditRecord(journalledRecord);
+                        return (true);
+                    } catch (RuntimeException stillFailing) {
+                        LOG.warn(".forwardJournalledRecords(): Audit service is still failing --> {}", stillFailing.toString());
+                        forwardFailed[0] = true;
+                        return (false);
+                    }
+                });
             }
+        } catch(IOException journalFailure){
+            LOG.error(".forwardJournalledRecords(): Unable to read the audit journal --> {}", journalFailure.toString());
+            forwardFailed[0] = true;
+        }
+        if(forwardFailed[0]){
+            nextJournalForwardTime = System.currentTimeMillis() + specifyAuditJournalRetryIntervalInMillis();
+        }
+        LOG.debug(".forwardJournalledRecords(): Exit, pendingCount --> {}", auditJournal.getPendingCount());
+    }
+
+    protected PetasosParcelAuditTrailEntry publishBeginRecord(VirtualDBAuditRecord beginRecord) {
+        LOG.debug(".publishBeginRecord(): Entry, beginRecord --> {}", beginRecord);
+        LOG.trace(".publishBeginRecord(): Create the UoW for accessor utilisation");
+        UoWPayload payload = new UoWPayload();
+        UoW theUoW;
+        if (beginRecord.hasEncodingFailure()) {
+            LOG.error(".publishBeginRecord(): Failed to Encode --> {}", beginRecord.getEncodingFailure());
+            payload.setPayload("Error encoding content --> " + beginRecord.getEncodingFailure());
+            FDN payloadTopicFDN = new FDN();
+            payloadTopicFDN.appendRDN(new RDN(TopicTypeEnum.DATASET_DEFINER.getTopicType(), "AETHER"));
+            payloadTopicFDN.appendRDN(new RDN(TopicTypeEnum.DATASET_CATEGORY.getTopicType(), "DataTypes"));
+            payloadTopicFDN.appendRDN(new RDN(TopicTypeEnum.DATASET_SUBCATEGORY.getTopicType(), "Error"));
+            payloadTopicFDN.appendRDN(new RDN(TopicTypeEnum.DATASET_RESOURCE.getTopicType(), "JSONConversionErrorMessage"));
+            TopicToken newToken = new TopicToken();
+            newToken.setIdentifier(payloadTopicFDN.getToken());
+            newToken.setVersion("1.0.0");
+            payload.setPayloadTopicID(newToken);
+            LOG.trace(".publishBeginRecord(): Create the UoW with the fhirResource/TopicToken as the Ingres Payload");
+            theUoW = new UoW(payload);
+            theUoW.setProcessingOutcome(UoWProcessingOutcomeEnum.UOW_OUTCOME_FAILED);
+        } else {
+            payload.setPayload(beginRecord.getAuditPayload());
+            LOG.trace(".publishBeginRecord(): Construct a TopicToken to describe the payload & add it to the Payload");
+            TopicToken payloadToken = topicIDBuilder.createTopicToken(beginRecord.getResourceType(), FHIR_VERSION);
+            payload.setPayloadTopicID(payloadToken);
+            LOG.trace(".publishBeginRecord(): Instantiate the UoW with the fhirResource/TopicToken as the Ingres Payload");
+            theUoW = new UoW(payload);
+            theUoW.setProcessingOutcome(UoWProcessingOutcomeEnum.UOW_OUTCOME_NOTSTARTED);
+        }
+        PetasosParcelAuditTrailEntry currentTransaction = servicesBroker.transactionAuditEntry(beginRecord.getWupInstance(), beginRecord.getAction().toString(), theUoW, null);
+        LOG.debug(".publishBeginRecord(): Exit --> Registration aftermath: currentTransaction (PetasosParcelAuditTrailEntry) --> {}", currentTransaction);
+        return (currentTransaction);
+    }
+
+    protected void publishEndRecord(VirtualDBAuditRecord endRecord, PetasosParcelAuditTrailEntry startingTransaction) {
+        LOG.debug(".publishEndRecord(): Entry, endRecord --> {}", endRecord);
+        UoW updatedUoW = startingTransaction.getActualUoW();
+        if (endRecord.isSuccess()) {
             UoWPayload newPayload = new UoWPayload();
-            newPayload.setPayload(auditTrailPayload);
-            TopicToken payloadToken = topicIDBuilder.createTopicToken(resourceType, version);
+            if (endRecord.hasEncodingFailure()) {
+                LOG.error(".publishEndRecord(): Failed to Encode --> {}", endRecord.getEncodingFailure());
+                newPayload.setPayload("Error encoding content --> " + endRecord.getEncodingFailure());
+            } else {
+                newPayload.setPayload(endRecord.getAuditPayload());
+            }
+            TopicToken payloadToken = topicIDBuilder.createTopicToken(endRecord.getResourceType(), endRecord.getResourceVersion());
             newPayload.setPayloadTopicID(payloadToken);
             updatedUoW.getEgressContent().addPayloadElement(newPayload);
             updatedUoW.setProcessingOutcome(UoWProcessingOutcomeEnum.UOW_OUTCOME_SUCCESS);
-            LOG.trace(".endTransaction(): Calling the Audit Trail Generator ");
-            PetasosParcelAuditTrailEntry currentTransaction = servicesBroker.transactionAuditEntry(wupInstance, action.toString(), updatedUoW, startingTransaction);
         } else {
             updatedUoW.setProcessingOutcome(UoWProcessingOutcomeEnum.UOW_OUTCOME_FAILED);
-            LOG.trace(".endTransaction(): Calling the Audit Trail Generator ");
-            PetasosParcelAuditTrailEntry currentTransaction = servicesBroker.transactionAuditEntry(wupInstance, action.toString(), updatedUoW, startingTransaction);
         }
-        LOG.debug(".endTransaction(): exit, my work is done!");
+        LOG.trace(".publishEndRecord(): Calling the Audit Trail Generator ");
+        servicesBroker.transactionAuditEntry(endRecord.getWupInstance(), endRecord.getAction().toString(), updatedUoW, startingTransaction);
+        LOG.debug(".publishEndRecord(): exit, my work is done!");
     }
 }
@@ -0,0 +1,524 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.virtualdb.audit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+import java.util.zip.CRC32;
+
+/**
+ * A local, append-only journal of VirtualDBAuditRecords, used to hold audit entries while the audit service
+ * (servicesBroker) is slow or unavailable.
+ *
+ * The journal is a sequence of fixed-size, memory-mapped segment files ("audit-journal-NNNNNNNNNNNNNNNNNNNN.seg").
+ * Each segment starts with a SEGMENT_HEADER_SIZE byte header, followed by entries of the form
+ * [length:int][crc32:int][entry:length bytes], terminated by a zero length. An entry is either an audit record or the
+ * (serialised) definition of a WUPIdentifier used by the records after it in the same segment. A new segment is
+ * started when the next entry does not fit, or when the active segment is older than the rotation interval.
+ *
+ * A replay cursor (segment number and offset, persisted in "audit-journal.cursor") marks the first record not yet
+ * forwarded; forward() hands records from the cursor onwards to a forwarder until it refuses one. Segments that are
+ * wholly behind the cursor are deleted (compacted away). On opening, the journal scans the remaining segments, so
+ * the records that had not been forwarded when the previous process stopped are replayed. A record whose CRC doesn't
+ * match (e.g. a write torn by a crash) ends its segment.
+ *
+ * Writes go to the page cache via the mapping (so survive the process, but not the host, failing); the segments are
+ * only force()'d on rotation and close.
+ */
+public class VirtualDBAuditJournal implements Closeable {
+    private static final Logger LOG = LoggerFactory.getLogger(VirtualDBAuditJournal.class);
+
+    public static final int SEGMENT_HEADER_SIZE = 32;
+    public static final int ENTRY_HEADER_SIZE = 8;
+
+    private static final int SEGMENT_MAGIC = 0x4C414A31;
+    private static final int SEGMENT_FORMAT_VERSION = 1;
+    private static final byte ENTRY_AUDIT_RECORD = 1;
+    private static final byte ENTRY_WUP_DEFINITION = 2;
+    private static final String SEGMENT_FILE_PREFIX = "audit-journal-";
+    private static final String SEGMENT_FILE_SUFFIX = ".seg";
+    private static final String CURSOR_FILE_NAME = "audit-journal.cursor";
+    private static final int CURSOR_FILE_SIZE = 16;
+
+    private File journalDirectory;
+    private int segmentSizeInBytes;
+    private long rotationIntervalInMillis;
+    private VirtualDBAuditRecordCodec recordCodec;
+    private TreeMap<Long, File> segmentFiles;
+
+    private long activeSegmentNumber;
+    private long activeSegmentCreated;
+    private MappedByteBuffer activeBuffer;
+    private Set<String> activeWupInstanceKeys;
+
+    private long cursorSegmentNumber;
+    private int cursorOffset;
+    private long cursorBufferSegmentNumber;
+    private ByteBuffer cursorBuffer;
+    private MappedByteBuffer cursorFileBuffer;
+
+    private ByteArrayOutputStream entryBytes;
+    private DataOutputStream entryStream;
+    private CRC32 entryChecksum;
+
+    private long pendingCount;
+    private long appendedCount;
+    private long forwardedCount;
+    private long rotationCount;
+    private long corruptEntryCount;
+    private boolean open;
+
+    public VirtualDBAuditJournal(File journalDirectory, int segmentSizeInBytes, long rotationIntervalInMillis, VirtualDBAuditRecordCodec recordCodec) throws IOException {
+        LOG.debug(".VirtualDBAuditJournal(): Entry, journalDirectory --> {}, segmentSizeInBytes --> {}, rotationIntervalInMillis --> {}",
+                journalDirectory, segmentSizeInBytes, rotationIntervalInMillis);
+        if(segmentSizeInBytes <= SEGMENT_HEADER_SIZE + ENTRY_HEADER_SIZE){
+            throw(new IllegalArgumentException("segmentSizeInBytes is too small, was " + segmentSizeInBytes));
+        }
+        this.journalDirectory = journalDirectory;
+        this.segmentSizeInBytes = segmentSizeInBytes;
+        this.rotationIntervalInMillis = rotationIntervalInMillis;
+        this.recordCodec = recordCodec;
+        this.segmentFiles = new TreeMap<>();
+        this.entryBytes = new ByteArrayOutputStream(512);
+        this.entryStream = new DataOutputStream(entryBytes);
+        this.entryChecksum = new CRC32();
+        this.cursorBufferSegmentNumber = -1;
+        openJournal();
+        this.open = true;
+        LOG.debug(".VirtualDBAuditJournal(): Exit, pendingCount --> {}, segments --> {}", pendingCount, segmentFiles.size());
+    }
+
+    //
+    // Append
+    //
+
+    public synchronized void append(VirtualDBAuditRecord record) throws IOException {
+        ensureOpen();
+        byte[] recordEntry = encodeRecordEntry(record);
+        String wupInstanceKey = recordCodec.registerWupInstance(record.getWupInstance());
+        byte[] wupDefinitionEntry = null;
+        if(wupInstanceKey != null && !activeWupInstanceKeys.contains(wupInstanceKey)){
+            wupDefinitionEntry = encodeWupDefinitionEntry(wupInstanceKey, record);
+        }
+        int requiredSpace = ENTRY_HEADER_SIZE + recordEntry.length;
+        if(wupDefinitionEntry != null){
+            requiredSpace += ENTRY_HEADER_SIZE + wupDefinitionEntry.length;
+        }
+        if(requiredSpace > segmentSizeInBytes - SEGMENT_HEADER_SIZE){
+            throw(new IOException("Audit record (" + requiredSpace + " bytes) does not fit in a journal segment"));
+        }
+        boolean segmentTooOld = (System.currentTimeMillis() - activeSegmentCreated) >= rotationIntervalInMillis;
+        if(activeBuffer.remaining() < requiredSpace || (segmentTooOld && activeBuffer.position() > SEGMENT_HEADER_SIZE)){
+            rotate();
+            if(wupInstanceKey != null && wupDefinitionEntry == null){
+                wupDefinitionEntry = encodeWupDefinitionEntry(wupInstanceKey, record);
+            }
+        }
+        if(wupDefinitionEntry != null){
+            writeEntry(wupDefinitionEntry);
+            activeWupInstanceKeys.add(wupInstanceKey);
+        }
+        writeEntry(recordEntry);
+        pendingCount += 1;
+        appendedCount += 1;
+    }
+
+    private byte[] encodeRecordEntry(VirtualDBAuditRecord record) throws IOException {
+        entryBytes.reset();
+        entryStream.writeByte(ENTRY_AUDIT_RECORD);
+        recordCodec.writeRecord(entryStream, record);
+        entryStream.flush();
+        return(entryBytes.toByteArray());
+    }
+
+    private byte[] encodeWupDefinitionEntry(String wupInstanceKey, VirtualDBAuditRecord record) throws IOException {
+        byte[] serialisedWupInstance = recordCodec.encodeWupInstance(record.getWupInstance());
+        entryBytes.reset();
+        entryStream.writeByte(ENTRY_WUP_DEFINITION);
+        VirtualDBAuditRecordCodec.writeNullableString(entryStream, wupInstanceKey);
+        if(serialisedWupInstance == null){
+            entryStream.writeInt(-1);
+        } else {
+            entryStream.writeInt(serialisedWupInstance.length);
+            entryStream.write(serialisedWupInstance);
+        }
+        entryStream.flush();
+        return(entryBytes.toByteArray());
+    }
+
+    private void writeEntry(byte[] entry){
+        entryChecksum.reset();
+        entryChecksum.update(entry, 0, entry.length);
+        activeBuffer.putInt(entry.length);
+        activeBuffer.putInt((int)entryChecksum.getValue());
+        activeBuffer.put(entry);
+        if(activeBuffer.remaining() >= Integer.BYTES){
+            // Terminate the segment, so stale bytes from an earlier (torn) write are never read as an entry
+            activeBuffer.putInt(activeBuffer.position(), 0);
+        }
+    }
+
+    private void rotate() throws IOException {
+        LOG.debug(".rotate(): Entry, activeSegmentNumber --> {}", activeSegmentNumber);
+        activeBuffer.force();
+        openActiveSegment(activeSegmentNumber + 1);
+        rotationCount += 1;
+    }
+
+    //
+    // Forward (replay)
+    //
+
+    /**
+     * Hands (at most maxRecords) journalled records, in order, from the replay cursor onwards to the forwarder. The
+     * cursor is advanced past each record the forwarder accepts (returns true for); forwarding stops at the first
+     * record it refuses, which will be offered again on the next call.
+     *
+     * @return the number of records forwarded
+     */
+    public synchronized int forward(int maxRecords, Predicate<VirtualDBAuditRecord> forwarder) throws IOException {
+        ensureOpen();
+        int forwarded = 0;
+        try {
+            while(forwarded < maxRecords && pendingCount > 0){
+                ByteBuffer segment = mapCursorSegment();
+                int limit = (cursorSegmentNumber == activeSegmentNumber) ? activeBuffer.position() : segment.limit();
+                byte[] entry = readValidEntry(segment, cursorOffset, limit);
+                if(entry == null){
+                    if(cursorSegmentNumber == activeSegmentNumber){
+                        LOG.warn(".forward(): Reached the end of the journal with pendingCount --> {}, resetting it", pendingCount);
+                        pendingCount = 0;
+                        break;
+                    }
+                    advanceToNextSegment();
+                    continue;
+                }
+                if(entry[0] == ENTRY_WUP_DEFINITION){
+                    defineWupInstance(entry);
+                } else {
+                    VirtualDBAuditRecord record = decodeRecordEntry(entry);
+                    if(!forwarder.test(record)){
+                        break;
+                    }
+                    forwarded += 1;
+                    forwardedCount += 1;
+                    pendingCount -= 1;
+                }
+                cursorOffset += ENTRY_HEADER_SIZE + entry.length;
+            }
+        } finally {
+            persistCursor();
+        }
+        return(forwarded);
+    }
+
+    private ByteBuffer mapCursorSegment() throws IOException {
+        if(cursorSegmentNumber == activeSegmentNumber){
+            return(activeBuffer.duplicate());
+        }
+        if(cursorBufferSegmentNumber != cursorSegmentNumber){
+            cursorBuffer = mapSegment(segmentFiles.get(cursorSegmentNumber), FileChannel.MapMode.READ_ONLY);
+            cursorBufferSegmentNumber = cursorSegmentNumber;
+        }
+        return(cursorBuffer);
+    }
+
+    private void advanceToNextSegment(){
+        long consumedSegmentNumber = cursorSegmentNumber;
+        Long nextSegmentNumber = segmentFiles.higherKey(consumedSegmentNumber);
+        cursorSegmentNumber = (nextSegmentNumber == null) ? activeSegmentNumber : nextSegmentNumber;
+        cursorOffset = SEGMENT_HEADER_SIZE;
+        cursorBuffer = null;
+        cursorBufferSegmentNumber = -1;
+        deleteSegment(consumedSegmentNumber);
+    }
+
+    //
+    // Opening (and recovering) the journal
+    //
+
+    private void openJournal() throws IOException {
+        if(!journalDirectory.isDirectory() && !journalDirectory.mkdirs()){
+            throw(new IOException("Unable to create audit journal directory " + journalDirectory));
+        }
+        File[] existingFiles = journalDirectory.listFiles();
+        if(existingFiles != null){
+            for(File existingFile: existingFiles){
+                Long segmentNumber = parseSegmentNumber(existingFile.getName());
+                if(segmentNumber != null){
+                    segmentFiles.put(segmentNumber, existingFile);
+                }
+            }
+        }
+        openCursorFile();
+        if(segmentFiles.isEmpty()){
+            cursorSegmentNumber = Math.max(1, cursorSegmentNumber);
+            cursorOffset = SEGMENT_HEADER_SIZE;
+            openActiveSegment(cursorSegmentNumber);
+            return;
+        }
+        if(!segmentFiles.containsKey(cursorSegmentNumber)){
+            Long firstRemaining = segmentFiles.ceilingKey(cursorSegmentNumber);
+            cursorSegmentNumber = (firstRemaining == null) ? segmentFiles.lastKey() + 1 : firstRemaining;
+            cursorOffset = SEGMENT_HEADER_SIZE;
+        }
+        for(Long consumedSegment: new HashSet<>(segmentFiles.headMap(cursorSegmentNumber).keySet())){
+            deleteSegment(consumedSegment);
+        }
+        if(segmentFiles.isEmpty()){
+            openActiveSegment(cursorSegmentNumber);
+            return;
+        }
+        int lastSegmentEnd = SEGMENT_HEADER_SIZE;
+        for(Map.Entry<Long, File> segmentFile: segmentFiles.entrySet()){
+            lastSegmentEnd = recoverSegment(segmentFile.getKey(), segmentFile.getValue());
+        }
+        long lastSegmentNumber = segmentFiles.lastKey();
+        this.activeSegmentNumber = lastSegmentNumber;
+        this.activeBuffer = mapSegment(segmentFiles.get(lastSegmentNumber), FileChannel.MapMode.READ_WRITE);
+        this.activeSegmentCreated = activeBuffer.getLong(16);
+        this.activeBuffer.position(lastSegmentEnd);
+    }
+
+    /**
+     * Scans a segment, registering its WUPIdentifier definitions and counting the records at (or after) the cursor.
+     *
+     * @return the offset just past the last valid entry in the segment
+     */
+    private int recoverSegment(long segmentNumber, File segmentFile) throws IOException {
+        ByteBuffer segment = mapSegment(segmentFile, FileChannel.MapMode.READ_ONLY);
+        if(segment.limit() < SEGMENT_HEADER_SIZE || segment.getInt(0) != SEGMENT_MAGIC){
+            throw(new IOException("Audit journal segment " + segmentFile + " has an invalid header"));
+        }
+        boolean lastSegment = segmentNumber == segmentFiles.lastKey();
+        Set<String> segmentWupInstanceKeys = new HashSet<>();
+        int offset = SEGMENT_HEADER_SIZE;
+        while(true){
+            byte[] entry = readValidEntry(segment, offset, segment.limit());
+            if(entry == null){
+                break;
+            }
+            if(entry[0] == ENTRY_WUP_DEFINITION){
+                segmentWupInstanceKeys.add(defineWupInstance(entry));
+            } else if(segmentNumber > cursorSegmentNumber || offset >= cursorOffset){
+                pendingCount += 1;
+            }
+            offset += ENTRY_HEADER_SIZE + entry.length;
+        }
+        if(lastSegment){
+            this.activeWupInstanceKeys = segmentWupInstanceKeys;
+        }
+        return(offset);
+    }
+
+    private void openActiveSegment(long segmentNumber) throws IOException {
+        File segmentFile = new File(journalDirectory, buildSegmentFileName(segmentNumber));
+        this.activeSegmentCreated = System.currentTimeMillis();
+        try(RandomAccessFile segmentAccess = new RandomAccessFile(segmentFile, "rw")){
+            segmentAccess.setLength(segmentSizeInBytes);
+            this.activeBuffer = segmentAccess.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentSizeInBytes);
+        }
+        activeBuffer.putInt(SEGMENT_MAGIC);
+        activeBuffer.putInt(SEGMENT_FORMAT_VERSION);
+        activeBuffer.putLong(segmentNumber);
+        activeBuffer.putLong(activeSegmentCreated);
+        activeBuffer.position(SEGMENT_HEADER_SIZE);
+        activeBuffer.putInt(SEGMENT_HEADER_SIZE, 0);
+        this.activeSegmentNumber = segmentNumber;
+        this.activeWupInstanceKeys = new HashSet<>();
+        segmentFiles.put(segmentNumber, segmentFile);
+    }
+
+    private void openCursorFile() throws IOException {
+        File cursorFile = new File(journalDirectory, CURSOR_FILE_NAME);
+        boolean existing = cursorFile.isFile() && cursorFile.length() >= CURSOR_FILE_SIZE;
+        try(RandomAccessFile cursorAccess = new RandomAccessFile(cursorFile, "rw")){
+            cursorAccess.setLength(CURSOR_FILE_SIZE);
+            this.cursorFileBuffer = cursorAccess.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, CURSOR_FILE_SIZE);
+        }
+        this.cursorSegmentNumber = 0;
+        this.cursorOffset = SEGMENT_HEADER_SIZE;
+        if(existing){
+            long storedSegmentNumber = cursorFileBuffer.getLong(0);
+            int storedOffset = cursorFileBuffer.getInt(8);
+            if(cursorFileBuffer.getInt(12) == computeCursorChecksum(storedSegmentNumber, storedOffset)){
+                this.cursorSegmentNumber = storedSegmentNumber;
+                this.cursorOffset = storedOffset;
+            } else {
+                LOG.warn(".openCursorFile(): Audit journal cursor is corrupt, replaying from the oldest segment");
+            }
+        }
+    }
+
+    private void persistCursor(){
+        cursorFileBuffer.putLong(0, cursorSegmentNumber);
+        cursorFileBuffer.putInt(8, cursorOffset);
+        cursorFileBuffer.putInt(12, computeCursorChecksum(cursorSegmentNumber, cursorOffset));
+    }
+
+    //
+    // Entry helpers
+    //
+
+    /**
+     * @return the (CRC checked) entry at offset, or null if there is no valid entry there
+     */
+    private byte[] readValidEntry(ByteBuffer segment, int offset, int limit){
+        if(offset + ENTRY_HEADER_SIZE > limit){
+            return(null);
+        }
+        int entryLength = segment.getInt(offset);
+        if(entryLength <= 0 || offset + ENTRY_HEADER_SIZE + entryLength > limit){
+            return(null);
+        }
+        byte[] entry = new byte[entryLength];
+        ByteBuffer entryView = segment.duplicate();
+        entryView.position(offset + ENTRY_HEADER_SIZE);
+        entryView.get(entry);
+        entryChecksum.reset();
+        entryChecksum.update(entry, 0, entry.length);
+        if((int)entryChecksum.getValue() != segment.getInt(offset + Integer.BYTES)){
+            corruptEntryCount += 1;
+            LOG.error(".readValidEntry(): Audit journal entry at offset {} fails its CRC check, ignoring the rest of the segment", offset);
+            return(null);
+        }
+        return(entry);
+    }
+
+    private VirtualDBAuditRecord decodeRecordEntry(byte[] entry) throws IOException {
+        return(recordCodec.readRecord(new DataInputStream(new ByteArrayInputStream(entry, 1, entry.length - 1))));
+    }
+
+    private String defineWupInstance(byte[] entry) throws IOException {
+        DataInputStream definition = new DataInputStream(new ByteArrayInputStream(entry, 1, entry.length - 1));
+        String wupInstanceKey = VirtualDBAuditRecordCodec.readNullableString(definition);
+        int serialisedLength = definition.readInt();
+        if(serialisedLength >= 0){
+            byte[] serialisedWupInstance = new byte[serialisedLength];
+            definition.readFully(serialisedWupInstance);
+            recordCodec.defineWupInstance(wupInstanceKey, serialisedWupInstance);
+        }
+        return(wupInstanceKey);
+    }
+
+    private MappedByteBuffer mapSegment(File segmentFile, FileChannel.MapMode mapMode) throws IOException {
+        try(RandomAccessFile segmentAccess = new RandomAccessFile(segmentFile, mapMode == FileChannel.MapMode.READ_ONLY ? "r" : "rw")){
+            return(segmentAccess.getChannel().map(mapMode, 0, segmentAccess.length()));
+        }
+    }
+
+    private void deleteSegment(long segmentNumber){
+        File segmentFile = segmentFiles.remove(segmentNumber);
+        if(segmentFile != null && !segmentFile.delete()){
+            LOG.warn(".deleteSegment(): Unable to delete forwarded audit journal segment --> {}", segmentFile);
+        }
+    }
+
+    private static int computeCursorChecksum(long segmentNumber, int offset){
+        CRC32 cursorChecksum = new CRC32();
+        cursorChecksum.update(ByteBuffer.allocate(12).putLong(segmentNumber).putInt(offset).array());
+        return((int)cursorChecksum.getValue());
+    }
+
+    private static String buildSegmentFileName(long segmentNumber){
+        return(SEGMENT_FILE_PREFIX + String.format("%020d", segmentNumber) + SEGMENT_FILE_SUFFIX);
+    }
+
+    private static Long parseSegmentNumber(String fileName){
+        if(!fileName.startsWith(SEGMENT_FILE_PREFIX) || !fileName.endsWith(SEGMENT_FILE_SUFFIX)){
+            return(null);
+        }
+        try {
+            return(Long.parseLong(fileName.substring(SEGMENT_FILE_PREFIX.length(), fileName.length() - SEGMENT_FILE_SUFFIX.length())));
+        } catch(NumberFormatException notASegment){
+            return(null);
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if(!open){
+            throw(new IOException("Audit journal " + journalDirectory + " is closed"));
+        }
+    }
+
+    //
+    // Status
+    //
+
+    public synchronized boolean hasPendingRecords(){
+        return(pendingCount > 0);
+    }
+
+    public synchronized long getPendingCount(){
+        return(pendingCount);
+    }
+
+    public synchronized long getAppendedCount(){
+        return(appendedCount);
+    }
+
+    public synchronized long getForwardedCount(){
+        return(forwardedCount);
+    }
+
+    public synchronized long getRotationCount(){
+        return(rotationCount);
+    }
+
+    public synchronized long getCorruptEntryCount(){
+        return(corruptEntryCount);
+    }
+
+    public synchronized int getSegmentCount(){
+        return(segmentFiles.size());
+    }
+
+    @Override
+    public synchronized void close() {
+        LOG.debug(".close(): Entry");
+        if(!open){
+            return;
+        }
+        this.open = false;
+        persistCursor();
+        activeBuffer.force();
+        cursorFileBuffer.force();
+        LOG.debug(".close(): Exit, pendingCount --> {}", pendingCount);
+    }
+}
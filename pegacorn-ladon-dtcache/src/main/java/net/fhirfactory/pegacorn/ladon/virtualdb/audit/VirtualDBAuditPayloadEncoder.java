@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.virtualdb.audit;
+
+import ca.uhn.fhir.parser.IParser;
+import org.hl7.fhir.r4.model.Resource;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.function.Supplier;
+
+/**
+ * Renders a Resource into the text captured in a VirtualDB audit entry - either the full JSON encoding, or (for
+ * AUDIT_PAYLOAD_DIGEST) a small JSON summary of the form
+ * {"reference":"Patient/123","versionId":"2","digest":"SHA-256:..."}.
+ *
+ * The digest is computed by streaming the JSON encoding straight into the MessageDigest, so the encoded Resource is
+ * never materialised as a String. MessageDigests and parsers are reused per thread - the parsers are this encoder's
+ * own (non pretty-printing) instances, so its settings never leak into (or from) parsers used elsewhere.
+ */
+public class VirtualDBAuditPayloadEncoder {
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+    private static final String UNASSIGNED_ID = "(unassigned)";
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private static final OutputStream DISCARDING_STREAM = new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    };
+
+    private ThreadLocal<IParser> parsers;
+    private ThreadLocal<MessageDigest> messageDigests;
+
+    /**
+     * @param parserSupplier Creates a new (JSON) parser on each call
+     */
+    public VirtualDBAuditPayloadEncoder(Supplier<IParser> parserSupplier){
+        this.parsers = ThreadLocal.withInitial(() -> parserSupplier.get().setPrettyPrint(false));
+        this.messageDigests = ThreadLocal.withInitial(VirtualDBAuditPayloadEncoder::newMessageDigest);
+    }
+
+    public String encode(Resource resource, VirtualDBAuditPayloadModeEnum payloadMode){
+        if(payloadMode == VirtualDBAuditPayloadModeEnum.AUDIT_PAYLOAD_FULL_BODY){
+            return(encodeFullBody(resource));
+        }
+        return(encodeDigest(resource));
+    }
+
+    /**
+     * Captures the Resource as it is now (as a copy - the caller may go on to modify it), deferring only its
+     * encoding until the returned Supplier is called (on the publisher thread).
+     */
+    public Supplier<String> deferEncoding(String payloadPrefix, Resource resource, VirtualDBAuditPayloadModeEnum payloadMode){
+        Resource capturedResource = resource.copy();
+        return(() -> payloadPrefix + encode(capturedResource, payloadMode));
+    }
+
+    public String encodeFullBody(Resource resource){
+        return(parsers.get().encodeResourceToString(resource));
+    }
+
+    public String encodeDigest(Resource resource){
+        StringBuilder summary = new StringBuilder(128);
+        summary.append("{\"reference\":\"").append(resource.getResourceType().name()).append('/');
+        if(resource.getIdElement() != null && resource.getIdElement().hasIdPart()){
+            summary.append(resource.getIdElement().getIdPart());
+        } else {
+            summary.append(UNASSIGNED_ID);
+        }
+        summary.append("\"");
+        if(resource.hasMeta() && resource.getMeta().hasVersionId()){
+            summary.append(",\"versionId\":\"").append(resource.getMeta().getVersionId()).append("\"");
+        }
+        summary.append(",\"digest\":\"").append(DIGEST_ALGORITHM).append(':');
+        appendHex(summary, computeDigest(resource));
+        summary.append("\"}");
+        return(summary.toString());
+    }
+
+    public byte[] computeDigest(Resource resource){
+        MessageDigest messageDigest = messageDigests.get();
+        messageDigest.reset();
+        IParser parser = parsers.get();
+        try(Writer digestWriter = new OutputStreamWriter(new DigestOutputStream(DISCARDING_STREAM, messageDigest), StandardCharsets.UTF_8)){
+            parser.encodeResourceToWriter(resource, digestWriter);
+        } catch(IOException digestFailure){
+            throw(new IllegalStateException("Unable to compute the audit digest: " + digestFailure.getMessage(), digestFailure));
+        }
+        return(messageDigest.digest());
+    }
+
+    private static void appendHex(StringBuilder builder, byte[] bytes){
+        for(byte value: bytes){
+            builder.append(HEX_DIGITS[(value >> 4) & 0x0F]).append(HEX_DIGITS[value & 0x0F]);
+        }
+    }
+
+    private static MessageDigest newMessageDigest(){
+        try {
+            return(MessageDigest.getInstance(DIGEST_ALGORITHM));
+        } catch(NoSuchAlgorithmException unsupported){
+            throw(new IllegalStateException(DIGEST_ALGORITHM + " is not supported by this JVM", unsupported));
+        }
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.virtualdb.audit;
+
+/**
+ * How much of a Resource is captured in a VirtualDB audit entry.
+ */
+public enum VirtualDBAuditPayloadModeEnum {
+    /**
+     * Only the Resource reference, its versionId and a (SHA-256) digest of its JSON encoding.
+     */
+    AUDIT_PAYLOAD_DIGEST("ladon.audit.payload.digest"),
+    /**
+     * The complete (JSON encoded) Resource.
+     */
+    AUDIT_PAYLOAD_FULL_BODY("ladon.audit.payload.full_body");
+
+    private String payloadMode;
+
+    private VirtualDBAuditPayloadModeEnum(String payloadMode){
+        this.payloadMode = payloadMode;
+    }
+
+    public String getPayloadMode(){
+        return(this.payloadMode);
+    }
+}
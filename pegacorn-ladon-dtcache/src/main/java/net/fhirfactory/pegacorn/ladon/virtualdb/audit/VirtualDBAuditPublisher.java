@@ -0,0 +1,341 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.virtualdb.audit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Moves VirtualDB audit publication off the request path. Callers submit() VirtualDBAuditRecords into a bounded,
+ * lock-free ring buffer; a single background (daemon) thread drains it and hands the records to the
+ * VirtualDBAuditRecordSink in batches of (at most) flushSize records - a batch is published as soon as flushSize
+ * records are waiting, or once flushIntervalInMillis has elapsed, whichever comes first.
+ *
+ * When the ring buffer is full the VirtualDBAuditBackpressurePolicyEnum decides whether the caller waits, the record
+ * is dropped (and counted) or the record is spilled to disk. Spilled records are replayed, in order, before anything
+ * submitted after them.
+ *
+ * shutdown() stops the background thread and then publishes whatever is still in the ring buffer (and spill file)
+ * on the calling thread; anything submitted after that is published synchronously, so no record is lost on an
+ * orderly shutdown.
+ */
+public class VirtualDBAuditPublisher {
+    private static final Logger LOG = LoggerFactory.getLogger(VirtualDBAuditPublisher.class);
+
+    private static final String PUBLISHER_THREAD_NAME = "VirtualDBAuditPublisher";
+    private static final long BLOCKED_PRODUCER_BACKOFF_IN_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+
+    private VirtualDBAuditRecordSink sink;
+    private VirtualDBAuditRingBuffer<VirtualDBAuditRecord> ringBuffer;
+    private int flushSize;
+    private long flushIntervalInNanos;
+    private VirtualDBAuditBackpressurePolicyEnum backpressurePolicy;
+    private VirtualDBAuditSpillFile spillFile;
+
+    private final Object publishLock;
+    private final Object spillLock;
+    private volatile boolean spilling;
+    private volatile boolean running;
+    private volatile Thread publisherThread;
+
+    private AtomicLong submittedCount;
+    private AtomicLong publishedCount;
+    private AtomicLong droppedCount;
+    private AtomicLong spilledCount;
+    private AtomicLong blockedCount;
+    private AtomicLong publishFailureCount;
+
+    public VirtualDBAuditPublisher(VirtualDBAuditRecordSink sink, int capacity, int flushSize, long flushIntervalInMillis,
+                                   VirtualDBAuditBackpressurePolicyEnum backpressurePolicy, File spillDirectory){
+        this(sink, capacity, flushSize, flushIntervalInMillis, backpressurePolicy, spillDirectory, new VirtualDBAuditRecordCodec());
+    }
+
+    public VirtualDBAuditPublisher(VirtualDBAuditRecordSink sink, int capacity, int flushSize, long flushIntervalInMillis,
+                                   VirtualDBAuditBackpressurePolicyEnum backpressurePolicy, File spillDirectory, VirtualDBAuditRecordCodec recordCodec){
+        LOG.debug(".VirtualDBAuditPublisher(): Entry, capacity --> {}, flushSize --> {}, flushIntervalInMillis --> {}, backpressurePolicy --> {}",
+                capacity, flushSize, flushIntervalInMillis, backpressurePolicy);
+        this.sink = sink;
+        this.ringBuffer = new VirtualDBAuditRingBuffer<>(capacity);
+        this.flushSize = Math.max(1, flushSize);
+        this.flushIntervalInNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, flushIntervalInMillis));
+        this.backpressurePolicy = backpressurePolicy;
+        this.spillFile = new VirtualDBAuditSpillFile(spillDirectory, recordCodec);
+        this.publishLock = new Object();
+        this.spillLock = new Object();
+        this.spilling = false;
+        this.running = false;
+        this.submittedCount = new AtomicLong();
+        this.publishedCount = new AtomicLong();
+        this.droppedCount = new AtomicLong();
+        this.spilledCount = new AtomicLong();
+        this.blockedCount = new AtomicLong();
+        this.publishFailureCount = new AtomicLong();
+    }
+
+    public synchronized void start(){
+        LOG.debug(".start(): Entry");
+        if(publisherThread != null){
+            LOG.debug(".start(): Exit, already started");
+            return;
+        }
+        this.running = true;
+        Thread newPublisherThread = new Thread(this::runPublisher, PUBLISHER_THREAD_NAME);
+        newPublisherThread.setDaemon(true);
+        this.publisherThread = newPublisherThread;
+        newPublisherThread.start();
+        LOG.debug(".start(): Exit");
+    }
+
+    /**
+     * Queues the record for publication.
+     *
+     * @return false if the record was dropped (AUDIT_BACKPRESSURE_DROP, or a failed spill), true otherwise
+     */
+    public boolean submit(VirtualDBAuditRecord record){
+        LOG.trace(".submit(): Entry, record --> {}", record);
+        submittedCount.incrementAndGet();
+        if(!running){
+            publishDirectly(record);
+            return(true);
+        }
+        boolean accepted;
+        if(!spilling && ringBuffer.offer(record)){
+            accepted = true;
+        } else {
+            switch(backpressurePolicy){
+                case AUDIT_BACKPRESSURE_DROP:
+                    droppedCount.incrementAndGet();
+                    LOG.trace(".submit(): Audit ring buffer is full, dropping record --> {}", record);
+                    accepted = false;
+                    break;
+                case AUDIT_BACKPRESSURE_SPILL_TO_DISK:
+                    accepted = spillRecord(record);
+                    break;
+                case AUDIT_BACKPRESSURE_BLOCK:
+                default:
+                    accepted = blockUntilQueued(record);
+            }
+        }
+        if(!running){
+            // The publisher was shut down while we were queueing, so make sure the record isn't stranded
+            publishPending();
+        } else if(ringBuffer.size() >= flushSize || spilling){
+            LockSupport.unpark(publisherThread);
+        }
+        return(accepted);
+    }
+
+    /**
+     * Stops the background thread (waiting at most maxWaitInMillis for it to finish its current batch), then
+     * publishes anything still queued or spilled on the calling thread.
+     */
+    public void shutdown(long maxWaitInMillis){
+        LOG.debug(".shutdown(): Entry, maxWaitInMillis --> {}", maxWaitInMillis);
+        this.running = false;
+        Thread stoppingThread = publisherThread;
+        if(stoppingThread != null){
+            LockSupport.unpark(stoppingThread);
+            try {
+                stoppingThread.join(maxWaitInMillis);
+            } catch(InterruptedException interrupted){
+                Thread.currentThread().interrupt();
+            }
+            if(stoppingThread.isAlive()){
+                LOG.warn(".shutdown(): Audit publisher thread did not stop within {}ms, draining from the calling thread", maxWaitInMillis);
+            }
+        }
+        publishPending();
+        LOG.debug(".shutdown(): Exit, publishedCount --> {}, droppedCount --> {}, publishFailureCount --> {}",
+                publishedCount.get(), droppedCount.get(), publishFailureCount.get());
+    }
+
+    public boolean isRunning(){
+        return(running);
+    }
+
+    public int getQueuedCount(){
+        return(ringBuffer.size());
+    }
+
+    public int getCapacity(){
+        return(ringBuffer.getCapacity());
+    }
+
+    public long getSubmittedCount(){
+        return(submittedCount.get());
+    }
+
+    public long getPublishedCount(){
+        return(publishedCount.get());
+    }
+
+    public long getDroppedCount(){
+        return(droppedCount.get());
+    }
+
+    public long getSpilledCount(){
+        return(spilledCount.get());
+    }
+
+    public long getBlockedCount(){
+        return(blockedCount.get());
+    }
+
+    public long getPublishFailureCount(){
+        return(publishFailureCount.get());
+    }
+
+    //
+    // Background publisher
+    //
+
+    private void runPublisher(){
+        LOG.debug(".runPublisher(): Entry");
+        while(running){
+            awaitBatch();
+            try {
+                publishPending();
+                sink.onPublisherIdle();
+            } catch(RuntimeException unexpected){
+                LOG.error(".runPublisher(): Unexpected failure publishing audit records --> {}", unexpected.toString());
+            }
+        }
+        LOG.debug(".runPublisher(): Exit");
+    }
+
+    private void awaitBatch(){
+        long deadline = System.nanoTime() + flushIntervalInNanos;
+        while(running && !spilling && ringBuffer.size() < flushSize){
+            long remaining = deadline - System.nanoTime();
+            if(remaining <= 0){
+                return;
+            }
+            LockSupport.parkNanos(this, remaining);
+        }
+    }
+
+    /**
+     * Publishes everything in the ring buffer and then (once the ring buffer is empty) anything that has been
+     * spilled, repeating until both are empty.
+     */
+    private void publishPending(){
+        synchronized(publishLock){
+            List<VirtualDBAuditRecord> batch = new ArrayList<>(flushSize);
+            while(true){
+                while(ringBuffer.drainTo(batch, flushSize) > 0){
+                    publishBatch(batch);
+                    batch = new ArrayList<>(flushSize);
+                }
+                if(!spilling || !replaySpilledRecords()){
+                    return;
+                }
+            }
+        }
+    }
+
+    private boolean replaySpilledRecords(){
+        File spilledFile;
+        synchronized(spillLock){
+            if(!ringBuffer.isEmpty()){
+                return(true);
+            }
+            try {
+                spilledFile = spillFile.rollover();
+            } catch(IOException rolloverFailure){
+                LOG.error(".replaySpilledRecords(): Unable to close audit spill file --> {}", rolloverFailure.toString());
+                spilledFile = null;
+            }
+            spilling = false;
+        }
+        if(spilledFile == null){
+            return(false);
+        }
+        try {
+            spillFile.replay(spilledFile, flushSize, this::publishBatch);
+        } catch(IOException replayFailure){
+            LOG.error(".replaySpilledRecords(): Unable to replay audit spill file {} --> {}", spilledFile, replayFailure.toString());
+        }
+        return(true);
+    }
+
+    private void publishBatch(List<VirtualDBAuditRecord> batch){
+        LOG.trace(".publishBatch(): Entry, batch.size() --> {}", batch.size());
+        try {
+            sink.publishAuditRecords(batch);
+            publishedCount.addAndGet(batch.size());
+        } catch(RuntimeException publishFailure){
+            publishFailureCount.addAndGet(batch.size());
+            LOG.error(".publishBatch(): Failed to publish {} audit records --> {}", batch.size(), publishFailure.toString());
+        }
+    }
+
+    private void publishDirectly(VirtualDBAuditRecord record){
+        List<VirtualDBAuditRecord> batch = new ArrayList<>(1);
+        batch.add(record);
+        synchronized(publishLock){
+            publishBatch(batch);
+        }
+    }
+
+    //
+    // Backpressure
+    //
+
+    private boolean blockUntilQueued(VirtualDBAuditRecord record){
+        blockedCount.incrementAndGet();
+        while(!ringBuffer.offer(record)){
+            if(!running){
+                publishDirectly(record);
+                return(true);
+            }
+            LockSupport.unpark(publisherThread);
+            LockSupport.parkNanos(this, BLOCKED_PRODUCER_BACKOFF_IN_NANOS);
+        }
+        return(true);
+    }
+
+    private boolean spillRecord(VirtualDBAuditRecord record){
+        synchronized(spillLock){
+            if(!spilling && ringBuffer.offer(record)){
+                return(true);
+            }
+            try {
+                spillFile.append(record);
+                spilling = true;
+                spilledCount.incrementAndGet();
+                return(true);
+            } catch(IOException spillFailure){
+                droppedCount.incrementAndGet();
+                LOG.error(".spillRecord(): Unable to spill audit record, dropping it --> {}", spillFailure.toString());
+                return(false);
+            }
+        }
+    }
+}
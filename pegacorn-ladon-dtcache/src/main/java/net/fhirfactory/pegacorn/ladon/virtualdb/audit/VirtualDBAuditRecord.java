@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.virtualdb.audit;
+
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.operations.VirtualDBActionTypeEnum;
+import net.fhirfactory.pegacorn.petasos.model.wup.WUPIdentifier;
+
+import java.util.function.Supplier;
+
+/**
+ * A single (begin or end) audit event, as queued by the VirtualDBAuditEntryManager for the VirtualDBAuditPublisher.
+ *
+ * Where the payload involves encoding a Resource, the encoding is deferred (see setDeferredPayload()) and only done
+ * when resolvePayload() is called - normally on the publisher's thread rather than the caller's. Building the UoW and
+ * calling the audit broker are also done when the record is published.
+ */
+public class VirtualDBAuditRecord {
+    private VirtualDBAuditRecordTypeEnum recordType;
+    private long transactionId;
+    private VirtualDBActionTypeEnum action;
+    private String resourceType;
+    private String resourceVersion;
+    private String auditPayload;
+    private Supplier<String> deferredPayload;
+    private String encodingFailure;
+    private boolean success;
+    private WUPIdentifier wupInstance;
+
+    public VirtualDBAuditRecord(){
+        this.success = true;
+    }
+
+    public VirtualDBAuditRecordTypeEnum getRecordType() {
+        return recordType;
+    }
+
+    public void setRecordType(VirtualDBAuditRecordTypeEnum recordType) {
+        this.recordType = recordType;
+    }
+
+    public long getTransactionId() {
+        return transactionId;
+    }
+
+    public void setTransactionId(long transactionId) {
+        this.transactionId = transactionId;
+    }
+
+    public VirtualDBActionTypeEnum getAction() {
+        return action;
+    }
+
+    public void setAction(VirtualDBActionTypeEnum action) {
+        this.action = action;
+    }
+
+    public String getResourceType() {
+        return resourceType;
+    }
+
+    public void setResourceType(String resourceType) {
+        this.resourceType = resourceType;
+    }
+
+    public String getResourceVersion() {
+        return resourceVersion;
+    }
+
+    public void setResourceVersion(String resourceVersion) {
+        this.resourceVersion = resourceVersion;
+    }
+
+    public String getAuditPayload() {
+        return auditPayload;
+    }
+
+    public void setAuditPayload(String auditPayload) {
+        this.auditPayload = auditPayload;
+    }
+
+    public boolean hasDeferredPayload(){
+        return(this.deferredPayload != null);
+    }
+
+    /**
+     * Sets a function that produces the auditPayload when resolvePayload() is called.
+     */
+    public void setDeferredPayload(Supplier<String> deferredPayload) {
+        this.deferredPayload = deferredPayload;
+    }
+
+    /**
+     * Evaluates the deferred payload (if any) into the auditPayload. A failure to produce the payload is recorded
+     * as the encodingFailure rather than thrown.
+     */
+    public void resolvePayload(){
+        if(this.deferredPayload == null){
+            return;
+        }
+        Supplier<String> pendingPayload = this.deferredPayload;
+        this.deferredPayload = null;
+        try {
+            this.auditPayload = pendingPayload.get();
+        } catch(RuntimeException encodingFailure){
+            this.encodingFailure = encodingFailure.toString();
+        }
+    }
+
+    public boolean hasEncodingFailure(){
+        return(this.encodingFailure != null);
+    }
+
+    public String getEncodingFailure() {
+        return encodingFailure;
+    }
+
+    public void setEncodingFailure(String encodingFailure) {
+        this.encodingFailure = encodingFailure;
+    }
+
+    public boolean isSuccess() {
+        return success;
+    }
+
+    public void setSuccess(boolean success) {
+        this.success = success;
+    }
+
+    public WUPIdentifier getWupInstance() {
+        return wupInstance;
+    }
+
+    public void setWupInstance(WUPIdentifier wupInstance) {
+        this.wupInstance = wupInstance;
+    }
+
+    @Override
+    public String toString() {
+        return "VirtualDBAuditRecord{" +
+                "recordType=" + recordType +
+                ", transactionId=" + transactionId +
+                ", action=" + action +
+                ", resourceType=" + resourceType +
+                ", resourceVersion=" + resourceVersion +
+                ", encodingFailure=" + encodingFailure +
+                ", success=" + success +
+                ", wupInstance=" + wupInstance +
+                '}';
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.virtualdb.audit;
+
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.operations.VirtualDBActionTypeEnum;
+import net.fhirfactory.pegacorn.petasos.model.wup.WUPIdentifier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The binary form of a VirtualDBAuditRecord, as written to the audit spill file and the audit journal.
+ *
+ * A record refers to its WUPIdentifier by key (its String form); the WUPIdentifiers themselves are held in the
+ * codec's registry. So that a journal can be replayed by a later process, encodeWupInstance() gives the (Java
+ * serialised) form of a WUPIdentifier, which defineWupInstance() registers again. Any deferred payload is resolved
+ * before the record is written.
+ */
+public class VirtualDBAuditRecordCodec {
+    private static final Logger LOG = LoggerFactory.getLogger(VirtualDBAuditRecordCodec.class);
+
+    private Map<String, WUPIdentifier> wupInstanceRegistry;
+
+    public VirtualDBAuditRecordCodec(){
+        this.wupInstanceRegistry = new ConcurrentHashMap<>();
+    }
+
+    public String registerWupInstance(WUPIdentifier wupInstance){
+        if(wupInstance == null){
+            return(null);
+        }
+        String wupInstanceKey = String.valueOf(wupInstance);
+        wupInstanceRegistry.putIfAbsent(wupInstanceKey, wupInstance);
+        return(wupInstanceKey);
+    }
+
+    public WUPIdentifier resolveWupInstance(String wupInstanceKey){
+        if(wupInstanceKey == null){
+            return(null);
+        }
+        return(wupInstanceRegistry.get(wupInstanceKey));
+    }
+
+    /**
+     * @return the serialised WUPIdentifier, or null if it isn't Serializable
+     */
+    public byte[] encodeWupInstance(WUPIdentifier wupInstance){
+        ByteArrayOutputStream serialisedWupInstance = new ByteArrayOutputStream();
+        try(ObjectOutputStream objectStream = new ObjectOutputStream(serialisedWupInstance)){
+            objectStream.writeObject(wupInstance);
+        } catch(IOException notSerialisable){
+            LOG.debug(".encodeWupInstance(): Unable to serialise WUPIdentifier --> {}", notSerialisable.toString());
+            return(null);
+        }
+        return(serialisedWupInstance.toByteArray());
+    }
+
+    public void defineWupInstance(String wupInstanceKey, byte[] serialisedWupInstance){
+        if(wupInstanceKey == null || serialisedWupInstance == null || wupInstanceRegistry.containsKey(wupInstanceKey)){
+            return;
+        }
+        try(ObjectInputStream objectStream = new ObjectInputStream(new ByteArrayInputStream(serialisedWupInstance))){
+            wupInstanceRegistry.putIfAbsent(wupInstanceKey, (WUPIdentifier)objectStream.readObject());
+        } catch(IOException | ClassNotFoundException | ClassCastException unreadable){
+            LOG.warn(".defineWupInstance(): Unable to restore WUPIdentifier {} --> {}", wupInstanceKey, unreadable.toString());
+        }
+    }
+
+    public void writeRecord(DataOutput output, VirtualDBAuditRecord record) throws IOException {
+        record.resolvePayload();
+        output.writeUTF(record.getRecordType().name());
+        output.writeLong(record.getTransactionId());
+        writeNullableString(output, record.getAction() == null ? null : record.getAction().name());
+        writeNullableString(output, record.getResourceType());
+        writeNullableString(output, record.getResourceVersion());
+        writeNullableString(output, record.getAuditPayload());
+        writeNullableString(output, record.getEncodingFailure());
+        output.writeBoolean(record.isSuccess());
+        writeNullableString(output, registerWupInstance(record.getWupInstance()));
+    }
+
+    public VirtualDBAuditRecord readRecord(DataInput input) throws IOException {
+        VirtualDBAuditRecord record = new VirtualDBAuditRecord();
+        record.setRecordType(VirtualDBAuditRecordTypeEnum.valueOf(input.readUTF()));
+        record.setTransactionId(input.readLong());
+        String action = readNullableString(input);
+        if(action != null){
+            record.setAction(VirtualDBActionTypeEnum.valueOf(action));
+        }
+        record.setResourceType(readNullableString(input));
+        record.setResourceVersion(readNullableString(input));
+        record.setAuditPayload(readNullableString(input));
+        record.setEncodingFailure(readNullableString(input));
+        record.setSuccess(input.readBoolean());
+        String wupInstanceKey = readNullableString(input);
+        WUPIdentifier wupInstance = resolveWupInstance(wupInstanceKey);
+        if(wupInstanceKey != null && wupInstance == null){
+            LOG.warn(".readRecord(): Unknown WUPIdentifier {} for audit record (transactionId --> {})", wupInstanceKey, record.getTransactionId());
+        }
+        record.setWupInstance(wupInstance);
+        return(record);
+    }
+
+    public static void writeNullableString(DataOutput output, String value) throws IOException {
+        if(value == null){
+            output.writeInt(-1);
+            return;
+        }
+        byte[] valueBytes = value.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(valueBytes.length);
+        output.write(valueBytes);
+    }
+
+    public static String readNullableString(DataInput input) throws IOException {
+        int length = input.readInt();
+        if(length < 0){
+            return(null);
+        }
+        byte[] valueBytes = new byte[length];
+        input.readFully(valueBytes);
+        return(new String(valueBytes, StandardCharsets.UTF_8));
+    }
+}
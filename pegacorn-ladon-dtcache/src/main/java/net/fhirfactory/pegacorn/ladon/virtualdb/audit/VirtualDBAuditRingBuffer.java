@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.virtualdb.audit;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded, lock-free (multi-producer, multi-consumer) ring buffer. Each slot carries a sequence number, so
+ * producers and consumers only ever CAS the tail/head counters and never block one another - offer() simply
+ * returns false when the buffer is full.
+ *
+ * The capacity is rounded up to the next power of two.
+ *
+ * @param <T> the type of element held
+ */
+public class VirtualDBAuditRingBuffer<T> {
+    private final int capacity;
+    private final int mask;
+    private final AtomicLongArray sequences;
+    private final AtomicReferenceArray<T> slots;
+    private final AtomicLong tail;
+    private final AtomicLong head;
+
+    public VirtualDBAuditRingBuffer(int requestedCapacity){
+        if(requestedCapacity < 1){
+            throw(new IllegalArgumentException("requestedCapacity must be positive, was " + requestedCapacity));
+        }
+        int roundedCapacity = 1;
+        while(roundedCapacity < requestedCapacity){
+            roundedCapacity = roundedCapacity << 1;
+        }
+        this.capacity = roundedCapacity;
+        this.mask = roundedCapacity - 1;
+        this.sequences = new AtomicLongArray(roundedCapacity);
+        this.slots = new AtomicReferenceArray<>(roundedCapacity);
+        for(int index = 0; index < roundedCapacity; index++){
+            sequences.set(index, index);
+        }
+        this.tail = new AtomicLong();
+        this.head = new AtomicLong();
+    }
+
+    public boolean offer(T element){
+        if(element == null){
+            throw(new NullPointerException("element"));
+        }
+        while(true){
+            long position = tail.get();
+            int index = (int)(position & mask);
+            long difference = sequences.get(index) - position;
+            if(difference == 0){
+                if(tail.compareAndSet(position, position + 1)){
+                    slots.set(index, element);
+                    sequences.set(index, position + 1);
+                    return(true);
+                }
+            } else if(difference < 0){
+                return(false);
+            }
+        }
+    }
+
+    public T poll(){
+        while(true){
+            long position = head.get();
+            int index = (int)(position & mask);
+            long difference = sequences.get(index) - (position + 1);
+            if(difference == 0){
+                if(head.compareAndSet(position, position + 1)){
+                    T element = slots.get(index);
+                    slots.set(index, null);
+                    sequences.set(index, position + capacity);
+                    return(element);
+                }
+            } else if(difference < 0){
+                return(null);
+            }
+        }
+    }
+
+    /**
+     * Moves up to maxElements elements (in FIFO order) into the drain list.
+     *
+     * @return the number of elements moved
+     */
+    public int drainTo(List<T> drain, int maxElements){
+        int drained = 0;
+        while(drained < maxElements){
+            T element = poll();
+            if(element == null){
+                break;
+            }
+            drain.add(element);
+            drained += 1;
+        }
+        return(drained);
+    }
+
+    public int size(){
+        long size = tail.get() - head.get();
+        if(size < 0){
+            return(0);
+        }
+        return((int)Math.min(size, capacity));
+    }
+
+    public boolean isEmpty(){
+        return(size() == 0);
+    }
+
+    public int getCapacity(){
+        return(capacity);
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.virtualdb.audit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The overflow store used by the VirtualDBAuditPublisher when its backpressure policy is AUDIT_BACKPRESSURE_SPILL_TO_DISK.
+ *
+ * Records are appended (in order) to the "active" spill file. When the publisher has caught up with its ring buffer,
+ * it rolls the active file over and replays it - after which the file is deleted. The WUPIdentifier of each record
+ * is only held in the (in-memory) registry of the VirtualDBAuditRecordCodec, so a spill file is only replayable by the
+ * process that wrote it.
+ *
+ * This class is not thread-safe: the publisher serialises access to it.
+ */
+public class VirtualDBAuditSpillFile {
+    private static final Logger LOG = LoggerFactory.getLogger(VirtualDBAuditSpillFile.class);
+
+    private static final String SPILL_FILE_PREFIX = "ladon-audit-spill-";
+    private static final String SPILL_FILE_SUFFIX = ".dat";
+
+    private File spillDirectory;
+    private File activeFile;
+    private DataOutputStream activeStream;
+    private VirtualDBAuditRecordCodec recordCodec;
+
+    public VirtualDBAuditSpillFile(File spillDirectory){
+        this(spillDirectory, new VirtualDBAuditRecordCodec());
+    }
+
+    public VirtualDBAuditSpillFile(File spillDirectory, VirtualDBAuditRecordCodec recordCodec){
+        this.spillDirectory = spillDirectory;
+        this.recordCodec = recordCodec;
+    }
+
+    public void append(VirtualDBAuditRecord record) throws IOException {
+        if(activeStream == null){
+            if(!spillDirectory.isDirectory() && !spillDirectory.mkdirs()){
+                throw(new IOException("Unable to create audit spill directory " + spillDirectory));
+            }
+            activeFile = File.createTempFile(SPILL_FILE_PREFIX, SPILL_FILE_SUFFIX, spillDirectory);
+            activeStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(activeFile)));
+            LOG.warn(".append(): Audit ring buffer is full, spilling audit records to --> {}", activeFile);
+        }
+        recordCodec.writeRecord(activeStream, record);
+    }
+
+    public boolean hasActiveFile(){
+        return(activeFile != null);
+    }
+
+    /**
+     * Closes the active spill file (if any) so it can be replayed. Subsequent appends start a new file.
+     *
+     * @return the closed spill file, or null if nothing has been spilled since the last rollover
+     */
+    public File rollover() throws IOException {
+        if(activeStream == null){
+            return(null);
+        }
+        File closedFile = activeFile;
+        try {
+            activeStream.close();
+        } finally {
+            activeStream = null;
+            activeFile = null;
+        }
+        return(closedFile);
+    }
+
+    /**
+     * Reads a (rolled over) spill file back in batches of (at most) batchSize records, handing each batch to the
+     * sink, and then deletes the file.
+     *
+     * @return the number of records replayed
+     */
+    public long replay(File spilledFile, int batchSize, VirtualDBAuditRecordSink sink) throws IOException {
+        LOG.debug(".replay(): Entry, spilledFile --> {}", spilledFile);
+        long replayedCount = 0;
+        List<VirtualDBAuditRecord> batch = new ArrayList<>(batchSize);
+        try(DataInputStream spillStream = new DataInputStream(new BufferedInputStream(new FileInputStream(spilledFile)))){
+            while(true){
+                VirtualDBAuditRecord record = readRecord(spillStream);
+                if(record == null){
+                    break;
+                }
+                batch.add(record);
+                replayedCount += 1;
+                if(batch.size() >= batchSize){
+                    sink.publishAuditRecords(batch);
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+        }
+        if(!batch.isEmpty()){
+            sink.publishAuditRecords(batch);
+        }
+        if(!spilledFile.delete()){
+            LOG.warn(".replay(): Unable to delete replayed spill file --> {}", spilledFile);
+        }
+        LOG.debug(".replay(): Exit, replayedCount --> {}", replayedCount);
+        return(replayedCount);
+    }
+
+    private VirtualDBAuditRecord readRecord(DataInputStream spillStream) throws IOException {
+        spillStream.mark(1);
+        if(spillStream.read() < 0){
+            return(null);
+        }
+        spillStream.reset();
+        return(recordCodec.readRecord(spillStream));
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.virtualdb.audit;
+
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.operations.VirtualDBActionTypeEnum;
+
+/**
+ * The caller's handle on an audit transaction opened via VirtualDBAuditEntryManager.beginTransaction(). The actual
+ * PetasosParcelAuditTrailEntry is created asynchronously (by the VirtualDBAuditPublisher), so the handle only carries
+ * the transaction id used to pair the "end" record with its "begin" record.
+ */
+public class VirtualDBAuditTransaction {
+    private long transactionId;
+    private VirtualDBActionTypeEnum action;
+    private long startTime;
+    private VirtualDBAuditPayloadModeEnum payloadMode;
+
+    public VirtualDBAuditTransaction(long transactionId, VirtualDBActionTypeEnum action){
+        this(transactionId, action, VirtualDBAuditPayloadModeEnum.AUDIT_PAYLOAD_DIGEST);
+    }
+
+    public VirtualDBAuditTransaction(long transactionId, VirtualDBActionTypeEnum action, VirtualDBAuditPayloadModeEnum payloadMode){
+        this.transactionId = transactionId;
+        this.action = action;
+        this.payloadMode = payloadMode;
+        this.startTime = System.currentTimeMillis();
+    }
+
+    public long getTransactionId() {
+        return transactionId;
+    }
+
+    public VirtualDBActionTypeEnum getAction() {
+        return action;
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * The payload mode chosen when the transaction was opened, which the "end" record also uses.
+     */
+    public VirtualDBAuditPayloadModeEnum getPayloadMode() {
+        return payloadMode;
+    }
+
+    @Override
+    public String toString() {
+        return "VirtualDBAuditTransaction{" +
+                "transactionId=" + transactionId +
+                ", action=" + action +
+                ", startTime=" + startTime +
+                ", payloadMode=" + payloadMode +
+                '}';
+    }
+}
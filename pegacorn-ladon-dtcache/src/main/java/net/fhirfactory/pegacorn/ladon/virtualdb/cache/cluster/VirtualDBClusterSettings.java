@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.virtualdb.cache.cluster;
+
+/**
+ * The settings for the (optional) clustered VirtualDB cache tier.
+ */
+public class VirtualDBClusterSettings {
+    public static final String DEFAULT_CLUSTER_NAME = "ladon-virtualdb-cache";
+    public static final String DEFAULT_JGROUPS_CONFIGURATION_FILE = "default-configs/default-jgroups-tcp.xml";
+
+    private boolean enabled;
+    private String clusterName;
+    private String nodeName;
+    private String jgroupsConfigurationFile;
+    private VirtualDBClusterOwnershipEnum ownership;
+    private int numOwners;
+    private boolean l1Enabled;
+    private long invalidationLifespanInSeconds;
+
+    public VirtualDBClusterSettings(){
+        this.enabled = false;
+        this.clusterName = DEFAULT_CLUSTER_NAME;
+        this.nodeName = null;
+        this.jgroupsConfigurationFile = DEFAULT_JGROUPS_CONFIGURATION_FILE;
+        this.ownership = VirtualDBClusterOwnershipEnum.CLUSTER_OWNERSHIP_REPLICATED;
+        this.numOwners = 2;
+        this.l1Enabled = false;
+        this.invalidationLifespanInSeconds = 300;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public String getClusterName() {
+        return clusterName;
+    }
+
+    public void setClusterName(String clusterName) {
+        this.clusterName = clusterName;
+    }
+
+    public String getNodeName() {
+        return nodeName;
+    }
+
+    public void setNodeName(String nodeName) {
+        this.nodeName = nodeName;
+    }
+
+    public String getJgroupsConfigurationFile() {
+        return jgroupsConfigurationFile;
+    }
+
+    public void setJgroupsConfigurationFile(String jgroupsConfigurationFile) {
+        this.jgroupsConfigurationFile = jgroupsConfigurationFile;
+    }
+
+    public VirtualDBClusterOwnershipEnum getOwnership() {
+        return ownership;
+    }
+
+    public void setOwnership(VirtualDBClusterOwnershipEnum ownership) {
+        this.ownership = ownership;
+    }
+
+    public int getNumOwners() {
+        return numOwners;
+    }
+
+    public void setNumOwners(int numOwners) {
+        this.numOwners = numOwners;
+    }
+
+    /**
+     * Whether non-owners keep an (Infinispan L1) near copy of the encoded entries they read. Only applies to the
+     * distributed ownership mode.
+     */
+    public boolean isL1Enabled() {
+        return l1Enabled;
+    }
+
+    public void setL1Enabled(boolean l1Enabled) {
+        this.l1Enabled = l1Enabled;
+    }
+
+    public long getInvalidationLifespanInSeconds() {
+        return invalidationLifespanInSeconds;
+    }
+
+    public void setInvalidationLifespanInSeconds(long invalidationLifespanInSeconds) {
+        this.invalidationLifespanInSeconds = invalidationLifespanInSeconds;
+    }
+
+    @Override
+    public String toString() {
+        return "VirtualDBClusterSettings{" +
+                "enabled=" + enabled +
+                ", clusterName=" + clusterName +
+                ", nodeName=" + nodeName +
+                ", jgroupsConfigurationFile=" + jgroupsConfigurationFile +
+                ", ownership=" + ownership +
+                ", numOwners=" + numOwners +
+                ", l1Enabled=" + l1Enabled +
+                ", invalidationLifespanInSeconds=" + invalidationLifespanInSeconds +
+                '}';
+    }
+}
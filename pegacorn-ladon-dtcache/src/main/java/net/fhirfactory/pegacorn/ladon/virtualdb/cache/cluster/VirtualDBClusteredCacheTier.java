@@ -0,0 +1,205 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.virtualdb.cache.cluster;
+
+import ca.uhn.fhir.parser.IParser;
+import net.fhirfactory.pegacorn.util.FHIRContextUtility;
+import org.infinispan.Cache;
+import org.infinispan.configuration.cache.CacheMode;
+import org.infinispan.configuration.cache.ConfigurationBuilder;
+import org.infinispan.configuration.global.GlobalConfigurationBuilder;
+import org.infinispan.manager.DefaultCacheManager;
+import org.infinispan.manager.EmbeddedCacheManager;
+import org.infinispan.remoting.transport.jgroups.JGroupsTransport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * The (optional) clustered tier shared by the VirtualDB caches of all the Ladon nodes in a cluster. It owns the
+ * node's embedded Infinispan cache manager (and so its JGroups channel), and creates one
+ * VirtualDBClusteredResourceStore per resource cache.
+ *
+ * The tier is disabled unless "ladon.virtualdb.cluster.enabled" is set to true (see specifyClusterSettings()).
+ */
+@ApplicationScoped
+public class VirtualDBClusteredCacheTier {
+    private static final Logger LOG = LoggerFactory.getLogger(VirtualDBClusteredCacheTier.class);
+
+    private static final String PROPERTY_PREFIX = "ladon.virtualdb.cluster.";
+    private static final String RESOURCE_CACHE_PREFIX = "ladon-virtualdb-";
+    private static final String INVALIDATION_CACHE_SUFFIX = "-invalidation";
+
+    @Inject
+    private FHIRContextUtility fhirContextUtility;
+
+    private VirtualDBClusterSettings clusterSettings;
+    private Supplier<IParser> parserSupplier;
+    private EmbeddedCacheManager cacheManager;
+    boolean isInitialised;
+
+    public VirtualDBClusteredCacheTier(){
+        this.isInitialised = false;
+    }
+
+    public VirtualDBClusteredCacheTier(VirtualDBClusterSettings clusterSettings, Supplier<IParser> parserSupplier){
+        this.clusterSettings = clusterSettings;
+        this.parserSupplier = parserSupplier;
+        this.isInitialised = false;
+    }
+
+    @PostConstruct
+    public void initialise(){
+        if(!isInitialised){
+            getLogger().debug(".initialise(): Entry");
+            if(clusterSettings == null){
+                clusterSettings = specifyClusterSettings();
+            }
+            if(parserSupplier == null && fhirContextUtility != null){
+                parserSupplier = () -> fhirContextUtility.getJsonParser();
+            }
+            if(clusterSettings.isEnabled()){
+                cacheManager = new DefaultCacheManager(buildGlobalConfiguration().build());
+                getLogger().info(".initialise(): Clustered VirtualDB cache tier started, settings --> {}", clusterSettings);
+            }
+            isInitialised = true;
+            getLogger().debug(".initialise(): Exit");
+        }
+    }
+
+    /**
+     * The default settings are taken from the "ladon.virtualdb.cluster.*" system properties.
+     */
+    protected VirtualDBClusterSettings specifyClusterSettings(){
+        VirtualDBClusterSettings settings = new VirtualDBClusterSettings();
+        settings.setEnabled(Boolean.parseBoolean(System.getProperty(PROPERTY_PREFIX + "enabled", "false")));
+        settings.setClusterName(System.getProperty(PROPERTY_PREFIX + "name", VirtualDBClusterSettings.DEFAULT_CLUSTER_NAME));
+        settings.setNodeName(System.getProperty(PROPERTY_PREFIX + "node"));
+        settings.setJgroupsConfigurationFile(System.getProperty(PROPERTY_PREFIX + "jgroups", VirtualDBClusterSettings.DEFAULT_JGROUPS_CONFIGURATION_FILE));
+        String ownership = System.getProperty(PROPERTY_PREFIX + "ownership", "replicated");
+        if(ownership.equalsIgnoreCase("distributed")){
+            settings.setOwnership(VirtualDBClusterOwnershipEnum.CLUSTER_OWNERSHIP_DISTRIBUTED);
+        } else {
+            settings.setOwnership(VirtualDBClusterOwnershipEnum.CLUSTER_OWNERSHIP_REPLICATED);
+        }
+        settings.setNumOwners(Integer.parseInt(System.getProperty(PROPERTY_PREFIX + "owners", "2")));
+        settings.setL1Enabled(Boolean.parseBoolean(System.getProperty(PROPERTY_PREFIX + "l1", "false")));
+        return(settings);
+    }
+
+    protected Logger getLogger(){
+        return(LOG);
+    }
+
+    public boolean isEnabled(){
+        return(cacheManager != null);
+    }
+
+    public int getClusterSize(){
+        if(cacheManager == null || cacheManager.getMembers() == null){
+            return(0);
+        }
+        return(cacheManager.getMembers().size());
+    }
+
+    /**
+     * This method creates (or joins) the clustered caches for the named VirtualDB cache.
+     *
+     * @param cacheName The name of the VirtualDB cache (e.g. "Patient")
+     * @param lifespanInSeconds The lifespan of entries within the clustered cache (0 --> no expiry)
+     * @param invalidationHandler Called with the key of any Resource written/removed by another node
+     * @return The clustered resource store, or null if the tier is not enabled
+     */
+    public VirtualDBClusteredResourceStore getResourceStore(String cacheName, long lifespanInSeconds, Consumer<String> invalidationHandler){
+        getLogger().debug(".getResourceStore(): Entry, cacheName --> {}", cacheName);
+        if(!isEnabled()){
+            getLogger().debug(".getResourceStore(): Exit, clustered tier is not enabled");
+            return(null);
+        }
+        String resourceCacheName = RESOURCE_CACHE_PREFIX + cacheName;
+        String invalidationCacheName = resourceCacheName + INVALIDATION_CACHE_SUFFIX;
+        cacheManager.defineConfiguration(resourceCacheName, buildResourceCacheConfiguration(lifespanInSeconds).build());
+        cacheManager.defineConfiguration(invalidationCacheName, buildInvalidationCacheConfiguration().build());
+        Cache<String, String> resourceCache = cacheManager.getCache(resourceCacheName);
+        Cache<String, Long> invalidationCache = cacheManager.getCache(invalidationCacheName);
+        VirtualDBClusteredResourceStore resourceStore = new VirtualDBClusteredResourceStore(resourceCache, invalidationCache, parserSupplier, invalidationHandler, clusterSettings.getInvalidationLifespanInSeconds());
+        getLogger().debug(".getResourceStore(): Exit");
+        return(resourceStore);
+    }
+
+    @PreDestroy
+    public void shutdown(){
+        getLogger().debug(".shutdown(): Entry");
+        if(cacheManager != null){
+            cacheManager.stop();
+            cacheManager = null;
+        }
+        getLogger().debug(".shutdown(): Exit");
+    }
+
+    //
+    // Configuration
+    //
+
+    private GlobalConfigurationBuilder buildGlobalConfiguration(){
+        GlobalConfigurationBuilder globalConfiguration = GlobalConfigurationBuilder.defaultClusteredBuilder();
+        globalConfiguration.transport()
+                .clusterName(clusterSettings.getClusterName())
+                .addProperty(JGroupsTransport.CONFIGURATION_FILE, clusterSettings.getJgroupsConfigurationFile());
+        if(clusterSettings.getNodeName() != null){
+            globalConfiguration.transport().nodeName(clusterSettings.getNodeName());
+        }
+        return(globalConfiguration);
+    }
+
+    private ConfigurationBuilder buildResourceCacheConfiguration(long lifespanInSeconds){
+        ConfigurationBuilder cacheConfiguration = new ConfigurationBuilder();
+        switch(clusterSettings.getOwnership()){
+            case CLUSTER_OWNERSHIP_DISTRIBUTED:
+                cacheConfiguration.clustering().cacheMode(CacheMode.DIST_SYNC).hash().numOwners(clusterSettings.getNumOwners());
+                if(clusterSettings.isL1Enabled()){
+                    cacheConfiguration.clustering().l1().enable();
+                }
+                break;
+            case CLUSTER_OWNERSHIP_REPLICATED:
+            default:
+                cacheConfiguration.clustering().cacheMode(CacheMode.REPL_SYNC);
+        }
+        if(lifespanInSeconds > 0){
+            cacheConfiguration.expiration().lifespan(lifespanInSeconds, TimeUnit.SECONDS);
+        }
+        return(cacheConfiguration);
+    }
+
+    private ConfigurationBuilder buildInvalidationCacheConfiguration(){
+        ConfigurationBuilder cacheConfiguration = new ConfigurationBuilder();
+        cacheConfiguration.clustering().cacheMode(CacheMode.REPL_SYNC);
+        return(cacheConfiguration);
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.virtualdb.cache.cluster;
+
+import ca.uhn.fhir.parser.IParser;
+import org.hl7.fhir.r4.model.Resource;
+import org.infinispan.Cache;
+import org.infinispan.notifications.Listener;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntryCreated;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntryModified;
+import org.infinispan.notifications.cachelistener.event.CacheEntryCreatedEvent;
+import org.infinispan.notifications.cachelistener.event.CacheEntryModifiedEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * The clustered (shared) copy of a single VirtualDB resource cache. Resources are held in their encoded (JSON)
+ * form, keyed by their versionless id, in a replicated or distributed Infinispan cache. Each node's own
+ * VirtualDB cache acts as the (decoded) near cache in front of it.
+ *
+ * Every put/remove is followed by a write to a small replicated "invalidation" cache. Each node listens to that
+ * cache and evicts its near copy of any Resource written by another node, so near caches never serve a
+ * Resource that has since been synchronised or deleted elsewhere in the cluster.
+ *
+ * The clustered tier only ever supplements a node's own cache: a failure within it (e.g. a lost or partitioned
+ * JGroups channel, or a stopped cache) is logged and otherwise treated as a miss, so it never fails the node's own
+ * cache operation. Writes are kept synchronous so that another node reading after a write (or its invalidation)
+ * sees the new Resource.
+ */
+public class VirtualDBClusteredResourceStore {
+    private static final Logger LOG = LoggerFactory.getLogger(VirtualDBClusteredResourceStore.class);
+
+    private Cache<String, String> resourceCache;
+    private Cache<String, Long> invalidationCache;
+    private Supplier<IParser> parserSupplier;
+    private Consumer<String> invalidationHandler;
+    private long invalidationLifespanInSeconds;
+    private InvalidationListener invalidationListener;
+
+    public VirtualDBClusteredResourceStore(Cache<String, String> resourceCache, Cache<String, Long> invalidationCache, Supplier<IParser> parserSupplier, Consumer<String> invalidationHandler, long invalidationLifespanInSeconds){
+        this.resourceCache = resourceCache;
+        this.invalidationCache = invalidationCache;
+        this.parserSupplier = parserSupplier;
+        this.invalidationHandler = invalidationHandler;
+        this.invalidationLifespanInSeconds = invalidationLifespanInSeconds;
+        this.invalidationListener = new InvalidationListener();
+        this.invalidationCache.addListener(this.invalidationListener);
+    }
+
+    public Resource getResource(String key){
+        LOG.debug(".getResource(): Entry, key --> {}", key);
+        if(key == null){
+            return(null);
+        }
+        Resource resource;
+        try {
+            String encodedResource = resourceCache.get(key);
+            if(encodedResource == null){
+                LOG.debug(".getResource(): Exit, not in the clustered cache");
+                return(null);
+            }
+            resource = (Resource)parserSupplier.get().parseResource(encodedResource);
+        } catch(RuntimeException ex){
+            LOG.warn(".getResource(): Could not read {} from the clustered cache, treating as a miss, error --> {}", key, ex.getMessage());
+            return(null);
+        }
+        LOG.debug(".getResource(): Exit, resource retrieved");
+        return(resource);
+    }
+
+    public void putResource(String key, Resource resource){
+        LOG.debug(".putResource(): Entry, key --> {}", key);
+        if(key == null || resource == null){
+            return;
+        }
+        try {
+            String encodedResource = parserSupplier.get().encodeResourceToString(resource);
+            resourceCache.put(key, encodedResource);
+            publishInvalidation(key);
+        } catch(RuntimeException ex){
+            LOG.warn(".putResource(): Could not write {} to the clustered cache, error --> {}", key, ex.getMessage());
+            return;
+        }
+        LOG.debug(".putResource(): Exit");
+    }
+
+    public void removeResource(String key){
+        LOG.debug(".removeResource(): Entry, key --> {}", key);
+        if(key == null){
+            return;
+        }
+        try {
+            resourceCache.remove(key);
+            publishInvalidation(key);
+        } catch(RuntimeException ex){
+            LOG.warn(".removeResource(): Could not remove {} from the clustered cache, error --> {}", key, ex.getMessage());
+            return;
+        }
+        LOG.debug(".removeResource(): Exit");
+    }
+
+    public int getLocalEntryCount(){
+        return(resourceCache.getAdvancedCache().getDataContainer().size());
+    }
+
+    public void close(){
+        invalidationCache.removeListener(invalidationListener);
+    }
+
+    private void publishInvalidation(String key){
+        invalidationCache.put(key, System.currentTimeMillis(), invalidationLifespanInSeconds, TimeUnit.SECONDS);
+    }
+
+    private void onRemoteInvalidation(String key){
+        LOG.trace(".onRemoteInvalidation(): Entry, key --> {}", key);
+        try {
+            invalidationHandler.accept(key);
+        } catch(Exception ex){
+            LOG.warn(".onRemoteInvalidation(): Could not invalidate near cache entry {}, error --> {}", key, ex.getMessage());
+        }
+    }
+
+    @Listener
+    public class InvalidationListener {
+
+        @CacheEntryCreated
+        public void entryCreated(CacheEntryCreatedEvent<String, Long> event){
+            if(!event.isPre() && !event.isOriginLocal()){
+                onRemoteInvalidation(event.getKey());
+            }
+        }
+
+        @CacheEntryModified
+        public void entryModified(CacheEntryModifiedEvent<String, Long> event){
+            if(!event.isPre() && !event.isOriginLocal()){
+                onRemoteInvalidation(event.getKey());
+            }
+        }
+    }
+}
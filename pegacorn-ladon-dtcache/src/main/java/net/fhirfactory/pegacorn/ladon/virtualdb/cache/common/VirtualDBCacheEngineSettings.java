@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.virtualdb.cache.common;
+
+/**
+ * The bounds and expiry settings used to build a (Caffeine based) cache engine. A value of 0 means "not bounded"
+ * or "does not expire" as appropriate.
+ */
+public class VirtualDBCacheEngineSettings {
+    private String cacheName;
+    private long maximumSize;
+    private long maximumWeight;
+    private long expireAfterWriteInSeconds;
+    private long expireAfterAccessInSeconds;
+
+    public VirtualDBCacheEngineSettings(String cacheName){
+        this.cacheName = cacheName;
+        this.maximumSize = 0;
+        this.maximumWeight = 0;
+        this.expireAfterWriteInSeconds = 0;
+        this.expireAfterAccessInSeconds = 0;
+    }
+
+    public String getCacheName() {
+        return cacheName;
+    }
+
+    public long getMaximumSize() {
+        return maximumSize;
+    }
+
+    public void setMaximumSize(long maximumSize) {
+        this.maximumSize = maximumSize;
+    }
+
+    public long getMaximumWeight() {
+        return maximumWeight;
+    }
+
+    public void setMaximumWeight(long maximumWeight) {
+        this.maximumWeight = maximumWeight;
+    }
+
+    public long getExpireAfterWriteInSeconds() {
+        return expireAfterWriteInSeconds;
+    }
+
+    public void setExpireAfterWriteInSeconds(long expireAfterWriteInSeconds) {
+        this.expireAfterWriteInSeconds = expireAfterWriteInSeconds;
+    }
+
+    public long getExpireAfterAccessInSeconds() {
+        return expireAfterAccessInSeconds;
+    }
+
+    public void setExpireAfterAccessInSeconds(long expireAfterAccessInSeconds) {
+        this.expireAfterAccessInSeconds = expireAfterAccessInSeconds;
+    }
+
+    @Override
+    public String toString() {
+        return "VirtualDBCacheEngineSettings{" +
+                "cacheName=" + cacheName +
+                ", maximumSize=" + maximumSize +
+                ", maximumWeight=" + maximumWeight +
+                ", expireAfterWriteInSeconds=" + expireAfterWriteInSeconds +
+                ", expireAfterAccessInSeconds=" + expireAfterAccessInSeconds +
+                '}';
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.virtualdb.cache.common;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A single (daemon) scheduler thread shared by all the VirtualDB caches, which runs each cache's expiry sweep
+ * periodically. This keeps the removal of expired entries off the cache write path.
+ */
+@ApplicationScoped
+public class VirtualDBCacheExpiryScheduler {
+    private static final Logger LOG = LoggerFactory.getLogger(VirtualDBCacheExpiryScheduler.class);
+
+    private static final String SCHEDULER_THREAD_NAME = "VirtualDBCacheExpiryScheduler";
+
+    private ScheduledExecutorService sweepExecutor;
+
+    public VirtualDBCacheExpiryScheduler(){
+        this.sweepExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread sweepThread = new Thread(runnable, SCHEDULER_THREAD_NAME);
+            sweepThread.setDaemon(true);
+            return(sweepThread);
+        });
+    }
+
+    /**
+     * This method registers a cache's sweep task with the scheduler. A failing sweep is logged and does not prevent
+     * subsequent sweeps from being run.
+     *
+     * @param cacheName The name of the cache (for logging purposes)
+     * @param sweepTask The task that removes the cache's expired entries
+     * @param periodInMillis The period between successive sweeps
+     * @return The ScheduledFuture of the (repeating) sweep task
+     */
+    public ScheduledFuture<?> register(String cacheName, Runnable sweepTask, long periodInMillis){
+        LOG.debug(".register(): Entry, cacheName --> {}, periodInMillis --> {}", cacheName, periodInMillis);
+        Runnable guardedSweepTask = () -> {
+            try {
+                sweepTask.run();
+            } catch(Exception ex){
+                LOG.warn(".register(): Sweep of cache {} failed, error --> {}", cacheName, ex.getMessage());
+            }
+        };
+        ScheduledFuture<?> sweepFuture = sweepExecutor.scheduleWithFixedDelay(guardedSweepTask, periodInMillis, periodInMillis, TimeUnit.MILLISECONDS);
+        LOG.debug(".register(): Exit");
+        return(sweepFuture);
+    }
+
+    @PreDestroy
+    protected void shutdown(){
+        LOG.debug(".shutdown(): Entry");
+        sweepExecutor.shutdownNow();
+        LOG.debug(".shutdown(): Exit");
+    }
+}
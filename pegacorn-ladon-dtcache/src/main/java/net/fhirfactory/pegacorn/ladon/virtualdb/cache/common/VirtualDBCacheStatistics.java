@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.virtualdb.cache.common;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Hit, miss and eviction counters for a VirtualDB cache. The counters are maintained by the cache bases (rather
+ * than by the cache engine) so that they have the same meaning regardless of the engine in use.
+ */
+public class VirtualDBCacheStatistics {
+    private LongAdder hitCount;
+    private LongAdder missCount;
+    private LongAdder evictionCount;
+    private LongAdder expiryCount;
+
+    public VirtualDBCacheStatistics(){
+        this.hitCount = new LongAdder();
+        this.missCount = new LongAdder();
+        this.evictionCount = new LongAdder();
+        this.expiryCount = new LongAdder();
+    }
+
+    public void recordHit(){
+        hitCount.increment();
+    }
+
+    public void recordMiss(){
+        missCount.increment();
+    }
+
+    /**
+     * An entry was removed to keep the cache within its size/weight bound.
+     */
+    public void recordEviction(){
+        evictionCount.increment();
+    }
+
+    /**
+     * An entry was removed because it exceeded its age threshold (or idle period).
+     */
+    public void recordExpiry(){
+        expiryCount.increment();
+    }
+
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    public long getExpiryCount() {
+        return expiryCount.sum();
+    }
+
+    public double getHitRate(){
+        long hits = getHitCount();
+        long requests = hits + getMissCount();
+        if(requests == 0){
+            return(1.0);
+        }
+        return((double)hits / requests);
+    }
+
+    @Override
+    public String toString() {
+        return "VirtualDBCacheStatistics{" +
+                "hitCount=" + getHitCount() +
+                ", missCount=" + getMissCount() +
+                ", evictionCount=" + getEvictionCount() +
+                ", expiryCount=" + getExpiryCount() +
+                '}';
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.virtualdb.cache.common;
+
+public enum VirtualDBCacheStorageModeEnum {
+    STORAGE_MODE_OBJECT("Object: entries hold the (inflated) HAPI Resource"),
+    STORAGE_MODE_ENCODED("Encoded: entries hold the (compact) JSON encoding of the Resource"),
+    STORAGE_MODE_DEFLATE("Deflate: entries hold the JSON encoding, deflated using a shared preset dictionary");
+
+    private String storageModeName;
+
+    private VirtualDBCacheStorageModeEnum(String name){
+        this.storageModeName = name;
+    }
+
+    public String getStorageModeName(){
+        return(this.storageModeName);
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.virtualdb.cache.common;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.cache.CacheResourceEntry;
+import org.hl7.fhir.r4.model.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToIntFunction;
+
+/**
+ * Builds the Caffeine (W-TinyLFU) based cache engine used by the VirtualDB caches when they are configured with
+ * VirtualDBCacheEngineEnum.CACHE_ENGINE_CAFFEINE.
+ *
+ * Explicit removals/replacements are made by the cache bases themselves (which maintain their secondary structures
+ * as they do so), so only removals made by Caffeine (size/weight eviction, expiry or collection) are passed to the
+ * eviction handler. The handler is run asynchronously (on Caffeine's executor) after the entry has been removed,
+ * so it must tolerate the key having been re-added in the meantime.
+ */
+public class VirtualDBCaffeineCacheFactory {
+    private static final Logger LOG = LoggerFactory.getLogger(VirtualDBCaffeineCacheFactory.class);
+
+    public interface EvictionHandler<K> {
+        void onEviction(K key, CacheResourceEntry evictedEntry, boolean wasExpired);
+    }
+
+    public static <K> Cache<K, CacheResourceEntry> newCache(VirtualDBCacheEngineSettings settings, ToIntFunction<Resource> weigher, EvictionHandler<K> evictionHandler){
+        LOG.debug(".newCache(): Entry, settings --> {}", settings);
+        Caffeine<K, CacheResourceEntry> builder = Caffeine.newBuilder()
+                .removalListener((K key, CacheResourceEntry evictedEntry, RemovalCause cause) -> {
+                    if(cause.wasEvicted() && key != null && evictedEntry != null){
+                        evictionHandler.onEviction(key, evictedEntry, cause == RemovalCause.EXPIRED);
+                    }
+                });
+        if(settings.getMaximumWeight() > 0){
+            builder = builder
+                    .maximumWeight(settings.getMaximumWeight())
+                    .weigher((K key, CacheResourceEntry entry) -> Math.max(0, weigher.applyAsInt(entry.getResource())));
+        } else if(settings.getMaximumSize() > 0){
+            builder = builder.maximumSize(settings.getMaximumSize());
+        }
+        if(settings.getExpireAfterWriteInSeconds() > 0){
+            builder = builder.expireAfterWrite(settings.getExpireAfterWriteInSeconds(), TimeUnit.SECONDS);
+        }
+        if(settings.getExpireAfterAccessInSeconds() > 0){
+            builder = builder.expireAfterAccess(settings.getExpireAfterAccessInSeconds(), TimeUnit.SECONDS);
+        }
+        Cache<K, CacheResourceEntry> cache = builder.build();
+        LOG.debug(".newCache(): Exit");
+        return(cache);
+    }
+}
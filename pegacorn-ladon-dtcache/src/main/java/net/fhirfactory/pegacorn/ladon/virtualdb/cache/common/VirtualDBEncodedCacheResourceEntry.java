@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.virtualdb.cache.common;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.cache.CacheResourceEntry;
+import org.hl7.fhir.r4.model.Resource;
+
+/**
+ * A CacheResourceEntry that holds the compact (encoded, possibly compressed) form of its Resource, which is decoded
+ * each time getResource() is called. If a decoded hot-set is supplied, the most recently/frequently used decoded
+ * Resources are kept there (keyed by entry identity, so a replaced entry is never served from the hot-set).
+ */
+public class VirtualDBEncodedCacheResourceEntry extends CacheResourceEntry {
+    private byte[] storedResource;
+    private VirtualDBResourceCodec resourceCodec;
+    private Cache<CacheResourceEntry, Resource> decodedHotSet;
+
+    public VirtualDBEncodedCacheResourceEntry(Resource resource, long retirementPeriodInMillis, VirtualDBResourceCodec resourceCodec, Cache<CacheResourceEntry, Resource> decodedHotSet){
+        super(null, retirementPeriodInMillis);
+        this.resourceCodec = resourceCodec;
+        this.decodedHotSet = decodedHotSet;
+        this.storedResource = resourceCodec.encode(resource);
+    }
+
+    @Override
+    public Resource getResource() {
+        if(decodedHotSet == null){
+            return(resourceCodec.decode(storedResource));
+        }
+        return(decodedHotSet.get(this, entry -> resourceCodec.decode(storedResource)));
+    }
+
+    public int getStoredSize(){
+        return(storedResource.length);
+    }
+}
@@ -21,21 +21,29 @@
  */
 package net.fhirfactory.pegacorn.ladon.virtualdb.cache.common;
 
+import ca.uhn.fhir.parser.IParser;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import net.fhirfactory.pegacorn.ladon.model.virtualdb.cache.CacheResourceEntry;
 import net.fhirfactory.pegacorn.ladon.model.virtualdb.operations.VirtualDBActionStatusEnum;
 import net.fhirfactory.pegacorn.ladon.model.virtualdb.operations.VirtualDBActionTypeEnum;
 import net.fhirfactory.pegacorn.ladon.model.virtualdb.operations.VirtualDBMethodOutcome;
 import net.fhirfactory.pegacorn.ladon.model.virtualdb.businesskey.VirtualDBKeyManagement;
 import net.fhirfactory.pegacorn.ladon.model.virtualdb.operations.VirtualDBMethodOutcomeFactory;
+import net.fhirfactory.pegacorn.ladon.virtualdb.cache.cluster.VirtualDBClusteredCacheTier;
+import net.fhirfactory.pegacorn.ladon.virtualdb.cache.cluster.VirtualDBClusteredResourceStore;
+import net.fhirfactory.pegacorn.ladon.virtualdb.snapshot.ResourceSnapshotService;
+import net.fhirfactory.pegacorn.util.FHIRContextUtility;
 import org.hl7.fhir.r4.model.*;
 import org.slf4j.Logger;
 
 import javax.annotation.PostConstruct;
 import javax.inject.Inject;
-import java.time.Instant;
-import java.util.Enumeration;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.Supplier;
 
 public abstract class VirtualDBIdTypeBasedCacheBase {
 
@@ -45,13 +53,46 @@ public abstract class VirtualDBIdTypeBasedCacheBase {
     @Inject
     private VirtualDBMethodOutcomeFactory outcomeFactory;
 
-    private ConcurrentHashMap<IdType, CacheResourceEntry> resourceCacheById;
+    @Inject
+    private VirtualDBCacheExpiryScheduler expiryScheduler;
+
+    @Inject
+    private VirtualDBClusteredCacheTier clusteredCacheTier;
+
+    @Inject
+    private FHIRContextUtility fhirContextUtility;
+
+    @Inject
+    private ResourceSnapshotService snapshotService;
+
+    private static final long DEFAULT_EXPIRY_SWEEP_PERIOD_IN_MILLIS = 1000;
+    private static final int DEFAULT_EXPIRY_SWEEP_BUDGET = 1000;
+
+    private ConcurrentMap<IdType, CacheResourceEntry> resourceCacheById;
+    private Cache<IdType, CacheResourceEntry> caffeineCache;
     private ConcurrentHashMap<IdType, Object> resourceCacheLockSet;
+    private VirtualDBIdentifierIndex identifierIndex;
+    private ConcurrentSkipListSet<ExpiryTicket> expiryQueue;
+    private VirtualDBCacheStatistics cacheStatistics;
+    private VirtualDBClusteredResourceStore clusteredStore;
+    private Supplier<IParser> parserSupplier;
+    private VirtualDBResourceCodec resourceCodec;
+    private Cache<CacheResourceEntry, Resource> decodedHotSet;
+    private volatile Set<IdType> snapshotChanges;
     boolean isInitialised;
 
     protected VirtualDBIdTypeBasedCacheBase() {
         resourceCacheById = new ConcurrentHashMap<>();
+        caffeineCache = null;
         resourceCacheLockSet = new ConcurrentHashMap<>();
+        identifierIndex = new VirtualDBIdentifierIndex();
+        expiryQueue = new ConcurrentSkipListSet<>();
+        cacheStatistics = new VirtualDBCacheStatistics();
+        clusteredStore = null;
+        parserSupplier = null;
+        resourceCodec = null;
+        decodedHotSet = null;
+        snapshotChanges = null;
         this.isInitialised = false;
     }
 
@@ -63,11 +104,112 @@ public abstract class VirtualDBIdTypeBasedCacheBase {
     protected abstract String getCacheClassName();
     protected abstract Resource createClonedResource(Resource resource);
 
+    /**
+     * The period between successive expiry sweeps of the Cache.
+     */
+    protected long specifyCacheExpirySweepPeriodInMillis(){
+        return(DEFAULT_EXPIRY_SWEEP_PERIOD_IN_MILLIS);
+    }
+
+    /**
+     * The maximum number of expired entries removed by a single expiry sweep, so that a sweep of a large
+     * (mostly expired) Cache doesn't monopolise the shared expiry scheduler. Any remaining expired entries are
+     * removed by subsequent sweeps (and are not visible to readers in the meantime).
+     */
+    protected int specifyCacheExpirySweepBudget(){
+        return(DEFAULT_EXPIRY_SWEEP_BUDGET);
+    }
+
+    /**
+     * The cache engine used for this resource type. The Caffeine engine should be used for resource types whose
+     * volume (e.g. during large ADT replays) would otherwise exhaust the heap.
+     */
+    protected VirtualDBCacheEngineEnum specifyCacheEngine(){
+        return(VirtualDBCacheEngineEnum.CACHE_ENGINE_CONCURRENT_MAP);
+    }
+
+    /**
+     * The maximum number of entries held by the Caffeine engine (0 --> unbounded). Ignored if a maximum weight
+     * is specified.
+     */
+    protected long specifyCacheMaximumSize(){
+        return(0);
+    }
+
+    /**
+     * The maximum total weight (see weighCacheEntry()) of the entries held by the Caffeine engine (0 --> unbounded).
+     */
+    protected long specifyCacheMaximumWeight(){
+        return(0);
+    }
+
+    /**
+     * The idle period after which the Caffeine engine expires an entry that hasn't been read (0 --> never).
+     */
+    protected int specifyCacheExpireAfterAccessInSeconds(){
+        return(0);
+    }
+
+    /**
+     * The weight of a Resource when the Caffeine engine is weight bounded.
+     */
+    protected int weighCacheEntry(Resource resource){
+        return(1);
+    }
+
+    /**
+     * The form in which the Resources are held by the Cache. The encoded/compressed forms are typically an order of
+     * magnitude smaller than the (inflated) HAPI Resource, at the cost of decoding the Resource on each read.
+     */
+    protected VirtualDBCacheStorageModeEnum specifyCacheStorageMode(){
+        return(VirtualDBCacheStorageModeEnum.STORAGE_MODE_OBJECT);
+    }
+
+    /**
+     * The number of decoded Resources kept (in a small W-TinyLFU bounded hot-set) when using an encoded storage
+     * mode (0 --> no hot-set, every read decodes).
+     */
+    protected int specifyDecodedHotSetSize(){
+        return(0);
+    }
+
     @PostConstruct
     protected void initialise() {
         if (!this.isInitialised) {
             getLogger().debug(".initialise(): Initialising the FHIR Parser framework");
+            if(specifyCacheEngine() == VirtualDBCacheEngineEnum.CACHE_ENGINE_CAFFEINE){
+                VirtualDBCacheEngineSettings engineSettings = new VirtualDBCacheEngineSettings(getCacheClassName());
+                engineSettings.setMaximumSize(specifyCacheMaximumSize());
+                engineSettings.setMaximumWeight(specifyCacheMaximumWeight());
+                engineSettings.setExpireAfterWriteInSeconds(specifyCacheElementRetirementInSeconds());
+                engineSettings.setExpireAfterAccessInSeconds(specifyCacheExpireAfterAccessInSeconds());
+                getLogger().debug(".initialise(): Using the Caffeine cache engine, settings --> {}", engineSettings);
+                caffeineCache = VirtualDBCaffeineCacheFactory.newCache(engineSettings, this::weighCacheEntry, this::onEngineEviction);
+                resourceCacheById = caffeineCache.asMap();
+            }
+            if(specifyCacheStorageMode() != VirtualDBCacheStorageModeEnum.STORAGE_MODE_OBJECT){
+                if(parserSupplier == null){
+                    parserSupplier = () -> fhirContextUtility.getJsonParser();
+                }
+                getLogger().debug(".initialise(): Using storage mode --> {}", specifyCacheStorageMode());
+                resourceCodec = new VirtualDBResourceCodec(specifyCacheStorageMode(), parserSupplier);
+                if(specifyDecodedHotSetSize() > 0){
+                    decodedHotSet = Caffeine.newBuilder().weakKeys().maximumSize(specifyDecodedHotSetSize()).build();
+                }
+            }
+            if(clusteredCacheTier != null && clusteredCacheTier.isEnabled()){
+                getLogger().debug(".initialise(): Joining the clustered cache tier");
+                clusteredStore = clusteredCacheTier.getResourceStore(getCacheClassName(), specifyCacheElementRetirementInSeconds(), this::onClusterInvalidation);
+            }
+            if(expiryScheduler != null) {
+                getLogger().debug(".initialise(): Registering the Cache expiry sweep");
+                expiryScheduler.register(getCacheClassName(), () -> sweepExpiredEntries(System.currentTimeMillis()), specifyCacheExpirySweepPeriodInMillis());
+            }
             this.isInitialised = true;
+            if(snapshotService != null){
+                getLogger().debug(".initialise(): Restoring the Cache from its snapshot");
+                snapshotService.attach(this);
+            }
         }
     }
 
@@ -81,9 +223,6 @@ public abstract class VirtualDBIdTypeBasedCacheBase {
      * addition to the Cache.
      */
     private VirtualDBMethodOutcome addResourceToCache(Resource resourceToAdd){
-        // Perform house-keeping on the Cache
-        purgeResourcesFromCache();
-        // House-keeping done
         String activityLocation = getCacheClassName() + "::addResourceToCache()";
         if(resourceToAdd == null) {
             getLogger().error(".addResourceToCache(): resourceToAdd (Resource) is null, failing out");
@@ -96,21 +235,17 @@ public abstract class VirtualDBIdTypeBasedCacheBase {
             resourceToAdd.setId(newID);
             resourceId = new IdType(newID);
         }
-        if(resourceCacheById.containsKey(resourceId)){
-            CacheResourceEntry resourceEntry = resourceCacheById.get(resourceId);
-            if(resourceEntry != null){
-                Resource existingResource = resourceEntry.getResource();
-                if(areTheSame(existingResource, resourceToAdd)){
-                    VirtualDBMethodOutcome vdbOutcome = outcomeFactory.createResourceActivityOutcome(resourceId, VirtualDBActionStatusEnum.CREATION_NOT_REQUIRED, activityLocation);
-                    return(vdbOutcome);
-                }
+        IdType cacheKey = buildCacheKey(resourceId);
+        CacheResourceEntry existingEntry = resourceCacheById.get(cacheKey);
+        if(existingEntry != null && !existingEntry.isExpired(System.currentTimeMillis())){
+            Resource existingResource = existingEntry.getResource();
+            if(areTheSame(existingResource, resourceToAdd)){
+                VirtualDBMethodOutcome vdbOutcome = outcomeFactory.createResourceActivityOutcome(resourceId, VirtualDBActionStatusEnum.CREATION_NOT_REQUIRED, activityLocation);
+                return(vdbOutcome);
             }
-            resourceCacheById.remove(resourceId);
-            resourceCacheLockSet.remove(resourceId);
         }
-        resourceCacheLockSet.put(resourceId, new Object());
-        CacheResourceEntry newEntry = new CacheResourceEntry(resourceToAdd);
-        resourceCacheById.put(resourceId, newEntry);
+        putEntry(cacheKey, resourceToAdd);
+        publishToCluster(cacheKey, resourceToAdd);
         VirtualDBMethodOutcome vdbOutcome = outcomeFactory.createResourceActivityOutcome(resourceId, VirtualDBActionStatusEnum.CREATION_FINISH, activityLocation);
         vdbOutcome.setResource(resourceToAdd);
         return(vdbOutcome);
@@ -129,9 +264,13 @@ public abstract class VirtualDBIdTypeBasedCacheBase {
             VirtualDBMethodOutcome vdbOutcome = outcomeFactory.generateBadAttributeOutcome(activityLocation, VirtualDBActionTypeEnum.DELETE, VirtualDBActionStatusEnum.DELETE_FAILURE, "Parameter identifier (Identifier) content is invalid");
             return(vdbOutcome);
         }
-        if(resourceCacheById.containsKey(id)) {
-            resourceCacheById.remove(id);
-            resourceCacheLockSet.remove(id);
+        IdType cacheKey = buildCacheKey(id);
+        boolean wasRemoved = removeEntry(cacheKey, null);
+        if(clusteredStore != null){
+            clusteredStore.removeResource(buildClusterKey(cacheKey));
+        }
+        if(wasRemoved) {
+            resourceCacheLockSet.remove(cacheKey);
             VirtualDBMethodOutcome vdbOutcome = outcomeFactory.createResourceActivityOutcome(id, VirtualDBActionStatusEnum.DELETE_FINISH, activityLocation);
             return (vdbOutcome);
         } else {
@@ -141,9 +280,84 @@ public abstract class VirtualDBIdTypeBasedCacheBase {
     }
 
     /**
+     * This function inserts (or replaces) the entry for the given id and (re)indexes its Identifiers. The Identifier
+     * Index and the Expiry Queue are updated within the compute() so that they are always consistent with the Cache
+     * content.
      *
-     * @param identifier
-     * @return
+     * @param id The cache key of the entry
+     * @param resource The Resource to be wrapped in a CacheResourceEntry and added to the Cache
+     */
+    private void putEntry(IdType id, Resource resource){
+        long retirementPeriodInMillis = Long.valueOf(specifyCacheElementRetirementInSeconds()) * 1000;
+        putEntry(id, resource, retirementPeriodInMillis, false);
+        markSnapshotChange(id);
+    }
+
+    /**
+     * @param onlyIfAbsent If true, an existing entry for the id is left in place (rather than replaced)
+     * @return True if the entry was inserted
+     */
+    private boolean putEntry(IdType id, Resource resource, long retirementPeriodInMillis, boolean onlyIfAbsent){
+        resourceCacheLockSet.putIfAbsent(id, new Object());
+        CacheResourceEntry newEntry = createCacheEntry(resource, retirementPeriodInMillis);
+        List<Identifier> newEntryIdentifiers = resolveIdentifierSet(resource);
+        boolean[] inserted = new boolean[1];
+        resourceCacheById.compute(id, (key, replacedEntry) -> {
+            if(replacedEntry != null){
+                if(onlyIfAbsent){
+                    return(replacedEntry);
+                }
+                expiryQueue.remove(new ExpiryTicket(replacedEntry.getExpiryDeadline(), key));
+            }
+            identifierIndex.indexResource(key, newEntryIdentifiers);
+            if(newEntry.getExpiryDeadline() != CacheResourceEntry.NO_EXPIRY){
+                expiryQueue.add(new ExpiryTicket(newEntry.getExpiryDeadline(), key));
+            }
+            inserted[0] = true;
+            return(newEntry);
+        });
+        return(inserted[0]);
+    }
+
+    private CacheResourceEntry createCacheEntry(Resource resource, long retirementPeriodInMillis){
+        if(resourceCodec == null){
+            return(new CacheResourceEntry(resource, retirementPeriodInMillis));
+        }
+        return(new VirtualDBEncodedCacheResourceEntry(resource, retirementPeriodInMillis, resourceCodec, decodedHotSet));
+    }
+
+    /**
+     * This function removes the entry (and its Identifier Index entries) for the given id. If expectedEntry is not
+     * null, the entry is only removed if it is still the entry in the Cache (i.e. it hasn't been replaced).
+     *
+     * @param id The cache key of the entry to be removed
+     * @param expectedEntry The entry expected to be in the Cache (or null if any entry should be removed)
+     * @return True if an entry was removed, false otherwise
+     */
+    private boolean removeEntry(IdType id, CacheResourceEntry expectedEntry){
+        boolean[] removed = new boolean[1];
+        resourceCacheById.computeIfPresent(id, (key, currentEntry) -> {
+            if(expectedEntry != null && currentEntry != expectedEntry){
+                return(currentEntry);
+            }
+            expiryQueue.remove(new ExpiryTicket(currentEntry.getExpiryDeadline(), key));
+            identifierIndex.unindexResource(key);
+            removed[0] = true;
+            return(null);
+        });
+        if(removed[0]){
+            markSnapshotChange(id);
+        }
+        return(removed[0]);
+    }
+
+    /**
+     * This function retrieves a Resource from the Cache using the Identifier Index, rather than scanning every
+     * entry within the Cache. The clustered cache tier is keyed by id only, so it is not consulted here - a miss
+     * falls through to the Sources-of-Truth (whose result is then synchronised into this node's cache).
+     *
+     * @param identifier The Identifier of the Resource to be retrieved
+     * @return A VirtualDBMethodOutcome instance containing the Resource (if found)
      */
     private VirtualDBMethodOutcome getResourceFromCache(Identifier identifier){
         getLogger().debug(".getResourceFromCache(): Entry, identifier (Identifier) --> {}", identifier);
@@ -154,23 +368,16 @@ public abstract class VirtualDBIdTypeBasedCacheBase {
             return(vdbOutcome);
         }
         CacheResourceEntry foundResourceEntry = null;
-        for(CacheResourceEntry currentResourceEntry: resourceCacheById.values()){
-            boolean found = false;
-            List<Identifier> identifiers = resolveIdentifierSet(currentResourceEntry.getResource());
-            for(Identifier currentIdentifier: identifiers){
-                boolean systemIsSame = identifier.getSystem().equals(currentIdentifier.getSystem());
-                boolean valueIsSame = identifier.getValue().equals(currentIdentifier.getValue());
-                if(systemIsSame && valueIsSame){
-                    found = true;
-                    foundResourceEntry = currentResourceEntry;
-                    break;
-                }
-            }
-            if(found){
+        long now = System.currentTimeMillis();
+        for(IdType candidateId: identifierIndex.resolveIds(identifier)){
+            CacheResourceEntry candidateEntry = resourceCacheById.get(candidateId);
+            if(candidateEntry != null && !candidateEntry.isExpired(now)){
+                foundResourceEntry = candidateEntry;
                 break;
             }
         }
         if(foundResourceEntry == null) {
+            cacheStatistics.recordMiss();
             VirtualDBMethodOutcome vdbOutcome = new VirtualDBMethodOutcome();
             vdbOutcome.setCreated(false);
             vdbOutcome.setIdentifier(identifier);
@@ -194,6 +401,7 @@ public abstract class VirtualDBIdTypeBasedCacheBase {
             getLogger().debug(".getResourceFromCache(): exit, could not find resource");
             return (vdbOutcome);
         } else {
+            cacheStatistics.recordHit();
             VirtualDBMethodOutcome vdbOutcome = new VirtualDBMethodOutcome();
             vdbOutcome.setCreated(false);
             vdbOutcome.setIdentifier(identifier);
@@ -233,12 +441,20 @@ public abstract class VirtualDBIdTypeBasedCacheBase {
             VirtualDBMethodOutcome vdbOutcome = outcomeFactory.generateBadAttributeOutcome(activityLocation, VirtualDBActionTypeEnum.REVIEW, VirtualDBActionStatusEnum.REVIEW_FAILURE, "Parameter identifier (Identifier) content is invalid");
             return (vdbOutcome);
         }
-        if(resourceCacheById.containsKey(id)){
+        Resource foundResource = null;
+        CacheResourceEntry resourceEntry = resourceCacheById.get(buildCacheKey(id));
+        if(resourceEntry != null && !resourceEntry.isExpired(System.currentTimeMillis())){
+            foundResource = resourceEntry.getResource();
+        } else {
+            foundResource = getResourceFromCluster(id);
+        }
+        if(foundResource == null){
+            cacheStatistics.recordMiss();
             VirtualDBMethodOutcome vdbOutcome = new VirtualDBMethodOutcome();
             vdbOutcome.setCreated(false);
             vdbOutcome.setId(id);
             vdbOutcome.setCausalAction(VirtualDBActionTypeEnum.REVIEW);
-            vdbOutcome.setStatusEnum(VirtualDBActionStatusEnum.REVIEW_FAILURE);
+            vdbOutcome.setStatusEnum(VirtualDBActionStatusEnum.REVIEW_RESOURCE_NOT_IN_CACHE);
             OperationOutcome opOutcome = new OperationOutcome();
             OperationOutcome.OperationOutcomeIssueComponent newOutcomeComponent = new OperationOutcome.OperationOutcomeIssueComponent();
             newOutcomeComponent.setCode(OperationOutcome.IssueType.NOTFOUND);
@@ -257,11 +473,11 @@ public abstract class VirtualDBIdTypeBasedCacheBase {
             getLogger().debug(".getResourceFromCache(): exit, could not find resource");
             return (vdbOutcome);
         } else {
+            cacheStatistics.recordHit();
             VirtualDBMethodOutcome vdbOutcome = new VirtualDBMethodOutcome();
-            CacheResourceEntry resourceEntry = resourceCacheById.get(id);
             vdbOutcome.setCreated(false);
             vdbOutcome.setId(id);
-            vdbOutcome.setResource(resourceEntry.getResource());
+            vdbOutcome.setResource(foundResource);
             vdbOutcome.setCausalAction(VirtualDBActionTypeEnum.REVIEW);
             vdbOutcome.setStatusEnum(VirtualDBActionStatusEnum.REVIEW_FINISH);
             OperationOutcome opOutcome = new OperationOutcome();
@@ -279,7 +495,7 @@ public abstract class VirtualDBIdTypeBasedCacheBase {
             newOutcomeComponent.setDetails(details);
             opOutcome.addIssue(newOutcomeComponent);
             vdbOutcome.setOperationOutcome(opOutcome);
-            getLogger().debug(".getResourceFromCache(): exit, resource found... retrieved resource --> {}", resourceEntry.getResource());
+            getLogger().debug(".getResourceFromCache(): exit, resource found... retrieved resource --> {}", foundResource);
             return (vdbOutcome);
         }
     }
@@ -292,51 +508,146 @@ public abstract class VirtualDBIdTypeBasedCacheBase {
     public Collection<Resource> getAllResourcesFromCache(){
         getLogger().debug(".getAllResourcesFromCache(): Entry");
         ArrayList<Resource> resourceSet = new ArrayList<>();
+        long now = System.currentTimeMillis();
         for(CacheResourceEntry resourceEntry: resourceCacheById.values() ){
-            resourceSet.add(resourceEntry.getResource());
+            if(!resourceEntry.isExpired(now)) {
+                resourceSet.add(resourceEntry.getResource());
+            }
         }
         getLogger().debug(".getAllResourcesFromCache(): Exit");
         return(resourceSet);
     }
 
     /**
-     * The method is called after every add/remove to clear Resources from the cache that have expired. It's not an
-     * ideal solution but will keep the cache to a manageable size during the first few releases.
+     * This method removes expired entries from the Cache. It is run periodically (off the write path) by the
+     * VirtualDBCacheExpiryScheduler. The Expiry Queue is ordered by deadline, so only the entries that have
+     * actually expired are visited, and at most specifyCacheExpirySweepBudget() of them are removed per sweep.
+     *
+     * The removal is conditional on the entry (still) being expired, so that a concurrent add/sync of the same
+     * Resource isn't lost (and the Identifier Index stays consistent with the Cache).
      *
-     * TODO Need to improve the efficiency and mechanism used to clear content from the cache.
+     * @param now The current time (milliseconds since the epoch)
+     * @return The number of entries removed from the Cache
      */
-    private void purgeResourcesFromCache(){
-        getLogger().debug(".purgeResourcesFromCache(): Entry");
-        Enumeration<IdType> idEnumeration = resourceCacheById.keys();
-        while(idEnumeration.hasMoreElements()){
-            IdType id = idEnumeration.nextElement();
-            CacheResourceEntry resourceEntry = resourceCacheById.get(id);
-            if(!isStillValidCacheResource(resourceEntry)){
-                getLogger().trace(".purgeResourcesFromCache(): deleting resource --> {}", id);
-                deleteResourceFromCache(id);
+    int sweepExpiredEntries(long now){
+        getLogger().debug(".sweepExpiredEntries(): Entry");
+        int sweepBudget = specifyCacheExpirySweepBudget();
+        int removedCount = 0;
+        Iterator<ExpiryTicket> ticketIterator = expiryQueue.iterator();
+        while(ticketIterator.hasNext() && removedCount < sweepBudget){
+            ExpiryTicket ticket = ticketIterator.next();
+            if(ticket.getDeadline() >= now){
+                break;
             }
+            if(expiryQueue.remove(ticket) && removeExpiredEntry(ticket.getId(), now)){
+                getLogger().trace(".sweepExpiredEntries(): deleted resource --> {}", ticket.getId());
+                cacheStatistics.recordExpiry();
+                removedCount += 1;
+            }
+        }
+        getLogger().debug(".sweepExpiredEntries(): Exit, removedCount --> {}", removedCount);
+        return(removedCount);
+    }
+
+    private boolean removeExpiredEntry(IdType id, long now){
+        boolean[] removed = new boolean[1];
+        resourceCacheById.computeIfPresent(id, (key, currentEntry) -> {
+            if(!currentEntry.isExpired(now)){
+                return(currentEntry);
+            }
+            identifierIndex.unindexResource(key);
+            removed[0] = true;
+            return(null);
+        });
+        if(removed[0]){
+            resourceCacheLockSet.remove(id);
+            markSnapshotChange(id);
         }
-        getLogger().debug(".purgeResourcesFromCache(): Exit");
+        return(removed[0]);
     }
 
     /**
-     * This method does a simple comparison between the age of the resource entry in the cache and the
-     * age-threshold and returns true if the resource is still "young enough".
+     * This method is called (by the Caffeine engine) when an entry has been evicted or expired by the engine itself,
+     * and brings the Identifier Index, Expiry Queue and lock set back into line with the Cache. The clean-up is done
+     * within a computeIfAbsent() on the evicted id (which never inserts), so it is skipped if the id has been
+     * re-added (and re-indexed) in the meantime.
      *
-     * @param testEntry The Cache Entry to be tested to see if it shouldn't be flushed.
-     * @return True if the Cache Entry is still valid, false if it should be flushed.
+     * @param id The cache key of the evicted entry
+     * @param evictedEntry The evicted entry
+     * @param wasExpired True if the entry was expired (rather than evicted to honour the size/weight bound)
      */
-
-    private boolean isStillValidCacheResource(CacheResourceEntry testEntry){
-        Long resourceEntryAge = Date.from(Instant.now()).getTime() - testEntry.getTouchDate().getTime();
-        Long ageThreshold = Long.valueOf(specifyCacheElementRetirementInSeconds()) * 1000;
-        if(resourceEntryAge > ageThreshold){
-            return(false);
+    private void onEngineEviction(IdType id, CacheResourceEntry evictedEntry, boolean wasExpired){
+        getLogger().trace(".onEngineEviction(): Entry, id --> {}, wasExpired --> {}", id, wasExpired);
+        resourceCacheById.computeIfAbsent(id, key -> {
+            expiryQueue.remove(new ExpiryTicket(evictedEntry.getExpiryDeadline(), key));
+            identifierIndex.unindexResource(key);
+            resourceCacheLockSet.remove(key);
+            return(null);
+        });
+        markSnapshotChange(id);
+        if(wasExpired){
+            cacheStatistics.recordExpiry();
         } else {
-            return(true);
+            cacheStatistics.recordEviction();
         }
     }
 
+    //
+    // Clustered Cache Tier
+    //
+
+    /**
+     * This method retrieves a Resource (missing from this node's cache) from the clustered cache tier and, if found,
+     * adds it to this node's cache (which acts as the near cache for the clustered tier).
+     *
+     * @param id The id of the Resource
+     * @return The Resource, or null if it isn't in the clustered tier (or the tier is not enabled)
+     */
+    private Resource getResourceFromCluster(IdType id){
+        if(clusteredStore == null){
+            return(null);
+        }
+        Resource clusteredResource = clusteredStore.getResource(buildClusterKey(id));
+        if(clusteredResource != null){
+            getLogger().trace(".getResourceFromCluster(): near cache populated from the clustered tier, id --> {}", id);
+            putEntry(buildCacheKey(id), clusteredResource);
+        }
+        return(clusteredResource);
+    }
+
+    private void publishToCluster(IdType id, Resource resource){
+        if(clusteredStore != null){
+            clusteredStore.putResource(buildClusterKey(id), resource);
+        }
+    }
+
+    /**
+     * This method is called when another node has written (synchronised) or deleted a Resource, and drops this
+     * node's (near cache) copy of it.
+     *
+     * @param clusterKey The (versionless) id of the Resource
+     */
+    private void onClusterInvalidation(String clusterKey){
+        getLogger().trace(".onClusterInvalidation(): Entry, clusterKey --> {}", clusterKey);
+        IdType id = buildCacheKey(new IdType(clusterKey));
+        if(removeEntry(id, null)){
+            resourceCacheLockSet.remove(id);
+        }
+    }
+
+    private String buildClusterKey(IdType id){
+        return(buildCacheKey(id).getValue());
+    }
+
+    /**
+     * The key of a Resource within this node's cache (and its lock set and Identifier Index): the unqualified,
+     * versionless id, so that "Patient/1", "Patient/1/_history/2" and "http://host/fhir/Patient/1" share an entry
+     * (and so that a clustered tier invalidation, which carries the versionless id, finds it).
+     */
+    private IdType buildCacheKey(IdType id){
+        return(new IdType(id.toUnqualifiedVersionless().getValue()));
+    }
+
     /**
      * This method is a simple facade to the VirtualDBKeyManagement method of the same name.
      *
@@ -352,6 +663,122 @@ public abstract class VirtualDBIdTypeBasedCacheBase {
         return(bestIdentifier);
     }
 
+    VirtualDBIdentifierIndex getIdentifierIndex(){
+        return(identifierIndex);
+    }
+
+    int getCacheEntryCount(){
+        return(resourceCacheById.size());
+    }
+
+    int getExpiryQueueSize(){
+        return(expiryQueue.size());
+    }
+
+    /**
+     * This method performs any pending maintenance (eviction/expiry) within the cache engine.
+     */
+    void performEngineMaintenance(){
+        if(caffeineCache != null){
+            caffeineCache.cleanUp();
+        }
+    }
+
+    void useParserSupplier(Supplier<IParser> parserSupplier){
+        this.parserSupplier = parserSupplier;
+    }
+
+    public VirtualDBCacheStatistics getCacheStatistics(){
+        return(cacheStatistics);
+    }
+
+    public long getCacheSize(){
+        return(resourceCacheById.size());
+    }
+
+    //
+    // Snapshot support (see ResourceSnapshotService)
+    //
+
+    private void markSnapshotChange(IdType id){
+        Set<IdType> currentSnapshotChanges = snapshotChanges;
+        if(currentSnapshotChanges != null){
+            currentSnapshotChanges.add(id);
+        }
+    }
+
+    /**
+     * The name of the cache (which is also the name of its snapshot).
+     */
+    public String getCacheName(){
+        return(getCacheClassName());
+    }
+
+    /**
+     * Starts tracking the ids of the entries that are added, replaced or removed, for the incremental snapshots.
+     */
+    public void enableSnapshotTracking(){
+        if(snapshotChanges == null){
+            snapshotChanges = ConcurrentHashMap.newKeySet();
+        }
+    }
+
+    /**
+     * Removes (and returns) the ids that have changed since the previous call. An id that changes again while it is
+     * being drained is simply reported by the next call.
+     */
+    public Set<IdType> drainSnapshotChanges(){
+        Set<IdType> drainedChanges = new HashSet<>();
+        Set<IdType> currentSnapshotChanges = snapshotChanges;
+        if(currentSnapshotChanges == null){
+            return(drainedChanges);
+        }
+        for(IdType changedId: currentSnapshotChanges){
+            if(currentSnapshotChanges.remove(changedId)){
+                drainedChanges.add(changedId);
+            }
+        }
+        return(drainedChanges);
+    }
+
+    /**
+     * Hands back drained ids that could not be snapshotted, so that they are reported by the next drain.
+     */
+    public void requeueSnapshotChanges(Collection<IdType> changedIds){
+        Set<IdType> currentSnapshotChanges = snapshotChanges;
+        if(currentSnapshotChanges != null){
+            currentSnapshotChanges.addAll(changedIds);
+        }
+    }
+
+    /**
+     * @return the current (unexpired) entry for the id, or null if the id is no longer in the cache
+     */
+    public CacheResourceEntry getSnapshotEntry(IdType id){
+        CacheResourceEntry currentEntry = resourceCacheById.get(buildCacheKey(id));
+        if(currentEntry == null || currentEntry.isExpired(System.currentTimeMillis())){
+            return(null);
+        }
+        return(currentEntry);
+    }
+
+    /**
+     * Adds a Resource restored from a snapshot to the Cache, keeping the expiry deadline it had when it was
+     * snapshotted (capped by the current retirement period). The Resource is skipped if it has expired or if the
+     * id is already in the Cache (i.e. it has been written since), and is not reported as a snapshot change.
+     *
+     * @return true if the Resource was added to the Cache
+     */
+    public boolean restoreResource(IdType id, Resource resource, long expiryDeadline){
+        long now = System.currentTimeMillis();
+        if(now > expiryDeadline){
+            return(false);
+        }
+        resource.setIdElement(id);
+        long retirementPeriodInMillis = Math.min(expiryDeadline - now, Long.valueOf(specifyCacheElementRetirementInSeconds()) * 1000);
+        return(putEntry(buildCacheKey(id), resource, retirementPeriodInMillis, true));
+    }
+
     //
     // Public Cache Methods
     //
@@ -403,18 +830,17 @@ public abstract class VirtualDBIdTypeBasedCacheBase {
             resourceToSync.setId(newID);
         }
         IdType resourceId = resourceToSync.getIdElement();
-        if(resourceCacheById.containsKey(resourceId)){
-            Object lockObject = resourceCacheLockSet.get(resourceId);
+        IdType cacheKey = buildCacheKey(resourceId);
+        if(resourceCacheById.containsKey(cacheKey)){
+            Object lockObject = resourceCacheLockSet.get(cacheKey);
             if(lockObject == null){
                 lockObject = new Object();
-                resourceCacheLockSet.put(resourceToSync.getIdElement(), lockObject);
+                resourceCacheLockSet.put(cacheKey, lockObject);
             }
-            CacheResourceEntry cacheEntry = resourceCacheById.get(resourceId);
-            Resource cacheResource = cacheEntry.getResource();
             synchronized(lockObject) {
-                deleteResourceFromCache(resourceId);
-                addResourceToCache(resourceToSync);
+                putEntry(cacheKey, resourceToSync);
             }
+            publishToCluster(cacheKey, resourceToSync);
             VirtualDBMethodOutcome outcome = new VirtualDBMethodOutcome();
             outcome.setCreated(false);
             outcome.setCausalAction(VirtualDBActionTypeEnum.SYNC);
@@ -444,7 +870,8 @@ public abstract class VirtualDBIdTypeBasedCacheBase {
         }
     }
 
-    public Object getResourceLock(IdType resourceId){
+    public Object getResourceLock(IdType id){
+        IdType resourceId = buildCacheKey(id);
         if(resourceCacheLockSet.containsKey(resourceId)){
             return(resourceCacheLockSet.get(resourceId));
         } else {
@@ -462,4 +889,53 @@ public abstract class VirtualDBIdTypeBasedCacheBase {
     public void finaliseResourceAttributeUpdate(Resource modifiedResource){
         syncResource(modifiedResource);
     }
+
+    /**
+     * An entry within the Expiry Queue, ordered by deadline (and then by id, so that distinct entries expiring
+     * in the same millisecond are both retained).
+     */
+    private static class ExpiryTicket implements Comparable<ExpiryTicket> {
+        private final long deadline;
+        private final IdType id;
+        private final String idValue;
+
+        ExpiryTicket(long deadline, IdType id){
+            this.deadline = deadline;
+            this.id = id;
+            this.idValue = (id.getValue() == null) ? "" : id.getValue();
+        }
+
+        long getDeadline() {
+            return deadline;
+        }
+
+        IdType getId() {
+            return id;
+        }
+
+        @Override
+        public int compareTo(ExpiryTicket other) {
+            int deadlineComparison = Long.compare(this.deadline, other.deadline);
+            if(deadlineComparison != 0){
+                return(deadlineComparison);
+            }
+            return(this.idValue.compareTo(other.idValue));
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if(this == other){
+                return(true);
+            }
+            if(!(other instanceof ExpiryTicket)){
+                return(false);
+            }
+            return(compareTo((ExpiryTicket)other) == 0);
+        }
+
+        @Override
+        public int hashCode() {
+            return(Objects.hash(deadline, idValue));
+        }
+    }
 }
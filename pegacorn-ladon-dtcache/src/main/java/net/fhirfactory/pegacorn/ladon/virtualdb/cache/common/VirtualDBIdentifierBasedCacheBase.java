@@ -21,6 +21,7 @@
  */
 package net.fhirfactory.pegacorn.ladon.virtualdb.cache.common;
 
+import com.github.benmanes.caffeine.cache.Cache;
 import net.fhirfactory.pegacorn.ladon.model.virtualdb.businesskey.VirtualDBKeyManagement;
 import net.fhirfactory.pegacorn.ladon.model.virtualdb.cache.CacheResourceEntry;
 import net.fhirfactory.pegacorn.ladon.model.virtualdb.operations.VirtualDBActionStatusEnum;
@@ -32,22 +33,26 @@ import org.slf4j.Logger;
 import javax.annotation.PostConstruct;
 import javax.inject.Inject;
 import java.time.Instant;
-import java.util.Enumeration;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 public abstract class VirtualDBIdentifierBasedCacheBase {
 
     @Inject
     private VirtualDBKeyManagement virtualDBKeyManagement;
 
-    private ConcurrentHashMap<Identifier, CacheResourceEntry> resourceCacheByBusinessKey;
+    private ConcurrentMap<Identifier, CacheResourceEntry> resourceCacheByBusinessKey;
+    private Cache<Identifier, CacheResourceEntry> caffeineCache;
     private ConcurrentHashMap<String, Object> resourceCacheLockSet;
+    private VirtualDBCacheStatistics cacheStatistics;
     boolean isInitialised;
 
     protected VirtualDBIdentifierBasedCacheBase() {
         resourceCacheByBusinessKey = new ConcurrentHashMap<>();
+        caffeineCache = null;
         resourceCacheLockSet = new ConcurrentHashMap<>();
+        cacheStatistics = new VirtualDBCacheStatistics();
         this.isInitialised = false;
     }
 
@@ -59,10 +64,43 @@ public abstract class VirtualDBIdentifierBasedCacheBase {
     protected abstract String getCacheClassName();
     protected abstract void synchroniseResource(Resource cacheResource, Resource sourceResource);
 
+    /**
+     * The cache engine used for this resource type (see VirtualDBIdTypeBasedCacheBase.specifyCacheEngine()).
+     */
+    protected VirtualDBCacheEngineEnum specifyCacheEngine(){
+        return(VirtualDBCacheEngineEnum.CACHE_ENGINE_CONCURRENT_MAP);
+    }
+
+    protected long specifyCacheMaximumSize(){
+        return(0);
+    }
+
+    protected long specifyCacheMaximumWeight(){
+        return(0);
+    }
+
+    protected int specifyCacheExpireAfterAccessInSeconds(){
+        return(0);
+    }
+
+    protected int weighCacheEntry(Resource resource){
+        return(1);
+    }
+
     @PostConstruct
     protected void initialise() {
         if (!this.isInitialised) {
             getLogger().debug(".initialise(): Initialising the FHIR Parser framework");
+            if(specifyCacheEngine() == VirtualDBCacheEngineEnum.CACHE_ENGINE_CAFFEINE){
+                VirtualDBCacheEngineSettings engineSettings = new VirtualDBCacheEngineSettings(getCacheClassName());
+                engineSettings.setMaximumSize(specifyCacheMaximumSize());
+                engineSettings.setMaximumWeight(specifyCacheMaximumWeight());
+                engineSettings.setExpireAfterWriteInSeconds(specifyCacheElementRetirementInSeconds());
+                engineSettings.setExpireAfterAccessInSeconds(specifyCacheExpireAfterAccessInSeconds());
+                getLogger().debug(".initialise(): Using the Caffeine cache engine, settings --> {}", engineSettings);
+                caffeineCache = VirtualDBCaffeineCacheFactory.newCache(engineSettings, this::weighCacheEntry, this::onEngineEviction);
+                resourceCacheByBusinessKey = caffeineCache.asMap();
+            }
             this.isInitialised = true;
         }
     }
@@ -314,6 +352,7 @@ public abstract class VirtualDBIdentifierBasedCacheBase {
             noResource = true;
         }
         if(noResource) {
+            cacheStatistics.recordMiss();
             VirtualDBMethodOutcome vdbOutcome = new VirtualDBMethodOutcome();
             vdbOutcome.setCreated(false);
             vdbOutcome.setIdentifier(identifier);
@@ -337,6 +376,7 @@ public abstract class VirtualDBIdentifierBasedCacheBase {
             getLogger().debug(".getResourceFromCache(): exit, could not find resource");
             return (vdbOutcome);
         } else {
+            cacheStatistics.recordHit();
             VirtualDBMethodOutcome vdbOutcome = new VirtualDBMethodOutcome();
             vdbOutcome.setCreated(false);
             vdbOutcome.setIdentifier(identifier);
@@ -385,18 +425,44 @@ public abstract class VirtualDBIdentifierBasedCacheBase {
      */
     private void purgeResourcesFromCache(){
         getLogger().debug(".purgeResourcesFromCache(): Entry");
-        Enumeration<Identifier> identifierEnumeration = resourceCacheByBusinessKey.keys();
-        while(identifierEnumeration.hasMoreElements()){
-            Identifier identifier = identifierEnumeration.nextElement();
+        for(Identifier identifier: resourceCacheByBusinessKey.keySet()){
             CacheResourceEntry resourceEntry = resourceCacheByBusinessKey.get(identifier);
-            if(!isStillValidCacheResource(resourceEntry)){
+            if(resourceEntry != null && !isStillValidCacheResource(resourceEntry)){
                 getLogger().trace(".purgeResourcesFromCache(): deleting resource --> {}", identifier);
                 deleteResourceFromCache(identifier, resourceEntry.getResource());
+                cacheStatistics.recordExpiry();
             }
         }
         getLogger().debug(".purgeResourcesFromCache(): Exit");
     }
 
+    /**
+     * This method is called (by the Caffeine engine) when an entry has been evicted or expired by the engine itself.
+     * The lock for the evicted entry is released if the entry hasn't been re-added in the meantime.
+     */
+    private void onEngineEviction(Identifier identifier, CacheResourceEntry evictedEntry, boolean wasExpired){
+        getLogger().trace(".onEngineEviction(): Entry, identifier --> {}, wasExpired --> {}", identifier, wasExpired);
+        resourceCacheByBusinessKey.computeIfAbsent(identifier, key -> {
+            if(evictedEntry.getResource() != null) {
+                resourceCacheLockSet.remove(evictedEntry.getResource().getId());
+            }
+            return(null);
+        });
+        if(wasExpired){
+            cacheStatistics.recordExpiry();
+        } else {
+            cacheStatistics.recordEviction();
+        }
+    }
+
+    public VirtualDBCacheStatistics getCacheStatistics(){
+        return(cacheStatistics);
+    }
+
+    public long getCacheSize(){
+        return(resourceCacheByBusinessKey.size());
+    }
+
     //
     // Shared Methods
     //
@@ -433,7 +499,7 @@ public abstract class VirtualDBIdentifierBasedCacheBase {
      */
 
     private boolean isStillValidCacheResource(CacheResourceEntry testEntry){
-        Long resourceEntryAge = Date.from(Instant.now()).getTime() - testEntry.getTouchDate().getTime();
+        Long resourceEntryAge = Date.from(Instant.now()).getTime() - testEntry.getTouchTime();
         Long ageThreshold = Long.valueOf(specifyCacheElementRetirementInSeconds()) * 1000;
         if(resourceEntryAge > ageThreshold){
             return(false);
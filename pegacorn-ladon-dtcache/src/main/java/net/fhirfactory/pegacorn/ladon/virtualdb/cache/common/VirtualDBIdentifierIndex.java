@@ -0,0 +1,244 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.virtualdb.cache.common;
+
+import org.hl7.fhir.r4.model.CodeableConcept;
+import org.hl7.fhir.r4.model.Coding;
+import org.hl7.fhir.r4.model.IdType;
+import org.hl7.fhir.r4.model.Identifier;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A secondary index for the IdType based VirtualDB caches, mapping canonical Identifier keys to the set of
+ * cache keys (IdType) of the Resources carrying that Identifier.
+ *
+ * Each Identifier is indexed under two keys:
+ *  - the "exact" key, built from (system, type, value)
+ *  - the "loose" key, built from (system, value) only
+ *
+ * Lookups use the exact key when the query Identifier has a type, and fall back to the loose key, which mirrors
+ * the (system, value) matching the caches have always used.
+ *
+ * The index keeps a reverse map (IdType --> keys) so that a Resource can be un-indexed using the keys it was
+ * indexed with, even if its Identifier list has since been modified.
+ */
+public class VirtualDBIdentifierIndex {
+
+    private static final String KEY_SEPARATOR = "|";
+    private static final String ANY_TYPE = "*";
+
+    private ConcurrentHashMap<String, Set<IdType>> idsByIdentifierKey;
+    private ConcurrentHashMap<IdType, Set<String>> identifierKeysById;
+
+    public VirtualDBIdentifierIndex(){
+        this.idsByIdentifierKey = new ConcurrentHashMap<>();
+        this.identifierKeysById = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * This method (re)indexes the Resource with the given id against the supplied Identifier list. Any keys the
+     * Resource was previously indexed under are replaced.
+     *
+     * @param id The cache key of the Resource
+     * @param identifierList The Identifiers contained within the Resource
+     */
+    public void indexResource(IdType id, List<Identifier> identifierList){
+        if(id == null){
+            return;
+        }
+        Set<String> newKeySet = buildIndexKeySet(identifierList);
+        identifierKeysById.compute(id, (key, oldKeySet) -> {
+            if(oldKeySet != null){
+                for(String oldKey: oldKeySet){
+                    if(!newKeySet.contains(oldKey)){
+                        removeFromKey(oldKey, id);
+                    }
+                }
+            }
+            for(String newKey: newKeySet){
+                addToKey(newKey, id);
+            }
+            if(newKeySet.isEmpty()){
+                return(null);
+            }
+            return(newKeySet);
+        });
+    }
+
+    /**
+     * This method removes all index entries for the Resource with the given id.
+     *
+     * @param id The cache key of the Resource
+     */
+    public void unindexResource(IdType id){
+        if(id == null){
+            return;
+        }
+        identifierKeysById.computeIfPresent(id, (key, oldKeySet) -> {
+            for(String oldKey: oldKeySet){
+                removeFromKey(oldKey, id);
+            }
+            return(null);
+        });
+    }
+
+    /**
+     * This method returns the cache keys of the Resources that carry the given Identifier.
+     *
+     * @param identifier The Identifier being searched for
+     * @return The (possibly empty) set of cache keys, never null
+     */
+    public Set<IdType> resolveIds(Identifier identifier){
+        if(identifier == null){
+            return(Collections.emptySet());
+        }
+        if(identifier.hasType()){
+            Set<IdType> exactMatches = idsByIdentifierKey.get(buildExactIndexKey(identifier));
+            if(exactMatches != null && !exactMatches.isEmpty()){
+                return(new HashSet<>(exactMatches));
+            }
+        }
+        Set<IdType> looseMatches = idsByIdentifierKey.get(buildLooseIndexKey(identifier));
+        if(looseMatches == null){
+            return(Collections.emptySet());
+        }
+        return(new HashSet<>(looseMatches));
+    }
+
+    public void clear(){
+        idsByIdentifierKey.clear();
+        identifierKeysById.clear();
+    }
+
+    public int getIndexedResourceCount(){
+        return(identifierKeysById.size());
+    }
+
+    public int getIndexKeyCount(){
+        return(idsByIdentifierKey.size());
+    }
+
+    //
+    // Key Construction
+    //
+
+    /**
+     * This method returns the canonical key for an Identifier: the exact (system, type, value) key if the
+     * Identifier has a type, otherwise the (system, value) key.
+     *
+     * @param identifier The Identifier
+     * @return The canonical key
+     */
+    public static String buildCanonicalIdentifierKey(Identifier identifier){
+        if(identifier.hasType()){
+            return(exactKey(identifier));
+        }
+        return(looseKey(identifier));
+    }
+
+    protected Set<String> buildIndexKeySet(List<Identifier> identifierList){
+        Set<String> keySet = new HashSet<>();
+        if(identifierList == null){
+            return(keySet);
+        }
+        for(Identifier currentIdentifier: identifierList){
+            if(currentIdentifier == null || !currentIdentifier.hasValue()){
+                continue;
+            }
+            keySet.add(buildLooseIndexKey(currentIdentifier));
+            if(currentIdentifier.hasType()){
+                keySet.add(buildExactIndexKey(currentIdentifier));
+            }
+        }
+        return(keySet);
+    }
+
+    protected String buildExactIndexKey(Identifier identifier){
+        return(exactKey(identifier));
+    }
+
+    protected String buildLooseIndexKey(Identifier identifier){
+        return(looseKey(identifier));
+    }
+
+    private static String exactKey(Identifier identifier){
+        String key = canonicalise(identifier.getSystem()) + KEY_SEPARATOR + canonicaliseType(identifier.getType()) + KEY_SEPARATOR + canonicalise(identifier.getValue());
+        return(key);
+    }
+
+    private static String looseKey(Identifier identifier){
+        String key = canonicalise(identifier.getSystem()) + KEY_SEPARATOR + ANY_TYPE + KEY_SEPARATOR + canonicalise(identifier.getValue());
+        return(key);
+    }
+
+    private static String canonicaliseType(CodeableConcept type){
+        if(type == null || type.isEmpty()){
+            return(ANY_TYPE);
+        }
+        if(!type.hasCoding()){
+            return(canonicalise(type.getText()));
+        }
+        List<String> codingKeys = new ArrayList<>();
+        for(Coding currentCoding: type.getCoding()){
+            codingKeys.add(canonicalise(currentCoding.getSystem()) + "#" + canonicalise(currentCoding.getCode()));
+        }
+        Collections.sort(codingKeys);
+        return(String.join(",", codingKeys));
+    }
+
+    private static String canonicalise(String value){
+        if(value == null){
+            return("");
+        }
+        return(value.trim());
+    }
+
+    //
+    // Key --> IdType Set Maintenance
+    //
+
+    private void addToKey(String indexKey, IdType id){
+        idsByIdentifierKey.compute(indexKey, (key, idSet) -> {
+            if(idSet == null){
+                idSet = ConcurrentHashMap.newKeySet();
+            }
+            idSet.add(id);
+            return(idSet);
+        });
+    }
+
+    private void removeFromKey(String indexKey, IdType id){
+        idsByIdentifierKey.computeIfPresent(indexKey, (key, idSet) -> {
+            idSet.remove(id);
+            if(idSet.isEmpty()){
+                return(null);
+            }
+            return(idSet);
+        });
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.virtualdb.cache.common;
+
+import ca.uhn.fhir.parser.IParser;
+import org.hl7.fhir.r4.model.Resource;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Supplier;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Encodes Resources into (and decodes them from) the compact byte[] form held by the VirtualDB caches when they
+ * use the STORAGE_MODE_ENCODED or STORAGE_MODE_DEFLATE storage modes.
+ *
+ * The DEFLATE form is prefixed by the length of the (uncompressed) JSON encoding, and is compressed using a
+ * preset dictionary of the JSON fragments common to (nearly) all FHIR Resources - which is where most of the
+ * saving on small Resources comes from. Deflaters/Inflaters are reused per thread.
+ */
+public class VirtualDBResourceCodec {
+
+    /**
+     * The default preset dictionary. Deflate favours matches nearer the end of the dictionary, so the most common
+     * fragments are at the end.
+     */
+    public static final String DEFAULT_DICTIONARY =
+            "\"text\":{\"status\":\"generated\",\"div\":\"<div xmlns=\\\"http://www.w3.org/1999/xhtml\\\">" +
+            "\"period\":{\"start\":\"\",\"end\":\"\"},\"telecom\":[{\"system\":\"phone\",\"value\":\"\",\"use\":\"work\"}]," +
+            "\"address\":[{\"use\":\"home\",\"line\":[\"\"],\"city\":\"\",\"state\":\"\",\"postalCode\":\"\",\"country\":\"\"}]," +
+            "\"name\":[{\"use\":\"official\",\"family\":\"\",\"given\":[\"\"]}],\"display\":\"\"," +
+            "\"subject\":{\"reference\":\"Patient/\"},\"status\":\"active\",\"active\":true," +
+            "\"meta\":{\"versionId\":\"\",\"lastUpdated\":\"\"}," +
+            "\"type\":{\"coding\":[{\"system\":\"http://terminology.hl7.org/CodeSystem/v2-0203\",\"code\":\"MR\"}]}," +
+            "\"coding\":[{\"system\":\"http://snomed.info/sct\",\"code\":\"\",\"display\":\"\"}],\"text\":\"\"}," +
+            "\"identifier\":[{\"use\":\"official\",\"system\":\"\",\"value\":\"\"},{\"use\":\"secondary\",\"system\":\"\",\"value\":\"\"}]," +
+            "{\"resourceType\":\"\",\"id\":\"\",";
+
+    private VirtualDBCacheStorageModeEnum storageMode;
+    private Supplier<IParser> parserSupplier;
+    private byte[] dictionary;
+    private int compressionLevel;
+    private ThreadLocal<Deflater> deflaters;
+    private ThreadLocal<Inflater> inflaters;
+
+    public VirtualDBResourceCodec(VirtualDBCacheStorageModeEnum storageMode, Supplier<IParser> parserSupplier){
+        this(storageMode, parserSupplier, DEFAULT_DICTIONARY.getBytes(StandardCharsets.UTF_8), Deflater.BEST_SPEED);
+    }
+
+    public VirtualDBResourceCodec(VirtualDBCacheStorageModeEnum storageMode, Supplier<IParser> parserSupplier, byte[] dictionary, int compressionLevel){
+        this.storageMode = storageMode;
+        this.parserSupplier = parserSupplier;
+        this.dictionary = dictionary;
+        this.compressionLevel = compressionLevel;
+        this.deflaters = ThreadLocal.withInitial(() -> new Deflater(this.compressionLevel));
+        this.inflaters = ThreadLocal.withInitial(Inflater::new);
+    }
+
+    public VirtualDBCacheStorageModeEnum getStorageMode() {
+        return storageMode;
+    }
+
+    public byte[] encode(Resource resource){
+        IParser parser = parserSupplier.get();
+        parser.setPrettyPrint(false);
+        byte[] encodedResource = parser.encodeResourceToString(resource).getBytes(StandardCharsets.UTF_8);
+        if(storageMode != VirtualDBCacheStorageModeEnum.STORAGE_MODE_DEFLATE){
+            return(encodedResource);
+        }
+        return(deflate(encodedResource));
+    }
+
+    public Resource decode(byte[] storedResource){
+        byte[] encodedResource = storedResource;
+        if(storageMode == VirtualDBCacheStorageModeEnum.STORAGE_MODE_DEFLATE){
+            encodedResource = inflate(storedResource);
+        }
+        Resource resource = (Resource)parserSupplier.get().parseResource(new String(encodedResource, StandardCharsets.UTF_8));
+        return(resource);
+    }
+
+    private byte[] deflate(byte[] input){
+        Deflater deflater = deflaters.get();
+        deflater.reset();
+        if(dictionary != null && dictionary.length > 0){
+            deflater.setDictionary(dictionary);
+        }
+        deflater.setInput(input);
+        deflater.finish();
+        ByteArrayOutputStream output = new ByteArrayOutputStream(Integer.BYTES + (input.length / 2) + 64);
+        byte[] lengthPrefix = ByteBuffer.allocate(Integer.BYTES).putInt(input.length).array();
+        output.write(lengthPrefix, 0, lengthPrefix.length);
+        byte[] buffer = new byte[Math.max(256, input.length / 2)];
+        while(!deflater.finished()){
+            int deflatedLength = deflater.deflate(buffer);
+            output.write(buffer, 0, deflatedLength);
+        }
+        return(output.toByteArray());
+    }
+
+    private byte[] inflate(byte[] input){
+        Inflater inflater = inflaters.get();
+        inflater.reset();
+        int inflatedLength = ByteBuffer.wrap(input, 0, Integer.BYTES).getInt();
+        byte[] output = new byte[inflatedLength];
+        inflater.setInput(input, Integer.BYTES, input.length - Integer.BYTES);
+        try {
+            int offset = 0;
+            while(offset < inflatedLength && !inflater.finished()){
+                int count = inflater.inflate(output, offset, inflatedLength - offset);
+                if(count == 0 && inflater.needsDictionary()){
+                    inflater.setDictionary(dictionary);
+                } else if(count == 0 && inflater.needsInput()){
+                    throw new IllegalStateException("Truncated cache entry, expected " + inflatedLength + " bytes, got " + offset);
+                }
+                offset += count;
+            }
+        } catch(DataFormatException ex){
+            throw new IllegalStateException("Corrupt cache entry: " + ex.getMessage(), ex);
+        }
+        return(output);
+    }
+}
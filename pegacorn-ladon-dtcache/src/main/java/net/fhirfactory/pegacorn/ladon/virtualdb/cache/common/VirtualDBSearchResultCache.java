@@ -0,0 +1,305 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.virtualdb.cache.common;
+
+import ca.uhn.fhir.rest.param.DateParam;
+import ca.uhn.fhir.rest.param.DateRangeParam;
+import ca.uhn.fhir.rest.param.ReferenceParam;
+import ca.uhn.fhir.rest.param.StringParam;
+import ca.uhn.fhir.rest.param.TokenParam;
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.searches.SearchNameEnum;
+import org.hl7.fhir.r4.model.IdType;
+import org.hl7.fhir.r4.model.Property;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A cache of (named) search results for a single resource type, keyed by the search name plus a canonical form of
+ * the search parameters (see buildSearchKey()).
+ *
+ * Only the ids of the matching Resources are held - the Resources themselves are read from the Resource cache when
+ * a cached result is used. Each result has its own time-to-live, and is invalidated as soon as one of its member
+ * Resources is created, updated or deleted. Newly created Resources that would match a cached search (but are not
+ * yet members of it) only appear once the cached result expires, so the time-to-live bounds how stale a result can
+ * be.
+ *
+ * A result is only stored if no invalidation has occurred since the search started (see getInvalidationGeneration()),
+ * so a search racing an update cannot cache the pre-update membership.
+ */
+public class VirtualDBSearchResultCache {
+
+    private static final String KEY_SEPARATOR = "&";
+
+    private ConcurrentHashMap<String, SearchResultEntry> resultsBySearchKey;
+    private ConcurrentHashMap<String, Set<String>> searchKeysByMemberId;
+    private AtomicLong invalidationGeneration;
+    private VirtualDBCacheStatistics cacheStatistics;
+    private LongAdder invalidationCount;
+    private int maximumSize;
+
+    public VirtualDBSearchResultCache(int maximumSize){
+        this.resultsBySearchKey = new ConcurrentHashMap<>();
+        this.searchKeysByMemberId = new ConcurrentHashMap<>();
+        this.invalidationGeneration = new AtomicLong();
+        this.cacheStatistics = new VirtualDBCacheStatistics();
+        this.invalidationCount = new LongAdder();
+        this.maximumSize = maximumSize;
+    }
+
+    public VirtualDBCacheStatistics getCacheStatistics() {
+        return cacheStatistics;
+    }
+
+    public long getInvalidationCount() {
+        return invalidationCount.sum();
+    }
+
+    public int getSize(){
+        return(resultsBySearchKey.size());
+    }
+
+    /**
+     * Incremented by every invalidation - a search captures it before going to the Sources-of-Truth and passes it
+     * to put().
+     */
+    public long getInvalidationGeneration(){
+        return(invalidationGeneration.get());
+    }
+
+    /**
+     * Returns the member ids of the (unexpired) cached result of the search, or null if there is none.
+     */
+    public List<IdType> getMemberIds(String searchKey, long now){
+        SearchResultEntry entry = resultsBySearchKey.get(searchKey);
+        if(entry == null){
+            cacheStatistics.recordMiss();
+            return(null);
+        }
+        if(now > entry.getExpiryDeadline()){
+            removeEntry(searchKey, entry);
+            cacheStatistics.recordExpiry();
+            cacheStatistics.recordMiss();
+            return(null);
+        }
+        cacheStatistics.recordHit();
+        return(entry.getMemberIds());
+    }
+
+    /**
+     * Stores the result of the search, unless an invalidation has happened since searchGeneration was captured.
+     */
+    public boolean put(String searchKey, List<IdType> memberIds, long timeToLiveInMillis, long searchGeneration){
+        if(timeToLiveInMillis <= 0 || maximumSize <= 0){
+            return(false);
+        }
+        if(invalidationGeneration.get() != searchGeneration){
+            return(false);
+        }
+        long now = System.currentTimeMillis();
+        SearchResultEntry entry = new SearchResultEntry(Collections.unmodifiableList(new ArrayList<>(memberIds)), now + timeToLiveInMillis);
+        for(String memberId: entry.getMemberKeys()){
+            searchKeysByMemberId.computeIfAbsent(memberId, key -> ConcurrentHashMap.newKeySet()).add(searchKey);
+        }
+        SearchResultEntry replacedEntry = resultsBySearchKey.put(searchKey, entry);
+        if(replacedEntry != null){
+            unindexEntry(searchKey, replacedEntry, entry);
+        }
+        // An invalidation may have slipped in whilst the entry was being indexed
+        if(invalidationGeneration.get() != searchGeneration){
+            removeEntry(searchKey, entry);
+            return(false);
+        }
+        if(resultsBySearchKey.size() > maximumSize){
+            trimToSize(now);
+        }
+        return(true);
+    }
+
+    /**
+     * Invalidates every cached result that the Resource (with the given id) is a member of.
+     */
+    public void invalidateMember(IdType id){
+        if(id == null || !id.hasIdPart()){
+            return;
+        }
+        invalidationGeneration.incrementAndGet();
+        Set<String> searchKeys = searchKeysByMemberId.remove(id.getIdPart());
+        if(searchKeys == null){
+            return;
+        }
+        for(String searchKey: searchKeys){
+            SearchResultEntry entry = resultsBySearchKey.get(searchKey);
+            if(entry != null && removeEntry(searchKey, entry)){
+                invalidationCount.increment();
+            }
+        }
+    }
+
+    public void clear(){
+        invalidationGeneration.incrementAndGet();
+        resultsBySearchKey.clear();
+        searchKeysByMemberId.clear();
+    }
+
+    /**
+     * The canonical key of a named search: the search name, then each parameter (ordered by property name) as
+     * name=value, where the value is rendered independent of the parameter object's identity or formatting.
+     */
+    public static String buildSearchKey(SearchNameEnum searchName, Map<Property, Serializable> parameterSet){
+        List<String> parameterKeys = new ArrayList<>();
+        if(parameterSet != null){
+            for(Map.Entry<Property, Serializable> parameter: parameterSet.entrySet()){
+                String propertyName = (parameter.getKey() == null) ? "" : parameter.getKey().getName();
+                parameterKeys.add(propertyName + "=" + canonicaliseParameter(parameter.getValue()));
+            }
+        }
+        Collections.sort(parameterKeys);
+        StringBuilder searchKey = new StringBuilder(searchName.name()).append('?');
+        for(int counter = 0; counter < parameterKeys.size(); counter++){
+            if(counter > 0){
+                searchKey.append(KEY_SEPARATOR);
+            }
+            searchKey.append(parameterKeys.get(counter));
+        }
+        return(searchKey.toString());
+    }
+
+    private static String canonicaliseParameter(Serializable parameter){
+        if(parameter == null){
+            return("");
+        }
+        if(parameter instanceof TokenParam){
+            TokenParam token = (TokenParam)parameter;
+            String modifier = (token.getModifier() == null) ? "" : ":" + token.getModifier().getValue();
+            return(modifier + nullToEmpty(token.getSystem()) + "|" + nullToEmpty(token.getValue()));
+        }
+        if(parameter instanceof DateRangeParam){
+            DateRangeParam dateRange = (DateRangeParam)parameter;
+            return("[" + canonicaliseDate(dateRange.getLowerBound()) + "," + canonicaliseDate(dateRange.getUpperBound()) + "]");
+        }
+        if(parameter instanceof DateParam){
+            return(canonicaliseDate((DateParam)parameter));
+        }
+        if(parameter instanceof StringParam){
+            StringParam string = (StringParam)parameter;
+            String modifier = string.isExact() ? ":exact" : (string.isContains() ? ":contains" : "");
+            return(modifier + nullToEmpty(string.getValue()));
+        }
+        if(parameter instanceof ReferenceParam){
+            return(nullToEmpty(((ReferenceParam)parameter).getValue()));
+        }
+        return(parameter.getClass().getSimpleName() + ":" + parameter.toString());
+    }
+
+    private static String canonicaliseDate(DateParam date){
+        if(date == null || date.getValue() == null){
+            return("");
+        }
+        String prefix = (date.getPrefix() == null) ? "" : date.getPrefix().getValue();
+        return(prefix + date.getValue().getTime());
+    }
+
+    private static String nullToEmpty(String value){
+        return((value == null) ? "" : value);
+    }
+
+    //
+    // Housekeeping
+    //
+
+    private boolean removeEntry(String searchKey, SearchResultEntry entry){
+        if(!resultsBySearchKey.remove(searchKey, entry)){
+            return(false);
+        }
+        unindexEntry(searchKey, entry, null);
+        return(true);
+    }
+
+    private void unindexEntry(String searchKey, SearchResultEntry removedEntry, SearchResultEntry currentEntry){
+        for(String memberId: removedEntry.getMemberKeys()){
+            if(currentEntry != null && currentEntry.getMemberKeys().contains(memberId)){
+                continue;
+            }
+            searchKeysByMemberId.computeIfPresent(memberId, (key, searchKeys) -> {
+                searchKeys.remove(searchKey);
+                return(searchKeys.isEmpty() ? null : searchKeys);
+            });
+        }
+    }
+
+    private void trimToSize(long now){
+        Iterator<Map.Entry<String, SearchResultEntry>> entryIterator = resultsBySearchKey.entrySet().iterator();
+        while(entryIterator.hasNext() && resultsBySearchKey.size() > maximumSize){
+            Map.Entry<String, SearchResultEntry> candidate = entryIterator.next();
+            if(now > candidate.getValue().getExpiryDeadline()){
+                if(removeEntry(candidate.getKey(), candidate.getValue())){
+                    cacheStatistics.recordExpiry();
+                }
+            }
+        }
+        entryIterator = resultsBySearchKey.entrySet().iterator();
+        while(entryIterator.hasNext() && resultsBySearchKey.size() > maximumSize){
+            Map.Entry<String, SearchResultEntry> candidate = entryIterator.next();
+            if(removeEntry(candidate.getKey(), candidate.getValue())){
+                cacheStatistics.recordEviction();
+            }
+        }
+    }
+
+    private static class SearchResultEntry {
+        private final List<IdType> memberIds;
+        private final Set<String> memberKeys;
+        private final long expiryDeadline;
+
+        SearchResultEntry(List<IdType> memberIds, long expiryDeadline){
+            this.memberIds = memberIds;
+            this.expiryDeadline = expiryDeadline;
+            Set<String> keys = new HashSet<>();
+            for(IdType memberId: memberIds){
+                keys.add(memberId.getIdPart());
+            }
+            this.memberKeys = keys;
+        }
+
+        public List<IdType> getMemberIds() {
+            return memberIds;
+        }
+
+        public Set<String> getMemberKeys() {
+            return memberKeys;
+        }
+
+        public long getExpiryDeadline() {
+            return expiryDeadline;
+        }
+    }
+}
@@ -21,22 +21,30 @@
  */
 package net.fhirfactory.pegacorn.ladon.virtualdb.engine.common;
 
+import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.server.exceptions.BaseServerResponseException;
 import net.fhirfactory.pegacorn.deployment.properties.LadonDefaultDeploymentProperties;
 import net.fhirfactory.pegacorn.ladon.mdr.conduit.controller.common.ResourceSoTConduitController;
 import net.fhirfactory.pegacorn.ladon.model.virtualdb.ResourceDBEngineInterface;
 import net.fhirfactory.pegacorn.ladon.model.virtualdb.operations.VirtualDBActionStatusEnum;
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.operations.VirtualDBActionTypeEnum;
 import net.fhirfactory.pegacorn.ladon.model.virtualdb.operations.VirtualDBMethodOutcome;
 import net.fhirfactory.pegacorn.ladon.model.virtualdb.operations.VirtualDBMethodOutcomeFactory;
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.operations.VirtualDBReadLayerEnum;
 import net.fhirfactory.pegacorn.ladon.model.virtualdb.searches.SearchNameEnum;
 import net.fhirfactory.pegacorn.ladon.virtualdb.cache.common.VirtualDBIdTypeBasedCacheBase;
+import net.fhirfactory.pegacorn.ladon.virtualdb.cache.common.VirtualDBIdentifierIndex;
+import net.fhirfactory.pegacorn.ladon.virtualdb.cache.common.VirtualDBSearchResultCache;
 import net.fhirfactory.pegacorn.ladon.virtualdb.persistence.common.PersistenceServiceBase;
 import org.hl7.fhir.r4.model.*;
 import org.slf4j.Logger;
 
 import javax.inject.Inject;
 import java.io.Serializable;
-import java.sql.Date;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.EnumMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -49,6 +57,16 @@ public abstract class ResourceDBEngine implements ResourceDBEngineInterface {
     @Inject
     private LadonDefaultDeploymentProperties ladonDefaultDeploymentProperties;
 
+    private static final long DEFAULT_SINGLE_FLIGHT_MAXIMUM_WAIT_IN_MILLIS = 10000;
+    private static final String SEARCH_CACHE_TTL_PROPERTY = "ladon.virtualdb.search.cache.ttl";
+    private static final String SEARCH_CACHE_SIZE_PROPERTY = "ladon.virtualdb.search.cache.size";
+    private static final long DEFAULT_SEARCH_CACHE_TTL_IN_MILLIS = 5000;
+    private static final int DEFAULT_SEARCH_CACHE_SIZE = 1024;
+
+    private VirtualDBSingleFlightLoader singleFlightLoader = new VirtualDBSingleFlightLoader();
+
+    private VirtualDBSearchResultCache searchResultCache = new VirtualDBSearchResultCache(Integer.getInteger(SEARCH_CACHE_SIZE_PROPERTY, DEFAULT_SEARCH_CACHE_SIZE));
+
     abstract protected VirtualDBIdTypeBasedCacheBase specifyDBCache();
 
     abstract protected ResourceSoTConduitController specifySourceOfTruthAggregator();
@@ -76,6 +94,31 @@ public abstract class ResourceDBEngine implements ResourceDBEngineInterface {
 
     protected ResourceType getResourceType(){return(specifyResourceType());}
 
+    /**
+     * The maximum time a cache miss will wait for an in-flight (SoT/Persistence) load of the same Resource started
+     * by another thread.
+     */
+    protected long specifySingleFlightMaximumWaitInMillis(){
+        return(DEFAULT_SINGLE_FLIGHT_MAXIMUM_WAIT_IN_MILLIS);
+    }
+
+    public VirtualDBSingleFlightLoader getSingleFlightLoader(){
+        return(singleFlightLoader);
+    }
+
+    /**
+     * How long the result of the named search is reused (0 --> not cached). Set per search via
+     * "ladon.virtualdb.search.cache.ttl.<SEARCH_NAME>", or for all searches via "ladon.virtualdb.search.cache.ttl".
+     */
+    protected long specifySearchResultCacheTimeToLiveInMillis(SearchNameEnum searchName){
+        Long defaultTimeToLive = Long.getLong(SEARCH_CACHE_TTL_PROPERTY, DEFAULT_SEARCH_CACHE_TTL_IN_MILLIS);
+        return(Long.getLong(SEARCH_CACHE_TTL_PROPERTY + "." + searchName.name(), defaultTimeToLive));
+    }
+
+    public VirtualDBSearchResultCache getSearchResultCache(){
+        return(searchResultCache);
+    }
+
     @Override
     public VirtualDBMethodOutcome createResource(Resource resourceToCreate) {
         getLogger().debug(".createResource(): Entry, resourceToCreate --> {}", resourceToCreate);
@@ -91,6 +134,8 @@ public abstract class ResourceDBEngine implements ResourceDBEngineInterface {
         }
         VirtualDBMethodOutcome outcome = getSourceOfTruthAggregator().createResource(resourceToCreate);
         if (outcome.getStatusEnum().equals(VirtualDBActionStatusEnum.CREATION_FINISH)) {
+            // After the write, so that a search running during it cannot re-cache the prior membership
+            searchResultCache.invalidateMember(newId);
             getLogger().trace(".createResource(): Resource successfully created in the MDR (Set), now adding it to the Cache & VirtualDB");
             VirtualDBMethodOutcome virtualDBOutcome = getPersistenceService().standardCreateResource(resourceToCreate);
             resourceToCreate.setId(virtualDBOutcome.getId());
@@ -104,20 +149,21 @@ public abstract class ResourceDBEngine implements ResourceDBEngineInterface {
     }
 
     /**
-     * This function retrieves a Resource using the IdType id.
+     * This function retrieves a Resource using the IdType id, reading through the layers of the VirtualDB.
      *
-     * If the resource is presently within the cache, it returns that instance
+     * If the resource is presently within the cache, it returns that instance.
      *
      * If the resource is not in the cache, the Pegacorn Persistence Service is queried to see if the resource has been
-     * previously loaded. If it has, then the version within the Persistence Service will contain mappings to the
-     * per-SoT internal identifier for that resource. It will then iterate through the SoTs using the ids and
-     * aggregate the result. Note that if the last time the resource was accessed exceeds a given threshold, then the
-     * Identifiers contained within the aggregated instance within the Persistence Service will be used to extract
-     * the resource from ALL known SoT's supporting that resource type. THis allows for the introduction of new SoT
-     * Conduits.
+     * previously loaded. If it has, and it was refreshed within specifyPersistedResourceRefreshPeriodInMillis(), the
+     * persisted instance is used. Otherwise, the Identifiers contained within the persisted instance are used to
+     * extract the resource from ALL known SoT's supporting that resource type (which allows for the introduction of
+     * new SoT Conduits). If the Persistence Service has no such resource, the SoT's are asked for it by id.
      *
-     * If there is no resource with the given id within the Pegacorn Persistence Service, then the retrieval is said
-     * to have failed.
+     * Each layer below the one that provided the Resource is populated on the way back (a SoT retrieval is written
+     * to the Persistence Service and the Cache, a Persistence Service retrieval is written to the Cache). The time
+     * spent within each layer is recorded on the returned outcome.
+     *
+     * If no layer can provide the resource, the retrieval is said to have failed.
      *
      * @param id The "internal" id of the Resource
      * @return A VirtualDBMethodOutcome detailing the success (or otherwise) of the action. A .getResource() on the
@@ -126,44 +172,143 @@ public abstract class ResourceDBEngine implements ResourceDBEngineInterface {
     @Override
     public VirtualDBMethodOutcome getResource(IdType id) {
         getLogger().debug(".getResource(IdType): Entry, id --> {}", id);
-        getLogger().trace(".getResource(IdType): Check to see if there is an entry in the cache");
-/*        VirtualDBMethodOutcome outcome = getDBCache().getResource(id);
-        if (outcome.getResource() != null && outcome.getStatusEnum().equals(VirtualDBActionStatusEnum.REVIEW_FINISH)) {
-            getLogger().debug(".getResource(IdType): Resource is in cache, returning it");
-        }
-        getLogger().trace(".getResource(IdType): Check to see if the Resource is available within Pegacorn's Persistence Service");
-        VirtualDBMethodOutcome persistenceServiceOutcome = getPersistenceService().getResourceById(getResourceType().toString(), id);
-        if (outcome.getResource() != null && persistenceServiceOutcome.getStatusEnum().equals(VirtualDBActionStatusEnum.REVIEW_FINISH)) {
-            Resource persistenceServiceOriginatedResource = (Resource) persistenceServiceOutcome.getResource();
-            boolean requiresRefresh = true;
-            if(persistenceServiceOriginatedResource.getMeta().hasLastUpdated()){
-                Long resourceRefreshAge = Date.from(Instant.now()).getTime() - ladonDefaultDeploymentProperties.getResourceSourceOfTruthConduitScanningPeriod();
-                if(persistenceServiceOriginatedResource.getMeta().getLastUpdated().getTime() > resourceRefreshAge ){
-                    requiresRefresh = false;
-                }
+        long layerStart = System.nanoTime();
+        VirtualDBMethodOutcome outcome = getDBCache().getResource(id);
+        long cacheElapsed = System.nanoTime() - layerStart;
+        if (isRetrieved(outcome)) {
+            outcome.setResolvingLayer(VirtualDBReadLayerEnum.READ_LAYER_CACHE);
+            outcome.recordLayerTiming(VirtualDBReadLayerEnum.READ_LAYER_CACHE, cacheElapsed);
+            getLogger().debug(".getResource(IdType): Exit, Resource is in cache, returning it");
+            return (outcome);
+        }
+        String flightKey = getResourceType().toString() + "|id|" + id.toUnqualifiedVersionless().getValue();
+        outcome = singleFlightLoader.load(flightKey, () -> loadResource(id), specifySingleFlightMaximumWaitInMillis(), () -> generateSingleFlightTimeoutOutcome("getResource(IdType)", id.getValue()));
+        getLogger().debug(".getResource(IdType): Exit, resolvingLayer --> {}", outcome.getResolvingLayer());
+        return (outcome);
+    }
+
+    private VirtualDBMethodOutcome loadResource(IdType id) {
+        EnumMap<VirtualDBReadLayerEnum, Long> layerTimings = new EnumMap<>(VirtualDBReadLayerEnum.class);
+        getLogger().trace(".loadResource(): Check to see if there is an entry in the cache");
+        // A previous (just completed) load may have populated the Cache
+        long layerStart = System.nanoTime();
+        VirtualDBMethodOutcome cacheOutcome = getDBCache().getResource(id);
+        layerTimings.put(VirtualDBReadLayerEnum.READ_LAYER_CACHE, System.nanoTime() - layerStart);
+        if (isRetrieved(cacheOutcome)) {
+            return (completeRead(cacheOutcome, VirtualDBReadLayerEnum.READ_LAYER_CACHE, layerTimings));
+        }
+        getLogger().trace(".loadResource(): Check to see if the Resource is available within Pegacorn's Persistence Service");
+        layerStart = System.nanoTime();
+        VirtualDBMethodOutcome persistenceServiceOutcome = readFromPersistenceService(id);
+        layerTimings.put(VirtualDBReadLayerEnum.READ_LAYER_PERSISTENCE, System.nanoTime() - layerStart);
+        Resource persistenceServiceOriginatedResource = null;
+        if (isRetrieved(persistenceServiceOutcome)) {
+            persistenceServiceOriginatedResource = (Resource) persistenceServiceOutcome.getResource();
+            if (!requiresSourceOfTruthRefresh(persistenceServiceOriginatedResource)) {
+                getLogger().trace(".loadResource(): Persisted Resource is current, adding it to the Cache");
+                getDBCache().syncResource(persistenceServiceOriginatedResource);
+                return (completeRead(persistenceServiceOutcome, VirtualDBReadLayerEnum.READ_LAYER_PERSISTENCE, layerTimings));
             }
-            if(requiresRefresh){
+        }
+        getLogger().trace(".loadResource(): Retrieving the Resource from the Sources-of-Truth");
+        layerStart = System.nanoTime();
+        VirtualDBMethodOutcome sourceOfTruthOutcome = readFromSourcesOfTruth(id, persistenceServiceOriginatedResource);
+        layerTimings.put(VirtualDBReadLayerEnum.READ_LAYER_SOURCE_OF_TRUTH, System.nanoTime() - layerStart);
+        if (isRetrieved(sourceOfTruthOutcome)) {
+            Resource sourceOfTruthResource = (Resource) sourceOfTruthOutcome.getResource();
+            if (!sourceOfTruthResource.hasId()) {
+                sourceOfTruthResource.setId(id.toUnqualifiedVersionless());
+            }
+            getLogger().trace(".loadResource(): Adding the Sources-of-Truth Resource to the Persistence Service & Cache");
+            writeToPersistenceService(sourceOfTruthResource);
+            getDBCache().syncResource(sourceOfTruthResource);
+            return (completeRead(sourceOfTruthOutcome, VirtualDBReadLayerEnum.READ_LAYER_SOURCE_OF_TRUTH, layerTimings));
+        }
+        if (persistenceServiceOriginatedResource != null) {
+            getLogger().warn(".loadResource(): Could not refresh Resource from the Sources-of-Truth, using the persisted instance, id --> {}", id);
+            getDBCache().syncResource(persistenceServiceOriginatedResource);
+            return (completeRead(persistenceServiceOutcome, VirtualDBReadLayerEnum.READ_LAYER_PERSISTENCE, layerTimings));
+        }
+        VirtualDBMethodOutcome outcome = outcomeFactory.generateEmptyGetResponse(getResourceType(), id);
+        return (completeRead(outcome, null, layerTimings));
+    }
+
+    /**
+     * The age beyond which a Resource retrieved from the Persistence Service is refreshed from the Sources-of-Truth.
+     */
+    protected long specifyPersistedResourceRefreshPeriodInMillis(){
+        return(ladonDefaultDeploymentProperties.getResourceSourceOfTruthConduitScanningPeriod());
+    }
 
+    protected VirtualDBMethodOutcome readFromPersistenceService(IdType id){
+        try {
+            VirtualDBMethodOutcome outcome = getPersistenceService().getResourceById(getResourceType().toString(), id);
+            return(outcome);
+        } catch (BaseServerResponseException ex){
+            if(ex.getStatusCode() != Constants.STATUS_HTTP_404_NOT_FOUND) {
+                getLogger().warn(".readFromPersistenceService(): Persistence Service read failed, id --> {}, error --> {}", id, ex.getMessage());
             }
+            VirtualDBMethodOutcome outcome = outcomeFactory.generateEmptyGetResponse(getResourceType(), id);
+            return(outcome);
+        }
+    }
+
+    protected VirtualDBMethodOutcome writeToPersistenceService(Resource resource){
+        VirtualDBMethodOutcome outcome = getPersistenceService().synchroniseResource(getResourceType(), resource);
+        return(outcome);
+    }
+
+    private VirtualDBMethodOutcome readFromSourcesOfTruth(IdType id, Resource persistenceServiceOriginatedResource){
+        if(persistenceServiceOriginatedResource != null) {
             List<Identifier> identifierList = resolveIdentifierSet(persistenceServiceOriginatedResource);
-            if (identifierList.isEmpty()) {
-                outcome = outcomeFactory.generateEmptyGetResponse(getResourceType(), id);
-            } else {
-                outcome = getSourceOfTruthAggregator().reviewResource(identifierList);
+            for (Identifier identifier : identifierList) {
+                VirtualDBMethodOutcome outcome = getSourceOfTruthAggregator().reviewResource(identifier);
+                if (isRetrieved(outcome)) {
+                    return (outcome);
+                }
             }
-            return (outcome);
-        } else {
-            outcome = outcomeFactory.generateEmptyGetResponse(getResourceType(), id);
-            return (outcome);
-        } */
-        VirtualDBMethodOutcome outcome = outcomeFactory.generateEmptyGetResponse(getResourceType(), id);
-        return (outcome);
+        }
+        VirtualDBMethodOutcome outcome = getSourceOfTruthAggregator().reviewResource(id);
+        return(outcome);
+    }
+
+    private boolean requiresSourceOfTruthRefresh(Resource persistenceServiceOriginatedResource){
+        if(!persistenceServiceOriginatedResource.getMeta().hasLastUpdated()){
+            return(true);
+        }
+        long resourceRefreshAge = Instant.now().toEpochMilli() - specifyPersistedResourceRefreshPeriodInMillis();
+        if(persistenceServiceOriginatedResource.getMeta().getLastUpdated().getTime() > resourceRefreshAge){
+            return(false);
+        }
+        return(true);
+    }
+
+    private boolean isRetrieved(VirtualDBMethodOutcome outcome){
+        if(outcome == null){
+            return(false);
+        }
+        if(outcome.getStatusEnum() == VirtualDBActionStatusEnum.REVIEW_FINISH && outcome.hasResource()){
+            return(true);
+        }
+        return(false);
+    }
+
+    private VirtualDBMethodOutcome completeRead(VirtualDBMethodOutcome outcome, VirtualDBReadLayerEnum resolvingLayer, Map<VirtualDBReadLayerEnum, Long> layerTimings){
+        outcome.setResolvingLayer(resolvingLayer);
+        for(Map.Entry<VirtualDBReadLayerEnum, Long> layerTiming: layerTimings.entrySet()){
+            outcome.recordLayerTiming(layerTiming.getKey(), layerTiming.getValue());
+        }
+        if(getLogger().isDebugEnabled()){
+            getLogger().debug(".loadResource(): Exit, resolvingLayer --> {}, layerTimingsInNanos --> {}", resolvingLayer, layerTimings);
+        }
+        return(outcome);
     }
 
     @Override
     public VirtualDBMethodOutcome updateResource(Resource resourceToUpdate) {
         VirtualDBMethodOutcome outcome = getSourceOfTruthAggregator().updateResource(resourceToUpdate);
         if (outcome.getStatusEnum() == VirtualDBActionStatusEnum.UPDATE_FINISH) {
+            searchResultCache.invalidateMember(resourceToUpdate.getIdElement());
             VirtualDBMethodOutcome cacheCreateOutcome = getDBCache().updateResource(resourceToUpdate);
         }
         return (outcome);
@@ -172,6 +317,9 @@ public abstract class ResourceDBEngine implements ResourceDBEngineInterface {
     @Override
     public VirtualDBMethodOutcome deleteResource(Resource resourceToDelete) {
         VirtualDBMethodOutcome outcome = getSourceOfTruthAggregator().deleteResource(resourceToDelete);
+        if (outcome != null && outcome.getStatusEnum() == VirtualDBActionStatusEnum.DELETE_FINISH) {
+            searchResultCache.invalidateMember(resourceToDelete.getIdElement());
+        }
         VirtualDBMethodOutcome cacheCreateOutcome = getDBCache().deleteResource(resourceToDelete);
         return (outcome);
     }
@@ -201,23 +349,152 @@ public abstract class ResourceDBEngine implements ResourceDBEngineInterface {
     //
     //
 
+    /**
+     * This method retrieves a Resource via one of its Identifiers, going to the Sources-of-Truth if it isn't in
+     * the Cache. Concurrent misses for the same (canonical) Identifier share a single Sources-of-Truth load.
+     *
+     * @param identifier The Identifier of the Resource
+     * @return A VirtualDBMethodOutcome detailing the success (or otherwise) of the action.
+     */
     public VirtualDBMethodOutcome findResourceViaIdentifier(Identifier identifier) {
         getLogger().debug(".findResourceViaIdentifier(): Entry");
         VirtualDBMethodOutcome outcome = getDBCache().getResource(identifier);
         if (outcome.getStatusEnum() == VirtualDBActionStatusEnum.REVIEW_RESOURCE_NOT_IN_CACHE) {
-            getLogger().trace(".getResource(): Resource not in Cache, going to Sources-of-Truth");
-            outcome = getSourceOfTruthAggregator().reviewResource(identifier);
+            getLogger().trace(".findResourceViaIdentifier(): Resource not in Cache, going to Sources-of-Truth");
+            String flightKey = getResourceType().toString() + "|identifier|" + VirtualDBIdentifierIndex.buildCanonicalIdentifierKey(identifier);
+            outcome = singleFlightLoader.load(flightKey, () -> loadResourceViaIdentifier(identifier), specifySingleFlightMaximumWaitInMillis(), () -> generateSingleFlightTimeoutOutcome("findResourceViaIdentifier()", identifier.getValue()));
         }
         getLogger().debug(".findResourceViaIdentifier(): Exit");
         return (outcome);
     }
 
+    private VirtualDBMethodOutcome loadResourceViaIdentifier(Identifier identifier){
+        // A previous (just completed) load may have populated the Cache
+        VirtualDBMethodOutcome outcome = getDBCache().getResource(identifier);
+        if (outcome.getStatusEnum() == VirtualDBActionStatusEnum.REVIEW_RESOURCE_NOT_IN_CACHE) {
+            outcome = getSourceOfTruthAggregator().reviewResource(identifier);
+        }
+        return(outcome);
+    }
+
+    private VirtualDBMethodOutcome generateSingleFlightTimeoutOutcome(String method, String key){
+        String text = "Timed out waiting for the in-flight retrieval of " + getResourceType().toString() + " (" + key + ")";
+        VirtualDBMethodOutcome outcome = outcomeFactory.generateTimedOutOutcome(getResourceType().toString() + "::" + method, VirtualDBActionTypeEnum.REVIEW, VirtualDBActionStatusEnum.REVIEW_FAILURE, text);
+        return(outcome);
+    }
+
     @Override
     public VirtualDBMethodOutcome getResourcesViaSearchCriteria(ResourceType resourceType, SearchNameEnum searchName, Map<Property, Serializable> parameterSet) {
         getLogger().debug("ResourceDBEngine::getResourcesViaSearchCriteria(): Entry, ResourceType --> {}, Search Name --> {}", resourceType.toString(), searchName.getSearchName());
+        long timeToLive = specifySearchResultCacheTimeToLiveInMillis(searchName);
+        String searchKey = null;
+        long searchGeneration = 0;
+        if(timeToLive > 0){
+            searchKey = VirtualDBSearchResultCache.buildSearchKey(searchName, parameterSet);
+            VirtualDBMethodOutcome cachedOutcome = readCachedSearchResult(searchKey);
+            if(cachedOutcome != null){
+                getLogger().debug("ResourceDBEngine::getResourcesViaSearchCriteria(): Exit, using cached search result");
+                return(cachedOutcome);
+            }
+            searchGeneration = searchResultCache.getInvalidationGeneration();
+        }
         VirtualDBMethodOutcome outcome = getSourceOfTruthAggregator().getResourcesViaSearchCriteria(resourceType, searchName, parameterSet);
         updateCache(outcome);
+        if(timeToLive > 0){
+            cacheSearchResult(searchKey, outcome, timeToLive, searchGeneration);
+        }
         getLogger().debug("ResourceDBEngine::getResourcesViaSearchCriteria(): Exit");
         return(outcome);
     }
+
+    private void cacheSearchResult(String searchKey, VirtualDBMethodOutcome outcome, long timeToLive, long searchGeneration){
+        if(outcome == null || outcome.getStatusEnum() != VirtualDBActionStatusEnum.SEARCH_FINISHED || !(outcome.getResource() instanceof Bundle)){
+            return;
+        }
+        if(isIncompleteSearchResult(outcome)){
+            // Missing one or more Source-of-Truth's results - serving it again would hide them for the time-to-live
+            getLogger().trace(".cacheSearchResult(): Not caching incomplete search result, searchKey --> {}", searchKey);
+            return;
+        }
+        Bundle outcomeBundle = (Bundle)outcome.getResource();
+        List<IdType> memberIds = new ArrayList<>();
+        for(Bundle.BundleEntryComponent entry: outcomeBundle.getEntry()){
+            if(entry.getResource() == null || !entry.getResource().getIdElement().hasIdPart()){
+                // Can't be re-read from the Cache, so the result can't be reassembled
+                return;
+            }
+            memberIds.add(entry.getResource().getIdElement());
+        }
+        searchResultCache.put(searchKey, memberIds, timeToLive, searchGeneration);
+    }
+
+    /**
+     * A search result is incomplete if a Source-of-Truth conduit timed-out, failed or was not invoked (or was late)
+     * when it was assembled - each of which is recorded as an issue on the outcome.
+     */
+    private boolean isIncompleteSearchResult(VirtualDBMethodOutcome outcome){
+        if(!(outcome.getOperationOutcome() instanceof OperationOutcome)){
+            return(false);
+        }
+        for(OperationOutcome.OperationOutcomeIssueComponent issue: ((OperationOutcome)outcome.getOperationOutcome()).getIssue()){
+            if(issue.getCode() == null){
+                continue;
+            }
+            switch(issue.getCode()){
+                case TIMEOUT:
+                case EXCEPTION:
+                case INCOMPLETE:
+                    return(true);
+                default:
+                    break;
+            }
+        }
+        return(false);
+    }
+
+    /**
+     * Reassembles a cached search result from the Cache - if any member is no longer in the Cache, the cached
+     * result is not used.
+     */
+    private VirtualDBMethodOutcome readCachedSearchResult(String searchKey){
+        List<IdType> memberIds = searchResultCache.getMemberIds(searchKey, System.currentTimeMillis());
+        if(memberIds == null){
+            return(null);
+        }
+        Bundle searchResultBundle = new Bundle();
+        searchResultBundle.setType(Bundle.BundleType.SEARCHSET);
+        searchResultBundle.setTimestamp(Date.from(Instant.now()));
+        for(IdType memberId: memberIds){
+            VirtualDBMethodOutcome memberOutcome = getDBCache().getResource(memberId);
+            if(!isRetrieved(memberOutcome)){
+                getLogger().trace(".readCachedSearchResult(): Member no longer in the Cache, id --> {}", memberId);
+                return(null);
+            }
+            Bundle.BundleEntryComponent newBundleEntry = searchResultBundle.addEntry();
+            newBundleEntry.setResource((Resource)memberOutcome.getResource());
+            newBundleEntry.getSearch().setMode(Bundle.SearchEntryMode.MATCH).setScore(1);
+        }
+        searchResultBundle.setTotal(memberIds.size());
+        VirtualDBMethodOutcome searchOutcome = new VirtualDBMethodOutcome();
+        searchOutcome.setCreated(false);
+        searchOutcome.setCausalAction(VirtualDBActionTypeEnum.SEARCH);
+        searchOutcome.setStatusEnum(VirtualDBActionStatusEnum.SEARCH_FINISHED);
+        CodeableConcept details = new CodeableConcept();
+        Coding detailsCoding = new Coding();
+        detailsCoding.setSystem("https://www.hl7.org/fhir/codesystem-operation-outcome.html");
+        detailsCoding.setCode("MSG_SEARCH_SUCCESFUL");
+        String text = "Search completed, found " + searchResultBundle.getTotal() + " matches";
+        detailsCoding.setDisplay(text);
+        details.setText(text);
+        details.addCoding(detailsCoding);
+        OperationOutcome opOutcome = new OperationOutcome();
+        OperationOutcome.OperationOutcomeIssueComponent newOutcomeComponent = new OperationOutcome.OperationOutcomeIssueComponent();
+        newOutcomeComponent.setDetails(details);
+        newOutcomeComponent.setCode(OperationOutcome.IssueType.INFORMATIONAL);
+        newOutcomeComponent.setSeverity(OperationOutcome.IssueSeverity.INFORMATION);
+        opOutcome.addIssue(newOutcomeComponent);
+        searchOutcome.setOperationOutcome(opOutcome);
+        searchOutcome.setResource(searchResultBundle);
+        return(searchOutcome);
+    }
 }
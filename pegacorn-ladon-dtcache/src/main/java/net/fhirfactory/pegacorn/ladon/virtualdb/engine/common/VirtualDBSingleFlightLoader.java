@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.virtualdb.engine.common;
+
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.operations.VirtualDBMethodOutcome;
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.operations.VirtualDBReadLayerEnum;
+import org.hl7.fhir.r4.model.OperationOutcome;
+import org.hl7.fhir.r4.model.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent loads of the same key (e.g. a burst of cache misses for the same Patient) into a single
+ * "in-flight" load. The first caller (the leader) runs the load, every concurrent caller for the same key attaches
+ * to it and receives the same outcome - or the same failure. Attached callers wait for (at most) the maximum wait,
+ * after which they are given the timeout outcome instead.
+ *
+ * The leader is given the loaded outcome itself, each attached caller its own copy (of the outcome, its Resource and
+ * its OperationOutcome), taken from a snapshot made when the load completed - so callers are free to modify what they
+ * are given without affecting each other.
+ *
+ * The in-flight entry is removed when the load completes, so a subsequent miss starts a new load.
+ */
+public class VirtualDBSingleFlightLoader {
+    private static final Logger LOG = LoggerFactory.getLogger(VirtualDBSingleFlightLoader.class);
+
+    private ConcurrentHashMap<String, CompletableFuture<VirtualDBMethodOutcome>> inFlightLoads;
+    private LongAdder loadCount;
+    private LongAdder coalescedCount;
+    private LongAdder timeoutCount;
+    private LongAdder failureCount;
+
+    public VirtualDBSingleFlightLoader(){
+        this.inFlightLoads = new ConcurrentHashMap<>();
+        this.loadCount = new LongAdder();
+        this.coalescedCount = new LongAdder();
+        this.timeoutCount = new LongAdder();
+        this.failureCount = new LongAdder();
+    }
+
+    /**
+     * This method runs the loader for the key, unless a load for the key is already in-flight, in which case it
+     * waits for (and returns) the outcome of that load.
+     *
+     * @param key The key of the load (e.g. the canonical Identifier key)
+     * @param loader The load to be run (if no load for the key is in-flight)
+     * @param maximumWaitInMillis The maximum time to wait for an in-flight load
+     * @param timeoutOutcome Supplies the outcome returned to a caller whose wait exceeded maximumWaitInMillis
+     * @return The outcome of the (possibly shared) load
+     */
+    public VirtualDBMethodOutcome load(String key, Supplier<VirtualDBMethodOutcome> loader, long maximumWaitInMillis, Supplier<VirtualDBMethodOutcome> timeoutOutcome){
+        LOG.debug(".load(): Entry, key --> {}", key);
+        CompletableFuture<VirtualDBMethodOutcome> newLoad = new CompletableFuture<>();
+        CompletableFuture<VirtualDBMethodOutcome> inFlightLoad = inFlightLoads.putIfAbsent(key, newLoad);
+        if(inFlightLoad == null){
+            return(runLoad(key, newLoad, loader));
+        }
+        coalescedCount.increment();
+        LOG.trace(".load(): Attaching to the in-flight load, key --> {}", key);
+        try {
+            VirtualDBMethodOutcome outcome = copyOutcome(inFlightLoad.get(maximumWaitInMillis, TimeUnit.MILLISECONDS));
+            LOG.debug(".load(): Exit, outcome copied from the in-flight load");
+            return(outcome);
+        } catch(TimeoutException ex){
+            timeoutCount.increment();
+            LOG.warn(".load(): Timed out waiting for the in-flight load, key --> {}, maximumWaitInMillis --> {}", key, maximumWaitInMillis);
+            return(timeoutOutcome.get());
+        } catch(InterruptedException ex){
+            Thread.currentThread().interrupt();
+            return(timeoutOutcome.get());
+        } catch(ExecutionException ex){
+            Throwable cause = ex.getCause();
+            if(cause instanceof RuntimeException){
+                throw (RuntimeException)cause;
+            }
+            if(cause instanceof Error){
+                throw (Error)cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    private VirtualDBMethodOutcome runLoad(String key, CompletableFuture<VirtualDBMethodOutcome> newLoad, Supplier<VirtualDBMethodOutcome> loader){
+        loadCount.increment();
+        try {
+            VirtualDBMethodOutcome outcome = loader.get();
+            // The leader may modify its outcome as soon as it is returned, so the attached callers copy a snapshot
+            newLoad.complete(copyOutcome(outcome));
+            LOG.debug(".load(): Exit, load completed");
+            return(outcome);
+        } catch(RuntimeException | Error ex){
+            failureCount.increment();
+            newLoad.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            inFlightLoads.remove(key, newLoad);
+        }
+    }
+
+    private VirtualDBMethodOutcome copyOutcome(VirtualDBMethodOutcome outcome){
+        if(outcome == null){
+            return(null);
+        }
+        VirtualDBMethodOutcome outcomeCopy = new VirtualDBMethodOutcome(outcome.getCausalAction(), outcome.getStatusEnum(), outcome);
+        if(outcome.getResource() instanceof Resource){
+            outcomeCopy.setResource(((Resource)outcome.getResource()).copy());
+        }
+        if(outcome.getOperationOutcome() instanceof OperationOutcome){
+            outcomeCopy.setOperationOutcome(((OperationOutcome)outcome.getOperationOutcome()).copy());
+        }
+        if(outcome.getIdentifier() != null){
+            outcomeCopy.setIdentifier(outcome.getIdentifier().copy());
+        }
+        outcomeCopy.setResolvingLayer(outcome.getResolvingLayer());
+        for(Map.Entry<VirtualDBReadLayerEnum, Long> layerTiming: outcome.getLayerTimingsInNanos().entrySet()){
+            outcomeCopy.recordLayerTiming(layerTiming.getKey(), layerTiming.getValue());
+        }
+        return(outcomeCopy);
+    }
+
+    public int getInFlightCount(){
+        return(inFlightLoads.size());
+    }
+
+    /**
+     * The number of loads actually run.
+     */
+    public long getLoadCount() {
+        return loadCount.sum();
+    }
+
+    /**
+     * The number of callers that attached to an in-flight load rather than running their own.
+     */
+    public long getCoalescedCount() {
+        return coalescedCount.sum();
+    }
+
+    public long getTimeoutCount() {
+        return timeoutCount.sum();
+    }
+
+    public long getFailureCount() {
+        return failureCount.sum();
+    }
+}
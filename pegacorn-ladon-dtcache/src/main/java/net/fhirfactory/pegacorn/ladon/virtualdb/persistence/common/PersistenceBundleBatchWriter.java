@@ -0,0 +1,349 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.virtualdb.persistence.common;
+
+import ca.uhn.fhir.rest.api.MethodOutcome;
+import ca.uhn.fhir.rest.server.exceptions.BaseServerResponseException;
+import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
+import org.hl7.fhir.instance.model.api.IBaseOperationOutcome;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.IdType;
+import org.hl7.fhir.r4.model.OperationOutcome;
+import org.hl7.fhir.r4.model.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Gathers the creates and updates destined for one persistence server into FHIR batch Bundles.
+ *
+ * A caller's write() is queued and the caller waits for its result. A background (daemon) thread sends a Bundle as
+ * soon as maxBatchSize writes are waiting, or once the oldest waiting write has lingered for maxLingerInMillis. With
+ * no linger, a Bundle is sent as soon as the queue is (momentarily) empty - so a lone write is never held back, and
+ * writes only share a Bundle when they arrive while an earlier Bundle is being sent.
+ *
+ * Each entry of the response Bundle is mapped back to a MethodOutcome for its caller - an entry with a non-2xx status
+ * is raised as the corresponding BaseServerResponseException, just as the equivalent single create()/update() would
+ * be. The Bundles are always of type batch: the writes of unrelated callers share a Bundle, so one caller's bad
+ * entry must not roll back (or fail) the others' - as it would in a transaction. If the Bundle request itself fails,
+ * every caller in that Bundle gets the failure.
+ */
+public class PersistenceBundleBatchWriter {
+    private static final Logger LOG = LoggerFactory.getLogger(PersistenceBundleBatchWriter.class);
+
+    private static final String WRITER_THREAD_NAME_PREFIX = "PersistenceBundleBatchWriter-";
+    private static final String URN_UUID_PREFIX = "urn:uuid:";
+    private static final long IDLE_POLL_IN_MILLIS = 100;
+
+    private String serverName;
+    private Function<Bundle, Bundle> bundleSender;
+    private int maxBatchSize;
+    private long maxLingerInNanos;
+    private LinkedBlockingQueue<PendingWrite> pendingWrites;
+    private volatile boolean running;
+    private Thread writerThread;
+
+    private AtomicLong bundleCount;
+    private AtomicLong entryCount;
+
+    public PersistenceBundleBatchWriter(String serverName, Function<Bundle, Bundle> bundleSender, int maxBatchSize, long maxLingerInMillis){
+        LOG.debug(".PersistenceBundleBatchWriter(): Entry, serverName --> {}, maxBatchSize --> {}, maxLingerInMillis --> {}",
+                serverName, maxBatchSize, maxLingerInMillis);
+        this.serverName = serverName;
+        this.bundleSender = bundleSender;
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.maxLingerInNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, maxLingerInMillis));
+        this.pendingWrites = new LinkedBlockingQueue<>();
+        this.bundleCount = new AtomicLong();
+        this.entryCount = new AtomicLong();
+        this.running = true;
+        this.writerThread = new Thread(this::runWriter, WRITER_THREAD_NAME_PREFIX + serverName);
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    /**
+     * Queues a create (POST) or update (PUT) of the resource, and waits for the outcome of the Bundle it is sent in.
+     */
+    public MethodOutcome write(Bundle.HTTPVerb method, Resource resource){
+        LOG.debug(".write(): Entry, method --> {}, resource --> {}", method, resource);
+        if(method != Bundle.HTTPVerb.POST && method != Bundle.HTTPVerb.PUT){
+            throw(new IllegalArgumentException("Only POST and PUT writes can be batched, was " + method));
+        }
+        if(!running){
+            throw(new IllegalStateException("The Bundle batch writer for " + serverName + " has been shut down"));
+        }
+        PendingWrite pendingWrite = new PendingWrite(method, resource);
+        pendingWrites.add(pendingWrite);
+        if(!running){
+            // Shut down while we were queueing, so make sure the write isn't stranded
+            sendStrandedWrites();
+        }
+        try {
+            MethodOutcome outcome = pendingWrite.getResult().get();
+            LOG.debug(".write(): Exit, outcome.id --> {}", outcome.getId());
+            return(outcome);
+        } catch(InterruptedException interrupted){
+            Thread.currentThread().interrupt();
+            throw(new InternalErrorException("Interrupted while waiting for the " + serverName + " Bundle response", interrupted));
+        } catch(ExecutionException failed){
+            if(failed.getCause() instanceof RuntimeException){
+                throw((RuntimeException)failed.getCause());
+            }
+            throw(new InternalErrorException("Bundle write to " + serverName + " failed", failed.getCause()));
+        }
+    }
+
+    public boolean isRunning(){
+        return(running);
+    }
+
+    public long getBundleCount(){
+        return(bundleCount.get());
+    }
+
+    public long getEntryCount(){
+        return(entryCount.get());
+    }
+
+    public int getPendingWriteCount(){
+        return(pendingWrites.size());
+    }
+
+    /**
+     * Stops accepting writes, and sends whatever is still waiting (waiting at most maxWaitInMillis for that).
+     */
+    public void shutdown(long maxWaitInMillis){
+        LOG.debug(".shutdown(): Entry, serverName --> {}", serverName);
+        this.running = false;
+        try {
+            writerThread.join(maxWaitInMillis);
+        } catch(InterruptedException interrupted){
+            Thread.currentThread().interrupt();
+        }
+        sendStrandedWrites();
+        LOG.debug(".shutdown(): Exit");
+    }
+
+    private synchronized void sendStrandedWrites(){
+        List<PendingWrite> batch = new ArrayList<>(maxBatchSize);
+        while(pendingWrites.drainTo(batch, maxBatchSize) > 0){
+            sendBatch(batch);
+            batch = new ArrayList<>(maxBatchSize);
+        }
+    }
+
+    //
+    // Background writer
+    //
+
+    private void runWriter(){
+        LOG.debug(".runWriter(): Entry, serverName --> {}", serverName);
+        List<PendingWrite> batch = new ArrayList<>(maxBatchSize);
+        while(running){
+            try {
+                collectBatch(batch);
+            } catch(InterruptedException interrupted){
+                LOG.debug(".runWriter(): Interrupted, sending what has been collected");
+            }
+            if(!batch.isEmpty()){
+                sendBatch(batch);
+                batch = new ArrayList<>(maxBatchSize);
+            }
+        }
+        LOG.debug(".runWriter(): Exit, serverName --> {}", serverName);
+    }
+
+    private void collectBatch(List<PendingWrite> batch) throws InterruptedException {
+        PendingWrite firstWrite = pendingWrites.poll(IDLE_POLL_IN_MILLIS, TimeUnit.MILLISECONDS);
+        if(firstWrite == null){
+            return;
+        }
+        batch.add(firstWrite);
+        long deadline = firstWrite.getQueuedAt() + maxLingerInNanos;
+        while(batch.size() < maxBatchSize){
+            PendingWrite nextWrite = pendingWrites.poll();
+            if(nextWrite == null){
+                long remaining = deadline - System.nanoTime();
+                if(remaining <= 0){
+                    break;
+                }
+                nextWrite = pendingWrites.poll(remaining, TimeUnit.NANOSECONDS);
+                if(nextWrite == null){
+                    break;
+                }
+            }
+            batch.add(nextWrite);
+        }
+    }
+
+    private void sendBatch(List<PendingWrite> batch){
+        LOG.debug(".sendBatch(): Entry, serverName --> {}, batch.size() --> {}", serverName, batch.size());
+        Bundle responseBundle;
+        try {
+            responseBundle = bundleSender.apply(buildRequestBundle(batch));
+            bundleCount.incrementAndGet();
+            entryCount.addAndGet(batch.size());
+        } catch(RuntimeException sendFailure){
+            LOG.warn(".sendBatch(): Bundle request to {} failed --> {}", serverName, sendFailure.toString());
+            for(PendingWrite pendingWrite: batch){
+                pendingWrite.getResult().completeExceptionally(sendFailure);
+            }
+            return;
+        }
+        if(responseBundle == null || responseBundle.getEntry().size() != batch.size()){
+            int responseCount = (responseBundle == null) ? 0 : responseBundle.getEntry().size();
+            InternalErrorException mismatch = new InternalErrorException("Bundle response from " + serverName + " has " + responseCount + " entries, expected " + batch.size());
+            for(PendingWrite pendingWrite: batch){
+                pendingWrite.getResult().completeExceptionally(mismatch);
+            }
+            return;
+        }
+        for(int index = 0; index < batch.size(); index++){
+            PendingWrite pendingWrite = batch.get(index);
+            try {
+                pendingWrite.getResult().complete(mapEntryResponse(pendingWrite, responseBundle.getEntry().get(index)));
+            } catch(RuntimeException entryFailure){
+                pendingWrite.getResult().completeExceptionally(entryFailure);
+            }
+        }
+        LOG.debug(".sendBatch(): Exit");
+    }
+
+    protected Bundle buildRequestBundle(List<PendingWrite> batch){
+        Bundle requestBundle = new Bundle();
+        requestBundle.setType(Bundle.BundleType.BATCH);
+        for(PendingWrite pendingWrite: batch){
+            Resource resource = pendingWrite.getResource();
+            Bundle.BundleEntryComponent entry = requestBundle.addEntry();
+            entry.setResource(resource);
+            if(pendingWrite.getMethod() == Bundle.HTTPVerb.PUT){
+                // No fullUrl - it would have to be the absolute URL on the server, and a batch entry doesn't need one
+                IdType resourceId = resource.getIdElement().toUnqualifiedVersionless();
+                entry.getRequest().setMethod(Bundle.HTTPVerb.PUT).setUrl(resource.fhirType() + "/" + resourceId.getIdPart());
+            } else {
+                entry.setFullUrl(URN_UUID_PREFIX + UUID.randomUUID().toString());
+                entry.getRequest().setMethod(Bundle.HTTPVerb.POST).setUrl(resource.fhirType());
+            }
+        }
+        return(requestBundle);
+    }
+
+    /**
+     * Maps a response entry to the MethodOutcome the equivalent single create()/update() would have returned. If the
+     * server did not return the resource, the submitted resource is echoed back with the id and version (from the
+     * location and etag) the server assigned.
+     */
+    protected MethodOutcome mapEntryResponse(PendingWrite pendingWrite, Bundle.BundleEntryComponent responseEntry){
+        Bundle.BundleEntryResponseComponent response = responseEntry.getResponse();
+        int statusCode = parseStatusCode(response.getStatus());
+        if(statusCode < 200 || statusCode >= 300){
+            String message = "Bundle entry " + pendingWrite.getMethod() + " " + pendingWrite.getResource().fhirType() + " failed: " + response.getStatus();
+            BaseServerResponseException entryFailure = BaseServerResponseException.newInstance(statusCode, message);
+            if(response.getOutcome() instanceof IBaseOperationOutcome){
+                entryFailure.setOperationOutcome((IBaseOperationOutcome)response.getOutcome());
+            }
+            throw(entryFailure);
+        }
+        MethodOutcome outcome = new MethodOutcome();
+        outcome.setCreated(statusCode == 201);
+        IdType assignedId = null;
+        if(response.hasLocation()){
+            assignedId = new IdType(response.getLocation());
+            outcome.setId(assignedId);
+        }
+        if(responseEntry.hasResource()){
+            outcome.setResource(responseEntry.getResource());
+        } else {
+            Resource echoedResource = pendingWrite.getResource().copy();
+            if(assignedId != null && assignedId.hasIdPart()){
+                echoedResource.setId(assignedId.toUnqualifiedVersionless());
+            }
+            if(assignedId != null && assignedId.hasVersionIdPart()){
+                echoedResource.getMeta().setVersionId(assignedId.getVersionIdPart());
+            } else if(response.hasEtag()){
+                echoedResource.getMeta().setVersionId(response.getEtag().replace("W/", "").replace("\"", ""));
+            }
+            if(response.hasLastModified()){
+                echoedResource.getMeta().setLastUpdated(response.getLastModified());
+            }
+            outcome.setResource(echoedResource);
+        }
+        if(response.getOutcome() instanceof OperationOutcome){
+            outcome.setOperationOutcome((OperationOutcome)response.getOutcome());
+        }
+        return(outcome);
+    }
+
+    private static int parseStatusCode(String status){
+        if(status == null){
+            return(500);
+        }
+        String trimmedStatus = status.trim();
+        int spaceIndex = trimmedStatus.indexOf(' ');
+        String statusCode = (spaceIndex < 0) ? trimmedStatus : trimmedStatus.substring(0, spaceIndex);
+        try {
+            return(Integer.parseInt(statusCode));
+        } catch(NumberFormatException unparseable){
+            return(500);
+        }
+    }
+
+    protected static class PendingWrite {
+        private Bundle.HTTPVerb method;
+        private Resource resource;
+        private long queuedAt;
+        private CompletableFuture<MethodOutcome> result;
+
+        PendingWrite(Bundle.HTTPVerb method, Resource resource){
+            this.method = method;
+            this.resource = resource;
+            this.queuedAt = System.nanoTime();
+            this.result = new CompletableFuture<>();
+        }
+
+        public Bundle.HTTPVerb getMethod() {
+            return method;
+        }
+
+        public Resource getResource() {
+            return resource;
+        }
+
+        public long getQueuedAt() {
+            return queuedAt;
+        }
+
+        public CompletableFuture<MethodOutcome> getResult() {
+            return result;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.virtualdb.persistence.common;
+
+import net.fhirfactory.pegacorn.platform.restfulapi.PegacornInternalFHIRClientServices;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Holds the PersistenceBundleBatchWriter of each persistence server, so that all the PersistenceServices that write
+ * to the same server (e.g. Patient and Practitioner, via the BaseIndividuals server) share one writer - and so one
+ * stream of Bundles.
+ */
+@ApplicationScoped
+public class PersistenceBundleBatchingService {
+    private static final Logger LOG = LoggerFactory.getLogger(PersistenceBundleBatchingService.class);
+
+    private static final long SHUTDOWN_WAIT_IN_MILLIS = 10000;
+
+    private Map<String, PersistenceBundleBatchWriter> writers;
+
+    public PersistenceBundleBatchingService(){
+        this.writers = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Returns the writer for the persistence server, creating it (with the writerFactory, which is given the server
+     * name) if this is the first request for that server.
+     */
+    public PersistenceBundleBatchWriter getWriter(PegacornInternalFHIRClientServices persistenceServer, Function<String, PersistenceBundleBatchWriter> writerFactory){
+        String serverName = resolveServerName(persistenceServer);
+        return(writers.computeIfAbsent(serverName, writerFactory));
+    }
+
+    /**
+     * The (bean) class name of the server accessor, without any proxy suffix.
+     */
+    protected String resolveServerName(PegacornInternalFHIRClientServices persistenceServer){
+        String serverClassName = persistenceServer.getClass().getSimpleName();
+        int proxySuffix = serverClassName.indexOf('$');
+        if(proxySuffix > 0){
+            serverClassName = serverClassName.substring(0, proxySuffix);
+        }
+        return(serverClassName);
+    }
+
+    @PreDestroy
+    public void shutdown(){
+        LOG.debug(".shutdown(): Entry");
+        for(PersistenceBundleBatchWriter writer: writers.values()){
+            writer.shutdown(SHUTDOWN_WAIT_IN_MILLIS);
+        }
+        LOG.debug(".shutdown(): Exit");
+    }
+}
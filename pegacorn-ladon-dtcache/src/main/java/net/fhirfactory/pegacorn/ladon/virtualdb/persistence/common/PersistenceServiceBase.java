@@ -22,11 +22,13 @@
 package net.fhirfactory.pegacorn.ladon.virtualdb.persistence.common;
 
 import ca.uhn.fhir.parser.IParser;
+import ca.uhn.fhir.rest.api.Constants;
 import ca.uhn.fhir.rest.api.MethodOutcome;
 import ca.uhn.fhir.rest.client.api.IGenericClient;
 import net.fhirfactory.pegacorn.datasets.fhir.r4.base.entities.bundle.BundleContentHelper;
 import net.fhirfactory.pegacorn.deployment.names.PegacornLadonVirtualDBPersistenceComponentNames;
 import net.fhirfactory.pegacorn.deployment.topology.manager.DeploymentTopologyIM;
+import net.fhirfactory.pegacorn.ladon.mdr.conduit.core.codec.FHIRWireCodec;
 import net.fhirfactory.pegacorn.ladon.model.virtualdb.mdr.ResourceSoTConduitActionResponse;
 import net.fhirfactory.pegacorn.ladon.model.virtualdb.operations.VirtualDBActionStatusEnum;
 import net.fhirfactory.pegacorn.ladon.model.virtualdb.operations.VirtualDBActionTypeEnum;
@@ -45,6 +47,12 @@ import javax.inject.Inject;
 
 public abstract class PersistenceServiceBase extends GenericSTAClientWUPTemplate {
 
+    private static final String BUNDLE_BATCHING_PROPERTY = "ladon.persistence.batch.enabled";
+    private static final String BUNDLE_BATCH_SIZE_PROPERTY = "ladon.persistence.batch.size";
+    private static final String BUNDLE_BATCH_LINGER_PROPERTY = "ladon.persistence.batch.linger";
+    private static final int DEFAULT_BUNDLE_BATCH_SIZE = 50;
+    private static final long DEFAULT_BUNDLE_BATCH_LINGER_IN_MILLIS = 0;
+
     @Inject
     LadonProcessingPlant ladonProcessingPlant;
 
@@ -60,6 +68,12 @@ public abstract class PersistenceServiceBase extends GenericSTAClientWUPTemplate
     @Inject
     private VirtualDBMethodOutcomeFactory virtualDBMethodOutcomeFactory;
 
+    @Inject
+    private PersistenceBundleBatchingService bundleBatchingService;
+
+    @Inject
+    private FHIRWireCodec fhirWireCodec;
+
     public PersistenceServiceBase() {
         super();
     }
@@ -71,6 +85,13 @@ public abstract class PersistenceServiceBase extends GenericSTAClientWUPTemplate
     abstract protected Identifier getBestIdentifier(MethodOutcome outcome);
     abstract public VirtualDBMethodOutcome synchroniseResource(ResourceType resourceType, Resource resource);
 
+    /**
+     * The persistence server's client, configured (by the shared FHIRWireCodec) for compact, compressed, requests.
+     */
+    protected IGenericClient getFHIRClient(){
+        return(fhirWireCodec.configureClient(getFHIRClientServices().getClient()));
+    }
+
     @Override
     protected String specifySTAClientName() {
         return (specifyPersistenceServiceName());
@@ -98,6 +119,46 @@ public abstract class PersistenceServiceBase extends GenericSTAClientWUPTemplate
 
     protected PegacornLadonVirtualDBPersistenceComponentNames getVirtualDBPersistenceNames(){return(virtualDBPersistenceNames);}
 
+    //
+    // Bundle batching of creates & updates (the settings of the first PersistenceService to write to a given
+    // persistence server apply to all the PersistenceServices sharing that server). Off unless enabled, and without
+    // a linger by default - so a lone write goes straight out, and only writes that pile up behind a Bundle in
+    // flight are batched.
+    //
+
+    protected boolean specifyBundleBatching(){
+        return(Boolean.parseBoolean(System.getProperty(BUNDLE_BATCHING_PROPERTY, "false")));
+    }
+
+    protected int specifyBundleBatchSize(){
+        return(Integer.getInteger(BUNDLE_BATCH_SIZE_PROPERTY, DEFAULT_BUNDLE_BATCH_SIZE));
+    }
+
+    protected long specifyBundleBatchLingerInMillis(){
+        return(Long.getLong(BUNDLE_BATCH_LINGER_PROPERTY, DEFAULT_BUNDLE_BATCH_LINGER_IN_MILLIS));
+    }
+
+    protected PersistenceBundleBatchWriter getBundleBatchWriter(){
+        return(bundleBatchingService.getWriter(getFHIRClientServices(), serverName -> new PersistenceBundleBatchWriter(
+                serverName, this::sendBundle, specifyBundleBatchSize(), specifyBundleBatchLingerInMillis())));
+    }
+
+    protected Bundle sendBundle(Bundle requestBundle){
+        getLogger().debug(".sendBundle(): Entry, requestBundle.entry.size() --> {}", requestBundle.getEntry().size());
+        Bundle responseBundle = getFHIRClient()
+                .transaction()
+                .withBundle(requestBundle)
+                .withAdditionalHeader(Constants.HEADER_PREFER, Constants.HEADER_PREFER_RETURN + "=" + Constants.HEADER_PREFER_RETURN_REPRESENTATION)
+                .encodedJson()
+                .execute();
+        getLogger().debug(".sendBundle(): Exit");
+        return(responseBundle);
+    }
+
+    private boolean useBundleBatchWriter(){
+        return(specifyBundleBatching() && bundleBatchingService != null && getBundleBatchWriter().isRunning());
+    }
+
     //
     // Database Transactions
     //
@@ -105,7 +166,7 @@ public abstract class PersistenceServiceBase extends GenericSTAClientWUPTemplate
     public VirtualDBMethodOutcome getResourceById(String resourceType, IdType id){
         getLogger().debug(".standardReviewResource(): Entry, identifier --> {}", id);
         // Attempt to "get" the Resource
-        Resource outputResource = (Resource)getFHIRClientServices().getClient()
+        Resource outputResource = (Resource)getFHIRClient()
                 .read()
                 .resource(resourceType)
                 .withId(id)
@@ -160,12 +221,16 @@ public abstract class PersistenceServiceBase extends GenericSTAClientWUPTemplate
 
     public VirtualDBMethodOutcome standardCreateResource(Resource resourceToCreate) {
         getLogger().debug(".standardCreateResource(): Entry, resourceToCreate --> {}", resourceToCreate);
-        MethodOutcome callOutcome = getFHIRClientServices().getClient()
-                .create()
-                .resource(resourceToCreate)
-                .prettyPrint()
-                .encodedJson()
-                .execute();
+        MethodOutcome callOutcome;
+        if(useBundleBatchWriter()) {
+            callOutcome = getBundleBatchWriter().write(Bundle.HTTPVerb.POST, resourceToCreate);
+        } else {
+            callOutcome = getFHIRClient()
+                    .create()
+                    .resource(resourceToCreate)
+                    .encodedJson()
+                    .execute();
+        }
         if(!callOutcome.getCreated()) {
             getLogger().error(".writeResource(): Can't create Resource {}, error --> {}", callOutcome.getOperationOutcome());
         }
@@ -218,12 +283,16 @@ public abstract class PersistenceServiceBase extends GenericSTAClientWUPTemplate
 
     public VirtualDBMethodOutcome standardUpdateResource(Resource resourceToUpdate) {
         getLogger().debug(".standardUpdateResource(): Entry, resourceToUpdate --> {}", resourceToUpdate);
-        MethodOutcome callOutcome = getFHIRClientServices().getClient()
-                .update()
-                .resource(resourceToUpdate)
-                .prettyPrint()
-                .encodedJson()
-                .execute();
+        MethodOutcome callOutcome;
+        if(resourceToUpdate.getIdElement().hasIdPart() && useBundleBatchWriter()) {
+            callOutcome = getBundleBatchWriter().write(Bundle.HTTPVerb.PUT, resourceToUpdate);
+        } else {
+            callOutcome = getFHIRClient()
+                    .update()
+                    .resource(resourceToUpdate)
+                    .encodedJson()
+                    .execute();
+        }
         if(!callOutcome.getCreated()) {
             getLogger().error(".writeResource(): Can't update Resource {}, error --> {}", callOutcome.getOperationOutcome());
         }
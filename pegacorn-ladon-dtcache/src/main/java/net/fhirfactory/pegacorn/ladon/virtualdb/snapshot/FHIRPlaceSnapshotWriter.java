@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2020 Mark A. Hunter (ACT Health)
+ * Copyright (c) 2020 Mark A. Hunter
  *
  * Permission is hereby granted, free of charge, to any person obtaining a copy
  * of this software and associated documentation files (the "Software"), to deal
@@ -21,12 +21,164 @@
  */
 package net.fhirfactory.pegacorn.ladon.virtualdb.snapshot;
 
-import javax.inject.Inject;
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.cache.CacheResourceEntry;
+import net.fhirfactory.pegacorn.ladon.virtualdb.cache.common.VirtualDBIdTypeBasedCacheBase;
+import net.fhirfactory.pegacorn.ladon.virtualdb.cache.common.VirtualDBResourceCodec;
+import org.hl7.fhir.r4.model.IdType;
+import org.hl7.fhir.r4.model.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes the (incremental) snapshots of a single VirtualDB cache - i.e. the local copy of the FHIRPlace content of
+ * one resource type - to its VirtualDBSnapshotFile, and restores the cache from it.
+ *
+ * Each increment drains the ids the cache has marked as changed since the previous increment, and appends the
+ * current entry of each (or a tombstone, if it has since left the cache). A restore splits the live records into
+ * slices, which are read, decoded and added to the cache in parallel.
+ */
 public class FHIRPlaceSnapshotWriter {
+    private static final Logger LOG = LoggerFactory.getLogger(FHIRPlaceSnapshotWriter.class);
+
+    private VirtualDBIdTypeBasedCacheBase resourceCache;
+    private VirtualDBSnapshotFile snapshotFile;
+    private VirtualDBResourceCodec resourceCodec;
+    private int restoreSliceSize;
+
+    private AtomicLong restoredCount;
+    private AtomicLong restoreFailureCount;
+    private long writtenCount;
+    private long writeFailureCount;
+
+    public FHIRPlaceSnapshotWriter(VirtualDBIdTypeBasedCacheBase resourceCache, VirtualDBSnapshotFile snapshotFile, VirtualDBResourceCodec resourceCodec, int restoreSliceSize){
+        this.resourceCache = resourceCache;
+        this.snapshotFile = snapshotFile;
+        this.resourceCodec = resourceCodec;
+        this.restoreSliceSize = Math.max(1, restoreSliceSize);
+        this.restoredCount = new AtomicLong(0);
+        this.restoreFailureCount = new AtomicLong(0);
+    }
+
+    /**
+     * Appends the resources that have changed since the previous increment to the snapshot, then rewrites its index
+     * (and compacts it, if worthwhile). If the snapshot can't be written, the changed ids are handed back to the
+     * cache so they are retried by the next increment.
+     *
+     * @return the number of records appended
+     */
+    public synchronized int writeIncrement(){
+        Set<IdType> changedIds = resourceCache.drainSnapshotChanges();
+        if(changedIds.isEmpty()){
+            return(0);
+        }
+        LOG.debug(".writeIncrement(): Entry, snapshot --> {}, changedIds --> {}", snapshotFile.getSnapshotName(), changedIds.size());
+        int appended = 0;
+        try {
+            for(IdType changedId: changedIds){
+                String snapshotKey = changedId.getValue();
+                CacheResourceEntry currentEntry = resourceCache.getSnapshotEntry(changedId);
+                if(currentEntry == null){
+                    if(snapshotFile.appendTombstone(snapshotKey)){
+                        appended += 1;
+                    }
+                    continue;
+                }
+                byte[] payload;
+                try {
+                    payload = resourceCodec.encode(currentEntry.getResource());
+                } catch(RuntimeException ex){
+                    LOG.warn(".writeIncrement(): Unable to encode {} for the snapshot, error --> {}", changedId, ex.getMessage());
+                    writeFailureCount += 1;
+                    continue;
+                }
+                snapshotFile.append(snapshotKey, currentEntry.getExpiryDeadline(), payload);
+                appended += 1;
+            }
+            snapshotFile.writeIndex();
+            snapshotFile.compactIfWorthwhile();
+        } catch(IOException ex){
+            LOG.warn(".writeIncrement(): Unable to write snapshot {}, retrying its changes next time, error --> {}", snapshotFile.getSnapshotName(), ex.getMessage());
+            resourceCache.requeueSnapshotChanges(changedIds);
+            writeFailureCount += 1;
+        }
+        writtenCount += appended;
+        LOG.debug(".writeIncrement(): Exit, appended --> {}", appended);
+        return(appended);
+    }
+
+    /**
+     * Restores the cache from the snapshot, decoding slices of restoreSliceSize records in parallel on the given
+     * executor. Records that have expired (or that can't be read) are skipped.
+     *
+     * @return the number of resources restored into the cache
+     */
+    public int restore(Executor restoreExecutor){
+        int[] liveOffsets = snapshotFile.getLiveOffsets();
+        LOG.debug(".restore(): Entry, snapshot --> {}, liveRecords --> {}", snapshotFile.getSnapshotName(), liveOffsets.length);
+        List<CompletableFuture<Integer>> slices = new ArrayList<>();
+        for(int sliceStart = 0; sliceStart < liveOffsets.length; sliceStart += restoreSliceSize){
+            int start = sliceStart;
+            int end = Math.min(liveOffsets.length, sliceStart + restoreSliceSize);
+            slices.add(CompletableFuture.supplyAsync(() -> restoreSlice(liveOffsets, start, end), restoreExecutor));
+        }
+        int restored = 0;
+        for(CompletableFuture<Integer> slice: slices){
+            restored += slice.join();
+        }
+        LOG.debug(".restore(): Exit, restored --> {}", restored);
+        return(restored);
+    }
+
+    private int restoreSlice(int[] liveOffsets, int start, int end){
+        int restored = 0;
+        for(int position = start; position < end; position++){
+            try {
+                VirtualDBSnapshotRecord record = snapshotFile.readRecord(liveOffsets[position]);
+                if(record.getExpiryDeadline() < System.currentTimeMillis()){
+                    continue;
+                }
+                Resource resource = resourceCodec.decode(record.getPayload());
+                if(resourceCache.restoreResource(new IdType(record.getId()), resource, record.getExpiryDeadline())){
+                    restored += 1;
+                }
+            } catch(IOException | RuntimeException ex){
+                LOG.warn(".restoreSlice(): Unable to restore the record at offset {} of snapshot {}, error --> {}", liveOffsets[position], snapshotFile.getSnapshotName(), ex.getMessage());
+                restoreFailureCount.incrementAndGet();
+            }
+        }
+        restoredCount.addAndGet(restored);
+        return(restored);
+    }
+
+    public VirtualDBSnapshotFile getSnapshotFile() {
+        return snapshotFile;
+    }
+
+    public long getRestoredCount(){
+        return(restoredCount.get());
+    }
+
+    public long getRestoreFailureCount(){
+        return(restoreFailureCount.get());
+    }
 
-    @Inject
-    FHIRPlaceShardSelector fhirplaceSelector;
+    public synchronized long getWrittenCount(){
+        return(writtenCount);
+    }
 
+    public synchronized long getWriteFailureCount(){
+        return(writeFailureCount);
+    }
 
+    public synchronized void close(){
+        snapshotFile.close();
+    }
 }
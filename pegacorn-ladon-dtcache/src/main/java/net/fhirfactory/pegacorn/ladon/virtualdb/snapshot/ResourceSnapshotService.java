@@ -1,4 +1,317 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
 package net.fhirfactory.pegacorn.ladon.virtualdb.snapshot;
 
+import ca.uhn.fhir.parser.IParser;
+import net.fhirfactory.pegacorn.ladon.virtualdb.cache.common.VirtualDBCacheStorageModeEnum;
+import net.fhirfactory.pegacorn.ladon.virtualdb.cache.common.VirtualDBIdTypeBasedCacheBase;
+import net.fhirfactory.pegacorn.ladon.virtualdb.cache.common.VirtualDBResourceCodec;
+import net.fhirfactory.pegacorn.util.FHIRContextUtility;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.context.Initialized;
+import javax.enterprise.event.Observes;
+import javax.enterprise.inject.Any;
+import javax.enterprise.inject.Instance;
+import javax.inject.Inject;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Keeps a local, memory-mapped snapshot (see VirtualDBSnapshotFile) of each VirtualDB cache, so that a restarted
+ * node starts with warm caches rather than re-populating them from the FHIRPlace servers one miss at a time.
+ *
+ * Each cache attaches itself when it is initialised: its snapshot is restored (decoded in parallel on the restore
+ * pool) before the cache is used, and from then on the cache tracks the ids that change. Every snapshot period the
+ * changed resources of every cache are appended to its snapshot (see FHIRPlaceSnapshotWriter). When the application
+ * scope is initialised - i.e. before the deployment takes traffic - all the caches are initialised (and so restored)
+ * in parallel, rather than lazily on first use.
+ *
+ * Snapshots are disabled unless "ladon.virtualdb.snapshot.enabled" is set to true; the remaining settings are taken
+ * from the "ladon.virtualdb.snapshot.*" system properties, or by overriding the specify*() methods.
+ */
+@ApplicationScoped
 public class ResourceSnapshotService {
+    private static final Logger LOG = LoggerFactory.getLogger(ResourceSnapshotService.class);
+
+    private static final String SNAPSHOT_ENABLED_PROPERTY = "ladon.virtualdb.snapshot.enabled";
+    private static final String SNAPSHOT_DIRECTORY_PROPERTY = "ladon.virtualdb.snapshot.directory";
+    private static final String SNAPSHOT_PERIOD_PROPERTY = "ladon.virtualdb.snapshot.period";
+    private static final String SNAPSHOT_CAPACITY_PROPERTY = "ladon.virtualdb.snapshot.capacity";
+    private static final String SNAPSHOT_COMPACTION_SIZE_PROPERTY = "ladon.virtualdb.snapshot.compaction.size";
+    private static final String SNAPSHOT_RESTORE_THREADS_PROPERTY = "ladon.virtualdb.snapshot.restore.threads";
+
+    private static final String DEFAULT_SNAPSHOT_DIRECTORY_NAME = "ladon-virtualdb-snapshot";
+    private static final long DEFAULT_SNAPSHOT_PERIOD_IN_MILLIS = 30000;
+    private static final int DEFAULT_SNAPSHOT_CAPACITY_IN_BYTES = 4 * 1024 * 1024;
+    private static final long DEFAULT_SNAPSHOT_COMPACTION_SIZE_IN_BYTES = 16 * 1024 * 1024;
+    private static final int DEFAULT_RESTORE_SLICE_SIZE = 512;
+    private static final long SHUTDOWN_WAIT_IN_MILLIS = 10000;
+
+    @Inject
+    private FHIRContextUtility fhirContextUtility;
+
+    @Inject
+    @Any
+    private Instance<VirtualDBIdTypeBasedCacheBase> resourceCaches;
+
+    private ConcurrentHashMap<String, FHIRPlaceSnapshotWriter> snapshotWriters;
+    private Supplier<IParser> parserSupplier;
+    private VirtualDBResourceCodec resourceCodec;
+    private ExecutorService restoreExecutor;
+    private ScheduledExecutorService snapshotScheduler;
+    private boolean enabled;
+    boolean isInitialised;
+
+    public ResourceSnapshotService(){
+        this.snapshotWriters = new ConcurrentHashMap<>();
+        this.isInitialised = false;
+    }
+
+    public ResourceSnapshotService(Supplier<IParser> parserSupplier){
+        this();
+        this.parserSupplier = parserSupplier;
+    }
+
+    @PostConstruct
+    protected void initialise(){
+        if(!isInitialised){
+            LOG.debug(".initialise(): Entry");
+            this.enabled = specifySnapshotEnabled();
+            if(enabled){
+                if(parserSupplier == null){
+                    parserSupplier = () -> fhirContextUtility.getJsonParser();
+                }
+                resourceCodec = new VirtualDBResourceCodec(VirtualDBCacheStorageModeEnum.STORAGE_MODE_DEFLATE, parserSupplier);
+                restoreExecutor = Executors.newFixedThreadPool(specifySnapshotRestoreThreads(), newDaemonThreadFactory("ResourceSnapshotRestore"));
+                snapshotScheduler = Executors.newSingleThreadScheduledExecutor(newDaemonThreadFactory("ResourceSnapshotWriter"));
+                long snapshotPeriod = specifySnapshotPeriodInMillis();
+                snapshotScheduler.scheduleWithFixedDelay(this::writeSnapshots, snapshotPeriod, snapshotPeriod, TimeUnit.MILLISECONDS);
+                LOG.info(".initialise(): VirtualDB snapshots enabled, directory --> {}, period --> {}ms", specifySnapshotDirectory(), snapshotPeriod);
+            }
+            isInitialised = true;
+            LOG.debug(".initialise(): Exit");
+        }
+    }
+
+    //
+    // Settings
+    //
+
+    protected boolean specifySnapshotEnabled(){
+        return(Boolean.parseBoolean(System.getProperty(SNAPSHOT_ENABLED_PROPERTY, "false")));
+    }
+
+    protected File specifySnapshotDirectory(){
+        String configuredDirectory = System.getProperty(SNAPSHOT_DIRECTORY_PROPERTY);
+        if(configuredDirectory != null && !configuredDirectory.isEmpty()){
+            return(new File(configuredDirectory));
+        }
+        return(new File(System.getProperty("java.io.tmpdir"), DEFAULT_SNAPSHOT_DIRECTORY_NAME));
+    }
+
+    protected long specifySnapshotPeriodInMillis(){
+        return(Long.getLong(SNAPSHOT_PERIOD_PROPERTY, DEFAULT_SNAPSHOT_PERIOD_IN_MILLIS));
+    }
+
+    /**
+     * The initial size of a (new) snapshot file; the file is doubled in size whenever it is full.
+     */
+    protected int specifySnapshotCapacityInBytes(){
+        return(Integer.getInteger(SNAPSHOT_CAPACITY_PROPERTY, DEFAULT_SNAPSHOT_CAPACITY_IN_BYTES));
+    }
+
+    /**
+     * The size below which a snapshot file is never compacted.
+     */
+    protected long specifySnapshotCompactionSizeInBytes(){
+        return(Long.getLong(SNAPSHOT_COMPACTION_SIZE_PROPERTY, DEFAULT_SNAPSHOT_COMPACTION_SIZE_IN_BYTES));
+    }
+
+    protected int specifySnapshotRestoreThreads(){
+        return(Math.max(1, Integer.getInteger(SNAPSHOT_RESTORE_THREADS_PROPERTY, Runtime.getRuntime().availableProcessors())));
+    }
+
+    protected int specifySnapshotRestoreSliceSize(){
+        return(DEFAULT_RESTORE_SLICE_SIZE);
+    }
+
+    public boolean isEnabled(){
+        return(enabled);
+    }
+
+    //
+    // Restore
+    //
+
+    /**
+     * Initialises every VirtualDB cache, in parallel, once the application scope has been initialised - so the
+     * caches are restored from their snapshots before the deployment starts taking traffic.
+     */
+    protected void warmCachesOnStartup(@Observes @Initialized(ApplicationScoped.class) Object startupEvent){
+        if(!isEnabled() || resourceCaches == null){
+            return;
+        }
+        LOG.debug(".warmCachesOnStartup(): Entry");
+        long startTime = System.currentTimeMillis();
+        List<VirtualDBIdTypeBasedCacheBase> caches = new ArrayList<>();
+        for(VirtualDBIdTypeBasedCacheBase resourceCache: resourceCaches){
+            caches.add(resourceCache);
+        }
+        warmCaches(caches);
+        LOG.info(".warmCachesOnStartup(): Restored {} VirtualDB caches from their snapshots in {}ms", snapshotWriters.size(), System.currentTimeMillis() - startTime);
+    }
+
+    /**
+     * Initialises (and so restores) the given caches in parallel. A separate, short-lived pool is used, as the
+     * restores themselves block on the restore pool.
+     */
+    public void warmCaches(Collection<VirtualDBIdTypeBasedCacheBase> caches){
+        if(caches.isEmpty()){
+            return;
+        }
+        ExecutorService warmingExecutor = Executors.newFixedThreadPool(Math.min(caches.size(), specifySnapshotRestoreThreads()), newDaemonThreadFactory("ResourceSnapshotWarmer"));
+        try {
+            List<Future<?>> warmings = new ArrayList<>();
+            for(VirtualDBIdTypeBasedCacheBase resourceCache: caches){
+                // Any call on the (CDI proxy of the) cache initialises it, which attaches it to this service
+                warmings.add(warmingExecutor.submit(() -> resourceCache.getCacheSize()));
+            }
+            for(Future<?> warming: warmings){
+                try {
+                    warming.get();
+                } catch(Exception ex){
+                    LOG.warn(".warmCaches(): Unable to warm a VirtualDB cache, error --> {}", ex.getMessage());
+                }
+            }
+        } finally {
+            warmingExecutor.shutdown();
+        }
+    }
+
+    /**
+     * Attaches a cache to the service: restores the cache from its snapshot (if there is one) and starts tracking
+     * its changes for the subsequent snapshots. Called by the cache when it is initialised; if the snapshot can't be
+     * opened the cache simply starts cold.
+     *
+     * @return the number of resources restored into the cache
+     */
+    public int attach(VirtualDBIdTypeBasedCacheBase resourceCache){
+        if(!isEnabled()){
+            return(0);
+        }
+        String cacheName = resourceCache.getCacheName();
+        if(snapshotWriters.containsKey(cacheName)){
+            return(0);
+        }
+        LOG.debug(".attach(): Entry, cacheName --> {}", cacheName);
+        long startTime = System.currentTimeMillis();
+        VirtualDBSnapshotFile snapshotFile;
+        try {
+            snapshotFile = new VirtualDBSnapshotFile(specifySnapshotDirectory(), cacheName, specifySnapshotCapacityInBytes(), specifySnapshotCompactionSizeInBytes());
+        } catch(IOException ex){
+            LOG.error(".attach(): Unable to open the snapshot of cache {}, it will start cold, error --> {}", cacheName, ex.getMessage());
+            return(0);
+        }
+        FHIRPlaceSnapshotWriter snapshotWriter = new FHIRPlaceSnapshotWriter(resourceCache, snapshotFile, resourceCodec, specifySnapshotRestoreSliceSize());
+        // Track the changes before restoring, so that none made during the restore are missed
+        resourceCache.enableSnapshotTracking();
+        int restored = snapshotWriter.restore(restoreExecutor);
+        snapshotWriters.put(cacheName, snapshotWriter);
+        LOG.info(".attach(): Restored {} resources into cache {} in {}ms", restored, cacheName, System.currentTimeMillis() - startTime);
+        return(restored);
+    }
+
+    //
+    // Snapshot
+    //
+
+    /**
+     * Appends the changes of every attached cache to its snapshot. Run every snapshot period, and on shutdown.
+     *
+     * @return the number of records appended
+     */
+    public int writeSnapshots(){
+        int appended = 0;
+        for(FHIRPlaceSnapshotWriter snapshotWriter: snapshotWriters.values()){
+            try {
+                appended += snapshotWriter.writeIncrement();
+            } catch(Exception ex){
+                LOG.warn(".writeSnapshots(): Snapshot of {} failed, error --> {}", snapshotWriter.getSnapshotFile().getSnapshotName(), ex.getMessage());
+            }
+        }
+        LOG.trace(".writeSnapshots(): appended --> {}", appended);
+        return(appended);
+    }
+
+    public FHIRPlaceSnapshotWriter getSnapshotWriter(String cacheName){
+        return(snapshotWriters.get(cacheName));
+    }
+
+    @PreDestroy
+    protected void shutdown(){
+        LOG.debug(".shutdown(): Entry");
+        if(snapshotScheduler != null){
+            snapshotScheduler.shutdown();
+            try {
+                snapshotScheduler.awaitTermination(SHUTDOWN_WAIT_IN_MILLIS, TimeUnit.MILLISECONDS);
+            } catch(InterruptedException ex){
+                Thread.currentThread().interrupt();
+            }
+        }
+        // A final increment, so that a warm restart starts from the latest cache content
+        writeSnapshots();
+        for(FHIRPlaceSnapshotWriter snapshotWriter: snapshotWriters.values()){
+            snapshotWriter.close();
+        }
+        snapshotWriters.clear();
+        if(restoreExecutor != null){
+            restoreExecutor.shutdownNow();
+        }
+        LOG.debug(".shutdown(): Exit");
+    }
+
+    private static ThreadFactory newDaemonThreadFactory(String threadNamePrefix){
+        AtomicInteger threadCount = new AtomicInteger(0);
+        return(runnable -> {
+            Thread thread = new Thread(runnable, threadNamePrefix + "-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return(thread);
+        });
+    }
 }
@@ -0,0 +1,580 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.virtualdb.snapshot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * The local, memory-mapped snapshot of a single VirtualDB cache (and so of a single resource type).
+ *
+ * The snapshot is a data file ("<name>.snapshot") plus an index file ("<name>.index"). The data file starts with a
+ * HEADER_SIZE byte header, followed by records of the form [length:int][crc32:int][record:length bytes], terminated
+ * by a zero length. A record is [kind:byte][expiryDeadline:long][id:UTF][payload], where the kind is either a
+ * resource (the payload being its encoded form) or a tombstone for a resource that has left the cache. Each
+ * incremental snapshot appends records for the resources that changed since the previous one, so the latest record
+ * for an id supersedes any earlier ones.
+ *
+ * The index holds the offset of the latest record of each live id, and the data offset (and compaction generation)
+ * it covers. It is rewritten (to a temporary file that is then renamed over it) at the end of each increment. On
+ * opening, the index is loaded and any records appended after it (e.g. by an increment interrupted by a crash) are
+ * recovered by scanning the tail of the data file; if the index is missing, corrupt or from another generation,
+ * the whole data file is scanned instead. A record whose CRC doesn't match ends the scan.
+ *
+ * Once the superseded records outweigh the live ones (and the data file is larger than the compaction size), the
+ * live records are copied to a new data file which replaces the old one. Offsets are ints, so a snapshot is limited
+ * to 2GB.
+ *
+ * Writes are serialised; readRecord() may be called concurrently (e.g. by the parallel restore), but not
+ * concurrently with writes.
+ */
+public class VirtualDBSnapshotFile implements Closeable {
+    private static final Logger LOG = LoggerFactory.getLogger(VirtualDBSnapshotFile.class);
+
+    public static final int HEADER_SIZE = 32;
+    public static final int RECORD_HEADER_SIZE = 8;
+
+    private static final int DATA_MAGIC = 0x4C534E31;
+    private static final int INDEX_MAGIC = 0x4C534931;
+    private static final int FORMAT_VERSION = 1;
+    private static final byte RECORD_RESOURCE = 1;
+    private static final byte RECORD_TOMBSTONE = 2;
+    private static final String DATA_FILE_SUFFIX = ".snapshot";
+    private static final String INDEX_FILE_SUFFIX = ".index";
+    private static final String TEMPORARY_FILE_SUFFIX = ".tmp";
+
+    private File snapshotDirectory;
+    private String snapshotName;
+    private File dataFile;
+    private File indexFile;
+    private int initialCapacity;
+    private long compactionSizeInBytes;
+
+    private volatile MappedByteBuffer dataBuffer;
+    private long generation;
+    private int dataEnd;
+    private HashMap<String, Integer> liveOffsets;
+    private long liveBytes;
+    private boolean indexStale;
+
+    private ByteArrayOutputStream recordBytes;
+    private DataOutputStream recordStream;
+    private CRC32 recordChecksum;
+
+    private long appendedCount;
+    private long recoveredCount;
+    private long compactionCount;
+    private long corruptRecordCount;
+    private boolean open;
+
+    public VirtualDBSnapshotFile(File snapshotDirectory, String snapshotName, int initialCapacity, long compactionSizeInBytes) throws IOException {
+        LOG.debug(".VirtualDBSnapshotFile(): Entry, snapshotDirectory --> {}, snapshotName --> {}", snapshotDirectory, snapshotName);
+        if(initialCapacity <= HEADER_SIZE + RECORD_HEADER_SIZE){
+            throw(new IllegalArgumentException("initialCapacity is too small, was " + initialCapacity));
+        }
+        this.snapshotDirectory = snapshotDirectory;
+        this.snapshotName = snapshotName;
+        this.dataFile = new File(snapshotDirectory, snapshotName + DATA_FILE_SUFFIX);
+        this.indexFile = new File(snapshotDirectory, snapshotName + INDEX_FILE_SUFFIX);
+        this.initialCapacity = initialCapacity;
+        this.compactionSizeInBytes = compactionSizeInBytes;
+        this.liveOffsets = new HashMap<>();
+        this.recordBytes = new ByteArrayOutputStream(1024);
+        this.recordStream = new DataOutputStream(recordBytes);
+        this.recordChecksum = new CRC32();
+        openSnapshot();
+        this.open = true;
+        LOG.debug(".VirtualDBSnapshotFile(): Exit, liveCount --> {}, dataEnd --> {}, recoveredCount --> {}", liveOffsets.size(), dataEnd, recoveredCount);
+    }
+
+    //
+    // Append
+    //
+
+    /**
+     * Appends the (encoded) resource with the given cache key, superseding any earlier record for it.
+     */
+    public synchronized void append(String id, long expiryDeadline, byte[] payload) throws IOException {
+        ensureOpen();
+        byte[] record = encodeRecord(RECORD_RESOURCE, id, expiryDeadline, payload);
+        int offset = writeRecord(record);
+        Integer replacedOffset = liveOffsets.put(id, offset);
+        if(replacedOffset != null){
+            liveBytes -= getRecordSize(dataBuffer, replacedOffset);
+        }
+        liveBytes += RECORD_HEADER_SIZE + record.length;
+        appendedCount += 1;
+    }
+
+    /**
+     * Appends a tombstone for the given cache key, if the snapshot holds a (live) record for it.
+     *
+     * @return true if a tombstone was appended
+     */
+    public synchronized boolean appendTombstone(String id) throws IOException {
+        ensureOpen();
+        if(!liveOffsets.containsKey(id)){
+            return(false);
+        }
+        byte[] record = encodeRecord(RECORD_TOMBSTONE, id, 0, null);
+        writeRecord(record);
+        Integer removedOffset = liveOffsets.remove(id);
+        liveBytes -= getRecordSize(dataBuffer, removedOffset);
+        appendedCount += 1;
+        return(true);
+    }
+
+    private byte[] encodeRecord(byte kind, String id, long expiryDeadline, byte[] payload) throws IOException {
+        recordBytes.reset();
+        recordStream.writeByte(kind);
+        recordStream.writeLong(expiryDeadline);
+        recordStream.writeUTF(id);
+        if(payload != null){
+            recordStream.write(payload);
+        }
+        recordStream.flush();
+        return(recordBytes.toByteArray());
+    }
+
+    private int writeRecord(byte[] record) throws IOException {
+        ensureCapacity(RECORD_HEADER_SIZE + record.length + Integer.BYTES);
+        int offset = dataEnd;
+        recordChecksum.reset();
+        recordChecksum.update(record, 0, record.length);
+        ByteBuffer writeView = dataBuffer.duplicate();
+        writeView.position(offset);
+        writeView.putInt(record.length);
+        writeView.putInt((int)recordChecksum.getValue());
+        writeView.put(record);
+        dataEnd = writeView.position();
+        // Terminate the records, so stale bytes from an earlier (torn) write are never read as a record
+        dataBuffer.putInt(dataEnd, 0);
+        indexStale = true;
+        return(offset);
+    }
+
+    private void ensureCapacity(int requiredSpace) throws IOException {
+        int capacity = dataBuffer.capacity();
+        if((long)dataEnd + requiredSpace <= capacity){
+            return;
+        }
+        long newCapacity = Math.max(2L * capacity, (long)dataEnd + requiredSpace);
+        if(newCapacity > Integer.MAX_VALUE){
+            if((long)dataEnd + requiredSpace > Integer.MAX_VALUE){
+                throw(new IOException("Snapshot " + dataFile + " would exceed 2GB"));
+            }
+            newCapacity = Integer.MAX_VALUE;
+        }
+        LOG.debug(".ensureCapacity(): Growing snapshot {} from {} to {} bytes", snapshotName, capacity, newCapacity);
+        dataBuffer.force();
+        dataBuffer = mapFile(dataFile, (int)newCapacity);
+    }
+
+    //
+    // Index
+    //
+
+    /**
+     * Rewrites the index (if any records have been appended since it was last written). The data file is forced
+     * first, so the index never covers records that didn't reach the disk.
+     */
+    public synchronized void writeIndex() throws IOException {
+        ensureOpen();
+        if(!indexStale){
+            return;
+        }
+        dataBuffer.force();
+        ByteArrayOutputStream indexBytes = new ByteArrayOutputStream(HEADER_SIZE + liveOffsets.size() * 32);
+        DataOutputStream indexStream = new DataOutputStream(indexBytes);
+        indexStream.writeInt(INDEX_MAGIC);
+        indexStream.writeInt(FORMAT_VERSION);
+        indexStream.writeLong(generation);
+        indexStream.writeInt(dataEnd);
+        indexStream.writeInt(liveOffsets.size());
+        for(Map.Entry<String, Integer> liveOffset: liveOffsets.entrySet()){
+            indexStream.writeUTF(liveOffset.getKey());
+            indexStream.writeInt(liveOffset.getValue());
+        }
+        indexStream.flush();
+        CRC32 indexChecksum = new CRC32();
+        byte[] indexContent = indexBytes.toByteArray();
+        indexChecksum.update(indexContent, 0, indexContent.length);
+        indexStream.writeInt((int)indexChecksum.getValue());
+        indexStream.flush();
+        File temporaryIndexFile = new File(snapshotDirectory, snapshotName + INDEX_FILE_SUFFIX + TEMPORARY_FILE_SUFFIX);
+        try(FileOutputStream indexOutput = new FileOutputStream(temporaryIndexFile)){
+            indexBytes.writeTo(indexOutput);
+            indexOutput.getFD().sync();
+        }
+        Files.move(temporaryIndexFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        indexStale = false;
+    }
+
+    /**
+     * Loads the index, if it is intact and matches the data file.
+     *
+     * @return the data offset the index covers, or -1 if the index can't be used
+     */
+    private int loadIndex() throws IOException {
+        if(!indexFile.isFile() || indexFile.length() < 28){
+            return(-1);
+        }
+        byte[] indexContent = Files.readAllBytes(indexFile.toPath());
+        CRC32 indexChecksum = new CRC32();
+        indexChecksum.update(indexContent, 0, indexContent.length - Integer.BYTES);
+        if((int)indexChecksum.getValue() != ByteBuffer.wrap(indexContent).getInt(indexContent.length - Integer.BYTES)){
+            LOG.warn(".loadIndex(): Snapshot index {} fails its CRC check, scanning the data file", indexFile);
+            return(-1);
+        }
+        DataInputStream indexStream = new DataInputStream(new ByteArrayInputStream(indexContent, 0, indexContent.length - Integer.BYTES));
+        if(indexStream.readInt() != INDEX_MAGIC || indexStream.readInt() != FORMAT_VERSION || indexStream.readLong() != generation){
+            LOG.warn(".loadIndex(): Snapshot index {} does not match the data file, scanning the data file", indexFile);
+            return(-1);
+        }
+        int indexedDataEnd = indexStream.readInt();
+        int liveCount = indexStream.readInt();
+        if(indexedDataEnd < HEADER_SIZE || indexedDataEnd > dataBuffer.capacity()){
+            return(-1);
+        }
+        HashMap<String, Integer> indexedOffsets = new HashMap<>(Math.max(16, liveCount * 2));
+        long indexedLiveBytes = 0;
+        for(int counter = 0; counter < liveCount; counter++){
+            String id = indexStream.readUTF();
+            int offset = indexStream.readInt();
+            if(offset < HEADER_SIZE || offset + RECORD_HEADER_SIZE > indexedDataEnd){
+                return(-1);
+            }
+            int recordSize = getRecordSize(dataBuffer, offset);
+            if(recordSize <= RECORD_HEADER_SIZE || offset + recordSize > indexedDataEnd){
+                return(-1);
+            }
+            indexedOffsets.put(id, offset);
+            indexedLiveBytes += recordSize;
+        }
+        this.liveOffsets = indexedOffsets;
+        this.liveBytes = indexedLiveBytes;
+        return(indexedDataEnd);
+    }
+
+    //
+    // Opening (and recovering) the snapshot
+    //
+
+    private void openSnapshot() throws IOException {
+        if(!snapshotDirectory.isDirectory() && !snapshotDirectory.mkdirs()){
+            throw(new IOException("Unable to create snapshot directory " + snapshotDirectory));
+        }
+        if(dataFile.isFile() && dataFile.length() >= HEADER_SIZE + Integer.BYTES && dataFile.length() <= Integer.MAX_VALUE){
+            this.dataBuffer = mapFile(dataFile, (int)dataFile.length());
+            if(dataBuffer.getInt(0) == DATA_MAGIC && dataBuffer.getInt(4) == FORMAT_VERSION){
+                this.generation = dataBuffer.getLong(8);
+                int indexedDataEnd = loadIndex();
+                if(indexedDataEnd < 0){
+                    liveOffsets.clear();
+                    liveBytes = 0;
+                    indexedDataEnd = HEADER_SIZE;
+                }
+                scanRecords(indexedDataEnd);
+                return;
+            }
+            LOG.warn(".openSnapshot(): Snapshot {} has an invalid header, discarding it", dataFile);
+        }
+        this.generation = 1;
+        this.dataBuffer = createDataFile(dataFile, initialCapacity, generation);
+        this.dataEnd = HEADER_SIZE;
+        this.indexStale = true;
+    }
+
+    /**
+     * Scans the records from the given offset to the end of the (valid) records, applying each to the live offsets.
+     */
+    private void scanRecords(int fromOffset) throws IOException {
+        int offset = fromOffset;
+        while(true){
+            byte[] record = readValidRecord(dataBuffer, offset, dataBuffer.capacity());
+            if(record == null){
+                break;
+            }
+            DataInputStream recordInput = new DataInputStream(new ByteArrayInputStream(record));
+            byte kind = recordInput.readByte();
+            recordInput.readLong();
+            String id = recordInput.readUTF();
+            Integer replacedOffset;
+            if(kind == RECORD_TOMBSTONE){
+                replacedOffset = liveOffsets.remove(id);
+            } else {
+                replacedOffset = liveOffsets.put(id, offset);
+                liveBytes += RECORD_HEADER_SIZE + record.length;
+            }
+            if(replacedOffset != null){
+                liveBytes -= getRecordSize(dataBuffer, replacedOffset);
+            }
+            offset += RECORD_HEADER_SIZE + record.length;
+            recoveredCount += 1;
+        }
+        this.dataEnd = offset;
+        this.indexStale = (recoveredCount > 0) || !indexFile.isFile();
+        if(dataEnd + Integer.BYTES <= dataBuffer.capacity()){
+            dataBuffer.putInt(dataEnd, 0);
+        }
+    }
+
+    //
+    // Compaction
+    //
+
+    /**
+     * Compacts the snapshot if it is larger than the compaction size and the superseded records (and tombstones)
+     * outweigh the live ones.
+     *
+     * @return true if the snapshot was compacted
+     */
+    public synchronized boolean compactIfWorthwhile() throws IOException {
+        ensureOpen();
+        long recordBytesInUse = dataEnd - HEADER_SIZE;
+        if(dataEnd < compactionSizeInBytes || recordBytesInUse - liveBytes <= liveBytes){
+            return(false);
+        }
+        compact();
+        return(true);
+    }
+
+    private void compact() throws IOException {
+        LOG.debug(".compact(): Entry, snapshotName --> {}, dataEnd --> {}, liveBytes --> {}", snapshotName, dataEnd, liveBytes);
+        long compactedGeneration = generation + 1;
+        int compactedCapacity = (int)Math.min(Integer.MAX_VALUE, Math.max(initialCapacity, HEADER_SIZE + liveBytes + Integer.BYTES));
+        File temporaryDataFile = new File(snapshotDirectory, snapshotName + DATA_FILE_SUFFIX + TEMPORARY_FILE_SUFFIX);
+        MappedByteBuffer compactedBuffer = createDataFile(temporaryDataFile, compactedCapacity, compactedGeneration);
+        ByteBuffer compactedView = compactedBuffer.duplicate();
+        compactedView.position(HEADER_SIZE);
+        Map.Entry<String, Integer>[] liveEntries = sortByOffset(liveOffsets);
+        HashMap<String, Integer> compactedOffsets = new HashMap<>(Math.max(16, liveEntries.length * 2));
+        for(Map.Entry<String, Integer> liveEntry: liveEntries){
+            int recordSize = getRecordSize(dataBuffer, liveEntry.getValue());
+            ByteBuffer recordView = dataBuffer.duplicate();
+            recordView.position(liveEntry.getValue());
+            recordView.limit(liveEntry.getValue() + recordSize);
+            compactedOffsets.put(liveEntry.getKey(), compactedView.position());
+            compactedView.put(recordView);
+        }
+        int compactedDataEnd = compactedView.position();
+        if(compactedDataEnd + Integer.BYTES <= compactedCapacity){
+            compactedBuffer.putInt(compactedDataEnd, 0);
+        }
+        compactedBuffer.force();
+        Files.move(temporaryDataFile.toPath(), dataFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        this.dataBuffer = compactedBuffer;
+        this.generation = compactedGeneration;
+        this.dataEnd = compactedDataEnd;
+        this.liveOffsets = compactedOffsets;
+        this.indexStale = true;
+        this.compactionCount += 1;
+        writeIndex();
+        LOG.debug(".compact(): Exit, dataEnd --> {}", dataEnd);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map.Entry<String, Integer>[] sortByOffset(Map<String, Integer> offsets){
+        Map.Entry<String, Integer>[] entries = offsets.entrySet().toArray(new Map.Entry[0]);
+        Arrays.sort(entries, (a, b) -> Integer.compare(a.getValue(), b.getValue()));
+        return(entries);
+    }
+
+    //
+    // Read
+    //
+
+    /**
+     * The offsets of the live records, in file order (so that a restore reads the mapping sequentially).
+     */
+    public synchronized int[] getLiveOffsets(){
+        int[] offsets = new int[liveOffsets.size()];
+        int position = 0;
+        for(Integer offset: liveOffsets.values()){
+            offsets[position++] = offset;
+        }
+        Arrays.sort(offsets);
+        return(offsets);
+    }
+
+    /**
+     * Reads the (resource) record at the given offset.
+     */
+    public VirtualDBSnapshotRecord readRecord(int offset) throws IOException {
+        MappedByteBuffer currentBuffer = dataBuffer;
+        int recordLength = (offset + RECORD_HEADER_SIZE <= currentBuffer.capacity()) ? currentBuffer.getInt(offset) : -1;
+        if(recordLength <= 0 || (long)offset + RECORD_HEADER_SIZE + recordLength > currentBuffer.capacity()){
+            throw(new IOException("No snapshot record at offset " + offset + " of " + dataFile));
+        }
+        byte[] record = new byte[recordLength];
+        ByteBuffer recordView = currentBuffer.duplicate();
+        recordView.position(offset + RECORD_HEADER_SIZE);
+        recordView.get(record);
+        CRC32 checksum = new CRC32();
+        checksum.update(record, 0, record.length);
+        if((int)checksum.getValue() != currentBuffer.getInt(offset + Integer.BYTES)){
+            throw(new IOException("Snapshot record at offset " + offset + " of " + dataFile + " fails its CRC check"));
+        }
+        DataInputStream recordInput = new DataInputStream(new ByteArrayInputStream(record));
+        if(recordInput.readByte() != RECORD_RESOURCE){
+            throw(new IOException("Snapshot record at offset " + offset + " of " + dataFile + " is not a resource"));
+        }
+        long expiryDeadline = recordInput.readLong();
+        String id = recordInput.readUTF();
+        byte[] payload = new byte[recordInput.available()];
+        recordInput.readFully(payload);
+        return(new VirtualDBSnapshotRecord(id, expiryDeadline, payload));
+    }
+
+    /**
+     * @return the (CRC checked) record at offset, or null if there is no valid record there
+     */
+    private byte[] readValidRecord(ByteBuffer buffer, int offset, int limit){
+        if((long)offset + RECORD_HEADER_SIZE > limit){
+            return(null);
+        }
+        int recordLength = buffer.getInt(offset);
+        if(recordLength <= 0 || (long)offset + RECORD_HEADER_SIZE + recordLength > limit){
+            return(null);
+        }
+        byte[] record = new byte[recordLength];
+        ByteBuffer recordView = buffer.duplicate();
+        recordView.position(offset + RECORD_HEADER_SIZE);
+        recordView.get(record);
+        recordChecksum.reset();
+        recordChecksum.update(record, 0, record.length);
+        if((int)recordChecksum.getValue() != buffer.getInt(offset + Integer.BYTES)){
+            corruptRecordCount += 1;
+            LOG.error(".readValidRecord(): Snapshot record at offset {} of {} fails its CRC check, ignoring the rest of the snapshot", offset, dataFile);
+            return(null);
+        }
+        return(record);
+    }
+
+    //
+    // File helpers
+    //
+
+    private static int getRecordSize(ByteBuffer buffer, int offset){
+        return(RECORD_HEADER_SIZE + buffer.getInt(offset));
+    }
+
+    private static MappedByteBuffer createDataFile(File file, int capacity, long generation) throws IOException {
+        MappedByteBuffer buffer = mapFile(file, capacity);
+        buffer.putInt(0, DATA_MAGIC);
+        buffer.putInt(4, FORMAT_VERSION);
+        buffer.putLong(8, generation);
+        buffer.putLong(16, System.currentTimeMillis());
+        buffer.putInt(HEADER_SIZE, 0);
+        return(buffer);
+    }
+
+    private static MappedByteBuffer mapFile(File file, int capacity) throws IOException {
+        try(RandomAccessFile fileAccess = new RandomAccessFile(file, "rw")){
+            if(fileAccess.length() < capacity){
+                fileAccess.setLength(capacity);
+            }
+            return(fileAccess.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity));
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if(!open){
+            throw(new IOException("Snapshot " + dataFile + " is closed"));
+        }
+    }
+
+    //
+    // Status
+    //
+
+    public String getSnapshotName(){
+        return(snapshotName);
+    }
+
+    public synchronized boolean contains(String id){
+        return(liveOffsets.containsKey(id));
+    }
+
+    public synchronized int getLiveCount(){
+        return(liveOffsets.size());
+    }
+
+    public synchronized long getLiveBytes(){
+        return(liveBytes);
+    }
+
+    public synchronized int getDataEnd(){
+        return(dataEnd);
+    }
+
+    public synchronized long getAppendedCount(){
+        return(appendedCount);
+    }
+
+    public synchronized long getRecoveredCount(){
+        return(recoveredCount);
+    }
+
+    public synchronized long getCompactionCount(){
+        return(compactionCount);
+    }
+
+    public synchronized long getCorruptRecordCount(){
+        return(corruptRecordCount);
+    }
+
+    @Override
+    public synchronized void close() {
+        LOG.debug(".close(): Entry");
+        if(!open){
+            return;
+        }
+        try {
+            writeIndex();
+        } catch(IOException ex){
+            LOG.warn(".close(): Unable to write the index of snapshot {}, error --> {}", snapshotName, ex.getMessage());
+        }
+        dataBuffer.force();
+        this.open = false;
+        LOG.debug(".close(): Exit");
+    }
+}
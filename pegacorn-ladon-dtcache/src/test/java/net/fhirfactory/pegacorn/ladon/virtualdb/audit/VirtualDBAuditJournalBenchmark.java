@@ -0,0 +1,88 @@
+package net.fhirfactory.pegacorn.ladon.virtualdb.audit;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.operations.VirtualDBActionTypeEnum;
+
+/**
+ * A (manually run) throughput benchmark of the VirtualDBAuditJournal. It appends RECORD_COUNT small (digest mode
+ * sized) audit records, then forwards them all, and reports the records per second and MB per second of each phase.
+ * The journal directory can be given as the first argument (so it can be pointed at the SSD of interest), otherwise a
+ * temporary directory is used.
+ *
+ * Run with: mvn -pl pegacorn-ladon-dtcache test-compile exec:java -Dexec.classpathScope=test
+ *     -Dexec.mainClass=net.fhirfactory.pegacorn.ladon.virtualdb.audit.VirtualDBAuditJournalBenchmark
+ */
+public class VirtualDBAuditJournalBenchmark {
+
+    private static final int RECORD_COUNT = 2000000;
+    private static final int WARMUP_RECORD_COUNT = 200000;
+    private static final int SEGMENT_SIZE = 64 * 1024 * 1024;
+    private static final int FORWARD_BATCH_SIZE = 1024;
+
+    public static void main(String[] args) throws Exception {
+        File journalDirectory = (args.length > 0) ? new File(args[0]) : Files.createTempDirectory("VirtualDBAuditJournalBenchmark").toFile();
+        runPhase(new File(journalDirectory, "warmup"), WARMUP_RECORD_COUNT, false);
+        runPhase(new File(journalDirectory, "measured"), RECORD_COUNT, true);
+    }
+
+    private static void runPhase(File journalDirectory, int recordCount, boolean report) throws Exception {
+        VirtualDBAuditJournal journal = new VirtualDBAuditJournal(journalDirectory, SEGMENT_SIZE, Long.MAX_VALUE, new VirtualDBAuditRecordCodec());
+        VirtualDBAuditRecord record = buildRecord();
+        long appendStart = System.nanoTime();
+        for(int counter = 0; counter < recordCount; counter++){
+            record.setTransactionId(counter);
+            journal.append(record);
+        }
+        long appendNanos = System.nanoTime() - appendStart;
+        long journalBytes = directorySize(journalDirectory);
+        long[] forwardedCount = new long[1];
+        long forwardStart = System.nanoTime();
+        while(journal.hasPendingRecords()){
+            journal.forward(FORWARD_BATCH_SIZE, forwardedRecord -> {
+                forwardedCount[0] += 1;
+                return(true);
+            });
+        }
+        long forwardNanos = System.nanoTime() - forwardStart;
+        journal.close();
+        deleteDirectory(journalDirectory);
+        if(report){
+            System.out.println(String.format("%-10s %14s %14s %14s", "Phase", "Records", "Records/s", "MB/s"));
+            System.out.println(String.format("%-10s %14d %14.0f %14.1f", "append", recordCount, recordCount / (appendNanos / 1e9), journalBytes / 1048576.0 / (appendNanos / 1e9)));
+            System.out.println(String.format("%-10s %14d %14.0f %14.1f", "forward", forwardedCount[0], forwardedCount[0] / (forwardNanos / 1e9), journalBytes / 1048576.0 / (forwardNanos / 1e9)));
+        }
+    }
+
+    private static VirtualDBAuditRecord buildRecord(){
+        VirtualDBAuditRecord record = new VirtualDBAuditRecord();
+        record.setRecordType(VirtualDBAuditRecordTypeEnum.AUDIT_RECORD_BEGIN);
+        record.setAction(VirtualDBActionTypeEnum.REVIEW);
+        record.setResourceType("Patient");
+        record.setResourceVersion("4.0.1");
+        record.setAuditPayload("Action: Get --> {\"reference\":\"Patient/123\",\"versionId\":\"2\",\"digest\":\"SHA-256:9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08\"}");
+        return(record);
+    }
+
+    private static long directorySize(File directory){
+        long size = 0;
+        File[] journalFiles = directory.listFiles();
+        if(journalFiles != null){
+            for(File journalFile: journalFiles){
+                size += journalFile.length();
+            }
+        }
+        return(size);
+    }
+
+    private static void deleteDirectory(File directory){
+        File[] journalFiles = directory.listFiles();
+        if(journalFiles != null){
+            for(File journalFile: journalFiles){
+                journalFile.delete();
+            }
+        }
+        directory.delete();
+    }
+}
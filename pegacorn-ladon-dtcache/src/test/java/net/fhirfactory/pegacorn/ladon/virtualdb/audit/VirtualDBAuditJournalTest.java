@@ -0,0 +1,168 @@
+package net.fhirfactory.pegacorn.ladon.virtualdb.audit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.operations.VirtualDBActionTypeEnum;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class VirtualDBAuditJournalTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(VirtualDBAuditJournalTest.class);
+
+    private static final int SMALL_SEGMENT_SIZE = 1024;
+    private static final int LARGE_SEGMENT_SIZE = 1024 * 1024;
+    private static final long NO_TIMED_ROTATION = Long.MAX_VALUE;
+
+    private File journalDirectory;
+
+    @Before
+    public void createJournalDirectory() throws Exception {
+        journalDirectory = Files.createTempDirectory("VirtualDBAuditJournalTest").toFile();
+    }
+
+    @After
+    public void removeJournalDirectory() {
+        File[] remaining = journalDirectory.listFiles();
+        if(remaining != null){
+            for(File journalFile: remaining){
+                journalFile.delete();
+            }
+        }
+        journalDirectory.delete();
+    }
+
+    @Test
+    public void recordsAreForwardedInOrder() throws Exception {
+        LOG.debug(".recordsAreForwardedInOrder(): Entry");
+        VirtualDBAuditJournal journal = openJournal(LARGE_SEGMENT_SIZE, NO_TIMED_ROTATION);
+        appendRecords(journal, 1, 10);
+        assertEquals(10, journal.getPendingCount());
+        List<Long> forwardedIds = new ArrayList<>();
+        assertEquals(10, journal.forward(100, record -> forwardedIds.add(record.getTransactionId())));
+        assertEquals(buildIds(1, 10), forwardedIds);
+        assertFalse(journal.hasPendingRecords());
+        journal.close();
+    }
+
+    @Test
+    public void forwardingStopsAtARefusedRecord() throws Exception {
+        LOG.debug(".forwardingStopsAtARefusedRecord(): Entry");
+        VirtualDBAuditJournal journal = openJournal(LARGE_SEGMENT_SIZE, NO_TIMED_ROTATION);
+        appendRecords(journal, 1, 5);
+        List<Long> forwardedIds = new ArrayList<>();
+        assertEquals(2, journal.forward(100, record -> record.getTransactionId() < 3 && forwardedIds.add(record.getTransactionId())));
+        assertEquals(3, journal.getPendingCount());
+        assertEquals(3, journal.forward(100, record -> forwardedIds.add(record.getTransactionId())));
+        assertEquals(buildIds(1, 5), forwardedIds);
+        journal.close();
+    }
+
+    @Test
+    public void segmentsRotateBySizeAndAreCompactedOnceForwarded() throws Exception {
+        LOG.debug(".segmentsRotateBySizeAndAreCompactedOnceForwarded(): Entry");
+        VirtualDBAuditJournal journal = openJournal(SMALL_SEGMENT_SIZE, NO_TIMED_ROTATION);
+        appendRecords(journal, 1, 50);
+        assertTrue(journal.getRotationCount() > 0);
+        assertTrue(journal.getSegmentCount() > 1);
+        List<Long> forwardedIds = new ArrayList<>();
+        assertEquals(50, journal.forward(100, record -> forwardedIds.add(record.getTransactionId())));
+        assertEquals(buildIds(1, 50), forwardedIds);
+        assertEquals(1, journal.getSegmentCount());
+        journal.close();
+    }
+
+    @Test
+    public void segmentsRotateByAge() throws Exception {
+        LOG.debug(".segmentsRotateByAge(): Entry");
+        VirtualDBAuditJournal journal = openJournal(LARGE_SEGMENT_SIZE, 0);
+        appendRecords(journal, 1, 3);
+        assertEquals(2, journal.getRotationCount());
+        assertEquals(3, journal.getSegmentCount());
+        journal.close();
+    }
+
+    @Test
+    public void reopenedJournalResumesFromTheCursor() throws Exception {
+        LOG.debug(".reopenedJournalResumesFromTheCursor(): Entry");
+        VirtualDBAuditJournal journal = openJournal(SMALL_SEGMENT_SIZE, NO_TIMED_ROTATION);
+        appendRecords(journal, 1, 30);
+        List<Long> forwardedIds = new ArrayList<>();
+        assertEquals(12, journal.forward(12, record -> forwardedIds.add(record.getTransactionId())));
+        journal.close();
+
+        VirtualDBAuditJournal reopenedJournal = openJournal(SMALL_SEGMENT_SIZE, NO_TIMED_ROTATION);
+        assertEquals(18, reopenedJournal.getPendingCount());
+        appendRecords(reopenedJournal, 31, 35);
+        assertEquals(23, reopenedJournal.forward(100, record -> forwardedIds.add(record.getTransactionId())));
+        assertEquals(buildIds(1, 35), forwardedIds);
+        reopenedJournal.close();
+    }
+
+    @Test
+    public void corruptEntryEndsItsSegment() throws Exception {
+        LOG.debug(".corruptEntryEndsItsSegment(): Entry");
+        VirtualDBAuditJournal journal = openJournal(LARGE_SEGMENT_SIZE, NO_TIMED_ROTATION);
+        appendRecords(journal, 1, 5);
+        journal.close();
+        File[] segments = journalDirectory.listFiles((directory, name) -> name.endsWith(".seg"));
+        assertEquals(1, segments.length);
+        try(RandomAccessFile segment = new RandomAccessFile(segments[0], "rw")){
+            // Flip a byte inside the first entry's body
+            long corruptOffset = VirtualDBAuditJournal.SEGMENT_HEADER_SIZE + VirtualDBAuditJournal.ENTRY_HEADER_SIZE + 4;
+            segment.seek(corruptOffset);
+            int original = segment.read();
+            segment.seek(corruptOffset);
+            segment.write(original ^ 0xFF);
+        }
+        VirtualDBAuditJournal reopenedJournal = openJournal(LARGE_SEGMENT_SIZE, NO_TIMED_ROTATION);
+        assertEquals(0, reopenedJournal.getPendingCount());
+        assertTrue(reopenedJournal.getCorruptEntryCount() > 0);
+        appendRecords(reopenedJournal, 6, 7);
+        List<Long> forwardedIds = new ArrayList<>();
+        assertEquals(2, reopenedJournal.forward(100, record -> forwardedIds.add(record.getTransactionId())));
+        assertEquals(Arrays.asList(6L, 7L), forwardedIds);
+        reopenedJournal.close();
+    }
+
+    //
+    // Helpers
+    //
+
+    private VirtualDBAuditJournal openJournal(int segmentSize, long rotationIntervalInMillis) throws Exception {
+        return(new VirtualDBAuditJournal(journalDirectory, segmentSize, rotationIntervalInMillis, new VirtualDBAuditRecordCodec()));
+    }
+
+    private static void appendRecords(VirtualDBAuditJournal journal, long firstId, long lastId) throws Exception {
+        for(long transactionId = firstId; transactionId <= lastId; transactionId++){
+            VirtualDBAuditRecord record = new VirtualDBAuditRecord();
+            record.setRecordType(VirtualDBAuditRecordTypeEnum.AUDIT_RECORD_BEGIN);
+            record.setTransactionId(transactionId);
+            record.setAction(VirtualDBActionTypeEnum.REVIEW);
+            record.setResourceType("Patient");
+            record.setResourceVersion("4.0.1");
+            record.setAuditPayload("Action: Get --> Patient/" + transactionId);
+            journal.append(record);
+        }
+    }
+
+    private static List<Long> buildIds(long firstId, long lastId){
+        List<Long> ids = new ArrayList<>();
+        for(long transactionId = firstId; transactionId <= lastId; transactionId++){
+            ids.add(transactionId);
+        }
+        return(ids);
+    }
+}
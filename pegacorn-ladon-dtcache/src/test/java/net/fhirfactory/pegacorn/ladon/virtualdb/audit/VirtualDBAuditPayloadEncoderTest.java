@@ -0,0 +1,112 @@
+package net.fhirfactory.pegacorn.ladon.virtualdb.audit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import ca.uhn.fhir.context.FhirContext;
+import org.hl7.fhir.r4.model.Enumerations;
+import org.hl7.fhir.r4.model.Patient;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class VirtualDBAuditPayloadEncoderTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(VirtualDBAuditPayloadEncoderTest.class);
+
+    private static final FhirContext FHIR_CONTEXT = FhirContext.forR4();
+
+    @Test
+    public void digestPayloadCarriesReferenceVersionAndDigest() {
+        LOG.debug(".digestPayloadCarriesReferenceVersionAndDigest(): Entry");
+        VirtualDBAuditPayloadEncoder encoder = new VirtualDBAuditPayloadEncoder(() -> FHIR_CONTEXT.newJsonParser());
+        String payload = encoder.encode(buildPatient("female"), VirtualDBAuditPayloadModeEnum.AUDIT_PAYLOAD_DIGEST);
+        assertTrue(payload.startsWith("{\"reference\":\"Patient/123\",\"versionId\":\"2\",\"digest\":\"SHA-256:"));
+        assertEquals(payload.indexOf("SHA-256:") + "SHA-256:".length() + 64 + 2, payload.length());
+        assertFalse(payload.contains("female"));
+    }
+
+    @Test
+    public void digestTracksResourceContent() {
+        LOG.debug(".digestTracksResourceContent(): Entry");
+        VirtualDBAuditPayloadEncoder encoder = new VirtualDBAuditPayloadEncoder(() -> FHIR_CONTEXT.newJsonParser());
+        String firstDigest = encoder.encodeDigest(buildPatient("female"));
+        assertEquals(firstDigest, encoder.encodeDigest(buildPatient("female")));
+        assertNotEquals(firstDigest, encoder.encodeDigest(buildPatient("male")));
+    }
+
+    @Test
+    public void fullBodyPayloadIsTheJsonEncoding() {
+        LOG.debug(".fullBodyPayloadIsTheJsonEncoding(): Entry");
+        VirtualDBAuditPayloadEncoder encoder = new VirtualDBAuditPayloadEncoder(() -> FHIR_CONTEXT.newJsonParser());
+        Patient patient = buildPatient("female");
+        assertEquals(FHIR_CONTEXT.newJsonParser().encodeResourceToString(patient),
+                encoder.encode(patient, VirtualDBAuditPayloadModeEnum.AUDIT_PAYLOAD_FULL_BODY));
+    }
+
+    @Test
+    public void deferredEncodingCapturesTheResourceWhenDeferred() {
+        LOG.debug(".deferredEncodingCapturesTheResourceWhenDeferred(): Entry");
+        VirtualDBAuditPayloadEncoder encoder = new VirtualDBAuditPayloadEncoder(() -> FHIR_CONTEXT.newJsonParser());
+        Patient patient = buildPatient("female");
+        String expectedPayload = "Action: Get, Result --> " + encoder.encodeFullBody(patient);
+        Supplier<String> deferredPayload = encoder.deferEncoding("Action: Get, Result --> ", patient, VirtualDBAuditPayloadModeEnum.AUDIT_PAYLOAD_FULL_BODY);
+        // The caller goes on to modify its Resource before the publisher gets to encode it
+        patient.setGender(Enumerations.AdministrativeGender.MALE);
+        patient.getMeta().setVersionId("3");
+        assertEquals(expectedPayload, deferredPayload.get());
+    }
+
+    @Test
+    public void digestDoesNotDependOnTheSuppliedParserSettings() {
+        LOG.debug(".digestDoesNotDependOnTheSuppliedParserSettings(): Entry");
+        VirtualDBAuditPayloadEncoder prettyEncoder = new VirtualDBAuditPayloadEncoder(() -> FHIR_CONTEXT.newJsonParser().setPrettyPrint(true));
+        VirtualDBAuditPayloadEncoder compactEncoder = new VirtualDBAuditPayloadEncoder(() -> FHIR_CONTEXT.newJsonParser());
+        assertEquals(compactEncoder.encodeDigest(buildPatient("female")), prettyEncoder.encodeDigest(buildPatient("female")));
+    }
+
+    @Test
+    public void deferredPayloadIsOnlyEncodedWhenResolved() {
+        LOG.debug(".deferredPayloadIsOnlyEncodedWhenResolved(): Entry");
+        AtomicInteger encodeCount = new AtomicInteger();
+        VirtualDBAuditRecord record = new VirtualDBAuditRecord();
+        record.setDeferredPayload(() -> {
+            encodeCount.incrementAndGet();
+            return("Action: Get --> encoded");
+        });
+        assertEquals(0, encodeCount.get());
+        assertNull(record.getAuditPayload());
+        record.resolvePayload();
+        record.resolvePayload();
+        assertEquals(1, encodeCount.get());
+        assertEquals("Action: Get --> encoded", record.getAuditPayload());
+        assertFalse(record.hasDeferredPayload());
+    }
+
+    @Test
+    public void deferredPayloadFailureIsRecorded() {
+        LOG.debug(".deferredPayloadFailureIsRecorded(): Entry");
+        VirtualDBAuditRecord record = new VirtualDBAuditRecord();
+        record.setDeferredPayload(() -> {
+            throw new IllegalStateException("unencodable");
+        });
+        record.resolvePayload();
+        assertTrue(record.hasEncodingFailure());
+        assertNull(record.getAuditPayload());
+    }
+
+    private static Patient buildPatient(String gender){
+        Patient patient = new Patient();
+        patient.setId("123");
+        patient.getMeta().setVersionId("2");
+        patient.addName().setFamily("Citizen").addGiven("Jane");
+        patient.setGender(Enumerations.AdministrativeGender.fromCode(gender));
+        return(patient);
+    }
+}
@@ -0,0 +1,245 @@
+package net.fhirfactory.pegacorn.ladon.virtualdb.audit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.operations.VirtualDBActionTypeEnum;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class VirtualDBAuditPublisherTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(VirtualDBAuditPublisherTest.class);
+
+    private static final long MAXIMUM_WAIT_IN_MILLIS = 10000;
+    private static final long LONG_FLUSH_INTERVAL_IN_MILLIS = 60000;
+
+    private File spillDirectory;
+
+    @Before
+    public void createSpillDirectory() throws Exception {
+        spillDirectory = Files.createTempDirectory("VirtualDBAuditPublisherTest").toFile();
+    }
+
+    @After
+    public void removeSpillDirectory() {
+        File[] remaining = spillDirectory.listFiles();
+        if(remaining != null){
+            for(File spilled: remaining){
+                spilled.delete();
+            }
+        }
+        spillDirectory.delete();
+    }
+
+    @Test
+    public void ringBufferIsBoundedAndFifo() {
+        LOG.debug(".ringBufferIsBoundedAndFifo(): Entry");
+        VirtualDBAuditRingBuffer<Integer> ringBuffer = new VirtualDBAuditRingBuffer<>(3);
+        assertEquals(4, ringBuffer.getCapacity());
+        for(int count = 0; count < 4; count++){
+            assertTrue(ringBuffer.offer(count));
+        }
+        assertFalse(ringBuffer.offer(4));
+        List<Integer> drained = new ArrayList<>();
+        assertEquals(2, ringBuffer.drainTo(drained, 2));
+        assertTrue(ringBuffer.offer(4));
+        ringBuffer.drainTo(drained, 10);
+        assertEquals(Arrays.asList(0, 1, 2, 3, 4), drained);
+        assertTrue(ringBuffer.isEmpty());
+    }
+
+    @Test
+    public void recordsArePublishedInBatchesOfAtMostFlushSize() throws Exception {
+        LOG.debug(".recordsArePublishedInBatchesOfAtMostFlushSize(): Entry");
+        RecordingSink sink = new RecordingSink();
+        VirtualDBAuditPublisher publisher = new VirtualDBAuditPublisher(sink, 64, 4, 20,
+                VirtualDBAuditBackpressurePolicyEnum.AUDIT_BACKPRESSURE_BLOCK, spillDirectory);
+        publisher.start();
+        for(long transactionId = 1; transactionId <= 10; transactionId++){
+            publisher.submit(buildRecord(transactionId));
+        }
+        sink.awaitRecordCount(10);
+        publisher.shutdown(MAXIMUM_WAIT_IN_MILLIS);
+        assertEquals(buildExpectedIds(10), sink.getTransactionIds());
+        for(Integer batchSize: sink.getBatchSizes()){
+            assertTrue(batchSize <= 4);
+        }
+        assertEquals(10, publisher.getPublishedCount());
+    }
+
+    @Test
+    public void shutdownPublishesQueuedRecords() {
+        LOG.debug(".shutdownPublishesQueuedRecords(): Entry");
+        RecordingSink sink = new RecordingSink();
+        VirtualDBAuditPublisher publisher = new VirtualDBAuditPublisher(sink, 64, 1000, LONG_FLUSH_INTERVAL_IN_MILLIS,
+                VirtualDBAuditBackpressurePolicyEnum.AUDIT_BACKPRESSURE_BLOCK, spillDirectory);
+        publisher.start();
+        for(long transactionId = 1; transactionId <= 5; transactionId++){
+            publisher.submit(buildRecord(transactionId));
+        }
+        publisher.shutdown(MAXIMUM_WAIT_IN_MILLIS);
+        assertEquals(buildExpectedIds(5), sink.getTransactionIds());
+        publisher.submit(buildRecord(6));
+        assertEquals(buildExpectedIds(6), sink.getTransactionIds());
+    }
+
+    @Test
+    public void dropPolicyCountsDroppedRecords() throws Exception {
+        LOG.debug(".dropPolicyCountsDroppedRecords(): Entry");
+        RecordingSink sink = new RecordingSink();
+        sink.holdPublication();
+        VirtualDBAuditPublisher publisher = new VirtualDBAuditPublisher(sink, 4, 1, 1,
+                VirtualDBAuditBackpressurePolicyEnum.AUDIT_BACKPRESSURE_DROP, spillDirectory);
+        publisher.start();
+        publisher.submit(buildRecord(1));
+        sink.awaitHeldPublication();
+        for(long transactionId = 2; transactionId <= 5; transactionId++){
+            assertTrue(publisher.submit(buildRecord(transactionId)));
+        }
+        assertFalse(publisher.submit(buildRecord(6)));
+        assertFalse(publisher.submit(buildRecord(7)));
+        sink.releasePublication();
+        publisher.shutdown(MAXIMUM_WAIT_IN_MILLIS);
+        assertEquals(2, publisher.getDroppedCount());
+        assertEquals(buildExpectedIds(5), sink.getTransactionIds());
+    }
+
+    @Test
+    public void spillPolicyReplaysSpilledRecordsInOrder() throws Exception {
+        LOG.debug(".spillPolicyReplaysSpilledRecordsInOrder(): Entry");
+        RecordingSink sink = new RecordingSink();
+        sink.holdPublication();
+        VirtualDBAuditPublisher publisher = new VirtualDBAuditPublisher(sink, 4, 2, 1,
+                VirtualDBAuditBackpressurePolicyEnum.AUDIT_BACKPRESSURE_SPILL_TO_DISK, spillDirectory);
+        publisher.start();
+        publisher.submit(buildRecord(1));
+        sink.awaitHeldPublication();
+        for(long transactionId = 2; transactionId <= 20; transactionId++){
+            assertTrue(publisher.submit(buildRecord(transactionId)));
+        }
+        assertTrue(publisher.getSpilledCount() > 0);
+        sink.releasePublication();
+        sink.awaitRecordCount(20);
+        publisher.shutdown(MAXIMUM_WAIT_IN_MILLIS);
+        assertEquals(buildExpectedIds(20), sink.getTransactionIds());
+        assertEquals(0, publisher.getDroppedCount());
+        assertEquals(0, spillDirectory.listFiles().length);
+    }
+
+    @Test
+    public void blockPolicyWaitsForRoom() throws Exception {
+        LOG.debug(".blockPolicyWaitsForRoom(): Entry");
+        RecordingSink sink = new RecordingSink();
+        sink.holdPublication();
+        VirtualDBAuditPublisher publisher = new VirtualDBAuditPublisher(sink, 2, 1, 1,
+                VirtualDBAuditBackpressurePolicyEnum.AUDIT_BACKPRESSURE_BLOCK, spillDirectory);
+        publisher.start();
+        publisher.submit(buildRecord(1));
+        sink.awaitHeldPublication();
+        publisher.submit(buildRecord(2));
+        publisher.submit(buildRecord(3));
+        CountDownLatch blockedSubmitDone = new CountDownLatch(1);
+        Thread blockedProducer = new Thread(() -> {
+            publisher.submit(buildRecord(4));
+            blockedSubmitDone.countDown();
+        });
+        blockedProducer.start();
+        assertFalse(blockedSubmitDone.await(200, TimeUnit.MILLISECONDS));
+        sink.releasePublication();
+        assertTrue(blockedSubmitDone.await(MAXIMUM_WAIT_IN_MILLIS, TimeUnit.MILLISECONDS));
+        publisher.shutdown(MAXIMUM_WAIT_IN_MILLIS);
+        assertEquals(buildExpectedIds(4), sink.getTransactionIds());
+        assertEquals(1, publisher.getBlockedCount());
+    }
+
+    //
+    // Helpers
+    //
+
+    private static VirtualDBAuditRecord buildRecord(long transactionId){
+        VirtualDBAuditRecord record = new VirtualDBAuditRecord();
+        record.setRecordType(VirtualDBAuditRecordTypeEnum.AUDIT_RECORD_BEGIN);
+        record.setTransactionId(transactionId);
+        record.setAction(VirtualDBActionTypeEnum.REVIEW);
+        record.setResourceType("Patient");
+        record.setResourceVersion("4.0.1");
+        record.setAuditPayload("Action: Get --> Patient/" + transactionId);
+        return(record);
+    }
+
+    private static List<Long> buildExpectedIds(long count){
+        List<Long> expectedIds = new ArrayList<>();
+        for(long transactionId = 1; transactionId <= count; transactionId++){
+            expectedIds.add(transactionId);
+        }
+        return(expectedIds);
+    }
+
+    static class RecordingSink implements VirtualDBAuditRecordSink {
+        private final List<Long> transactionIds = Collections.synchronizedList(new ArrayList<>());
+        private final List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+        private volatile CountDownLatch publicationHeld = new CountDownLatch(0);
+        private volatile CountDownLatch releasePublication = new CountDownLatch(0);
+
+        void holdPublication(){
+            publicationHeld = new CountDownLatch(1);
+            releasePublication = new CountDownLatch(1);
+        }
+
+        void awaitHeldPublication() throws InterruptedException {
+            assertTrue(publicationHeld.await(MAXIMUM_WAIT_IN_MILLIS, TimeUnit.MILLISECONDS));
+        }
+
+        void releasePublication(){
+            releasePublication.countDown();
+        }
+
+        void awaitRecordCount(int count) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + MAXIMUM_WAIT_IN_MILLIS;
+            while(transactionIds.size() < count && System.currentTimeMillis() < deadline){
+                Thread.sleep(5);
+            }
+            assertEquals(count, transactionIds.size());
+        }
+
+        List<Long> getTransactionIds(){
+            synchronized(transactionIds){
+                return(new ArrayList<>(transactionIds));
+            }
+        }
+
+        List<Integer> getBatchSizes(){
+            synchronized(batchSizes){
+                return(new ArrayList<>(batchSizes));
+            }
+        }
+
+        @Override
+        public void publishAuditRecords(List<VirtualDBAuditRecord> auditRecordBatch) {
+            for(VirtualDBAuditRecord record: auditRecordBatch){
+                transactionIds.add(record.getTransactionId());
+            }
+            batchSizes.add(auditRecordBatch.size());
+            publicationHeld.countDown();
+            try {
+                releasePublication.await(MAXIMUM_WAIT_IN_MILLIS, TimeUnit.MILLISECONDS);
+            } catch(InterruptedException interrupted){
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
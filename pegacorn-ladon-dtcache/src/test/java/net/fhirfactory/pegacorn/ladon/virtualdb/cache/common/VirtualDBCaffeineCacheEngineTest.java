@@ -0,0 +1,64 @@
+package net.fhirfactory.pegacorn.ladon.virtualdb.cache.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.operations.VirtualDBActionStatusEnum;
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.operations.VirtualDBMethodOutcome;
+import org.hl7.fhir.r4.model.Identifier;
+import org.hl7.fhir.r4.model.Patient;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class VirtualDBCaffeineCacheEngineTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(VirtualDBCaffeineCacheEngineTest.class);
+
+    private static final int MAXIMUM_SIZE = 50;
+    private static final int PATIENT_COUNT = 500;
+    private static final long EVICTION_WAIT_IN_MILLIS = 10000;
+
+    private VirtualDBIdTypeBasedCacheBaseTest.TestPatientCache patientCache;
+
+    @Before
+    public void setUp() throws Exception {
+        patientCache = VirtualDBIdTypeBasedCacheBaseTest.newTestPatientCache();
+        patientCache.setCacheEngine(VirtualDBCacheEngineEnum.CACHE_ENGINE_CAFFEINE, MAXIMUM_SIZE);
+        patientCache.initialise();
+    }
+
+    @Test
+    public void sizeBoundIsHonouredAndEvictionsKeepTheIndexCoherent() throws Exception {
+        LOG.debug(".sizeBoundIsHonouredAndEvictionsKeepTheIndexCoherent(): Entry");
+        for(int patientNumber = 0; patientNumber < PATIENT_COUNT; patientNumber++){
+            patientCache.createResource(VirtualDBIdTypeBasedCacheBaseTest.buildPatient(patientNumber, 0));
+        }
+        patientCache.performEngineMaintenance();
+        assertTrue(patientCache.getCacheSize() <= MAXIMUM_SIZE);
+        // Eviction notifications are delivered asynchronously
+        long waitDeadline = System.currentTimeMillis() + EVICTION_WAIT_IN_MILLIS;
+        while(patientCache.getCacheStatistics().getEvictionCount() < PATIENT_COUNT - patientCache.getCacheSize() && System.currentTimeMillis() < waitDeadline){
+            Thread.sleep(10);
+        }
+        assertEquals(PATIENT_COUNT - patientCache.getCacheSize(), patientCache.getCacheStatistics().getEvictionCount());
+        assertEquals(patientCache.getCacheEntryCount(), patientCache.getIdentifierIndex().getIndexedResourceCount());
+        assertEquals(patientCache.getCacheEntryCount(), patientCache.getExpiryQueueSize());
+
+        // Every Identifier lookup either misses or returns the Patient that carries the Identifier
+        int hits = 0;
+        for(int patientNumber = 0; patientNumber < PATIENT_COUNT; patientNumber++){
+            Identifier stableIdentifier = VirtualDBIdTypeBasedCacheBaseTest.buildStableIdentifier(patientNumber);
+            VirtualDBMethodOutcome outcome = patientCache.getResource(stableIdentifier);
+            if(outcome.getStatusEnum() == VirtualDBActionStatusEnum.REVIEW_FINISH){
+                hits += 1;
+                assertEquals("Patient/" + patientNumber, ((Patient)outcome.getResource()).getIdElement().getValue());
+            }
+        }
+        assertEquals(patientCache.getCacheSize(), hits);
+        assertEquals(hits, patientCache.getCacheStatistics().getHitCount());
+        assertEquals(PATIENT_COUNT - hits, patientCache.getCacheStatistics().getMissCount());
+        LOG.debug(".sizeBoundIsHonouredAndEvictionsKeepTheIndexCoherent(): Exit, statistics --> {}", patientCache.getCacheStatistics());
+    }
+}
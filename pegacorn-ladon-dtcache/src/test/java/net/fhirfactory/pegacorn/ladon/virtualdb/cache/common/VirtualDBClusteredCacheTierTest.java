@@ -0,0 +1,177 @@
+package net.fhirfactory.pegacorn.ladon.virtualdb.cache.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+
+import ca.uhn.fhir.context.FhirContext;
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.operations.VirtualDBActionStatusEnum;
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.operations.VirtualDBMethodOutcome;
+import net.fhirfactory.pegacorn.ladon.virtualdb.cache.cluster.VirtualDBClusterOwnershipEnum;
+import net.fhirfactory.pegacorn.ladon.virtualdb.cache.cluster.VirtualDBClusterSettings;
+import net.fhirfactory.pegacorn.ladon.virtualdb.cache.cluster.VirtualDBClusteredCacheTier;
+import net.fhirfactory.pegacorn.ladon.virtualdb.cache.cluster.VirtualDBClusteredResourceStore;
+import org.hl7.fhir.r4.model.IdType;
+import org.hl7.fhir.r4.model.Patient;
+import org.infinispan.Cache;
+import org.infinispan.configuration.cache.ConfigurationBuilder;
+import org.infinispan.manager.DefaultCacheManager;
+import org.junit.After;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class VirtualDBClusteredCacheTierTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(VirtualDBClusteredCacheTierTest.class);
+
+    private static final String LOOPBACK_JGROUPS_CONFIGURATION = "ladon-virtualdb-jgroups-loopback.xml";
+    private static final int NODE_COUNT = 3;
+    private static final long CLUSTER_FORMATION_WAIT_IN_MILLIS = 30000;
+    private static final FhirContext FHIR_CONTEXT = FhirContext.forR4();
+
+    private List<VirtualDBClusteredCacheTier> clusterTiers = new ArrayList<>();
+    private List<VirtualDBIdTypeBasedCacheBaseTest.TestPatientCache> nodeCaches = new ArrayList<>();
+
+    @After
+    public void tearDown() {
+        for(VirtualDBClusteredCacheTier clusterTier: clusterTiers){
+            clusterTier.shutdown();
+        }
+    }
+
+    @Test
+    public void replicatedNodesShareAndInvalidateEntries() throws Exception {
+        LOG.debug(".replicatedNodesShareAndInvalidateEntries(): Entry");
+        startCluster("replicated", VirtualDBClusterOwnershipEnum.CLUSTER_OWNERSHIP_REPLICATED);
+        verifySharingAndInvalidation();
+    }
+
+    @Test
+    public void distributedNodesShareAndInvalidateEntries() throws Exception {
+        LOG.debug(".distributedNodesShareAndInvalidateEntries(): Entry");
+        startCluster("distributed", VirtualDBClusterOwnershipEnum.CLUSTER_OWNERSHIP_DISTRIBUTED);
+        verifySharingAndInvalidation();
+    }
+
+    @Test
+    public void clusterFailuresDoNotFailTheNodesOwnCache() throws Exception {
+        LOG.debug(".clusterFailuresDoNotFailTheNodesOwnCache(): Entry");
+        // A (local) store whose caches have been stopped, so every clustered read and write throws
+        DefaultCacheManager failedCacheManager = new DefaultCacheManager();
+        try {
+            failedCacheManager.defineConfiguration("failed", new ConfigurationBuilder().build());
+            failedCacheManager.defineConfiguration("failed-invalidation", new ConfigurationBuilder().build());
+            Cache<String, String> resourceCache = failedCacheManager.getCache("failed");
+            Cache<String, Long> invalidationCache = failedCacheManager.getCache("failed-invalidation");
+            VirtualDBClusteredResourceStore failedStore = new VirtualDBClusteredResourceStore(resourceCache, invalidationCache, () -> FHIR_CONTEXT.newJsonParser(), key -> {}, 60);
+            resourceCache.stop();
+            invalidationCache.stop();
+            VirtualDBIdTypeBasedCacheBaseTest.TestPatientCache nodeCache = VirtualDBIdTypeBasedCacheBaseTest.newTestPatientCache();
+            nodeCache.initialise();
+            Field clusteredStoreField = VirtualDBIdTypeBasedCacheBase.class.getDeclaredField("clusteredStore");
+            clusteredStoreField.setAccessible(true);
+            clusteredStoreField.set(nodeCache, failedStore);
+
+            VirtualDBMethodOutcome createOutcome = nodeCache.createResource(VirtualDBIdTypeBasedCacheBaseTest.buildPatient(1, 0));
+            assertEquals(VirtualDBActionStatusEnum.CREATION_FINISH, createOutcome.getStatusEnum());
+            assertMRNVersion(nodeCache, new IdType("Patient/1"), 0);
+            // A clustered read failure is a miss
+            assertEquals(VirtualDBActionStatusEnum.REVIEW_RESOURCE_NOT_IN_CACHE, nodeCache.getResource(new IdType("Patient/2")).getStatusEnum());
+            VirtualDBMethodOutcome deleteOutcome = nodeCache.deleteResource(VirtualDBIdTypeBasedCacheBaseTest.buildPatient(1, 0));
+            assertEquals(VirtualDBActionStatusEnum.DELETE_FINISH, deleteOutcome.getStatusEnum());
+        } finally {
+            failedCacheManager.stop();
+        }
+    }
+
+    private void verifySharingAndInvalidation(){
+        IdType patientId = new IdType("Patient/1");
+        // A Resource cached on one node is readable (via the clustered tier) on every other node
+        nodeCaches.get(0).createResource(VirtualDBIdTypeBasedCacheBaseTest.buildPatient(1, 0));
+        for(VirtualDBIdTypeBasedCacheBaseTest.TestPatientCache nodeCache: nodeCaches){
+            assertMRNVersion(nodeCache, patientId, 0);
+        }
+        // ... after which every node holds its own (near cache) copy
+        for(VirtualDBIdTypeBasedCacheBaseTest.TestPatientCache nodeCache: nodeCaches){
+            assertEquals(1, nodeCache.getCacheEntryCount());
+        }
+
+        // A sync on one node invalidates the near copies held by the other nodes
+        nodeCaches.get(1).syncResource(VirtualDBIdTypeBasedCacheBaseTest.buildPatient(1, 1));
+        assertEquals(0, nodeCaches.get(0).getCacheEntryCount());
+        assertEquals(0, nodeCaches.get(2).getCacheEntryCount());
+        for(VirtualDBIdTypeBasedCacheBaseTest.TestPatientCache nodeCache: nodeCaches){
+            assertMRNVersion(nodeCache, patientId, 1);
+        }
+
+        // Invalidations carry the versionless id, so they also reach near copies written under a versioned id
+        Patient versionedPatient = VirtualDBIdTypeBasedCacheBaseTest.buildPatient(1, 2);
+        versionedPatient.setId("Patient/1/_history/2");
+        nodeCaches.get(0).syncResource(versionedPatient);
+        assertEquals(0, nodeCaches.get(1).getCacheEntryCount());
+        assertEquals(0, nodeCaches.get(2).getCacheEntryCount());
+        for(VirtualDBIdTypeBasedCacheBaseTest.TestPatientCache nodeCache: nodeCaches){
+            assertMRNVersion(nodeCache, patientId, 2);
+        }
+        Patient reversionedPatient = VirtualDBIdTypeBasedCacheBaseTest.buildPatient(1, 3);
+        reversionedPatient.setId("Patient/1/_history/3");
+        nodeCaches.get(1).syncResource(reversionedPatient);
+        assertEquals(0, nodeCaches.get(0).getCacheEntryCount());
+        assertMRNVersion(nodeCaches.get(0), patientId, 3);
+
+        // A delete on one node removes the Resource from every node
+        nodeCaches.get(2).deleteResource(VirtualDBIdTypeBasedCacheBaseTest.buildPatient(1, 3));
+        for(VirtualDBIdTypeBasedCacheBaseTest.TestPatientCache nodeCache: nodeCaches){
+            VirtualDBMethodOutcome outcome = nodeCache.getResource(patientId);
+            assertEquals(VirtualDBActionStatusEnum.REVIEW_RESOURCE_NOT_IN_CACHE, outcome.getStatusEnum());
+            assertNull(outcome.getResource());
+        }
+    }
+
+    //
+    // Helpers
+    //
+
+    private void startCluster(String clusterName, VirtualDBClusterOwnershipEnum ownership) throws Exception {
+        for(int node = 0; node < NODE_COUNT; node++){
+            VirtualDBClusterSettings clusterSettings = new VirtualDBClusterSettings();
+            clusterSettings.setEnabled(true);
+            clusterSettings.setClusterName(clusterName);
+            clusterSettings.setNodeName(clusterName + "-node-" + node);
+            clusterSettings.setJgroupsConfigurationFile(LOOPBACK_JGROUPS_CONFIGURATION);
+            clusterSettings.setOwnership(ownership);
+            clusterSettings.setNumOwners(2);
+            clusterSettings.setL1Enabled(true);
+            VirtualDBClusteredCacheTier clusterTier = new VirtualDBClusteredCacheTier(clusterSettings, () -> FHIR_CONTEXT.newJsonParser());
+            clusterTier.initialise();
+            clusterTiers.add(clusterTier);
+        }
+        for(VirtualDBClusteredCacheTier clusterTier: clusterTiers){
+            VirtualDBIdTypeBasedCacheBaseTest.TestPatientCache nodeCache = VirtualDBIdTypeBasedCacheBaseTest.newTestPatientCache();
+            Field clusteredCacheTierField = VirtualDBIdTypeBasedCacheBase.class.getDeclaredField("clusteredCacheTier");
+            clusteredCacheTierField.setAccessible(true);
+            clusteredCacheTierField.set(nodeCache, clusterTier);
+            nodeCache.initialise();
+            nodeCaches.add(nodeCache);
+        }
+        long waitDeadline = System.currentTimeMillis() + CLUSTER_FORMATION_WAIT_IN_MILLIS;
+        for(VirtualDBClusteredCacheTier clusterTier: clusterTiers){
+            while(clusterTier.getClusterSize() < NODE_COUNT && System.currentTimeMillis() < waitDeadline){
+                Thread.sleep(50);
+            }
+            assertEquals(NODE_COUNT, clusterTier.getClusterSize());
+        }
+    }
+
+    private void assertMRNVersion(VirtualDBIdTypeBasedCacheBaseTest.TestPatientCache nodeCache, IdType patientId, int expectedVersion){
+        VirtualDBMethodOutcome outcome = nodeCache.getResource(patientId);
+        assertEquals(VirtualDBActionStatusEnum.REVIEW_FINISH, outcome.getStatusEnum());
+        Patient patient = (Patient)outcome.getResource();
+        assertTrue(patient.getIdentifier().stream().anyMatch(identifier -> ("MRN-1-" + expectedVersion).equals(identifier.getValue())));
+    }
+}
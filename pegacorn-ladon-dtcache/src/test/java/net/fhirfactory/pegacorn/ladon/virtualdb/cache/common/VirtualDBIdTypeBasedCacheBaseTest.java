@@ -0,0 +1,345 @@
+package net.fhirfactory.pegacorn.ladon.virtualdb.cache.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.operations.VirtualDBActionStatusEnum;
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.operations.VirtualDBMethodOutcome;
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.operations.VirtualDBMethodOutcomeFactory;
+import org.hl7.fhir.r4.model.CodeableConcept;
+import org.hl7.fhir.r4.model.Coding;
+import org.hl7.fhir.r4.model.IdType;
+import org.hl7.fhir.r4.model.Identifier;
+import org.hl7.fhir.r4.model.Patient;
+import org.hl7.fhir.r4.model.Resource;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class VirtualDBIdTypeBasedCacheBaseTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(VirtualDBIdTypeBasedCacheBaseTest.class);
+
+    private static final String MRN_SYSTEM = "urn:pegacorn:test:mrn";
+    private static final String STABLE_SYSTEM = "urn:pegacorn:test:stable";
+    private static final int PATIENT_POOL_SIZE = 200;
+    private static final int WRITER_COUNT = 8;
+    private static final int OPERATIONS_PER_WRITER = 5000;
+
+    private TestPatientCache patientCache;
+
+    @Before
+    public void setUp() throws Exception {
+        patientCache = newTestPatientCache();
+    }
+
+    static TestPatientCache newTestPatientCache() throws Exception {
+        TestPatientCache testPatientCache = new TestPatientCache();
+        Field outcomeFactoryField = VirtualDBIdTypeBasedCacheBase.class.getDeclaredField("outcomeFactory");
+        outcomeFactoryField.setAccessible(true);
+        outcomeFactoryField.set(testPatientCache, new VirtualDBMethodOutcomeFactory());
+        return(testPatientCache);
+    }
+
+    @Test
+    public void identifierLookupFollowsAddSyncAndDelete() {
+        LOG.debug(".identifierLookupFollowsAddSyncAndDelete(): Entry");
+        Patient patient = buildPatient(1, 0);
+        patientCache.createResource(patient);
+        assertFound(buildMRNIdentifier(1, 0), "Patient/1");
+        assertFound(buildStableIdentifier(1), "Patient/1");
+        // An Identifier without a Type is matched on (system, value) alone
+        Identifier untypedIdentifier = new Identifier().setSystem(MRN_SYSTEM).setValue("MRN-1-0");
+        assertFound(untypedIdentifier, "Patient/1");
+
+        Patient resyncedPatient = buildPatient(1, 1);
+        patientCache.syncResource(resyncedPatient);
+        assertNotFound(buildMRNIdentifier(1, 0));
+        assertFound(buildMRNIdentifier(1, 1), "Patient/1");
+        assertEquals(1, patientCache.getIdentifierIndex().getIndexedResourceCount());
+
+        patientCache.deleteResource(resyncedPatient);
+        assertNotFound(buildMRNIdentifier(1, 1));
+        assertNotFound(buildStableIdentifier(1));
+        assertEquals(0, patientCache.getIdentifierIndex().getIndexedResourceCount());
+        assertEquals(0, patientCache.getIdentifierIndex().getIndexKeyCount());
+    }
+
+    @Test
+    public void versionedAndQualifiedIdsShareOneEntry() {
+        LOG.debug(".versionedAndQualifiedIdsShareOneEntry(): Entry");
+        Patient versionedPatient = buildPatient(1, 0);
+        versionedPatient.setId("Patient/1/_history/3");
+        patientCache.createResource(versionedPatient);
+        Patient qualifiedPatient = buildPatient(1, 1);
+        qualifiedPatient.setId("http://ladon.example/fhir/Patient/1/_history/4");
+        patientCache.syncResource(qualifiedPatient);
+        assertEquals(1, patientCache.getCacheEntryCount());
+        assertEquals(1, patientCache.getIdentifierIndex().getIndexedResourceCount());
+        VirtualDBMethodOutcome outcome = patientCache.getResource(new IdType("Patient/1"));
+        assertEquals(VirtualDBActionStatusEnum.REVIEW_FINISH, outcome.getStatusEnum());
+        assertNotFound(buildMRNIdentifier(1, 0));
+        assertTrue(patientCache.getResourceLock(new IdType("Patient/1/_history/5")) == patientCache.getResourceLock(new IdType("Patient/1")));
+
+        patientCache.deleteResource(buildPatient(1, 1));
+        assertEquals(0, patientCache.getCacheEntryCount());
+        assertEquals(VirtualDBActionStatusEnum.REVIEW_RESOURCE_NOT_IN_CACHE, patientCache.getResource(new IdType("Patient/1/_history/4")).getStatusEnum());
+    }
+
+    @Test
+    public void expiredEntriesAreHiddenAndThenSweptFromTheIndex() throws Exception {
+        LOG.debug(".expiredEntriesAreHiddenAndThenSweptFromTheIndex(): Entry");
+        patientCache.setRetirementInSeconds(0);
+        patientCache.createResource(buildPatient(1, 0));
+        Thread.sleep(20);
+        patientCache.setRetirementInSeconds(3600);
+        patientCache.createResource(buildPatient(2, 0));
+        // Writes no longer purge the Cache, but expired entries are not visible to readers
+        assertEquals(2, patientCache.getCacheEntryCount());
+        assertNotFound(buildStableIdentifier(1));
+        assertFound(buildStableIdentifier(2), "Patient/2");
+
+        assertEquals(1, patientCache.sweepExpiredEntries(System.currentTimeMillis()));
+        assertEquals(1, patientCache.getCacheEntryCount());
+        assertEquals(1, patientCache.getExpiryQueueSize());
+        assertEquals(1, patientCache.getIdentifierIndex().getIndexedResourceCount());
+        assertFound(buildStableIdentifier(2), "Patient/2");
+    }
+
+    @Test
+    public void sweepHonoursBudgetAndSkipsReplacedEntries() throws Exception {
+        LOG.debug(".sweepHonoursBudgetAndSkipsReplacedEntries(): Entry");
+        patientCache.setRetirementInSeconds(0);
+        for(int patientNumber = 0; patientNumber < 10; patientNumber++){
+            patientCache.createResource(buildPatient(patientNumber, 0));
+        }
+        Thread.sleep(20);
+        // Re-syncing an entry with a longer retirement period replaces its expiry deadline
+        patientCache.setRetirementInSeconds(3600);
+        patientCache.syncResource(buildPatient(0, 1));
+        assertEquals(10, patientCache.getExpiryQueueSize());
+
+        patientCache.setSweepBudget(4);
+        assertEquals(4, patientCache.sweepExpiredEntries(System.currentTimeMillis()));
+        assertEquals(4, patientCache.sweepExpiredEntries(System.currentTimeMillis()));
+        assertEquals(1, patientCache.sweepExpiredEntries(System.currentTimeMillis()));
+        assertEquals(0, patientCache.sweepExpiredEntries(System.currentTimeMillis()));
+        assertEquals(1, patientCache.getCacheEntryCount());
+        assertEquals(1, patientCache.getExpiryQueueSize());
+        assertFound(buildMRNIdentifier(0, 1), "Patient/0");
+    }
+
+    @Test
+    public void concurrentWritersKeepIndexConsistentWithCache() throws Exception {
+        LOG.debug(".concurrentWritersKeepIndexConsistentWithCache(): Entry");
+        ExecutorService writerPool = Executors.newFixedThreadPool(WRITER_COUNT);
+        CountDownLatch startLatch = new CountDownLatch(1);
+        for(int writer = 0; writer < WRITER_COUNT; writer++){
+            final long seed = writer;
+            writerPool.submit(() -> {
+                Random random = new Random(seed);
+                startLatch.await();
+                for(int counter = 0; counter < OPERATIONS_PER_WRITER; counter++){
+                    int patientNumber = random.nextInt(PATIENT_POOL_SIZE);
+                    int version = random.nextInt(4);
+                    switch(random.nextInt(3)){
+                        case 0:
+                            patientCache.createResource(buildPatient(patientNumber, version));
+                            break;
+                        case 1:
+                            patientCache.syncResource(buildPatient(patientNumber, version));
+                            break;
+                        default:
+                            patientCache.deleteResource(buildPatient(patientNumber, version));
+                    }
+                }
+                return(null);
+            });
+        }
+        startLatch.countDown();
+        writerPool.shutdown();
+        assertTrue(writerPool.awaitTermination(2, TimeUnit.MINUTES));
+
+        // Every cached Resource must be reachable via each of its Identifiers
+        List<Resource> cachedResources = new ArrayList<>(patientCache.getAllResourcesFromCache());
+        for(Resource cachedResource: cachedResources){
+            Patient cachedPatient = (Patient)cachedResource;
+            for(Identifier cachedIdentifier: cachedPatient.getIdentifier()){
+                assertFound(cachedIdentifier, cachedPatient.getIdElement().getValue());
+            }
+        }
+        // And the index must not reference anything that isn't in the cache
+        VirtualDBIdentifierIndex index = patientCache.getIdentifierIndex();
+        assertEquals(patientCache.getCacheEntryCount(), index.getIndexedResourceCount());
+        assertEquals(patientCache.getCacheEntryCount(), patientCache.getExpiryQueueSize());
+        for(int patientNumber = 0; patientNumber < PATIENT_POOL_SIZE; patientNumber++){
+            for(int version = 0; version < 4; version++){
+                Identifier mrn = buildMRNIdentifier(patientNumber, version);
+                VirtualDBMethodOutcome outcome = patientCache.getResource(mrn);
+                if(outcome.getStatusEnum() == VirtualDBActionStatusEnum.REVIEW_FINISH){
+                    Patient foundPatient = (Patient)outcome.getResource();
+                    assertTrue(hasIdentifierValue(foundPatient, mrn.getValue()));
+                }
+            }
+        }
+        LOG.debug(".concurrentWritersKeepIndexConsistentWithCache(): Exit, cache size --> {}", cachedResources.size());
+    }
+
+    //
+    // Helpers
+    //
+
+    private void assertFound(Identifier identifier, String expectedId){
+        VirtualDBMethodOutcome outcome = patientCache.getResource(identifier);
+        assertEquals(VirtualDBActionStatusEnum.REVIEW_FINISH, outcome.getStatusEnum());
+        Resource foundResource = (Resource)outcome.getResource();
+        assertNotNull(foundResource);
+        assertEquals(expectedId, foundResource.getIdElement().getValue());
+    }
+
+    private void assertNotFound(Identifier identifier){
+        VirtualDBMethodOutcome outcome = patientCache.getResource(identifier);
+        assertEquals(VirtualDBActionStatusEnum.REVIEW_RESOURCE_NOT_IN_CACHE, outcome.getStatusEnum());
+        assertNull(outcome.getResource());
+    }
+
+    private boolean hasIdentifierValue(Patient patient, String value){
+        for(Identifier identifier: patient.getIdentifier()){
+            if(value.equals(identifier.getValue())){
+                return(true);
+            }
+        }
+        return(false);
+    }
+
+    static Patient buildPatient(int patientNumber, int version){
+        Patient patient = new Patient();
+        patient.setId("Patient/" + patientNumber);
+        patient.addIdentifier(buildMRNIdentifier(patientNumber, version));
+        patient.addIdentifier(buildStableIdentifier(patientNumber));
+        return(patient);
+    }
+
+    static Identifier buildMRNIdentifier(int patientNumber, int version){
+        Identifier identifier = new Identifier();
+        identifier.setUse(Identifier.IdentifierUse.OFFICIAL);
+        identifier.setType(new CodeableConcept().addCoding(new Coding("http://terminology.hl7.org/CodeSystem/v2-0203", "MR", "Medical record number")));
+        identifier.setSystem(MRN_SYSTEM);
+        identifier.setValue("MRN-" + patientNumber + "-" + version);
+        return(identifier);
+    }
+
+    static Identifier buildStableIdentifier(int patientNumber){
+        Identifier identifier = new Identifier();
+        identifier.setUse(Identifier.IdentifierUse.SECONDARY);
+        identifier.setSystem(STABLE_SYSTEM);
+        identifier.setValue("S-" + patientNumber);
+        return(identifier);
+    }
+
+    static class TestPatientCache extends VirtualDBIdTypeBasedCacheBase {
+        private static final Logger CACHE_LOG = LoggerFactory.getLogger(TestPatientCache.class);
+        private volatile int retirementInSeconds = 3600;
+        private volatile int sweepBudget = 1000;
+        private VirtualDBCacheEngineEnum cacheEngine = VirtualDBCacheEngineEnum.CACHE_ENGINE_CONCURRENT_MAP;
+        private long maximumSize = 0;
+        private VirtualDBCacheStorageModeEnum storageMode = VirtualDBCacheStorageModeEnum.STORAGE_MODE_OBJECT;
+        private int hotSetSize = 0;
+
+        void setRetirementInSeconds(int retirementInSeconds){
+            this.retirementInSeconds = retirementInSeconds;
+        }
+
+        void setSweepBudget(int sweepBudget){
+            this.sweepBudget = sweepBudget;
+        }
+
+        void setCacheEngine(VirtualDBCacheEngineEnum cacheEngine, long maximumSize){
+            this.cacheEngine = cacheEngine;
+            this.maximumSize = maximumSize;
+        }
+
+        void setStorageMode(VirtualDBCacheStorageModeEnum storageMode, int hotSetSize){
+            this.storageMode = storageMode;
+            this.hotSetSize = hotSetSize;
+        }
+
+        @Override
+        protected VirtualDBCacheStorageModeEnum specifyCacheStorageMode() {
+            return (storageMode);
+        }
+
+        @Override
+        protected int specifyDecodedHotSetSize() {
+            return (hotSetSize);
+        }
+
+        @Override
+        protected VirtualDBCacheEngineEnum specifyCacheEngine() {
+            return (cacheEngine);
+        }
+
+        @Override
+        protected long specifyCacheMaximumSize() {
+            return (maximumSize);
+        }
+
+        @Override
+        protected int specifyCacheExpirySweepBudget() {
+            return (sweepBudget);
+        }
+
+        @Override
+        protected Logger getLogger() {
+            return (CACHE_LOG);
+        }
+
+        @Override
+        protected int specifyCacheElementRetirementInSeconds() {
+            return (retirementInSeconds);
+        }
+
+        @Override
+        protected boolean areTheSame(Resource a, Resource b) {
+            if(a == null || b == null){
+                return(a == b);
+            }
+            return(a.equalsDeep(b));
+        }
+
+        @Override
+        protected List<Identifier> resolveIdentifierSet(Resource resourceToAdd) {
+            if(resourceToAdd == null){
+                return(new ArrayList<>());
+            }
+            return(((Patient)resourceToAdd).getIdentifier());
+        }
+
+        @Override
+        protected void addIdentifierToResource(Identifier identifierToAdd, Resource resource) {
+            ((Patient)resource).addIdentifier(identifierToAdd);
+        }
+
+        @Override
+        protected String getCacheClassName() {
+            return ("TestPatient");
+        }
+
+        @Override
+        protected Resource createClonedResource(Resource resource) {
+            return(((Patient)resource).copy());
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package net.fhirfactory.pegacorn.ladon.virtualdb.cache.common;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import ca.uhn.fhir.context.FhirContext;
+import org.hl7.fhir.r4.model.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A (manually run) benchmark of the VirtualDB cache storage modes. For a representative instance of each of the 16
+ * cached resource types it reports the retained heap per entry in STORAGE_MODE_OBJECT (estimated from the heap
+ * growth over ENTRY_COUNT copies), the bytes per entry in the ENCODED and DEFLATE modes, and the mean decode
+ * latency of each encoded mode.
+ *
+ * Run with: mvn -pl pegacorn-ladon-dtcache test-compile exec:java -Dexec.classpathScope=test
+ *     -Dexec.mainClass=net.fhirfactory.pegacorn.ladon.virtualdb.cache.common.VirtualDBResourceCodecBenchmark
+ */
+public class VirtualDBResourceCodecBenchmark {
+    private static final Logger LOG = LoggerFactory.getLogger(VirtualDBResourceCodecBenchmark.class);
+
+    private static final int ENTRY_COUNT = 5000;
+    private static final int WARMUP_ITERATIONS = 2000;
+    private static final int MEASURED_ITERATIONS = 10000;
+    private static final FhirContext FHIR_CONTEXT = FhirContext.forR4();
+
+    public static void main(String[] args) {
+        VirtualDBResourceCodec encodedCodec = new VirtualDBResourceCodec(VirtualDBCacheStorageModeEnum.STORAGE_MODE_ENCODED, () -> FHIR_CONTEXT.newJsonParser());
+        VirtualDBResourceCodec deflateCodec = new VirtualDBResourceCodec(VirtualDBCacheStorageModeEnum.STORAGE_MODE_DEFLATE, () -> FHIR_CONTEXT.newJsonParser());
+        System.out.println(String.format("%-22s %14s %14s %14s %16s %16s", "ResourceType", "Object(B)", "Encoded(B)", "Deflate(B)", "Encoded(us)", "Deflate(us)"));
+        for(Map.Entry<String, Resource> sample: buildSamples().entrySet()){
+            Resource resource = sample.getValue();
+            long objectBytes = estimateRetainedObjectSize(resource);
+            byte[] encodedResource = encodedCodec.encode(resource);
+            byte[] deflatedResource = deflateCodec.encode(resource);
+            double encodedDecodeMicros = measureDecodeMicros(encodedCodec, encodedResource);
+            double deflateDecodeMicros = measureDecodeMicros(deflateCodec, deflatedResource);
+            System.out.println(String.format("%-22s %14d %14d %14d %16.2f %16.2f", sample.getKey(), objectBytes, encodedResource.length, deflatedResource.length, encodedDecodeMicros, deflateDecodeMicros));
+        }
+    }
+
+    private static double measureDecodeMicros(VirtualDBResourceCodec codec, byte[] storedResource){
+        for(int counter = 0; counter < WARMUP_ITERATIONS; counter++){
+            codec.decode(storedResource);
+        }
+        long start = System.nanoTime();
+        for(int counter = 0; counter < MEASURED_ITERATIONS; counter++){
+            codec.decode(storedResource);
+        }
+        return((System.nanoTime() - start) / 1000.0 / MEASURED_ITERATIONS);
+    }
+
+    private static long estimateRetainedObjectSize(Resource resource){
+        List<Resource> retained = new ArrayList<>(ENTRY_COUNT);
+        long before = usedHeap();
+        for(int counter = 0; counter < ENTRY_COUNT; counter++){
+            retained.add(resource.copy());
+        }
+        long after = usedHeap();
+        LOG.trace(".estimateRetainedObjectSize(): retained --> {}", retained.size());
+        return((after - before) / retained.size());
+    }
+
+    private static long usedHeap(){
+        Runtime runtime = Runtime.getRuntime();
+        for(int counter = 0; counter < 3; counter++){
+            System.gc();
+        }
+        return(runtime.totalMemory() - runtime.freeMemory());
+    }
+
+    //
+    // Sample Resources
+    //
+
+    private static Map<String, Resource> buildSamples(){
+        Map<String, Resource> samples = new LinkedHashMap<>();
+        Reference patientReference = new Reference("Patient/1").setDisplay("HUNTER, Mark");
+        Reference practitionerReference = new Reference("Practitioner/1").setDisplay("Dr Jane SMITH");
+        Reference organizationReference = new Reference("Organization/1").setDisplay("Canberra Hospital");
+        Period period = new Period().setStart(new Date()).setEnd(new Date());
+
+        Patient patient = new Patient();
+        patient.setId("Patient/1");
+        patient.addIdentifier(buildIdentifier("urn:test:mrn", "MRN-123456", "MR"));
+        patient.addIdentifier(buildIdentifier("http://ns.electronichealth.net.au/id/medicare-number", "2951234561", "MC"));
+        patient.addName().setUse(HumanName.NameUse.OFFICIAL).setFamily("HUNTER").addGiven("Mark").addGiven("A");
+        patient.addTelecom().setSystem(ContactPoint.ContactPointSystem.PHONE).setValue("0412 345 678").setUse(ContactPoint.ContactPointUse.MOBILE);
+        patient.addAddress().setUse(Address.AddressUse.HOME).addLine("1 Example Street").setCity("Canberra").setState("ACT").setPostalCode("2600").setCountry("AU");
+        patient.setGender(Enumerations.AdministrativeGender.MALE).setBirthDate(new Date()).setManagingOrganization(organizationReference);
+        samples.put("Patient", patient);
+
+        Practitioner practitioner = new Practitioner();
+        practitioner.setId("Practitioner/1");
+        practitioner.addIdentifier(buildIdentifier("http://ns.electronichealth.net.au/id/hi/hpii/1.0", "8003610000000000", "NPI"));
+        practitioner.addName().setFamily("SMITH").addGiven("Jane").addPrefix("Dr");
+        practitioner.addTelecom().setSystem(ContactPoint.ContactPointSystem.EMAIL).setValue("jane.smith@example.org");
+        samples.put("Practitioner", practitioner);
+
+        PractitionerRole practitionerRole = new PractitionerRole();
+        practitionerRole.setId("PractitionerRole/1");
+        practitionerRole.addIdentifier(buildIdentifier("urn:test:role", "ROLE-1", null));
+        practitionerRole.setPractitioner(practitionerReference).setOrganization(organizationReference).setPeriod(period);
+        practitionerRole.addCode(buildConcept("http://snomed.info/sct", "309343006", "Physician"));
+        samples.put("PractitionerRole", practitionerRole);
+
+        Organization organization = new Organization();
+        organization.setId("Organization/1");
+        organization.addIdentifier(buildIdentifier("http://ns.electronichealth.net.au/id/hi/hpio/1.0", "8003620000000000", null));
+        organization.setName("Canberra Hospital").addType(buildConcept("http://terminology.hl7.org/CodeSystem/organization-type", "prov", "Healthcare Provider"));
+        organization.addAddress().addLine("Yamba Drive").setCity("Garran").setState("ACT").setPostalCode("2605");
+        samples.put("Organization", organization);
+
+        Location location = new Location();
+        location.setId("Location/1");
+        location.addIdentifier(buildIdentifier("urn:test:location", "WARD-7B", null));
+        location.setName("Ward 7B").setStatus(Location.LocationStatus.ACTIVE).setManagingOrganization(organizationReference);
+        location.setPhysicalType(buildConcept("http://terminology.hl7.org/CodeSystem/location-physical-type", "wa", "Ward"));
+        samples.put("Location", location);
+
+        Encounter encounter = new Encounter();
+        encounter.setId("Encounter/1");
+        encounter.addIdentifier(buildIdentifier("urn:test:visit", "V-0001", "VN"));
+        encounter.setStatus(Encounter.EncounterStatus.INPROGRESS).setClass_(new Coding("http://terminology.hl7.org/CodeSystem/v3-ActCode", "IMP", "inpatient encounter"));
+        encounter.setSubject(patientReference).setPeriod(period);
+        encounter.addParticipant().setIndividual(practitionerReference);
+        encounter.addLocation().setLocation(new Reference("Location/1"));
+        samples.put("Encounter", encounter);
+
+        Procedure procedure = new Procedure();
+        procedure.setId("Procedure/1");
+        procedure.addIdentifier(buildIdentifier("urn:test:procedure", "P-0001", null));
+        procedure.setStatus(Procedure.ProcedureStatus.COMPLETED).setSubject(patientReference).setPerformed(period);
+        procedure.setCode(buildConcept("http://snomed.info/sct", "80146002", "Appendectomy"));
+        procedure.addPerformer().setActor(practitionerReference);
+        samples.put("Procedure", procedure);
+
+        DocumentReference documentReference = new DocumentReference();
+        documentReference.setId("DocumentReference/1");
+        documentReference.addIdentifier(buildIdentifier("urn:test:document", "DOC-0001", null));
+        documentReference.setStatus(Enumerations.DocumentReferenceStatus.CURRENT).setSubject(patientReference).setDate(new Date());
+        documentReference.setType(buildConcept("http://loinc.org", "18842-5", "Discharge summary"));
+        documentReference.addAuthor(practitionerReference);
+        documentReference.addContent().setAttachment(new Attachment().setContentType("application/pdf").setUrl("http://example.org/documents/DOC-0001.pdf").setTitle("Discharge Summary"));
+        samples.put("DocumentReference", documentReference);
+
+        CareTeam careTeam = new CareTeam();
+        careTeam.setId("CareTeam/1");
+        careTeam.addIdentifier(buildIdentifier("urn:test:careteam", "CT-0001", null));
+        careTeam.setStatus(CareTeam.CareTeamStatus.ACTIVE).setName("Renal Care Team").setSubject(patientReference).setPeriod(period);
+        careTeam.addParticipant().setMember(practitionerReference).addRole(buildConcept("http://snomed.info/sct", "17561000", "Cardiologist"));
+        samples.put("CareTeam", careTeam);
+
+        Communication communication = new Communication();
+        communication.setId("Communication/1");
+        communication.addIdentifier(buildIdentifier("urn:test:communication", "COM-0001", null));
+        communication.setStatus(Communication.CommunicationStatus.COMPLETED).setSubject(patientReference).setSent(new Date()).setSender(practitionerReference);
+        communication.addPayload().setContent(new StringType("The patient has been admitted to Ward 7B."));
+        samples.put("Communication", communication);
+
+        CommunicationRequest communicationRequest = new CommunicationRequest();
+        communicationRequest.setId("CommunicationRequest/1");
+        communicationRequest.addIdentifier(buildIdentifier("urn:test:communicationrequest", "CR-0001", null));
+        communicationRequest.setStatus(CommunicationRequest.CommunicationRequestStatus.ACTIVE).setSubject(patientReference).setRequester(practitionerReference);
+        communicationRequest.addPayload().setContent(new StringType("Please notify the patient's GP of the admission."));
+        samples.put("CommunicationRequest", communicationRequest);
+
+        Endpoint endpoint = new Endpoint();
+        endpoint.setId("Endpoint/1");
+        endpoint.addIdentifier(buildIdentifier("urn:test:endpoint", "EP-0001", null));
+        endpoint.setStatus(Endpoint.EndpointStatus.ACTIVE).setName("Ladon FHIR Endpoint").setAddress("https://ladon.example.org/fhir");
+        endpoint.setConnectionType(new Coding("http://terminology.hl7.org/CodeSystem/endpoint-connection-type", "hl7-fhir-rest", "HL7 FHIR"));
+        endpoint.addPayloadType(buildConcept("http://terminology.hl7.org/CodeSystem/endpoint-payload-type", "any", "Any"));
+        samples.put("Endpoint", endpoint);
+
+        Group group = new Group();
+        group.setId("Group/1");
+        group.addIdentifier(buildIdentifier("urn:test:group", "G-0001", null));
+        group.setType(Group.GroupType.PERSON).setActual(true).setName("Ward 7B Inpatients");
+        group.addMember().setEntity(patientReference).setPeriod(period);
+        samples.put("Group", group);
+
+        HealthcareService healthcareService = new HealthcareService();
+        healthcareService.setId("HealthcareService/1");
+        healthcareService.addIdentifier(buildIdentifier("urn:test:service", "HS-0001", null));
+        healthcareService.setActive(true).setName("Renal Dialysis").setProvidedBy(organizationReference);
+        healthcareService.addType(buildConcept("http://snomed.info/sct", "108241001", "Dialysis procedure"));
+        samples.put("HealthcareService", healthcareService);
+
+        Task task = new Task();
+        task.setId("Task/1");
+        task.addIdentifier(buildIdentifier("urn:test:task", "T-0001", null));
+        task.setStatus(Task.TaskStatus.REQUESTED).setIntent(Task.TaskIntent.ORDER).setFor(patientReference).setOwner(practitionerReference);
+        task.setAuthoredOn(new Date()).setDescription("Review discharge summary");
+        samples.put("Task", task);
+
+        ValueSet valueSet = new ValueSet();
+        valueSet.setId("ValueSet/1");
+        valueSet.addIdentifier(buildIdentifier("urn:test:valueset", "VS-0001", null));
+        valueSet.setStatus(Enumerations.PublicationStatus.ACTIVE).setName("WardTypes").setUrl("http://example.org/fhir/ValueSet/ward-types");
+        ValueSet.ConceptSetComponent include = valueSet.getCompose().addInclude().setSystem("http://terminology.hl7.org/CodeSystem/location-physical-type");
+        include.addConcept().setCode("wa").setDisplay("Ward");
+        include.addConcept().setCode("ro").setDisplay("Room");
+        include.addConcept().setCode("bd").setDisplay("Bed");
+        samples.put("ValueSet", valueSet);
+        return(samples);
+    }
+
+    private static Identifier buildIdentifier(String system, String value, String typeCode){
+        Identifier identifier = new Identifier().setUse(Identifier.IdentifierUse.OFFICIAL).setSystem(system).setValue(value);
+        if(typeCode != null){
+            identifier.setType(buildConcept("http://terminology.hl7.org/CodeSystem/v2-0203", typeCode, null));
+        }
+        return(identifier);
+    }
+
+    private static CodeableConcept buildConcept(String system, String code, String display){
+        return(new CodeableConcept().addCoding(new Coding(system, code, display)));
+    }
+}
@@ -0,0 +1,79 @@
+package net.fhirfactory.pegacorn.ladon.virtualdb.cache.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import ca.uhn.fhir.context.FhirContext;
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.operations.VirtualDBActionStatusEnum;
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.operations.VirtualDBMethodOutcome;
+import org.hl7.fhir.r4.model.IdType;
+import org.hl7.fhir.r4.model.Patient;
+import org.hl7.fhir.r4.model.Resource;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class VirtualDBResourceCodecTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(VirtualDBResourceCodecTest.class);
+
+    private static final FhirContext FHIR_CONTEXT = FhirContext.forR4();
+
+    @Test
+    public void encodedAndDeflatedFormsRoundTrip() {
+        LOG.debug(".encodedAndDeflatedFormsRoundTrip(): Entry");
+        Patient patient = VirtualDBIdTypeBasedCacheBaseTest.buildPatient(1, 0);
+        patient.addName().setFamily("Hunter").addGiven("Mark");
+        VirtualDBResourceCodec encodedCodec = new VirtualDBResourceCodec(VirtualDBCacheStorageModeEnum.STORAGE_MODE_ENCODED, () -> FHIR_CONTEXT.newJsonParser());
+        VirtualDBResourceCodec deflateCodec = new VirtualDBResourceCodec(VirtualDBCacheStorageModeEnum.STORAGE_MODE_DEFLATE, () -> FHIR_CONTEXT.newJsonParser());
+        byte[] encodedPatient = encodedCodec.encode(patient);
+        byte[] deflatedPatient = deflateCodec.encode(patient);
+        assertTrue(encodedCodec.decode(encodedPatient).equalsDeep(patient));
+        assertTrue(deflateCodec.decode(deflatedPatient).equalsDeep(patient));
+        assertTrue(deflatedPatient.length < encodedPatient.length);
+        LOG.debug(".encodedAndDeflatedFormsRoundTrip(): Exit, encoded --> {} bytes, deflated --> {} bytes", encodedPatient.length, deflatedPatient.length);
+    }
+
+    @Test
+    public void deflateModeCacheDecodesOnDemand() throws Exception {
+        LOG.debug(".deflateModeCacheDecodesOnDemand(): Entry");
+        VirtualDBIdTypeBasedCacheBaseTest.TestPatientCache patientCache = newPatientCache(0);
+        patientCache.createResource(VirtualDBIdTypeBasedCacheBaseTest.buildPatient(1, 0));
+        Resource firstRead = getPatient(patientCache);
+        Resource secondRead = getPatient(patientCache);
+        assertTrue(firstRead.equalsDeep(VirtualDBIdTypeBasedCacheBaseTest.buildPatient(1, 0)));
+        assertNotSame(firstRead, secondRead);
+        // Identifier lookups still work, as the index is built from the Resource before it is encoded
+        VirtualDBMethodOutcome outcome = patientCache.getResource(VirtualDBIdTypeBasedCacheBaseTest.buildStableIdentifier(1));
+        assertEquals(VirtualDBActionStatusEnum.REVIEW_FINISH, outcome.getStatusEnum());
+    }
+
+    @Test
+    public void hotSetServesDecodedResourceUntilReplaced() throws Exception {
+        LOG.debug(".hotSetServesDecodedResourceUntilReplaced(): Entry");
+        VirtualDBIdTypeBasedCacheBaseTest.TestPatientCache patientCache = newPatientCache(16);
+        patientCache.createResource(VirtualDBIdTypeBasedCacheBaseTest.buildPatient(1, 0));
+        Resource firstRead = getPatient(patientCache);
+        assertSame(firstRead, getPatient(patientCache));
+        patientCache.syncResource(VirtualDBIdTypeBasedCacheBaseTest.buildPatient(1, 1));
+        Resource resyncedRead = getPatient(patientCache);
+        assertNotSame(firstRead, resyncedRead);
+        assertTrue(resyncedRead.equalsDeep(VirtualDBIdTypeBasedCacheBaseTest.buildPatient(1, 1)));
+    }
+
+    private VirtualDBIdTypeBasedCacheBaseTest.TestPatientCache newPatientCache(int hotSetSize) throws Exception {
+        VirtualDBIdTypeBasedCacheBaseTest.TestPatientCache patientCache = VirtualDBIdTypeBasedCacheBaseTest.newTestPatientCache();
+        patientCache.setStorageMode(VirtualDBCacheStorageModeEnum.STORAGE_MODE_DEFLATE, hotSetSize);
+        patientCache.useParserSupplier(() -> FHIR_CONTEXT.newJsonParser());
+        patientCache.initialise();
+        return(patientCache);
+    }
+
+    private Resource getPatient(VirtualDBIdTypeBasedCacheBaseTest.TestPatientCache patientCache){
+        VirtualDBMethodOutcome outcome = patientCache.getResource(new IdType("Patient/1"));
+        assertEquals(VirtualDBActionStatusEnum.REVIEW_FINISH, outcome.getStatusEnum());
+        return((Resource)outcome.getResource());
+    }
+}
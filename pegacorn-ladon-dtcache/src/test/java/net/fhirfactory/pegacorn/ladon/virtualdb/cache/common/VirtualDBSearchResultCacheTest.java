@@ -0,0 +1,98 @@
+package net.fhirfactory.pegacorn.ladon.virtualdb.cache.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import ca.uhn.fhir.rest.param.DateRangeParam;
+import ca.uhn.fhir.rest.param.TokenParam;
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.searches.SearchNameEnum;
+import org.hl7.fhir.r4.model.IdType;
+import org.hl7.fhir.r4.model.Property;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class VirtualDBSearchResultCacheTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(VirtualDBSearchResultCacheTest.class);
+
+    private static final long TIME_TO_LIVE_IN_MILLIS = 60000;
+
+    @Test
+    public void searchKeyIgnoresParameterOrderAndIdentity() {
+        LOG.debug(".searchKeyIgnoresParameterOrderAndIdentity(): Entry");
+        Map<Property, Serializable> firstOrder = new LinkedHashMap<>();
+        firstOrder.put(searchProperty("type"), new TokenParam("http://loinc.org", "11488-4"));
+        firstOrder.put(searchProperty("date"), new DateRangeParam(new Date(1000), new Date(2000)));
+        Map<Property, Serializable> secondOrder = new LinkedHashMap<>();
+        secondOrder.put(searchProperty("date"), new DateRangeParam(new Date(1000), new Date(2000)));
+        secondOrder.put(searchProperty("type"), new TokenParam("http://loinc.org", "11488-4"));
+        String firstKey = VirtualDBSearchResultCache.buildSearchKey(SearchNameEnum.DOCUMENT_REFERENCE_DATE_AND_TYPE, firstOrder);
+        assertEquals(firstKey, VirtualDBSearchResultCache.buildSearchKey(SearchNameEnum.DOCUMENT_REFERENCE_DATE_AND_TYPE, secondOrder));
+        Map<Property, Serializable> otherRange = new LinkedHashMap<>();
+        otherRange.put(searchProperty("type"), new TokenParam("http://loinc.org", "11488-4"));
+        otherRange.put(searchProperty("date"), new DateRangeParam(new Date(1000), new Date(3000)));
+        assertNotEquals(firstKey, VirtualDBSearchResultCache.buildSearchKey(SearchNameEnum.DOCUMENT_REFERENCE_DATE_AND_TYPE, otherRange));
+    }
+
+    @Test
+    public void cachedResultIsReturnedUntilItExpires() throws Exception {
+        LOG.debug(".cachedResultIsReturnedUntilItExpires(): Entry");
+        VirtualDBSearchResultCache cache = new VirtualDBSearchResultCache(16);
+        List<IdType> memberIds = Arrays.asList(new IdType("DocumentReference/1"), new IdType("DocumentReference/2"));
+        assertTrue(cache.put("search", memberIds, 50, cache.getInvalidationGeneration()));
+        assertEquals(memberIds, cache.getMemberIds("search", System.currentTimeMillis()));
+        assertNull(cache.getMemberIds("search", System.currentTimeMillis() + 1000));
+        assertEquals(0, cache.getSize());
+        assertEquals(1, cache.getCacheStatistics().getHitCount());
+        assertEquals(1, cache.getCacheStatistics().getExpiryCount());
+    }
+
+    @Test
+    public void changingAMemberInvalidatesItsSearches() {
+        LOG.debug(".changingAMemberInvalidatesItsSearches(): Entry");
+        VirtualDBSearchResultCache cache = new VirtualDBSearchResultCache(16);
+        cache.put("first", Arrays.asList(new IdType("DocumentReference/1"), new IdType("DocumentReference/2")), TIME_TO_LIVE_IN_MILLIS, cache.getInvalidationGeneration());
+        cache.put("second", Arrays.asList(new IdType("DocumentReference/3")), TIME_TO_LIVE_IN_MILLIS, cache.getInvalidationGeneration());
+        cache.invalidateMember(new IdType("DocumentReference/2/_history/4"));
+        assertNull(cache.getMemberIds("first", System.currentTimeMillis()));
+        assertEquals(1, cache.getMemberIds("second", System.currentTimeMillis()).size());
+        assertEquals(1, cache.getInvalidationCount());
+    }
+
+    @Test
+    public void resultOfASearchRacingAnInvalidationIsNotStored() {
+        LOG.debug(".resultOfASearchRacingAnInvalidationIsNotStored(): Entry");
+        VirtualDBSearchResultCache cache = new VirtualDBSearchResultCache(16);
+        long searchGeneration = cache.getInvalidationGeneration();
+        cache.invalidateMember(new IdType("DocumentReference/1"));
+        assertFalse(cache.put("search", Arrays.asList(new IdType("DocumentReference/1")), TIME_TO_LIVE_IN_MILLIS, searchGeneration));
+        assertNull(cache.getMemberIds("search", System.currentTimeMillis()));
+    }
+
+    @Test
+    public void sizeIsBounded() {
+        LOG.debug(".sizeIsBounded(): Entry");
+        VirtualDBSearchResultCache cache = new VirtualDBSearchResultCache(4);
+        for(int counter = 0; counter < 10; counter++){
+            cache.put("search-" + counter, Arrays.asList(new IdType("DocumentReference/" + counter)), TIME_TO_LIVE_IN_MILLIS, cache.getInvalidationGeneration());
+        }
+        assertEquals(4, cache.getSize());
+        assertEquals(6, cache.getCacheStatistics().getEvictionCount());
+    }
+
+    private static Property searchProperty(String name){
+        return(new Property(name, "string", "", 0, 1, new ArrayList<>()));
+    }
+}
@@ -0,0 +1,345 @@
+package net.fhirfactory.pegacorn.ladon.virtualdb.engine.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.fhirfactory.pegacorn.ladon.mdr.conduit.controller.aggregationservices.common.ResourceContentAggregationServiceBase;
+import net.fhirfactory.pegacorn.ladon.mdr.conduit.controller.common.ResourceSoTConduitController;
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.operations.VirtualDBActionStatusEnum;
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.operations.VirtualDBActionTypeEnum;
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.operations.VirtualDBMethodOutcome;
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.operations.VirtualDBMethodOutcomeFactory;
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.operations.VirtualDBReadLayerEnum;
+import net.fhirfactory.pegacorn.ladon.virtualdb.cache.common.VirtualDBIdTypeBasedCacheBase;
+import net.fhirfactory.pegacorn.ladon.virtualdb.persistence.common.PersistenceServiceBase;
+import org.hl7.fhir.r4.model.IdType;
+import org.hl7.fhir.r4.model.Identifier;
+import org.hl7.fhir.r4.model.Patient;
+import org.hl7.fhir.r4.model.Resource;
+import org.hl7.fhir.r4.model.ResourceType;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Exercises the ResourceDBEngine.getResource(IdType) read-through pipeline against in-process stand-ins for the
+ * Persistence Service and the Sources-of-Truth.
+ */
+public class ResourceDBEngineReadThroughTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ResourceDBEngineReadThroughTest.class);
+
+    private static final String MRN_SYSTEM = "urn:pegacorn:test:mrn";
+    private static final long REFRESH_PERIOD_IN_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    private StandInSourceOfTruth sourceOfTruth;
+    private TestPatientDBEngine patientEngine;
+
+    @Before
+    public void setUp() throws Exception {
+        VirtualDBMethodOutcomeFactory outcomeFactory = new VirtualDBMethodOutcomeFactory();
+        TestPatientCache patientCache = new TestPatientCache();
+        Field cacheOutcomeFactoryField = VirtualDBIdTypeBasedCacheBase.class.getDeclaredField("outcomeFactory");
+        cacheOutcomeFactoryField.setAccessible(true);
+        cacheOutcomeFactoryField.set(patientCache, outcomeFactory);
+        sourceOfTruth = new StandInSourceOfTruth();
+        patientEngine = new TestPatientDBEngine(patientCache, sourceOfTruth);
+        Field engineOutcomeFactoryField = ResourceDBEngine.class.getDeclaredField("outcomeFactory");
+        engineOutcomeFactoryField.setAccessible(true);
+        engineOutcomeFactoryField.set(patientEngine, outcomeFactory);
+    }
+
+    @Test
+    public void sourceOfTruthReadPopulatesPersistenceAndCache() {
+        LOG.debug(".sourceOfTruthReadPopulatesPersistenceAndCache(): Entry");
+        sourceOfTruth.addPatient(buildPatient(1, null));
+        VirtualDBMethodOutcome firstRead = patientEngine.getResource(new IdType("Patient/1"));
+        assertRetrieved(firstRead, VirtualDBReadLayerEnum.READ_LAYER_SOURCE_OF_TRUTH);
+        assertEquals(3, firstRead.getLayerTimingsInNanos().size());
+        assertEquals(1, sourceOfTruth.getIdReviewCount());
+        assertNotNull(patientEngine.getPersistedPatient("Patient/1"));
+
+        VirtualDBMethodOutcome secondRead = patientEngine.getResource(new IdType("Patient/1"));
+        assertRetrieved(secondRead, VirtualDBReadLayerEnum.READ_LAYER_CACHE);
+        assertTrue(secondRead.getLayerTimingsInNanos().containsKey(VirtualDBReadLayerEnum.READ_LAYER_CACHE));
+        assertEquals(1, sourceOfTruth.getIdReviewCount());
+        assertEquals(1, patientEngine.getPersistenceReadCount());
+    }
+
+    @Test
+    public void currentPersistedResourceIsServedWithoutSourceOfTruth() {
+        LOG.debug(".currentPersistedResourceIsServedWithoutSourceOfTruth(): Entry");
+        patientEngine.persistPatient(buildPatient(2, new Date()));
+        VirtualDBMethodOutcome firstRead = patientEngine.getResource(new IdType("Patient/2"));
+        assertRetrieved(firstRead, VirtualDBReadLayerEnum.READ_LAYER_PERSISTENCE);
+        assertFalse(firstRead.getLayerTimingsInNanos().containsKey(VirtualDBReadLayerEnum.READ_LAYER_SOURCE_OF_TRUTH));
+        assertEquals(0, sourceOfTruth.getIdReviewCount());
+        assertEquals(0, sourceOfTruth.getIdentifierReviewCount());
+
+        VirtualDBMethodOutcome secondRead = patientEngine.getResource(new IdType("Patient/2"));
+        assertRetrieved(secondRead, VirtualDBReadLayerEnum.READ_LAYER_CACHE);
+        assertEquals(1, patientEngine.getPersistenceReadCount());
+    }
+
+    @Test
+    public void stalePersistedResourceIsRefreshedViaItsIdentifiers() {
+        LOG.debug(".stalePersistedResourceIsRefreshedViaItsIdentifiers(): Entry");
+        Date staleDate = new Date(System.currentTimeMillis() - 2 * REFRESH_PERIOD_IN_MILLIS);
+        patientEngine.persistPatient(buildPatient(3, staleDate));
+        Patient refreshedPatient = buildPatient(3, null);
+        refreshedPatient.addName().setFamily("Refreshed");
+        sourceOfTruth.addPatient(refreshedPatient);
+        VirtualDBMethodOutcome read = patientEngine.getResource(new IdType("Patient/3"));
+        assertRetrieved(read, VirtualDBReadLayerEnum.READ_LAYER_SOURCE_OF_TRUTH);
+        assertEquals("Refreshed", ((Patient)read.getResource()).getNameFirstRep().getFamily());
+        assertEquals(1, sourceOfTruth.getIdentifierReviewCount());
+        assertEquals(0, sourceOfTruth.getIdReviewCount());
+        assertEquals("Refreshed", patientEngine.getPersistedPatient("Patient/3").getNameFirstRep().getFamily());
+    }
+
+    @Test
+    public void stalePersistedResourceIsServedWhenSourcesOfTruthCannotProvideIt() {
+        LOG.debug(".stalePersistedResourceIsServedWhenSourcesOfTruthCannotProvideIt(): Entry");
+        Date staleDate = new Date(System.currentTimeMillis() - 2 * REFRESH_PERIOD_IN_MILLIS);
+        patientEngine.persistPatient(buildPatient(4, staleDate));
+        VirtualDBMethodOutcome read = patientEngine.getResource(new IdType("Patient/4"));
+        assertRetrieved(read, VirtualDBReadLayerEnum.READ_LAYER_PERSISTENCE);
+        assertEquals(3, read.getLayerTimingsInNanos().size());
+    }
+
+    @Test
+    public void resourceMissingFromEveryLayerFails() {
+        LOG.debug(".resourceMissingFromEveryLayerFails(): Entry");
+        VirtualDBMethodOutcome read = patientEngine.getResource(new IdType("Patient/5"));
+        assertFalse(read.hasResource());
+        assertFalse(read.getStatusEnum() == VirtualDBActionStatusEnum.REVIEW_FINISH);
+        assertNull(read.getResolvingLayer());
+        assertEquals(3, read.getLayerTimingsInNanos().size());
+        assertNull(patientEngine.getPersistedPatient("Patient/5"));
+    }
+
+    //
+    // Helpers
+    //
+
+    private void assertRetrieved(VirtualDBMethodOutcome outcome, VirtualDBReadLayerEnum expectedLayer){
+        assertEquals(VirtualDBActionStatusEnum.REVIEW_FINISH, outcome.getStatusEnum());
+        assertTrue(outcome.hasResource());
+        assertEquals(expectedLayer, outcome.getResolvingLayer());
+        assertTrue(outcome.hasLayerTimings());
+    }
+
+    private static Patient buildPatient(int patientNumber, Date lastUpdated){
+        Patient patient = new Patient();
+        patient.setId("Patient/" + patientNumber);
+        patient.addIdentifier(new Identifier().setSystem(MRN_SYSTEM).setValue("MRN-" + patientNumber));
+        if(lastUpdated != null){
+            patient.getMeta().setLastUpdated(lastUpdated);
+        }
+        return(patient);
+    }
+
+    private static VirtualDBMethodOutcome buildReviewOutcome(Resource resource){
+        VirtualDBMethodOutcome outcome = new VirtualDBMethodOutcome();
+        outcome.setCreated(false);
+        outcome.setCausalAction(VirtualDBActionTypeEnum.REVIEW);
+        if(resource == null){
+            outcome.setStatusEnum(VirtualDBActionStatusEnum.REVIEW_FAILURE);
+        } else {
+            outcome.setStatusEnum(VirtualDBActionStatusEnum.REVIEW_FINISH);
+            outcome.setResource(resource);
+        }
+        return(outcome);
+    }
+
+    //
+    // Stand-ins
+    //
+
+    static class TestPatientDBEngine extends ResourceDBEngine {
+        private static final Logger ENGINE_LOG = LoggerFactory.getLogger(TestPatientDBEngine.class);
+        private TestPatientCache patientCache;
+        private StandInSourceOfTruth sourceOfTruth;
+        private ConcurrentHashMap<String, Patient> persistedPatients;
+        private AtomicInteger persistenceReadCount;
+
+        TestPatientDBEngine(TestPatientCache patientCache, StandInSourceOfTruth sourceOfTruth){
+            this.patientCache = patientCache;
+            this.sourceOfTruth = sourceOfTruth;
+            this.persistedPatients = new ConcurrentHashMap<>();
+            this.persistenceReadCount = new AtomicInteger();
+        }
+
+        void persistPatient(Patient patient){
+            persistedPatients.put(patient.getIdElement().toUnqualifiedVersionless().getValue(), patient.copy());
+        }
+
+        Patient getPersistedPatient(String id){
+            return(persistedPatients.get(id));
+        }
+
+        int getPersistenceReadCount(){
+            return(persistenceReadCount.get());
+        }
+
+        @Override
+        protected VirtualDBMethodOutcome readFromPersistenceService(IdType id) {
+            persistenceReadCount.incrementAndGet();
+            Patient persistedPatient = persistedPatients.get(id.toUnqualifiedVersionless().getValue());
+            return(buildReviewOutcome(persistedPatient == null ? null : persistedPatient.copy()));
+        }
+
+        @Override
+        protected VirtualDBMethodOutcome writeToPersistenceService(Resource resource) {
+            persistPatient((Patient)resource);
+            VirtualDBMethodOutcome outcome = new VirtualDBMethodOutcome();
+            outcome.setCausalAction(VirtualDBActionTypeEnum.SYNC);
+            outcome.setStatusEnum(VirtualDBActionStatusEnum.SYNC_FINISHED);
+            return(outcome);
+        }
+
+        @Override
+        protected long specifyPersistedResourceRefreshPeriodInMillis() {
+            return (REFRESH_PERIOD_IN_MILLIS);
+        }
+
+        @Override
+        protected VirtualDBIdTypeBasedCacheBase specifyDBCache() {
+            return (patientCache);
+        }
+
+        @Override
+        protected ResourceSoTConduitController specifySourceOfTruthAggregator() {
+            return (sourceOfTruth);
+        }
+
+        @Override
+        protected PersistenceServiceBase specifyPersistenceService() {
+            return (null);
+        }
+
+        @Override
+        protected Logger getLogger() {
+            return (ENGINE_LOG);
+        }
+
+        @Override
+        protected ResourceType specifyResourceType() {
+            return (ResourceType.Patient);
+        }
+
+        @Override
+        protected List<Identifier> resolveIdentifierSet(Resource resource) {
+            return(((Patient)resource).getIdentifier());
+        }
+    }
+
+    static class StandInSourceOfTruth extends ResourceSoTConduitController {
+        private static final Logger SOT_LOG = LoggerFactory.getLogger(StandInSourceOfTruth.class);
+        private ConcurrentHashMap<String, Patient> patientsById = new ConcurrentHashMap<>();
+        private ConcurrentHashMap<String, Patient> patientsByIdentifier = new ConcurrentHashMap<>();
+        private AtomicInteger idReviewCount = new AtomicInteger();
+        private AtomicInteger identifierReviewCount = new AtomicInteger();
+
+        void addPatient(Patient patient){
+            patientsById.put(patient.getIdElement().toUnqualifiedVersionless().getValue(), patient);
+            for(Identifier identifier: patient.getIdentifier()){
+                patientsByIdentifier.put(identifier.getSystem() + "|" + identifier.getValue(), patient);
+            }
+        }
+
+        int getIdReviewCount(){
+            return(idReviewCount.get());
+        }
+
+        int getIdentifierReviewCount(){
+            return(identifierReviewCount.get());
+        }
+
+        @Override
+        public VirtualDBMethodOutcome reviewResource(IdType id) {
+            idReviewCount.incrementAndGet();
+            Patient patient = patientsById.get(id.toUnqualifiedVersionless().getValue());
+            return(buildReviewOutcome(patient == null ? null : patient.copy()));
+        }
+
+        @Override
+        public VirtualDBMethodOutcome reviewResource(Identifier identifier) {
+            identifierReviewCount.incrementAndGet();
+            Patient patient = patientsByIdentifier.get(identifier.getSystem() + "|" + identifier.getValue());
+            return(buildReviewOutcome(patient == null ? null : patient.copy()));
+        }
+
+        @Override
+        protected Logger getLogger() {
+            return (SOT_LOG);
+        }
+
+        @Override
+        protected ResourceType specifyResourceType() {
+            return (ResourceType.Patient);
+        }
+
+        @Override
+        protected ResourceContentAggregationServiceBase specifyAggregationService() {
+            return (null);
+        }
+    }
+
+    static class TestPatientCache extends VirtualDBIdTypeBasedCacheBase {
+        private static final Logger CACHE_LOG = LoggerFactory.getLogger(TestPatientCache.class);
+
+        @Override
+        protected Logger getLogger() {
+            return (CACHE_LOG);
+        }
+
+        @Override
+        protected int specifyCacheElementRetirementInSeconds() {
+            return (3600);
+        }
+
+        @Override
+        protected boolean areTheSame(Resource a, Resource b) {
+            if(a == null || b == null){
+                return(a == b);
+            }
+            return(a.equalsDeep(b));
+        }
+
+        @Override
+        protected List<Identifier> resolveIdentifierSet(Resource resourceToAdd) {
+            if(resourceToAdd == null){
+                return(new ArrayList<>());
+            }
+            return(((Patient)resourceToAdd).getIdentifier());
+        }
+
+        @Override
+        protected void addIdentifierToResource(Identifier identifierToAdd, Resource resource) {
+            ((Patient)resource).addIdentifier(identifierToAdd);
+        }
+
+        @Override
+        protected String getCacheClassName() {
+            return ("TestPatient");
+        }
+
+        @Override
+        protected Resource createClonedResource(Resource resource) {
+            return(((Patient)resource).copy());
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package net.fhirfactory.pegacorn.ladon.virtualdb.engine.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Serializable;
+import java.lang.reflect.Field;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.operations.VirtualDBActionStatusEnum;
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.operations.VirtualDBActionTypeEnum;
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.operations.VirtualDBMethodOutcome;
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.operations.VirtualDBMethodOutcomeFactory;
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.searches.SearchNameEnum;
+import net.fhirfactory.pegacorn.ladon.virtualdb.cache.common.VirtualDBIdTypeBasedCacheBase;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.OperationOutcome;
+import org.hl7.fhir.r4.model.Patient;
+import org.hl7.fhir.r4.model.Property;
+import org.hl7.fhir.r4.model.Resource;
+import org.hl7.fhir.r4.model.ResourceType;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Exercises the interaction between the ResourceDBEngine's search result cache and writes to the Sources-of-Truth,
+ * in particular a search that runs while a write is still in progress.
+ */
+public class ResourceDBEngineSearchCacheTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ResourceDBEngineSearchCacheTest.class);
+
+    private static final String MATCHING_FAMILY = "Smith";
+
+    private WritableSourceOfTruth sourceOfTruth;
+    private ResourceDBEngineReadThroughTest.TestPatientDBEngine patientEngine;
+
+    @Before
+    public void setUp() throws Exception {
+        VirtualDBMethodOutcomeFactory outcomeFactory = new VirtualDBMethodOutcomeFactory();
+        ResourceDBEngineReadThroughTest.TestPatientCache patientCache = new ResourceDBEngineReadThroughTest.TestPatientCache();
+        Field cacheOutcomeFactoryField = VirtualDBIdTypeBasedCacheBase.class.getDeclaredField("outcomeFactory");
+        cacheOutcomeFactoryField.setAccessible(true);
+        cacheOutcomeFactoryField.set(patientCache, outcomeFactory);
+        sourceOfTruth = new WritableSourceOfTruth(buildPatient(MATCHING_FAMILY));
+        patientEngine = new ResourceDBEngineReadThroughTest.TestPatientDBEngine(patientCache, sourceOfTruth);
+        Field engineOutcomeFactoryField = ResourceDBEngine.class.getDeclaredField("outcomeFactory");
+        engineOutcomeFactoryField.setAccessible(true);
+        engineOutcomeFactoryField.set(patientEngine, outcomeFactory);
+    }
+
+    @Test
+    public void repeatedSearchIsServedFromTheSearchResultCache() {
+        LOG.debug(".repeatedSearchIsServedFromTheSearchResultCache(): Entry");
+        assertEquals(1, search().getTotal());
+        assertEquals(1, search().getTotal());
+        assertEquals(1, sourceOfTruth.getSearchCount());
+    }
+
+    @Test
+    public void searchDuringAWriteDoesNotLeaveAStaleResultCached() throws Exception {
+        LOG.debug(".searchDuringAWriteDoesNotLeaveAStaleResultCached(): Entry");
+        CountDownLatch writeStarted = new CountDownLatch(1);
+        CountDownLatch releaseWrite = new CountDownLatch(1);
+        sourceOfTruth.holdWritesUntil(writeStarted, releaseWrite);
+        Thread writer = new Thread(() -> patientEngine.updateResource(buildPatient("Jones")));
+        writer.start();
+        assertTrue(writeStarted.await(5, TimeUnit.SECONDS));
+
+        // The write hasn't reached the Sources-of-Truth yet, so this search still sees (and caches) the old membership
+        assertEquals(1, search().getTotal());
+
+        releaseWrite.countDown();
+        writer.join(TimeUnit.SECONDS.toMillis(5));
+        assertEquals(VirtualDBActionStatusEnum.UPDATE_FINISH, sourceOfTruth.getLastWriteStatus());
+
+        Bundle afterWrite = search();
+        assertEquals(2, sourceOfTruth.getSearchCount());
+        assertEquals(0, afterWrite.getTotal());
+    }
+
+    @Test
+    public void failedWriteLeavesCachedSearchResultsInPlace() {
+        LOG.debug(".failedWriteLeavesCachedSearchResultsInPlace(): Entry");
+        assertEquals(1, search().getTotal());
+        sourceOfTruth.failWrites();
+        patientEngine.updateResource(buildPatient("Jones"));
+        assertEquals(VirtualDBActionStatusEnum.UPDATE_FAILURE, sourceOfTruth.getLastWriteStatus());
+        assertEquals(1, search().getTotal());
+        assertEquals(1, sourceOfTruth.getSearchCount());
+    }
+
+    @Test
+    public void incompleteSearchResultIsNotCached() {
+        LOG.debug(".incompleteSearchResultIsNotCached(): Entry");
+        sourceOfTruth.timeOutSearches();
+        assertEquals(1, search().getTotal());
+        assertEquals(1, search().getTotal());
+        assertEquals(2, sourceOfTruth.getSearchCount());
+    }
+
+    //
+    // Helpers
+    //
+
+    private Bundle search(){
+        Map<Property, Serializable> parameterSet = new HashMap<>();
+        VirtualDBMethodOutcome outcome = patientEngine.getResourcesViaSearchCriteria(ResourceType.Patient, SearchNameEnum.PATIENT_QRY_A19, parameterSet);
+        assertEquals(VirtualDBActionStatusEnum.SEARCH_FINISHED, outcome.getStatusEnum());
+        return((Bundle)outcome.getResource());
+    }
+
+    private static Patient buildPatient(String family){
+        Patient patient = new Patient();
+        patient.setId("Patient/1");
+        patient.addName().setFamily(family);
+        return(patient);
+    }
+
+    //
+    // Stand-ins
+    //
+
+    /**
+     * A single-Patient Source-of-Truth whose search matches on family name, and whose writes can be held part way
+     * through (after being accepted, but before being applied).
+     */
+    static class WritableSourceOfTruth extends ResourceDBEngineReadThroughTest.StandInSourceOfTruth {
+        private AtomicReference<Patient> currentPatient;
+        private AtomicInteger searchCount = new AtomicInteger();
+        private volatile CountDownLatch writeStarted;
+        private volatile CountDownLatch releaseWrite;
+        private volatile boolean failWrites;
+        private volatile boolean timeOutSearches;
+        private volatile VirtualDBActionStatusEnum lastWriteStatus;
+
+        WritableSourceOfTruth(Patient patient){
+            this.currentPatient = new AtomicReference<>(patient);
+        }
+
+        void holdWritesUntil(CountDownLatch writeStarted, CountDownLatch releaseWrite){
+            this.writeStarted = writeStarted;
+            this.releaseWrite = releaseWrite;
+        }
+
+        void failWrites(){
+            this.failWrites = true;
+        }
+
+        // Searches still finish, but report a Source-of-Truth conduit as timed-out
+        void timeOutSearches(){
+            this.timeOutSearches = true;
+        }
+
+        int getSearchCount(){
+            return(searchCount.get());
+        }
+
+        VirtualDBActionStatusEnum getLastWriteStatus(){
+            return(lastWriteStatus);
+        }
+
+        @Override
+        public VirtualDBMethodOutcome updateResource(Resource resourceToUpdate) {
+            if(writeStarted != null){
+                writeStarted.countDown();
+                try {
+                    releaseWrite.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            VirtualDBMethodOutcome outcome = new VirtualDBMethodOutcome();
+            outcome.setCausalAction(VirtualDBActionTypeEnum.UPDATE);
+            if(failWrites){
+                outcome.setStatusEnum(VirtualDBActionStatusEnum.UPDATE_FAILURE);
+            } else {
+                currentPatient.set(((Patient)resourceToUpdate).copy());
+                outcome.setStatusEnum(VirtualDBActionStatusEnum.UPDATE_FINISH);
+                outcome.setResource(resourceToUpdate);
+            }
+            lastWriteStatus = outcome.getStatusEnum();
+            return(outcome);
+        }
+
+        @Override
+        public VirtualDBMethodOutcome getResourcesViaSearchCriteria(ResourceType resourceType, SearchNameEnum searchName, Map<Property, Serializable> parameterSet) {
+            searchCount.incrementAndGet();
+            Bundle searchResultBundle = new Bundle();
+            searchResultBundle.setType(Bundle.BundleType.SEARCHSET);
+            Patient patient = currentPatient.get();
+            if(MATCHING_FAMILY.equals(patient.getNameFirstRep().getFamily())){
+                searchResultBundle.addEntry().setResource(patient.copy());
+            }
+            searchResultBundle.setTotal(searchResultBundle.getEntry().size());
+            VirtualDBMethodOutcome outcome = new VirtualDBMethodOutcome();
+            outcome.setCausalAction(VirtualDBActionTypeEnum.SEARCH);
+            outcome.setStatusEnum(VirtualDBActionStatusEnum.SEARCH_FINISHED);
+            outcome.setResource(searchResultBundle);
+            if(timeOutSearches){
+                OperationOutcome opOutcome = new OperationOutcome();
+                opOutcome.addIssue().setSeverity(OperationOutcome.IssueSeverity.WARNING).setCode(OperationOutcome.IssueType.TIMEOUT).setDiagnostics("PatientSoTConduitController::conduit-b");
+                outcome.setOperationOutcome(opOutcome);
+            }
+            return(outcome);
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package net.fhirfactory.pegacorn.ladon.virtualdb.engine.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.operations.VirtualDBActionStatusEnum;
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.operations.VirtualDBMethodOutcome;
+import org.hl7.fhir.r4.model.OperationOutcome;
+import org.hl7.fhir.r4.model.Patient;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class VirtualDBSingleFlightLoaderTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(VirtualDBSingleFlightLoaderTest.class);
+
+    private static final int CALLER_COUNT = 16;
+    private static final long MAXIMUM_WAIT_IN_MILLIS = 10000;
+
+    @Test
+    public void concurrentMissesShareOneLoad() throws Exception {
+        LOG.debug(".concurrentMissesShareOneLoad(): Entry");
+        VirtualDBSingleFlightLoader loader = new VirtualDBSingleFlightLoader();
+        AtomicInteger loadInvocations = new AtomicInteger();
+        CountDownLatch releaseLoad = new CountDownLatch(1);
+        VirtualDBMethodOutcome loadedOutcome = buildOutcome(VirtualDBActionStatusEnum.REVIEW_FINISH);
+        List<Future<VirtualDBMethodOutcome>> results = runCallers(loader, () -> {
+            loadInvocations.incrementAndGet();
+            awaitQuietly(releaseLoad);
+            return(loadedOutcome);
+        }, MAXIMUM_WAIT_IN_MILLIS);
+        waitForAttachedCallers(loader, CALLER_COUNT - 1);
+        releaseLoad.countDown();
+        // The leader is given the loaded outcome, each attached caller a copy of it
+        assertSame(loadedOutcome, results.get(0).get(MAXIMUM_WAIT_IN_MILLIS, TimeUnit.MILLISECONDS));
+        for(Future<VirtualDBMethodOutcome> result: results.subList(1, results.size())){
+            VirtualDBMethodOutcome outcome = result.get(MAXIMUM_WAIT_IN_MILLIS, TimeUnit.MILLISECONDS);
+            assertNotSame(loadedOutcome, outcome);
+            assertEquals(VirtualDBActionStatusEnum.REVIEW_FINISH, outcome.getStatusEnum());
+        }
+        assertEquals(1, loadInvocations.get());
+        assertEquals(1, loader.getLoadCount());
+        assertEquals(CALLER_COUNT - 1, loader.getCoalescedCount());
+        assertEquals(0, loader.getInFlightCount());
+    }
+
+    @Test
+    public void attachedCallersReceiveTheirOwnCopy() throws Exception {
+        LOG.debug(".attachedCallersReceiveTheirOwnCopy(): Entry");
+        VirtualDBSingleFlightLoader loader = new VirtualDBSingleFlightLoader();
+        CountDownLatch releaseLoad = new CountDownLatch(1);
+        VirtualDBMethodOutcome loadedOutcome = buildOutcome(VirtualDBActionStatusEnum.REVIEW_FINISH);
+        Patient loadedPatient = new Patient();
+        loadedPatient.setId("Patient/1");
+        loadedPatient.addName().setFamily("Loaded");
+        loadedOutcome.setResource(loadedPatient);
+        OperationOutcome loadedOperationOutcome = new OperationOutcome();
+        loadedOperationOutcome.addIssue().setDiagnostics("Loaded");
+        loadedOutcome.setOperationOutcome(loadedOperationOutcome);
+        List<Future<VirtualDBMethodOutcome>> results = runCallers(loader, () -> {
+            awaitQuietly(releaseLoad);
+            return(loadedOutcome);
+        }, MAXIMUM_WAIT_IN_MILLIS);
+        waitForAttachedCallers(loader, CALLER_COUNT - 1);
+        releaseLoad.countDown();
+        // Every caller modifies what it was given, as a caller decorating its outcome would
+        List<VirtualDBMethodOutcome> outcomes = new ArrayList<>();
+        for(int caller = 0; caller < results.size(); caller++){
+            VirtualDBMethodOutcome outcome = results.get(caller).get(MAXIMUM_WAIT_IN_MILLIS, TimeUnit.MILLISECONDS);
+            ((Patient)outcome.getResource()).getNameFirstRep().setFamily("Caller-" + caller);
+            ((OperationOutcome)outcome.getOperationOutcome()).addIssue().setDiagnostics("Caller-" + caller);
+            outcomes.add(outcome);
+        }
+        for(int caller = 0; caller < outcomes.size(); caller++){
+            VirtualDBMethodOutcome outcome = outcomes.get(caller);
+            assertEquals("Caller-" + caller, ((Patient)outcome.getResource()).getNameFirstRep().getFamily());
+            assertEquals("Patient/1", outcome.getResource().getIdElement().getValue());
+            assertEquals(2, ((OperationOutcome)outcome.getOperationOutcome()).getIssue().size());
+        }
+    }
+
+    @Test
+    public void failureIsSharedWithAttachedCallers() throws Exception {
+        LOG.debug(".failureIsSharedWithAttachedCallers(): Entry");
+        VirtualDBSingleFlightLoader loader = new VirtualDBSingleFlightLoader();
+        CountDownLatch releaseLoad = new CountDownLatch(1);
+        List<Future<VirtualDBMethodOutcome>> results = runCallers(loader, () -> {
+            awaitQuietly(releaseLoad);
+            throw new IllegalStateException("SoT unavailable");
+        }, MAXIMUM_WAIT_IN_MILLIS);
+        waitForAttachedCallers(loader, CALLER_COUNT - 1);
+        releaseLoad.countDown();
+        for(Future<VirtualDBMethodOutcome> result: results){
+            try {
+                result.get(MAXIMUM_WAIT_IN_MILLIS, TimeUnit.MILLISECONDS);
+                fail("Expected the load failure to be shared");
+            } catch(ExecutionException ex){
+                assertTrue(ex.getCause() instanceof IllegalStateException);
+            }
+        }
+        assertEquals(1, loader.getFailureCount());
+        assertEquals(0, loader.getInFlightCount());
+    }
+
+    @Test
+    public void attachedCallersWaitIsBounded() throws Exception {
+        LOG.debug(".attachedCallersWaitIsBounded(): Entry");
+        VirtualDBSingleFlightLoader loader = new VirtualDBSingleFlightLoader();
+        CountDownLatch releaseLoad = new CountDownLatch(1);
+        VirtualDBMethodOutcome loadedOutcome = buildOutcome(VirtualDBActionStatusEnum.REVIEW_FINISH);
+        List<Future<VirtualDBMethodOutcome>> results = runCallers(loader, () -> {
+            awaitQuietly(releaseLoad);
+            return(loadedOutcome);
+        }, 50);
+        long waitDeadline = System.currentTimeMillis() + MAXIMUM_WAIT_IN_MILLIS;
+        while(loader.getTimeoutCount() < CALLER_COUNT - 1 && System.currentTimeMillis() < waitDeadline){
+            Thread.sleep(10);
+        }
+        releaseLoad.countDown();
+        int timedOut = 0;
+        for(Future<VirtualDBMethodOutcome> result: results){
+            VirtualDBMethodOutcome outcome = result.get(MAXIMUM_WAIT_IN_MILLIS, TimeUnit.MILLISECONDS);
+            if(outcome.getStatusEnum() == VirtualDBActionStatusEnum.REVIEW_FAILURE){
+                timedOut += 1;
+            }
+        }
+        assertEquals(CALLER_COUNT - 1, timedOut);
+        assertEquals(CALLER_COUNT - 1, loader.getTimeoutCount());
+    }
+
+    //
+    // Helpers
+    //
+
+    private List<Future<VirtualDBMethodOutcome>> runCallers(VirtualDBSingleFlightLoader loader, Supplier<VirtualDBMethodOutcome> load, long maximumWaitInMillis) throws Exception {
+        ExecutorService callerPool = Executors.newFixedThreadPool(CALLER_COUNT);
+        List<Future<VirtualDBMethodOutcome>> results = new ArrayList<>();
+        // The first caller becomes the leader before the others are started
+        results.add(callerPool.submit(() -> loader.load("Patient|identifier|urn:test|*|1", load, maximumWaitInMillis, () -> buildOutcome(VirtualDBActionStatusEnum.REVIEW_FAILURE))));
+        long waitDeadline = System.currentTimeMillis() + MAXIMUM_WAIT_IN_MILLIS;
+        while(loader.getInFlightCount() == 0 && System.currentTimeMillis() < waitDeadline){
+            Thread.sleep(1);
+        }
+        for(int caller = 1; caller < CALLER_COUNT; caller++){
+            results.add(callerPool.submit(() -> loader.load("Patient|identifier|urn:test|*|1", load, maximumWaitInMillis, () -> buildOutcome(VirtualDBActionStatusEnum.REVIEW_FAILURE))));
+        }
+        callerPool.shutdown();
+        return(results);
+    }
+
+    private void waitForAttachedCallers(VirtualDBSingleFlightLoader loader, int expectedCount) throws InterruptedException {
+        long waitDeadline = System.currentTimeMillis() + MAXIMUM_WAIT_IN_MILLIS;
+        while(loader.getCoalescedCount() < expectedCount && System.currentTimeMillis() < waitDeadline){
+            Thread.sleep(1);
+        }
+        assertEquals(expectedCount, loader.getCoalescedCount());
+    }
+
+    private void awaitQuietly(CountDownLatch latch){
+        try {
+            latch.await(MAXIMUM_WAIT_IN_MILLIS, TimeUnit.MILLISECONDS);
+        } catch(InterruptedException ex){
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private VirtualDBMethodOutcome buildOutcome(VirtualDBActionStatusEnum status){
+        VirtualDBMethodOutcome outcome = new VirtualDBMethodOutcome();
+        outcome.setStatusEnum(status);
+        return(outcome);
+    }
+}
@@ -0,0 +1,265 @@
+package net.fhirfactory.pegacorn.ladon.virtualdb.persistence.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import ca.uhn.fhir.rest.api.MethodOutcome;
+import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
+import ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Patient;
+import org.junit.After;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class PersistenceBundleBatchWriterTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PersistenceBundleBatchWriterTest.class);
+
+    private static final long MAXIMUM_WAIT_IN_MILLIS = 10000;
+    private static final long LONG_LINGER_IN_MILLIS = 500;
+
+    private PersistenceBundleBatchWriter writer;
+
+    @After
+    public void shutdownWriter() {
+        if(writer != null){
+            writer.shutdown(MAXIMUM_WAIT_IN_MILLIS);
+        }
+    }
+
+    @Test
+    public void concurrentWritesShareABundle() throws Exception {
+        LOG.debug(".concurrentWritesShareABundle(): Entry");
+        RecordingServer server = new RecordingServer();
+        writer = new PersistenceBundleBatchWriter("test", server, 10, LONG_LINGER_IN_MILLIS);
+        ExecutorService callers = Executors.newFixedThreadPool(5);
+        try {
+            List<Future<MethodOutcome>> outcomes = new ArrayList<>();
+            for(int counter = 0; counter < 5; counter++){
+                Patient patient = newPatient("p" + counter);
+                outcomes.add(callers.submit(() -> writer.write(Bundle.HTTPVerb.PUT, patient)));
+            }
+            for(int counter = 0; counter < 5; counter++){
+                MethodOutcome outcome = outcomes.get(counter).get(MAXIMUM_WAIT_IN_MILLIS, TimeUnit.MILLISECONDS);
+                assertEquals("p" + counter, outcome.getResource().getIdElement().getIdPart());
+            }
+        } finally {
+            callers.shutdownNow();
+        }
+        assertEquals(1, server.getRequests().size());
+        Bundle request = server.getRequests().get(0);
+        assertEquals(Bundle.BundleType.BATCH, request.getType());
+        assertEquals(5, request.getEntry().size());
+        assertEquals(1, writer.getBundleCount());
+        assertEquals(5, writer.getEntryCount());
+    }
+
+    @Test
+    public void entryResponsesMapToMethodOutcomes() {
+        LOG.debug(".entryResponsesMapToMethodOutcomes(): Entry");
+        RecordingServer server = new RecordingServer();
+        writer = new PersistenceBundleBatchWriter("test", server, 10, 0);
+        MethodOutcome created = writer.write(Bundle.HTTPVerb.POST, new Patient());
+        assertTrue(created.getCreated());
+        assertEquals("Patient/generated-1/_history/1", created.getId().getValue());
+        assertEquals("generated-1", created.getResource().getIdElement().getIdPart());
+        assertEquals("1", created.getResource().getMeta().getVersionId());
+        MethodOutcome updated = writer.write(Bundle.HTTPVerb.PUT, newPatient("existing"));
+        assertFalse(updated.getCreated());
+        assertEquals("existing", updated.getResource().getIdElement().getIdPart());
+        Bundle.BundleEntryComponent putEntry = server.getRequests().get(1).getEntryFirstRep();
+        assertEquals("Patient/existing", putEntry.getRequest().getUrl());
+        assertFalse(putEntry.hasFullUrl());
+        assertEquals(Bundle.BundleType.BATCH, server.getRequests().get(1).getType());
+    }
+
+    @Test
+    public void failedEntryRaisesItsStatus() {
+        LOG.debug(".failedEntryRaisesItsStatus(): Entry");
+        RecordingServer server = new RecordingServer();
+        server.setEntryStatus("404 Not Found");
+        writer = new PersistenceBundleBatchWriter("test", server, 10, 0);
+        try {
+            writer.write(Bundle.HTTPVerb.PUT, newPatient("missing"));
+            fail("A 404 entry response should raise ResourceNotFoundException");
+        } catch(ResourceNotFoundException expected){
+            LOG.trace(".failedEntryRaisesItsStatus(): expected --> {}", expected.getMessage());
+        }
+    }
+
+    @Test
+    public void lingerFlushesALoneWrite() {
+        LOG.debug(".lingerFlushesALoneWrite(): Entry");
+        RecordingServer server = new RecordingServer();
+        writer = new PersistenceBundleBatchWriter("test", server, 100, 20);
+        long startTime = System.currentTimeMillis();
+        writer.write(Bundle.HTTPVerb.PUT, newPatient("alone"));
+        assertTrue(System.currentTimeMillis() - startTime < MAXIMUM_WAIT_IN_MILLIS);
+        assertEquals(1, server.getRequests().size());
+    }
+
+    @Test
+    public void writesQueuedBehindABundleInFlightShareTheNext() throws Exception {
+        LOG.debug(".writesQueuedBehindABundleInFlightShareTheNext(): Entry");
+        CountDownLatch firstRequestStarted = new CountDownLatch(1);
+        CountDownLatch releaseFirstRequest = new CountDownLatch(1);
+        RecordingServer server = new RecordingServer();
+        Function<Bundle, Bundle> gatedServer = request -> {
+            if(firstRequestStarted.getCount() > 0){
+                firstRequestStarted.countDown();
+                try {
+                    releaseFirstRequest.await(MAXIMUM_WAIT_IN_MILLIS, TimeUnit.MILLISECONDS);
+                } catch(InterruptedException interrupted){
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return(server.apply(request));
+        };
+        writer = new PersistenceBundleBatchWriter("test", gatedServer, 10, 0);
+        ExecutorService callers = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<MethodOutcome>> outcomes = new ArrayList<>();
+            outcomes.add(callers.submit(() -> writer.write(Bundle.HTTPVerb.PUT, newPatient("first"))));
+            assertTrue(firstRequestStarted.await(MAXIMUM_WAIT_IN_MILLIS, TimeUnit.MILLISECONDS));
+            for(int counter = 0; counter < 3; counter++){
+                Patient patient = newPatient("p" + counter);
+                outcomes.add(callers.submit(() -> writer.write(Bundle.HTTPVerb.PUT, patient)));
+            }
+            long deadline = System.currentTimeMillis() + MAXIMUM_WAIT_IN_MILLIS;
+            while(writer.getPendingWriteCount() < 3 && System.currentTimeMillis() < deadline){
+                Thread.sleep(1);
+            }
+            releaseFirstRequest.countDown();
+            for(Future<MethodOutcome> outcome: outcomes){
+                outcome.get(MAXIMUM_WAIT_IN_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        } finally {
+            releaseFirstRequest.countDown();
+            callers.shutdownNow();
+        }
+        assertEquals(2, server.getRequests().size());
+        assertEquals(1, server.getRequests().get(0).getEntry().size());
+        assertEquals(3, server.getRequests().get(1).getEntry().size());
+    }
+
+    @Test
+    public void batchSizeBoundsEachBundle() throws Exception {
+        LOG.debug(".batchSizeBoundsEachBundle(): Entry");
+        RecordingServer server = new RecordingServer();
+        writer = new PersistenceBundleBatchWriter("test", server, 3, LONG_LINGER_IN_MILLIS);
+        ExecutorService callers = Executors.newFixedThreadPool(7);
+        try {
+            List<Future<MethodOutcome>> outcomes = new ArrayList<>();
+            for(int counter = 0; counter < 7; counter++){
+                Patient patient = newPatient("p" + counter);
+                outcomes.add(callers.submit(() -> writer.write(Bundle.HTTPVerb.PUT, patient)));
+            }
+            for(Future<MethodOutcome> outcome: outcomes){
+                outcome.get(MAXIMUM_WAIT_IN_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        } finally {
+            callers.shutdownNow();
+        }
+        for(Bundle request: server.getRequests()){
+            assertTrue(request.getEntry().size() <= 3);
+        }
+        assertEquals(7, writer.getEntryCount());
+    }
+
+    @Test
+    public void failedRequestFailsEveryWrite() throws Exception {
+        LOG.debug(".failedRequestFailsEveryWrite(): Entry");
+        Function<Bundle, Bundle> brokenServer = request -> {
+            throw(new InternalErrorException("server unavailable"));
+        };
+        writer = new PersistenceBundleBatchWriter("test", brokenServer, 10, LONG_LINGER_IN_MILLIS);
+        ExecutorService callers = Executors.newFixedThreadPool(3);
+        AtomicInteger failures = new AtomicInteger();
+        try {
+            List<Future<?>> outcomes = new ArrayList<>();
+            for(int counter = 0; counter < 3; counter++){
+                Patient patient = newPatient("p" + counter);
+                outcomes.add(callers.submit(() -> {
+                    try {
+                        writer.write(Bundle.HTTPVerb.PUT, patient);
+                    } catch(InternalErrorException expected){
+                        failures.incrementAndGet();
+                    }
+                }));
+            }
+            for(Future<?> outcome: outcomes){
+                outcome.get(MAXIMUM_WAIT_IN_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        } finally {
+            callers.shutdownNow();
+        }
+        assertEquals(3, failures.get());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void writeAfterShutdownIsRejected() {
+        LOG.debug(".writeAfterShutdownIsRejected(): Entry");
+        writer = new PersistenceBundleBatchWriter("test", new RecordingServer(), 10, 0);
+        writer.shutdown(MAXIMUM_WAIT_IN_MILLIS);
+        writer.write(Bundle.HTTPVerb.PUT, newPatient("late"));
+    }
+
+    private static Patient newPatient(String id){
+        Patient patient = new Patient();
+        patient.setId(id);
+        return(patient);
+    }
+
+    /**
+     * Stands in for the persistence server: answers each entry with the configured status, a location and no
+     * resource body (so the writer has to echo the submitted resource back).
+     */
+    static class RecordingServer implements Function<Bundle, Bundle> {
+        private final List<Bundle> requests = Collections.synchronizedList(new ArrayList<>());
+        private final AtomicInteger generatedIds = new AtomicInteger();
+        private volatile String entryStatus;
+
+        public List<Bundle> getRequests() {
+            return requests;
+        }
+
+        public void setEntryStatus(String entryStatus) {
+            this.entryStatus = entryStatus;
+        }
+
+        @Override
+        public Bundle apply(Bundle request) {
+            requests.add(request);
+            Bundle response = new Bundle();
+            response.setType(Bundle.BundleType.BATCHRESPONSE);
+            for(Bundle.BundleEntryComponent entry: request.getEntry()){
+                Bundle.BundleEntryResponseComponent entryResponse = response.addEntry().getResponse();
+                if(entryStatus != null){
+                    entryResponse.setStatus(entryStatus);
+                } else if(entry.getRequest().getMethod() == Bundle.HTTPVerb.POST){
+                    entryResponse.setStatus("201 Created");
+                    entryResponse.setLocation("Patient/generated-" + generatedIds.incrementAndGet() + "/_history/1");
+                } else {
+                    entryResponse.setStatus("200 OK");
+                    entryResponse.setLocation(entry.getRequest().getUrl() + "/_history/2");
+                }
+            }
+            return(response);
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package net.fhirfactory.pegacorn.ladon.virtualdb.snapshot;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import ca.uhn.fhir.context.FhirContext;
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.operations.VirtualDBActionStatusEnum;
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.operations.VirtualDBMethodOutcome;
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.operations.VirtualDBMethodOutcomeFactory;
+import net.fhirfactory.pegacorn.ladon.virtualdb.cache.common.VirtualDBIdTypeBasedCacheBase;
+import org.hl7.fhir.r4.model.IdType;
+import org.hl7.fhir.r4.model.Identifier;
+import org.hl7.fhir.r4.model.Patient;
+import org.hl7.fhir.r4.model.Resource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class ResourceSnapshotServiceTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ResourceSnapshotServiceTest.class);
+
+    private static final FhirContext FHIR_CONTEXT = FhirContext.forR4();
+    private static final String MRN_SYSTEM = "urn:pegacorn:test:mrn";
+
+    private File snapshotDirectory;
+
+    @Before
+    public void createSnapshotDirectory() throws Exception {
+        snapshotDirectory = Files.createTempDirectory("ResourceSnapshotServiceTest").toFile();
+    }
+
+    @After
+    public void removeSnapshotDirectory() {
+        File[] remaining = snapshotDirectory.listFiles();
+        if(remaining != null){
+            for(File snapshotFile: remaining){
+                snapshotFile.delete();
+            }
+        }
+        snapshotDirectory.delete();
+    }
+
+    @Test
+    public void restartedCacheIsRestoredFromTheSnapshot() throws Exception {
+        LOG.debug(".restartedCacheIsRestoredFromTheSnapshot(): Entry");
+        TestSnapshotService snapshotService = newSnapshotService();
+        SnapshotPatientCache patientCache = newPatientCache(3600);
+        assertEquals(0, snapshotService.attach(patientCache));
+        for(int patientNumber = 0; patientNumber < 20; patientNumber++){
+            patientCache.createResource(buildPatient(patientNumber, 0));
+        }
+        patientCache.syncResource(buildPatient(3, 1));
+        patientCache.deleteResource(buildPatient(7, 0));
+        assertEquals(19, snapshotService.writeSnapshots());
+        snapshotService.shutdown();
+
+        TestSnapshotService restartedService = newSnapshotService();
+        SnapshotPatientCache restartedCache = newPatientCache(3600);
+        assertEquals(19, restartedService.attach(restartedCache));
+        assertEquals(19, restartedCache.getCacheSize());
+        assertFound(restartedCache, "Patient/3", "MRN-3-1");
+        assertFound(restartedCache, "Patient/12", "MRN-12-0");
+        assertEquals(VirtualDBActionStatusEnum.REVIEW_RESOURCE_NOT_IN_CACHE, restartedCache.getResource(new IdType("Patient/7")).getStatusEnum());
+        // The Identifier Index is rebuilt as the Resources are restored
+        VirtualDBMethodOutcome byIdentifier = restartedCache.getResource(buildMRNIdentifier(12, 0));
+        assertEquals(VirtualDBActionStatusEnum.REVIEW_FINISH, byIdentifier.getStatusEnum());
+        restartedService.shutdown();
+    }
+
+    @Test
+    public void onlyChangesSinceTheLastSnapshotAreWritten() throws Exception {
+        LOG.debug(".onlyChangesSinceTheLastSnapshotAreWritten(): Entry");
+        TestSnapshotService snapshotService = newSnapshotService();
+        SnapshotPatientCache patientCache = newPatientCache(3600);
+        snapshotService.attach(patientCache);
+        for(int patientNumber = 0; patientNumber < 10; patientNumber++){
+            patientCache.createResource(buildPatient(patientNumber, 0));
+        }
+        assertEquals(10, snapshotService.writeSnapshots());
+        assertEquals(0, snapshotService.writeSnapshots());
+        patientCache.syncResource(buildPatient(4, 1));
+        patientCache.deleteResource(buildPatient(5, 0));
+        assertEquals(2, snapshotService.writeSnapshots());
+        snapshotService.shutdown();
+
+        // The restored Resources are not themselves reported as changes
+        TestSnapshotService restartedService = newSnapshotService();
+        SnapshotPatientCache restartedCache = newPatientCache(3600);
+        assertEquals(9, restartedService.attach(restartedCache));
+        assertEquals(0, restartedService.writeSnapshots());
+        assertEquals(9, restartedService.getSnapshotWriter(restartedCache.getCacheName()).getSnapshotFile().getLiveCount());
+        restartedService.shutdown();
+    }
+
+    @Test
+    public void expiredEntriesAreNotRestored() throws Exception {
+        LOG.debug(".expiredEntriesAreNotRestored(): Entry");
+        TestSnapshotService snapshotService = newSnapshotService();
+        SnapshotPatientCache patientCache = newPatientCache(1);
+        snapshotService.attach(patientCache);
+        patientCache.createResource(buildPatient(1, 0));
+        patientCache.setRetirementInSeconds(3600);
+        patientCache.createResource(buildPatient(2, 0));
+        snapshotService.shutdown();
+        Thread.sleep(1100);
+
+        TestSnapshotService restartedService = newSnapshotService();
+        SnapshotPatientCache restartedCache = newPatientCache(3600);
+        assertEquals(1, restartedService.attach(restartedCache));
+        assertFound(restartedCache, "Patient/2", "MRN-2-0");
+        restartedService.shutdown();
+    }
+
+    //
+    // Helpers
+    //
+
+    private TestSnapshotService newSnapshotService(){
+        TestSnapshotService snapshotService = new TestSnapshotService(snapshotDirectory);
+        snapshotService.initialise();
+        return(snapshotService);
+    }
+
+    static SnapshotPatientCache newPatientCache(int retirementInSeconds) throws Exception {
+        SnapshotPatientCache patientCache = new SnapshotPatientCache();
+        patientCache.setRetirementInSeconds(retirementInSeconds);
+        Field outcomeFactoryField = VirtualDBIdTypeBasedCacheBase.class.getDeclaredField("outcomeFactory");
+        outcomeFactoryField.setAccessible(true);
+        outcomeFactoryField.set(patientCache, new VirtualDBMethodOutcomeFactory());
+        return(patientCache);
+    }
+
+    private void assertFound(SnapshotPatientCache patientCache, String id, String expectedMRN){
+        VirtualDBMethodOutcome outcome = patientCache.getResource(new IdType(id));
+        assertEquals(VirtualDBActionStatusEnum.REVIEW_FINISH, outcome.getStatusEnum());
+        Patient foundPatient = (Patient)outcome.getResource();
+        assertNotNull(foundPatient);
+        assertEquals(id, foundPatient.getIdElement().getValue());
+        assertEquals(expectedMRN, foundPatient.getIdentifierFirstRep().getValue());
+    }
+
+    static Patient buildPatient(int patientNumber, int version){
+        Patient patient = new Patient();
+        patient.setId("Patient/" + patientNumber);
+        patient.addIdentifier(buildMRNIdentifier(patientNumber, version));
+        patient.addName().setFamily("Family-" + patientNumber).addGiven("Given-" + patientNumber);
+        return(patient);
+    }
+
+    static Identifier buildMRNIdentifier(int patientNumber, int version){
+        Identifier identifier = new Identifier();
+        identifier.setUse(Identifier.IdentifierUse.OFFICIAL);
+        identifier.setSystem(MRN_SYSTEM);
+        identifier.setValue("MRN-" + patientNumber + "-" + version);
+        return(identifier);
+    }
+
+    static class TestSnapshotService extends ResourceSnapshotService {
+        private File snapshotDirectory;
+
+        TestSnapshotService(File snapshotDirectory){
+            super(() -> FHIR_CONTEXT.newJsonParser());
+            this.snapshotDirectory = snapshotDirectory;
+        }
+
+        @Override
+        protected boolean specifySnapshotEnabled() {
+            return (true);
+        }
+
+        @Override
+        protected File specifySnapshotDirectory() {
+            return (snapshotDirectory);
+        }
+
+        @Override
+        protected long specifySnapshotPeriodInMillis() {
+            return (Long.MAX_VALUE / 2);
+        }
+
+        @Override
+        protected int specifySnapshotRestoreSliceSize() {
+            return (4);
+        }
+    }
+
+    static class SnapshotPatientCache extends VirtualDBIdTypeBasedCacheBase {
+        private static final Logger CACHE_LOG = LoggerFactory.getLogger(SnapshotPatientCache.class);
+        private volatile int retirementInSeconds = 3600;
+
+        void setRetirementInSeconds(int retirementInSeconds){
+            this.retirementInSeconds = retirementInSeconds;
+        }
+
+        @Override
+        protected Logger getLogger() {
+            return (CACHE_LOG);
+        }
+
+        @Override
+        protected int specifyCacheElementRetirementInSeconds() {
+            return (retirementInSeconds);
+        }
+
+        @Override
+        protected boolean areTheSame(Resource a, Resource b) {
+            if(a == null || b == null){
+                return(a == b);
+            }
+            return(a.equalsDeep(b));
+        }
+
+        @Override
+        protected List<Identifier> resolveIdentifierSet(Resource resourceToAdd) {
+            if(resourceToAdd == null){
+                return(new ArrayList<>());
+            }
+            return(((Patient)resourceToAdd).getIdentifier());
+        }
+
+        @Override
+        protected void addIdentifierToResource(Identifier identifierToAdd, Resource resource) {
+            ((Patient)resource).addIdentifier(identifierToAdd);
+        }
+
+        @Override
+        protected String getCacheClassName() {
+            return ("Patient");
+        }
+
+        @Override
+        protected Resource createClonedResource(Resource resource) {
+            return(((Patient)resource).copy());
+        }
+    }
+}
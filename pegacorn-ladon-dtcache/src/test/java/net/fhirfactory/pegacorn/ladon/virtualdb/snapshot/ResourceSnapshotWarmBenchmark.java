@@ -0,0 +1,129 @@
+package net.fhirfactory.pegacorn.ladon.virtualdb.snapshot;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.parser.IParser;
+import org.hl7.fhir.r4.model.Address;
+import org.hl7.fhir.r4.model.ContactPoint;
+import org.hl7.fhir.r4.model.Enumerations;
+import org.hl7.fhir.r4.model.Patient;
+import org.hl7.fhir.r4.model.Resource;
+
+/**
+ * A (manually run) benchmark of the time taken to warm a VirtualDB cache after a restart. It compares populating
+ * an empty cache from the FHIRPlace (simulated as parsing each Resource from its JSON form, one page of PAGE_SIZE
+ * Resources at a time, with an optional per-page round trip of -Dladon.benchmark.page.latency milliseconds) with
+ * restoring the cache from its snapshot, using one restore thread and then one per processor.
+ *
+ * Run with: mvn -pl pegacorn-ladon-dtcache test-compile exec:java -Dexec.classpathScope=test
+ *     -Dexec.mainClass=net.fhirfactory.pegacorn.ladon.virtualdb.snapshot.ResourceSnapshotWarmBenchmark
+ */
+public class ResourceSnapshotWarmBenchmark {
+
+    private static final int RESOURCE_COUNT = 50000;
+    private static final int PAGE_SIZE = 100;
+    private static final int ROUNDS = 3;
+    private static final FhirContext FHIR_CONTEXT = FhirContext.forR4();
+
+    public static void main(String[] args) throws Exception {
+        long pageLatencyInMillis = Long.getLong("ladon.benchmark.page.latency", 0);
+        File snapshotDirectory = Files.createTempDirectory("ResourceSnapshotWarmBenchmark").toFile();
+        List<String> sourceOfTruth = buildSourceOfTruth();
+        writeSnapshot(snapshotDirectory, sourceOfTruth);
+        int processors = Runtime.getRuntime().availableProcessors();
+        System.out.println(String.format("%-32s %12s %16s", "Warm-up (" + RESOURCE_COUNT + " Patients)", "Time(ms)", "Resources/s"));
+        for(int round = 0; round < ROUNDS; round++){
+            report("Cold (from FHIRPlace)", RESOURCE_COUNT, warmFromSourceOfTruth(sourceOfTruth, pageLatencyInMillis));
+            report("Snapshot, 1 restore thread", RESOURCE_COUNT, warmFromSnapshot(snapshotDirectory, 1));
+            report("Snapshot, " + processors + " restore threads", RESOURCE_COUNT, warmFromSnapshot(snapshotDirectory, processors));
+        }
+        File[] snapshotFiles = snapshotDirectory.listFiles();
+        if(snapshotFiles != null){
+            for(File snapshotFile: snapshotFiles){
+                snapshotFile.delete();
+            }
+        }
+        snapshotDirectory.delete();
+    }
+
+    private static long warmFromSourceOfTruth(List<String> sourceOfTruth, long pageLatencyInMillis) throws Exception {
+        ResourceSnapshotServiceTest.SnapshotPatientCache patientCache = ResourceSnapshotServiceTest.newPatientCache(3600);
+        IParser parser = FHIR_CONTEXT.newJsonParser();
+        long start = System.nanoTime();
+        for(int position = 0; position < sourceOfTruth.size(); position++){
+            if(position % PAGE_SIZE == 0 && pageLatencyInMillis > 0){
+                Thread.sleep(pageLatencyInMillis);
+            }
+            patientCache.syncResource((Resource)parser.parseResource(sourceOfTruth.get(position)));
+        }
+        return((System.nanoTime() - start) / 1000000);
+    }
+
+    private static long warmFromSnapshot(File snapshotDirectory, int restoreThreads) throws Exception {
+        BenchmarkSnapshotService snapshotService = new BenchmarkSnapshotService(snapshotDirectory, restoreThreads);
+        snapshotService.initialise();
+        ResourceSnapshotServiceTest.SnapshotPatientCache patientCache = ResourceSnapshotServiceTest.newPatientCache(3600);
+        long start = System.nanoTime();
+        int restored = snapshotService.attach(patientCache);
+        long elapsed = (System.nanoTime() - start) / 1000000;
+        snapshotService.shutdown();
+        if(restored != RESOURCE_COUNT){
+            throw(new IllegalStateException("Restored " + restored + " of " + RESOURCE_COUNT + " Resources"));
+        }
+        return(elapsed);
+    }
+
+    private static void writeSnapshot(File snapshotDirectory, List<String> sourceOfTruth) throws Exception {
+        BenchmarkSnapshotService snapshotService = new BenchmarkSnapshotService(snapshotDirectory, 1);
+        snapshotService.initialise();
+        ResourceSnapshotServiceTest.SnapshotPatientCache patientCache = ResourceSnapshotServiceTest.newPatientCache(3600);
+        snapshotService.attach(patientCache);
+        IParser parser = FHIR_CONTEXT.newJsonParser();
+        for(String resource: sourceOfTruth){
+            patientCache.syncResource((Resource)parser.parseResource(resource));
+        }
+        snapshotService.writeSnapshots();
+        snapshotService.shutdown();
+    }
+
+    private static void report(String label, int resourceCount, long elapsedInMillis){
+        double throughput = (elapsedInMillis == 0) ? 0 : resourceCount * 1000.0 / elapsedInMillis;
+        System.out.println(String.format("%-32s %12d %16.0f", label, elapsedInMillis, throughput));
+    }
+
+    private static List<String> buildSourceOfTruth(){
+        IParser parser = FHIR_CONTEXT.newJsonParser();
+        List<String> sourceOfTruth = new ArrayList<>(RESOURCE_COUNT);
+        for(int patientNumber = 0; patientNumber < RESOURCE_COUNT; patientNumber++){
+            Patient patient = ResourceSnapshotServiceTest.buildPatient(patientNumber, 0);
+            patient.setGender(Enumerations.AdministrativeGender.UNKNOWN);
+            patient.addTelecom().setSystem(ContactPoint.ContactPointSystem.PHONE).setValue("0400" + patientNumber).setUse(ContactPoint.ContactPointUse.MOBILE);
+            patient.addAddress().setUse(Address.AddressUse.HOME).addLine(patientNumber + " Example Street").setCity("Canberra").setState("ACT").setPostalCode("2600");
+            sourceOfTruth.add(parser.encodeResourceToString(patient));
+        }
+        return(sourceOfTruth);
+    }
+
+    static class BenchmarkSnapshotService extends ResourceSnapshotServiceTest.TestSnapshotService {
+        private int restoreThreads;
+
+        BenchmarkSnapshotService(File snapshotDirectory, int restoreThreads){
+            super(snapshotDirectory);
+            this.restoreThreads = restoreThreads;
+        }
+
+        @Override
+        protected int specifySnapshotRestoreThreads() {
+            return (restoreThreads);
+        }
+
+        @Override
+        protected int specifySnapshotRestoreSliceSize() {
+            return (512);
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package net.fhirfactory.pegacorn.ladon.virtualdb.snapshot;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class VirtualDBSnapshotFileTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(VirtualDBSnapshotFileTest.class);
+
+    private static final String SNAPSHOT_NAME = "Patient";
+    private static final int SMALL_CAPACITY = 256;
+    private static final long NO_COMPACTION = Long.MAX_VALUE;
+    private static final long NO_EXPIRY = Long.MAX_VALUE;
+
+    private File snapshotDirectory;
+
+    @Before
+    public void createSnapshotDirectory() throws Exception {
+        snapshotDirectory = Files.createTempDirectory("VirtualDBSnapshotFileTest").toFile();
+    }
+
+    @After
+    public void removeSnapshotDirectory() {
+        File[] remaining = snapshotDirectory.listFiles();
+        if(remaining != null){
+            for(File snapshotFile: remaining){
+                snapshotFile.delete();
+            }
+        }
+        snapshotDirectory.delete();
+    }
+
+    @Test
+    public void latestRecordOfEachIdSurvivesReopening() throws Exception {
+        LOG.debug(".latestRecordOfEachIdSurvivesReopening(): Entry");
+        VirtualDBSnapshotFile snapshot = openSnapshot(SMALL_CAPACITY, NO_COMPACTION);
+        for(int patientNumber = 0; patientNumber < 50; patientNumber++){
+            snapshot.append(buildId(patientNumber), NO_EXPIRY, buildPayload(patientNumber, 0));
+        }
+        snapshot.append(buildId(7), 1234L, buildPayload(7, 1));
+        assertTrue(snapshot.appendTombstone(buildId(9)));
+        assertFalse(snapshot.appendTombstone(buildId(9)));
+        snapshot.close();
+
+        VirtualDBSnapshotFile reopened = openSnapshot(SMALL_CAPACITY, NO_COMPACTION);
+        assertEquals(49, reopened.getLiveCount());
+        assertEquals(0, reopened.getRecoveredCount());
+        Map<String, VirtualDBSnapshotRecord> records = readAll(reopened);
+        assertFalse(records.containsKey(buildId(9)));
+        assertEquals(1234L, records.get(buildId(7)).getExpiryDeadline());
+        assertArrayEquals(buildPayload(7, 1), records.get(buildId(7)).getPayload());
+        assertArrayEquals(buildPayload(42, 0), records.get(buildId(42)).getPayload());
+        reopened.close();
+    }
+
+    @Test
+    public void recordsAppendedAfterTheIndexAreRecovered() throws Exception {
+        LOG.debug(".recordsAppendedAfterTheIndexAreRecovered(): Entry");
+        VirtualDBSnapshotFile snapshot = openSnapshot(SMALL_CAPACITY, NO_COMPACTION);
+        snapshot.append(buildId(1), NO_EXPIRY, buildPayload(1, 0));
+        snapshot.append(buildId(2), NO_EXPIRY, buildPayload(2, 0));
+        snapshot.writeIndex();
+        // An increment that was interrupted before its index was written
+        snapshot.append(buildId(3), NO_EXPIRY, buildPayload(3, 0));
+        snapshot.append(buildId(1), NO_EXPIRY, buildPayload(1, 1));
+        snapshot.appendTombstone(buildId(2));
+
+        VirtualDBSnapshotFile recovered = openSnapshot(SMALL_CAPACITY, NO_COMPACTION);
+        assertEquals(3, recovered.getRecoveredCount());
+        Map<String, VirtualDBSnapshotRecord> records = readAll(recovered);
+        assertEquals(2, records.size());
+        assertArrayEquals(buildPayload(1, 1), records.get(buildId(1)).getPayload());
+        assertTrue(records.containsKey(buildId(3)));
+        recovered.close();
+    }
+
+    @Test
+    public void missingIndexFallsBackToAFullScan() throws Exception {
+        LOG.debug(".missingIndexFallsBackToAFullScan(): Entry");
+        VirtualDBSnapshotFile snapshot = openSnapshot(SMALL_CAPACITY, NO_COMPACTION);
+        for(int patientNumber = 0; patientNumber < 10; patientNumber++){
+            snapshot.append(buildId(patientNumber), NO_EXPIRY, buildPayload(patientNumber, 0));
+        }
+        snapshot.close();
+        assertTrue(new File(snapshotDirectory, SNAPSHOT_NAME + ".index").delete());
+
+        VirtualDBSnapshotFile rescanned = openSnapshot(SMALL_CAPACITY, NO_COMPACTION);
+        assertEquals(10, rescanned.getRecoveredCount());
+        assertEquals(10, readAll(rescanned).size());
+        rescanned.close();
+    }
+
+    @Test
+    public void tornRecordEndsTheScan() throws Exception {
+        LOG.debug(".tornRecordEndsTheScan(): Entry");
+        VirtualDBSnapshotFile snapshot = openSnapshot(SMALL_CAPACITY, NO_COMPACTION);
+        snapshot.append(buildId(1), NO_EXPIRY, buildPayload(1, 0));
+        snapshot.writeIndex();
+        int tornOffset = snapshot.getDataEnd();
+        snapshot.append(buildId(2), NO_EXPIRY, buildPayload(2, 0));
+        snapshot.append(buildId(3), NO_EXPIRY, buildPayload(3, 0));
+        try(RandomAccessFile dataAccess = new RandomAccessFile(new File(snapshotDirectory, SNAPSHOT_NAME + ".snapshot"), "rw")){
+            dataAccess.seek(tornOffset + VirtualDBSnapshotFile.RECORD_HEADER_SIZE + 2);
+            dataAccess.write(0x7F);
+        }
+
+        VirtualDBSnapshotFile recovered = openSnapshot(SMALL_CAPACITY, NO_COMPACTION);
+        assertEquals(1, recovered.getCorruptRecordCount());
+        assertEquals(1, recovered.getLiveCount());
+        assertTrue(recovered.contains(buildId(1)));
+        // Appends continue from the end of the valid records
+        recovered.append(buildId(4), NO_EXPIRY, buildPayload(4, 0));
+        assertEquals(2, readAll(recovered).size());
+        recovered.close();
+    }
+
+    @Test
+    public void supersededRecordsAreCompactedAway() throws Exception {
+        LOG.debug(".supersededRecordsAreCompactedAway(): Entry");
+        VirtualDBSnapshotFile snapshot = openSnapshot(SMALL_CAPACITY, 1024);
+        for(int version = 0; version < 20; version++){
+            for(int patientNumber = 0; patientNumber < 5; patientNumber++){
+                snapshot.append(buildId(patientNumber), NO_EXPIRY, buildPayload(patientNumber, version));
+            }
+        }
+        int dataEndBeforeCompaction = snapshot.getDataEnd();
+        assertTrue(snapshot.compactIfWorthwhile());
+        assertEquals(1, snapshot.getCompactionCount());
+        assertTrue(snapshot.getDataEnd() < dataEndBeforeCompaction);
+        assertEquals(snapshot.getLiveBytes(), snapshot.getDataEnd() - VirtualDBSnapshotFile.HEADER_SIZE);
+        assertFalse(snapshot.compactIfWorthwhile());
+        snapshot.append(buildId(5), NO_EXPIRY, buildPayload(5, 0));
+        snapshot.close();
+
+        VirtualDBSnapshotFile reopened = openSnapshot(SMALL_CAPACITY, 1024);
+        assertEquals(0, reopened.getRecoveredCount());
+        Map<String, VirtualDBSnapshotRecord> records = readAll(reopened);
+        assertEquals(6, records.size());
+        assertArrayEquals(buildPayload(3, 19), records.get(buildId(3)).getPayload());
+        reopened.close();
+    }
+
+    //
+    // Helpers
+    //
+
+    private VirtualDBSnapshotFile openSnapshot(int initialCapacity, long compactionSizeInBytes) throws Exception {
+        return(new VirtualDBSnapshotFile(snapshotDirectory, SNAPSHOT_NAME, initialCapacity, compactionSizeInBytes));
+    }
+
+    private Map<String, VirtualDBSnapshotRecord> readAll(VirtualDBSnapshotFile snapshot) throws Exception {
+        Map<String, VirtualDBSnapshotRecord> records = new HashMap<>();
+        for(int offset: snapshot.getLiveOffsets()){
+            VirtualDBSnapshotRecord record = snapshot.readRecord(offset);
+            records.put(record.getId(), record);
+        }
+        return(records);
+    }
+
+    private static String buildId(int patientNumber){
+        return("Patient/" + patientNumber);
+    }
+
+    private static byte[] buildPayload(int patientNumber, int version){
+        return(("{\"resourceType\":\"Patient\",\"id\":\"" + patientNumber + "\",\"meta\":{\"versionId\":\"" + version + "\"}}").getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -56,6 +56,29 @@ public abstract class ResourceContentAggregationServiceBase {
     // Review / Get Aggregation Methods
     //
     public abstract VirtualDBMethodOutcome aggregateGetResponseSet(List<ResourceSoTConduitActionResponse> responseSet);
+    /**
+     * This method indicates whether a (get) response, on its own, determines the outcome of aggregateGetResponseSet()
+     * - i.e. no other conduit's response could change the aggregated result. It allows a conduit controller to stop
+     * waiting for the remaining conduits. By default, no response is final.
+     *
+     * @param response A response from a single conduit
+     * @return True if aggregateGetResponseSet() would return this response whatever the other responses are, once
+     * every conduit ahead of it (in conduit order) has responded
+     */
+    public boolean isFinalGetResponse(ResourceSoTConduitActionResponse response){
+        return(false);
+    }
+    /**
+     * As isFinalGetResponse(), but for a response set known to hold only successful responses - as when the conduit
+     * controller drops the unsuccessful ones before aggregating them. By default, no response is final.
+     *
+     * @param response A (successful) response from a single conduit
+     * @return True if aggregateGetResponseSet() would return this response whatever the other (successful)
+     * responses are, once every conduit ahead of it (in conduit order) has responded
+     */
+    public boolean isFinalSuccessfulGetResponse(ResourceSoTConduitActionResponse response){
+        return(false);
+    }
     //
     // Update Aggregation Methods
     //
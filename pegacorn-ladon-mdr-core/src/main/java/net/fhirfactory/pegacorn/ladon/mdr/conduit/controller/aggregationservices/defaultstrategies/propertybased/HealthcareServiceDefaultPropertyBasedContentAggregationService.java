@@ -23,8 +23,6 @@ package net.fhirfactory.pegacorn.ladon.mdr.conduit.controller.aggregationservice
 
 import net.fhirfactory.pegacorn.ladon.mdr.conduit.controller.aggregationservices.defaultstrategies.propertybased.common.DomainResourceDefaultContentAggregationService;
 import net.fhirfactory.pegacorn.ladon.model.virtualdb.mdr.ResourceSoTConduitActionResponse;
-import net.fhirfactory.pegacorn.ladon.model.virtualdb.mdr.ResourceSoTConduitSearchResponseElement;
-import net.fhirfactory.pegacorn.ladon.model.virtualdb.operations.VirtualDBMethodOutcome;
 import org.hl7.fhir.r4.model.HealthcareService;
 import org.hl7.fhir.r4.model.Identifier;
 import org.hl7.fhir.r4.model.Resource;
@@ -43,11 +41,6 @@ public class HealthcareServiceDefaultPropertyBasedContentAggregationService exte
     @Override
     protected Logger getLogger(){return(LOG);}
 
-    @Override
-    public VirtualDBMethodOutcome aggregateSearchResultSet(List<ResourceSoTConduitSearchResponseElement> responseSet) {
-        return null;
-    }
-
     @Override
     protected String getAggregationServiceName() {
         return ("HealthcareServiceDefaultResourceContentAggregationService");
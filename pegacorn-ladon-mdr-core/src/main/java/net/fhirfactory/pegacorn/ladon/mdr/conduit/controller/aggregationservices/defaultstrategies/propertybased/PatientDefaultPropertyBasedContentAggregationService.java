@@ -62,7 +62,7 @@ public class PatientDefaultPropertyBasedContentAggregationService extends Domain
     protected void aggregateIntoBasePropertyByProperty(ResourceSoTConduitActionResponse baseResponse, ResourceSoTConduitActionResponse additiveResponse) {
         LOG.debug(".aggregateIntoBasePropertyByProperty(): Entry");
         Patient basePatientResource = (Patient)baseResponse.getResource();
-        Patient additivePatientResource = (Patient)baseResponse.getResource();
+        Patient additivePatientResource = (Patient)additiveResponse.getResource();
         LOG.trace(".aggregateIntoBasePropertyByProperty(): Merge \"identifiers\" (Identifier)");
         getMergeHelpers().mergeIdentifiers(baseResponse, basePatientResource.getIdentifier(), additiveResponse, additivePatientResource.getIdentifier());
         LOG.trace(".aggregateIntoBasePropertyByProperty(): Merge \"active\" (Set the Active Flag: note, if any are Active, then make this one Active)");
@@ -111,13 +111,13 @@ public class PatientDefaultPropertyBasedContentAggregationService extends Domain
         LOG.trace(".aggregateIntoBasePropertyByProperty(): Merge \"multiBirth\" (boolean/integer)");
         if(!basePatientResource.hasMultipleBirth()){
             if(additivePatientResource.hasMultipleBirth()){
-                basePatientResource.setMultipleBirth(additivePatientResource.getMaritalStatus());
+                basePatientResource.setMultipleBirth(additivePatientResource.getMultipleBirth());
             }
         }
         LOG.trace(".aggregateIntoBasePropertyByProperty(): Merge \"photo\" (Attachment)");
         getMergeHelpers().mergeAttachments("photo", baseResponse, basePatientResource.getPhoto(), additiveResponse, additivePatientResource.getPhoto());
         LOG.trace(".aggregateIntoBasePropertyByProperty(): Merge \"contacts\" (BackboneElement)");
-        mergeContacts("contacts", baseResponse, basePatientResource.getContact(), additiveResponse, additivePatientResource.getContact());
+        mergeContacts("contact", baseResponse, basePatientResource.getContact(), additiveResponse, additivePatientResource.getContact());
         LOG.trace(".aggregateIntoBasePropertyByProperty(): Merge \"communications\" (BackboneElement)");
         mergeCommunications("communication", baseResponse, basePatientResource.getCommunication(), additiveResponse, additivePatientResource.getCommunication());
         LOG.trace(".aggregateIntoBasePropertyByProperty(): Merge \"generalPractitioner\" (Reference)");
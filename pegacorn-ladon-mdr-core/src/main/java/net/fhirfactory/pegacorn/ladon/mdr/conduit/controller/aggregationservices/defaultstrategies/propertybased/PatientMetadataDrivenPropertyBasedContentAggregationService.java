@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.mdr.conduit.controller.aggregationservices.defaultstrategies.propertybased;
+
+import net.fhirfactory.pegacorn.ladon.mdr.conduit.controller.aggregationservices.defaultstrategies.propertybased.common.MetadataDrivenPropertyBasedContentAggregationServiceBase;
+import net.fhirfactory.pegacorn.ladon.mdr.conduit.controller.aggregationservices.defaultstrategies.propertybased.common.PropertyMergeRuleEnum;
+import org.hl7.fhir.r4.model.ResourceType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.enterprise.context.ApplicationScoped;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The metadata-driven equivalent of PatientDefaultPropertyBasedContentAggregationService.
+ */
+@ApplicationScoped
+public class PatientMetadataDrivenPropertyBasedContentAggregationService extends MetadataDrivenPropertyBasedContentAggregationServiceBase {
+    private static final Logger LOG = LoggerFactory.getLogger(PatientMetadataDrivenPropertyBasedContentAggregationService.class);
+
+    @Override
+    protected Logger getLogger(){return(LOG);}
+
+    @Override
+    protected String getAggregationServiceName() {
+        return ("PatientMetadataDrivenContentAggregationService");
+    }
+
+    @Override
+    protected ResourceType getResourceType() {
+        return (ResourceType.Patient);
+    }
+
+    @Override
+    protected Map<String, PropertyMergeRuleEnum> specifyPropertyMergeRules() {
+        HashMap<String, PropertyMergeRuleEnum> rules = new HashMap<>();
+        // If any are Active, then make this one Active
+        rules.put("active", PropertyMergeRuleEnum.ANY_TRUE);
+        rules.put("gender", PropertyMergeRuleEnum.PRECEDENCE);
+        rules.put("link", PropertyMergeRuleEnum.IGNORE);
+        return(rules);
+    }
+}
@@ -70,7 +70,7 @@ public class PractitionerRoleDefaultPropertyBasedContentAggregationService exten
     @Override
     protected void aggregateIntoBasePropertyByProperty(ResourceSoTConduitActionResponse baseResponse, ResourceSoTConduitActionResponse additiveResponse) {
         PractitionerRole basePractitionerRoleResource = (PractitionerRole)baseResponse.getResource();
-        PractitionerRole additivePractitionerRoleResource = (PractitionerRole)baseResponse.getResource();
+        PractitionerRole additivePractitionerRoleResource = (PractitionerRole)additiveResponse.getResource();
         // Merge "identifiers" (Identifier)
         getMergeHelpers().mergeIdentifiers(baseResponse, basePractitionerRoleResource.getIdentifier(), additiveResponse, additivePractitionerRoleResource.getIdentifier());
         // Merge "active" (Set the Active Flag: note, if any are Active, then make this one Active)
@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.mdr.conduit.controller.aggregationservices.defaultstrategies.propertybased.common;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.function.BiPredicate;
+import java.util.function.Function;
+
+/**
+ * Merges an "additive" list of (FHIR) elements into a "base" list in (expected) linear time. Base elements are indexed
+ * by a canonical equivalence key (e.g. (use, system) for a ContactPoint), so each additive element is only compared
+ * with the base elements that share its key - and then only to confirm the (possibly finer) equivalence test.
+ *
+ * Where base has precedence the result is the base list followed by the additive elements that are equivalent to no
+ * base element. Otherwise each base element that is equivalent to an additive element is replaced (in place) by the
+ * additive element(s) for which it is the first equivalent base element, the remaining additive elements being
+ * appended. Either way the relative order of the base and of the additive elements is preserved.
+ */
+public final class KeyedListMerger {
+
+    private KeyedListMerger(){
+    }
+
+    /**
+     * @param baseList          The "base" list - modified in place to hold the merged result
+     * @param additiveList      The "additive" list - not modified
+     * @param keyFunction       The canonical key of an element, or null if the element can never be equivalent to another
+     * @param equivalenceTest   Confirms (base, additive) elements sharing a key are equivalent, or null if sharing a
+     *                          key is equivalence enough
+     * @param baseHasPrecedence Whether the base's version of equivalent elements is kept
+     */
+    public static <T> void merge(List<T> baseList, List<T> additiveList, Function<T, Object> keyFunction, BiPredicate<T, T> equivalenceTest, boolean baseHasPrecedence){
+        if(additiveList == null || additiveList.isEmpty()){
+            return;
+        }
+        if(baseList.isEmpty()){
+            baseList.addAll(additiveList);
+            return;
+        }
+        HashMap<Object, BasePositions> baseIndex = indexByKey(baseList, keyFunction);
+        int baseCount = baseList.size();
+        ArrayList<T> appendedElements = new ArrayList<>();
+        // For base precedence, only whether an additive element has an equivalent matters
+        if(baseHasPrecedence){
+            for(T additiveElement: additiveList){
+                BasePositions candidates = findCandidates(baseIndex, keyFunction, additiveElement);
+                if(candidates == null || firstEquivalent(baseList, candidates, equivalenceTest, additiveElement) < 0){
+                    appendedElements.add(additiveElement);
+                }
+            }
+            baseList.addAll(appendedElements);
+            return;
+        }
+        boolean[] replaced = new boolean[baseCount];
+        ArrayList<List<T>> replacements = new ArrayList<>(baseCount);
+        for(int counter = 0; counter < baseCount; counter++){
+            replacements.add(null);
+        }
+        for(T additiveElement: additiveList){
+            BasePositions candidates = findCandidates(baseIndex, keyFunction, additiveElement);
+            int firstEquivalent = -1;
+            if(candidates != null){
+                firstEquivalent = firstEquivalent(baseList, candidates, equivalenceTest, additiveElement);
+            }
+            if(firstEquivalent < 0){
+                appendedElements.add(additiveElement);
+                continue;
+            }
+            // Every base element equivalent to an additive element is replaced
+            if(equivalenceTest == null){
+                if(!replaced[firstEquivalent]){
+                    for(int position = 0; position < candidates.count; position++){
+                        replaced[candidates.positions[position]] = true;
+                    }
+                }
+            } else {
+                for(int position = 0; position < candidates.count; position++){
+                    int candidate = candidates.positions[position];
+                    if(!replaced[candidate] && equivalenceTest.test(baseList.get(candidate), additiveElement)){
+                        replaced[candidate] = true;
+                    }
+                }
+            }
+            if(replacements.get(firstEquivalent) == null){
+                replacements.set(firstEquivalent, new ArrayList<>(1));
+            }
+            replacements.get(firstEquivalent).add(additiveElement);
+        }
+        ArrayList<T> mergedList = new ArrayList<>(baseCount + additiveList.size());
+        for(int counter = 0; counter < baseCount; counter++){
+            if(!replaced[counter]){
+                mergedList.add(baseList.get(counter));
+            } else if(replacements.get(counter) != null){
+                mergedList.addAll(replacements.get(counter));
+            }
+        }
+        mergedList.addAll(appendedElements);
+        baseList.clear();
+        baseList.addAll(mergedList);
+    }
+
+    private static <T> HashMap<Object, BasePositions> indexByKey(List<T> baseList, Function<T, Object> keyFunction){
+        HashMap<Object, BasePositions> baseIndex = new HashMap<>();
+        for(int counter = 0; counter < baseList.size(); counter++){
+            Object key = keyFunction.apply(baseList.get(counter));
+            if(key == null){
+                continue;
+            }
+            BasePositions positions = baseIndex.get(key);
+            if(positions == null){
+                positions = new BasePositions();
+                baseIndex.put(key, positions);
+            }
+            positions.add(counter);
+        }
+        return(baseIndex);
+    }
+
+    private static <T> BasePositions findCandidates(HashMap<Object, BasePositions> baseIndex, Function<T, Object> keyFunction, T additiveElement){
+        Object key = keyFunction.apply(additiveElement);
+        if(key == null){
+            return(null);
+        }
+        return(baseIndex.get(key));
+    }
+
+    private static <T> int firstEquivalent(List<T> baseList, BasePositions candidates, BiPredicate<T, T> equivalenceTest, T additiveElement){
+        if(equivalenceTest == null){
+            return(candidates.positions[0]);
+        }
+        for(int position = 0; position < candidates.count; position++){
+            int candidate = candidates.positions[position];
+            if(equivalenceTest.test(baseList.get(candidate), additiveElement)){
+                return(candidate);
+            }
+        }
+        return(-1);
+    }
+
+    private static final class BasePositions {
+        private int[] positions = new int[1];
+        private int count = 0;
+
+        private void add(int position){
+            if(count == positions.length){
+                int[] grownPositions = new int[positions.length * 2];
+                System.arraycopy(positions, 0, grownPositions, 0, count);
+                positions = grownPositions;
+            }
+            positions[count] = position;
+            count += 1;
+        }
+    }
+}
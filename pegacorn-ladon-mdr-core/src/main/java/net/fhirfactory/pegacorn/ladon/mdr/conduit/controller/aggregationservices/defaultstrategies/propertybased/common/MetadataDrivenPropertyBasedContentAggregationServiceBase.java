@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.mdr.conduit.controller.aggregationservices.defaultstrategies.propertybased.common;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import ca.uhn.fhir.context.FhirContext;
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.mdr.ResourceSoTConduitActionResponse;
+import org.hl7.fhir.r4.model.Identifier;
+import org.hl7.fhir.r4.model.Resource;
+
+/**
+ * A property-by-property aggregation service that, rather than walking the properties of its Resource type by hand,
+ * executes a PropertyMergePlan compiled (on first use) from the HAPI definition of the type. A subclass need only name
+ * its Resource type and, optionally, the properties whose merge rule differs from the default (fill-if-absent for
+ * single properties, keyed or distinct merge for repeating ones).
+ */
+public abstract class MetadataDrivenPropertyBasedContentAggregationServiceBase extends DomainResourceDefaultContentAggregationService {
+
+    private volatile PropertyMergePlan mergePlan;
+
+    /**
+     * The merge rule of each property whose rule differs from the default, see PropertyMergeRuleEnum.
+     */
+    protected Map<String, PropertyMergeRuleEnum> specifyPropertyMergeRules(){
+        return(Collections.emptyMap());
+    }
+
+    protected FhirContext specifyFhirContext(){
+        return(getFhirContextUtility().getFhirContext());
+    }
+
+    protected PropertyMergePlan getMergePlan(){
+        PropertyMergePlan plan = mergePlan;
+        if(plan == null){
+            synchronized(this){
+                plan = mergePlan;
+                if(plan == null){
+                    FhirContext fhirContext = specifyFhirContext();
+                    Class<? extends Resource> resourceClass = fhirContext.getResourceDefinition(getResourceType().toString()).getImplementingClass().asSubclass(Resource.class);
+                    plan = PropertyMergePlan.compile(fhirContext, resourceClass, specifyPropertyMergeRules());
+                    getLogger().info(".getMergePlan(): Compiled merge plan for {}, properties --> {}", getResourceType(), plan.getPropertyNames());
+                    mergePlan = plan;
+                }
+            }
+        }
+        return(plan);
+    }
+
+    @Override
+    protected void aggregateIntoBasePropertyByProperty(ResourceSoTConduitActionResponse baseResponse, ResourceSoTConduitActionResponse additiveResponse) {
+        getLogger().debug(".aggregateIntoBasePropertyByProperty(): Entry");
+        getMergePlan().execute(getMergeHelpers(), baseResponse, additiveResponse);
+        getLogger().debug(".aggregateIntoBasePropertyByProperty(): Exit");
+    }
+
+    @Override
+    protected Identifier getBestIdentifier(Resource resource) {
+        if(resource == null){
+            return(null);
+        }
+        List<Identifier> identifiers = getIdentifierList(resource);
+        if(identifiers.isEmpty()){
+            return(null);
+        }
+        return(getIdentifierPicker().getBestIdentifier(identifiers));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected void addIdentifier(Resource resource, Identifier ridIdentifier) {
+        if(resource == null){
+            return;
+        }
+        Object identifierValue = getMergePlan().getValue(resource, "identifier");
+        if(identifierValue instanceof List){
+            ((List<Identifier>) identifierValue).add(ridIdentifier);
+        } else if(identifierValue == null && getMergePlan().isRepeating("identifier")){
+            ArrayList<Identifier> identifiers = new ArrayList<>();
+            identifiers.add(ridIdentifier);
+            getMergePlan().setValue(resource, "identifier", identifiers);
+        } else if(identifierValue == null){
+            getMergePlan().setValue(resource, "identifier", ridIdentifier);
+        }
+    }
+
+    @Override
+    protected List<Identifier> getIdentifiers(ResourceSoTConduitActionResponse actionResponse) {
+        if(actionResponse == null || actionResponse.getResource() == null){
+            return(new ArrayList<>());
+        }
+        return(getIdentifierList((Resource) actionResponse.getResource()));
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Identifier> getIdentifierList(Resource resource){
+        Object identifierValue = getMergePlan().getValue(resource, "identifier");
+        if(identifierValue instanceof List){
+            return((List<Identifier>) identifierValue);
+        }
+        ArrayList<Identifier> identifiers = new ArrayList<>();
+        if(identifierValue instanceof Identifier){
+            identifiers.add((Identifier) identifierValue);
+        }
+        return(identifiers);
+    }
+}
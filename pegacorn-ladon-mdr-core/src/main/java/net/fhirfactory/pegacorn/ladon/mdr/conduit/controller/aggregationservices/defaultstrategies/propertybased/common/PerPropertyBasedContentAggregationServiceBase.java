@@ -21,13 +21,14 @@
  */
 package net.fhirfactory.pegacorn.ladon.mdr.conduit.controller.aggregationservices.defaultstrategies.propertybased.common;
 
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Date;
 import java.util.List;
 
 import javax.inject.Inject;
 
-import net.fhirfactory.pegacorn.datasets.fhir.r4.base.entities.bundle.BundleContentHelper;
 import net.fhirfactory.pegacorn.ladon.mdr.conduit.controller.aggregationservices.defaultstrategies.common.DefaultResourceContentAggregationServiceBase;
 import net.fhirfactory.pegacorn.ladon.model.virtualdb.mdr.ResourceGradeEnum;
 import net.fhirfactory.pegacorn.ladon.model.virtualdb.mdr.ResourceSoTConduitActionResponse;
@@ -36,10 +37,12 @@ import net.fhirfactory.pegacorn.ladon.model.virtualdb.operations.VirtualDBAction
 import net.fhirfactory.pegacorn.ladon.model.virtualdb.operations.VirtualDBActionTypeEnum;
 import net.fhirfactory.pegacorn.ladon.model.virtualdb.operations.VirtualDBMethodOutcome;
 import net.fhirfactory.pegacorn.ladon.model.virtualdb.operations.VirtualDBMethodOutcomeFactory;
+import net.fhirfactory.pegacorn.petasos.model.itops.PegacornFunctionStatusEnum;
 import org.hl7.fhir.r4.model.Bundle;
 import org.hl7.fhir.r4.model.CodeableConcept;
 import org.hl7.fhir.r4.model.Coding;
 import org.hl7.fhir.r4.model.OperationOutcome;
+import org.hl7.fhir.r4.model.Resource;
 
 public abstract class PerPropertyBasedContentAggregationServiceBase extends DefaultResourceContentAggregationServiceBase {
 
@@ -49,9 +52,6 @@ public abstract class PerPropertyBasedContentAggregationServiceBase extends Defa
     @Inject
     private VirtualDBMethodOutcomeFactory outcomeFactory;
 
-    @Inject
-    private BundleContentHelper bundleHelper;
-
     abstract protected void aggregateIntoBasePropertyByProperty(ResourceSoTConduitActionResponse baseResource, ResourceSoTConduitActionResponse additiveResource);
     abstract protected void aggregateResourceSuperClassByAttribute(ResourceSoTConduitActionResponse baseResponse, ResourceSoTConduitActionResponse additiveResponse);
     abstract protected void aggregateDomainResourceSuperClassByAttribute(ResourceSoTConduitActionResponse baseResponse, ResourceSoTConduitActionResponse additiveResponse);
@@ -60,6 +60,9 @@ public abstract class PerPropertyBasedContentAggregationServiceBase extends Defa
     protected boolean baseHasPrecedence(String propertyName, ResourceSoTConduitActionResponse base, ResourceSoTConduitActionResponse other){
         return(mergeHelpers.baseHasPrecedence(propertyName, base, other));
     }
+    protected boolean baseHasPrecedence(int attributeOrdinal, ResourceSoTConduitActionResponse base, ResourceSoTConduitActionResponse other){
+        return(mergeHelpers.baseHasPrecedence(attributeOrdinal, base, other));
+    }
 
     //
     //
@@ -79,6 +82,22 @@ public abstract class PerPropertyBasedContentAggregationServiceBase extends Defa
         return(outcome);
     }
 
+    /**
+     * A failed response, or one without a (non-empty) resource, decides defaultActionOutcomeAggregationService() on its
+     * own: the first such response (in conduit order) is returned whatever the other responses are. No successful
+     * response does, as every response contributes its properties to the merged resource.
+     */
+    @Override
+    public boolean isFinalGetResponse(ResourceSoTConduitActionResponse response){
+        if(response == null || response.getStatusEnum() == null){
+            return(false);
+        }
+        if(!successfulCompletion(response.getStatusEnum())){
+            return(true);
+        }
+        return(response.getResponseResourceGrade() == ResourceGradeEnum.EMPTY || !response.hasResource());
+    }
+
     @Override
     public VirtualDBMethodOutcome aggregateUpdateResponseSet(List<ResourceSoTConduitActionResponse> responseSet) {
         VirtualDBMethodOutcome outcome = defaultActionOutcomeAggregationService(VirtualDBActionTypeEnum.UPDATE, responseSet);
@@ -91,15 +110,53 @@ public abstract class PerPropertyBasedContentAggregationServiceBase extends Defa
         return(outcome);
     }
 
+    /**
+     * Fuses the search results of every (successful) SoT Conduit into a single searchset Bundle. Results that share a
+     * (current) business Identifier - directly or transitively - are taken to be the same Resource, and are merged
+     * (property-by-property, in precedence order) into a single entry. Results with no usable Identifier are passed
+     * through as-is. The fusion is linear in the total number of results (and their Identifiers).
+     *
+     * @param responseSet The search response elements of the SoT Conduits
+     * @return The outcome, holding the fused Bundle
+     */
     @Override
     public VirtualDBMethodOutcome aggregateSearchResultSet(List<ResourceSoTConduitSearchResponseElement> responseSet) {
         getLogger().debug(".aggregateSearchResultSet(): Entry");
-        if(responseSet.size() != 1){
+        if(responseSet == null || responseSet.isEmpty()){
             VirtualDBMethodOutcome outcome = outcomeFactory.generateEmptySearchResponse(getResourceType());
-            getLogger().debug(".aggregateSearchResultSet(): Exit, has more or less than a single entry");
+            getLogger().debug(".aggregateSearchResultSet(): Exit, no search response elements");
+            return(outcome);
+        }
+        ArrayList<ResourceSoTConduitActionResponse> searchResults = new ArrayList<>();
+        ResourceSoTConduitSearchResponseElement failedElement = null;
+        for(ResourceSoTConduitSearchResponseElement responseElement: responseSet){
+            if(responseElement.getStatusEnum() == VirtualDBActionStatusEnum.SEARCH_FAILURE){
+                getLogger().warn(".aggregateSearchResultSet(): Search failed on conduit --> {}, error --> {}", responseElement.getConduitName(), responseElement.getErrorMessage());
+                failedElement = responseElement;
+                continue;
+            }
+            for(Resource resource: responseElement.getResources()){
+                searchResults.add(toSearchResultResponse(responseElement, resource));
+            }
+        }
+        if(searchResults.isEmpty() && failedElement != null){
+            VirtualDBMethodOutcome outcome = createFailedSearchOutcome(failedElement.getConduitName(), failedElement.getErrorMessage());
+            getLogger().debug(".aggregateSearchResultSet(): Exit, search failed on every conduit that responded");
             return(outcome);
         }
-        Bundle outcomeBundle = bundleHelper.buildSearchResponseBundle(responseSet.get(0).getResources().get(0)) ;
+        List<List<ResourceSoTConduitActionResponse>> matchedGroups = TransitiveKeyGrouper.group(searchResults,
+                searchResult -> mergeHelpers.businessIdentifierKeys(getIdentifiers(searchResult)));
+        getLogger().trace(".aggregateSearchResultSet(): {} results matched into {} resources", searchResults.size(), matchedGroups.size());
+        Bundle outcomeBundle = new Bundle();
+        outcomeBundle.setType(Bundle.BundleType.SEARCHSET);
+        outcomeBundle.setTimestamp(Date.from(Instant.now()));
+        for(List<ResourceSoTConduitActionResponse> matchedGroup: matchedGroups){
+            ResourceSoTConduitActionResponse fusedResult = fuseMatchedSearchResults(matchedGroup);
+            Bundle.BundleEntryComponent newBundleEntry = outcomeBundle.addEntry();
+            newBundleEntry.setResource((Resource)fusedResult.getResource());
+            newBundleEntry.getSearch().setMode(Bundle.SearchEntryMode.MATCH).setScore(1);
+        }
+        outcomeBundle.setTotal(matchedGroups.size());
         VirtualDBMethodOutcome outcome = new VirtualDBMethodOutcome();
         outcome.setCreated(false);
         outcome.setCausalAction(VirtualDBActionTypeEnum.SEARCH);
@@ -107,8 +164,8 @@ public abstract class PerPropertyBasedContentAggregationServiceBase extends Defa
         CodeableConcept details = new CodeableConcept();
         Coding detailsCoding = new Coding();
         detailsCoding.setSystem("https://www.hl7.org/fhir/codesystem-operation-outcome.html");
-        detailsCoding.setCode("TODO:: Document");
-        String text = "TODO:: Document";
+        detailsCoding.setCode("MSG_SEARCH_SUCCESFUL"); // TODO this is not a valid entry, may need to change.
+        String text = "Search completed, found " + outcomeBundle.getTotal() + " matches";
         detailsCoding.setDisplay(text);
         details.setText(text);
         details.addCoding(detailsCoding);
@@ -121,10 +178,42 @@ public abstract class PerPropertyBasedContentAggregationServiceBase extends Defa
         opOutcome.addIssue(newOutcomeComponent);
         outcome.setOperationOutcome(opOutcome);
         outcome.setResource(outcomeBundle);
-        getLogger().debug(".aggregateSearchResultSet(): Exit, returning a single result for search");
+        getLogger().debug(".aggregateSearchResultSet(): Exit, returning {} fused results", outcomeBundle.getTotal());
         return(outcome);
     }
 
+    /**
+     * Wraps a single search result as a response, so it can be merged with the (matching) results of other conduits
+     * using the same per-property precedence as a "get".
+     */
+    protected ResourceSoTConduitActionResponse toSearchResultResponse(ResourceSoTConduitSearchResponseElement responseElement, Resource resource){
+        ResourceSoTConduitActionResponse searchResult = new ResourceSoTConduitActionResponse(responseElement.getConduitName(), PegacornFunctionStatusEnum.FUNCTION_STATUS_OK);
+        searchResult.setCausalAction(VirtualDBActionTypeEnum.SEARCH);
+        searchResult.setStatusEnum(VirtualDBActionStatusEnum.SEARCH_FINISHED);
+        searchResult.setSoTGrade(responseElement.getSoTConduitGrade());
+        searchResult.setResponseResourceGrade(responseElement.getResponseResourceGrade());
+        searchResult.setResource(resource);
+        return(searchResult);
+    }
+
+    /**
+     * Merges a group of matched search results into the one with precedence.
+     */
+    protected ResourceSoTConduitActionResponse fuseMatchedSearchResults(List<ResourceSoTConduitActionResponse> matchedGroup){
+        if(matchedGroup.size() == 1){
+            return(matchedGroup.get(0));
+        }
+        Collections.sort(matchedGroup);
+        ResourceSoTConduitActionResponse precedenceResult = matchedGroup.get(0);
+        for(int counter = 1; counter < matchedGroup.size(); counter++){
+            ResourceSoTConduitActionResponse currentResult = matchedGroup.get(counter);
+            aggregateResourceSuperClassByAttribute(precedenceResult, currentResult);
+            aggregateDomainResourceSuperClassByAttribute(precedenceResult, currentResult);
+            aggregateIntoBasePropertyByProperty(precedenceResult, currentResult);
+        }
+        return(precedenceResult);
+    }
+
     //
     //
     // Default Aggregation Methods
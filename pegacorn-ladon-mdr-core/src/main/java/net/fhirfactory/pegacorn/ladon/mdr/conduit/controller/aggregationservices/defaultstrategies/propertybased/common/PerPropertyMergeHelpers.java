@@ -1,13 +1,16 @@
 package net.fhirfactory.pegacorn.ladon.mdr.conduit.controller.aggregationservices.defaultstrategies.propertybased.common;
 
 import net.fhirfactory.pegacorn.ladon.model.virtualdb.mdr.ResourceSoTConduitActionResponse;
-import net.fhirfactory.pegacorn.ladon.model.virtualdb.mdr.SoTConduitGradeEnum;
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.mdr.SoTAttributePrecedence;
 import org.hl7.fhir.r4.model.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.enterprise.context.ApplicationScoped;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 
@@ -15,6 +18,10 @@ import java.util.List;
 public class PerPropertyMergeHelpers {
     private static final Logger LOG = LoggerFactory.getLogger(PerPropertyMergeHelpers.class);
 
+    private static final int IDENTIFIER_ATTRIBUTE = SoTAttributePrecedence.attributeOrdinal("identifier");
+    private static final int NAME_ATTRIBUTE = SoTAttributePrecedence.attributeOrdinal("name");
+    private static final int TELECOM_ATTRIBUTE = SoTAttributePrecedence.attributeOrdinal("telecom");
+
     // Identifier Merge
 
     /**
@@ -26,28 +33,44 @@ public class PerPropertyMergeHelpers {
      * @param additiveResponse The "additive" response to be used to extract and add content to the "base"
      */
     public void mergeIdentifiers(ResourceSoTConduitActionResponse baseResponse, List<Identifier> baseIdentifierSet, ResourceSoTConduitActionResponse additiveResponse, List<Identifier> additiveIdentifierSet) {
+        KeyedListMerger.merge(baseIdentifierSet, additiveIdentifierSet, this::identifierKey,
+                (base, additive) -> Base.compareDeep(typeOf(base), typeOf(additive), true),
+                baseHasPrecedence(IDENTIFIER_ATTRIBUTE, baseResponse, additiveResponse));
+    }
 
-        if (baseIdentifierSet.isEmpty()) {
-            baseIdentifierSet.addAll(additiveIdentifierSet);
-        } else {
-            for (Identifier currentBaseResourceIdentifier : baseIdentifierSet) {
-                for (Identifier currentAdditiveResourceIdentifier : additiveIdentifierSet) {
-                    boolean sameUse = currentBaseResourceIdentifier.getUse().equals(currentAdditiveResourceIdentifier.getUse());
-                    boolean sameCoding = currentBaseResourceIdentifier.getType().equalsDeep(currentAdditiveResourceIdentifier.getType());
-                    boolean sameSystem = currentBaseResourceIdentifier.getSystem().equals(currentAdditiveResourceIdentifier.getSystem());
-                    boolean baseIdentifierIsCurrent = isAttributeCurrent(currentBaseResourceIdentifier.getPeriod());
-                    boolean additiveIdentifierIsCurrent = isAttributeCurrent(currentAdditiveResourceIdentifier.getPeriod());
-                    if (sameUse && sameCoding && sameSystem && baseIdentifierIsCurrent && additiveIdentifierIsCurrent) {
-                        if (!baseHasPrecedence("identifier", baseResponse, additiveResponse)) {
-                            baseIdentifierSet.remove(currentBaseResourceIdentifier);
-                            baseIdentifierSet.add(currentAdditiveResourceIdentifier);
-                        }
-                    } else {
-                        baseIdentifierSet.add(currentAdditiveResourceIdentifier);
-                    }
-                }
+    private Object identifierKey(Identifier identifier) {
+        if (!isAttributeCurrent(identifier.hasPeriod() ? identifier.getPeriod() : null)) {
+            return (null);
+        }
+        return (Arrays.asList(identifier.getUse(), identifier.hasSystem() ? identifier.getSystem() : null, codeableConceptKey(typeOf(identifier))));
+    }
+
+    /**
+     * The canonical business keys, (system, value), of the current Identifiers in the set - used to recognise the same
+     * Resource as returned by different SoT Conduits. Identifiers without a system or a value cannot be matched on.
+     *
+     * @param identifierSet The Identifiers of a Resource
+     * @return The keys, possibly empty
+     */
+    public List<Object> businessIdentifierKeys(List<Identifier> identifierSet) {
+        if (identifierSet == null || identifierSet.isEmpty()) {
+            return (Collections.emptyList());
+        }
+        ArrayList<Object> keys = new ArrayList<>(identifierSet.size());
+        for (Identifier identifier : identifierSet) {
+            if (!identifier.hasSystem() || !identifier.hasValue()) {
+                continue;
             }
+            if (!isAttributeCurrent(identifier.hasPeriod() ? identifier.getPeriod() : null)) {
+                continue;
+            }
+            keys.add(Arrays.asList(identifier.getSystem(), identifier.getValue()));
         }
+        return (keys);
+    }
+
+    private static CodeableConcept typeOf(Identifier identifier) {
+        return (identifier.hasType() ? identifier.getType() : null);
     }
 
     /**
@@ -59,28 +82,23 @@ public class PerPropertyMergeHelpers {
      * @param additiveResponse The "additive" response to be used to extract and add content to the "base"
      */
     public void mergeReferences(ResourceSoTConduitActionResponse baseResponse, List<Reference> baseReferenceSet, ResourceSoTConduitActionResponse additiveResponse, List<Reference> additiveReferenceSet) {
+        KeyedListMerger.merge(baseReferenceSet, additiveReferenceSet, this::referenceKey,
+                (base, additive) -> Base.compareDeep(identifierTypeOf(base), identifierTypeOf(additive), true),
+                baseHasPrecedence(IDENTIFIER_ATTRIBUTE, baseResponse, additiveResponse));
+    }
 
-        if (baseReferenceSet.isEmpty()) {
-            baseReferenceSet.addAll(additiveReferenceSet);
-        } else {
-            for (Reference currentBaseResourceReference : baseReferenceSet) {
-                for (Reference currentAdditiveResourceReference : additiveReferenceSet) {
-                    boolean sameReference = currentBaseResourceReference.getReference().contentEquals(currentAdditiveResourceReference.getReference());
-                    boolean sameType = currentBaseResourceReference.getType().equals(currentAdditiveResourceReference.getType());
-                    boolean sameIdentifierUse = currentBaseResourceReference.getIdentifier().getUse().equals(currentAdditiveResourceReference.getIdentifier().getUse());
-                    boolean sameIdentifierType = currentAdditiveResourceReference.getIdentifier().getType().equalsDeep(currentAdditiveResourceReference.getIdentifier().getType());
-                    boolean sameIdentifierSystem = currentAdditiveResourceReference.getIdentifier().getSystem().equals(currentAdditiveResourceReference.getIdentifier().getSystem());
-                    if (sameReference && sameType && sameIdentifierUse && sameIdentifierType && sameIdentifierSystem) {
-                        if (!baseHasPrecedence("identifier", baseResponse, additiveResponse)) {
-                            baseReferenceSet.remove(currentBaseResourceReference);
-                            baseReferenceSet.add(currentAdditiveResourceReference);
-                        }
-                    } else {
-                        baseReferenceSet.add(currentAdditiveResourceReference);
-                    }
-                }
-            }
-        }
+    private Object referenceKey(Reference reference) {
+        Identifier identifier = reference.hasIdentifier() ? reference.getIdentifier() : null;
+        return (Arrays.asList(
+                reference.hasReference() ? reference.getReference() : null,
+                reference.hasType() ? reference.getType() : null,
+                identifier == null ? null : identifier.getUse(),
+                identifier == null || !identifier.hasSystem() ? null : identifier.getSystem(),
+                codeableConceptKey(identifierTypeOf(reference))));
+    }
+
+    private static CodeableConcept identifierTypeOf(Reference reference) {
+        return (reference.hasIdentifier() ? typeOf(reference.getIdentifier()) : null);
     }
 
     // AttributeIsCurrent
@@ -98,15 +116,16 @@ public class PerPropertyMergeHelpers {
         if (attributeActivePeriod == null) {
             return (true);
         }
+        Date now = Date.from(Instant.now());
         boolean itHasNotExpired = true;
         if (attributeActivePeriod.hasEnd()) {
-            if (attributeActivePeriod.getEnd().after(Date.from(Instant.now()))) {
+            if (attributeActivePeriod.getEnd().before(now)) {
                 itHasNotExpired = false;
             }
         }
         boolean itHasReachedActiveTime = true;
         if (attributeActivePeriod.hasStart()) {
-            if (attributeActivePeriod.getStart().after(Date.from(Instant.now()))) {
+            if (attributeActivePeriod.getStart().after(now)) {
                 itHasReachedActiveTime = false;
             }
         }
@@ -124,60 +143,47 @@ public class PerPropertyMergeHelpers {
      * @param additiveResponse The "additive" response to be used to extract and add content to the "base"
      */
     public void mergeHumanNames(ResourceSoTConduitActionResponse baseResponse, List<HumanName> baseHumanNameSet, ResourceSoTConduitActionResponse additiveResponse, List<HumanName> additiveHumanNameSet) {
-        if (baseHumanNameSet.isEmpty()) {
-            baseHumanNameSet.addAll(additiveHumanNameSet);
-        } else {
-            for (HumanName currentBaseHumanName : baseHumanNameSet) {
-                for (HumanName currentAdditiveHumanName : additiveHumanNameSet) {
-                    boolean sameUse = currentBaseHumanName.getUse().equals(currentAdditiveHumanName.getUse());
-                    boolean sameFamilyName = currentBaseHumanName.getFamily().contentEquals(currentAdditiveHumanName.getFamily());
-                    boolean sameGivenName = currentBaseHumanName.getGiven().containsAll(currentAdditiveHumanName.getGiven());
-                    boolean baseNameIsCurrent = isAttributeCurrent(currentBaseHumanName.getPeriod());
-                    boolean additiveNameIsCurrent = isAttributeCurrent(currentAdditiveHumanName.getPeriod());
-                    if (sameUse && sameFamilyName && sameGivenName && baseNameIsCurrent && additiveNameIsCurrent) {
-                        if (!baseHasPrecedence("name", baseResponse, additiveResponse)) {
-                            baseHumanNameSet.remove(currentBaseHumanName);
-                            baseHumanNameSet.add(currentAdditiveHumanName);
-                        }
-                    } else {
-                        baseHumanNameSet.add(currentAdditiveHumanName);
-                    }
-                }
-            }
+        // The base given names need only include the additive ones, so (Use, FamilyName) is the key
+        KeyedListMerger.merge(baseHumanNameSet, additiveHumanNameSet, this::humanNameKey,
+                (base, additive) -> givenNames(base).containsAll(givenNames(additive)),
+                baseHasPrecedence(NAME_ATTRIBUTE, baseResponse, additiveResponse));
+    }
+
+    private Object humanNameKey(HumanName humanName) {
+        if (!isAttributeCurrent(humanName.hasPeriod() ? humanName.getPeriod() : null)) {
+            return (null);
         }
+        return (Arrays.asList(humanName.getUse(), humanName.hasFamily() ? humanName.getFamily() : null));
     }
 
-    // HumanName Merge
+    private static List<String> givenNames(HumanName humanName) {
+        ArrayList<String> givenNames = new ArrayList<>();
+        for (StringType givenName : humanName.getGiven()) {
+            givenNames.add(givenName.getValue());
+        }
+        return (givenNames);
+    }
+
+    // ContactPoint Merge
 
     /**
      * This function merges the (set of) ContactPoint from the baseResponse and additiveResponse elements. If it
-     * detects that a HumanName in one response has the same (Use, System) and are both "current" it will
+     * detects that a ContactPoint in one response has the same (Use, System) and are both "current" it will
      * apply the precedence algorithm to the Property to ascertain which to keep.
      *
      * @param baseResponse     The "base" response to be enhanced
      * @param additiveResponse The "additive" response to be used to extract and add content to the "base"
      */
     public void mergeContactPoints(ResourceSoTConduitActionResponse baseResponse, List<ContactPoint> baseContactPointSet, ResourceSoTConduitActionResponse additiveResponse, List<ContactPoint> additiveContactPointSet) {
-        if (baseContactPointSet.isEmpty()) {
-            baseContactPointSet.addAll(additiveContactPointSet);
-        } else {
-            for (ContactPoint currentBaseContactPoint : baseContactPointSet) {
-                for (ContactPoint currentAdditiveContactPoint : additiveContactPointSet) {
-                    boolean sameUse = currentBaseContactPoint.getUse().equals(currentAdditiveContactPoint.getUse());
-                    boolean sameSystem = currentBaseContactPoint.getSystem().equals(currentAdditiveContactPoint.getSystem());
-                    boolean baseContactPointIsCurrent = isAttributeCurrent(currentBaseContactPoint.getPeriod());
-                    boolean additiveContactPointIsCurrent = isAttributeCurrent(currentAdditiveContactPoint.getPeriod());
-                    if (sameUse && sameSystem && baseContactPointIsCurrent && additiveContactPointIsCurrent) {
-                        if (!baseHasPrecedence("telecom", baseResponse, additiveResponse)) {
-                            baseContactPointSet.remove(currentBaseContactPoint);
-                            baseContactPointSet.add(currentAdditiveContactPoint);
-                        }
-                    } else {
-                        baseContactPointSet.add(currentAdditiveContactPoint);
-                    }
-                }
-            }
+        KeyedListMerger.merge(baseContactPointSet, additiveContactPointSet, this::contactPointKey, null,
+                baseHasPrecedence(TELECOM_ATTRIBUTE, baseResponse, additiveResponse));
+    }
+
+    private Object contactPointKey(ContactPoint contactPoint) {
+        if (!isAttributeCurrent(contactPoint.hasPeriod() ? contactPoint.getPeriod() : null)) {
+            return (null);
         }
+        return (Arrays.asList(contactPoint.getUse(), contactPoint.getSystem()));
     }
 
     // Address Merge
@@ -191,91 +197,41 @@ public class PerPropertyMergeHelpers {
      * @param additiveResponse The "additive" response to be used to extract and add content to the "base"
      */
     public void mergeAddress(ResourceSoTConduitActionResponse baseResponse, List<Address> baseAddressSet, ResourceSoTConduitActionResponse additiveResponse, List<Address> additiveAddressSet) {
-        if (baseAddressSet.isEmpty()) {
-            baseAddressSet.addAll(additiveAddressSet);
-        } else {
-            for (Address currentBaseAddress : baseAddressSet) {
-                for (Address currentAdditiveAddress : additiveAddressSet) {
-                    boolean sameUse = currentBaseAddress.getUse().equals(currentAdditiveAddress.getUse());
-                    boolean sameType = currentBaseAddress.getType().equals(currentAdditiveAddress.getType());
-                    boolean baseContactPointIsCurrent = isAttributeCurrent(currentBaseAddress.getPeriod());
-                    boolean additiveContactPointIsCurrent = isAttributeCurrent(currentAdditiveAddress.getPeriod());
-                    if (sameUse && sameType && baseContactPointIsCurrent && additiveContactPointIsCurrent) {
-                        if (!baseHasPrecedence("telecom", baseResponse, additiveResponse)) {
-                            baseAddressSet.remove(currentBaseAddress);
-                            baseAddressSet.add(currentAdditiveAddress);
-                        }
-                    } else {
-                        baseAddressSet.add(currentAdditiveAddress);
-                    }
-                }
-            }
+        KeyedListMerger.merge(baseAddressSet, additiveAddressSet, this::addressKey, null,
+                baseHasPrecedence(TELECOM_ATTRIBUTE, baseResponse, additiveResponse));
+    }
+
+    private Object addressKey(Address address) {
+        if (!isAttributeCurrent(address.hasPeriod() ? address.getPeriod() : null)) {
+            return (null);
         }
+        return (Arrays.asList(address.getUse(), address.getType()));
     }
 
     // Attachments Merge
 
     /**
      * This function merges the (set of) Attachments from the baseResponse and additiveResponse elements. If it
-     * detects that an Attachment in one response has the same (contentType, language, url, title, creation) and are both "current" it will
-     * apply the precedence algorithm to the Property to ascertain which to keep.
+     * detects that an Attachment in one response has the same (contentType, language, url, title, creation) it will
+     * apply the precedence algorithm to the Property to ascertain which to keep. Absent values are only the same as
+     * other absent values.
      *
      * @param propertyName  The "property" name to which these Attachments are associated within the Resource
      * @param baseResponse     The "base" response to be enhanced
      * @param additiveResponse The "additive" response to be used to extract and add content to the "base"
      */
     public void mergeAttachments(String propertyName, ResourceSoTConduitActionResponse baseResponse, List<Attachment> baseAttachmentSet, ResourceSoTConduitActionResponse additiveResponse, List<Attachment> additiveAttachmentSet) {
-        if (baseAttachmentSet.isEmpty()) {
-            baseAttachmentSet.addAll(additiveAttachmentSet);
-        } else {
-            for (Attachment currentBaseAttachment : baseAttachmentSet) {
-                for (Attachment currentAdditiveAttachment : additiveAttachmentSet) {
-                    boolean sameContentType = false;
-                    if (currentBaseAttachment.hasContentType() && currentAdditiveAttachment.hasContentType()) {
-                        sameContentType = currentBaseAttachment.getContentType().equals(currentAdditiveAttachment.getContentType());
-                    }
-                    if (!currentBaseAttachment.hasContentType() && !currentAdditiveAttachment.hasContentType()) {
-                        sameContentType = true;
-                    }
-                    boolean sameLanguageCode = false;
-                    if (currentBaseAttachment.hasLanguage() && currentAdditiveAttachment.hasLanguage()) {
-                        sameLanguageCode = currentBaseAttachment.getLanguage().equals(currentAdditiveAttachment.getLanguage());
-                    }
-                    if (!currentBaseAttachment.hasLanguage() && !currentAdditiveAttachment.hasLanguage()) {
-                        sameLanguageCode = true;
-                    }
-                    boolean sameURL = false;
-                    if (currentBaseAttachment.hasUrl() && currentAdditiveAttachment.hasUrl()) {
-                        sameURL = currentBaseAttachment.getUrl().equals(currentAdditiveAttachment.getUrl());
-                    }
-                    if (!currentBaseAttachment.hasUrl() && !currentAdditiveAttachment.hasUrl()) {
-                        sameURL = true;
-                    }
-                    boolean sameTitle = false;
-                    if (currentBaseAttachment.hasTitle() && currentAdditiveAttachment.hasTitle()) {
-                        sameTitle = currentBaseAttachment.getTitle().contentEquals(currentAdditiveAttachment.getTitle());
-                    }
-                    if (!currentBaseAttachment.hasTitle() && !currentAdditiveAttachment.hasTitle()) {
-                        sameTitle = true;
-                    }
-                    boolean sameCreationDate = false;
-                    if (currentBaseAttachment.hasCreation() && currentAdditiveAttachment.hasCreation()) {
-                        sameCreationDate = currentBaseAttachment.getCreation().compareTo(currentAdditiveAttachment.getCreation()) == 0;
-                    }
-                    if (!currentBaseAttachment.hasTitle() && !currentAdditiveAttachment.hasTitle()) {
-                        sameCreationDate = true;
-                    }
-                    if (sameContentType && sameLanguageCode && sameURL && sameTitle && sameCreationDate) {
-                        if (!baseHasPrecedence(propertyName, baseResponse, additiveResponse)) {
-                            baseAttachmentSet.remove(currentBaseAttachment);
-                            baseAttachmentSet.add(currentAdditiveAttachment);
-                        }
-                    } else {
-                        baseAttachmentSet.add(currentAdditiveAttachment);
-                    }
-                }
-            }
-        }
+        KeyedListMerger.merge(baseAttachmentSet, additiveAttachmentSet, PerPropertyMergeHelpers::attachmentKey, null,
+                baseHasPrecedence(SoTAttributePrecedence.attributeOrdinal(propertyName), baseResponse, additiveResponse));
+    }
+
+    private static Object attachmentKey(Attachment attachment) {
+        return (Arrays.asList(
+                attachment.hasContentType() ? attachment.getContentType() : null,
+                attachment.hasLanguage() ? attachment.getLanguage() : null,
+                attachment.hasUrl() ? attachment.getUrl() : null,
+                attachment.hasTitle() ? attachment.getTitle() : null,
+                attachment.hasCreation() ? attachment.getCreation().getTime() : null));
     }
 
     // CodeableConcept (Additive) Merge
@@ -289,33 +245,52 @@ public class PerPropertyMergeHelpers {
      * @param additiveCodeableConceptSet The "additive" CodeableConcept List to be used be examined and add content to the "base"
      */
     public void mergeCodeableConcept(List<CodeableConcept> baseCodeableConceptSet, List<CodeableConcept> additiveCodeableConceptSet) {
-        if (baseCodeableConceptSet.isEmpty()) {
-            baseCodeableConceptSet.addAll(additiveCodeableConceptSet);
-            return;
-        }
-        if (additiveCodeableConceptSet.isEmpty()) {
-            return;
+        KeyedListMerger.merge(baseCodeableConceptSet, additiveCodeableConceptSet, PerPropertyMergeHelpers::codeableConceptKey,
+                (base, additive) -> base.equalsDeep(additive), true);
+    }
+
+    /**
+     * The (ordered) Codings (system, code) and text of the CodeableConcept - the same for any two CodeableConcepts
+     * that are equalsDeep(), and rarely the same otherwise.
+     */
+    private static Object codeableConceptKey(CodeableConcept codeableConcept) {
+        if (codeableConcept == null) {
+            return (Collections.emptyList());
         }
-        for (CodeableConcept currentAdditiveCodeableConcept : baseCodeableConceptSet) {
-            boolean isNotPresentInBase = true;
-            for (CodeableConcept currentBaseCodeableConcept : additiveCodeableConceptSet) {
-                if(currentBaseCodeableConcept.equalsDeep(currentAdditiveCodeableConcept)){
-                    isNotPresentInBase = false;
-                    break;
-                }
-            }
-            if(isNotPresentInBase){
-                baseCodeableConceptSet.add(currentAdditiveCodeableConcept);
-            }
+        ArrayList<Object> key = new ArrayList<>(codeableConcept.getCoding().size() * 2 + 1);
+        for (Coding coding : codeableConcept.getCoding()) {
+            key.add(coding.hasSystem() ? coding.getSystem() : null);
+            key.add(coding.hasCode() ? coding.getCode() : null);
         }
+        key.add(codeableConcept.hasText() ? codeableConcept.getText() : null);
+        return (key);
     }
 
     //
     // Helper Methods
     //
 
+    /**
+     * Whether the base response has precedence over the other for the named property. Equivalent to
+     * baseHasPrecedence(SoTAttributePrecedence.attributeOrdinal(propertyName), base, other).
+     */
     public boolean baseHasPrecedence(String propertyName, ResourceSoTConduitActionResponse base, ResourceSoTConduitActionResponse other) {
         LOG.debug(".baseHasPrecedence(): Entry, propertyName --> {}, base --> {}, other --> {}", propertyName, base, other);
+        return (baseHasPrecedence(SoTAttributePrecedence.attributeOrdinal(propertyName), base, other));
+    }
+
+    /**
+     * Whether the base response has precedence over the other for the property. The response with the better
+     * SoTConduitGradeEnum (the base, where they are the same) decides - it keeps precedence unless the other response
+     * holds the property in an (immutable, authoritative, informational or anecdotal) category it does not. Each
+     * response's categories are compiled (see SoTAttributePrecedence), so this is a handful of array lookups.
+     *
+     * @param attributeOrdinal The ordinal of the property (from SoTAttributePrecedence.attributeOrdinal())
+     * @param base             The "base" response
+     * @param other            The "other" (additive) response
+     * @return True if the content of the base response should be kept
+     */
+    public boolean baseHasPrecedence(int attributeOrdinal, ResourceSoTConduitActionResponse base, ResourceSoTConduitActionResponse other) {
         if (base == null && other == null) {
             return (true);
         }
@@ -325,216 +300,6 @@ public class PerPropertyMergeHelpers {
         if (other == null) {
             return (true);
         }
-        if (base.getSoTGrade() == SoTConduitGradeEnum.AUTHORITATIVE) {
-            if (!base.getImmutableAttributes().contains(propertyName)) {
-                if (other.getImmutableAttributes().contains(propertyName)) {
-                    return (false);
-                }
-            }
-            if (!base.getAuthoritativeAttributes().contains(propertyName)) {
-                if (other.getAuthoritativeAttributes().contains(propertyName)) {
-                    return (false);
-                }
-            }
-            if (!base.getInformationalAttributes().contains(propertyName)) {
-                if (other.getInformationalAttributes().contains(propertyName)) {
-                    return (false);
-                }
-            }
-            if (!base.getAnecdotalAttributes().contains(propertyName)) {
-                if (other.getAnecdotalAttributes().contains(propertyName)) {
-                    return (false);
-                }
-            }
-            return (true);
-        }
-        if (other.getSoTGrade() == SoTConduitGradeEnum.AUTHORITATIVE) {
-            if (!other.getImmutableAttributes().contains(propertyName)) {
-                if (base.getImmutableAttributes().contains(propertyName)) {
-                    return (true);
-                }
-            }
-            if (!other.getAuthoritativeAttributes().contains(propertyName)) {
-                if (base.getAuthoritativeAttributes().contains(propertyName)) {
-                    return (true);
-                }
-            }
-            if (!other.getInformationalAttributes().contains(propertyName)) {
-                if (base.getInformationalAttributes().contains(propertyName)) {
-                    return (true);
-                }
-            }
-            if (!other.getAnecdotalAttributes().contains(propertyName)) {
-                if (base.getAnecdotalAttributes().contains(propertyName)) {
-                    return (true);
-                }
-            }
-            return (false);
-        }
-        if (base.getSoTGrade() == SoTConduitGradeEnum.PARTIALLY_AUTHORITATIVE) {
-            if (!base.getImmutableAttributes().contains(propertyName)) {
-                if (other.getImmutableAttributes().contains(propertyName)) {
-                    return (false);
-                }
-            }
-            if (!base.getAuthoritativeAttributes().contains(propertyName)) {
-                if (other.getAuthoritativeAttributes().contains(propertyName)) {
-                    return (false);
-                }
-            }
-            if (!base.getInformationalAttributes().contains(propertyName)) {
-                if (other.getInformationalAttributes().contains(propertyName)) {
-                    return (false);
-                }
-            }
-            if (!base.getAnecdotalAttributes().contains(propertyName)) {
-                if (other.getAnecdotalAttributes().contains(propertyName)) {
-                    return (false);
-                }
-            }
-            return (true);
-        }
-        if (other.getSoTGrade() == SoTConduitGradeEnum.PARTIALLY_AUTHORITATIVE) {
-            if (!other.getImmutableAttributes().contains(propertyName)) {
-                if (base.getImmutableAttributes().contains(propertyName)) {
-                    return (true);
-                }
-            }
-            if (!other.getAuthoritativeAttributes().contains(propertyName)) {
-                if (base.getAuthoritativeAttributes().contains(propertyName)) {
-                    return (true);
-                }
-            }
-            if (!other.getInformationalAttributes().contains(propertyName)) {
-                if (base.getInformationalAttributes().contains(propertyName)) {
-                    return (true);
-                }
-            }
-            if (!other.getAnecdotalAttributes().contains(propertyName)) {
-                if (base.getAnecdotalAttributes().contains(propertyName)) {
-                    return (true);
-                }
-            }
-            return (false);
-        }
-        if (base.getSoTGrade() == SoTConduitGradeEnum.INFORMATIVE) {
-            if (!base.getImmutableAttributes().contains(propertyName)) {
-                if (other.getImmutableAttributes().contains(propertyName)) {
-                    return (false);
-                }
-            }
-            if (!base.getAuthoritativeAttributes().contains(propertyName)) {
-                if (other.getAuthoritativeAttributes().contains(propertyName)) {
-                    return (false);
-                }
-            }
-            if (!base.getInformationalAttributes().contains(propertyName)) {
-                if (other.getInformationalAttributes().contains(propertyName)) {
-                    return (false);
-                }
-            }
-            if (!base.getAnecdotalAttributes().contains(propertyName)) {
-                if (other.getAnecdotalAttributes().contains(propertyName)) {
-                    return (false);
-                }
-            }
-            return (true);
-        }
-        if (other.getSoTGrade() == SoTConduitGradeEnum.INFORMATIVE) {
-            if (!other.getImmutableAttributes().contains(propertyName)) {
-                if (base.getImmutableAttributes().contains(propertyName)) {
-                    return (true);
-                }
-            }
-            if (!other.getAuthoritativeAttributes().contains(propertyName)) {
-                if (base.getAuthoritativeAttributes().contains(propertyName)) {
-                    return (true);
-                }
-            }
-            if (!other.getInformationalAttributes().contains(propertyName)) {
-                if (base.getInformationalAttributes().contains(propertyName)) {
-                    return (true);
-                }
-            }
-            if (!other.getAnecdotalAttributes().contains(propertyName)) {
-                if (base.getAnecdotalAttributes().contains(propertyName)) {
-                    return (true);
-                }
-            }
-            return (false);
-        }
-        if (base.getSoTGrade() == SoTConduitGradeEnum.PARTIALLY_INFORMATIVE) {
-            if (!base.getImmutableAttributes().contains(propertyName)) {
-                if (other.getImmutableAttributes().contains(propertyName)) {
-                    return (false);
-                }
-            }
-            if (!base.getAuthoritativeAttributes().contains(propertyName)) {
-                if (other.getAuthoritativeAttributes().contains(propertyName)) {
-                    return (false);
-                }
-            }
-            if (!base.getInformationalAttributes().contains(propertyName)) {
-                if (other.getInformationalAttributes().contains(propertyName)) {
-                    return (false);
-                }
-            }
-            if (!base.getAnecdotalAttributes().contains(propertyName)) {
-                if (other.getAnecdotalAttributes().contains(propertyName)) {
-                    return (false);
-                }
-            }
-            return (true);
-        }
-        if (other.getSoTGrade() == SoTConduitGradeEnum.PARTIALLY_INFORMATIVE) {
-            if (!other.getImmutableAttributes().contains(propertyName)) {
-                if (base.getImmutableAttributes().contains(propertyName)) {
-                    return (true);
-                }
-            }
-            if (!other.getAuthoritativeAttributes().contains(propertyName)) {
-                if (base.getAuthoritativeAttributes().contains(propertyName)) {
-                    return (true);
-                }
-            }
-            if (!other.getInformationalAttributes().contains(propertyName)) {
-                if (base.getInformationalAttributes().contains(propertyName)) {
-                    return (true);
-                }
-            }
-            if (!other.getAnecdotalAttributes().contains(propertyName)) {
-                if (base.getAnecdotalAttributes().contains(propertyName)) {
-                    return (true);
-                }
-            }
-            return (false);
-        }
-        if (base.getSoTGrade() == SoTConduitGradeEnum.ANECDOTAL) {
-            if (!base.getImmutableAttributes().contains(propertyName)) {
-                if (other.getImmutableAttributes().contains(propertyName)) {
-                    return (false);
-                }
-            }
-            if (!base.getAuthoritativeAttributes().contains(propertyName)) {
-                if (other.getAuthoritativeAttributes().contains(propertyName)) {
-                    return (false);
-                }
-            }
-            if (!base.getInformationalAttributes().contains(propertyName)) {
-                if (other.getInformationalAttributes().contains(propertyName)) {
-                    return (false);
-                }
-            }
-            if (!base.getAnecdotalAttributes().contains(propertyName)) {
-                if (other.getAnecdotalAttributes().contains(propertyName)) {
-                    return (false);
-                }
-            }
-            return (true);
-        }
-        return (false);
+        return (SoTAttributePrecedence.baseHasPrecedence(attributeOrdinal, base.getSoTGrade(), base.getAttributePrecedence(), other.getSoTGrade(), other.getAttributePrecedence()));
     }
-
-
-
 }
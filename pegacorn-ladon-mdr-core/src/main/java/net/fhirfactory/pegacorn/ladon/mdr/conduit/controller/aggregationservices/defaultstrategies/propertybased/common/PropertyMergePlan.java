@@ -0,0 +1,420 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.mdr.conduit.controller.aggregationservices.defaultstrategies.propertybased.common;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import ca.uhn.fhir.context.BaseRuntimeChildDefinition;
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.context.RuntimeResourceDefinition;
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.mdr.ResourceSoTConduitActionResponse;
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.mdr.SoTAttributePrecedence;
+import org.hl7.fhir.r4.model.Address;
+import org.hl7.fhir.r4.model.Attachment;
+import org.hl7.fhir.r4.model.Base;
+import org.hl7.fhir.r4.model.BooleanType;
+import org.hl7.fhir.r4.model.CodeableConcept;
+import org.hl7.fhir.r4.model.ContactPoint;
+import org.hl7.fhir.r4.model.HumanName;
+import org.hl7.fhir.r4.model.Identifier;
+import org.hl7.fhir.r4.model.PrimitiveType;
+import org.hl7.fhir.r4.model.Property;
+import org.hl7.fhir.r4.model.Reference;
+import org.hl7.fhir.r4.model.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A property-by-property merge of one Resource type, compiled (once) from the HAPI RuntimeResourceDefinition of the
+ * type. Each child property becomes a step with a PropertyMergeRuleEnum (from its cardinality and datatype, unless
+ * overridden), its precedence attribute ordinal and MethodHandles onto the backing field - so executing the plan
+ * involves no reflection (nor any of the auto-creation the HAPI getters do). IGNOREd properties keep their step, so
+ * that their values can still be read and set through the plan.
+ *
+ * The Resource and DomainResource properties (id, meta, text, extensions etc.) are left to the superclass
+ * aggregation of DomainResourceDefaultContentAggregationService.
+ */
+public class PropertyMergePlan {
+    private static final Logger LOG = LoggerFactory.getLogger(PropertyMergePlan.class);
+
+    private static final Set<String> SUPERCLASS_PROPERTIES = new HashSet<>(Arrays.asList("id", "meta", "implicitRules",
+            "language", "text", "contained", "extension", "modifierExtension"));
+    private static final Set<Class<?>> KEYED_ELEMENT_TYPES = new HashSet<>(Arrays.asList(Identifier.class, HumanName.class,
+            ContactPoint.class, Address.class, Attachment.class, Reference.class, CodeableConcept.class));
+    // How far below the element its structural key looks - deep enough to tell apart a contact by its name or telecom
+    private static final int STRUCTURAL_KEY_DEPTH = 2;
+    private static final Map<Class<?>, String[]> CHILD_NAMES = new ConcurrentHashMap<>();
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+    private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+    private final Class<? extends Resource> resourceClass;
+    private final PropertyMergeStep[] steps;
+
+    private PropertyMergePlan(Class<? extends Resource> resourceClass, List<PropertyMergeStep> steps){
+        this.resourceClass = resourceClass;
+        this.steps = steps.toArray(new PropertyMergeStep[0]);
+    }
+
+    /**
+     * Compiles the merge plan for the Resource type.
+     *
+     * @param fhirContext   The (R4) FhirContext holding the Resource definitions
+     * @param resourceClass The Resource type
+     * @param ruleOverrides The rule to use for the named properties, in place of the default (may be empty)
+     * @return The compiled plan
+     */
+    public static PropertyMergePlan compile(FhirContext fhirContext, Class<? extends Resource> resourceClass, Map<String, PropertyMergeRuleEnum> ruleOverrides){
+        LOG.debug(".compile(): Entry, resourceClass --> {}", resourceClass);
+        RuntimeResourceDefinition resourceDefinition = fhirContext.getResourceDefinition(resourceClass);
+        ArrayList<PropertyMergeStep> steps = new ArrayList<>();
+        for(BaseRuntimeChildDefinition childDefinition: resourceDefinition.getChildren()){
+            String propertyName = childDefinition.getElementName();
+            if(propertyName.endsWith("[x]")){
+                propertyName = propertyName.substring(0, propertyName.length() - 3);
+            }
+            if(SUPERCLASS_PROPERTIES.contains(propertyName)){
+                continue;
+            }
+            Field field = findField(resourceClass, propertyName);
+            if(field == null){
+                LOG.warn(".compile(): No field backs property {} of {}, it will not be merged", propertyName, resourceClass.getSimpleName());
+                continue;
+            }
+            boolean repeating = childDefinition.getMax() != 1 && List.class.isAssignableFrom(field.getType());
+            Class<?> elementType = repeating ? listElementType(field) : field.getType();
+            PropertyMergeRuleEnum rule = ruleOverrides.get(propertyName);
+            if(rule == null){
+                rule = defaultRule(repeating, elementType);
+            }
+            try {
+                field.setAccessible(true);
+                MethodHandle getter = MethodHandles.lookup().unreflectGetter(field).asType(GETTER_TYPE);
+                MethodHandle setter = MethodHandles.lookup().unreflectSetter(field).asType(SETTER_TYPE);
+                steps.add(new PropertyMergeStep(propertyName, rule, repeating, elementType, getter, setter));
+            } catch(IllegalAccessException | RuntimeException ex){
+                LOG.warn(".compile(): Cannot access the field backing property {} of {}, it will not be merged, error --> {}", propertyName, resourceClass.getSimpleName(), ex.getMessage());
+            }
+        }
+        LOG.debug(".compile(): Exit, resourceClass --> {}, step count --> {}", resourceClass, steps.size());
+        return(new PropertyMergePlan(resourceClass, steps));
+    }
+
+    public Class<? extends Resource> getResourceClass() {
+        return resourceClass;
+    }
+
+    public List<String> getPropertyNames(){
+        ArrayList<String> propertyNames = new ArrayList<>(steps.length);
+        for(PropertyMergeStep step: steps){
+            propertyNames.add(step.propertyName);
+        }
+        return(propertyNames);
+    }
+
+    public PropertyMergeRuleEnum getRule(String propertyName){
+        PropertyMergeStep step = getStep(propertyName);
+        return(step == null ? PropertyMergeRuleEnum.IGNORE : step.rule);
+    }
+
+    public boolean isRepeating(String propertyName){
+        PropertyMergeStep step = getStep(propertyName);
+        return(step != null && step.repeating);
+    }
+
+    /**
+     * The (raw) value of the property of the resource - null if it has not been set, a List for a repeating property.
+     */
+    public Object getValue(Resource resource, String propertyName){
+        PropertyMergeStep step = getStep(propertyName);
+        if(step == null){
+            return(null);
+        }
+        return(step.get(resource));
+    }
+
+    /**
+     * Sets the (raw) value of the property of the resource.
+     */
+    public void setValue(Resource resource, String propertyName, Object value){
+        PropertyMergeStep step = getStep(propertyName);
+        if(step != null){
+            step.set(resource, value);
+        }
+    }
+
+    /**
+     * Merges the Resource of the additiveResponse into the Resource of the baseResponse, property by property.
+     */
+    public void execute(PerPropertyMergeHelpers mergeHelpers, ResourceSoTConduitActionResponse baseResponse, ResourceSoTConduitActionResponse additiveResponse){
+        Resource baseResource = (Resource) baseResponse.getResource();
+        Resource additiveResource = (Resource) additiveResponse.getResource();
+        for(PropertyMergeStep step: steps){
+            if(step.rule == PropertyMergeRuleEnum.IGNORE){
+                continue;
+            }
+            Object additiveValue = step.get(additiveResource);
+            if(isEmpty(additiveValue)){
+                continue;
+            }
+            Object baseValue = step.get(baseResource);
+            switch(step.rule){
+                case FILL_IF_ABSENT:
+                    if(isEmpty(baseValue)){
+                        step.set(baseResource, step.repeating ? new ArrayList<>((List<?>) additiveValue) : additiveValue);
+                    }
+                    break;
+                case PRECEDENCE:
+                    if(isEmpty(baseValue) || !mergeHelpers.baseHasPrecedence(step.attributeOrdinal, baseResponse, additiveResponse)){
+                        step.set(baseResource, step.repeating ? new ArrayList<>((List<?>) additiveValue) : additiveValue);
+                    }
+                    break;
+                case ANY_TRUE:
+                    if(additiveValue instanceof BooleanType && ((BooleanType) additiveValue).booleanValue()){
+                        if(isEmpty(baseValue) || !((BooleanType) baseValue).booleanValue()){
+                            step.set(baseResource, additiveValue);
+                        }
+                    }
+                    break;
+                case KEYED_MERGE:
+                case APPEND_DISTINCT:
+                    if(baseValue == null){
+                        baseValue = new ArrayList<>();
+                        step.set(baseResource, baseValue);
+                    }
+                    mergeList(step, mergeHelpers, baseResponse, (List<?>) baseValue, additiveResponse, (List<?>) additiveValue);
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void mergeList(PropertyMergeStep step, PerPropertyMergeHelpers mergeHelpers, ResourceSoTConduitActionResponse baseResponse, List baseList, ResourceSoTConduitActionResponse additiveResponse, List additiveList){
+        if(step.rule == PropertyMergeRuleEnum.KEYED_MERGE){
+            if(step.elementType == Identifier.class){
+                mergeHelpers.mergeIdentifiers(baseResponse, baseList, additiveResponse, additiveList);
+                return;
+            }
+            if(step.elementType == HumanName.class){
+                mergeHelpers.mergeHumanNames(baseResponse, baseList, additiveResponse, additiveList);
+                return;
+            }
+            if(step.elementType == ContactPoint.class){
+                mergeHelpers.mergeContactPoints(baseResponse, baseList, additiveResponse, additiveList);
+                return;
+            }
+            if(step.elementType == Address.class){
+                mergeHelpers.mergeAddress(baseResponse, baseList, additiveResponse, additiveList);
+                return;
+            }
+            if(step.elementType == Attachment.class){
+                mergeHelpers.mergeAttachments(step.propertyName, baseResponse, baseList, additiveResponse, additiveList);
+                return;
+            }
+            if(step.elementType == Reference.class){
+                mergeHelpers.mergeReferences(baseResponse, baseList, additiveResponse, additiveList);
+                return;
+            }
+            if(step.elementType == CodeableConcept.class){
+                mergeHelpers.mergeCodeableConcept(baseList, additiveList);
+                return;
+            }
+        }
+        KeyedListMerger.<Base>merge(baseList, additiveList, PropertyMergePlan::distinctKey, Base::equalsDeep, true);
+    }
+
+    private static Object distinctKey(Base element){
+        if(element instanceof PrimitiveType){
+            return(Arrays.asList(element.fhirType(), ((PrimitiveType<?>) element).getValueAsString()));
+        }
+        // Keyed by the element's structure, so equalsDeep() is mostly needed only to confirm a match
+        return(Arrays.asList(element.fhirType(), structuralHash(element, STRUCTURAL_KEY_DEPTH)));
+    }
+
+    /**
+     * A hash of the element's primitive values, down to the given depth. Elements that are equalsDeep() have the
+     * same hash: children without a value (equalsDeep() treats them as absent) are skipped and repeating children
+     * are hashed in order. Whatever lies deeper is left to equalsDeep() - walking the whole structure of every
+     * element costs more than the comparisons it saves on short lists.
+     */
+    private static int structuralHash(Base element, int depth){
+        int hash = 0;
+        for(String childName: childNames(element)){
+            Base[] childValues = element.getProperty(childName.hashCode(), childName, false);
+            if(childValues == null){
+                continue;
+            }
+            for(Base childValue: childValues){
+                if(childValue == null){
+                    continue;
+                }
+                int childHash;
+                if(childValue instanceof PrimitiveType){
+                    String value = ((PrimitiveType<?>) childValue).getValueAsString();
+                    if(value == null){
+                        continue;
+                    }
+                    childHash = value.hashCode();
+                } else {
+                    if(depth <= 1){
+                        continue;
+                    }
+                    childHash = structuralHash(childValue, depth - 1);
+                    if(childHash == 0){
+                        continue;
+                    }
+                }
+                hash = 31 * hash + childName.hashCode();
+                hash = 31 * hash + childHash;
+            }
+        }
+        return(hash);
+    }
+
+    /**
+     * The names of the element type's children, as getProperty() takes them (i.e. without the "[x]" of choice types),
+     * taken once per type - children() builds a Property for every child on every call.
+     */
+    private static String[] childNames(Base element){
+        String[] childNames = CHILD_NAMES.get(element.getClass());
+        if(childNames == null){
+            List<String> names = new ArrayList<>();
+            for(Property child: element.children()){
+                String childName = child.getName();
+                if(childName.endsWith("[x]")){
+                    childName = childName.substring(0, childName.length() - 3);
+                }
+                names.add(childName);
+            }
+            childNames = names.toArray(new String[0]);
+            CHILD_NAMES.put(element.getClass(), childNames);
+        }
+        return(childNames);
+    }
+
+    private static boolean isEmpty(Object value){
+        if(value == null){
+            return(true);
+        }
+        if(value instanceof List){
+            return(((List<?>) value).isEmpty());
+        }
+        if(value instanceof Base){
+            return(((Base) value).isEmpty());
+        }
+        return(false);
+    }
+
+    private static PropertyMergeRuleEnum defaultRule(boolean repeating, Class<?> elementType){
+        if(!repeating){
+            return(PropertyMergeRuleEnum.FILL_IF_ABSENT);
+        }
+        if(KEYED_ELEMENT_TYPES.contains(elementType)){
+            return(PropertyMergeRuleEnum.KEYED_MERGE);
+        }
+        return(PropertyMergeRuleEnum.APPEND_DISTINCT);
+    }
+
+    private PropertyMergeStep getStep(String propertyName){
+        for(PropertyMergeStep step: steps){
+            if(step.propertyName.equals(propertyName)){
+                return(step);
+            }
+        }
+        return(null);
+    }
+
+    private static Field findField(Class<?> resourceClass, String propertyName){
+        // HAPI suffixes fields whose names are Java keywords (e.g. class_)
+        for(Class<?> currentClass = resourceClass; currentClass != null && currentClass != Object.class; currentClass = currentClass.getSuperclass()){
+            for(String fieldName: Arrays.asList(propertyName, propertyName + "_")){
+                try {
+                    return(currentClass.getDeclaredField(fieldName));
+                } catch(NoSuchFieldException ex){
+                    // try the next candidate
+                }
+            }
+        }
+        return(null);
+    }
+
+    private static Class<?> listElementType(Field field){
+        Type genericType = field.getGenericType();
+        if(genericType instanceof ParameterizedType){
+            Type[] typeArguments = ((ParameterizedType) genericType).getActualTypeArguments();
+            if(typeArguments.length == 1 && typeArguments[0] instanceof Class){
+                return((Class<?>) typeArguments[0]);
+            }
+        }
+        return(Base.class);
+    }
+
+    private static final class PropertyMergeStep {
+        private final String propertyName;
+        private final PropertyMergeRuleEnum rule;
+        private final boolean repeating;
+        private final Class<?> elementType;
+        private final int attributeOrdinal;
+        private final MethodHandle getter;
+        private final MethodHandle setter;
+
+        private PropertyMergeStep(String propertyName, PropertyMergeRuleEnum rule, boolean repeating, Class<?> elementType, MethodHandle getter, MethodHandle setter){
+            this.propertyName = propertyName;
+            this.rule = rule;
+            this.repeating = repeating;
+            this.elementType = elementType;
+            this.attributeOrdinal = SoTAttributePrecedence.attributeOrdinal(propertyName);
+            this.getter = getter;
+            this.setter = setter;
+        }
+
+        private Object get(Resource resource){
+            try {
+                return((Object) getter.invokeExact((Object) resource));
+            } catch(Throwable ex){
+                throw(new IllegalStateException("Cannot read property " + propertyName + " of " + resource.fhirType(), ex));
+            }
+        }
+
+        private void set(Resource resource, Object value){
+            try {
+                setter.invokeExact((Object) resource, value);
+            } catch(Throwable ex){
+                throw(new IllegalStateException("Cannot set property " + propertyName + " of " + resource.fhirType(), ex));
+            }
+        }
+    }
+}
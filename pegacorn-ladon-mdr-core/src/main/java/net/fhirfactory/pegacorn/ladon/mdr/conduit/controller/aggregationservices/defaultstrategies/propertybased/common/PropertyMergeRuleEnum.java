@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.mdr.conduit.controller.aggregationservices.defaultstrategies.propertybased.common;
+
+/**
+ * How a PropertyMergePlan merges a property of the additive Resource into the base Resource. The single-valued rules
+ * can also be applied to a repeating (list) property, in which case the list is treated as a single value.
+ */
+public enum PropertyMergeRuleEnum {
+    // Leave the base property alone
+    IGNORE,
+    // Take the additive value only if the base has none
+    FILL_IF_ABSENT,
+    // Take the additive value if the base has none, or if the base does not have precedence for the property
+    PRECEDENCE,
+    // (boolean) The property is true if it is true in either
+    ANY_TRUE,
+    // (list) Merge the elements by their canonical key, see PerPropertyMergeHelpers
+    KEYED_MERGE,
+    // (list) Add the additive elements that are not already (deeply) present in the base
+    APPEND_DISTINCT
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.mdr.conduit.controller.aggregationservices.defaultstrategies.propertybased.common;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Partitions a list of members (e.g. the search results returned by all the SoT Conduits) into groups that share a
+ * canonical key (e.g. a business Identifier) - directly or transitively: if A and B share a key, and B and C share
+ * another, then A, B and C are one group.
+ *
+ * The keys are hash-joined (the first member with each key being its representative) and the groups are tracked in a
+ * union-find (with union-by-size and path halving), so the cost is (expected) linear in the total number of keys.
+ * Groups are returned in the order of their first member, and members keep their relative order within a group.
+ */
+public final class TransitiveKeyGrouper {
+
+    private TransitiveKeyGrouper(){
+    }
+
+    /**
+     * @param members     The members to partition
+     * @param keyFunction The canonical keys of a member (null entries are ignored), or null/empty if it can match none
+     * @return The groups, each holding at least one member
+     */
+    public static <T> List<List<T>> group(List<T> members, Function<T, ? extends Collection<?>> keyFunction){
+        int memberCount = members.size();
+        int[] parent = new int[memberCount];
+        int[] size = new int[memberCount];
+        HashMap<Object, Integer> firstMemberWithKey = new HashMap<>();
+        for(int counter = 0; counter < memberCount; counter++){
+            parent[counter] = counter;
+            size[counter] = 1;
+        }
+        for(int counter = 0; counter < memberCount; counter++){
+            Collection<?> keys = keyFunction.apply(members.get(counter));
+            if(keys == null){
+                continue;
+            }
+            for(Object key: keys){
+                if(key == null){
+                    continue;
+                }
+                Integer representative = firstMemberWithKey.putIfAbsent(key, counter);
+                if(representative != null){
+                    union(parent, size, representative, counter);
+                }
+            }
+        }
+        ArrayList<List<T>> groups = new ArrayList<>();
+        int[] groupOfRoot = new int[memberCount];
+        for(int counter = 0; counter < memberCount; counter++){
+            groupOfRoot[counter] = -1;
+        }
+        for(int counter = 0; counter < memberCount; counter++){
+            int root = find(parent, counter);
+            if(groupOfRoot[root] < 0){
+                groupOfRoot[root] = groups.size();
+                groups.add(new ArrayList<>(size[root]));
+            }
+            groups.get(groupOfRoot[root]).add(members.get(counter));
+        }
+        return(groups);
+    }
+
+    private static int find(int[] parent, int member){
+        while(parent[member] != member){
+            parent[member] = parent[parent[member]];
+            member = parent[member];
+        }
+        return(member);
+    }
+
+    private static void union(int[] parent, int[] size, int first, int second){
+        int firstRoot = find(parent, first);
+        int secondRoot = find(parent, second);
+        if(firstRoot == secondRoot){
+            return;
+        }
+        if(size[firstRoot] < size[secondRoot]){
+            int swap = firstRoot;
+            firstRoot = secondRoot;
+            secondRoot = swap;
+        }
+        parent[secondRoot] = firstRoot;
+        size[firstRoot] += size[secondRoot];
+    }
+}
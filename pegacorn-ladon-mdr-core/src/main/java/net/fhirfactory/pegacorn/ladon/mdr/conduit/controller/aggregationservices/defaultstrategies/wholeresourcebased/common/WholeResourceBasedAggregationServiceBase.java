@@ -31,8 +31,10 @@ import org.hl7.fhir.r4.model.CodeableConcept;
 import org.hl7.fhir.r4.model.Coding;
 import org.hl7.fhir.r4.model.OperationOutcome;
 
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.mdr.ResourceGradeEnum;
 import net.fhirfactory.pegacorn.ladon.model.virtualdb.mdr.ResourceSoTConduitActionResponse;
 import net.fhirfactory.pegacorn.ladon.model.virtualdb.mdr.ResourceSoTConduitSearchResponseElement;
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.mdr.SoTConduitGradeEnum;
 import net.fhirfactory.pegacorn.ladon.model.virtualdb.operations.VirtualDBActionStatusEnum;
 import net.fhirfactory.pegacorn.ladon.model.virtualdb.operations.VirtualDBActionTypeEnum;
 import net.fhirfactory.pegacorn.ladon.model.virtualdb.operations.VirtualDBMethodOutcome;
@@ -79,6 +81,31 @@ public abstract class WholeResourceBasedAggregationServiceBase extends DefaultRe
         return(outcome);
     }
 
+    /**
+     * A failed response decides defaultActionOutcomeAggregationService() on its own: the first failure (in conduit
+     * order) is returned whatever the other responses are.
+     */
+    @Override
+    public boolean isFinalGetResponse(ResourceSoTConduitActionResponse response){
+        if(response == null || response.getStatusEnum() == null){
+            return(false);
+        }
+        return(!successfulCompletion(response.getStatusEnum()));
+    }
+
+    /**
+     * Amongst successful responses, an Authoritative & Thorough one decides defaultActionOutcomeAggregationService()
+     * on its own: nothing sorts ahead of it, and those that sort equal to it (but come later in conduit order) are
+     * left behind it by the (stable) precedence sort.
+     */
+    @Override
+    public boolean isFinalSuccessfulGetResponse(ResourceSoTConduitActionResponse response){
+        if(response == null || response.getStatusEnum() == null || !successfulCompletion(response.getStatusEnum())){
+            return(false);
+        }
+        return(response.getSoTGrade() == SoTConduitGradeEnum.AUTHORITATIVE && response.getResponseResourceGrade() == ResourceGradeEnum.THOROUGH);
+    }
+
     protected VirtualDBMethodOutcome defaultSearchOutcomeAggregationService(List<ResourceSoTConduitSearchResponseElement> searchOutcomeList){
         if(searchOutcomeList == null){
             VirtualDBMethodOutcome methodOutcome = generateBadAttributeOutcome("defaultSearchOutcomeAggregationService()", VirtualDBActionTypeEnum.SEARCH, "searchOutcomeList is null");
@@ -23,14 +23,24 @@ package net.fhirfactory.pegacorn.ladon.mdr.conduit.controller.common;
 
 import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Predicate;
 
 import javax.inject.Inject;
 
 import org.hl7.fhir.r4.model.IdType;
 import org.hl7.fhir.r4.model.Identifier;
+import org.hl7.fhir.r4.model.OperationOutcome;
 import org.hl7.fhir.r4.model.Property;
 import org.hl7.fhir.r4.model.Resource;
 import org.hl7.fhir.r4.model.ResourceType;
@@ -38,10 +48,12 @@ import org.slf4j.Logger;
 
 import net.fhirfactory.pegacorn.ladon.mdr.conduit.controller.aggregationservices.common.ResourceContentAggregationServiceBase;
 import net.fhirfactory.pegacorn.ladon.model.virtualdb.mdr.ResourceGradeEnum;
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.mdr.SoTAttributePrecedence;
 import net.fhirfactory.pegacorn.ladon.model.virtualdb.mdr.ResourceSoTConduitActionResponse;
 import net.fhirfactory.pegacorn.ladon.model.virtualdb.mdr.ResourceSoTConduitSearchResponseElement;
 import net.fhirfactory.pegacorn.ladon.model.virtualdb.mdr.SoTResourceConduit;
 import net.fhirfactory.pegacorn.ladon.model.virtualdb.operations.VirtualDBActionStatusEnum;
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.operations.VirtualDBActionTypeEnum;
 import net.fhirfactory.pegacorn.ladon.model.virtualdb.operations.VirtualDBMethodOutcome;
 import net.fhirfactory.pegacorn.ladon.model.virtualdb.operations.VirtualDBMethodOutcomeFactory;
 import net.fhirfactory.pegacorn.ladon.model.virtualdb.searches.SearchNameEnum;
@@ -49,32 +61,83 @@ import net.fhirfactory.pegacorn.ladon.model.virtualdb.searches.SearchNameEnum;
 public abstract class ResourceSoTConduitController {
     abstract protected Logger getLogger();
 
-    private HashSet<SoTResourceConduit> conduitSet;
+    private static final long DEFAULT_CONDUIT_TIMEOUT_IN_MILLIS = 5000;
+    private static final long DEFAULT_COMPLETION_HEDGING_DELAY_IN_MILLIS = 50;
+    private static final String SEARCH_RESULT_LIMIT_PROPERTY = "ladon.mdr.conduit.search.limit";
+    private static final int DEFAULT_SEARCH_RESULT_LIMIT = 1000;
+    private static final int DEFAULT_AGGREGATION_MEMO_SIZE = 1000;
+
+    // Conduits are invoked (and their responses handed to the aggregation service) in name/version order
+    private static final Comparator<SoTResourceConduit> CONDUIT_ORDER =
+            Comparator.comparing(SoTResourceConduit::getConduitName, Comparator.nullsLast(Comparator.<String>naturalOrder()))
+                    .thenComparing(SoTResourceConduit::getConduitVersion, Comparator.nullsLast(Comparator.<String>naturalOrder()));
+
+    private volatile List<SoTResourceConduit> conduitList;
+    private volatile Map<String, SoTAttributePrecedence> conduitAttributePrecedenceMap;
     private ResourceType resourceType;
+    private SoTAggregationMemo aggregationMemo;
 
     @Inject
     VirtualDBMethodOutcomeFactory outcomeFactory;
 
+    @Inject
+    SoTConduitFanOutExecutor fanOutExecutor;
+
     public ResourceSoTConduitController(){
-        this.conduitSet = new HashSet<>();
+        this.conduitList = Collections.emptyList();
+        this.conduitAttributePrecedenceMap = Collections.emptyMap();
         this.resourceType = specifyResourceType();
+        this.aggregationMemo = new SoTAggregationMemo(specifyAggregationMemoSize());
     }
 
-    public void addResourceConduit(SoTResourceConduit newConduit){
+    public synchronized void addResourceConduit(SoTResourceConduit newConduit){
         getLogger().debug(".addResourceConduit(): Entry, newConduit (SoTResourceConduit) --> {}", newConduit);
         if(newConduit == null){
             getLogger().error(".addResourceConduit(): newConduit (SoTResourceConduit) is null");
             return;
         }
-        if(conduitSet.contains(newConduit)){
+        if(conduitList.contains(newConduit)){
             getLogger().debug(".addResourceConduit(): SoTResourceConduit already exists in set, exiting");
             return;
         }
         getLogger().trace(".addResourceConduit(): Adding SoTResourceConduit to set");
-        conduitSet.add(newConduit);
+        ArrayList<SoTResourceConduit> newConduitList = new ArrayList<>(conduitList);
+        newConduitList.add(newConduit);
+        newConduitList.sort(CONDUIT_ORDER);
+        conduitList = Collections.unmodifiableList(newConduitList);
+        // Compile the conduit's attribute precedence once, here, rather than on every per-attribute merge decision
+        SoTAttributePrecedence compiledPrecedence = SoTAttributePrecedence.compile(newConduit.getImmutableAttributes(), newConduit.getAuthoritativeAttributes(), newConduit.getInformationalAttributes(), newConduit.getAnecdotalAttributes());
+        HashMap<String, SoTAttributePrecedence> newPrecedenceMap = new HashMap<>(conduitAttributePrecedenceMap);
+        newPrecedenceMap.put(newConduit.getConduitName(), compiledPrecedence);
+        conduitAttributePrecedenceMap = Collections.unmodifiableMap(newPrecedenceMap);
+        // Memoised merges were made without the new conduit (and its precedence)
+        aggregationMemo.clear();
         getLogger().debug(".addResourceConduit(): Exit, SoTResourceConduit added");
     }
 
+    /**
+     * The attribute precedence compiled when the named conduit registered (EMPTY if it is unknown or declared none).
+     */
+    protected SoTAttributePrecedence getConduitAttributePrecedence(String conduitName){
+        SoTAttributePrecedence compiledPrecedence = conduitAttributePrecedenceMap.get(conduitName);
+        if(compiledPrecedence == null){
+            return(SoTAttributePrecedence.EMPTY);
+        }
+        return(compiledPrecedence);
+    }
+
+    /**
+     * The number of aggregated "get" outcomes memoised (keyed by the per-conduit versions of their inputs, so a read
+     * whose contributing conduits have not changed skips the merge). 0 disables the memo.
+     */
+    protected int specifyAggregationMemoSize(){
+        return(DEFAULT_AGGREGATION_MEMO_SIZE);
+    }
+
+    public SoTAggregationMemoStatistics getAggregationMemoStatistics(){
+        return(aggregationMemo.getStatistics());
+    }
+
     abstract protected ResourceType specifyResourceType();
 
     abstract protected ResourceContentAggregationServiceBase specifyAggregationService();
@@ -87,50 +150,391 @@ public abstract class ResourceSoTConduitController {
         return(specifyAggregationService());
     }
 
+    /**
+     * If true (and more than one conduit is involved), the conduits are invoked concurrently on the shared
+     * SoTConduitFanOutExecutor, otherwise they are invoked one after another on the calling thread.
+     */
+    protected boolean specifyConcurrentConduitFanOut(){
+        return(true);
+    }
+
+    /**
+     * The time (from the start of the fan-out) a conduit is given to respond before it is cancelled and reported
+     * as timed-out.
+     */
+    protected long specifyConduitTimeoutInMillis(SoTResourceConduit conduit){
+        return(DEFAULT_CONDUIT_TIMEOUT_IN_MILLIS);
+    }
+
+    /**
+     * The point at which a read (review) fan-out stops waiting for the conduits. Create, update, delete and search
+     * fan-outs always wait for all the conduits.
+     */
+    protected SoTConduitCompletionPolicyEnum specifyCompletionPolicy(){
+        return(SoTConduitCompletionPolicyEnum.COMPLETION_POLICY_WAIT_FOR_ALL);
+    }
+
+    /**
+     * The number of conduits that must have responded (with a result) for the COMPLETION_POLICY_QUORUM policy to be
+     * satisfied. Defaults to a simple majority.
+     */
+    protected int specifyCompletionQuorum(int conduitCount){
+        return((conduitCount / 2) + 1);
+    }
+
+    /**
+     * How long, once a quorum has been reached, the remaining conduits are given before they are cancelled.
+     */
+    protected long specifyCompletionHedgingDelayInMillis(){
+        return(DEFAULT_COMPLETION_HEDGING_DELAY_IN_MILLIS);
+    }
+
+    /**
+     * The number of Resources each conduit need return for the named search - the conduits stop paging through
+     * their results once they have this many. The results are held in memory, so this is bounded
+     * (ladon.mdr.conduit.search.limit, default 1000).
+     */
+    protected int specifySearchResultLimit(SearchNameEnum searchName){
+        return(Integer.getInteger(SEARCH_RESULT_LIMIT_PROPERTY, DEFAULT_SEARCH_RESULT_LIMIT));
+    }
 
     //
-    // Review / Get Conduit Invocation
+    // Conduit Fan-Out
     //
 
     /**
+     * This method invokes the conduitAction against each of the conduits, waiting for all of them (or their timeouts).
+     */
+    protected <T> List<SoTConduitInvocation<T>> invokeEachConduit(String activity, List<SoTResourceConduit> conduits, Function<SoTResourceConduit, T> conduitAction){
+        return(invokeEachConduit(activity, conduits, conduitAction, SoTConduitCompletionPolicyEnum.COMPLETION_POLICY_WAIT_FOR_ALL, null));
+    }
+
+    /**
+     * This method invokes the conduitAction against each of the conduits, returning the invocations in conduit order
+     * (irrespective of the order in which they completed). Conduits that throw are reported as failed, conduits that
+     * exceed their timeout are cancelled and reported as timed-out. Conduits still outstanding when the
+     * completionPolicy is satisfied are cancelled and reported as late (quorum) or not-required (first authoritative).
      *
-     * @param identifier
-     * @return
+     * @param activity The name of the activity (for logging purposes)
+     * @param conduits The (ordered) conduits to invoke
+     * @param conduitAction The action to invoke against each conduit
+     * @param completionPolicy The point at which to stop waiting for the conduits
+     * @param finalResultTest Identifies a result that determines the aggregated outcome on its own (may be null)
+     * @return A list of SoTConduitInvocation, one per conduit
      */
-    protected List<ResourceSoTConduitActionResponse> getResourceFromEachConduit(Identifier identifier){
-        getLogger().debug(".getResourceFromEachConduit(Identifier): Entry, identifier (Identifier)--> {}", identifier);
-        ArrayList<ResourceSoTConduitActionResponse> loadedResources = new ArrayList<ResourceSoTConduitActionResponse>();
-        for(SoTResourceConduit currentConduit: conduitSet){
-            getLogger().debug(".getResourceFromEachConduit(Identifier): trying conduit --> {}", currentConduit.getConduitName());
-            ResourceSoTConduitActionResponse currentResponse = currentConduit.getResourceViaIdentifier(identifier);
-            if(currentResponse.hasResource() && currentResponse.getStatusEnum().equals(VirtualDBActionStatusEnum.REVIEW_FINISH)) {
-                loadedResources.add(currentResponse);
+    protected <T> List<SoTConduitInvocation<T>> invokeEachConduit(String activity, List<SoTResourceConduit> conduits, Function<SoTResourceConduit, T> conduitAction, SoTConduitCompletionPolicyEnum completionPolicy, Predicate<T> finalResultTest){
+        getLogger().debug(".invokeEachConduit(): Entry, activity --> {}, conduit count --> {}, completionPolicy --> {}", activity, conduits.size(), completionPolicy);
+        if(finalResultTest == null && completionPolicy == SoTConduitCompletionPolicyEnum.COMPLETION_POLICY_FIRST_AUTHORITATIVE){
+            completionPolicy = SoTConduitCompletionPolicyEnum.COMPLETION_POLICY_WAIT_FOR_ALL;
+        }
+        List<SoTConduitInvocation<T>> invocationList;
+        if(specifyConcurrentConduitFanOut() && fanOutExecutor != null && conduits.size() > 1){
+            invocationList = invokeEachConduitConcurrently(activity, conduits, conduitAction, completionPolicy, finalResultTest);
+        } else {
+            invocationList = invokeEachConduitSequentially(activity, conduits, conduitAction, completionPolicy, finalResultTest);
+        }
+        getLogger().debug(".invokeEachConduit(): Exit, activity --> {}", activity);
+        return(invocationList);
+    }
+
+    private <T> List<SoTConduitInvocation<T>> invokeEachConduitSequentially(String activity, List<SoTResourceConduit> conduits, Function<SoTResourceConduit, T> conduitAction, SoTConduitCompletionPolicyEnum completionPolicy, Predicate<T> finalResultTest){
+        ArrayList<SoTConduitInvocation<T>> invocationList = new ArrayList<>();
+        for(SoTResourceConduit currentConduit: conduits){
+            invocationList.add(new SoTConduitInvocation<>(currentConduit.getConduitName()));
+        }
+        // Sequentially, a quorum has no stragglers to hedge against, so only a final result ends the fan-out early
+        for(int counter = 0; counter < conduits.size(); counter++){
+            SoTResourceConduit currentConduit = conduits.get(counter);
+            SoTConduitInvocation<T> invocation = invocationList.get(counter);
+            long invocationStart = System.currentTimeMillis();
+            try {
+                invocation.setResult(conduitAction.apply(currentConduit));
+                invocation.setInvocationStatus(SoTConduitInvocationStatusEnum.INVOCATION_COMPLETED);
+            } catch(RuntimeException ex){
+                getLogger().warn(".invokeEachConduit(): {} failed on conduit {}, error --> {}", activity, currentConduit.getConduitName(), ex.getMessage());
+                invocation.setInvocationStatus(SoTConduitInvocationStatusEnum.INVOCATION_FAILED);
+                invocation.setFailureText(ex.getMessage());
+            }
+            invocation.setElapsedInMillis(System.currentTimeMillis() - invocationStart);
+            if(completionPolicy == SoTConduitCompletionPolicyEnum.COMPLETION_POLICY_FIRST_AUTHORITATIVE && hasFinalResultInOrder(invocationList, finalResultTest)){
+                abandonOutstandingInvocations(invocationList, null, SoTConduitInvocationStatusEnum.INVOCATION_NOT_REQUIRED, invocationStart);
+                break;
+            }
+        }
+        return(invocationList);
+    }
+
+    private <T> List<SoTConduitInvocation<T>> invokeEachConduitConcurrently(String activity, List<SoTResourceConduit> conduits, Function<SoTResourceConduit, T> conduitAction, SoTConduitCompletionPolicyEnum completionPolicy, Predicate<T> finalResultTest){
+        long fanOutStart = System.currentTimeMillis();
+        LinkedBlockingQueue<Integer> completionQueue = new LinkedBlockingQueue<>();
+        ArrayList<SoTConduitInvocation<T>> invocationList = new ArrayList<>();
+        ArrayList<Future<T>> futureList = new ArrayList<>();
+        int outstandingCount = conduits.size();
+        for(int counter = 0; counter < conduits.size(); counter++){
+            SoTResourceConduit currentConduit = conduits.get(counter);
+            Integer conduitIndex = counter;
+            SoTConduitInvocation<T> invocation = new SoTConduitInvocation<>(currentConduit.getConduitName());
+            invocationList.add(invocation);
+            try {
+                futureList.add(fanOutExecutor.submit(() -> {
+                    try {
+                        return (conduitAction.apply(currentConduit));
+                    } finally {
+                        completionQueue.add(conduitIndex);
+                    }
+                }));
+            } catch(RejectedExecutionException ex){
+                // Never run on this thread - it would not be bound by the conduit timeout
+                getLogger().warn(".invokeEachConduit(): {} rejected for conduit {}, fan-out pool is saturated", activity, currentConduit.getConduitName());
+                futureList.add(null);
+                invocation.setInvocationStatus(SoTConduitInvocationStatusEnum.INVOCATION_REJECTED);
+                invocation.setFailureText("Fan-out pool was saturated");
+                invocation.setElapsedInMillis(System.currentTimeMillis() - fanOutStart);
+                outstandingCount -= 1;
+            }
+        }
+        int quorum = specifyCompletionQuorum(conduits.size());
+        long quorumReachedAt = -1;
+        while(outstandingCount > 0){
+            long now = System.currentTimeMillis();
+            long nextWakeUp = Long.MAX_VALUE;
+            for(int counter = 0; counter < conduits.size(); counter++){
+                SoTConduitInvocation<T> invocation = invocationList.get(counter);
+                if(invocation.getInvocationStatus() != null){
+                    continue;
+                }
+                long conduitTimeout = specifyConduitTimeoutInMillis(conduits.get(counter));
+                long conduitDeadline = fanOutStart + conduitTimeout;
+                if(now >= conduitDeadline){
+                    futureList.get(counter).cancel(true);
+                    getLogger().warn(".invokeEachConduit(): {} timed out on conduit {}", activity, invocation.getConduitName());
+                    invocation.setInvocationStatus(SoTConduitInvocationStatusEnum.INVOCATION_TIMED_OUT);
+                    invocation.setFailureText("Conduit did not respond within " + conduitTimeout + "ms");
+                    invocation.setElapsedInMillis(now - fanOutStart);
+                    outstandingCount -= 1;
+                } else {
+                    nextWakeUp = Math.min(nextWakeUp, conduitDeadline);
+                }
+            }
+            if(outstandingCount == 0){
+                break;
+            }
+            if(completionPolicy == SoTConduitCompletionPolicyEnum.COMPLETION_POLICY_FIRST_AUTHORITATIVE && hasFinalResultInOrder(invocationList, finalResultTest)){
+                getLogger().debug(".invokeEachConduit(): {} has a final result, cancelling {} outstanding conduit(s)", activity, outstandingCount);
+                abandonOutstandingInvocations(invocationList, futureList, SoTConduitInvocationStatusEnum.INVOCATION_NOT_REQUIRED, fanOutStart);
+                break;
+            }
+            if(completionPolicy == SoTConduitCompletionPolicyEnum.COMPLETION_POLICY_QUORUM){
+                if(quorumReachedAt < 0 && countCompletedWithResult(invocationList) >= quorum){
+                    quorumReachedAt = now;
+                }
+                if(quorumReachedAt >= 0){
+                    long hedgingDeadline = quorumReachedAt + specifyCompletionHedgingDelayInMillis();
+                    if(now >= hedgingDeadline){
+                        getLogger().debug(".invokeEachConduit(): {} reached quorum, cancelling {} late conduit(s)", activity, outstandingCount);
+                        abandonOutstandingInvocations(invocationList, futureList, SoTConduitInvocationStatusEnum.INVOCATION_LATE, fanOutStart);
+                        break;
+                    }
+                    nextWakeUp = Math.min(nextWakeUp, hedgingDeadline);
+                }
+            }
+            Integer completedIndex = null;
+            try {
+                completedIndex = completionQueue.poll(Math.max(nextWakeUp - now, 1), TimeUnit.MILLISECONDS);
+            } catch(InterruptedException ex){
+                Thread.currentThread().interrupt();
+                abandonOutstandingInvocations(invocationList, futureList, SoTConduitInvocationStatusEnum.INVOCATION_TIMED_OUT, fanOutStart);
+                break;
+            }
+            if(completedIndex == null){
+                continue;
+            }
+            SoTConduitInvocation<T> invocation = invocationList.get(completedIndex);
+            if(invocation.getInvocationStatus() != null){
+                // Already resolved (timed-out or abandoned) before it completed
+                continue;
+            }
+            try {
+                invocation.setResult(futureList.get(completedIndex).get());
+                invocation.setInvocationStatus(SoTConduitInvocationStatusEnum.INVOCATION_COMPLETED);
+            } catch(InterruptedException ex){
+                Thread.currentThread().interrupt();
+                invocation.setInvocationStatus(SoTConduitInvocationStatusEnum.INVOCATION_TIMED_OUT);
+                invocation.setFailureText("Fan-out was interrupted");
+            } catch(ExecutionException ex){
+                getLogger().warn(".invokeEachConduit(): {} failed on conduit {}, error --> {}", activity, invocation.getConduitName(), ex.getCause().getMessage());
+                invocation.setInvocationStatus(SoTConduitInvocationStatusEnum.INVOCATION_FAILED);
+                invocation.setFailureText(ex.getCause().getMessage());
+            }
+            invocation.setElapsedInMillis(System.currentTimeMillis() - fanOutStart);
+            outstandingCount -= 1;
+        }
+        return(invocationList);
+    }
+
+    private <T> boolean hasFinalResultInOrder(List<SoTConduitInvocation<T>> invocationList, Predicate<T> finalResultTest){
+        // A final result only decides the outcome once every conduit ahead of it (in conduit order) has been resolved
+        for(SoTConduitInvocation<T> invocation: invocationList){
+            if(invocation.getInvocationStatus() == null){
+                return(false);
+            }
+            if(invocation.isCompleted() && invocation.hasResult() && finalResultTest.test(invocation.getResult())){
+                return(true);
+            }
+        }
+        return(false);
+    }
+
+    private <T> int countCompletedWithResult(List<SoTConduitInvocation<T>> invocationList){
+        int completedCount = 0;
+        for(SoTConduitInvocation<T> invocation: invocationList){
+            if(invocation.isCompleted() && invocation.hasResult()){
+                completedCount += 1;
+            }
+        }
+        return(completedCount);
+    }
+
+    private <T> void abandonOutstandingInvocations(List<SoTConduitInvocation<T>> invocationList, List<Future<T>> futureList, SoTConduitInvocationStatusEnum abandonedStatus, long fanOutStart){
+        long now = System.currentTimeMillis();
+        for(int counter = 0; counter < invocationList.size(); counter++){
+            SoTConduitInvocation<T> invocation = invocationList.get(counter);
+            if(invocation.getInvocationStatus() != null){
+                continue;
+            }
+            if(futureList != null){
+                futureList.get(counter).cancel(true);
+            }
+            invocation.setInvocationStatus(abandonedStatus);
+            invocation.setFailureText("Conduit had not responded when the fan-out completed");
+            invocation.setElapsedInMillis(now - fanOutStart);
+        }
+    }
+
+    private List<SoTResourceConduit> selectConduits(Function<SoTResourceConduit, Boolean> selector){
+        ArrayList<SoTResourceConduit> selectedConduits = new ArrayList<>();
+        for(SoTResourceConduit currentConduit: conduitList){
+            if(selector.apply(currentConduit)){
+                selectedConduits.add(currentConduit);
+            }
+        }
+        return(selectedConduits);
+    }
+
+    private List<ResourceSoTConduitActionResponse> collectCompletedResponses(List<SoTConduitInvocation<ResourceSoTConduitActionResponse>> invocationList){
+        ArrayList<ResourceSoTConduitActionResponse> responseList = new ArrayList<>();
+        for(SoTConduitInvocation<ResourceSoTConduitActionResponse> invocation: invocationList){
+            if(invocation.isCompleted() && invocation.hasResult()){
+                ResourceSoTConduitActionResponse response = invocation.getResult();
+                response.setConduitAttributePrecedence(getConduitAttributePrecedence(invocation.getConduitName()));
+                responseList.add(response);
+            }
+        }
+        return(responseList);
+    }
+
+    /**
+     * This method adds an issue to the outcome for each conduit that timed-out, failed, was late or was rejected, so that the caller can see
+     * the aggregated response was built without it.
+     */
+    protected void recordIncompleteConduits(VirtualDBMethodOutcome outcome, List<? extends SoTConduitInvocation<?>> invocationList){
+        if(outcome == null){
+            return;
+        }
+        String activityLocation = getResourceType().toString() + "SoTConduitController";
+        for(SoTConduitInvocation<?> invocation: invocationList){
+            if(invocation.getInvocationStatus() == SoTConduitInvocationStatusEnum.INVOCATION_LATE){
+                outcomeFactory.addWarningIssue(outcome, activityLocation + "::" + invocation.getConduitName(), OperationOutcome.IssueType.INCOMPLETE, "MSG_TIMEOUT", "Source of Truth conduit " + invocation.getConduitName() + " was late (not included once a quorum responded)");
+            }
+            if(invocation.getInvocationStatus() == SoTConduitInvocationStatusEnum.INVOCATION_TIMED_OUT){
+                outcomeFactory.addWarningIssue(outcome, activityLocation + "::" + invocation.getConduitName(), OperationOutcome.IssueType.TIMEOUT, "MSG_TIMEOUT", "Source of Truth conduit " + invocation.getConduitName() + " timed out: " + invocation.getFailureText());
+            }
+            if(invocation.getInvocationStatus() == SoTConduitInvocationStatusEnum.INVOCATION_REJECTED){
+                outcomeFactory.addWarningIssue(outcome, activityLocation + "::" + invocation.getConduitName(), OperationOutcome.IssueType.INCOMPLETE, "MSG_CONDUIT_REJECTED", "Source of Truth conduit " + invocation.getConduitName() + " was not invoked: " + invocation.getFailureText());
+            }
+            if(invocation.getInvocationStatus() == SoTConduitInvocationStatusEnum.INVOCATION_FAILED){
+                // TODO Pegacorn specific encoding --> need to check validity
+                outcomeFactory.addWarningIssue(outcome, activityLocation + "::" + invocation.getConduitName(), OperationOutcome.IssueType.EXCEPTION, "MSG_CONDUIT_FAILURE", "Source of Truth conduit " + invocation.getConduitName() + " failed: " + invocation.getFailureText());
             }
         }
-        getLogger().info(".getResourceFromEachConduit(Identifier): Exit, Number of Elements in List --> {}", loadedResources.size());
-        return(loadedResources);
+    }
+
+    /**
+     * This method aggregates the responses to a write (create, update or delete), failing the aggregated outcome when
+     * any supporting conduit was rejected, timed-out or failed - the write has then not been applied (or is not known
+     * to have been applied) to every Source of Truth, so must not be reported (and cached) as a success.
+     *
+     * @param invocationList The invocations of the supporting conduits
+     * @param aggregator The aggregation service method for the write
+     * @param action The write action
+     * @param failureStatus The status to report if the write did not complete on every supporting conduit
+     * @return The aggregated (and possibly failed) outcome
+     */
+    private VirtualDBMethodOutcome aggregateWriteResponses(List<SoTConduitInvocation<ResourceSoTConduitActionResponse>> invocationList, Function<List<ResourceSoTConduitActionResponse>, VirtualDBMethodOutcome> aggregator, VirtualDBActionTypeEnum action, VirtualDBActionStatusEnum failureStatus){
+        List<ResourceSoTConduitActionResponse> responseList = collectCompletedResponses(invocationList);
+        int incompleteCount = 0;
+        for(SoTConduitInvocation<ResourceSoTConduitActionResponse> invocation: invocationList){
+            if(!invocation.isCompleted()){
+                incompleteCount += 1;
+            }
+        }
+        if(incompleteCount == 0){
+            return(aggregator.apply(responseList));
+        }
+        getLogger().warn(".aggregateWriteResponses(): {} did not complete on {} of {} supporting conduit(s)", action, incompleteCount, invocationList.size());
+        VirtualDBMethodOutcome outcome = null;
+        if(!responseList.isEmpty()){
+            outcome = aggregator.apply(responseList);
+        }
+        if(outcome == null){
+            outcome = new VirtualDBMethodOutcome();
+            outcome.setCreated(false);
+        }
+        outcome.setCausalAction(action);
+        outcome.setStatusEnum(failureStatus);
+        String activityLocation = getResourceType().toString() + "SoTConduitController";
+        outcomeFactory.addErrorIssue(outcome, activityLocation, OperationOutcome.IssueType.INCOMPLETE, "MSG_CONDUIT_WRITE_INCOMPLETE", action + " did not complete on " + incompleteCount + " of " + invocationList.size() + " Source of Truth conduit(s)");
+        return(outcome);
     }
 
     //
     // Review / Get Conduit Invocation
     //
 
+    /**
+     *
+     * @param identifier
+     * @return
+     */
+    protected List<SoTConduitInvocation<ResourceSoTConduitActionResponse>> getResourceFromEachConduit(Identifier identifier){
+        getLogger().debug(".getResourceFromEachConduit(Identifier): Entry, identifier (Identifier)--> {}", identifier);
+        List<SoTConduitInvocation<ResourceSoTConduitActionResponse>> invocationList = invokeEachConduit("getResourceViaIdentifier", conduitList, conduit -> {
+            ResourceSoTConduitActionResponse currentResponse = conduit.getResourceViaIdentifier(identifier);
+            if(currentResponse.hasResource() && currentResponse.getStatusEnum().equals(VirtualDBActionStatusEnum.REVIEW_FINISH)) {
+                return(currentResponse);
+            }
+            return(null);
+        }, specifyCompletionPolicy(), getAggregationService()::isFinalSuccessfulGetResponse);
+        getLogger().debug(".getResourceFromEachConduit(Identifier): Exit");
+        return(invocationList);
+    }
+
     /**
      *
      * @param id
      * @return
      */
-    protected List<ResourceSoTConduitActionResponse> getResourceFromEachConduit(IdType id){
+    protected List<SoTConduitInvocation<ResourceSoTConduitActionResponse>> getResourceFromEachConduit(IdType id){
         getLogger().debug(".getResourceFromEachConduit(IdType): Entry, id (IdType)--> {}", id);
-        ArrayList<ResourceSoTConduitActionResponse> loadedResources = new ArrayList<ResourceSoTConduitActionResponse>();
-        for(SoTResourceConduit currentConduit: conduitSet){
-            ResourceSoTConduitActionResponse currentResponse = currentConduit.reviewResource(id);
+        List<SoTConduitInvocation<ResourceSoTConduitActionResponse>> invocationList = invokeEachConduit("reviewResource", conduitList, conduit -> {
+            ResourceSoTConduitActionResponse currentResponse = conduit.reviewResource(id);
             if(currentResponse.getResponseResourceGrade() != ResourceGradeEnum.EMPTY) {
-                loadedResources.add(currentResponse);
+                return(currentResponse);
             }
-        }
+            return(null);
+        }, specifyCompletionPolicy(), getAggregationService()::isFinalGetResponse);
         getLogger().debug(".getResourceFromEachConduit(IdType): Exit");
-        return(loadedResources);
+        return(invocationList);
     }
 
     //
@@ -142,17 +546,12 @@ public abstract class ResourceSoTConduitController {
      * @param wholeResource
      * @return
      */
-    protected List<ResourceSoTConduitActionResponse> createResourceViaEachConduit(Resource wholeResource){
-        getLogger().debug(".writeResourceToEachConduit(): Entry, wholeResource --> {}", wholeResource);
-        ArrayList<ResourceSoTConduitActionResponse> outcomeSet = new ArrayList<>();
-        for(SoTResourceConduit currentConduit: conduitSet) {
-            if(currentConduit.supportsDirectCreateAction(wholeResource)) {
-                ResourceSoTConduitActionResponse outcome = currentConduit.createResource(wholeResource);
-                outcomeSet.add(outcome);
-            }
-        }
-        getLogger().debug(".writeResourceToEachConduit(): Exit");
-        return(outcomeSet);
+    protected List<SoTConduitInvocation<ResourceSoTConduitActionResponse>> createResourceViaEachConduit(Resource wholeResource){
+        getLogger().debug(".createResourceViaEachConduit(): Entry, wholeResource --> {}", wholeResource);
+        List<SoTResourceConduit> supportingConduits = selectConduits(conduit -> conduit.supportsDirectCreateAction(wholeResource));
+        List<SoTConduitInvocation<ResourceSoTConduitActionResponse>> invocationList = invokeEachConduit("createResource", supportingConduits, conduit -> conduit.createResource(wholeResource));
+        getLogger().debug(".createResourceViaEachConduit(): Exit");
+        return(invocationList);
     }
 
     //
@@ -164,17 +563,12 @@ public abstract class ResourceSoTConduitController {
      * @param wholeResource
      * @return
      */
-    protected List<ResourceSoTConduitActionResponse> updateResourceViaEachConduit(Resource wholeResource){
-        getLogger().debug(".writeResourceToEachConduit(): Entry, wholeResource --> {}", wholeResource);
-        ArrayList<ResourceSoTConduitActionResponse> outcomeSet = new ArrayList<>();
-        for(SoTResourceConduit currentConduit: conduitSet) {
-            if(currentConduit.supportsDirectUpdateAction(wholeResource)) {
-                ResourceSoTConduitActionResponse outcome = currentConduit.updateResource(wholeResource);
-                outcomeSet.add(outcome);
-            }
-        }
-        getLogger().debug(".writeResourceToEachConduit(): Exit");
-        return(outcomeSet);
+    protected List<SoTConduitInvocation<ResourceSoTConduitActionResponse>> updateResourceViaEachConduit(Resource wholeResource){
+        getLogger().debug(".updateResourceViaEachConduit(): Entry, wholeResource --> {}", wholeResource);
+        List<SoTResourceConduit> supportingConduits = selectConduits(conduit -> conduit.supportsDirectUpdateAction(wholeResource));
+        List<SoTConduitInvocation<ResourceSoTConduitActionResponse>> invocationList = invokeEachConduit("updateResource", supportingConduits, conduit -> conduit.updateResource(wholeResource));
+        getLogger().debug(".updateResourceViaEachConduit(): Exit");
+        return(invocationList);
     }
 
     //
@@ -186,44 +580,24 @@ public abstract class ResourceSoTConduitController {
      * @param wholeResource
      * @return
      */
-    protected List<ResourceSoTConduitActionResponse> deleteResourceViaEachConduit(Resource wholeResource){
+    protected List<SoTConduitInvocation<ResourceSoTConduitActionResponse>> deleteResourceViaEachConduit(Resource wholeResource){
         getLogger().debug(".deleteResourceViaEachConduit(): Entry, wholeResource --> {}", wholeResource);
-        ArrayList<ResourceSoTConduitActionResponse> outcomeSet = new ArrayList<>();
-        for(SoTResourceConduit currentConduit: conduitSet) {
-            if(currentConduit.supportsDirectDeleteAction(wholeResource)) {
-                ResourceSoTConduitActionResponse outcome = currentConduit.updateResource(wholeResource);
-                outcomeSet.add(outcome);
-            }
-        }
+        List<SoTResourceConduit> supportingConduits = selectConduits(conduit -> conduit.supportsDirectDeleteAction(wholeResource));
+        List<SoTConduitInvocation<ResourceSoTConduitActionResponse>> invocationList = invokeEachConduit("deleteResource", supportingConduits, conduit -> conduit.updateResource(wholeResource));
         getLogger().debug(".deleteResourceViaEachConduit(): Exit");
-        return(outcomeSet);
+        return(invocationList);
     }
 
     //
     // Searches
     //
 
-    protected List<ResourceSoTConduitSearchResponseElement> attemptResourceSearch(SearchNameEnum searchName, Map<Property, Serializable> parameterSet){
+    protected List<SoTConduitInvocation<List<ResourceSoTConduitSearchResponseElement>>> attemptResourceSearch(SearchNameEnum searchName, Map<Property, Serializable> parameterSet){
         getLogger().info(".attemptResourceSearch(): Entry");
-        ArrayList<ResourceSoTConduitSearchResponseElement> loadedResources = new ArrayList<ResourceSoTConduitSearchResponseElement>();
-        getLogger().info(".attemptResourceSearch(): Iterating through available SoTConduits for Search function");
-        for(SoTResourceConduit currentConduit: conduitSet) {
-            if(getLogger().isInfoEnabled()){
-                getLogger().info(".attemptResourceSearch(): SoTConduit --> {}", currentConduit.getConduitName());
-            }
-            List<ResourceSoTConduitSearchResponseElement> currentResponse = currentConduit.searchSourceOfTruthUsingCriteria(getResourceType(), searchName, parameterSet);
-            if(getLogger().isInfoEnabled()){
-                getLogger().info(".attemptResourceSearch(): SoTConduit Search Finished");
-            }
-            if(currentResponse != null) {
-                if(getLogger().isInfoEnabled()){
-                    getLogger().info(".attemptResourceSearch(): SoTConduit had results");
-                }
-                loadedResources.addAll(currentResponse);
-            }
-        }
-        getLogger().info(".attemptResourceSearch(): Exit, result set size --> {}", loadedResources.size());
-        return(loadedResources);
+        int resultLimit = specifySearchResultLimit(searchName);
+        List<SoTConduitInvocation<List<ResourceSoTConduitSearchResponseElement>>> invocationList = invokeEachConduit("searchSourceOfTruthUsingCriteria", conduitList, conduit -> conduit.searchSourceOfTruthUsingCriteria(getResourceType(), searchName, parameterSet, resultLimit));
+        getLogger().info(".attemptResourceSearch(): Exit");
+        return(invocationList);
     }
 
     //
@@ -231,51 +605,66 @@ public abstract class ResourceSoTConduitController {
     //
 
     public VirtualDBMethodOutcome createResource(Resource resourceToCreate) {
-        List<ResourceSoTConduitActionResponse> methodOutcomes = this.createResourceViaEachConduit(resourceToCreate);
-        VirtualDBMethodOutcome aggregatedMethodOutcome = getAggregationService().aggregateCreateResponseSet(methodOutcomes);
+        List<SoTConduitInvocation<ResourceSoTConduitActionResponse>> invocationList = this.createResourceViaEachConduit(resourceToCreate);
+        VirtualDBMethodOutcome aggregatedMethodOutcome = aggregateWriteResponses(invocationList, getAggregationService()::aggregateCreateResponseSet, VirtualDBActionTypeEnum.CREATE, VirtualDBActionStatusEnum.CREATION_FAILURE);
+        recordIncompleteConduits(aggregatedMethodOutcome, invocationList);
         return(aggregatedMethodOutcome);
     }
 
     public VirtualDBMethodOutcome reviewResource(Identifier identifier) {
-        getLogger().info(".reviewResource(): Entry, identifier --> {}");
-        List<ResourceSoTConduitActionResponse> methodOutcomes = this.getResourceFromEachConduit(identifier);
+        getLogger().info(".reviewResource(): Entry, identifier --> {}", identifier);
+        List<SoTConduitInvocation<ResourceSoTConduitActionResponse>> invocationList = this.getResourceFromEachConduit(identifier);
+        List<ResourceSoTConduitActionResponse> methodOutcomes = collectCompletedResponses(invocationList);
+        getLogger().info(".reviewResource(): Number of Elements in List --> {}", methodOutcomes.size());
         if(methodOutcomes.isEmpty()){
             getLogger().info(".reviewResource(): Failed to find a resource, generating failed outcome");
             String activityLocation = getResourceType().toString() + "reviewResource()";
             VirtualDBMethodOutcome aggregatedMethodOutcome = outcomeFactory.createResourceActivityOutcome(null, VirtualDBActionStatusEnum.REVIEW_FAILURE,activityLocation);
+            recordIncompleteConduits(aggregatedMethodOutcome, invocationList);
             getLogger().info(".reviewResource(): Exit, failed to find a resource from any Source of Truth, exiting");
             return(aggregatedMethodOutcome);
         } else {
             getLogger().info(".reviewResource(): Exit, found at least one resource, aggregating results");
-            VirtualDBMethodOutcome aggregatedMethodOutcome = getAggregationService().aggregateGetResponseSet(methodOutcomes);
+            VirtualDBMethodOutcome aggregatedMethodOutcome = aggregationMemo.getOrAggregate(SoTAggregationMemo.identifierKey(identifier), methodOutcomes, getAggregationService()::aggregateGetResponseSet);
+            recordIncompleteConduits(aggregatedMethodOutcome, invocationList);
             getLogger().info(".reviewResource(): Exit, found at least one resource, returning it");
             return (aggregatedMethodOutcome);
         }
     }
 
     public VirtualDBMethodOutcome reviewResource(IdType id) {
-        List<ResourceSoTConduitActionResponse> methodOutcomes = this.getResourceFromEachConduit(id);
-        VirtualDBMethodOutcome aggregatedMethodOutcome = getAggregationService().aggregateGetResponseSet(methodOutcomes);
+        List<SoTConduitInvocation<ResourceSoTConduitActionResponse>> invocationList = this.getResourceFromEachConduit(id);
+        VirtualDBMethodOutcome aggregatedMethodOutcome = aggregationMemo.getOrAggregate(SoTAggregationMemo.idKey(id), collectCompletedResponses(invocationList), getAggregationService()::aggregateGetResponseSet);
+        recordIncompleteConduits(aggregatedMethodOutcome, invocationList);
         return(aggregatedMethodOutcome);
     }
 
     public VirtualDBMethodOutcome updateResource(Resource resourceToUpdate) {
-        List<ResourceSoTConduitActionResponse> methodOutcomes = this.updateResourceViaEachConduit(resourceToUpdate);
-        VirtualDBMethodOutcome aggregatedMethodOutcome = getAggregationService().aggregateUpdateResponseSet(methodOutcomes);
+        List<SoTConduitInvocation<ResourceSoTConduitActionResponse>> invocationList = this.updateResourceViaEachConduit(resourceToUpdate);
+        VirtualDBMethodOutcome aggregatedMethodOutcome = aggregateWriteResponses(invocationList, getAggregationService()::aggregateUpdateResponseSet, VirtualDBActionTypeEnum.UPDATE, VirtualDBActionStatusEnum.UPDATE_FAILURE);
+        recordIncompleteConduits(aggregatedMethodOutcome, invocationList);
         return(aggregatedMethodOutcome);
     }
 
     public VirtualDBMethodOutcome deleteResource(Resource resourceToDelete) {
-        List<ResourceSoTConduitActionResponse> methodOutcomes = this.deleteResourceViaEachConduit(resourceToDelete);
-        VirtualDBMethodOutcome aggregatedMethodOutcome = getAggregationService().aggregateDeleteResponseSet(methodOutcomes);
+        List<SoTConduitInvocation<ResourceSoTConduitActionResponse>> invocationList = this.deleteResourceViaEachConduit(resourceToDelete);
+        VirtualDBMethodOutcome aggregatedMethodOutcome = aggregateWriteResponses(invocationList, getAggregationService()::aggregateDeleteResponseSet, VirtualDBActionTypeEnum.DELETE, VirtualDBActionStatusEnum.DELETE_FAILURE);
+        recordIncompleteConduits(aggregatedMethodOutcome, invocationList);
         return(aggregatedMethodOutcome);
     }
 
     public VirtualDBMethodOutcome getResourcesViaSearchCriteria(ResourceType resourceType, SearchNameEnum searchName, Map<Property, Serializable> parameterSet) {
         getLogger().debug("ResourceSoTConduitController::getResourcesViaSearchCriteria(): Entry");
-        List<ResourceSoTConduitSearchResponseElement> responseElements = this.attemptResourceSearch(searchName, parameterSet);
-        getLogger().trace("ResourceSoTConduitController::getResourcesViaSearchCriteria(): attempted search, now consolidating");
+        List<SoTConduitInvocation<List<ResourceSoTConduitSearchResponseElement>>> invocationList = this.attemptResourceSearch(searchName, parameterSet);
+        ArrayList<ResourceSoTConduitSearchResponseElement> responseElements = new ArrayList<ResourceSoTConduitSearchResponseElement>();
+        for(SoTConduitInvocation<List<ResourceSoTConduitSearchResponseElement>> invocation: invocationList){
+            if(invocation.isCompleted() && invocation.hasResult()){
+                responseElements.addAll(invocation.getResult());
+            }
+        }
+        getLogger().trace("ResourceSoTConduitController::getResourcesViaSearchCriteria(): attempted search, now consolidating, result set size --> {}", responseElements.size());
         VirtualDBMethodOutcome aggregatedMethodOutcome = getAggregationService().aggregateSearchResultSet(responseElements);
+        recordIncompleteConduits(aggregatedMethodOutcome, invocationList);
         getLogger().debug("ResourceSoTConduitController::getResourcesViaSearchCriteria(): Exit");
         return(aggregatedMethodOutcome);
     }
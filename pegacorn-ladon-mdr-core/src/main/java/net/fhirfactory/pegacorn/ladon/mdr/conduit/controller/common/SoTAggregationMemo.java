@@ -0,0 +1,221 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.mdr.conduit.controller.common;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.hl7.fhir.r4.model.IdType;
+import org.hl7.fhir.r4.model.Identifier;
+import org.hl7.fhir.r4.model.OperationOutcome;
+import org.hl7.fhir.r4.model.Resource;
+
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.mdr.ResourceSoTConduitActionResponse;
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.operations.VirtualDBActionStatusEnum;
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.operations.VirtualDBMethodOutcome;
+
+/**
+ * A bounded (least recently used) memo of aggregated "get" outcomes. Each entry records the contribution vector of
+ * its inputs - the (conduit, versionId, lastUpdated) of every response that was merged - and is only returned while
+ * the conduits still report exactly that vector; otherwise the responses are merged again and the entry replaced.
+ *
+ * Responses whose Resource carries neither a versionId nor a lastUpdated cannot be shown to be unchanged, so reads
+ * involving them bypass the memo. Callers get their own copy of the memoised Resource.
+ */
+public class SoTAggregationMemo {
+
+    private static final Comparator<List<Object>> CONTRIBUTION_ORDER =
+            Comparator.comparing(contribution -> (String)contribution.get(0), Comparator.nullsFirst(Comparator.<String>naturalOrder()));
+
+    private final int maximumEntries;
+    // Guarded by "this"; access ordered, so the eldest entry is the least recently used
+    private final LinkedHashMap<Object, MemoEntry> entries;
+    private final SoTAggregationMemoStatistics statistics;
+
+    /**
+     * @param maximumEntries The bound on the number of memoised outcomes (0 disables the memo)
+     */
+    public SoTAggregationMemo(int maximumEntries){
+        this.maximumEntries = Math.max(0, maximumEntries);
+        this.statistics = new SoTAggregationMemoStatistics();
+        this.entries = new LinkedHashMap<Object, MemoEntry>(16, 0.75f, true){
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Object, MemoEntry> eldest) {
+                if(size() > SoTAggregationMemo.this.maximumEntries){
+                    statistics.recordEviction();
+                    return(true);
+                }
+                return(false);
+            }
+        };
+    }
+
+    public SoTAggregationMemoStatistics getStatistics() {
+        return statistics;
+    }
+
+    public synchronized int size(){
+        return(entries.size());
+    }
+
+    /**
+     * Discards every entry (e.g. because the conduits, or their attribute precedence, have changed).
+     */
+    public synchronized void clear(){
+        entries.clear();
+    }
+
+    /**
+     * Returns the memoised outcome for the key if the responses' contribution vector is unchanged, otherwise
+     * aggregates the responses (memoising the outcome if it is a successful one).
+     *
+     * @param key        The memo key of the read (see identifierKey/idKey), or null if it cannot be memoised
+     * @param responses  The responses of the conduits
+     * @param aggregator The aggregation of the responses (the per-property merge)
+     * @return The (memoised or freshly) aggregated outcome
+     */
+    public VirtualDBMethodOutcome getOrAggregate(Object key, List<ResourceSoTConduitActionResponse> responses, Function<List<ResourceSoTConduitActionResponse>, VirtualDBMethodOutcome> aggregator){
+        List<List<Object>> contributionVector = null;
+        if(key != null && maximumEntries > 0){
+            contributionVector = contributionVector(responses);
+        }
+        if(contributionVector == null){
+            statistics.recordBypass();
+            if(key != null){
+                invalidate(key);
+            }
+            return(aggregator.apply(responses));
+        }
+        MemoEntry memoEntry;
+        synchronized(this){
+            memoEntry = entries.get(key);
+        }
+        if(memoEntry != null && memoEntry.contributionVector.equals(contributionVector)){
+            statistics.recordHit(memoEntry.mergeTimeInNanos);
+            return(memoEntry.copyOutcome());
+        }
+        long mergeStart = System.nanoTime();
+        VirtualDBMethodOutcome outcome = aggregator.apply(responses);
+        long mergeTimeInNanos = System.nanoTime() - mergeStart;
+        statistics.recordMiss(mergeTimeInNanos);
+        if(isMemoisable(outcome)){
+            MemoEntry newEntry = new MemoEntry(contributionVector, outcome, mergeTimeInNanos);
+            synchronized(this){
+                entries.put(key, newEntry);
+            }
+            // The caller (e.g. recordIncompleteConduits) may add issues to its outcome, so it must not share the entry's
+            return(newEntry.copyOutcome());
+        }
+        invalidate(key);
+        return(outcome);
+    }
+
+    public synchronized void invalidate(Object key){
+        entries.remove(key);
+    }
+
+    /**
+     * The memo key for a read via an Identifier, or null if the Identifier is incomplete.
+     */
+    public static Object identifierKey(Identifier identifier){
+        if(identifier == null || !identifier.hasSystem() || !identifier.hasValue()){
+            return(null);
+        }
+        return(Arrays.asList("Identifier", identifier.getSystem(), identifier.getValue()));
+    }
+
+    /**
+     * The memo key for a read via a (logical) id, or null if there is none.
+     */
+    public static Object idKey(IdType id){
+        if(id == null || !id.hasIdPart()){
+            return(null);
+        }
+        return(Arrays.asList("Id", id.getIdPart()));
+    }
+
+    /**
+     * The (conduit name ordered) (conduit, versionId, lastUpdated) of each response, or null if any response's
+     * Resource has neither a versionId nor a lastUpdated.
+     */
+    static List<List<Object>> contributionVector(List<ResourceSoTConduitActionResponse> responses){
+        ArrayList<List<Object>> contributionVector = new ArrayList<>(responses.size());
+        for(ResourceSoTConduitActionResponse response: responses){
+            if(!(response.getResource() instanceof Resource)){
+                return(null);
+            }
+            Resource resource = (Resource)response.getResource();
+            if(!resource.hasMeta()){
+                return(null);
+            }
+            String versionId = resource.getMeta().hasVersionId() ? resource.getMeta().getVersionId() : null;
+            Long lastUpdated = resource.getMeta().hasLastUpdated() ? resource.getMeta().getLastUpdated().getTime() : null;
+            if(versionId == null && lastUpdated == null){
+                return(null);
+            }
+            contributionVector.add(Arrays.asList(response.getSourceOfTruthName(), versionId, lastUpdated));
+        }
+        contributionVector.sort(CONTRIBUTION_ORDER);
+        return(contributionVector);
+    }
+
+    private static boolean isMemoisable(VirtualDBMethodOutcome outcome){
+        if(outcome == null || !outcome.hasResource() || !(outcome.getResource() instanceof Resource)){
+            return(false);
+        }
+        return(outcome.getStatusEnum() == VirtualDBActionStatusEnum.REVIEW_FINISH);
+    }
+
+    private static class MemoEntry {
+        private final List<List<Object>> contributionVector;
+        private final VirtualDBMethodOutcome outcome;
+        private final long mergeTimeInNanos;
+
+        MemoEntry(List<List<Object>> contributionVector, VirtualDBMethodOutcome aggregatedOutcome, long mergeTimeInNanos){
+            this.contributionVector = contributionVector;
+            // Keep a private copy, the caller is free to modify the Resource (and OperationOutcome) it was given
+            this.outcome = copyOf(aggregatedOutcome);
+            this.mergeTimeInNanos = mergeTimeInNanos;
+        }
+
+        VirtualDBMethodOutcome copyOutcome(){
+            return(copyOf(outcome));
+        }
+
+        private static VirtualDBMethodOutcome copyOf(VirtualDBMethodOutcome original){
+            VirtualDBMethodOutcome copy = new VirtualDBMethodOutcome(original.getCausalAction(), original.getStatusEnum(), original);
+            copy.setResource(((Resource)original.getResource()).copy());
+            if(original.getOperationOutcome() instanceof OperationOutcome){
+                copy.setOperationOutcome(((OperationOutcome)original.getOperationOutcome()).copy());
+            }
+            if(original.getIdentifier() != null){
+                copy.setIdentifier(original.getIdentifier().copy());
+            }
+            return(copy);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.mdr.conduit.controller.common;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Hit, miss and eviction counters for a SoTAggregationMemo, together with the time spent merging (on misses) and the
+ * time saved (the recorded merge time of the memoised result, on hits). Reads whose inputs carry no version (so
+ * cannot be memoised) are counted as bypassed.
+ */
+public class SoTAggregationMemoStatistics {
+    private LongAdder hitCount;
+    private LongAdder missCount;
+    private LongAdder bypassCount;
+    private LongAdder evictionCount;
+    private LongAdder mergeTimeInNanos;
+    private LongAdder savedMergeTimeInNanos;
+
+    public SoTAggregationMemoStatistics(){
+        this.hitCount = new LongAdder();
+        this.missCount = new LongAdder();
+        this.bypassCount = new LongAdder();
+        this.evictionCount = new LongAdder();
+        this.mergeTimeInNanos = new LongAdder();
+        this.savedMergeTimeInNanos = new LongAdder();
+    }
+
+    /**
+     * The memoised result was returned, saving a merge that (last time) took savedNanos.
+     */
+    public void recordHit(long savedNanos){
+        hitCount.increment();
+        savedMergeTimeInNanos.add(savedNanos);
+    }
+
+    /**
+     * The responses were merged (there was no memoised result, or a contribution had moved), taking mergeNanos.
+     */
+    public void recordMiss(long mergeNanos){
+        missCount.increment();
+        mergeTimeInNanos.add(mergeNanos);
+    }
+
+    public void recordBypass(){
+        bypassCount.increment();
+    }
+
+    /**
+     * An entry was removed to keep the memo within its size bound.
+     */
+    public void recordEviction(){
+        evictionCount.increment();
+    }
+
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    public long getBypassCount() {
+        return bypassCount.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    public long getMergeTimeInNanos() {
+        return mergeTimeInNanos.sum();
+    }
+
+    public long getSavedMergeTimeInNanos() {
+        return savedMergeTimeInNanos.sum();
+    }
+
+    /**
+     * The proportion of (memoisable) reads answered from the memo.
+     */
+    public double getHitRate(){
+        long hits = getHitCount();
+        long requests = hits + getMissCount();
+        if(requests == 0){
+            return(0.0);
+        }
+        return((double)hits / requests);
+    }
+
+    @Override
+    public String toString() {
+        return "SoTAggregationMemoStatistics{" +
+                "hitCount=" + getHitCount() +
+                ", missCount=" + getMissCount() +
+                ", bypassCount=" + getBypassCount() +
+                ", evictionCount=" + getEvictionCount() +
+                ", mergeTimeInNanos=" + getMergeTimeInNanos() +
+                ", savedMergeTimeInNanos=" + getSavedMergeTimeInNanos() +
+                '}';
+    }
+}
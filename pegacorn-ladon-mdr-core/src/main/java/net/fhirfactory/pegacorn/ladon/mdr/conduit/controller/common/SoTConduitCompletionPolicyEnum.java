@@ -0,0 +1,38 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.mdr.conduit.controller.common;
+
+/**
+ * The point at which a ResourceSoTConduitController stops waiting for the conduits of a (read) fan-out.
+ */
+public enum SoTConduitCompletionPolicyEnum {
+    // Wait for every conduit (or its timeout)
+    COMPLETION_POLICY_WAIT_FOR_ALL,
+    // Stop once a response the aggregation service considers final has arrived, and every conduit ahead of it
+    // (in conduit order) has responded - the aggregated result is then the same as waiting for all. For a
+    // whole-resource aggregation service that is an Authoritative & Thorough response to an Identifier read, or a
+    // failed response to an Id read; a per-property service merges every successful response, so only ends early on
+    // a failed (or empty) response to an Id read
+    COMPLETION_POLICY_FIRST_AUTHORITATIVE,
+    // Stop once a quorum of conduits have responded, after giving the stragglers a (hedging) grace period
+    COMPLETION_POLICY_QUORUM
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.mdr.conduit.controller.common;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded (daemon) thread pool shared by all the ResourceSoTConduitControllers, on which the per-conduit
+ * invocations of a concurrent fan-out are run.
+ *
+ * The pool size and queue length can be set via the "ladon.mdr.conduit.fanout.threads" and
+ * "ladon.mdr.conduit.fanout.queue" system properties. When both the pool and the queue are full, the invocation is
+ * rejected (a RejectedExecutionException is thrown by submit()) rather than run on the calling thread, where it would
+ * not be bound by the conduit timeout - the controller records a rejected conduit as incomplete.
+ */
+@ApplicationScoped
+public class SoTConduitFanOutExecutor {
+    private static final Logger LOG = LoggerFactory.getLogger(SoTConduitFanOutExecutor.class);
+
+    private static final String FAN_OUT_THREAD_NAME_PREFIX = "SoTConduitFanOut-";
+    private static final String FAN_OUT_THREADS_PROPERTY = "ladon.mdr.conduit.fanout.threads";
+    private static final String FAN_OUT_QUEUE_PROPERTY = "ladon.mdr.conduit.fanout.queue";
+    private static final int DEFAULT_FAN_OUT_QUEUE_LENGTH = 256;
+
+    private ThreadPoolExecutor fanOutPool;
+    private LongAdder rejectedCount = new LongAdder();
+
+    public SoTConduitFanOutExecutor(){
+        this(Integer.getInteger(FAN_OUT_THREADS_PROPERTY, Math.max(4, 2 * Runtime.getRuntime().availableProcessors())),
+                Integer.getInteger(FAN_OUT_QUEUE_PROPERTY, DEFAULT_FAN_OUT_QUEUE_LENGTH));
+    }
+
+    public SoTConduitFanOutExecutor(int threadCount, int queueLength){
+        LOG.debug(".SoTConduitFanOutExecutor(): Entry, threadCount --> {}, queueLength --> {}", threadCount, queueLength);
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.fanOutPool = new ThreadPoolExecutor(threadCount, threadCount, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueLength),
+                runnable -> {
+                    Thread fanOutThread = new Thread(runnable, FAN_OUT_THREAD_NAME_PREFIX + threadNumber.incrementAndGet());
+                    fanOutThread.setDaemon(true);
+                    return(fanOutThread);
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        this.fanOutPool.allowCoreThreadTimeOut(true);
+    }
+
+    public <T> Future<T> submit(Callable<T> conduitInvocation) throws RejectedExecutionException {
+        try {
+            return(fanOutPool.submit(conduitInvocation));
+        } catch(RejectedExecutionException ex){
+            rejectedCount.increment();
+            LOG.warn(".submit(): Fan-out pool saturated, rejecting conduit invocation (active --> {}, queued --> {})", fanOutPool.getActiveCount(), fanOutPool.getQueue().size());
+            throw(ex);
+        }
+    }
+
+    public int getActiveCount(){
+        return(fanOutPool.getActiveCount());
+    }
+
+    public long getRejectedCount(){
+        return(rejectedCount.sum());
+    }
+
+    @PreDestroy
+    public void shutdown(){
+        LOG.debug(".shutdown(): Entry");
+        fanOutPool.shutdownNow();
+        LOG.debug(".shutdown(): Exit");
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.mdr.conduit.controller.common;
+
+/**
+ * The result of invoking a single SoTResourceConduit as part of a (possibly concurrent) fan-out across all the
+ * conduits of a ResourceSoTConduitController.
+ *
+ * @param <T> The type returned by the conduit action
+ */
+public class SoTConduitInvocation<T> {
+    private String conduitName;
+    private SoTConduitInvocationStatusEnum invocationStatus;
+    private T result;
+    private long elapsedInMillis;
+    private String failureText;
+
+    public SoTConduitInvocation(String conduitName){
+        this.conduitName = conduitName;
+        this.invocationStatus = null;
+        this.result = null;
+        this.elapsedInMillis = 0;
+        this.failureText = null;
+    }
+
+    public boolean isCompleted(){
+        return(invocationStatus == SoTConduitInvocationStatusEnum.INVOCATION_COMPLETED);
+    }
+
+    public boolean hasResult(){
+        return(result != null);
+    }
+
+    public String getConduitName() {
+        return conduitName;
+    }
+
+    public SoTConduitInvocationStatusEnum getInvocationStatus() {
+        return invocationStatus;
+    }
+
+    public void setInvocationStatus(SoTConduitInvocationStatusEnum invocationStatus) {
+        this.invocationStatus = invocationStatus;
+    }
+
+    public T getResult() {
+        return result;
+    }
+
+    public void setResult(T result) {
+        this.result = result;
+    }
+
+    public long getElapsedInMillis() {
+        return elapsedInMillis;
+    }
+
+    public void setElapsedInMillis(long elapsedInMillis) {
+        this.elapsedInMillis = elapsedInMillis;
+    }
+
+    public String getFailureText() {
+        return failureText;
+    }
+
+    public void setFailureText(String failureText) {
+        this.failureText = failureText;
+    }
+
+    @Override
+    public String toString() {
+        return "SoTConduitInvocation{" +
+                "conduitName=" + conduitName +
+                ", invocationStatus=" + invocationStatus +
+                ", hasResult=" + hasResult() +
+                ", elapsedInMillis=" + elapsedInMillis +
+                ", failureText=" + failureText +
+                '}';
+    }
+}
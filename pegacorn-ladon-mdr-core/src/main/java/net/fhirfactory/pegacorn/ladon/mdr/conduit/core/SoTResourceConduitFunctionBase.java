@@ -3,6 +3,7 @@ package net.fhirfactory.pegacorn.ladon.mdr.conduit.core;
 import javax.inject.Inject;
 
 import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.r4.model.Bundle;
 import org.hl7.fhir.r4.model.IdType;
 import org.hl7.fhir.r4.model.Identifier;
 import org.hl7.fhir.r4.model.Resource;
@@ -10,6 +11,8 @@ import org.hl7.fhir.r4.model.ResourceType;
 
 import ca.uhn.fhir.parser.IParser;
 import ca.uhn.fhir.rest.client.api.IGenericClient;
+import ca.uhn.fhir.rest.gclient.IQuery;
+import net.fhirfactory.pegacorn.ladon.mdr.conduit.core.codec.FHIRWireCodec;
 import net.fhirfactory.pegacorn.ladon.model.virtualdb.mdr.ResourceSoTConduitActionResponse;
 import net.fhirfactory.pegacorn.ladon.model.virtualdb.mdr.ResourceSoTConduitActionResponseFactory;
 import net.fhirfactory.pegacorn.ladon.model.virtualdb.mdr.SoTResourceConduit;
@@ -19,10 +22,21 @@ import net.fhirfactory.pegacorn.platform.restfulapi.PegacornInternalFHIRClientSe
 import net.fhirfactory.pegacorn.util.FHIRContextUtility;
 
 public abstract class SoTResourceConduitFunctionBase extends SoTResourceConduit {
+    private static final String SEARCH_PAGE_SIZE_PROPERTY = "ladon.mdr.conduit.search.page.size";
+    private static final String SEARCH_PAGES_IN_FLIGHT_PROPERTY = "ladon.mdr.conduit.search.pages.inflight";
+    private static final String SEARCH_RESULT_LIMIT_PROPERTY = "ladon.mdr.conduit.search.limit";
+    private static final int DEFAULT_SEARCH_PAGE_SIZE = 100;
+    private static final int DEFAULT_SEARCH_PAGES_IN_FLIGHT = 2;
+    private static final int DEFAULT_SEARCH_RESULT_LIMIT = 1000;
+
     @Inject
     FHIRContextUtility fhirContextUtility;
     @Inject
     private ResourceSoTConduitActionResponseFactory sotConduitOutcomeFactory;
+    @Inject
+    private FHIRWireCodec fhirWireCodec;
+    @Inject
+    private SoTSearchPageFetchExecutor pageFetchExecutor;
     
     abstract protected ResourceType specifyResourceType();
     
@@ -35,7 +49,7 @@ public abstract class SoTResourceConduitFunctionBase extends SoTResourceConduit
     }
 
     protected IGenericClient getFHIRPlaceShardClient(){
-        return(getFHIRServiceAccessor().getClient());
+        return(fhirWireCodec.configureClient(getFHIRServiceAccessor().getClient()));
     }
 
     abstract protected PegacornInternalFHIRClientServices specifySecureAccessor();
@@ -48,6 +62,48 @@ public abstract class SoTResourceConduitFunctionBase extends SoTResourceConduit
         return(sotConduitOutcomeFactory);
     }
 
+    /**
+     * The number of entries requested per page (_count) of a streamed search.
+     */
+    protected int specifySearchPageSize(){
+        return(Integer.getInteger(SEARCH_PAGE_SIZE_PROPERTY, DEFAULT_SEARCH_PAGE_SIZE));
+    }
+
+    /**
+     * The number of pages a streamed search may fetch ahead of its consumer (0 fetches each page only when needed).
+     */
+    protected int specifySearchPagesInFlight(){
+        return(Integer.getInteger(SEARCH_PAGES_IN_FLIGHT_PROPERTY, DEFAULT_SEARCH_PAGES_IN_FLIGHT));
+    }
+
+    /**
+     * The number of Resources a search returns when the caller doesn't give a limit - the results are held in memory,
+     * so this is bounded (ladon.mdr.conduit.search.limit, default 1000).
+     */
+    protected int specifyDefaultSearchResultLimit(){
+        return(Integer.getInteger(SEARCH_RESULT_LIMIT_PROPERTY, DEFAULT_SEARCH_RESULT_LIMIT));
+    }
+
+    /**
+     * Executes the search (with the configured page size) and returns a stream over the Resources (of this conduit's
+     * ResourceType) of all its pages, following the "next" links as the stream is consumed. The caller must close
+     * the stream.
+     */
+    protected SoTSearchResultStream streamSearch(IQuery<Bundle> query, int resultLimit){
+        getLogger().debug(".streamSearch(): Entry, resultLimit --> {}", resultLimit);
+        int pageSize = Math.min(specifySearchPageSize(), Math.max(1, resultLimit));
+        Bundle firstPage = query.count(pageSize).execute();
+        SoTSearchResultStream resultStream = new SoTSearchResultStream(
+                firstPage,
+                page -> getFHIRPlaceShardClient().loadPage().next(page).execute(),
+                pageFetchExecutor,
+                specifySearchPagesInFlight(),
+                resultLimit,
+                getResourceType());
+        getLogger().debug(".streamSearch(): Exit");
+        return(resultStream);
+    }
+
 
     @Override
     public ResourceSoTConduitActionResponse getResourceViaIdentifier(Identifier identifier) {
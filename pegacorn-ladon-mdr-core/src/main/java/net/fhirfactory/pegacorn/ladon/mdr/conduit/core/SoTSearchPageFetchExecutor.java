@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.mdr.conduit.core;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A small (daemon) thread pool on which the page prefetches of the conduits' paged searches (SoTSearchResultStream)
+ * are run.
+ *
+ * It is deliberately separate from the SoTConduitFanOutExecutor: the conduit invocations running on the fan-out pool
+ * block waiting for these prefetches, so sharing that pool could leave every fan-out thread waiting for a page that
+ * no thread is free to fetch. Prefetches never wait on anything but the FHIR server, so this pool can't deadlock.
+ *
+ * The pool size and queue length can be set via the "ladon.mdr.conduit.search.prefetch.threads" and
+ * "ladon.mdr.conduit.search.prefetch.queue" system properties. When both are full the prefetch is rejected, and the
+ * SoTSearchResultStream fetches the page on the requesting thread instead.
+ */
+@ApplicationScoped
+public class SoTSearchPageFetchExecutor implements Executor {
+    private static final Logger LOG = LoggerFactory.getLogger(SoTSearchPageFetchExecutor.class);
+
+    private static final String PREFETCH_THREAD_NAME_PREFIX = "SoTSearchPageFetch-";
+    private static final String PREFETCH_THREADS_PROPERTY = "ladon.mdr.conduit.search.prefetch.threads";
+    private static final String PREFETCH_QUEUE_PROPERTY = "ladon.mdr.conduit.search.prefetch.queue";
+    private static final int DEFAULT_PREFETCH_THREADS = 4;
+    private static final int DEFAULT_PREFETCH_QUEUE_LENGTH = 16;
+
+    private ThreadPoolExecutor prefetchPool;
+
+    public SoTSearchPageFetchExecutor(){
+        this(Integer.getInteger(PREFETCH_THREADS_PROPERTY, DEFAULT_PREFETCH_THREADS),
+                Integer.getInteger(PREFETCH_QUEUE_PROPERTY, DEFAULT_PREFETCH_QUEUE_LENGTH));
+    }
+
+    public SoTSearchPageFetchExecutor(int threadCount, int queueLength){
+        LOG.debug(".SoTSearchPageFetchExecutor(): Entry, threadCount --> {}, queueLength --> {}", threadCount, queueLength);
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.prefetchPool = new ThreadPoolExecutor(threadCount, threadCount, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueLength),
+                runnable -> {
+                    Thread prefetchThread = new Thread(runnable, PREFETCH_THREAD_NAME_PREFIX + threadNumber.incrementAndGet());
+                    prefetchThread.setDaemon(true);
+                    return(prefetchThread);
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        this.prefetchPool.allowCoreThreadTimeOut(true);
+    }
+
+    @Override
+    public void execute(Runnable pageFetch){
+        prefetchPool.execute(pageFetch);
+    }
+
+    @PreDestroy
+    public void shutdown(){
+        LOG.debug(".shutdown(): Entry");
+        prefetchPool.shutdownNow();
+        LOG.debug(".shutdown(): Exit");
+    }
+}
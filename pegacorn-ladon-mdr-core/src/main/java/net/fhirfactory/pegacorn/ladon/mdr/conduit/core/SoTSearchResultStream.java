@@ -0,0 +1,305 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.mdr.conduit.core;
+
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Resource;
+import org.hl7.fhir.r4.model.ResourceType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Iterates over the (matching) Resources of a paged FHIR search, lazily following the "next" links of the search
+ * result Bundles.
+ *
+ * Up to maximumPagesInFlight pages are fetched ahead of the consumer (on the pageFetchExecutor); with zero, each page
+ * is only fetched (on the consuming thread) once the previous one has been consumed. No further pages are requested
+ * once resultLimit matching Resources have been fetched, or once the stream is closed - so a caller that stops early
+ * (and closes the stream) does not pay for the rest of the result set.
+ */
+public class SoTSearchResultStream implements Iterator<Resource>, AutoCloseable {
+    private static final Logger LOG = LoggerFactory.getLogger(SoTSearchResultStream.class);
+
+    public static final int NO_RESULT_LIMIT = Integer.MAX_VALUE;
+
+    private final Function<Bundle, Bundle> nextPageLoader;
+    private final Executor pageFetchExecutor;
+    private final int maximumPagesInFlight;
+    private final int resultLimit;
+    private final ResourceType resourceType;
+
+    private final Object pageLock;
+    private final ArrayDeque<Bundle> readyPages;
+    private Bundle lastFetchedPage;
+    private boolean fetchInProgress;
+    private boolean exhausted;
+    private boolean closed;
+    private RuntimeException fetchFailure;
+    private int fetchedPageCount;
+    private int fetchedResourceCount;
+
+    private Iterator<Bundle.BundleEntryComponent> currentEntries;
+    private Resource nextResource;
+    private int returnedResourceCount;
+
+    /**
+     * @param firstPage The Bundle returned by the initial search
+     * @param nextPageLoader Given a page, fetches the page its "next" link refers to
+     * @param pageFetchExecutor Where pages are fetched ahead of the consumer (a caller-runs fallback is used if it
+     *                          rejects the fetch)
+     * @param maximumPagesInFlight The number of pages that may be fetched (or fetching) ahead of the consumer
+     * @param resultLimit The number of matching Resources after which no further pages are requested
+     * @param resourceType Only entries of this type are returned (so included Resources and OperationOutcomes are
+     *                     skipped), or null for all entries
+     */
+    public SoTSearchResultStream(Bundle firstPage, Function<Bundle, Bundle> nextPageLoader, Executor pageFetchExecutor, int maximumPagesInFlight, int resultLimit, ResourceType resourceType){
+        this.nextPageLoader = nextPageLoader;
+        this.pageFetchExecutor = pageFetchExecutor;
+        this.maximumPagesInFlight = (pageFetchExecutor == null) ? 0 : Math.max(0, maximumPagesInFlight);
+        this.resultLimit = Math.max(0, resultLimit);
+        this.resourceType = resourceType;
+        this.pageLock = new Object();
+        this.readyPages = new ArrayDeque<>();
+        this.currentEntries = Collections.emptyIterator();
+        Bundle prefetchFrom = null;
+        synchronized (pageLock) {
+            if(firstPage == null){
+                this.exhausted = true;
+            } else {
+                acceptPage(firstPage);
+                prefetchFrom = claimNextFetch(false);
+            }
+        }
+        submitFetch(prefetchFrom);
+    }
+
+    public int getResultLimit() {
+        return resultLimit;
+    }
+
+    public int getFetchedPageCount() {
+        synchronized (pageLock) {
+            return fetchedPageCount;
+        }
+    }
+
+    /**
+     * The number of pages fetched but not yet (started to be) consumed.
+     */
+    public int getReadyPageCount() {
+        synchronized (pageLock) {
+            return readyPages.size();
+        }
+    }
+
+    public int getReturnedResourceCount() {
+        return returnedResourceCount;
+    }
+
+    /**
+     * The (sequential, ordered) Stream of the matching Resources - closing it closes this.
+     */
+    public Stream<Resource> stream(){
+        Spliterator<Resource> resourceSpliterator = Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL);
+        return(StreamSupport.stream(resourceSpliterator, false).onClose(this::close));
+    }
+
+    @Override
+    public boolean hasNext() {
+        if(nextResource != null){
+            return(true);
+        }
+        if(returnedResourceCount >= resultLimit){
+            return(false);
+        }
+        while(true){
+            while(currentEntries.hasNext()){
+                Resource entryResource = currentEntries.next().getResource();
+                if(isMatchingResource(entryResource)){
+                    nextResource = entryResource;
+                    return(true);
+                }
+            }
+            Bundle page = takeNextPage();
+            if(page == null){
+                return(false);
+            }
+            currentEntries = page.getEntry().iterator();
+        }
+    }
+
+    @Override
+    public Resource next() {
+        if(!hasNext()){
+            throw(new NoSuchElementException());
+        }
+        Resource resource = nextResource;
+        nextResource = null;
+        returnedResourceCount += 1;
+        return(resource);
+    }
+
+    @Override
+    public void close() {
+        synchronized (pageLock) {
+            if(!closed) {
+                LOG.trace(".close(): Closing, fetchedPageCount --> {}, returnedResourceCount --> {}", fetchedPageCount, returnedResourceCount);
+            }
+            closed = true;
+            readyPages.clear();
+            pageLock.notifyAll();
+        }
+        currentEntries = Collections.emptyIterator();
+        nextResource = null;
+    }
+
+    //
+    // Page Fetching
+    //
+
+    private boolean isMatchingResource(Resource resource){
+        if(resource == null){
+            return(false);
+        }
+        return(resourceType == null || resource.getResourceType() == resourceType);
+    }
+
+    private Bundle takeNextPage(){
+        while(true) {
+            Bundle page = null;
+            Bundle fetchFrom;
+            synchronized (pageLock) {
+                if(closed){
+                    return(null);
+                }
+                if(!readyPages.isEmpty()){
+                    page = readyPages.poll();
+                    fetchFrom = claimNextFetch(false);
+                } else if(fetchFailure != null){
+                    throw(fetchFailure);
+                } else if(fetchInProgress){
+                    try {
+                        pageLock.wait();
+                    } catch(InterruptedException interrupted){
+                        LOG.debug(".takeNextPage(): Interrupted waiting for a page, ending the search");
+                        Thread.currentThread().interrupt();
+                        close();
+                        return(null);
+                    }
+                    continue;
+                } else {
+                    fetchFrom = claimNextFetch(true);
+                    if(fetchFrom == null){
+                        return(null);
+                    }
+                }
+            }
+            submitFetch(fetchFrom);
+            if(page != null){
+                return(page);
+            }
+        }
+    }
+
+    /**
+     * Must be called holding the pageLock. Returns the page whose "next" link should now be fetched (marking the
+     * fetch as in progress), or null if no fetch is needed/permitted.
+     */
+    private Bundle claimNextFetch(boolean consumerWaiting){
+        if(closed || exhausted || fetchInProgress || fetchFailure != null){
+            return(null);
+        }
+        if(!consumerWaiting && readyPages.size() >= maximumPagesInFlight){
+            return(null);
+        }
+        if(fetchedResourceCount >= resultLimit || lastFetchedPage.getLink(Bundle.LINK_NEXT) == null){
+            exhausted = true;
+            pageLock.notifyAll();
+            return(null);
+        }
+        fetchInProgress = true;
+        return(lastFetchedPage);
+    }
+
+    private void submitFetch(Bundle fetchFrom){
+        if(fetchFrom == null){
+            return;
+        }
+        if(maximumPagesInFlight == 0){
+            fetchPage(fetchFrom);
+            return;
+        }
+        try {
+            pageFetchExecutor.execute(() -> fetchPage(fetchFrom));
+        } catch(RejectedExecutionException rejected){
+            fetchPage(fetchFrom);
+        }
+    }
+
+    private void fetchPage(Bundle fetchFrom){
+        Bundle page = null;
+        RuntimeException failure = null;
+        try {
+            page = nextPageLoader.apply(fetchFrom);
+        } catch(RuntimeException loadFailure){
+            LOG.debug(".fetchPage(): Could not fetch the next page, error --> {}", loadFailure.getMessage());
+            failure = loadFailure;
+        }
+        Bundle prefetchFrom = null;
+        synchronized (pageLock) {
+            fetchInProgress = false;
+            if(failure != null){
+                fetchFailure = failure;
+            } else if(page == null){
+                exhausted = true;
+            } else if(!closed){
+                acceptPage(page);
+                prefetchFrom = claimNextFetch(false);
+            }
+            pageLock.notifyAll();
+        }
+        submitFetch(prefetchFrom);
+    }
+
+    private void acceptPage(Bundle page){
+        readyPages.add(page);
+        lastFetchedPage = page;
+        fetchedPageCount += 1;
+        for(Bundle.BundleEntryComponent entry: page.getEntry()){
+            if(isMatchingResource(entry.getResource())){
+                fetchedResourceCount += 1;
+            }
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.mdr.conduit.core.codec;
+
+import ca.uhn.fhir.rest.api.EncodingEnum;
+import ca.uhn.fhir.rest.client.api.IGenericClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Configures the outbound FHIR clients - i.e. those of the PersistenceServices and of the FHIRPlace SoT Conduits -
+ * for the wire. Clients passed through configureClient() are set to compact JSON (no pretty printing) and (unless
+ * ladon.fhir.wire.gzip is false) have their request bodies gzip compressed as they are sent - responses are already
+ * decompressed transparently by the underlying Apache HttpClient.
+ *
+ * Parser reuse and streaming the encoding into the request entity are not within its reach: the HAPI client encodes
+ * each request body to a String (with a new parser) within its method invocation, before either the IHttpClient or
+ * any interceptor sees the request. So the savings are those of compact JSON and compression on the wire.
+ */
+@ApplicationScoped
+public class FHIRWireCodec {
+    private static final Logger LOG = LoggerFactory.getLogger(FHIRWireCodec.class);
+
+    private static final String REQUEST_COMPRESSION_PROPERTY = "ladon.fhir.wire.gzip";
+    private static final String COMPRESSION_THRESHOLD_PROPERTY = "ladon.fhir.wire.gzip.threshold";
+    private static final int DEFAULT_COMPRESSION_THRESHOLD = 1024;
+
+    private Map<IGenericClient, Boolean> configuredClients;
+    private FHIRWireCompressionInterceptor compressionInterceptor;
+
+    public FHIRWireCodec(){
+        this.configuredClients = Collections.synchronizedMap(new WeakHashMap<>());
+    }
+
+    @PostConstruct
+    public void initialise(){
+        LOG.debug(".initialise(): Entry");
+        compressionInterceptor = new FHIRWireCompressionInterceptor(specifyCompressionThreshold());
+        LOG.debug(".initialise(): Exit, requestCompression --> {}, compressionThreshold --> {}", specifyRequestCompression(), specifyCompressionThreshold());
+    }
+
+    protected boolean specifyRequestCompression(){
+        return(Boolean.parseBoolean(System.getProperty(REQUEST_COMPRESSION_PROPERTY, "true")));
+    }
+
+    /**
+     * Request bodies (of known length) smaller than this are not worth the compression effort.
+     */
+    protected int specifyCompressionThreshold(){
+        return(Integer.getInteger(COMPRESSION_THRESHOLD_PROPERTY, DEFAULT_COMPRESSION_THRESHOLD));
+    }
+
+    /**
+     * Configures the client (once - it is remembered, weakly) for compact JSON and, if enabled, gzip compressed
+     * requests. Returns the client, so it can wrap a getClient() call.
+     */
+    public IGenericClient configureClient(IGenericClient client){
+        if(client == null){
+            return(null);
+        }
+        if(configuredClients.putIfAbsent(client, Boolean.TRUE) == null){
+            LOG.debug(".configureClient(): Configuring client, serverBase --> {}", client.getServerBase());
+            client.setPrettyPrint(false);
+            client.setEncoding(EncodingEnum.JSON);
+            if(specifyRequestCompression()){
+                client.registerInterceptor(compressionInterceptor);
+            }
+        }
+        return(client);
+    }
+}
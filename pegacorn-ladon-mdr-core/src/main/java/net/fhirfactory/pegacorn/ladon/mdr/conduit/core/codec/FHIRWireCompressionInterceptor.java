@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.mdr.conduit.core.codec;
+
+import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.client.api.IClientInterceptor;
+import ca.uhn.fhir.rest.client.api.IHttpRequest;
+import ca.uhn.fhir.rest.client.api.IHttpResponse;
+import ca.uhn.fhir.rest.client.apache.ApacheHttpRequest;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.client.entity.GzipCompressingEntity;
+import org.apache.http.client.methods.HttpRequestBase;
+
+/**
+ * Asks for gzip compressed responses and gzip compresses request bodies (of at least compressionThreshold bytes,
+ * or of unknown length). Unlike the HAPI GZipContentInterceptor, the body is compressed as it is streamed to the
+ * connection, rather than into an intermediate byte[].
+ *
+ * Compressed responses need no handling here, the Apache HttpClient (as built by the HAPI client factory) decodes
+ * them before the client sees them.
+ */
+public class FHIRWireCompressionInterceptor implements IClientInterceptor {
+
+    private int compressionThreshold;
+
+    public FHIRWireCompressionInterceptor(int compressionThreshold){
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    public int getCompressionThreshold() {
+        return compressionThreshold;
+    }
+
+    @Override
+    public void interceptRequest(IHttpRequest request) {
+        request.addHeader(Constants.HEADER_ACCEPT_ENCODING, Constants.ENCODING_GZIP);
+        if(!(request instanceof ApacheHttpRequest)){
+            return;
+        }
+        HttpRequestBase apacheRequest = ((ApacheHttpRequest)request).getApacheRequest();
+        if(!(apacheRequest instanceof HttpEntityEnclosingRequest)){
+            return;
+        }
+        HttpEntityEnclosingRequest requestWithBody = (HttpEntityEnclosingRequest)apacheRequest;
+        HttpEntity body = requestWithBody.getEntity();
+        if(body == null || body.getContentEncoding() != null || apacheRequest.containsHeader(Constants.HEADER_CONTENT_ENCODING)){
+            return;
+        }
+        long bodyLength = body.getContentLength();
+        if(bodyLength >= 0 && bodyLength < compressionThreshold){
+            return;
+        }
+        requestWithBody.setEntity(new GzipCompressingEntity(body));
+    }
+
+    @Override
+    public void interceptResponse(IHttpResponse response) {
+        // Nothing to do, see the class comment
+    }
+}
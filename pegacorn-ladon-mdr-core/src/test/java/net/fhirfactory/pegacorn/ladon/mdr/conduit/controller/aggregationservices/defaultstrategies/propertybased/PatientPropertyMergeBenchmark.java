@@ -0,0 +1,161 @@
+package net.fhirfactory.pegacorn.ladon.mdr.conduit.controller.aggregationservices.defaultstrategies.propertybased;
+
+import java.lang.reflect.Field;
+
+import ca.uhn.fhir.context.FhirContext;
+import net.fhirfactory.pegacorn.ladon.mdr.conduit.controller.aggregationservices.defaultstrategies.propertybased.common.PerPropertyBasedContentAggregationServiceBase;
+import net.fhirfactory.pegacorn.ladon.mdr.conduit.controller.aggregationservices.defaultstrategies.propertybased.common.PerPropertyMergeHelpers;
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.mdr.ResourceSoTConduitActionResponse;
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.mdr.SoTConduitGradeEnum;
+import net.fhirfactory.pegacorn.petasos.model.itops.PegacornFunctionStatusEnum;
+import org.hl7.fhir.r4.model.BooleanType;
+import org.hl7.fhir.r4.model.ContactPoint;
+import org.hl7.fhir.r4.model.DateType;
+import org.hl7.fhir.r4.model.Enumerations;
+import org.hl7.fhir.r4.model.HumanName;
+import org.hl7.fhir.r4.model.Patient;
+
+/**
+ * A (manually run) benchmark of the property-by-property Patient merge, comparing the handwritten
+ * PatientDefaultPropertyBasedContentAggregationService with the PropertyMergePlan driven
+ * PatientMetadataDrivenPropertyBasedContentAggregationService. Each merge folds an (overlapping) AUTHORITATIVE
+ * Patient into a fresh copy of an INFORMATIVE one; the cost of the copies alone is reported as a baseline. The merge
+ * is then repeated for Patients with many (half overlapping) contacts, which the PropertyMergePlan merges with
+ * APPEND_DISTINCT - the cost per contact should stay flat as the contact count grows.
+ *
+ * Run with: mvn -pl pegacorn-ladon-mdr-core test-compile exec:java -Dexec.classpathScope=test
+ *     -Dexec.mainClass=net.fhirfactory.pegacorn.ladon.mdr.conduit.controller.aggregationservices.defaultstrategies.propertybased.PatientPropertyMergeBenchmark
+ */
+public class PatientPropertyMergeBenchmark {
+
+    private static final int WARMUP_ITERATIONS = 50000;
+    private static final int MEASURED_ITERATIONS = 200000;
+    private static final int[] CONTACT_COUNTS = {10, 100, 1000};
+    private static final int CONTACT_MERGE_BUDGET = 2000000;
+
+    private static final FhirContext FHIR_CONTEXT = FhirContext.forR4();
+
+    private static volatile int sink;
+
+    public static void main(String[] args) throws Exception {
+        PerPropertyMergeHelpers mergeHelpers = new PerPropertyMergeHelpers();
+        PatientDefaultPropertyBasedContentAggregationService handwritten = new PatientDefaultPropertyBasedContentAggregationService();
+        BenchmarkedMetadataDrivenService metadataDriven = new BenchmarkedMetadataDrivenService();
+        injectMergeHelpers(handwritten, mergeHelpers);
+        injectMergeHelpers(metadataDriven, mergeHelpers);
+
+        Patient basePatient = buildBasePatient();
+        Patient additivePatient = buildAdditivePatient();
+        for(int mode = 0; mode < 3; mode++){
+            measure(mode, handwritten, metadataDriven, basePatient, additivePatient, WARMUP_ITERATIONS);
+        }
+        report("copy only (baseline)", measure(0, handwritten, metadataDriven, basePatient, additivePatient, MEASURED_ITERATIONS));
+        report("handwritten", measure(1, handwritten, metadataDriven, basePatient, additivePatient, MEASURED_ITERATIONS));
+        report("metadata-driven (PropertyMergePlan)", measure(2, handwritten, metadataDriven, basePatient, additivePatient, MEASURED_ITERATIONS));
+
+        for(int contactCount: CONTACT_COUNTS){
+            Patient contactBasePatient = addContacts(buildBasePatient(), 0, contactCount);
+            Patient contactAdditivePatient = addContacts(buildAdditivePatient(), contactCount / 2, contactCount + contactCount / 2);
+            // Roughly the same number of contacts merged at each size
+            int iterations = Math.max(CONTACT_MERGE_BUDGET / contactCount, 10);
+            for(int mode = 0; mode < 3; mode++){
+                measure(mode, handwritten, metadataDriven, contactBasePatient, contactAdditivePatient, iterations / 4);
+            }
+            report("copy only, " + contactCount + " contacts", measure(0, handwritten, metadataDriven, contactBasePatient, contactAdditivePatient, iterations));
+            report("handwritten, " + contactCount + " contacts", measure(1, handwritten, metadataDriven, contactBasePatient, contactAdditivePatient, iterations));
+            report("metadata-driven, " + contactCount + " contacts", measure(2, handwritten, metadataDriven, contactBasePatient, contactAdditivePatient, iterations));
+        }
+    }
+
+    private static long measure(int mode, PatientDefaultPropertyBasedContentAggregationService handwritten,
+                                BenchmarkedMetadataDrivenService metadataDriven,
+                                Patient basePatient, Patient additivePatient, int iterations){
+        int accumulator = 0;
+        long startTime = System.nanoTime();
+        for(int counter = 0; counter < iterations; counter++){
+            ResourceSoTConduitActionResponse baseResponse = response(basePatient.copy(), SoTConduitGradeEnum.INFORMATIVE);
+            ResourceSoTConduitActionResponse additiveResponse = response(additivePatient, SoTConduitGradeEnum.AUTHORITATIVE);
+            switch(mode){
+                case 1:
+                    handwritten.aggregateIntoBasePropertyByProperty(baseResponse, additiveResponse);
+                    break;
+                case 2:
+                    metadataDriven.merge(baseResponse, additiveResponse);
+                    break;
+                default:
+                    break;
+            }
+            accumulator += ((Patient)baseResponse.getResource()).getIdentifier().size();
+        }
+        long elapsedNanos = System.nanoTime() - startTime;
+        sink = accumulator;
+        return(elapsedNanos / iterations);
+    }
+
+    private static void report(String path, long nanosPerMerge){
+        System.out.printf("%-40s %8d ns/merge%n", path, nanosPerMerge);
+    }
+
+    private static void injectMergeHelpers(PerPropertyBasedContentAggregationServiceBase service, PerPropertyMergeHelpers mergeHelpers) throws ReflectiveOperationException {
+        Field mergeHelpersField = PerPropertyBasedContentAggregationServiceBase.class.getDeclaredField("mergeHelpers");
+        mergeHelpersField.setAccessible(true);
+        mergeHelpersField.set(service, mergeHelpers);
+    }
+
+    private static ResourceSoTConduitActionResponse response(Patient patient, SoTConduitGradeEnum grade){
+        ResourceSoTConduitActionResponse response = new ResourceSoTConduitActionResponse(grade.toString(), PegacornFunctionStatusEnum.FUNCTION_STATUS_OK);
+        response.setSoTGrade(grade);
+        response.setResource(patient);
+        return(response);
+    }
+
+    private static Patient addContacts(Patient patient, int firstContact, int lastContact){
+        for(int contact = firstContact; contact < lastContact; contact++){
+            Patient.ContactComponent contactComponent = patient.addContact();
+            contactComponent.getRelationshipFirstRep().setText("Next of kin");
+            contactComponent.setName(new HumanName().setFamily("Contact-" + contact).addGiven("Alex"));
+            contactComponent.addTelecom().setSystem(ContactPoint.ContactPointSystem.PHONE).setValue("02 6200 " + contact);
+        }
+        return(patient);
+    }
+
+    private static Patient buildBasePatient(){
+        Patient patient = new Patient();
+        patient.setActive(false);
+        patient.addIdentifier().setSystem("http://example.org/identifiers/mrn").setValue("MRN-1");
+        patient.addName().setUse(HumanName.NameUse.OFFICIAL).setFamily("Citizen").addGiven("Jane");
+        patient.addTelecom().setSystem(ContactPoint.ContactPointSystem.PHONE).setValue("02 6200 0000").setUse(ContactPoint.ContactPointUse.HOME);
+        patient.setGender(Enumerations.AdministrativeGender.UNKNOWN);
+        patient.addAddress().addLine("1 Example Street").setCity("Canberra").setState("ACT").setPostalCode("2600");
+        patient.addCommunication().getLanguage().setText("English");
+        return(patient);
+    }
+
+    private static Patient buildAdditivePatient(){
+        Patient patient = new Patient();
+        patient.setActive(true);
+        patient.addIdentifier().setSystem("http://example.org/identifiers/mrn").setValue("MRN-1");
+        patient.addIdentifier().setSystem("http://example.org/identifiers/medicare").setValue("2950");
+        patient.addName().setUse(HumanName.NameUse.OFFICIAL).setFamily("Citizen").addGiven("Jane").addGiven("Q");
+        patient.addTelecom().setSystem(ContactPoint.ContactPointSystem.EMAIL).setValue("jane@example.org");
+        patient.setGender(Enumerations.AdministrativeGender.FEMALE);
+        patient.setBirthDateElement(new DateType("1970-01-01"));
+        patient.setDeceased(new BooleanType(false));
+        patient.getMaritalStatus().setText("Married");
+        patient.addCommunication().getLanguage().setText("English");
+        patient.getManagingOrganization().setReference("Organization/1");
+        return(patient);
+    }
+
+    private static class BenchmarkedMetadataDrivenService extends PatientMetadataDrivenPropertyBasedContentAggregationService {
+
+        @Override
+        protected FhirContext specifyFhirContext() {
+            return (FHIR_CONTEXT);
+        }
+
+        void merge(ResourceSoTConduitActionResponse baseResponse, ResourceSoTConduitActionResponse additiveResponse){
+            aggregateIntoBasePropertyByProperty(baseResponse, additiveResponse);
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package net.fhirfactory.pegacorn.ladon.mdr.conduit.controller.aggregationservices.defaultstrategies.propertybased;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import net.fhirfactory.pegacorn.ladon.mdr.conduit.controller.aggregationservices.defaultstrategies.propertybased.common.PerPropertyBasedContentAggregationServiceBase;
+import net.fhirfactory.pegacorn.ladon.mdr.conduit.controller.aggregationservices.defaultstrategies.propertybased.common.PerPropertyMergeHelpers;
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.mdr.ResourceGradeEnum;
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.mdr.ResourceSoTConduitActionResponse;
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.mdr.ResourceSoTConduitSearchResponseElement;
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.mdr.SoTConduitGradeEnum;
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.operations.VirtualDBActionStatusEnum;
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.operations.VirtualDBActionTypeEnum;
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.operations.VirtualDBMethodOutcome;
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.operations.VirtualDBMethodOutcomeFactory;
+import net.fhirfactory.pegacorn.petasos.model.itops.PegacornFunctionStatusEnum;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Identifier;
+import org.hl7.fhir.r4.model.OperationOutcome;
+import org.hl7.fhir.r4.model.Patient;
+import org.hl7.fhir.r4.model.Resource;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Checks the fusion of multi-conduit search results by PerPropertyBasedContentAggregationServiceBase, through the
+ * (concrete) PatientDefaultPropertyBasedContentAggregationService.
+ */
+public class PatientSearchResultFusionTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PatientSearchResultFusionTest.class);
+
+    private static final String MRN_SYSTEM = "http://example.org/identifiers/mrn";
+    private static final String MEDICARE_SYSTEM = "http://example.org/identifiers/medicare";
+
+    private PatientDefaultPropertyBasedContentAggregationService aggregationService;
+
+    @Before
+    public void setUp() throws ReflectiveOperationException {
+        aggregationService = new PatientDefaultPropertyBasedContentAggregationService();
+        inject(aggregationService, "mergeHelpers", new PerPropertyMergeHelpers());
+        inject(aggregationService, "outcomeFactory", new VirtualDBMethodOutcomeFactory());
+    }
+
+    @Test
+    public void overlappingResultsFromTwoConduitsAreFused() {
+        LOG.debug(".overlappingResultsFromTwoConduitsAreFused(): Entry");
+        Patient sharedFromA = buildPatient("a-1", "Citizen").addIdentifier(mrn("MRN-1")).addIdentifier(medicare("2950"));
+        Patient onlyFromA = buildPatient("a-2", "Smith").addIdentifier(mrn("MRN-2"));
+        Patient sharedFromB = buildPatient("b-1", "Citizen").addIdentifier(mrn("MRN-1"));
+        Patient onlyFromB = buildPatient("b-3", "Jones").addIdentifier(mrn("MRN-3"));
+        List<ResourceSoTConduitSearchResponseElement> responseSet = new ArrayList<>();
+        responseSet.add(searchResponse("conduit-a", SoTConduitGradeEnum.AUTHORITATIVE, ResourceGradeEnum.THOROUGH, sharedFromA, onlyFromA));
+        responseSet.add(searchResponse("conduit-b", SoTConduitGradeEnum.INFORMATIVE, ResourceGradeEnum.ESTABLISHED, sharedFromB, onlyFromB));
+
+        VirtualDBMethodOutcome outcome = aggregationService.aggregateSearchResultSet(responseSet);
+
+        assertEquals(VirtualDBActionStatusEnum.SEARCH_FINISHED, outcome.getStatusEnum());
+        Bundle searchResult = (Bundle) outcome.getResource();
+        assertEquals(3, searchResult.getTotal());
+        assertEquals(3, searchResult.getEntry().size());
+        Patient fusedPatient = findByIdentifier(searchResult, MRN_SYSTEM, "MRN-1");
+        assertNotNull(fusedPatient);
+        // Both conduits' Identifiers are kept on the single fused entry
+        assertEquals(2, fusedPatient.getIdentifier().size());
+        assertNotNull(findByIdentifier(searchResult, MRN_SYSTEM, "MRN-2"));
+        assertNotNull(findByIdentifier(searchResult, MRN_SYSTEM, "MRN-3"));
+    }
+
+    @Test
+    public void matchedResultsAreFusedIntoTheResultWithPrecedence() {
+        LOG.debug(".matchedResultsAreFusedIntoTheResultWithPrecedence(): Entry");
+        Patient fromA = buildPatient("a-1", "Citizen").addIdentifier(mrn("MRN-1")).addIdentifier(medicare("2950"));
+        Patient fromB = buildPatient("b-1", "Citizen").addIdentifier(mrn("MRN-1"));
+        List<ResourceSoTConduitSearchResponseElement> responseSet = new ArrayList<>();
+        responseSet.add(searchResponse("conduit-a", SoTConduitGradeEnum.AUTHORITATIVE, ResourceGradeEnum.THOROUGH, fromA));
+        responseSet.add(searchResponse("conduit-b", SoTConduitGradeEnum.ANECDOTAL, ResourceGradeEnum.LIMITED, fromB));
+        // The precedence order is that of Collections.sort() over the matched results (not the conduit order), which
+        // puts the Authoritative & Thorough result first
+        List<ResourceSoTConduitActionResponse> precedenceOrder = new ArrayList<>(Arrays.asList(
+                searchResult("conduit-a", SoTConduitGradeEnum.AUTHORITATIVE, ResourceGradeEnum.THOROUGH, fromA),
+                searchResult("conduit-b", SoTConduitGradeEnum.ANECDOTAL, ResourceGradeEnum.LIMITED, fromB)));
+        Collections.sort(precedenceOrder);
+        Resource expectedBase = (Resource) precedenceOrder.get(0).getResource();
+        assertSame(fromA, expectedBase);
+
+        VirtualDBMethodOutcome outcome = aggregationService.aggregateSearchResultSet(responseSet);
+
+        Bundle searchResult = (Bundle) outcome.getResource();
+        assertEquals(1, searchResult.getTotal());
+        assertSame(expectedBase, searchResult.getEntryFirstRep().getResource());
+        assertEquals(2, ((Patient) searchResult.getEntryFirstRep().getResource()).getIdentifier().size());
+        assertEquals(Bundle.SearchEntryMode.MATCH, searchResult.getEntryFirstRep().getSearch().getMode());
+    }
+
+    @Test
+    public void everyConduitFailingGivesAFailedSearchOutcome() {
+        LOG.debug(".everyConduitFailingGivesAFailedSearchOutcome(): Entry");
+        List<ResourceSoTConduitSearchResponseElement> responseSet = new ArrayList<>();
+        responseSet.add(failedSearchResponse("conduit-a", "Connection refused"));
+        responseSet.add(failedSearchResponse("conduit-b", "Timed out"));
+
+        VirtualDBMethodOutcome outcome = aggregationService.aggregateSearchResultSet(responseSet);
+
+        assertEquals(VirtualDBActionStatusEnum.SEARCH_FAILURE, outcome.getStatusEnum());
+        assertEquals(VirtualDBActionTypeEnum.SEARCH, outcome.getCausalAction());
+        OperationOutcome.OperationOutcomeIssueComponent issue = ((OperationOutcome) outcome.getOperationOutcome()).getIssueFirstRep();
+        assertEquals(OperationOutcome.IssueSeverity.ERROR, issue.getSeverity());
+        assertTrue(issue.getDetails().getText().contains("conduit-b"));
+    }
+
+    @Test
+    public void aFailedConduitDoesNotHideTheOthersResults() {
+        LOG.debug(".aFailedConduitDoesNotHideTheOthersResults(): Entry");
+        List<ResourceSoTConduitSearchResponseElement> responseSet = new ArrayList<>();
+        responseSet.add(failedSearchResponse("conduit-a", "Connection refused"));
+        responseSet.add(searchResponse("conduit-b", SoTConduitGradeEnum.INFORMATIVE, ResourceGradeEnum.ESTABLISHED, buildPatient("b-1", "Citizen").addIdentifier(mrn("MRN-1"))));
+
+        VirtualDBMethodOutcome outcome = aggregationService.aggregateSearchResultSet(responseSet);
+
+        assertEquals(VirtualDBActionStatusEnum.SEARCH_FINISHED, outcome.getStatusEnum());
+        assertEquals(1, ((Bundle) outcome.getResource()).getTotal());
+    }
+
+    @Test
+    public void resultsWithNoUsableIdentifierArePassedThrough() {
+        LOG.debug(".resultsWithNoUsableIdentifierArePassedThrough(): Entry");
+        Patient noIdentifierFromA = buildPatient("a-1", "Citizen");
+        Patient noSystemFromA = buildPatient("a-2", "Citizen");
+        noSystemFromA.addIdentifier().setValue("MRN-1");
+        Patient noIdentifierFromB = buildPatient("b-1", "Citizen");
+        List<ResourceSoTConduitSearchResponseElement> responseSet = new ArrayList<>();
+        responseSet.add(searchResponse("conduit-a", SoTConduitGradeEnum.AUTHORITATIVE, ResourceGradeEnum.THOROUGH, noIdentifierFromA, noSystemFromA));
+        responseSet.add(searchResponse("conduit-b", SoTConduitGradeEnum.INFORMATIVE, ResourceGradeEnum.ESTABLISHED, noIdentifierFromB));
+
+        VirtualDBMethodOutcome outcome = aggregationService.aggregateSearchResultSet(responseSet);
+
+        Bundle searchResult = (Bundle) outcome.getResource();
+        assertEquals(3, searchResult.getTotal());
+        List<Resource> entryResources = new ArrayList<>();
+        for(Bundle.BundleEntryComponent entry: searchResult.getEntry()){
+            entryResources.add(entry.getResource());
+        }
+        // Passed through as-is: neither merged with each other nor copied
+        assertTrue(containsInstance(entryResources, noIdentifierFromA));
+        assertTrue(containsInstance(entryResources, noSystemFromA));
+        assertTrue(containsInstance(entryResources, noIdentifierFromB));
+        assertEquals(1, noSystemFromA.getIdentifier().size());
+    }
+
+    //
+    // Helpers
+    //
+
+    private static void inject(PerPropertyBasedContentAggregationServiceBase service, String fieldName, Object value) throws ReflectiveOperationException {
+        Field field = PerPropertyBasedContentAggregationServiceBase.class.getDeclaredField(fieldName);
+        field.setAccessible(true);
+        field.set(service, value);
+    }
+
+    private static Patient buildPatient(String id, String family){
+        Patient patient = new Patient();
+        patient.setId("Patient/" + id);
+        patient.addName().setFamily(family);
+        return(patient);
+    }
+
+    private static Identifier mrn(String value){
+        return(new Identifier().setSystem(MRN_SYSTEM).setValue(value));
+    }
+
+    private static Identifier medicare(String value){
+        return(new Identifier().setSystem(MEDICARE_SYSTEM).setValue(value));
+    }
+
+    private static ResourceSoTConduitSearchResponseElement searchResponse(String conduitName, SoTConduitGradeEnum sotGrade, ResourceGradeEnum resourceGrade, Resource... resources){
+        ResourceSoTConduitSearchResponseElement responseElement = new ResourceSoTConduitSearchResponseElement(new ArrayList<>(Arrays.asList(resources)), resourceGrade);
+        responseElement.setConduitName(conduitName);
+        responseElement.setSoTConduitGrade(sotGrade);
+        responseElement.setStatusEnum(VirtualDBActionStatusEnum.SEARCH_FINISHED);
+        return(responseElement);
+    }
+
+    private static ResourceSoTConduitSearchResponseElement failedSearchResponse(String conduitName, String errorMessage){
+        ResourceSoTConduitSearchResponseElement responseElement = new ResourceSoTConduitSearchResponseElement();
+        responseElement.setConduitName(conduitName);
+        responseElement.setStatusEnum(VirtualDBActionStatusEnum.SEARCH_FAILURE);
+        responseElement.setErrorMessage(errorMessage);
+        return(responseElement);
+    }
+
+    private static ResourceSoTConduitActionResponse searchResult(String conduitName, SoTConduitGradeEnum sotGrade, ResourceGradeEnum resourceGrade, Resource resource){
+        ResourceSoTConduitActionResponse response = new ResourceSoTConduitActionResponse(conduitName, PegacornFunctionStatusEnum.FUNCTION_STATUS_OK);
+        response.setSoTGrade(sotGrade);
+        response.setResponseResourceGrade(resourceGrade);
+        response.setResource(resource);
+        return(response);
+    }
+
+    private static Patient findByIdentifier(Bundle searchResult, String system, String value){
+        for(Bundle.BundleEntryComponent entry: searchResult.getEntry()){
+            Patient patient = (Patient) entry.getResource();
+            for(Identifier identifier: patient.getIdentifier()){
+                if(system.equals(identifier.getSystem()) && value.equals(identifier.getValue())){
+                    return(patient);
+                }
+            }
+        }
+        return(null);
+    }
+
+    private static boolean containsInstance(List<Resource> resources, Resource resource){
+        for(Resource candidate: resources){
+            if(candidate == resource){
+                return(true);
+            }
+        }
+        return(false);
+    }
+}
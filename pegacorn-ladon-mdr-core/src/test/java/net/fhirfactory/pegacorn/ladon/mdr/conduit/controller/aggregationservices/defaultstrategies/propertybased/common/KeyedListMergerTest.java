@@ -0,0 +1,169 @@
+package net.fhirfactory.pegacorn.ladon.mdr.conduit.controller.aggregationservices.defaultstrategies.propertybased.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.BiPredicate;
+import java.util.function.Function;
+
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Property based checks of KeyedListMerger against a nested-loop (all pairs) merge with the same semantics - for
+ * random lists, with and without base precedence, with exact-key and finer equivalence tests.
+ */
+public class KeyedListMergerTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(KeyedListMergerTest.class);
+
+    private static final int ITERATIONS = 5000;
+
+    private static final Function<Element, Object> KEY = element -> element.key;
+    private static final BiPredicate<Element, Element> SAME_PARITY = (base, additive) -> base.value % 2 == additive.value % 2;
+
+    @Test
+    public void exactKeyMergesMatchTheNestedLoopMerge() {
+        LOG.debug(".exactKeyMergesMatchTheNestedLoopMerge(): Entry");
+        checkAgainstNestedLoopMerge(null, new Random(22));
+    }
+
+    @Test
+    public void confirmedKeyMergesMatchTheNestedLoopMerge() {
+        LOG.debug(".confirmedKeyMergesMatchTheNestedLoopMerge(): Entry");
+        checkAgainstNestedLoopMerge(SAME_PARITY, new Random(23));
+    }
+
+    @Test
+    public void baseOrderIsStableAndEquivalentsAreReplacedInPlace() {
+        LOG.debug(".baseOrderIsStableAndEquivalentsAreReplacedInPlace(): Entry");
+        List<Element> baseList = new ArrayList<>(Arrays.asList(new Element("home", 1), new Element("work", 2), new Element(null, 3), new Element("mobile", 4)));
+        List<Element> additiveList = Arrays.asList(new Element("other", 5), new Element("work", 6), new Element(null, 7));
+        KeyedListMerger.merge(baseList, additiveList, KEY, null, false);
+        assertEquals(Arrays.asList(1, 6, 3, 4, 5, 7), valuesOf(baseList));
+
+        baseList = new ArrayList<>(Arrays.asList(new Element("home", 1), new Element("work", 2)));
+        KeyedListMerger.merge(baseList, additiveList, KEY, null, true);
+        assertEquals(Arrays.asList(1, 2, 5, 7), valuesOf(baseList));
+    }
+
+    @Test
+    public void longHistoriesMergeInLinearTime() {
+        LOG.debug(".longHistoriesMergeInLinearTime(): Entry");
+        int elementCount = 200000;
+        List<Element> baseList = new ArrayList<>();
+        List<Element> additiveList = new ArrayList<>();
+        for (int counter = 0; counter < elementCount; counter++) {
+            baseList.add(new Element("key-" + counter, counter));
+            additiveList.add(new Element("key-" + (counter + elementCount / 2), elementCount + counter));
+        }
+        long startTime = System.currentTimeMillis();
+        KeyedListMerger.merge(baseList, additiveList, KEY, null, false);
+        long elapsed = System.currentTimeMillis() - startTime;
+        LOG.debug(".longHistoriesMergeInLinearTime(): Exit, elapsed --> {}ms", elapsed);
+        assertEquals(elementCount + elementCount / 2, baseList.size());
+        assertEquals(elementCount, baseList.get(elementCount / 2).value);
+        assertTrue("merge took " + elapsed + "ms", elapsed < 5000);
+    }
+
+    private void checkAgainstNestedLoopMerge(BiPredicate<Element, Element> equivalenceTest, Random random) {
+        for (int iteration = 0; iteration < ITERATIONS; iteration++) {
+            List<Element> baseList = randomElements(random);
+            List<Element> additiveList = randomElements(random);
+            boolean baseHasPrecedence = random.nextBoolean();
+            List<Element> expected = nestedLoopMerge(baseList, additiveList, equivalenceTest, baseHasPrecedence);
+            List<Element> actual = new ArrayList<>(baseList);
+            KeyedListMerger.merge(actual, additiveList, KEY, equivalenceTest, baseHasPrecedence);
+            assertEquals(baseList + " + " + additiveList + " (base precedence " + baseHasPrecedence + ")", valuesOf(expected), valuesOf(actual));
+        }
+    }
+
+    /**
+     * The all-pairs version of the KeyedListMerger semantics.
+     */
+    private static List<Element> nestedLoopMerge(List<Element> baseList, List<Element> additiveList, BiPredicate<Element, Element> equivalenceTest, boolean baseHasPrecedence) {
+        ArrayList<Element> mergedList = new ArrayList<>();
+        if (baseList.isEmpty() || additiveList.isEmpty()) {
+            mergedList.addAll(baseList);
+            mergedList.addAll(additiveList);
+            return (mergedList);
+        }
+        ArrayList<Element> unmatchedAdditives = new ArrayList<>();
+        int[] firstEquivalents = new int[additiveList.size()];
+        for (int additiveIndex = 0; additiveIndex < additiveList.size(); additiveIndex++) {
+            firstEquivalents[additiveIndex] = -1;
+            for (int baseIndex = 0; baseIndex < baseList.size(); baseIndex++) {
+                if (equivalent(baseList.get(baseIndex), additiveList.get(additiveIndex), equivalenceTest)) {
+                    firstEquivalents[additiveIndex] = baseIndex;
+                    break;
+                }
+            }
+            if (firstEquivalents[additiveIndex] < 0) {
+                unmatchedAdditives.add(additiveList.get(additiveIndex));
+            }
+        }
+        for (int baseIndex = 0; baseIndex < baseList.size(); baseIndex++) {
+            Element baseElement = baseList.get(baseIndex);
+            boolean replaced = false;
+            for (Element additiveElement : additiveList) {
+                replaced = replaced || equivalent(baseElement, additiveElement, equivalenceTest);
+            }
+            if (baseHasPrecedence || !replaced) {
+                mergedList.add(baseElement);
+                continue;
+            }
+            for (int additiveIndex = 0; additiveIndex < additiveList.size(); additiveIndex++) {
+                if (firstEquivalents[additiveIndex] == baseIndex) {
+                    mergedList.add(additiveList.get(additiveIndex));
+                }
+            }
+        }
+        mergedList.addAll(unmatchedAdditives);
+        return (mergedList);
+    }
+
+    private static boolean equivalent(Element base, Element additive, BiPredicate<Element, Element> equivalenceTest) {
+        if (base.key == null || additive.key == null || !base.key.equals(additive.key)) {
+            return (false);
+        }
+        return (equivalenceTest == null || equivalenceTest.test(base, additive));
+    }
+
+    private static List<Element> randomElements(Random random) {
+        ArrayList<Element> elements = new ArrayList<>();
+        int elementCount = random.nextInt(8);
+        for (int counter = 0; counter < elementCount; counter++) {
+            String key = random.nextInt(5) == 0 ? null : "key-" + random.nextInt(4);
+            elements.add(new Element(key, random.nextInt(1000)));
+        }
+        return (elements);
+    }
+
+    private static List<Integer> valuesOf(List<Element> elements) {
+        ArrayList<Integer> values = new ArrayList<>();
+        for (Element element : elements) {
+            values.add(element.value);
+        }
+        return (values);
+    }
+
+    private static class Element {
+        private final String key;
+        private final int value;
+
+        private Element(String key, int value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        @Override
+        public String toString() {
+            return (key + "=" + value);
+        }
+    }
+}
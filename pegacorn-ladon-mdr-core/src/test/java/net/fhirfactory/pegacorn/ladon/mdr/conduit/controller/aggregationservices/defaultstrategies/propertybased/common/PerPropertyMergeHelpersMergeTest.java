@@ -0,0 +1,208 @@
+package net.fhirfactory.pegacorn.ladon.mdr.conduit.controller.aggregationservices.defaultstrategies.propertybased.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.mdr.ResourceSoTConduitActionResponse;
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.mdr.SoTConduitGradeEnum;
+import net.fhirfactory.pegacorn.petasos.model.itops.PegacornFunctionStatusEnum;
+import org.hl7.fhir.r4.model.Attachment;
+import org.hl7.fhir.r4.model.CodeableConcept;
+import org.hl7.fhir.r4.model.ContactPoint;
+import org.hl7.fhir.r4.model.HumanName;
+import org.hl7.fhir.r4.model.Identifier;
+import org.hl7.fhir.r4.model.Period;
+import org.hl7.fhir.r4.model.Reference;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Checks the (keyed) list merges of PerPropertyMergeHelpers on FHIR elements.
+ */
+public class PerPropertyMergeHelpersMergeTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PerPropertyMergeHelpersMergeTest.class);
+
+    private static final String MRN_SYSTEM = "http://example.org/identifiers/mrn";
+    private static final String MEDICARE_SYSTEM = "http://example.org/identifiers/medicare";
+
+    private final PerPropertyMergeHelpers mergeHelpers = new PerPropertyMergeHelpers();
+
+    @Test
+    public void equivalentIdentifierIsReplacedInPlaceWhenTheAdditiveHasPrecedence() {
+        LOG.debug(".equivalentIdentifierIsReplacedInPlaceWhenTheAdditiveHasPrecedence(): Entry");
+        Identifier baseMrn = identifier(MRN_SYSTEM, "MRN-1");
+        Identifier baseMedicare = identifier(MEDICARE_SYSTEM, "2950");
+        List<Identifier> baseIdentifiers = list(baseMrn, baseMedicare);
+        Identifier additiveMrn = identifier(MRN_SYSTEM, "MRN-2");
+        Identifier additiveOther = identifier("http://example.org/identifiers/other", "X");
+        mergeHelpers.mergeIdentifiers(response(SoTConduitGradeEnum.INFORMATIVE), baseIdentifiers, response(SoTConduitGradeEnum.AUTHORITATIVE), list(additiveMrn, additiveOther));
+        assertEquals(3, baseIdentifiers.size());
+        assertSame(additiveMrn, baseIdentifiers.get(0));
+        assertSame(baseMedicare, baseIdentifiers.get(1));
+        assertSame(additiveOther, baseIdentifiers.get(2));
+    }
+
+    @Test
+    public void equivalentIdentifierIsDroppedWhenTheBaseHasPrecedence() {
+        LOG.debug(".equivalentIdentifierIsDroppedWhenTheBaseHasPrecedence(): Entry");
+        Identifier baseMrn = identifier(MRN_SYSTEM, "MRN-1");
+        List<Identifier> baseIdentifiers = list(baseMrn);
+        mergeHelpers.mergeIdentifiers(response(SoTConduitGradeEnum.AUTHORITATIVE), baseIdentifiers, response(SoTConduitGradeEnum.INFORMATIVE), list(identifier(MRN_SYSTEM, "MRN-2")));
+        assertEquals(1, baseIdentifiers.size());
+        assertSame(baseMrn, baseIdentifiers.get(0));
+    }
+
+    @Test
+    public void expiredIdentifiersAreNeverEquivalent() {
+        LOG.debug(".expiredIdentifiersAreNeverEquivalent(): Entry");
+        Identifier expiredMrn = identifier(MRN_SYSTEM, "MRN-0");
+        expiredMrn.setPeriod(new Period().setEnd(new Date(System.currentTimeMillis() - 86400000L)));
+        List<Identifier> baseIdentifiers = list(expiredMrn);
+        Identifier additiveMrn = identifier(MRN_SYSTEM, "MRN-2");
+        mergeHelpers.mergeIdentifiers(response(SoTConduitGradeEnum.INFORMATIVE), baseIdentifiers, response(SoTConduitGradeEnum.AUTHORITATIVE), list(additiveMrn));
+        assertEquals(2, baseIdentifiers.size());
+        assertSame(expiredMrn, baseIdentifiers.get(0));
+        assertSame(additiveMrn, baseIdentifiers.get(1));
+    }
+
+    @Test
+    public void onlyAnEndDateInThePastHasExpired() {
+        LOG.debug(".onlyAnEndDateInThePastHasExpired(): Entry");
+        assertTrue(mergeHelpers.isAttributeCurrent(new Period().setEnd(new Date(System.currentTimeMillis() + 86400000L))));
+        assertFalse(mergeHelpers.isAttributeCurrent(new Period().setEnd(new Date(System.currentTimeMillis() - 86400000L))));
+        assertFalse(mergeHelpers.isAttributeCurrent(new Period().setStart(new Date(System.currentTimeMillis() + 86400000L))));
+    }
+
+    @Test
+    public void referencesWithDifferentIdentifierSystemsAreNotEquivalent() {
+        LOG.debug(".referencesWithDifferentIdentifierSystemsAreNotEquivalent(): Entry");
+        Reference baseReference = new Reference().setType("Practitioner").setIdentifier(identifier(MRN_SYSTEM, "GP-1"));
+        List<Reference> baseReferences = list(baseReference);
+        Reference additiveReference = new Reference().setType("Practitioner").setIdentifier(identifier(MEDICARE_SYSTEM, "GP-1"));
+        mergeHelpers.mergeReferences(response(SoTConduitGradeEnum.INFORMATIVE), baseReferences, response(SoTConduitGradeEnum.AUTHORITATIVE), list(additiveReference));
+        assertEquals(2, baseReferences.size());
+        assertSame(baseReference, baseReferences.get(0));
+        assertSame(additiveReference, baseReferences.get(1));
+    }
+
+    @Test
+    public void humanNamesMatchOnUseFamilyAndGivenNames() {
+        LOG.debug(".humanNamesMatchOnUseFamilyAndGivenNames(): Entry");
+        List<HumanName> baseNames = list(new HumanName().setUse(HumanName.NameUse.OFFICIAL).setFamily("Citizen").addGiven("Jane").addGiven("Q"));
+        HumanName sameName = new HumanName().setUse(HumanName.NameUse.OFFICIAL).setFamily("Citizen").addGiven("Jane");
+        HumanName otherName = new HumanName().setUse(HumanName.NameUse.OFFICIAL).setFamily("Citizen").addGiven("Janet");
+        mergeHelpers.mergeHumanNames(response(SoTConduitGradeEnum.AUTHORITATIVE), baseNames, response(SoTConduitGradeEnum.INFORMATIVE), list(sameName, otherName));
+        assertEquals(2, baseNames.size());
+        assertSame(otherName, baseNames.get(1));
+    }
+
+    @Test
+    public void longTelecomHistoriesMergeWithoutFailing() {
+        LOG.debug(".longTelecomHistoriesMergeWithoutFailing(): Entry");
+        List<ContactPoint> baseTelecoms = new ArrayList<>();
+        List<ContactPoint> additiveTelecoms = new ArrayList<>();
+        for (int counter = 0; counter < 5000; counter++) {
+            baseTelecoms.add(telecom(counter));
+            additiveTelecoms.add(telecom(counter + 1));
+        }
+        baseTelecoms.add(new ContactPoint().setSystem(ContactPoint.ContactPointSystem.PHONE).setUse(ContactPoint.ContactPointUse.HOME).setValue("02 6200 0000"));
+        ContactPoint additiveHome = new ContactPoint().setSystem(ContactPoint.ContactPointSystem.PHONE).setUse(ContactPoint.ContactPointUse.HOME).setValue("02 6200 9999");
+        additiveTelecoms.add(additiveHome);
+        mergeHelpers.mergeContactPoints(response(SoTConduitGradeEnum.PARTIALLY_INFORMATIVE), baseTelecoms, response(SoTConduitGradeEnum.AUTHORITATIVE), additiveTelecoms);
+        // The (expired) history is never equivalent, the current home phone is replaced
+        assertEquals(10001, baseTelecoms.size());
+        assertSame(additiveHome, baseTelecoms.get(5000));
+    }
+
+    @Test
+    public void untitledAttachmentsWithDifferentCreationDatesAreNotEquivalent() {
+        LOG.debug(".untitledAttachmentsWithDifferentCreationDatesAreNotEquivalent(): Entry");
+        List<Attachment> baseAttachments = list(attachment(null, new Date(1000L)));
+        Attachment additiveAttachment = attachment(null, new Date(2000L));
+        mergeHelpers.mergeAttachments("photo", response(SoTConduitGradeEnum.INFORMATIVE), baseAttachments, response(SoTConduitGradeEnum.AUTHORITATIVE), list(additiveAttachment));
+        assertEquals(2, baseAttachments.size());
+        assertSame(additiveAttachment, baseAttachments.get(1));
+    }
+
+    @Test
+    public void titledAttachmentsWithoutCreationDatesAreEquivalent() {
+        LOG.debug(".titledAttachmentsWithoutCreationDatesAreEquivalent(): Entry");
+        List<Attachment> baseAttachments = list(attachment("Portrait", null));
+        Attachment additiveAttachment = attachment("Portrait", null);
+        mergeHelpers.mergeAttachments("photo", response(SoTConduitGradeEnum.INFORMATIVE), baseAttachments, response(SoTConduitGradeEnum.AUTHORITATIVE), list(additiveAttachment));
+        assertEquals(1, baseAttachments.size());
+        assertSame(additiveAttachment, baseAttachments.get(0));
+    }
+
+    @Test
+    public void codeableConceptsAreOnlyAddedWhenNotAlreadyPresent() {
+        LOG.debug(".codeableConceptsAreOnlyAddedWhenNotAlreadyPresent(): Entry");
+        List<CodeableConcept> baseConcepts = list(concept("doctor"), concept("nurse"));
+        CodeableConcept pharmacist = concept("pharmacist");
+        mergeHelpers.mergeCodeableConcept(baseConcepts, list(concept("nurse"), pharmacist));
+        assertEquals(3, baseConcepts.size());
+        assertSame(pharmacist, baseConcepts.get(2));
+    }
+
+    @Test
+    public void businessIdentifierKeysOnlyCoverCurrentSystemValuePairs() {
+        LOG.debug(".businessIdentifierKeysOnlyCoverCurrentSystemValuePairs(): Entry");
+        Identifier expired = identifier(MRN_SYSTEM, "MRN-0");
+        expired.setPeriod(new Period().setEnd(new Date(System.currentTimeMillis() - 86400000L)));
+        Identifier noSystem = new Identifier().setValue("MRN-1");
+        Identifier secondary = identifier(MRN_SYSTEM, "MRN-2").setUse(Identifier.IdentifierUse.SECONDARY);
+        List<Object> keys = mergeHelpers.businessIdentifierKeys(list(expired, noSystem, identifier(MRN_SYSTEM, "MRN-2")));
+        assertEquals(1, keys.size());
+        assertEquals(keys, mergeHelpers.businessIdentifierKeys(list(secondary)));
+    }
+
+    private static ResourceSoTConduitActionResponse response(SoTConduitGradeEnum grade) {
+        ResourceSoTConduitActionResponse response = new ResourceSoTConduitActionResponse(grade.toString(), PegacornFunctionStatusEnum.FUNCTION_STATUS_OK);
+        response.setSoTGrade(grade);
+        return (response);
+    }
+
+    private static Identifier identifier(String system, String value) {
+        return (new Identifier().setUse(Identifier.IdentifierUse.OFFICIAL).setSystem(system).setValue(value));
+    }
+
+    private static ContactPoint telecom(int index) {
+        ContactPoint telecom = new ContactPoint().setSystem(ContactPoint.ContactPointSystem.PHONE).setUse(ContactPoint.ContactPointUse.HOME).setValue("04 0000 " + index);
+        telecom.setPeriod(new Period().setEnd(new Date(System.currentTimeMillis() - 86400000L - index)));
+        return (telecom);
+    }
+
+    private static Attachment attachment(String title, Date creation) {
+        Attachment attachment = new Attachment().setContentType("image/png").setUrl("http://example.org/photos/1");
+        if (title != null) {
+            attachment.setTitle(title);
+        }
+        if (creation != null) {
+            attachment.setCreation(creation);
+        }
+        return (attachment);
+    }
+
+    private static CodeableConcept concept(String code) {
+        CodeableConcept concept = new CodeableConcept();
+        concept.addCoding().setSystem("http://example.org/roles").setCode(code);
+        return (concept);
+    }
+
+    @SafeVarargs
+    private static <T> List<T> list(T... elements) {
+        List<T> list = new ArrayList<>();
+        for (T element : elements) {
+            list.add(element);
+        }
+        return (list);
+    }
+}
@@ -0,0 +1,147 @@
+package net.fhirfactory.pegacorn.ladon.mdr.conduit.controller.aggregationservices.defaultstrategies.propertybased.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Random;
+
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.mdr.ResourceSoTConduitActionResponse;
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.mdr.SoTAttributePrecedence;
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.mdr.SoTConduitGradeEnum;
+import net.fhirfactory.pegacorn.petasos.model.itops.PegacornFunctionStatusEnum;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Checks that the compiled (SoTAttributePrecedence) precedence decisions of PerPropertyMergeHelpers match the original
+ * set-based algorithm for every pair of grades and attribute categories.
+ */
+public class PerPropertyMergeHelpersPrecedenceTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PerPropertyMergeHelpersPrecedenceTest.class);
+
+    private static final String[] ATTRIBUTES = {"identifier", "name", "telecom", "gender", "birthDate", "address"};
+    private static final int CATEGORY_COMBINATIONS = 16;
+
+    private final PerPropertyMergeHelpers mergeHelpers = new PerPropertyMergeHelpers();
+
+    @Test
+    public void compiledPrecedenceMatchesSetBasedPrecedenceForEveryCombination() {
+        LOG.debug(".compiledPrecedenceMatchesSetBasedPrecedenceForEveryCombination(): Entry");
+        SoTConduitGradeEnum[] grades = gradesIncludingNone();
+        int comparisonCount = 0;
+        for (SoTConduitGradeEnum baseGrade : grades) {
+            for (SoTConduitGradeEnum otherGrade : grades) {
+                for (int baseCategories = 0; baseCategories < CATEGORY_COMBINATIONS; baseCategories++) {
+                    for (int otherCategories = 0; otherCategories < CATEGORY_COMBINATIONS; otherCategories++) {
+                        ResourceSoTConduitActionResponse base = buildResponse("base", baseGrade, "gender", baseCategories);
+                        ResourceSoTConduitActionResponse other = buildResponse("other", otherGrade, "gender", otherCategories);
+                        for (String attribute : ATTRIBUTES) {
+                            boolean expected = SetBasedPrecedenceReference.baseHasPrecedence(attribute, base, other);
+                            assertEquals(baseGrade + "/" + baseCategories + " vs " + otherGrade + "/" + otherCategories + " on " + attribute,
+                                    expected, mergeHelpers.baseHasPrecedence(attribute, base, other));
+                            comparisonCount += 1;
+                        }
+                    }
+                }
+            }
+        }
+        LOG.debug(".compiledPrecedenceMatchesSetBasedPrecedenceForEveryCombination(): Exit, comparisonCount --> {}", comparisonCount);
+    }
+
+    @Test
+    public void nullResponsesKeepTheirOriginalPrecedence() {
+        LOG.debug(".nullResponsesKeepTheirOriginalPrecedence(): Entry");
+        ResourceSoTConduitActionResponse response = buildResponse("response", SoTConduitGradeEnum.ANECDOTAL, "name", 0);
+        assertTrue(mergeHelpers.baseHasPrecedence("name", null, null));
+        assertFalse(mergeHelpers.baseHasPrecedence("name", null, response));
+        assertTrue(mergeHelpers.baseHasPrecedence("name", response, null));
+    }
+
+    @Test
+    public void conduitDeclaredAttributesAreCombinedWithResponseAttributes() {
+        LOG.debug(".conduitDeclaredAttributesAreCombinedWithResponseAttributes(): Entry");
+        ResourceSoTConduitActionResponse base = buildResponse("base", SoTConduitGradeEnum.AUTHORITATIVE, "name", 0);
+        ResourceSoTConduitActionResponse other = buildResponse("other", SoTConduitGradeEnum.INFORMATIVE, "name", 0);
+        assertTrue(mergeHelpers.baseHasPrecedence("telecom", base, other));
+        // The (lesser) other conduit declares telecom as immutable, the base conduit does not
+        other.setConduitAttributePrecedence(SoTAttributePrecedence.compile(Collections.singleton("telecom"), null, null, null));
+        assertFalse(mergeHelpers.baseHasPrecedence("telecom", base, other));
+        // ... until the base response itself holds telecom as immutable too
+        base.addImmutableAttribute("telecom");
+        assertTrue(mergeHelpers.baseHasPrecedence("telecom", base, other));
+        assertTrue(mergeHelpers.baseHasPrecedence("name", base, other));
+    }
+
+    @Test
+    public void attributeOrdinalsAreStable() {
+        LOG.debug(".attributeOrdinalsAreStable(): Entry");
+        int ordinal = SoTAttributePrecedence.attributeOrdinal("managingOrganization");
+        assertEquals(ordinal, SoTAttributePrecedence.attributeOrdinal(new String("managingOrganization")));
+        assertEquals(0, SoTAttributePrecedence.EMPTY.getCategoryMask(ordinal));
+        assertEquals(0, SoTAttributePrecedence.EMPTY.getCategoryMask(-1));
+    }
+
+    @Test
+    public void compiledPrecedenceMatchesSetBasedPrecedenceForRandomAttributeSets() {
+        LOG.debug(".compiledPrecedenceMatchesSetBasedPrecedenceForRandomAttributeSets(): Entry");
+        Random random = new Random(21);
+        SoTConduitGradeEnum[] grades = gradesIncludingNone();
+        for (int iteration = 0; iteration < 2000; iteration++) {
+            ResourceSoTConduitActionResponse base = buildRandomResponse("base", grades[random.nextInt(grades.length)], random);
+            ResourceSoTConduitActionResponse other = buildRandomResponse("other", grades[random.nextInt(grades.length)], random);
+            for (String attribute : ATTRIBUTES) {
+                assertEquals(SetBasedPrecedenceReference.baseHasPrecedence(attribute, base, other), mergeHelpers.baseHasPrecedence(attribute, base, other));
+            }
+        }
+    }
+
+    private static SoTConduitGradeEnum[] gradesIncludingNone() {
+        SoTConduitGradeEnum[] grades = Arrays.copyOf(SoTConduitGradeEnum.values(), SoTConduitGradeEnum.values().length + 1);
+        grades[grades.length - 1] = null;
+        return (grades);
+    }
+
+    private static ResourceSoTConduitActionResponse buildResponse(String name, SoTConduitGradeEnum grade, String attribute, int categories) {
+        ResourceSoTConduitActionResponse response = new ResourceSoTConduitActionResponse(name, PegacornFunctionStatusEnum.FUNCTION_STATUS_OK);
+        response.setSoTGrade(grade);
+        if ((categories & SoTAttributePrecedence.IMMUTABLE) != 0) {
+            response.addImmutableAttribute(attribute);
+        }
+        if ((categories & SoTAttributePrecedence.AUTHORITATIVE) != 0) {
+            response.addAuthoritativeAttribute(attribute);
+        }
+        if ((categories & SoTAttributePrecedence.INFORMATIONAL) != 0) {
+            response.addInformationalAttribute(attribute);
+        }
+        if ((categories & SoTAttributePrecedence.ANECDOTAL) != 0) {
+            response.addAnecdotalAttribute(attribute);
+        }
+        return (response);
+    }
+
+    private static ResourceSoTConduitActionResponse buildRandomResponse(String name, SoTConduitGradeEnum grade, Random random) {
+        ResourceSoTConduitActionResponse response = new ResourceSoTConduitActionResponse(name, PegacornFunctionStatusEnum.FUNCTION_STATUS_OK);
+        response.setSoTGrade(grade);
+        response.setImmutableAttributes(randomAttributeSet(random));
+        response.setAuthoritativeAttributes(randomAttributeSet(random));
+        response.setInformationalAttributes(randomAttributeSet(random));
+        response.setAnecdotalAttributes(randomAttributeSet(random));
+        return (response);
+    }
+
+    private static HashSet<String> randomAttributeSet(Random random) {
+        HashSet<String> attributes = new HashSet<>();
+        for (String attribute : ATTRIBUTES) {
+            if (random.nextInt(4) == 0) {
+                attributes.add(attribute);
+            }
+        }
+        return (attributes);
+    }
+}
@@ -0,0 +1,125 @@
+package net.fhirfactory.pegacorn.ladon.mdr.conduit.controller.aggregationservices.defaultstrategies.propertybased.common;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.mdr.ResourceSoTConduitActionResponse;
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.mdr.SoTAttributePrecedence;
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.mdr.SoTConduitGradeEnum;
+import net.fhirfactory.pegacorn.petasos.model.itops.PegacornFunctionStatusEnum;
+
+/**
+ * A (manually run) benchmark of the per-property precedence decisions made while aggregating Patient and
+ * PractitionerRole responses from 2 to 6 conduits, comparing the original set-based algorithm with the compiled
+ * SoTAttributePrecedence (looked up by property name, and by pre-resolved attribute ordinal). Each "merge" folds the
+ * additive responses into the base one, asking for precedence on every property of the Resource.
+ *
+ * Run with: mvn -pl pegacorn-ladon-mdr-core test-compile exec:java -Dexec.classpathScope=test
+ *     -Dexec.mainClass=net.fhirfactory.pegacorn.ladon.mdr.conduit.controller.aggregationservices.defaultstrategies.propertybased.common.PerPropertyPrecedenceBenchmark
+ */
+public class PerPropertyPrecedenceBenchmark {
+
+    private static final int WARMUP_ITERATIONS = 50000;
+    private static final int MEASURED_ITERATIONS = 200000;
+
+    private static final String[] PATIENT_PROPERTIES = {"id", "meta", "implicitRules", "language", "text", "identifier",
+            "active", "name", "telecom", "gender", "birthDate", "deceased", "address", "maritalStatus", "multipleBirth",
+            "photo", "contact", "communication", "generalPractitioner", "managingOrganization", "link"};
+    private static final String[] PRACTITIONER_ROLE_PROPERTIES = {"id", "meta", "implicitRules", "language", "text",
+            "identifier", "active", "period", "practitioner", "organization", "code", "specialty", "location",
+            "healthcareService", "telecom", "availableTime", "notAvailable", "availabilityExceptions", "endpoint"};
+
+    private static final SoTConduitGradeEnum[] CONDUIT_GRADES = {SoTConduitGradeEnum.PARTIALLY_INFORMATIVE,
+            SoTConduitGradeEnum.AUTHORITATIVE, SoTConduitGradeEnum.INFORMATIVE, SoTConduitGradeEnum.PARTIALLY_AUTHORITATIVE,
+            SoTConduitGradeEnum.ANECDOTAL, SoTConduitGradeEnum.INFORMATIVE};
+
+    private static volatile int sink;
+
+    public static void main(String[] args) {
+        PerPropertyMergeHelpers mergeHelpers = new PerPropertyMergeHelpers();
+        for(int conduitCount = 2; conduitCount <= 6; conduitCount++){
+            runComparison("Patient", PATIENT_PROPERTIES, conduitCount, mergeHelpers);
+        }
+        for(int conduitCount = 2; conduitCount <= 6; conduitCount++){
+            runComparison("PractitionerRole", PRACTITIONER_ROLE_PROPERTIES, conduitCount, mergeHelpers);
+        }
+    }
+
+    private static void runComparison(String resourceType, String[] properties, int conduitCount, PerPropertyMergeHelpers mergeHelpers){
+        List<ResourceSoTConduitActionResponse> responses = buildResponses(properties, conduitCount);
+        int[] ordinals = new int[properties.length];
+        for(int counter = 0; counter < properties.length; counter++){
+            ordinals[counter] = SoTAttributePrecedence.attributeOrdinal(properties[counter]);
+        }
+        for(int mode = 0; mode < 3; mode++){
+            measure(mode, properties, ordinals, responses, mergeHelpers, WARMUP_ITERATIONS);
+        }
+        String label = resourceType + " x" + conduitCount;
+        report(label, "set-based (original)", measure(0, properties, ordinals, responses, mergeHelpers, MEASURED_ITERATIONS));
+        report(label, "compiled (by property name)", measure(1, properties, ordinals, responses, mergeHelpers, MEASURED_ITERATIONS));
+        report(label, "compiled (by attribute ordinal)", measure(2, properties, ordinals, responses, mergeHelpers, MEASURED_ITERATIONS));
+    }
+
+    private static long measure(int mode, String[] properties, int[] ordinals, List<ResourceSoTConduitActionResponse> responses, PerPropertyMergeHelpers mergeHelpers, int iterations){
+        int keptBase = 0;
+        ResourceSoTConduitActionResponse base = responses.get(0);
+        long startTime = System.nanoTime();
+        for(int iteration = 0; iteration < iterations; iteration++){
+            for(int responseIndex = 1; responseIndex < responses.size(); responseIndex++){
+                ResourceSoTConduitActionResponse additive = responses.get(responseIndex);
+                for(int propertyIndex = 0; propertyIndex < properties.length; propertyIndex++){
+                    boolean baseKept;
+                    switch(mode){
+                        case 0:
+                            baseKept = SetBasedPrecedenceReference.baseHasPrecedence(properties[propertyIndex], base, additive);
+                            break;
+                        case 1:
+                            baseKept = mergeHelpers.baseHasPrecedence(properties[propertyIndex], base, additive);
+                            break;
+                        default:
+                            baseKept = mergeHelpers.baseHasPrecedence(ordinals[propertyIndex], base, additive);
+                    }
+                    if(baseKept){
+                        keptBase += 1;
+                    }
+                }
+            }
+        }
+        long elapsedNanos = System.nanoTime() - startTime;
+        sink = keptBase;
+        return(elapsedNanos / iterations);
+    }
+
+    private static void report(String label, String path, long nanosPerMerge){
+        System.out.printf("%-20s %-34s %8d ns/merge %12.0f merges/s%n", label, path, nanosPerMerge, 1.0e9 / Math.max(nanosPerMerge, 1));
+    }
+
+    private static List<ResourceSoTConduitActionResponse> buildResponses(String[] properties, int conduitCount){
+        ArrayList<ResourceSoTConduitActionResponse> responses = new ArrayList<>();
+        for(int conduitIndex = 0; conduitIndex < conduitCount; conduitIndex++){
+            ResourceSoTConduitActionResponse response = new ResourceSoTConduitActionResponse("conduit-" + conduitIndex, PegacornFunctionStatusEnum.FUNCTION_STATUS_OK);
+            response.setSoTGrade(CONDUIT_GRADES[conduitIndex]);
+            HashSet<String> immutableAttributes = new HashSet<>();
+            HashSet<String> authoritativeAttributes = new HashSet<>();
+            HashSet<String> informationalAttributes = new HashSet<>();
+            HashSet<String> anecdotalAttributes = new HashSet<>();
+            for(int propertyIndex = 0; propertyIndex < properties.length; propertyIndex++){
+                // Each conduit claims a different (deterministic) spread of the properties
+                switch((propertyIndex + conduitIndex * 3) % 5){
+                    case 0: immutableAttributes.add(properties[propertyIndex]); break;
+                    case 1: authoritativeAttributes.add(properties[propertyIndex]); break;
+                    case 2: informationalAttributes.add(properties[propertyIndex]); break;
+                    case 3: anecdotalAttributes.add(properties[propertyIndex]); break;
+                    default: break;
+                }
+            }
+            response.setImmutableAttributes(immutableAttributes);
+            response.setAuthoritativeAttributes(authoritativeAttributes);
+            response.setInformationalAttributes(informationalAttributes);
+            response.setAnecdotalAttributes(anecdotalAttributes);
+            responses.add(response);
+        }
+        return(responses);
+    }
+}
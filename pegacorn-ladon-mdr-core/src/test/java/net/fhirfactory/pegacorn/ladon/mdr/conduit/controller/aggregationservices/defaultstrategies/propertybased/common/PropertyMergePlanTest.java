@@ -0,0 +1,144 @@
+package net.fhirfactory.pegacorn.ladon.mdr.conduit.controller.aggregationservices.defaultstrategies.propertybased.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import ca.uhn.fhir.context.FhirContext;
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.mdr.ResourceSoTConduitActionResponse;
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.mdr.SoTConduitGradeEnum;
+import net.fhirfactory.pegacorn.petasos.model.itops.PegacornFunctionStatusEnum;
+import org.hl7.fhir.r4.model.BooleanType;
+import org.hl7.fhir.r4.model.DateType;
+import org.hl7.fhir.r4.model.Enumerations;
+import org.hl7.fhir.r4.model.HumanName;
+import org.hl7.fhir.r4.model.Patient;
+import org.hl7.fhir.r4.model.PractitionerRole;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Checks the compilation (from the HAPI definitions) and execution of PropertyMergePlans.
+ */
+public class PropertyMergePlanTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PropertyMergePlanTest.class);
+
+    private static final FhirContext FHIR_CONTEXT = FhirContext.forR4();
+
+    private final PerPropertyMergeHelpers mergeHelpers = new PerPropertyMergeHelpers();
+
+    @Test
+    public void patientPlanHasARulePerPropertyFromItsCardinalityAndDatatype() {
+        LOG.debug(".patientPlanHasARulePerPropertyFromItsCardinalityAndDatatype(): Entry");
+        PropertyMergePlan plan = PropertyMergePlan.compile(FHIR_CONTEXT, Patient.class, Collections.emptyMap());
+        List<String> propertyNames = plan.getPropertyNames();
+        assertTrue(propertyNames.contains("deceased"));
+        assertFalse(propertyNames.contains("id"));
+        assertFalse(propertyNames.contains("text"));
+        assertEquals(PropertyMergeRuleEnum.KEYED_MERGE, plan.getRule("identifier"));
+        assertEquals(PropertyMergeRuleEnum.KEYED_MERGE, plan.getRule("telecom"));
+        assertEquals(PropertyMergeRuleEnum.KEYED_MERGE, plan.getRule("generalPractitioner"));
+        assertEquals(PropertyMergeRuleEnum.APPEND_DISTINCT, plan.getRule("contact"));
+        assertEquals(PropertyMergeRuleEnum.FILL_IF_ABSENT, plan.getRule("birthDate"));
+        assertEquals(PropertyMergeRuleEnum.FILL_IF_ABSENT, plan.getRule("managingOrganization"));
+        assertTrue(plan.isRepeating("name"));
+        assertFalse(plan.isRepeating("gender"));
+    }
+
+    @Test
+    public void ruleOverridesReplaceTheDefaults() {
+        LOG.debug(".ruleOverridesReplaceTheDefaults(): Entry");
+        Map<String, PropertyMergeRuleEnum> overrides = new HashMap<>();
+        overrides.put("active", PropertyMergeRuleEnum.ANY_TRUE);
+        overrides.put("specialty", PropertyMergeRuleEnum.PRECEDENCE);
+        PropertyMergePlan plan = PropertyMergePlan.compile(FHIR_CONTEXT, PractitionerRole.class, overrides);
+        assertEquals(PropertyMergeRuleEnum.ANY_TRUE, plan.getRule("active"));
+        assertEquals(PropertyMergeRuleEnum.PRECEDENCE, plan.getRule("specialty"));
+        assertEquals(PropertyMergeRuleEnum.KEYED_MERGE, plan.getRule("code"));
+    }
+
+    @Test
+    public void executingAPlanMergesEachProperty() {
+        LOG.debug(".executingAPlanMergesEachProperty(): Entry");
+        Map<String, PropertyMergeRuleEnum> overrides = new HashMap<>();
+        overrides.put("active", PropertyMergeRuleEnum.ANY_TRUE);
+        overrides.put("gender", PropertyMergeRuleEnum.PRECEDENCE);
+        PropertyMergePlan plan = PropertyMergePlan.compile(FHIR_CONTEXT, Patient.class, overrides);
+
+        Patient basePatient = new Patient();
+        basePatient.setActive(false);
+        basePatient.setGender(Enumerations.AdministrativeGender.UNKNOWN);
+        basePatient.addIdentifier().setSystem("http://example.org/identifiers/mrn").setValue("MRN-1");
+        basePatient.addCommunication().getLanguage().setText("English");
+        Patient additivePatient = new Patient();
+        additivePatient.setActive(true);
+        additivePatient.setGender(Enumerations.AdministrativeGender.FEMALE);
+        additivePatient.setBirthDateElement(new DateType("1970-01-01"));
+        additivePatient.setDeceased(new BooleanType(false));
+        additivePatient.addIdentifier().setSystem("http://example.org/identifiers/medicare").setValue("2950");
+        additivePatient.addCommunication().getLanguage().setText("English");
+        additivePatient.addCommunication().getLanguage().setText("Greek");
+
+        plan.execute(mergeHelpers, response(basePatient, SoTConduitGradeEnum.INFORMATIVE), response(additivePatient, SoTConduitGradeEnum.AUTHORITATIVE));
+
+        assertTrue(basePatient.getActive());
+        assertEquals(Enumerations.AdministrativeGender.FEMALE, basePatient.getGender());
+        assertEquals("1970-01-01", basePatient.getBirthDateElement().getValueAsString());
+        assertTrue(basePatient.hasDeceasedBooleanType());
+        assertEquals(2, basePatient.getIdentifier().size());
+        assertEquals(2, basePatient.getCommunication().size());
+        assertFalse(basePatient.hasMaritalStatus());
+    }
+
+    @Test
+    public void baseWithPrecedenceKeepsItsValues() {
+        LOG.debug(".baseWithPrecedenceKeepsItsValues(): Entry");
+        Map<String, PropertyMergeRuleEnum> overrides = new HashMap<>();
+        overrides.put("gender", PropertyMergeRuleEnum.PRECEDENCE);
+        PropertyMergePlan plan = PropertyMergePlan.compile(FHIR_CONTEXT, Patient.class, overrides);
+        Patient basePatient = new Patient();
+        basePatient.setGender(Enumerations.AdministrativeGender.MALE);
+        Patient additivePatient = new Patient();
+        additivePatient.setGender(Enumerations.AdministrativeGender.FEMALE);
+        plan.execute(mergeHelpers, response(basePatient, SoTConduitGradeEnum.AUTHORITATIVE), response(additivePatient, SoTConduitGradeEnum.INFORMATIVE));
+        assertEquals(Enumerations.AdministrativeGender.MALE, basePatient.getGender());
+    }
+
+    @Test
+    public void appendDistinctKeepsOnlyTheNewContacts() {
+        LOG.debug(".appendDistinctKeepsOnlyTheNewContacts(): Entry");
+        PropertyMergePlan plan = PropertyMergePlan.compile(FHIR_CONTEXT, Patient.class, Collections.emptyMap());
+        Patient basePatient = new Patient();
+        for(int contact = 0; contact < 100; contact++){
+            basePatient.addContact().setName(new HumanName().setFamily("Contact-" + contact)).getRelationshipFirstRep().setText("Kin");
+        }
+        Patient additivePatient = new Patient();
+        for(int contact = 50; contact < 150; contact++){
+            additivePatient.addContact().setName(new HumanName().setFamily("Contact-" + contact)).getRelationshipFirstRep().setText("Kin");
+        }
+        // Same name, different relationship --> a distinct contact
+        additivePatient.addContact().setName(new HumanName().setFamily("Contact-0")).getRelationshipFirstRep().setText("Carer");
+
+        plan.execute(mergeHelpers, response(basePatient, SoTConduitGradeEnum.AUTHORITATIVE), response(additivePatient, SoTConduitGradeEnum.INFORMATIVE));
+
+        assertEquals(151, basePatient.getContact().size());
+        for(int contact = 0; contact < 150; contact++){
+            assertEquals("Contact-" + contact, basePatient.getContact().get(contact).getName().getFamily());
+        }
+        assertEquals("Carer", basePatient.getContact().get(150).getRelationshipFirstRep().getText());
+    }
+
+    private static ResourceSoTConduitActionResponse response(Patient patient, SoTConduitGradeEnum grade) {
+        ResourceSoTConduitActionResponse response = new ResourceSoTConduitActionResponse(grade.toString(), PegacornFunctionStatusEnum.FUNCTION_STATUS_OK);
+        response.setSoTGrade(grade);
+        response.setResource(patient);
+        return (response);
+    }
+}
@@ -0,0 +1,55 @@
+package net.fhirfactory.pegacorn.ladon.mdr.conduit.controller.aggregationservices.defaultstrategies.propertybased.common;
+
+import java.util.Set;
+
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.mdr.ResourceSoTConduitActionResponse;
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.mdr.SoTConduitGradeEnum;
+
+/**
+ * The original (HashSet probing) precedence algorithm of PerPropertyMergeHelpers, kept as the reference the compiled
+ * SoTAttributePrecedence is checked and benchmarked against.
+ */
+class SetBasedPrecedenceReference {
+
+    private static final SoTConduitGradeEnum[] GRADE_ORDER = {
+            SoTConduitGradeEnum.AUTHORITATIVE,
+            SoTConduitGradeEnum.PARTIALLY_AUTHORITATIVE,
+            SoTConduitGradeEnum.INFORMATIVE,
+            SoTConduitGradeEnum.PARTIALLY_INFORMATIVE
+    };
+
+    static boolean baseHasPrecedence(String propertyName, ResourceSoTConduitActionResponse base, ResourceSoTConduitActionResponse other) {
+        if (base == null && other == null) {
+            return (true);
+        }
+        if (base == null) {
+            return (false);
+        }
+        if (other == null) {
+            return (true);
+        }
+        for (SoTConduitGradeEnum grade : GRADE_ORDER) {
+            if (base.getSoTGrade() == grade) {
+                return (!otherHoldsMore(propertyName, base, other));
+            }
+            if (other.getSoTGrade() == grade) {
+                return (otherHoldsMore(propertyName, other, base));
+            }
+        }
+        if (base.getSoTGrade() == SoTConduitGradeEnum.ANECDOTAL) {
+            return (!otherHoldsMore(propertyName, base, other));
+        }
+        return (false);
+    }
+
+    private static boolean otherHoldsMore(String propertyName, ResourceSoTConduitActionResponse decider, ResourceSoTConduitActionResponse other) {
+        return (holdsMore(propertyName, other.getImmutableAttributes(), decider.getImmutableAttributes())
+                || holdsMore(propertyName, other.getAuthoritativeAttributes(), decider.getAuthoritativeAttributes())
+                || holdsMore(propertyName, other.getInformationalAttributes(), decider.getInformationalAttributes())
+                || holdsMore(propertyName, other.getAnecdotalAttributes(), decider.getAnecdotalAttributes()));
+    }
+
+    private static boolean holdsMore(String propertyName, Set<String> candidate, Set<String> decider) {
+        return (!decider.contains(propertyName) && candidate.contains(propertyName));
+    }
+}
@@ -0,0 +1,96 @@
+package net.fhirfactory.pegacorn.ladon.mdr.conduit.controller.aggregationservices.defaultstrategies.propertybased.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Checks TransitiveKeyGrouper - the grouping of (e.g. search) results from several conduits by shared keys.
+ */
+public class TransitiveKeyGrouperTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TransitiveKeyGrouperTest.class);
+
+    private static final Function<Result, List<String>> KEYS = result -> result.keys;
+
+    @Test
+    public void resultsSharingAKeyAreGroupedInFirstSeenOrder() {
+        LOG.debug(".resultsSharingAKeyAreGroupedInFirstSeenOrder(): Entry");
+        Result first = new Result("a1", "mrn|1");
+        Result second = new Result("a2", "mrn|2");
+        Result third = new Result("b1", "mrn|1", "medicare|9");
+        Result fourth = new Result("b2");
+        List<List<Result>> groups = TransitiveKeyGrouper.group(Arrays.asList(first, second, third, fourth), KEYS);
+        assertEquals(3, groups.size());
+        assertEquals(Arrays.asList(first, third), groups.get(0));
+        assertEquals(Collections.singletonList(second), groups.get(1));
+        assertEquals(Collections.singletonList(fourth), groups.get(2));
+    }
+
+    @Test
+    public void matchesAreTransitive() {
+        LOG.debug(".matchesAreTransitive(): Entry");
+        Result first = new Result("a", "mrn|1");
+        Result second = new Result("b", "medicare|9");
+        Result third = new Result("c", "ihi|5", "medicare|9");
+        Result fourth = new Result("d", "ihi|5", "mrn|1");
+        List<List<Result>> groups = TransitiveKeyGrouper.group(Arrays.asList(first, second, third, fourth), KEYS);
+        assertEquals(1, groups.size());
+        assertEquals(Arrays.asList(first, second, third, fourth), groups.get(0));
+    }
+
+    @Test
+    public void resultsWithoutKeysAreNeverGrouped() {
+        LOG.debug(".resultsWithoutKeysAreNeverGrouped(): Entry");
+        Result first = new Result("a");
+        Result second = new Result("b", (String)null);
+        Result third = new Result("c");
+        third.keys = null;
+        List<List<Result>> groups = TransitiveKeyGrouper.group(Arrays.asList(first, second, third), KEYS);
+        assertEquals(3, groups.size());
+    }
+
+    @Test
+    public void largeResultSetsAreGroupedInLinearTime() {
+        LOG.debug(".largeResultSetsAreGroupedInLinearTime(): Entry");
+        int conduitCount = 4;
+        int resultsPerConduit = 100000;
+        List<Result> results = new ArrayList<>(conduitCount * resultsPerConduit);
+        for(int conduit = 0; conduit < conduitCount; conduit++){
+            for(int counter = 0; counter < resultsPerConduit; counter++){
+                // Each conduit links a result to its neighbour, so every result ends up in one (long) chain
+                results.add(new Result(conduit + "/" + counter, "id|" + counter, "id|" + (counter + 1)));
+            }
+        }
+        long startTime = System.nanoTime();
+        List<List<Result>> groups = TransitiveKeyGrouper.group(results, KEYS);
+        long elapsedMillis = (System.nanoTime() - startTime) / 1000000L;
+        assertEquals(1, groups.size());
+        assertEquals(conduitCount * resultsPerConduit, groups.get(0).size());
+        assertTrue("grouping took " + elapsedMillis + "ms", elapsedMillis < 5000);
+    }
+
+    private static class Result {
+        private final String name;
+        private List<String> keys;
+
+        Result(String name, String... keys){
+            this.name = name;
+            this.keys = Arrays.asList(keys);
+        }
+
+        @Override
+        public String toString() {
+            return (name);
+        }
+    }
+}
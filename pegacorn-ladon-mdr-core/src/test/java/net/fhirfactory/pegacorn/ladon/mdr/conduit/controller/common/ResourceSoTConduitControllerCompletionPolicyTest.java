@@ -0,0 +1,726 @@
+package net.fhirfactory.pegacorn.ladon.mdr.conduit.controller.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import ca.uhn.fhir.rest.api.MethodOutcome;
+import net.fhirfactory.pegacorn.ladon.mdr.conduit.controller.aggregationservices.common.ResourceContentAggregationServiceBase;
+import net.fhirfactory.pegacorn.ladon.mdr.conduit.controller.aggregationservices.defaultstrategies.wholeresourcebased.common.WholeResourceBasedAggregationServiceBase;
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.mdr.ResourceGradeEnum;
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.mdr.ResourceSoTConduitActionResponse;
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.mdr.ResourceSoTConduitSearchResponseElement;
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.mdr.SoTConduitGradeEnum;
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.mdr.SoTResourceConduit;
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.operations.VirtualDBActionStatusEnum;
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.operations.VirtualDBActionTypeEnum;
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.operations.VirtualDBMethodOutcome;
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.operations.VirtualDBMethodOutcomeFactory;
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.searches.SearchNameEnum;
+import net.fhirfactory.pegacorn.petasos.model.itops.PegacornFunctionStatusEnum;
+import org.hl7.fhir.r4.model.IdType;
+import org.hl7.fhir.r4.model.Identifier;
+import org.hl7.fhir.r4.model.OperationOutcome;
+import org.hl7.fhir.r4.model.Patient;
+import org.hl7.fhir.r4.model.Property;
+import org.hl7.fhir.r4.model.Resource;
+import org.hl7.fhir.r4.model.ResourceType;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Checks that the early-completion policies of ResourceSoTConduitController return the same aggregated result as
+ * waiting for every conduit, and that they stop waiting when they should.
+ */
+public class ResourceSoTConduitControllerCompletionPolicyTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ResourceSoTConduitControllerCompletionPolicyTest.class);
+
+    private SoTConduitFanOutExecutor fanOutExecutor;
+    private List<StubConduit> gatedConduits;
+
+    @Before
+    public void setUp() {
+        fanOutExecutor = new SoTConduitFanOutExecutor(8, 64);
+        gatedConduits = new ArrayList<>();
+    }
+
+    @After
+    public void tearDown() {
+        openGates(gatedConduits);
+        fanOutExecutor.shutdown();
+    }
+
+    @Test
+    public void precedenceOrderIsTotal() {
+        LOG.debug(".precedenceOrderIsTotal(): Entry");
+        List<ResourceSoTConduitActionResponse> responses = buildEveryGradedResponse();
+        ResourceSoTConduitActionResponse authoritativeAndThorough = new StubConduit("conduit-a", 0, SoTConduitGradeEnum.AUTHORITATIVE, ResourceGradeEnum.THOROUGH).buildResponse(buildIdentifier());
+        for(ResourceSoTConduitActionResponse first: responses){
+            assertTrue(authoritativeAndThorough.compareTo(first) <= 0);
+            for(ResourceSoTConduitActionResponse second: responses){
+                assertEquals(Integer.signum(first.compareTo(second)), -Integer.signum(second.compareTo(first)));
+                for(ResourceSoTConduitActionResponse third: responses){
+                    if(first.compareTo(second) <= 0 && second.compareTo(third) <= 0){
+                        assertTrue(first.compareTo(third) <= 0);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void aggregationMatchesTheSortBasedResult() {
+        LOG.debug(".aggregationMatchesTheSortBasedResult(): Entry");
+        TestAggregationService aggregationService = new TestAggregationService();
+        List<ResourceSoTConduitActionResponse> gradedResponses = buildEveryGradedResponse();
+        for(ResourceSoTConduitActionResponse first: gradedResponses){
+            for(ResourceSoTConduitActionResponse second: gradedResponses){
+                List<ResourceSoTConduitActionResponse> responses = new ArrayList<>();
+                responses.add(regrade(first, "conduit-a"));
+                responses.add(regrade(second, "conduit-b"));
+                responses.add(new StubConduit("conduit-c", 0, SoTConduitGradeEnum.AUTHORITATIVE, ResourceGradeEnum.THOROUGH).buildResponse(buildIdentifier()));
+                List<ResourceSoTConduitActionResponse> sortedResponses = new ArrayList<>(responses);
+                Collections.sort(sortedResponses);
+                VirtualDBMethodOutcome outcome = aggregationService.aggregateGetResponseSet(new ArrayList<>(responses));
+                assertEquals(sortedResponses.get(0).getSourceOfTruthName(), ((ResourceSoTConduitActionResponse)outcome).getSourceOfTruthName());
+                // The first final response (in conduit order) is the aggregated result
+                for(ResourceSoTConduitActionResponse response: responses){
+                    assertFalse(aggregationService.isFinalGetResponse(response));
+                    if(aggregationService.isFinalSuccessfulGetResponse(response)){
+                        assertEquals(response.getSourceOfTruthName(), ((ResourceSoTConduitActionResponse)outcome).getSourceOfTruthName());
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void authoritativeResponseEndsTheFanOutEarly() {
+        LOG.debug(".authoritativeResponseEndsTheFanOutEarly(): Entry");
+        List<StubConduit> conduits = new ArrayList<>();
+        conduits.add(new StubConduit("conduit-a", 10, SoTConduitGradeEnum.INFORMATIVE, ResourceGradeEnum.ESTABLISHED));
+        conduits.add(new StubConduit("conduit-b", 10, SoTConduitGradeEnum.AUTHORITATIVE, ResourceGradeEnum.THOROUGH));
+        conduits.add(gated(new StubConduit("conduit-c", 10, SoTConduitGradeEnum.AUTHORITATIVE, ResourceGradeEnum.THOROUGH)));
+        TestController earlyController = buildController(conduits, SoTConduitCompletionPolicyEnum.COMPLETION_POLICY_FIRST_AUTHORITATIVE);
+        List<SoTConduitInvocation<ResourceSoTConduitActionResponse>> invocationList = earlyController.getResourceFromEachConduit(buildIdentifier());
+        assertInvocationStatuses(invocationList, SoTConduitInvocationStatusEnum.INVOCATION_COMPLETED, SoTConduitInvocationStatusEnum.INVOCATION_COMPLETED, SoTConduitInvocationStatusEnum.INVOCATION_NOT_REQUIRED);
+        VirtualDBMethodOutcome earlyOutcome = review(conduits, SoTConduitCompletionPolicyEnum.COMPLETION_POLICY_FIRST_AUTHORITATIVE);
+        assertEquals(0, countIssues(earlyOutcome, OperationOutcome.IssueType.INCOMPLETE));
+
+        openGates(conduits);
+        VirtualDBMethodOutcome waitForAllOutcome = review(conduits, SoTConduitCompletionPolicyEnum.COMPLETION_POLICY_WAIT_FOR_ALL);
+        assertSameAggregatedResult(waitForAllOutcome, earlyOutcome);
+        assertEquals("conduit-b", ((ResourceSoTConduitActionResponse)earlyOutcome).getSourceOfTruthName());
+    }
+
+    @Test
+    public void authoritativeResponseWaitsForConduitsAheadOfIt() {
+        LOG.debug(".authoritativeResponseWaitsForConduitsAheadOfIt(): Entry");
+        List<StubConduit> conduits = new ArrayList<>();
+        conduits.add(new StubConduit("conduit-a", 100, SoTConduitGradeEnum.INFORMATIVE, ResourceGradeEnum.ESTABLISHED));
+        conduits.add(new StubConduit("conduit-b", 0, SoTConduitGradeEnum.AUTHORITATIVE, ResourceGradeEnum.THOROUGH));
+        conduits.add(gated(new StubConduit("conduit-c", 0, SoTConduitGradeEnum.INFORMATIVE, ResourceGradeEnum.LIMITED)));
+        TestController earlyController = buildController(conduits, SoTConduitCompletionPolicyEnum.COMPLETION_POLICY_FIRST_AUTHORITATIVE);
+        List<SoTConduitInvocation<ResourceSoTConduitActionResponse>> invocationList = earlyController.getResourceFromEachConduit(buildIdentifier());
+        // conduit-a is ahead of the final response, so is awaited however long after it it responds
+        assertInvocationStatuses(invocationList, SoTConduitInvocationStatusEnum.INVOCATION_COMPLETED, SoTConduitInvocationStatusEnum.INVOCATION_COMPLETED, SoTConduitInvocationStatusEnum.INVOCATION_NOT_REQUIRED);
+    }
+
+    @Test
+    public void withoutAFinalResponseEveryConduitIsAwaited() {
+        LOG.debug(".withoutAFinalResponseEveryConduitIsAwaited(): Entry");
+        List<StubConduit> conduits = new ArrayList<>();
+        conduits.add(new StubConduit("conduit-a", 10, SoTConduitGradeEnum.INFORMATIVE, ResourceGradeEnum.ESTABLISHED));
+        conduits.add(new StubConduit("conduit-b", 10, SoTConduitGradeEnum.AUTHORITATIVE, ResourceGradeEnum.LIMITED));
+        conduits.add(new StubConduit("conduit-c", 100, SoTConduitGradeEnum.ANECDOTAL, ResourceGradeEnum.THOROUGH));
+        TestController earlyController = buildController(conduits, SoTConduitCompletionPolicyEnum.COMPLETION_POLICY_FIRST_AUTHORITATIVE);
+        List<SoTConduitInvocation<ResourceSoTConduitActionResponse>> invocationList = earlyController.getResourceFromEachConduit(buildIdentifier());
+        assertInvocationStatuses(invocationList, SoTConduitInvocationStatusEnum.INVOCATION_COMPLETED, SoTConduitInvocationStatusEnum.INVOCATION_COMPLETED, SoTConduitInvocationStatusEnum.INVOCATION_COMPLETED);
+        VirtualDBMethodOutcome waitForAllOutcome = review(conduits, SoTConduitCompletionPolicyEnum.COMPLETION_POLICY_WAIT_FOR_ALL);
+        VirtualDBMethodOutcome earlyOutcome = review(conduits, SoTConduitCompletionPolicyEnum.COMPLETION_POLICY_FIRST_AUTHORITATIVE);
+        assertSameAggregatedResult(waitForAllOutcome, earlyOutcome);
+        assertEquals("conduit-b", ((ResourceSoTConduitActionResponse)earlyOutcome).getSourceOfTruthName());
+    }
+
+    @Test
+    public void failedResponseEndsTheFanOutEarly() {
+        LOG.debug(".failedResponseEndsTheFanOutEarly(): Entry");
+        List<StubConduit> conduits = new ArrayList<>();
+        conduits.add(new StubConduit("conduit-a", 10, SoTConduitGradeEnum.AUTHORITATIVE, ResourceGradeEnum.THOROUGH));
+        conduits.add(new StubConduit("conduit-b", 10, SoTConduitGradeEnum.INFORMATIVE, ResourceGradeEnum.ESTABLISHED).failing());
+        conduits.add(gated(new StubConduit("conduit-c", 10, SoTConduitGradeEnum.INFORMATIVE, ResourceGradeEnum.LIMITED)));
+        TestController earlyController = buildController(conduits, SoTConduitCompletionPolicyEnum.COMPLETION_POLICY_FIRST_AUTHORITATIVE);
+        List<SoTConduitInvocation<ResourceSoTConduitActionResponse>> invocationList = earlyController.getResourceFromEachConduit(buildId());
+        assertInvocationStatuses(invocationList, SoTConduitInvocationStatusEnum.INVOCATION_COMPLETED, SoTConduitInvocationStatusEnum.INVOCATION_COMPLETED, SoTConduitInvocationStatusEnum.INVOCATION_NOT_REQUIRED);
+        VirtualDBMethodOutcome earlyOutcome = buildController(conduits, SoTConduitCompletionPolicyEnum.COMPLETION_POLICY_FIRST_AUTHORITATIVE).reviewResource(buildId());
+
+        openGates(conduits);
+        VirtualDBMethodOutcome waitForAllOutcome = buildController(conduits, SoTConduitCompletionPolicyEnum.COMPLETION_POLICY_WAIT_FOR_ALL).reviewResource(buildId());
+        assertEquals(VirtualDBActionStatusEnum.REVIEW_FAILURE, waitForAllOutcome.getStatusEnum());
+        assertEquals(VirtualDBActionStatusEnum.REVIEW_FAILURE, earlyOutcome.getStatusEnum());
+        assertEquals("conduit-b", ((ResourceSoTConduitActionResponse)waitForAllOutcome).getSourceOfTruthName());
+        assertEquals("conduit-b", ((ResourceSoTConduitActionResponse)earlyOutcome).getSourceOfTruthName());
+    }
+
+    @Test
+    public void failedResponseWaitsForConduitsAheadOfIt() {
+        LOG.debug(".failedResponseWaitsForConduitsAheadOfIt(): Entry");
+        List<StubConduit> conduits = new ArrayList<>();
+        conduits.add(new StubConduit("conduit-a", 100, SoTConduitGradeEnum.INFORMATIVE, ResourceGradeEnum.ESTABLISHED).failing());
+        conduits.add(new StubConduit("conduit-b", 0, SoTConduitGradeEnum.AUTHORITATIVE, ResourceGradeEnum.THOROUGH).failing());
+        conduits.add(gated(new StubConduit("conduit-c", 0, SoTConduitGradeEnum.INFORMATIVE, ResourceGradeEnum.LIMITED)));
+        TestController earlyController = buildController(conduits, SoTConduitCompletionPolicyEnum.COMPLETION_POLICY_FIRST_AUTHORITATIVE);
+        List<SoTConduitInvocation<ResourceSoTConduitActionResponse>> invocationList = earlyController.getResourceFromEachConduit(buildId());
+        assertInvocationStatuses(invocationList, SoTConduitInvocationStatusEnum.INVOCATION_COMPLETED, SoTConduitInvocationStatusEnum.INVOCATION_COMPLETED, SoTConduitInvocationStatusEnum.INVOCATION_NOT_REQUIRED);
+        VirtualDBMethodOutcome earlyOutcome = buildController(conduits, SoTConduitCompletionPolicyEnum.COMPLETION_POLICY_FIRST_AUTHORITATIVE).reviewResource(buildId());
+
+        openGates(conduits);
+        VirtualDBMethodOutcome waitForAllOutcome = buildController(conduits, SoTConduitCompletionPolicyEnum.COMPLETION_POLICY_WAIT_FOR_ALL).reviewResource(buildId());
+        assertEquals(((ResourceSoTConduitActionResponse)waitForAllOutcome).getSourceOfTruthName(), ((ResourceSoTConduitActionResponse)earlyOutcome).getSourceOfTruthName());
+        assertEquals("conduit-a", ((ResourceSoTConduitActionResponse)earlyOutcome).getSourceOfTruthName());
+    }
+
+    @Test
+    public void quorumCancelsAndReportsLateConduits() {
+        LOG.debug(".quorumCancelsAndReportsLateConduits(): Entry");
+        List<StubConduit> conduits = new ArrayList<>();
+        conduits.add(new StubConduit("conduit-a", 10, SoTConduitGradeEnum.INFORMATIVE, ResourceGradeEnum.ESTABLISHED));
+        conduits.add(new StubConduit("conduit-b", 20, SoTConduitGradeEnum.INFORMATIVE, ResourceGradeEnum.ESTABLISHED));
+        conduits.add(gated(new StubConduit("conduit-c", 10, SoTConduitGradeEnum.AUTHORITATIVE, ResourceGradeEnum.LIMITED)));
+        TestController controller = buildController(conduits, SoTConduitCompletionPolicyEnum.COMPLETION_POLICY_QUORUM);
+        List<SoTConduitInvocation<ResourceSoTConduitActionResponse>> invocationList = controller.getResourceFromEachConduit(buildIdentifier());
+        assertInvocationStatuses(invocationList, SoTConduitInvocationStatusEnum.INVOCATION_COMPLETED, SoTConduitInvocationStatusEnum.INVOCATION_COMPLETED, SoTConduitInvocationStatusEnum.INVOCATION_LATE);
+
+        VirtualDBMethodOutcome quorumOutcome = controller.reviewResource(buildIdentifier());
+        assertEquals(VirtualDBActionStatusEnum.REVIEW_FINISH, quorumOutcome.getStatusEnum());
+        assertEquals(1, countIssues(quorumOutcome, OperationOutcome.IssueType.INCOMPLETE));
+    }
+
+    @Test
+    public void timedOutConduitsAppearInTheOutcome() {
+        LOG.debug(".timedOutConduitsAppearInTheOutcome(): Entry");
+        List<StubConduit> conduits = new ArrayList<>();
+        conduits.add(new StubConduit("conduit-a", 10, SoTConduitGradeEnum.INFORMATIVE, ResourceGradeEnum.ESTABLISHED));
+        conduits.add(gated(new StubConduit("conduit-b", 10, SoTConduitGradeEnum.AUTHORITATIVE, ResourceGradeEnum.THOROUGH)));
+        TestController controller = buildController(conduits, SoTConduitCompletionPolicyEnum.COMPLETION_POLICY_WAIT_FOR_ALL);
+        controller.setConduitTimeoutInMillis(200);
+        List<SoTConduitInvocation<ResourceSoTConduitActionResponse>> invocationList = controller.getResourceFromEachConduit(buildIdentifier());
+        assertInvocationStatuses(invocationList, SoTConduitInvocationStatusEnum.INVOCATION_COMPLETED, SoTConduitInvocationStatusEnum.INVOCATION_TIMED_OUT);
+        VirtualDBMethodOutcome outcome = controller.reviewResource(buildIdentifier());
+        assertEquals("conduit-a", ((ResourceSoTConduitActionResponse)outcome).getSourceOfTruthName());
+        assertEquals(1, countIssues(outcome, OperationOutcome.IssueType.TIMEOUT));
+    }
+
+    @Test
+    public void rejectedConduitsAppearAsIncomplete() {
+        LOG.debug(".rejectedConduitsAppearAsIncomplete(): Entry");
+        List<StubConduit> conduits = new ArrayList<>();
+        conduits.add(new StubConduit("conduit-a", 100, SoTConduitGradeEnum.INFORMATIVE, ResourceGradeEnum.ESTABLISHED));
+        conduits.add(new StubConduit("conduit-b", 10, SoTConduitGradeEnum.INFORMATIVE, ResourceGradeEnum.ESTABLISHED));
+        conduits.add(new StubConduit("conduit-c", 10, SoTConduitGradeEnum.AUTHORITATIVE, ResourceGradeEnum.THOROUGH));
+        // One thread (busy with conduit-a) and a queue of one (holding conduit-b), so conduit-c is rejected
+        SoTConduitFanOutExecutor saturatedExecutor = new SoTConduitFanOutExecutor(1, 1);
+        try {
+            TestController controller = buildController(conduits, SoTConduitCompletionPolicyEnum.COMPLETION_POLICY_WAIT_FOR_ALL);
+            controller.fanOutExecutor = saturatedExecutor;
+            List<SoTConduitInvocation<ResourceSoTConduitActionResponse>> invocationList = controller.getResourceFromEachConduit(buildIdentifier());
+            assertEquals(SoTConduitInvocationStatusEnum.INVOCATION_COMPLETED, invocationList.get(0).getInvocationStatus());
+            assertEquals(SoTConduitInvocationStatusEnum.INVOCATION_COMPLETED, invocationList.get(1).getInvocationStatus());
+            assertEquals(SoTConduitInvocationStatusEnum.INVOCATION_REJECTED, invocationList.get(2).getInvocationStatus());
+            assertEquals(0, conduits.get(2).getInvocationCount());
+            assertEquals(1, saturatedExecutor.getRejectedCount());
+        } finally {
+            saturatedExecutor.shutdown();
+        }
+        SoTConduitFanOutExecutor reviewExecutor = new SoTConduitFanOutExecutor(1, 1);
+        try {
+            TestController controller = buildController(conduits, SoTConduitCompletionPolicyEnum.COMPLETION_POLICY_WAIT_FOR_ALL);
+            controller.fanOutExecutor = reviewExecutor;
+            VirtualDBMethodOutcome outcome = controller.reviewResource(buildIdentifier());
+            assertEquals(VirtualDBActionStatusEnum.REVIEW_FINISH, outcome.getStatusEnum());
+            assertEquals(1, countIssues(outcome, OperationOutcome.IssueType.INCOMPLETE));
+        } finally {
+            reviewExecutor.shutdown();
+        }
+    }
+
+    @Test
+    public void saturatedPoolNeverRunsConduitsOnTheCaller() {
+        LOG.debug(".saturatedPoolNeverRunsConduitsOnTheCaller(): Entry");
+        List<StubConduit> conduits = new ArrayList<>();
+        conduits.add(gated(new StubConduit("conduit-a", 0, SoTConduitGradeEnum.INFORMATIVE, ResourceGradeEnum.ESTABLISHED)));
+        conduits.add(gated(new StubConduit("conduit-b", 0, SoTConduitGradeEnum.AUTHORITATIVE, ResourceGradeEnum.THOROUGH)));
+        conduits.add(gated(new StubConduit("conduit-c", 0, SoTConduitGradeEnum.INFORMATIVE, ResourceGradeEnum.LIMITED)));
+        SoTConduitFanOutExecutor saturatedExecutor = new SoTConduitFanOutExecutor(1, 1);
+        try {
+            TestController controller = buildController(conduits, SoTConduitCompletionPolicyEnum.COMPLETION_POLICY_WAIT_FOR_ALL);
+            controller.fanOutExecutor = saturatedExecutor;
+            controller.setConduitTimeoutInMillis(200);
+            List<SoTConduitInvocation<ResourceSoTConduitActionResponse>> invocationList = controller.getResourceFromEachConduit(buildIdentifier());
+            // Both the running and the queued conduit are held to the deadline, the third is never run at all
+            assertInvocationStatuses(invocationList, SoTConduitInvocationStatusEnum.INVOCATION_TIMED_OUT, SoTConduitInvocationStatusEnum.INVOCATION_TIMED_OUT, SoTConduitInvocationStatusEnum.INVOCATION_REJECTED);
+            assertEquals(1, conduits.get(0).getInvocationCount());
+            assertEquals(0, conduits.get(2).getInvocationCount());
+            assertEquals(1, saturatedExecutor.getRejectedCount());
+            for(StubConduit conduit: conduits){
+                assertFalse(conduit.wasInvokedOn(Thread.currentThread()));
+            }
+        } finally {
+            saturatedExecutor.shutdown();
+        }
+    }
+
+    @Test
+    public void writeCompletingOnEveryConduitSucceeds() {
+        LOG.debug(".writeCompletingOnEveryConduitSucceeds(): Entry");
+        List<StubConduit> conduits = new ArrayList<>();
+        conduits.add(new StubConduit("conduit-a", 10, SoTConduitGradeEnum.AUTHORITATIVE, ResourceGradeEnum.THOROUGH));
+        conduits.add(new StubConduit("conduit-b", 10, SoTConduitGradeEnum.INFORMATIVE, ResourceGradeEnum.ESTABLISHED));
+        TestController controller = buildController(conduits, SoTConduitCompletionPolicyEnum.COMPLETION_POLICY_WAIT_FOR_ALL);
+        VirtualDBMethodOutcome outcome = controller.updateResource(buildPatient());
+        assertEquals(VirtualDBActionStatusEnum.UPDATE_FINISH, outcome.getStatusEnum());
+        assertEquals(0, countIssues(outcome, OperationOutcome.IssueType.INCOMPLETE));
+        assertEquals(1, conduits.get(0).getInvocationCount());
+        assertEquals(1, conduits.get(1).getInvocationCount());
+    }
+
+    @Test
+    public void timedOutWriteFailsTheOutcome() {
+        LOG.debug(".timedOutWriteFailsTheOutcome(): Entry");
+        List<StubConduit> conduits = new ArrayList<>();
+        conduits.add(new StubConduit("conduit-a", 10, SoTConduitGradeEnum.AUTHORITATIVE, ResourceGradeEnum.THOROUGH));
+        conduits.add(gated(new StubConduit("conduit-b", 10, SoTConduitGradeEnum.INFORMATIVE, ResourceGradeEnum.ESTABLISHED)));
+        TestController controller = buildController(conduits, SoTConduitCompletionPolicyEnum.COMPLETION_POLICY_WAIT_FOR_ALL);
+        controller.setConduitTimeoutInMillis(200);
+        VirtualDBMethodOutcome outcome = controller.updateResource(buildPatient());
+        assertEquals(VirtualDBActionStatusEnum.UPDATE_FAILURE, outcome.getStatusEnum());
+        assertEquals(VirtualDBActionTypeEnum.UPDATE, outcome.getCausalAction());
+        assertEquals(1, countIssues(outcome, OperationOutcome.IssueType.TIMEOUT));
+        assertEquals(1, countIssues(outcome, OperationOutcome.IssueType.INCOMPLETE));
+    }
+
+    @Test
+    public void failedWriteFailsTheOutcome() {
+        LOG.debug(".failedWriteFailsTheOutcome(): Entry");
+        List<StubConduit> conduits = new ArrayList<>();
+        conduits.add(new StubConduit("conduit-a", 10, SoTConduitGradeEnum.AUTHORITATIVE, ResourceGradeEnum.THOROUGH));
+        conduits.add(new StubConduit("conduit-b", 10, SoTConduitGradeEnum.INFORMATIVE, ResourceGradeEnum.ESTABLISHED).throwing());
+        TestController controller = buildController(conduits, SoTConduitCompletionPolicyEnum.COMPLETION_POLICY_WAIT_FOR_ALL);
+        VirtualDBMethodOutcome outcome = controller.createResource(buildPatient());
+        assertEquals(VirtualDBActionStatusEnum.CREATION_FAILURE, outcome.getStatusEnum());
+        assertEquals(VirtualDBActionTypeEnum.CREATE, outcome.getCausalAction());
+        assertEquals(1, countIssues(outcome, OperationOutcome.IssueType.EXCEPTION));
+    }
+
+    @Test
+    public void rejectedWriteFailsTheOutcome() {
+        LOG.debug(".rejectedWriteFailsTheOutcome(): Entry");
+        List<StubConduit> conduits = new ArrayList<>();
+        conduits.add(gated(new StubConduit("conduit-a", 0, SoTConduitGradeEnum.AUTHORITATIVE, ResourceGradeEnum.THOROUGH)));
+        conduits.add(new StubConduit("conduit-b", 0, SoTConduitGradeEnum.INFORMATIVE, ResourceGradeEnum.ESTABLISHED));
+        conduits.add(new StubConduit("conduit-c", 0, SoTConduitGradeEnum.INFORMATIVE, ResourceGradeEnum.LIMITED));
+        // One thread (held by conduit-a) and a queue of one (holding conduit-b), so conduit-c is rejected
+        SoTConduitFanOutExecutor saturatedExecutor = new SoTConduitFanOutExecutor(1, 1);
+        try {
+            TestController controller = buildController(conduits, SoTConduitCompletionPolicyEnum.COMPLETION_POLICY_WAIT_FOR_ALL);
+            controller.fanOutExecutor = saturatedExecutor;
+            controller.setConduitTimeoutInMillis(200);
+            VirtualDBMethodOutcome outcome = controller.deleteResource(buildPatient());
+            // No conduit completed, so there is nothing to aggregate - the outcome is still a (failed) delete
+            assertEquals(VirtualDBActionStatusEnum.DELETE_FAILURE, outcome.getStatusEnum());
+            assertEquals(VirtualDBActionTypeEnum.DELETE, outcome.getCausalAction());
+            assertEquals(2, countIssues(outcome, OperationOutcome.IssueType.TIMEOUT));
+            // The rejected conduit, and the aggregated write failure
+            assertEquals(2, countIssues(outcome, OperationOutcome.IssueType.INCOMPLETE));
+            assertEquals(0, conduits.get(2).getInvocationCount());
+        } finally {
+            saturatedExecutor.shutdown();
+        }
+    }
+
+    //
+    // Helpers
+    //
+
+    private VirtualDBMethodOutcome review(List<StubConduit> conduits, SoTConduitCompletionPolicyEnum completionPolicy){
+        TestController controller = buildController(conduits, completionPolicy);
+        VirtualDBMethodOutcome outcome = controller.reviewResource(buildIdentifier());
+        assertEquals(VirtualDBActionStatusEnum.REVIEW_FINISH, outcome.getStatusEnum());
+        return(outcome);
+    }
+
+    private void assertInvocationStatuses(List<SoTConduitInvocation<ResourceSoTConduitActionResponse>> invocationList, SoTConduitInvocationStatusEnum... expectedStatuses){
+        assertEquals(expectedStatuses.length, invocationList.size());
+        for(int counter = 0; counter < expectedStatuses.length; counter++){
+            assertEquals(invocationList.get(counter).getConduitName(), expectedStatuses[counter], invocationList.get(counter).getInvocationStatus());
+        }
+    }
+
+    private StubConduit gated(StubConduit conduit){
+        gatedConduits.add(conduit);
+        return(conduit.gated());
+    }
+
+    private void openGates(List<StubConduit> conduits){
+        for(StubConduit conduit: conduits){
+            conduit.openGate();
+        }
+    }
+
+    private static List<ResourceSoTConduitActionResponse> buildEveryGradedResponse(){
+        List<ResourceSoTConduitActionResponse> responses = new ArrayList<>();
+        List<SoTConduitGradeEnum> sotGrades = new ArrayList<>(Arrays.asList(SoTConduitGradeEnum.values()));
+        sotGrades.add(null);
+        List<ResourceGradeEnum> resourceGrades = new ArrayList<>(Arrays.asList(ResourceGradeEnum.values()));
+        resourceGrades.add(null);
+        for(SoTConduitGradeEnum sotGrade: sotGrades){
+            for(ResourceGradeEnum resourceGrade: resourceGrades){
+                responses.add(new StubConduit(sotGrade + "-" + resourceGrade, 0, sotGrade, resourceGrade).buildResponse(buildIdentifier()));
+            }
+        }
+        return(responses);
+    }
+
+    private static ResourceSoTConduitActionResponse regrade(ResourceSoTConduitActionResponse gradedResponse, String conduitName){
+        return(new StubConduit(conduitName, 0, gradedResponse.getSoTGrade(), gradedResponse.getResponseResourceGrade()).buildResponse(buildIdentifier()));
+    }
+
+    private TestController buildController(List<StubConduit> conduits, SoTConduitCompletionPolicyEnum completionPolicy){
+        TestController controller = new TestController(completionPolicy);
+        controller.outcomeFactory = new VirtualDBMethodOutcomeFactory();
+        controller.fanOutExecutor = fanOutExecutor;
+        for(StubConduit conduit: conduits){
+            controller.addResourceConduit(conduit);
+        }
+        return(controller);
+    }
+
+    private void assertSameAggregatedResult(VirtualDBMethodOutcome expected, VirtualDBMethodOutcome actual){
+        assertNotNull(actual.getResource());
+        assertEquals(((ResourceSoTConduitActionResponse)expected).getSourceOfTruthName(), ((ResourceSoTConduitActionResponse)actual).getSourceOfTruthName());
+        assertTrue(((Patient)expected.getResource()).equalsDeep((Patient)actual.getResource()));
+    }
+
+    private int countIssues(VirtualDBMethodOutcome outcome, OperationOutcome.IssueType issueType){
+        OperationOutcome opOutcome = (OperationOutcome)outcome.getOperationOutcome();
+        if(opOutcome == null){
+            return(0);
+        }
+        int issueCount = 0;
+        for(OperationOutcome.OperationOutcomeIssueComponent issue: opOutcome.getIssue()){
+            if(issue.getCode() == issueType){
+                issueCount += 1;
+            }
+        }
+        return(issueCount);
+    }
+
+    private static Identifier buildIdentifier(){
+        return(new Identifier().setSystem("urn:pegacorn:test:mrn").setValue("MRN-1"));
+    }
+
+    private static Patient buildPatient(){
+        Patient patient = new Patient();
+        patient.setId("Patient/1");
+        patient.addIdentifier(buildIdentifier());
+        return(patient);
+    }
+
+    private static IdType buildId(){
+        return(new IdType("Patient", "1"));
+    }
+
+    //
+    // Stand-ins
+    //
+
+    static class TestController extends ResourceSoTConduitController {
+        private static final Logger CONTROLLER_LOG = LoggerFactory.getLogger(TestController.class);
+        private SoTConduitCompletionPolicyEnum completionPolicy;
+        private long conduitTimeoutInMillis = 5000;
+        private TestAggregationService aggregationService = new TestAggregationService();
+
+        TestController(SoTConduitCompletionPolicyEnum completionPolicy){
+            this.completionPolicy = completionPolicy;
+        }
+
+        void setConduitTimeoutInMillis(long conduitTimeoutInMillis){
+            this.conduitTimeoutInMillis = conduitTimeoutInMillis;
+        }
+
+        @Override
+        protected SoTConduitCompletionPolicyEnum specifyCompletionPolicy() {
+            return (completionPolicy);
+        }
+
+        @Override
+        protected long specifyConduitTimeoutInMillis(SoTResourceConduit conduit) {
+            return (conduitTimeoutInMillis);
+        }
+
+        @Override
+        protected Logger getLogger() {
+            return (CONTROLLER_LOG);
+        }
+
+        @Override
+        protected ResourceType specifyResourceType() {
+            return (ResourceType.Patient);
+        }
+
+        @Override
+        protected ResourceContentAggregationServiceBase specifyAggregationService() {
+            return (aggregationService);
+        }
+    }
+
+    static class TestAggregationService extends WholeResourceBasedAggregationServiceBase {
+        private static final Logger AGGREGATION_LOG = LoggerFactory.getLogger(TestAggregationService.class);
+
+        @Override
+        protected Logger getLogger() {
+            return (AGGREGATION_LOG);
+        }
+
+        @Override
+        protected String getAggregationServiceName() {
+            return ("TestPatientAggregationService");
+        }
+
+        @Override
+        protected Identifier getBestIdentifier(Resource resource) {
+            return (((Patient)resource).getIdentifierFirstRep());
+        }
+
+        @Override
+        protected void addIdentifier(Resource resource, Identifier ridIdentifier) {
+            ((Patient)resource).addIdentifier(ridIdentifier);
+        }
+
+        @Override
+        protected List<Identifier> getIdentifiers(ResourceSoTConduitActionResponse actionResponse) {
+            return (((Patient)actionResponse.getResource()).getIdentifier());
+        }
+
+        @Override
+        protected ResourceType getResourceType() {
+            return (ResourceType.Patient);
+        }
+
+        @Override
+        public VirtualDBMethodOutcome aggregateCreateResponseSet(List<ResourceSoTConduitActionResponse> responseSet) {
+            return (defaultActionOutcomeAggregationService(VirtualDBActionTypeEnum.CREATE, responseSet));
+        }
+
+        @Override
+        public VirtualDBMethodOutcome aggregateGetResponseSet(List<ResourceSoTConduitActionResponse> responseSet) {
+            return (defaultActionOutcomeAggregationService(VirtualDBActionTypeEnum.REVIEW, responseSet));
+        }
+
+        @Override
+        public VirtualDBMethodOutcome aggregateUpdateResponseSet(List<ResourceSoTConduitActionResponse> responseSet) {
+            return (defaultActionOutcomeAggregationService(VirtualDBActionTypeEnum.UPDATE, responseSet));
+        }
+
+        @Override
+        public VirtualDBMethodOutcome aggregateDeleteResponseSet(List<ResourceSoTConduitActionResponse> responseSet) {
+            return (defaultActionOutcomeAggregationService(VirtualDBActionTypeEnum.DELETE, responseSet));
+        }
+
+        @Override
+        public VirtualDBMethodOutcome aggregateSearchResultSet(List<ResourceSoTConduitSearchResponseElement> responseSet) {
+            return (defaultSearchOutcomeAggregationService(responseSet));
+        }
+    }
+
+    static class StubConduit extends SoTResourceConduit {
+        private static final Logger CONDUIT_LOG = LoggerFactory.getLogger(StubConduit.class);
+        private String conduitName;
+        private long delayInMillis;
+        private SoTConduitGradeEnum sotGrade;
+        private ResourceGradeEnum resourceGrade;
+        private boolean failing;
+        private boolean throwing;
+        private List<Thread> invokingThreads = Collections.synchronizedList(new ArrayList<>());
+        private CountDownLatch gate;
+
+        StubConduit(String conduitName, long delayInMillis, SoTConduitGradeEnum sotGrade, ResourceGradeEnum resourceGrade){
+            this.conduitName = conduitName;
+            this.delayInMillis = delayInMillis;
+            this.sotGrade = sotGrade;
+            this.resourceGrade = resourceGrade;
+        }
+
+        StubConduit failing(){
+            this.failing = true;
+            return(this);
+        }
+
+        StubConduit throwing(){
+            this.throwing = true;
+            return(this);
+        }
+
+        ResourceSoTConduitActionResponse buildResponse(Identifier identifier){
+            Patient patient = new Patient();
+            patient.setId("Patient/1");
+            patient.addIdentifier(identifier.copy());
+            patient.addName().setFamily(conduitName);
+            ResourceSoTConduitActionResponse response = new ResourceSoTConduitActionResponse(conduitName, PegacornFunctionStatusEnum.FUNCTION_STATUS_OK);
+            response.setCausalAction(VirtualDBActionTypeEnum.REVIEW);
+            response.setStatusEnum(failing ? VirtualDBActionStatusEnum.REVIEW_FAILURE : VirtualDBActionStatusEnum.REVIEW_FINISH);
+            response.setResource(patient);
+            response.setSoTGrade(sotGrade);
+            response.setResponseResourceGrade(resourceGrade);
+            return(response);
+        }
+
+        // Holds every invocation (after its delay) until the gate is opened
+        StubConduit gated(){
+            this.gate = new CountDownLatch(1);
+            return(this);
+        }
+
+        void openGate(){
+            if(gate != null){
+                gate.countDown();
+            }
+        }
+
+        int getInvocationCount(){
+            return(invokingThreads.size());
+        }
+
+        boolean wasInvokedOn(Thread thread){
+            return(invokingThreads.contains(thread));
+        }
+
+        private void simulateDelay(){
+            invokingThreads.add(Thread.currentThread());
+            try {
+                Thread.sleep(delayInMillis);
+                if(gate != null){
+                    gate.await();
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Cancelled");
+            }
+        }
+
+        @Override
+        public ResourceSoTConduitActionResponse getResourceViaIdentifier(Identifier identifier) {
+            simulateDelay();
+            return(buildResponse(identifier));
+        }
+
+        @Override
+        public String getConduitName() {
+            return (conduitName);
+        }
+
+        @Override
+        public String getConduitVersion() {
+            return ("1.0.0");
+        }
+
+        @Override
+        public ResourceSoTConduitActionResponse reviewResource(IdType id) {
+            simulateDelay();
+            return(buildResponse(buildIdentifier()));
+        }
+
+        @Override
+        public ResourceSoTConduitActionResponse createResource(Resource resourceToCreate) {
+            return(write(VirtualDBActionTypeEnum.CREATE, VirtualDBActionStatusEnum.CREATION_FINISH));
+        }
+
+        @Override
+        public ResourceSoTConduitActionResponse updateResource(Resource resourceToUpdate) {
+            return(write(VirtualDBActionTypeEnum.UPDATE, VirtualDBActionStatusEnum.UPDATE_FINISH));
+        }
+
+        private ResourceSoTConduitActionResponse write(VirtualDBActionTypeEnum action, VirtualDBActionStatusEnum status){
+            simulateDelay();
+            if(throwing){
+                throw new IllegalStateException("Write refused by " + conduitName);
+            }
+            ResourceSoTConduitActionResponse response = buildResponse(buildIdentifier());
+            response.setCausalAction(action);
+            response.setStatusEnum(status);
+            return(response);
+        }
+
+        @Override
+        public ResourceSoTConduitActionResponse deleteResource(Resource resourceToDelete) {
+            return (null);
+        }
+
+        @Override
+        public List<ResourceSoTConduitSearchResponseElement> searchSourceOfTruthUsingCriteria(ResourceType resourceType, SearchNameEnum searchName, Map<Property, Serializable> parameterSet) {
+            return (new ArrayList<>());
+        }
+
+        @Override
+        public boolean supportiveOfSearch(SearchNameEnum searchName) {
+            return (false);
+        }
+
+        @Override
+        public boolean supportsDirectCreateAction(Resource wholeResource) {
+            return (true);
+        }
+
+        @Override
+        public boolean supportsDirectUpdateAction(Resource wholeResource) {
+            return (true);
+        }
+
+        @Override
+        public boolean supportsDirectDeleteAction(Resource wholeResource) {
+            return (true);
+        }
+
+        @Override
+        protected void registerWithSoTCConduitController() {
+        }
+
+        @Override
+        protected Logger getLogger() {
+            return (CONDUIT_LOG);
+        }
+
+        @Override
+        protected Identifier getBestIdentifier(MethodOutcome outcome) {
+            return (null);
+        }
+
+        @Override
+        protected void doSubclassInitialisations() {
+        }
+
+        @Override
+        protected String specifySourceOfTruthEndpointSystemName() {
+            return (conduitName);
+        }
+
+        @Override
+        protected String specifySourceOfTruthOwningOrganization() {
+            return ("TestOrganization");
+        }
+    }
+}
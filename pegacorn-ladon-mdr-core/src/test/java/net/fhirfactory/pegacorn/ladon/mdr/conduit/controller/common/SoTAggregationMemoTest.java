@@ -0,0 +1,146 @@
+package net.fhirfactory.pegacorn.ladon.mdr.conduit.controller.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.mdr.ResourceSoTConduitActionResponse;
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.operations.VirtualDBActionStatusEnum;
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.operations.VirtualDBActionTypeEnum;
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.operations.VirtualDBMethodOutcome;
+import net.fhirfactory.pegacorn.ladon.model.virtualdb.operations.VirtualDBMethodOutcomeFactory;
+import net.fhirfactory.pegacorn.petasos.model.itops.PegacornFunctionStatusEnum;
+import org.hl7.fhir.r4.model.Identifier;
+import org.hl7.fhir.r4.model.OperationOutcome;
+import org.hl7.fhir.r4.model.Patient;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Checks that SoTAggregationMemo only skips the merge while every contributing conduit reports the same version, and
+ * that it stays within its bound.
+ */
+public class SoTAggregationMemoTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SoTAggregationMemoTest.class);
+
+    private static final Identifier MRN = new Identifier().setSystem("http://example.org/identifiers/mrn").setValue("MRN-1");
+
+    private final AtomicInteger mergeCount = new AtomicInteger();
+
+    private final Function<List<ResourceSoTConduitActionResponse>, VirtualDBMethodOutcome> aggregator = responses -> {
+        mergeCount.incrementAndGet();
+        VirtualDBMethodOutcome outcome = new VirtualDBMethodOutcome();
+        outcome.setCausalAction(VirtualDBActionTypeEnum.REVIEW);
+        outcome.setStatusEnum(VirtualDBActionStatusEnum.REVIEW_FINISH);
+        Patient merged = new Patient();
+        for(ResourceSoTConduitActionResponse response: responses){
+            merged.addName().setFamily(((Patient)response.getResource()).getNameFirstRep().getFamily());
+        }
+        outcome.setResource(merged);
+        OperationOutcome opOutcome = new OperationOutcome();
+        opOutcome.addIssue().setSeverity(OperationOutcome.IssueSeverity.INFORMATION).setCode(OperationOutcome.IssueType.INFORMATIONAL);
+        outcome.setOperationOutcome(opOutcome);
+        outcome.setIdentifier(MRN.copy());
+        return(outcome);
+    };
+
+    @Test
+    public void unchangedContributionsReturnTheMemoisedMerge() {
+        LOG.debug(".unchangedContributionsReturnTheMemoisedMerge(): Entry");
+        SoTAggregationMemo memo = new SoTAggregationMemo(10);
+        VirtualDBMethodOutcome first = memo.getOrAggregate(SoTAggregationMemo.identifierKey(MRN), responses("1", "7"), aggregator);
+        VirtualDBMethodOutcome second = memo.getOrAggregate(SoTAggregationMemo.identifierKey(MRN), responses("1", "7"), aggregator);
+        assertEquals(1, mergeCount.get());
+        assertNotSame(first.getResource(), second.getResource());
+        assertTrue(((Patient)first.getResource()).equalsDeep((Patient)second.getResource()));
+        assertEquals(1, memo.getStatistics().getHitCount());
+        assertEquals(1, memo.getStatistics().getMissCount());
+        assertEquals(0.5, memo.getStatistics().getHitRate(), 0.0);
+    }
+
+    @Test
+    public void issuesAddedToAnOutcomeDoNotReachLaterHits() {
+        LOG.debug(".issuesAddedToAnOutcomeDoNotReachLaterHits(): Entry");
+        SoTAggregationMemo memo = new SoTAggregationMemo(10);
+        VirtualDBMethodOutcome first = memo.getOrAggregate(SoTAggregationMemo.identifierKey(MRN), responses("1", "7"), aggregator);
+        // As recordIncompleteConduits does when a (third) conduit timed out on the first read
+        new VirtualDBMethodOutcomeFactory().addWarningIssue(first, "PatientSoTConduitController::conduit-c", OperationOutcome.IssueType.TIMEOUT, "MSG_TIMEOUT", "Source of Truth conduit conduit-c timed out");
+        ((Patient)first.getResource()).addName().setFamily("Modified");
+        VirtualDBMethodOutcome second = memo.getOrAggregate(SoTAggregationMemo.identifierKey(MRN), responses("1", "7"), aggregator);
+        assertEquals(1, mergeCount.get());
+        assertEquals(2, ((OperationOutcome)first.getOperationOutcome()).getIssue().size());
+        assertEquals(1, ((OperationOutcome)second.getOperationOutcome()).getIssue().size());
+        assertEquals(OperationOutcome.IssueType.INFORMATIONAL, ((OperationOutcome)second.getOperationOutcome()).getIssueFirstRep().getCode());
+        assertEquals(2, ((Patient)second.getResource()).getName().size());
+    }
+
+    @Test
+    public void identifierChangedOnAnOutcomeDoesNotReachLaterHits() {
+        LOG.debug(".identifierChangedOnAnOutcomeDoesNotReachLaterHits(): Entry");
+        SoTAggregationMemo memo = new SoTAggregationMemo(10);
+        VirtualDBMethodOutcome first = memo.getOrAggregate(SoTAggregationMemo.identifierKey(MRN), responses("1", "7"), aggregator);
+        first.getIdentifier().setValue("Modified");
+        VirtualDBMethodOutcome second = memo.getOrAggregate(SoTAggregationMemo.identifierKey(MRN), responses("1", "7"), aggregator);
+        assertEquals(1, mergeCount.get());
+        assertNotSame(first.getIdentifier(), second.getIdentifier());
+        assertEquals(MRN.getValue(), second.getIdentifier().getValue());
+    }
+
+    @Test
+    public void aMovedContributionIsMergedAgain() {
+        LOG.debug(".aMovedContributionIsMergedAgain(): Entry");
+        SoTAggregationMemo memo = new SoTAggregationMemo(10);
+        memo.getOrAggregate(SoTAggregationMemo.identifierKey(MRN), responses("1", "7"), aggregator);
+        memo.getOrAggregate(SoTAggregationMemo.identifierKey(MRN), responses("1", "8"), aggregator);
+        memo.getOrAggregate(SoTAggregationMemo.identifierKey(MRN), responses("1", "8"), aggregator);
+        assertEquals(2, mergeCount.get());
+        assertEquals(1, memo.getStatistics().getHitCount());
+    }
+
+    @Test
+    public void unversionedContributionsBypassTheMemo() {
+        LOG.debug(".unversionedContributionsBypassTheMemo(): Entry");
+        SoTAggregationMemo memo = new SoTAggregationMemo(10);
+        memo.getOrAggregate(SoTAggregationMemo.identifierKey(MRN), responses("1", null), aggregator);
+        memo.getOrAggregate(SoTAggregationMemo.identifierKey(MRN), responses("1", null), aggregator);
+        assertEquals(2, mergeCount.get());
+        assertEquals(2, memo.getStatistics().getBypassCount());
+        assertEquals(0, memo.size());
+    }
+
+    @Test
+    public void theMemoStaysWithinItsBound() {
+        LOG.debug(".theMemoStaysWithinItsBound(): Entry");
+        SoTAggregationMemo memo = new SoTAggregationMemo(2);
+        for(int counter = 0; counter < 5; counter++){
+            Identifier identifier = new Identifier().setSystem(MRN.getSystem()).setValue("MRN-" + counter);
+            memo.getOrAggregate(SoTAggregationMemo.identifierKey(identifier), responses("1"), aggregator);
+        }
+        assertEquals(2, memo.size());
+        assertEquals(3, memo.getStatistics().getEvictionCount());
+    }
+
+    private static List<ResourceSoTConduitActionResponse> responses(String... versionIds){
+        List<ResourceSoTConduitActionResponse> responses = new ArrayList<>();
+        for(int counter = 0; counter < versionIds.length; counter++){
+            Patient patient = new Patient();
+            patient.addIdentifier(MRN.copy());
+            patient.addName().setFamily("Conduit" + counter);
+            if(versionIds[counter] != null){
+                patient.getMeta().setVersionId(versionIds[counter]);
+            }
+            ResourceSoTConduitActionResponse response = new ResourceSoTConduitActionResponse("Conduit" + counter, PegacornFunctionStatusEnum.FUNCTION_STATUS_OK);
+            response.setStatusEnum(VirtualDBActionStatusEnum.REVIEW_FINISH);
+            response.setResource(patient);
+            responses.add(response);
+        }
+        return(responses);
+    }
+}
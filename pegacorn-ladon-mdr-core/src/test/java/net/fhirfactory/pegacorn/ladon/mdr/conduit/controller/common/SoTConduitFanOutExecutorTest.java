@@ -0,0 +1,95 @@
+package net.fhirfactory.pegacorn.ladon.mdr.conduit.controller.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Checks that a saturated SoTConduitFanOutExecutor rejects further conduit invocations rather than running them on
+ * the calling thread.
+ */
+public class SoTConduitFanOutExecutorTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SoTConduitFanOutExecutorTest.class);
+
+    private SoTConduitFanOutExecutor fanOutExecutor;
+    private CountDownLatch releaseLatch;
+
+    @Before
+    public void setUp() {
+        fanOutExecutor = new SoTConduitFanOutExecutor(1, 1);
+        releaseLatch = new CountDownLatch(1);
+    }
+
+    @After
+    public void tearDown() {
+        releaseLatch.countDown();
+        fanOutExecutor.shutdown();
+    }
+
+    @Test
+    public void invocationsRunOnThePool() throws Exception {
+        LOG.debug(".invocationsRunOnThePool(): Entry");
+        Thread callingThread = Thread.currentThread();
+        Future<Thread> invokingThread = fanOutExecutor.submit(() -> Thread.currentThread());
+        assertNotSame(callingThread, invokingThread.get(1, TimeUnit.SECONDS));
+        assertEquals(0, fanOutExecutor.getRejectedCount());
+    }
+
+    @Test
+    public void saturatedPoolRejectsRatherThanRunningInline() throws Exception {
+        LOG.debug(".saturatedPoolRejectsRatherThanRunningInline(): Entry");
+        CountDownLatch startedLatch = new CountDownLatch(1);
+        fanOutExecutor.submit(() -> {
+            startedLatch.countDown();
+            return(releaseLatch.await(5, TimeUnit.SECONDS));
+        });
+        assertTrue(startedLatch.await(1, TimeUnit.SECONDS));
+        Future<Boolean> queuedInvocation = fanOutExecutor.submit(() -> Boolean.TRUE);
+        AtomicBoolean ranInline = new AtomicBoolean();
+        try {
+            fanOutExecutor.submit(() -> {
+                ranInline.set(true);
+                return(releaseLatch.await(5, TimeUnit.SECONDS));
+            });
+            fail("A saturated fan-out pool should reject the invocation");
+        } catch(RejectedExecutionException ex){
+            // expected
+        }
+        assertEquals(false, ranInline.get());
+        assertEquals(1, fanOutExecutor.getRejectedCount());
+
+        releaseLatch.countDown();
+        assertEquals(Boolean.TRUE, queuedInvocation.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void poolAcceptsInvocationsOnceDrained() throws Exception {
+        LOG.debug(".poolAcceptsInvocationsOnceDrained(): Entry");
+        CountDownLatch startedLatch = new CountDownLatch(1);
+        Future<Boolean> blockingInvocation = fanOutExecutor.submit(() -> {
+            startedLatch.countDown();
+            return(releaseLatch.await(5, TimeUnit.SECONDS));
+        });
+        assertTrue(startedLatch.await(1, TimeUnit.SECONDS));
+        Future<Boolean> queuedInvocation = fanOutExecutor.submit(() -> Boolean.TRUE);
+        releaseLatch.countDown();
+        assertEquals(Boolean.TRUE, blockingInvocation.get(1, TimeUnit.SECONDS));
+        assertEquals(Boolean.TRUE, queuedInvocation.get(1, TimeUnit.SECONDS));
+        assertEquals(Boolean.TRUE, fanOutExecutor.submit(() -> Boolean.TRUE).get(1, TimeUnit.SECONDS));
+        assertEquals(0, fanOutExecutor.getRejectedCount());
+    }
+}
@@ -0,0 +1,192 @@
+package net.fhirfactory.pegacorn.ladon.mdr.conduit.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.DocumentReference;
+import org.hl7.fhir.r4.model.OperationOutcome;
+import org.hl7.fhir.r4.model.Resource;
+import org.hl7.fhir.r4.model.ResourceType;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class SoTSearchResultStreamTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SoTSearchResultStreamTest.class);
+
+    private static final int PAGE_SIZE = 10;
+    private static final int PAGE_COUNT = 5;
+    private static final long SETTLE_TIME_IN_MILLIS = 200;
+
+    private ExecutorService pageFetchExecutor;
+
+    @Before
+    public void startExecutor() {
+        pageFetchExecutor = Executors.newFixedThreadPool(2);
+    }
+
+    @After
+    public void stopExecutor() {
+        pageFetchExecutor.shutdownNow();
+    }
+
+    @Test
+    public void followsEveryNextLink() {
+        LOG.debug(".followsEveryNextLink(): Entry");
+        PagedServer server = new PagedServer(PAGE_COUNT);
+        try(SoTSearchResultStream results = new SoTSearchResultStream(server.firstPage(), server, pageFetchExecutor, 2, SoTSearchResultStream.NO_RESULT_LIMIT, ResourceType.DocumentReference)) {
+            List<String> ids = results.stream().map(resource -> resource.getIdElement().getIdPart()).collect(Collectors.toList());
+            assertEquals(PAGE_SIZE * PAGE_COUNT, ids.size());
+            assertEquals("doc-0", ids.get(0));
+            assertEquals("doc-" + (PAGE_SIZE * PAGE_COUNT - 1), ids.get(ids.size() - 1));
+            assertEquals(PAGE_COUNT, results.getFetchedPageCount());
+        }
+    }
+
+    @Test
+    public void skipsEntriesOfOtherTypes() {
+        LOG.debug(".skipsEntriesOfOtherTypes(): Entry");
+        PagedServer server = new PagedServer(1);
+        Bundle firstPage = server.firstPage();
+        firstPage.addEntry().setResource(new OperationOutcome());
+        try(SoTSearchResultStream results = new SoTSearchResultStream(firstPage, server, null, 0, SoTSearchResultStream.NO_RESULT_LIMIT, ResourceType.DocumentReference)) {
+            assertEquals(PAGE_SIZE, results.stream().count());
+        }
+    }
+
+    @Test
+    public void stopsFetchingAtTheResultLimit() {
+        LOG.debug(".stopsFetchingAtTheResultLimit(): Entry");
+        PagedServer server = new PagedServer(PAGE_COUNT);
+        try(SoTSearchResultStream results = new SoTSearchResultStream(server.firstPage(), server, null, 0, PAGE_SIZE + 5, ResourceType.DocumentReference)) {
+            assertEquals(PAGE_SIZE + 5, results.stream().count());
+        }
+        assertEquals(1, server.getLoadCount());
+    }
+
+    @Test
+    public void prefetchIsBoundedByPagesInFlight() throws Exception {
+        LOG.debug(".prefetchIsBoundedByPagesInFlight(): Entry");
+        PagedServer server = new PagedServer(PAGE_COUNT);
+        try(SoTSearchResultStream results = new SoTSearchResultStream(server.firstPage(), server, pageFetchExecutor, 2, SoTSearchResultStream.NO_RESULT_LIMIT, ResourceType.DocumentReference)) {
+            Thread.sleep(SETTLE_TIME_IN_MILLIS);
+            assertTrue(results.getReadyPageCount() <= 2);
+            assertEquals(1, server.getLoadCount());
+            assertTrue(results.hasNext());
+            Thread.sleep(SETTLE_TIME_IN_MILLIS);
+            assertEquals(2, server.getLoadCount());
+        }
+    }
+
+    @Test
+    public void closingStopsTheSearch() throws Exception {
+        LOG.debug(".closingStopsTheSearch(): Entry");
+        PagedServer server = new PagedServer(PAGE_COUNT);
+        SoTSearchResultStream results = new SoTSearchResultStream(server.firstPage(), server, null, 0, SoTSearchResultStream.NO_RESULT_LIMIT, ResourceType.DocumentReference);
+        Resource first = results.next();
+        assertEquals("doc-0", first.getIdElement().getIdPart());
+        results.close();
+        assertFalse(results.hasNext());
+        assertEquals(0, server.getLoadCount());
+    }
+
+    @Test
+    public void pageFailureIsRaisedToTheConsumer() {
+        LOG.debug(".pageFailureIsRaisedToTheConsumer(): Entry");
+        PagedServer server = new PagedServer(PAGE_COUNT);
+        Function<Bundle, Bundle> failingLoader = page -> {
+            throw(new IllegalStateException("server unavailable"));
+        };
+        try(SoTSearchResultStream results = new SoTSearchResultStream(server.firstPage(), failingLoader, pageFetchExecutor, 1, SoTSearchResultStream.NO_RESULT_LIMIT, ResourceType.DocumentReference)) {
+            for(int counter = 0; counter < PAGE_SIZE; counter++){
+                results.next();
+            }
+            results.hasNext();
+            fail("The page failure should have been raised");
+        } catch(IllegalStateException expected){
+            assertEquals("server unavailable", expected.getMessage());
+        }
+    }
+
+    @Test
+    public void saturatedPrefetchPoolFallsBackToTheRequestingThread() throws Exception {
+        LOG.debug(".saturatedPrefetchPoolFallsBackToTheRequestingThread(): Entry");
+        SoTSearchPageFetchExecutor saturatedExecutor = new SoTSearchPageFetchExecutor(1, 1);
+        CountDownLatch releaseBlockers = new CountDownLatch(1);
+        try {
+            // Occupies the only prefetch thread and the only queue slot
+            for(int counter = 0; counter < 2; counter++){
+                saturatedExecutor.execute(() -> {
+                    try {
+                        releaseBlockers.await();
+                    } catch(InterruptedException interrupted){
+                        Thread.currentThread().interrupt();
+                    }
+                });
+            }
+            PagedServer server = new PagedServer(PAGE_COUNT);
+            try(SoTSearchResultStream results = new SoTSearchResultStream(server.firstPage(), server, saturatedExecutor, 2, SoTSearchResultStream.NO_RESULT_LIMIT, ResourceType.DocumentReference)) {
+                assertEquals(PAGE_SIZE * PAGE_COUNT, results.stream().count());
+            }
+            assertEquals(PAGE_COUNT - 1, server.getLoadCount());
+        } finally {
+            releaseBlockers.countDown();
+            saturatedExecutor.shutdown();
+        }
+    }
+
+    /**
+     * Stands in for the SoT server: pages of PAGE_SIZE DocumentReferences, linked by "next" links.
+     */
+    static class PagedServer implements Function<Bundle, Bundle> {
+        private final int pageCount;
+        private final AtomicInteger loadCount = new AtomicInteger();
+
+        PagedServer(int pageCount){
+            this.pageCount = pageCount;
+        }
+
+        public int getLoadCount() {
+            return loadCount.get();
+        }
+
+        public Bundle firstPage() {
+            return(buildPage(0));
+        }
+
+        @Override
+        public Bundle apply(Bundle page) {
+            loadCount.incrementAndGet();
+            int pageNumber = Integer.parseInt(page.getLink(Bundle.LINK_NEXT).getUrl().substring("page-".length()));
+            return(buildPage(pageNumber));
+        }
+
+        private Bundle buildPage(int pageNumber){
+            Bundle page = new Bundle();
+            page.setType(Bundle.BundleType.SEARCHSET);
+            for(int counter = 0; counter < PAGE_SIZE; counter++){
+                DocumentReference documentReference = new DocumentReference();
+                documentReference.setId("doc-" + (pageNumber * PAGE_SIZE + counter));
+                page.addEntry().setResource(documentReference);
+            }
+            if(pageNumber + 1 < pageCount){
+                page.addLink().setRelation(Bundle.LINK_NEXT).setUrl("page-" + (pageNumber + 1));
+            }
+            return(page);
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package net.fhirfactory.pegacorn.ladon.mdr.conduit.core.codec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.rest.client.api.IGenericClient;
+import ca.uhn.fhir.rest.client.api.ServerValidationModeEnum;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.ContactPoint;
+import org.hl7.fhir.r4.model.Enumerations;
+import org.hl7.fhir.r4.model.Patient;
+
+/**
+ * A (manually run) benchmark of actual HAPI fluent client requests, comparing the previous requests (pretty printed,
+ * via .prettyPrint() on each request) with those of a client configured by the FHIRWireCodec (compact, with and without the gzip compression of the
+ * FHIRWireCompressionInterceptor). The requests - an update of a single Patient and a 50 entry transaction Bundle -
+ * are sent over HTTP to an in-process server, which counts the request body bytes it receives (i.e. those on the
+ * wire, after any compression). It reports the bytes on the wire and the requests per second of each.
+ *
+ * Run with: mvn -pl pegacorn-ladon-mdr-core test-compile exec:java -Dexec.classpathScope=test
+ *     -Dexec.mainClass=net.fhirfactory.pegacorn.ladon.mdr.conduit.core.codec.FHIRWireCodecBenchmark
+ */
+public class FHIRWireCodecBenchmark {
+
+    private static final int WARMUP_ITERATIONS = 2000;
+    private static final int MEASURED_ITERATIONS = 10000;
+    private static final int BUNDLE_ENTRY_COUNT = 50;
+
+    private static final FhirContext FHIR_CONTEXT = FhirContext.forR4();
+
+    public static void main(String[] args) throws Exception {
+        FHIR_CONTEXT.getRestfulClientFactory().setServerValidationMode(ServerValidationModeEnum.NEVER);
+        // Otherwise the server's delayed ACKs, not the requests, dominate the timings
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        WireCountingServer server = new WireCountingServer();
+        try {
+            Patient patient = buildPatient(0);
+            Bundle bundle = new Bundle();
+            bundle.setType(Bundle.BundleType.TRANSACTION);
+            for(int counter = 0; counter < BUNDLE_ENTRY_COUNT; counter++){
+                bundle.addEntry().setResource(buildPatient(counter)).getRequest().setMethod(Bundle.HTTPVerb.PUT).setUrl("Patient/" + counter);
+            }
+            runComparison(server, "Patient", (client, prettyPrint) -> {
+                if(prettyPrint){
+                    client.update().resource(patient).prettyPrint().encodedJson().execute();
+                } else {
+                    client.update().resource(patient).encodedJson().execute();
+                }
+            }, MEASURED_ITERATIONS);
+            runComparison(server, "Bundle(" + BUNDLE_ENTRY_COUNT + ")", (client, prettyPrint) -> {
+                if(prettyPrint){
+                    client.transaction().withBundle(bundle).prettyPrint().encodedJson().execute();
+                } else {
+                    client.transaction().withBundle(bundle).encodedJson().execute();
+                }
+            }, MEASURED_ITERATIONS / 10);
+        } finally {
+            server.stop();
+        }
+    }
+
+    private static void runComparison(WireCountingServer server, String label, BiConsumer<IGenericClient, Boolean> request, int iterations){
+        IGenericClient previousClient = server.newClient();
+        IGenericClient compactClient = new BenchmarkCodec(false).configureClient(server.newClient());
+        IGenericClient compressedClient = new BenchmarkCodec(true).configureClient(server.newClient());
+        measure(server, previousClient, true, request, WARMUP_ITERATIONS);
+        measure(server, compactClient, false, request, WARMUP_ITERATIONS);
+        measure(server, compressedClient, false, request, WARMUP_ITERATIONS);
+        report(label, "previous (pretty)", measure(server, previousClient, true, request, iterations), server, iterations);
+        report(label, "codec (compact)", measure(server, compactClient, false, request, iterations), server, iterations);
+        report(label, "codec (compact, gzip)", measure(server, compressedClient, false, request, iterations), server, iterations);
+    }
+
+    private static long measure(WireCountingServer server, IGenericClient client, boolean prettyPrint, BiConsumer<IGenericClient, Boolean> request, int iterations){
+        server.reset();
+        long startTime = System.nanoTime();
+        for(int counter = 0; counter < iterations; counter++){
+            request.accept(client, prettyPrint);
+        }
+        return(System.nanoTime() - startTime);
+    }
+
+    private static void report(String label, String path, long elapsedNanos, WireCountingServer server, int iterations){
+        double requestsPerSecond = iterations / (elapsedNanos / 1.0e9);
+        System.out.printf("%-12s %-24s %8d bytes/request %10.0f requests/s%n", label, path, server.getBodyBytes() / iterations, requestsPerSecond);
+    }
+
+    private static Patient buildPatient(int index){
+        Patient patient = new Patient();
+        patient.setId("Patient/" + index);
+        patient.getMeta().setVersionId("3");
+        patient.addIdentifier().setSystem("http://example.org/identifiers/mrn").setValue("MRN-" + index);
+        patient.addIdentifier().setSystem("http://example.org/identifiers/medicare").setValue("2950" + index);
+        patient.addName().setFamily("Citizen").addGiven("Jane").addGiven("Q");
+        patient.addTelecom().setSystem(ContactPoint.ContactPointSystem.PHONE).setValue("02 6200 0000").setUse(ContactPoint.ContactPointUse.HOME);
+        patient.addAddress().addLine("1 Example Street").setCity("Canberra").setState("ACT").setPostalCode("2600").setCountry("AU");
+        patient.setGender(Enumerations.AdministrativeGender.FEMALE);
+        patient.setActive(true);
+        return(patient);
+    }
+
+    /**
+     * The FHIRWireCodec, with request compression fixed (rather than taken from the system property).
+     */
+    static class BenchmarkCodec extends FHIRWireCodec {
+        private boolean requestCompression;
+
+        BenchmarkCodec(boolean requestCompression){
+            this.requestCompression = requestCompression;
+            initialise();
+        }
+
+        @Override
+        protected boolean specifyRequestCompression() {
+            return (requestCompression);
+        }
+    }
+
+    /**
+     * Stands in for the FHIR server: counts the request body bytes received and answers with a minimal response.
+     */
+    static class WireCountingServer {
+        private static final byte[] TRANSACTION_RESPONSE = "{\"resourceType\":\"Bundle\",\"type\":\"transaction-response\"}".getBytes(StandardCharsets.UTF_8);
+        private static final byte[] UPDATE_RESPONSE = "{\"resourceType\":\"OperationOutcome\"}".getBytes(StandardCharsets.UTF_8);
+
+        private HttpServer httpServer;
+        private ExecutorService httpExecutor;
+        private AtomicLong bodyBytes = new AtomicLong();
+
+        WireCountingServer() throws IOException {
+            httpServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            httpServer.createContext("/fhir", this::handle);
+            httpExecutor = Executors.newFixedThreadPool(4);
+            httpServer.setExecutor(httpExecutor);
+            httpServer.start();
+        }
+
+        IGenericClient newClient(){
+            return(FHIR_CONTEXT.newRestfulGenericClient("http://127.0.0.1:" + httpServer.getAddress().getPort() + "/fhir"));
+        }
+
+        long getBodyBytes(){
+            return(bodyBytes.get());
+        }
+
+        void reset(){
+            bodyBytes.set(0);
+        }
+
+        void stop(){
+            httpServer.stop(0);
+            httpExecutor.shutdown();
+        }
+
+        private void handle(HttpExchange exchange) throws IOException {
+            byte[] buffer = new byte[8192];
+            try(InputStream requestBody = exchange.getRequestBody()){
+                int read;
+                while((read = requestBody.read(buffer)) >= 0){
+                    bodyBytes.addAndGet(read);
+                }
+            }
+            byte[] response = exchange.getRequestURI().getPath().endsWith("/fhir") ? TRANSACTION_RESPONSE : UPDATE_RESPONSE;
+            exchange.getResponseHeaders().add("Content-Type", "application/fhir+json;charset=utf-8");
+            exchange.sendResponseHeaders(200, response.length);
+            try(OutputStream responseBody = exchange.getResponseBody()){
+                responseBody.write(response);
+            }
+        }
+    }
+}
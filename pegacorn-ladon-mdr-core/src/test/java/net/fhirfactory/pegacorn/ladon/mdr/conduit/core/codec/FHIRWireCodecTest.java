@@ -0,0 +1,83 @@
+package net.fhirfactory.pegacorn.ladon.mdr.conduit.core.codec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.zip.GZIPInputStream;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.api.EncodingEnum;
+import ca.uhn.fhir.rest.client.api.IGenericClient;
+import ca.uhn.fhir.rest.client.apache.ApacheHttpRequest;
+import ca.uhn.fhir.rest.client.impl.BaseClient;
+import org.apache.http.client.entity.GzipCompressingEntity;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.hl7.fhir.r4.model.Enumerations;
+import org.hl7.fhir.r4.model.Patient;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class FHIRWireCodecTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(FHIRWireCodecTest.class);
+
+    private static final FhirContext FHIR_CONTEXT = FhirContext.forR4();
+    private static final int COMPRESSION_THRESHOLD = 64;
+
+    @Test
+    public void clientIsConfiguredForCompactJson() {
+        LOG.debug(".clientIsConfiguredForCompactJson(): Entry");
+        FHIRWireCodec codec = new FHIRWireCodec();
+        codec.initialise();
+        IGenericClient client = FHIR_CONTEXT.newRestfulGenericClient("http://localhost:8080/fhir");
+        client.setPrettyPrint(true);
+        assertSame(client, codec.configureClient(client));
+        assertFalse(((BaseClient)client).isPrettyPrint());
+        assertEquals(EncodingEnum.JSON, client.getEncoding());
+    }
+
+    @Test
+    public void largeRequestBodiesAreCompressed() throws Exception {
+        LOG.debug(".largeRequestBodiesAreCompressed(): Entry");
+        String body = FHIR_CONTEXT.newJsonParser().encodeResourceToString(buildPatient());
+        HttpPost post = buildPost(body);
+        new FHIRWireCompressionInterceptor(COMPRESSION_THRESHOLD).interceptRequest(new ApacheHttpRequest(null, post));
+        assertTrue(post.getEntity() instanceof GzipCompressingEntity);
+        assertEquals(Constants.ENCODING_GZIP, post.getFirstHeader(Constants.HEADER_ACCEPT_ENCODING).getValue());
+        ByteArrayOutputStream written = new ByteArrayOutputStream();
+        post.getEntity().writeTo(written);
+        Patient decoded = FHIR_CONTEXT.newJsonParser().parseResource(Patient.class, new GZIPInputStream(new ByteArrayInputStream(written.toByteArray())));
+        assertTrue(buildPatient().equalsDeep(decoded));
+    }
+
+    @Test
+    public void smallRequestBodiesAreSentAsIs() {
+        LOG.debug(".smallRequestBodiesAreSentAsIs(): Entry");
+        HttpPost post = buildPost("{\"resourceType\":\"Patient\"}");
+        new FHIRWireCompressionInterceptor(COMPRESSION_THRESHOLD).interceptRequest(new ApacheHttpRequest(null, post));
+        assertTrue(post.getEntity() instanceof StringEntity);
+    }
+
+    private static HttpPost buildPost(String body){
+        HttpPost post = new HttpPost("http://localhost:8080/fhir/Patient");
+        post.setEntity(new StringEntity(body, ContentType.APPLICATION_JSON));
+        return(post);
+    }
+
+    private static Patient buildPatient(){
+        Patient patient = new Patient();
+        patient.setId("Patient/123");
+        patient.addIdentifier().setSystem("http://example.org/mrn").setValue("MRN-0001");
+        patient.addName().setFamily("Citizen").addGiven("Jane");
+        patient.setGender(Enumerations.AdministrativeGender.FEMALE);
+        return(patient);
+    }
+}
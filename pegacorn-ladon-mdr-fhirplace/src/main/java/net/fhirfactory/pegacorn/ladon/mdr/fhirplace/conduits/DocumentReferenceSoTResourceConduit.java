@@ -41,9 +41,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import ca.uhn.fhir.rest.api.MethodOutcome;
+import ca.uhn.fhir.rest.gclient.IQuery;
 import ca.uhn.fhir.rest.param.DateRangeParam;
 import ca.uhn.fhir.rest.param.TokenParam;
 import net.fhirfactory.pegacorn.ladon.mdr.conduit.controller.DocumentReferenceSoTConduitController;
+import net.fhirfactory.pegacorn.ladon.mdr.conduit.core.SoTSearchResultStream;
 import net.fhirfactory.pegacorn.ladon.mdr.fhirplace.accessor.FHIRPlaceFoundationDocumentsMDRAccessor;
 import net.fhirfactory.pegacorn.ladon.mdr.fhirplace.conduits.common.FHIRPlaceSoTConduitCommon;
 import net.fhirfactory.pegacorn.ladon.model.virtualdb.businesskey.VirtualDBKeyManagement;
@@ -198,9 +200,14 @@ public class DocumentReferenceSoTResourceConduit extends FHIRPlaceSoTConduitComm
 
     @Override
     public List<ResourceSoTConduitSearchResponseElement> searchSourceOfTruthUsingCriteria(ResourceType resourceType, SearchNameEnum searchName, Map<Property, Serializable> parameterSet) {
+        return(searchSourceOfTruthUsingCriteria(resourceType, searchName, parameterSet, specifyDefaultSearchResultLimit()));
+    }
+
+    @Override
+    public List<ResourceSoTConduitSearchResponseElement> searchSourceOfTruthUsingCriteria(ResourceType resourceType, SearchNameEnum searchName, Map<Property, Serializable> parameterSet, int resultLimit) {
         ArrayList<ResourceSoTConduitSearchResponseElement> resourceList = new ArrayList<ResourceSoTConduitSearchResponseElement>();
         if(searchName.equals(SearchNameEnum.DOCUMENT_REFERENCE_DATE_AND_TYPE)) {
-            resourceList.add(getDocumentReferenceByTypeAndDate(parameterSet));
+            resourceList.add(getDocumentReferenceByTypeAndDate(parameterSet, resultLimit));
         }
         return(resourceList);
     }
@@ -255,7 +262,7 @@ public class DocumentReferenceSoTResourceConduit extends FHIRPlaceSoTConduitComm
         return(isRightSearch);
     }
 
-    private ResourceSoTConduitSearchResponseElement getDocumentReferenceByTypeAndDate(Map<Property, Serializable> parameterSet){
+    private ResourceSoTConduitSearchResponseElement getDocumentReferenceByTypeAndDate(Map<Property, Serializable> parameterSet, int resultLimit){
         boolean hasDocumentReferenceTypeParam = false;
         boolean hasDocumentReferenceCreationDateParam = false;
         TokenParam documentReferenceTypeValue = null;
@@ -286,29 +293,25 @@ public class DocumentReferenceSoTResourceConduit extends FHIRPlaceSoTConduitComm
             //Todo this is empty, needs populating
             return (searchResponse);
         }
-        Bundle response = getFHIRPlaceShardClient()
+        IQuery<Bundle> query = getFHIRPlaceShardClient()
                 .search()
                 .forResource(DocumentReference.class)
                 .where(DocumentReference.DATE.after().millis(dateRangeParam.getLowerBoundAsInstant()))
                 .and(DocumentReference.DATE.beforeOrEquals().millis(dateRangeParam.getUpperBoundAsInstant()))
                 .and(DocumentReference.TYPE.exactly().systemAndCode(documentReferenceTypeValue.getSystem(), documentReferenceTypeValue.getValue()))
-                .returnBundle(Bundle.class)
-                .execute();
-
-        if(response == null){
-            //Todo this is empty, needs populating
-            return(searchResponse);
+                .returnBundle(Bundle.class);
+        try(SoTSearchResultStream results = streamSearch(query, resultLimit)) {
+            while (results.hasNext()) {
+                searchResponse.addResource(results.next());
+            }
+            if(results.getReturnedResourceCount() >= resultLimit){
+                LOG.warn(".getDocumentReferenceByTypeAndDate(): Result limit ({}) reached, any further matches were not fetched", resultLimit);
+            }
         }
-        if(response.getTotal() == 0){
+        if(searchResponse.getResources().isEmpty()){
             //Todo this is empty, needs populating
             return(searchResponse);
         }
-        for(Bundle.BundleEntryComponent entry: response.getEntry()){
-            Resource currentResource = entry.getResource();
-            if(currentResource.getResourceType() == ResourceType.DocumentReference){
-                searchResponse.addResource(currentResource);
-            }
-        }
         searchResponse.setResponseResourceGrade(ResourceGradeEnum.THOROUGH);
         searchResponse.setSoTConduitGrade(SoTConduitGradeEnum.AUTHORITATIVE);
         return(searchResponse);
@@ -78,7 +78,6 @@ public abstract class FHIRPlaceSoTConduitCommon extends SoTResourceConduitFuncti
         MethodOutcome callOutcome = getFHIRPlaceShardClient()
                 .create()
                 .resource(resourceToCreate)
-                .prettyPrint()
                 .encodedJson()
                 .execute();
         if(!callOutcome.getCreated()) {
@@ -104,7 +103,6 @@ public abstract class FHIRPlaceSoTConduitCommon extends SoTResourceConduitFuncti
         MethodOutcome callOutcome = getFHIRPlaceShardClient()
                 .update()
                 .resource(resourceToUpdate)
-                .prettyPrint()
                 .encodedJson()
                 .execute();
         if(!callOutcome.getCreated()) {
@@ -24,6 +24,8 @@ package net.fhirfactory.pegacorn.ladon.model.twin;
 import org.hl7.fhir.r4.model.IdType;
 import org.hl7.fhir.r4.model.Identifier;
 
+import java.util.Objects;
+
 public class DigitalTwinIdentifier {
     Identifier twinResource;
     Identifier twinRegentResource;
@@ -89,4 +91,46 @@ public class DigitalTwinIdentifier {
     public void setTwinRegentResourceId(IdType twinRegentResourceId) {
         this.twinRegentResourceId = twinRegentResourceId;
     }
+
+    /**
+     * Two DigitalTwinIdentifiers are equal if they have the same (system, value) Identifiers and the same ids, so
+     * that they can be used as (e.g. queue, lock) map keys.
+     */
+    @Override
+    public boolean equals(Object other) {
+        if(this == other){
+            return(true);
+        }
+        if(!(other instanceof DigitalTwinIdentifier)){
+            return(false);
+        }
+        DigitalTwinIdentifier otherTwin = (DigitalTwinIdentifier)other;
+        return(sameIdentifier(twinResource, otherTwin.twinResource)
+                && sameIdentifier(twinRegentResource, otherTwin.twinRegentResource)
+                && Objects.equals(idValue(twinResourceId), idValue(otherTwin.twinResourceId))
+                && Objects.equals(idValue(twinRegentResourceId), idValue(otherTwin.twinRegentResourceId)));
+    }
+
+    @Override
+    public int hashCode() {
+        return(Objects.hash(identifierSystem(twinResource), identifierValue(twinResource),
+                identifierSystem(twinRegentResource), identifierValue(twinRegentResource),
+                idValue(twinResourceId), idValue(twinRegentResourceId)));
+    }
+
+    private static boolean sameIdentifier(Identifier a, Identifier b){
+        return(Objects.equals(identifierSystem(a), identifierSystem(b)) && Objects.equals(identifierValue(a), identifierValue(b)));
+    }
+
+    private static String identifierSystem(Identifier identifier){
+        return((identifier == null) ? null : identifier.getSystem());
+    }
+
+    private static String identifierValue(Identifier identifier){
+        return((identifier == null) ? null : identifier.getValue());
+    }
+
+    private static String idValue(IdType id){
+        return((id == null) ? null : id.getValue());
+    }
 }
@@ -2,27 +2,70 @@ package net.fhirfactory.pegacorn.ladon.model.virtualdb.cache;
 
 import org.hl7.fhir.r4.model.Resource;
 
-import java.time.Instant;
 import java.util.Date;
 
 public class CacheResourceEntry {
-    private Date touchDate;
+    public static final long NO_EXPIRY = Long.MAX_VALUE;
+
+    private long touchTime;
+    private long retirementPeriodInMillis;
+    private long expiryDeadline;
     private Resource resource;
 
     public CacheResourceEntry(Resource resource){
+        this(resource, -1);
+    }
+
+    /**
+     * @param retirementPeriodInMillis How long after it is touched the entry expires (negative for NO_EXPIRY)
+     */
+    public CacheResourceEntry(Resource resource, long retirementPeriodInMillis){
         this.resource = resource;
-        touchDate = Date.from(Instant.now());
+        this.touchTime = System.currentTimeMillis();
+        this.retirementPeriodInMillis = retirementPeriodInMillis;
+        this.expiryDeadline = computeDeadline(this.touchTime, retirementPeriodInMillis);
     }
 
+    /**
+     * The time (milliseconds since the epoch) at which the entry was created or last touched.
+     */
+    public long getTouchTime() {
+        return touchTime;
+    }
+
+    /**
+     * The time (milliseconds since the epoch) after which the entry is no longer valid, or NO_EXPIRY.
+     */
+    public long getExpiryDeadline() {
+        return expiryDeadline;
+    }
+
+    public boolean isExpired(long now){
+        return(now > expiryDeadline);
+    }
+
+    @Deprecated
     public Date getTouchDate() {
-        return touchDate;
+        return new Date(touchTime);
     }
 
+    /**
+     * Moves the touch time, and with it the expiry deadline (which stays retirementPeriodInMillis after it).
+     */
+    @Deprecated
     public void setTouchDate(Date touchDate) {
-        this.touchDate = touchDate;
+        this.touchTime = touchDate.getTime();
+        this.expiryDeadline = computeDeadline(this.touchTime, this.retirementPeriodInMillis);
     }
 
     public Resource getResource() {
         return resource;
     }
+
+    private static long computeDeadline(long touchTime, long retirementPeriodInMillis){
+        if(retirementPeriodInMillis < 0 || touchTime > NO_EXPIRY - retirementPeriodInMillis){
+            return(NO_EXPIRY);
+        }
+        return(touchTime + retirementPeriodInMillis);
+    }
 }
@@ -44,6 +44,8 @@ public class ResourceSoTConduitActionResponse extends VirtualDBMethodOutcome imp
     private HashSet<String> authoritativeAttributes;
     private HashSet<String> informationalAttributes;
     private HashSet<String> anecdotalAttributes;
+    private SoTAttributePrecedence conduitAttributePrecedence;
+    private SoTAttributePrecedence attributePrecedence;
 
     public ResourceSoTConduitActionResponse(String sotName, PegacornFunctionStatusEnum functionStatus){
         super();
@@ -117,6 +119,7 @@ public class ResourceSoTConduitActionResponse extends VirtualDBMethodOutcome imp
     public void addAuthoritativeAttribute(String authoritativeAttribute){
         if(authoritativeAttribute != null){
             authoritativeAttributes.add(authoritativeAttribute);
+            attributePrecedence = null;
         }
     }
 
@@ -139,18 +142,21 @@ public class ResourceSoTConduitActionResponse extends VirtualDBMethodOutcome imp
     public void addInformationalAttribute(String informationalAttribute){
         if(informationalAttribute != null){
             informationalAttributes.add(informationalAttribute);
+            attributePrecedence = null;
         }
     }
 
     public void addAnecdotalAttribute(String anecdotalAttribute){
         if(anecdotalAttribute != null){
             anecdotalAttributes.add(anecdotalAttribute);
+            attributePrecedence = null;
         }
     }
 
     public void addImmutableAttribute(String immutableAttribute){
         if(immutableAttribute != null){
             immutableAttributes.add(immutableAttribute);
+            attributePrecedence = null;
         }
     }
 
@@ -160,6 +166,7 @@ public class ResourceSoTConduitActionResponse extends VirtualDBMethodOutcome imp
 
     public void setAuthoritativeAttributes(HashSet<String> authoritativeAttributes) {
         this.authoritativeAttributes = authoritativeAttributes;
+        this.attributePrecedence = null;
     }
 
     public HashSet<String> getInformationalAttributes() {
@@ -168,6 +175,7 @@ public class ResourceSoTConduitActionResponse extends VirtualDBMethodOutcome imp
 
     public void setInformationalAttributes(HashSet<String> informationalAttributes) {
         this.informationalAttributes = informationalAttributes;
+        this.attributePrecedence = null;
     }
 
     public HashSet<String> getAnecdotalAttributes() {
@@ -176,6 +184,7 @@ public class ResourceSoTConduitActionResponse extends VirtualDBMethodOutcome imp
 
     public void setAnecdotalAttributes(HashSet<String> anecdotalAttributes) {
         this.anecdotalAttributes = anecdotalAttributes;
+        this.attributePrecedence = null;
     }
 
     public HashSet<String> getImmutableAttributes() {
@@ -184,6 +193,32 @@ public class ResourceSoTConduitActionResponse extends VirtualDBMethodOutcome imp
 
     public void setImmutableAttributes(HashSet<String> immutableAttributes) {
         this.immutableAttributes = immutableAttributes;
+        this.attributePrecedence = null;
+    }
+
+    /**
+     * The attribute categories declared by the conduit that produced this response (compiled once, when the conduit
+     * registered with its controller).
+     */
+    public void setConduitAttributePrecedence(SoTAttributePrecedence conduitAttributePrecedence) {
+        this.conduitAttributePrecedence = conduitAttributePrecedence;
+        this.attributePrecedence = null;
+    }
+
+    /**
+     * The compiled attribute categories of this response - those declared by its conduit plus any added to the
+     * response itself. Note that the compiled form is not refreshed if the attribute sets are modified directly.
+     */
+    public SoTAttributePrecedence getAttributePrecedence() {
+        SoTAttributePrecedence precedence = attributePrecedence;
+        if(precedence == null){
+            precedence = SoTAttributePrecedence.compile(immutableAttributes, authoritativeAttributes, informationalAttributes, anecdotalAttributes);
+            if(conduitAttributePrecedence != null){
+                precedence = conduitAttributePrecedence.unionWith(precedence);
+            }
+            attributePrecedence = precedence;
+        }
+        return(precedence);
     }
 
     public String getSourceOfTruthName() {
@@ -202,86 +237,39 @@ public class ResourceSoTConduitActionResponse extends VirtualDBMethodOutcome imp
         this.functionStatusEnum = functionStatusEnum;
     }
 
+    /**
+     * Orders responses by precedence, highest first - so the head of a sorted list is the response that has
+     * precedence. A response from a more authoritative conduit (SoTConduitGradeEnum) has precedence, and between
+     * conduits of the same grade, the response with the more complete resource (ResourceGradeEnum) has precedence.
+     * Ungraded responses come last. This is a total order in which equally graded responses compare as equal, so a
+     * (stable) sort leaves those in their original order - an AUTHORITATIVE & THOROUGH response is never preceded by
+     * anything but another AUTHORITATIVE & THOROUGH response.
+     */
     @Override
     public int compareTo(ResourceSoTConduitActionResponse other) {
         if(other == null){
-            return(1);
-        }
-        if(this.getSoTGrade() == other.getSoTGrade() ) {
-            return (0);
-        }
-        if(this.getResponseResourceGrade() == other.getResponseResourceGrade()){
-            return(0);
-        }
-        if(other.responseResourceGrade == null){
-            return(1);
-        }
-        if(this.responseResourceGrade == null){
             return(-1);
         }
-        if(this.getSoTGrade() == other.getSoTGrade()){
-            if(this.getResponseResourceGrade() == ResourceGradeEnum.THOROUGH){
-                return(1);
-            }
-            if(other.getResponseResourceGrade() == ResourceGradeEnum.THOROUGH){
-                return(-1);
-            }
-            if(this.getResponseResourceGrade() == ResourceGradeEnum.ESTABLISHED){
-                return(1);
-            }
-            if(other.getResponseResourceGrade() == ResourceGradeEnum.ESTABLISHED){
-                return(-1);
-            }
-            if(this.getResponseResourceGrade() == ResourceGradeEnum.LIMITED){
-                return(1);
-            }
-            if(other.getResponseResourceGrade() == ResourceGradeEnum.LIMITED){
-                return(-1);
-            }
+        int soTGradeOrder = Integer.compare(soTGradeRank(this.getSoTGrade()), soTGradeRank(other.getSoTGrade()));
+        if(soTGradeOrder != 0){
+            return(soTGradeOrder);
         }
-        if(other.getSoTGrade() == null ){
-            return(1);
-        }
-        if(this.getSoTGrade() == null){
-            return(-1);
-        }
-        if(this.getSoTGrade() == SoTConduitGradeEnum.AUTHORITATIVE || this.getSoTGrade() == SoTConduitGradeEnum.PARTIALLY_AUTHORITATIVE) {
-            if(this.getResponseResourceGrade() == ResourceGradeEnum.THOROUGH || this.getResponseResourceGrade() == ResourceGradeEnum.ESTABLISHED){
-                return(1);
-            }
-            if(other.getSoTGrade() == SoTConduitGradeEnum.PARTIALLY_AUTHORITATIVE && other.getSoTGrade() == SoTConduitGradeEnum.INFORMATIVE){
-                if(other.getResponseResourceGrade() == ResourceGradeEnum.THOROUGH || other.getResponseResourceGrade() == ResourceGradeEnum.ESTABLISHED){
-                    return(-1);
-                }
-            }
-            return(1);
-        }
-        if(this.getSoTGrade() == SoTConduitGradeEnum.INFORMATIVE || this.getSoTGrade() == SoTConduitGradeEnum.PARTIALLY_INFORMATIVE) {
-            if(other.getSoTGrade() == SoTConduitGradeEnum.AUTHORITATIVE && other.getSoTGrade() == SoTConduitGradeEnum.PARTIALLY_AUTHORITATIVE){
-                if(other.getResponseResourceGrade() == ResourceGradeEnum.THOROUGH || other.getResponseResourceGrade() == ResourceGradeEnum.ESTABLISHED){
-                    return(-1);
-                }
-            }
-            if(this.getResponseResourceGrade() == ResourceGradeEnum.THOROUGH || this.getResponseResourceGrade() == ResourceGradeEnum.ESTABLISHED){
-                return(1);
-            }
-            if(other.getSoTGrade() == SoTConduitGradeEnum.AUTHORITATIVE && other.getSoTGrade() == SoTConduitGradeEnum.PARTIALLY_AUTHORITATIVE){
-                if(other.getResponseResourceGrade() == ResourceGradeEnum.LIMITED){
-                    return(-1);
-                }
-            }
-            if(other.getSoTGrade() == SoTConduitGradeEnum.INFORMATIVE && other.getSoTGrade() == SoTConduitGradeEnum.PARTIALLY_INFORMATIVE){
-                if(other.getResponseResourceGrade() == ResourceGradeEnum.THOROUGH | this.getResponseResourceGrade() == ResourceGradeEnum.ESTABLISHED){
-                    return(-1);
-                }
-            }
-            return(1);
+        return(Integer.compare(resourceGradeRank(this.getResponseResourceGrade()), resourceGradeRank(other.getResponseResourceGrade())));
+    }
+
+    private static int soTGradeRank(SoTConduitGradeEnum soTGrade){
+        // SoTConduitGradeEnum is declared most authoritative (AUTHORITATIVE) first
+        if(soTGrade == null){
+            return(SoTConduitGradeEnum.values().length);
         }
-        if(this.getSoTGrade() == SoTConduitGradeEnum.ANECDOTAL){
-            if(other.getSoTGrade() != SoTConduitGradeEnum.ANECDOTAL){
-                return(-1);
-            }
+        return(soTGrade.ordinal());
+    }
+
+    private static int resourceGradeRank(ResourceGradeEnum resourceGrade){
+        // ResourceGradeEnum is declared least complete (NO_RESOURCE) first
+        if(resourceGrade == null){
+            return(ResourceGradeEnum.values().length);
         }
-        return(1);
+        return(ResourceGradeEnum.values().length - 1 - resourceGrade.ordinal());
     }
 }
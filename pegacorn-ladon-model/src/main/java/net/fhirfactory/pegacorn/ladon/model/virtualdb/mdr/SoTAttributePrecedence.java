@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.model.virtualdb.mdr;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A compiled form of the immutable, authoritative, informational and anecdotal attribute sets of a Source of Truth
+ * (conduit or response). Each attribute name is interned to a (process wide) ordinal and the categories the attribute
+ * belongs to are held as a bitmask in an array indexed by that ordinal - so whether one source has precedence over
+ * another for an attribute is an array lookup (plus a lookup in the grade-by-grade decision matrix) rather than a
+ * series of HashSet checks.
+ */
+public final class SoTAttributePrecedence {
+    public static final int IMMUTABLE = 0x01;
+    public static final int AUTHORITATIVE = 0x02;
+    public static final int INFORMATIONAL = 0x04;
+    public static final int ANECDOTAL = 0x08;
+
+    public static final SoTAttributePrecedence EMPTY = new SoTAttributePrecedence(new byte[0]);
+
+    // Who decides precedence, indexed by [baseGrade][otherGrade] (with an extra "no grade" row/column)
+    private static final byte NOBODY_DECIDES = 0;
+    private static final byte BASE_DECIDES = 1;
+    private static final byte OTHER_DECIDES = 2;
+    private static final int NO_GRADE = SoTConduitGradeEnum.values().length;
+    private static final byte[][] DECISION_MATRIX = buildDecisionMatrix();
+
+    private static final ConcurrentHashMap<String, Integer> attributeOrdinals = new ConcurrentHashMap<>();
+    private static final AtomicInteger nextAttributeOrdinal = new AtomicInteger(0);
+
+    private final byte[] categoryMasks;
+
+    private SoTAttributePrecedence(byte[] categoryMasks){
+        this.categoryMasks = categoryMasks;
+    }
+
+    /**
+     * The (process wide) ordinal of the named attribute, allocating one if the attribute hasn't been seen before.
+     * Callers on a hot path should look the ordinal up once and hold onto it.
+     */
+    public static int attributeOrdinal(String attributeName){
+        Integer ordinal = attributeOrdinals.get(attributeName);
+        if(ordinal == null){
+            ordinal = attributeOrdinals.computeIfAbsent(attributeName, name -> nextAttributeOrdinal.getAndIncrement());
+        }
+        return(ordinal);
+    }
+
+    public static SoTAttributePrecedence compile(Collection<String> immutableAttributes, Collection<String> authoritativeAttributes, Collection<String> informationalAttributes, Collection<String> anecdotalAttributes){
+        if(isEmpty(immutableAttributes) && isEmpty(authoritativeAttributes) && isEmpty(informationalAttributes) && isEmpty(anecdotalAttributes)){
+            return(EMPTY);
+        }
+        byte[] masks = new byte[0];
+        masks = addCategory(masks, immutableAttributes, IMMUTABLE);
+        masks = addCategory(masks, authoritativeAttributes, AUTHORITATIVE);
+        masks = addCategory(masks, informationalAttributes, INFORMATIONAL);
+        masks = addCategory(masks, anecdotalAttributes, ANECDOTAL);
+        return(new SoTAttributePrecedence(masks));
+    }
+
+    /**
+     * A precedence table holding the categories of both this table and the other one.
+     */
+    public SoTAttributePrecedence unionWith(SoTAttributePrecedence other){
+        if(other == null || other == EMPTY || other == this){
+            return(this);
+        }
+        if(this == EMPTY){
+            return(other);
+        }
+        byte[] masks = new byte[Math.max(categoryMasks.length, other.categoryMasks.length)];
+        for(int ordinal = 0; ordinal < masks.length; ordinal++){
+            masks[ordinal] = (byte)(getCategoryMask(ordinal) | other.getCategoryMask(ordinal));
+        }
+        return(new SoTAttributePrecedence(masks));
+    }
+
+    public int getCategoryMask(int attributeOrdinal){
+        if(attributeOrdinal < 0 || attributeOrdinal >= categoryMasks.length){
+            return(0);
+        }
+        return(categoryMasks[attributeOrdinal]);
+    }
+
+    public boolean isEmpty(){
+        return(categoryMasks.length == 0);
+    }
+
+    /**
+     * Whether the base source has precedence over the other source for the attribute. The source with the better
+     * SoTConduitGradeEnum (the base, if they are equal) decides: it keeps precedence unless the other source holds the
+     * attribute in a category it does not. A source with no grade never decides, nor does an ANECDOTAL other.
+     */
+    public static boolean baseHasPrecedence(int attributeOrdinal, SoTConduitGradeEnum baseGrade, SoTAttributePrecedence basePrecedence, SoTConduitGradeEnum otherGrade, SoTAttributePrecedence otherPrecedence){
+        int baseGradeIndex = baseGrade == null ? NO_GRADE : baseGrade.ordinal();
+        int otherGradeIndex = otherGrade == null ? NO_GRADE : otherGrade.ordinal();
+        switch(DECISION_MATRIX[baseGradeIndex][otherGradeIndex]){
+            case BASE_DECIDES: {
+                int baseMask = basePrecedence.getCategoryMask(attributeOrdinal);
+                int otherMask = otherPrecedence.getCategoryMask(attributeOrdinal);
+                return((otherMask & ~baseMask) == 0);
+            }
+            case OTHER_DECIDES: {
+                int baseMask = basePrecedence.getCategoryMask(attributeOrdinal);
+                int otherMask = otherPrecedence.getCategoryMask(attributeOrdinal);
+                return((baseMask & ~otherMask) != 0);
+            }
+            default:
+                return(false);
+        }
+    }
+
+    private static byte[][] buildDecisionMatrix(){
+        byte[][] matrix = new byte[NO_GRADE + 1][NO_GRADE + 1];
+        for(int baseGradeIndex = 0; baseGradeIndex <= NO_GRADE; baseGradeIndex++){
+            for(int otherGradeIndex = 0; otherGradeIndex <= NO_GRADE; otherGradeIndex++){
+                if(baseGradeIndex != NO_GRADE && baseGradeIndex <= otherGradeIndex){
+                    matrix[baseGradeIndex][otherGradeIndex] = BASE_DECIDES;
+                } else if(otherGradeIndex < baseGradeIndex && otherGradeIndex != SoTConduitGradeEnum.ANECDOTAL.ordinal()){
+                    matrix[baseGradeIndex][otherGradeIndex] = OTHER_DECIDES;
+                } else {
+                    matrix[baseGradeIndex][otherGradeIndex] = NOBODY_DECIDES;
+                }
+            }
+        }
+        return(matrix);
+    }
+
+    private static byte[] addCategory(byte[] masks, Collection<String> attributes, int category){
+        if(isEmpty(attributes)){
+            return(masks);
+        }
+        for(String attributeName: attributes){
+            if(attributeName == null){
+                continue;
+            }
+            int ordinal = attributeOrdinal(attributeName);
+            if(ordinal >= masks.length){
+                byte[] grownMasks = new byte[ordinal + 1];
+                System.arraycopy(masks, 0, grownMasks, 0, masks.length);
+                masks = grownMasks;
+            }
+            masks[ordinal] |= category;
+        }
+        return(masks);
+    }
+
+    private static boolean isEmpty(Collection<String> attributes){
+        return(attributes == null || attributes.isEmpty());
+    }
+}
@@ -64,6 +64,13 @@ public interface SoTConduitInterface {
     //
     
     public List<ResourceSoTConduitSearchResponseElement> searchSourceOfTruthUsingCriteria(ResourceType resourceType, SearchNameEnum searchName, Map<Property, Serializable> parameterSet);
+    /**
+     * As above, but the conduit need not return (or fetch) more than resultLimit Resources. Conduits that cannot
+     * limit their searches simply ignore the limit.
+     */
+    default public List<ResourceSoTConduitSearchResponseElement> searchSourceOfTruthUsingCriteria(ResourceType resourceType, SearchNameEnum searchName, Map<Property, Serializable> parameterSet, int resultLimit){
+        return(searchSourceOfTruthUsingCriteria(resourceType, searchName, parameterSet));
+    }
     public boolean supportiveOfSearch(SearchNameEnum searchName);
     
     //
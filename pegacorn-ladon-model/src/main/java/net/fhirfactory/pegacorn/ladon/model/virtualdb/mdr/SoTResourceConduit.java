@@ -37,6 +37,8 @@ import org.slf4j.Logger;
 
 import javax.annotation.PostConstruct;
 import javax.inject.Inject;
+import java.util.Collections;
+import java.util.Set;
 
 public abstract class SoTResourceConduit implements SoTConduitInterface {
     private ResourceType resourceType;
@@ -65,6 +67,20 @@ public abstract class SoTResourceConduit implements SoTConduitInterface {
     abstract protected String specifySourceOfTruthEndpointSystemName();
     abstract protected String specifySourceOfTruthOwningOrganization();
 
+    //
+    // Attribute Precedence (the conduit's standing within each attribute of its Resource type), by default none
+    //
+
+    protected Set<String> specifyImmutableAttributes(){return(Collections.emptySet());}
+    protected Set<String> specifyAuthoritativeAttributes(){return(Collections.emptySet());}
+    protected Set<String> specifyInformationalAttributes(){return(Collections.emptySet());}
+    protected Set<String> specifyAnecdotalAttributes(){return(Collections.emptySet());}
+
+    public Set<String> getImmutableAttributes(){return(specifyImmutableAttributes());}
+    public Set<String> getAuthoritativeAttributes(){return(specifyAuthoritativeAttributes());}
+    public Set<String> getInformationalAttributes(){return(specifyInformationalAttributes());}
+    public Set<String> getAnecdotalAttributes(){return(specifyAnecdotalAttributes());}
+
     public FHIRContextUtility getFHIRContextUtility(){ return(fhirContextUtility);}
     public SoTIdentifier getSotIdentifier() {
         return sotIdentifier;
@@ -27,10 +27,16 @@ import org.hl7.fhir.r4.model.CodeableConcept;
 import org.hl7.fhir.r4.model.Identifier;
 import org.hl7.fhir.r4.model.OperationOutcome;
 
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
 public class VirtualDBMethodOutcome extends MethodOutcome {
     VirtualDBActionStatusEnum statusEnum;
     VirtualDBActionTypeEnum causalAction;
     Identifier identifier;
+    VirtualDBReadLayerEnum resolvingLayer;
+    EnumMap<VirtualDBReadLayerEnum, Long> layerTimingsInNanos;
 
     public boolean hasResource(){
         if(getResource()==null){
@@ -145,4 +151,40 @@ public class VirtualDBMethodOutcome extends MethodOutcome {
     public void setIdentifier(Identifier identifier) {
         this.identifier = identifier;
     }
+
+    /**
+     * The layer of the read-through pipeline that provided the Resource (null if no layer did).
+     */
+    public VirtualDBReadLayerEnum getResolvingLayer() {
+        return resolvingLayer;
+    }
+
+    public void setResolvingLayer(VirtualDBReadLayerEnum resolvingLayer) {
+        this.resolvingLayer = resolvingLayer;
+    }
+
+    public boolean hasLayerTimings(){
+        if(layerTimingsInNanos == null || layerTimingsInNanos.isEmpty()){
+            return(false);
+        } else {
+            return(true);
+        }
+    }
+
+    public void recordLayerTiming(VirtualDBReadLayerEnum layer, long elapsedNanos){
+        if(layerTimingsInNanos == null){
+            layerTimingsInNanos = new EnumMap<>(VirtualDBReadLayerEnum.class);
+        }
+        layerTimingsInNanos.put(layer, elapsedNanos);
+    }
+
+    /**
+     * The time (in nanoseconds) spent within each layer of the read-through pipeline that was consulted.
+     */
+    public Map<VirtualDBReadLayerEnum, Long> getLayerTimingsInNanos() {
+        if(layerTimingsInNanos == null){
+            return(Collections.emptyMap());
+        }
+        return(Collections.unmodifiableMap(layerTimingsInNanos));
+    }
 }
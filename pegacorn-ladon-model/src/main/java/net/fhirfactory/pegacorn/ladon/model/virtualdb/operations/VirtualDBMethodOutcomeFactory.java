@@ -166,6 +166,66 @@ public class VirtualDBMethodOutcomeFactory {
         return(vdbOutcome);
     }
 
+    public VirtualDBMethodOutcome generateTimedOutOutcome(String method, VirtualDBActionTypeEnum action, VirtualDBActionStatusEnum actionStatus, String text){
+        VirtualDBMethodOutcome vdbOutcome = new VirtualDBMethodOutcome();
+        vdbOutcome.setCreated(false);
+        vdbOutcome.setCausalAction(action);
+        vdbOutcome.setStatusEnum(actionStatus);
+        CodeableConcept details = new CodeableConcept();
+        Coding detailsCoding = new Coding();
+        detailsCoding.setSystem("https://www.hl7.org/fhir/codesystem-operation-outcome.html");
+        detailsCoding.setCode("MSG_TIMEOUT");
+        detailsCoding.setDisplay(text);
+        details.setText(text);
+        details.addCoding(detailsCoding);
+        OperationOutcome opOutcome = new OperationOutcome();
+        OperationOutcome.OperationOutcomeIssueComponent newOutcomeComponent = new OperationOutcome.OperationOutcomeIssueComponent();
+        newOutcomeComponent.setDiagnostics(method);
+        newOutcomeComponent.setDetails(details);
+        newOutcomeComponent.setCode(OperationOutcome.IssueType.TIMEOUT);
+        newOutcomeComponent.setSeverity(OperationOutcome.IssueSeverity.ERROR);
+        opOutcome.addIssue(newOutcomeComponent);
+        vdbOutcome.setOperationOutcome(opOutcome);
+        return(vdbOutcome);
+    }
+
+    /**
+     * This method appends a (WARNING) issue to the OperationOutcome of an existing VirtualDBMethodOutcome, creating
+     * the OperationOutcome if there isn't one.
+     */
+    public void addWarningIssue(VirtualDBMethodOutcome vdbOutcome, String method, OperationOutcome.IssueType issueType, String code, String text){
+        addIssue(vdbOutcome, method, OperationOutcome.IssueSeverity.WARNING, issueType, code, text);
+    }
+
+    /**
+     * This method appends an (ERROR) issue to the OperationOutcome of an existing VirtualDBMethodOutcome, creating
+     * the OperationOutcome if there isn't one.
+     */
+    public void addErrorIssue(VirtualDBMethodOutcome vdbOutcome, String method, OperationOutcome.IssueType issueType, String code, String text){
+        addIssue(vdbOutcome, method, OperationOutcome.IssueSeverity.ERROR, issueType, code, text);
+    }
+
+    private void addIssue(VirtualDBMethodOutcome vdbOutcome, String method, OperationOutcome.IssueSeverity severity, OperationOutcome.IssueType issueType, String code, String text){
+        CodeableConcept details = new CodeableConcept();
+        Coding detailsCoding = new Coding();
+        detailsCoding.setSystem("https://www.hl7.org/fhir/codesystem-operation-outcome.html");
+        detailsCoding.setCode(code);
+        detailsCoding.setDisplay(text);
+        details.setText(text);
+        details.addCoding(detailsCoding);
+        OperationOutcome opOutcome = (OperationOutcome)vdbOutcome.getOperationOutcome();
+        if(opOutcome == null){
+            opOutcome = new OperationOutcome();
+            vdbOutcome.setOperationOutcome(opOutcome);
+        }
+        OperationOutcome.OperationOutcomeIssueComponent newOutcomeComponent = new OperationOutcome.OperationOutcomeIssueComponent();
+        newOutcomeComponent.setDiagnostics(method);
+        newOutcomeComponent.setDetails(details);
+        newOutcomeComponent.setCode(issueType);
+        newOutcomeComponent.setSeverity(severity);
+        opOutcome.addIssue(newOutcomeComponent);
+    }
+
     public VirtualDBMethodOutcome generateEmptySearchResponse(ResourceType resourceType){
         VirtualDBMethodOutcome outcome = new VirtualDBMethodOutcome();
         outcome.setCreated(false);
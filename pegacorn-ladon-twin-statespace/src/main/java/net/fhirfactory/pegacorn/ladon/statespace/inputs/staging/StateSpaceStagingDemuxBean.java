@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.statespace.inputs.staging;
+
+import net.fhirfactory.pegacorn.datasets.fhir.r4.internal.topics.FHIRElementTopicIDBuilder;
+import net.fhirfactory.pegacorn.petasos.model.topics.TopicToken;
+import net.fhirfactory.pegacorn.petasos.model.uow.UoW;
+import net.fhirfactory.pegacorn.petasos.model.uow.UoWPayload;
+import net.fhirfactory.pegacorn.petasos.model.uow.UoWProcessingOutcomeEnum;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@ApplicationScoped
+public class StateSpaceStagingDemuxBean {
+    private static final Logger LOG = LoggerFactory.getLogger(StateSpaceStagingDemuxBean.class);
+
+    @Inject
+    private FHIRElementTopicIDBuilder fhirTopicIDBuilder;
+
+    // Ingres topic identifier (as subscribed to by the StateSpaceStagingDemuxWUP) --> egress resource types
+    private Map<String, List<String>> egressResourceTypesByIngresTopic;
+
+    @PostConstruct
+    protected void initialise(){
+        LOG.debug(".initialise(): Entry");
+        Map<String, List<String>> dispatchTable = new HashMap<>();
+        for(Map.Entry<String, List<String>> route: StateSpaceStagingResourceTypes.egressResourceTypesByIngresResourceType().entrySet()){
+            TopicToken ingresTopic = fhirTopicIDBuilder.createTopicToken(route.getKey(), StateSpaceStagingResourceTypes.STATE_SPACE_FHIR_VERSION);
+            ingresTopic.addDescriminator(StateSpaceStagingResourceTypes.SOURCE_DISCRIMINATOR, StateSpaceStagingResourceTypes.NORMALISER_SOURCE);
+            dispatchTable.put(ingresTopic.getIdentifier().getContent(), route.getValue());
+        }
+        this.egressResourceTypesByIngresTopic = dispatchTable;
+        LOG.debug(".initialise(): Exit, dispatch table size --> {}", dispatchTable.size());
+    }
+
+    /**
+     * This functions does nothing to the actual incoming (Ingres) payload - merely copying it to an Egress payload
+     * for each staged route of the Ingres topic and assigning the processing outcome as a Success. Each Egress
+     * payload's TopicID is that of the route's egress resource type (see StateSpaceStagingResourceTypes), found via
+     * the precomputed dispatch table, with discriminator --> "Source":"Ladon.StateSpace.PubSub".
+     * @param incomingUoW The incoming UoW of work
+     * @return A unit of work with the Egress Content matching the Ingres Content, or marked as failed if the Ingres
+     * topic is not one that is staged
+     */
+    public UoW toPubSub(UoW incomingUoW){
+        TopicToken ingresTopic = incomingUoW.getPayloadTopicID();
+        List<String> egressResourceTypes = egressResourceTypesByIngresTopic.get(ingresTopic.getIdentifier().getContent());
+        if(egressResourceTypes == null){
+            LOG.warn(".toPubSub(): Not a staged topic, ingresTopic --> {}", ingresTopic);
+            incomingUoW.setProcessingOutcome(UoWProcessingOutcomeEnum.UOW_OUTCOME_FAILED);
+            return(incomingUoW);
+        }
+        for(String egressResourceType: egressResourceTypes){
+            TopicToken topicId = fhirTopicIDBuilder.createTopicToken(egressResourceType, ingresTopic.getVersion());
+            topicId.addDescriminator(StateSpaceStagingResourceTypes.SOURCE_DISCRIMINATOR, StateSpaceStagingResourceTypes.PUBSUB_SOURCE);
+            UoWPayload outgoingPayload = new UoWPayload();
+            outgoingPayload.setPayload(incomingUoW.getIngresContent().getPayload());
+            outgoingPayload.setPayloadTopicID(topicId);
+            incomingUoW.getEgressContent().addPayloadElement(outgoingPayload);
+        }
+        incomingUoW.setProcessingOutcome(UoWProcessingOutcomeEnum.UOW_OUTCOME_SUCCESS);
+        return(incomingUoW);
+    }
+}
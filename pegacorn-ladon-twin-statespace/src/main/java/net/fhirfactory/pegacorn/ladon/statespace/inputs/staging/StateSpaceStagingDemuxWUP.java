@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2020 Mark A. Hunter (ACT Health)
+ * Copyright (c) 2020 Mark A. Hunter
  *
  * Permission is hereby granted, free of charge, to any person obtaining a copy
  * of this software and associated documentation files (the "Software"), to deal
@@ -19,7 +19,7 @@
  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
  * SOFTWARE.
  */
-package net.fhirfactory.pegacorn.ladon.statespace.inputs.staging.structuredefinition;
+package net.fhirfactory.pegacorn.ladon.statespace.inputs.staging;
 
 import java.util.HashSet;
 import java.util.Set;
@@ -32,34 +32,40 @@ import org.slf4j.LoggerFactory;
 import net.fhirfactory.pegacorn.petasos.model.topics.TopicToken;
 import net.fhirfactory.pegacorn.petasos.wup.archetypes.MOAStandardWUP;
 
+/**
+ * The StateSpace staging stage: a single WUP subscribing to the Normaliser's output for every staged route (see
+ * StateSpaceStagingResourceTypes), which re-publishes each UoW's content to the StateSpace PubSub topic of each route
+ * subscribed to its topic. This replaces one pass-through WUP (and its routes and threads) per staged route.
+ */
 @ApplicationScoped
-public class StructureDefinitionSSTopic extends MOAStandardWUP {
-    private static final Logger LOG = LoggerFactory.getLogger(StructureDefinitionSSTopic.class);
+public class StateSpaceStagingDemuxWUP extends MOAStandardWUP {
+    private static final Logger LOG = LoggerFactory.getLogger(StateSpaceStagingDemuxWUP.class);
     @Override
     protected Logger getLogger(){return(LOG);}
 
-    private static String STATE_SPACE_TOPIC_WUP_VERSION = "1.0.0";
-    private static String STATE_SPACE_TOPIC_RESOURCE_ID = "StructureDefinition";
-    private static String STATE_SPACE_FHIR_VERSION = "4.0.1";
-
+    private static String STATE_SPACE_STAGING_WUP_VERSION = "1.0.0";
+    private static String STATE_SPACE_STAGING_WUP_NAME = "StateSpaceInputsStagingDemuxWUP";
 
     @Override
     protected Set<TopicToken> specifySubscriptionTopics() {
-        TopicToken topicId = getFHIRTopicIDBuilder().createTopicToken(STATE_SPACE_TOPIC_RESOURCE_ID, STATE_SPACE_FHIR_VERSION);
-        topicId.addDescriminator("Source", "Ladon.StateSpace.Normaliser" );
         HashSet<TopicToken> topicSet = new HashSet<TopicToken>();
-        topicSet.add(topicId);
+        for(String resourceType: StateSpaceStagingResourceTypes.egressResourceTypesByIngresResourceType().keySet()){
+            TopicToken topicId = getFHIRTopicIDBuilder().createTopicToken(resourceType, StateSpaceStagingResourceTypes.STATE_SPACE_FHIR_VERSION);
+            topicId.addDescriminator(StateSpaceStagingResourceTypes.SOURCE_DISCRIMINATOR, StateSpaceStagingResourceTypes.NORMALISER_SOURCE);
+            topicSet.add(topicId);
+        }
+        LOG.debug(".specifySubscriptionTopics(): Subscribing to {} staged topics", topicSet.size());
         return(topicSet);
     }
 
     @Override
     protected String specifyWUPInstanceName() {
-        return ("StateSpaceInputs"+STATE_SPACE_TOPIC_RESOURCE_ID+"TopicWUP");
+        return (STATE_SPACE_STAGING_WUP_NAME);
     }
 
     @Override
     protected String specifyWUPVersion() {
-        return (STATE_SPACE_TOPIC_WUP_VERSION);
+        return (STATE_SPACE_STAGING_WUP_VERSION);
     }
 
     @Override
@@ -69,11 +75,9 @@ public class StructureDefinitionSSTopic extends MOAStandardWUP {
 
     @Override
     public void configure() throws Exception {
-        // This is truly a do-nothing WUP for the initial release and is really only here to
-        // separate the topics into their own queue.
         fromWithStandardExceptionHandling(ingresFeed())
                 .routeId(this.getNameSet().getWupTypeName())
-                .bean(StructureDefinitionSSTopicProcessorBean.class,"toPubSub(*)")
+                .bean(StateSpaceStagingDemuxBean.class,"toPubSub(*)")
                 .to(egressFeed());
     }
 }
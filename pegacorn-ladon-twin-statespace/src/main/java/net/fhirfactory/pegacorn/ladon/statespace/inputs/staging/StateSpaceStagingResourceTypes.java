@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.statespace.inputs.staging;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The routes staged (from the Normaliser through to the StateSpace PubSub) by the StateSpaceStagingDemuxWUP, along
+ * with the discriminators that mark the two sides of the staging hop. Each route is one of the per-resource staging
+ * WUPs that the demux replaced, kept exactly as it was: most re-publish the same resource type, but a few do not
+ * (e.g. the Patient topic fed three of them, publishing a Bundle, a Composition and a PractitionerRole), and their
+ * egress resource type names are kept as they were spelt.
+ */
+public final class StateSpaceStagingResourceTypes {
+    public static final String STATE_SPACE_FHIR_VERSION = "4.0.1";
+
+    public static final String SOURCE_DISCRIMINATOR = "Source";
+    public static final String NORMALISER_SOURCE = "Ladon.StateSpace.Normaliser";
+    public static final String PUBSUB_SOURCE = "Ladon.StateSpace.PubSub";
+
+    public static final List<StagingRoute> STAGED_ROUTES = Collections.unmodifiableList(Arrays.asList(
+            new StagingRoute("Account", "Account"),
+            new StagingRoute("AdverseEvent", "AdverseEvent"),
+            new StagingRoute("AllergyIntolerance", "AllergyIntolerance"),
+            new StagingRoute("Appointment", "Appointment"),
+            new StagingRoute("AppointmentResponse", "AppointmentResponse"),
+            new StagingRoute("AuditEvent", "AuditEvent"),
+            new StagingRoute("Basic", "Basic"),
+            new StagingRoute("Binary", "Binary"),
+            new StagingRoute("BiologicallyDerivedProduct", "BiologicalDerivedProduct"),
+            new StagingRoute("BodyStructure", "BodyStructure"),
+            new StagingRoute("Bundle", "Bundle"),
+            new StagingRoute("CapabilityStatement", "Bundle"),
+            new StagingRoute("CarePlan", "CarePlan"),
+            new StagingRoute("CareTeam", "CareTeam"),
+            new StagingRoute("CatalogEntry", "CatalogEntry"),
+            new StagingRoute("ChargeItem", "ChargeItem"),
+            new StagingRoute("ChargeItemDefinition", "ChargeItemDefinition"),
+            new StagingRoute("Claim", "Claim"),
+            new StagingRoute("ClaimResponse", "ClaimResponse"),
+            new StagingRoute("ClinicalImpression", "ClinicalImpression"),
+            new StagingRoute("CodeSystem", "CodeSystem"),
+            new StagingRoute("Communication", "Communication"),
+            new StagingRoute("CommunicationRequest", "CommunicationRequest"),
+            new StagingRoute("CompartmentDefinition", "CompartmentDefinition"),
+            new StagingRoute("Patient", "Composition"),
+            new StagingRoute("ConceptMap", "ConceptMap"),
+            new StagingRoute("Condition", "Condition"),
+            new StagingRoute("Consent", "Consent"),
+            new StagingRoute("Contract", "Contract"),
+            new StagingRoute("Coverage", "Coverage"),
+            new StagingRoute("CoverageEligibilityRequest", "CoverageEligibilityRequest"),
+            new StagingRoute("CoverageEligibilityResponse", "CoverageEligibilityResponse"),
+            new StagingRoute("DetectedIssue", "DetectedIssue"),
+            new StagingRoute("Device", "Device"),
+            new StagingRoute("DeviceMetric", "DeviceMetric"),
+            new StagingRoute("DeviceRequest", "DeviceRequest"),
+            new StagingRoute("DeviceUseStatement", "DeviceUseStatement"),
+            new StagingRoute("DiagnosticReport", "DiagnosticReport"),
+            new StagingRoute("DocumentManifest", "DocumentManifest"),
+            new StagingRoute("DocumentReference", "DocumentReference"),
+            new StagingRoute("Encounter", "Encounter"),
+            new StagingRoute("Endpoint", "Endpoint"),
+            new StagingRoute("EnrollmentRequest", "EnrollmentRequest"),
+            new StagingRoute("EnrollmentResponse", "EnrollmentResponse"),
+            new StagingRoute("EpisodeOfCare", "EpisodeOfCare"),
+            new StagingRoute("ExampleScenario", "Bundle"),
+            new StagingRoute("ExplanationOfBenefit", "ExplanationOfBenefit"),
+            new StagingRoute("FamilyMemberHistory", "FamilyMemberHistory"),
+            new StagingRoute("Flag", "Flag"),
+            new StagingRoute("Goal", "Goal"),
+            new StagingRoute("GraphDefinition", "GraphDefinition"),
+            new StagingRoute("Group", "Group"),
+            new StagingRoute("GuidanceResponse", "GuidanceResponse"),
+            new StagingRoute("HealthcareService", "HealthcareService"),
+            new StagingRoute("ImagingStudy", "ImagingStudy"),
+            new StagingRoute("Immunization", "Immunization"),
+            new StagingRoute("ImmunizationEvaluation", "ImmunizationEvaluation"),
+            new StagingRoute("ImmunizationRecommendation", "ImmunizationRecommendation"),
+            new StagingRoute("ImplementationGuide", "ImplementationGuide"),
+            new StagingRoute("InsurancePlan", "InsurancePlan"),
+            new StagingRoute("Invoice", "Invoice"),
+            new StagingRoute("LibraryMetric", "Library"),
+            new StagingRoute("Linkage", "Linkage"),
+            new StagingRoute("List", "List"),
+            new StagingRoute("Location", "Location"),
+            new StagingRoute("Media", "Media"),
+            new StagingRoute("MedicationAdministration", "MedicationAdministration"),
+            new StagingRoute("MedicationDispense", "MedicationDispense"),
+            new StagingRoute("MedicationKnowledge", "MedicationKnowledge"),
+            new StagingRoute("MedicationRequest", "MedicationRequest"),
+            new StagingRoute("MedicationStatement", "MedicationStatement"),
+            new StagingRoute("MessageHeader", "MessageHeader"),
+            new StagingRoute("MolecularSequence", "MolecularSequence"),
+            new StagingRoute("NamingSystem", "NamingSystem"),
+            new StagingRoute("NutritionOrder", "NutritionOrder"),
+            new StagingRoute("Observation", "Observation"),
+            new StagingRoute("OperationDefinition", "OperationDefinition"),
+            new StagingRoute("OperationOutcome", "OperationOutcome"),
+            new StagingRoute("Organization", "Organization"),
+            new StagingRoute("OrganizationAffiliation", "OrganizationAffiliation"),
+            new StagingRoute("Parameters", "Parameters"),
+            new StagingRoute("Patient", "Bundle"),
+            new StagingRoute("PaymentNotice", "PaymentNotice"),
+            new StagingRoute("PaymentReconciliation", "PaymentReconciliation"),
+            new StagingRoute("Person", "Person"),
+            new StagingRoute("Patient", "PractitionerRole"),
+            new StagingRoute("PractitionerRole", "PractitionerRole"),
+            new StagingRoute("Procedure", "Procedure"),
+            new StagingRoute("Provenance", "Provenance"),
+            new StagingRoute("QuestionnaireResponse", "QuestionnaireReponse"),
+            new StagingRoute("RelatedPerson", "RelatedPerson"),
+            new StagingRoute("RequestGroup", "RequestGroup"),
+            new StagingRoute("RiskAssessment", "RiskAssessment"),
+            new StagingRoute("Schedule", "Schedule"),
+            new StagingRoute("SearchParameter", "SearchParameter"),
+            new StagingRoute("ServiceRequest", "ServiceRequest"),
+            new StagingRoute("Slot", "Slot"),
+            new StagingRoute("Specimen", "Specimen"),
+            new StagingRoute("StructureDefinition", "StructureDefinition"),
+            new StagingRoute("StructureMap", "StructureMap"),
+            new StagingRoute("Subscription", "Subscription"),
+            new StagingRoute("Substance", "Substance"),
+            new StagingRoute("SupplyDelivery", "SupplyDelivery"),
+            new StagingRoute("SupplyRequest", "SupplyRequest"),
+            new StagingRoute("Task", "Task"),
+            new StagingRoute("TerminologyCapabilities", "TerminologyCapabilities"),
+            new StagingRoute("ValueSet", "ValueSet"),
+            new StagingRoute("VerificationResult", "VerificationResult"),
+            new StagingRoute("VisionPrescription", "VisionPrescription")));
+
+    private StateSpaceStagingResourceTypes(){
+    }
+
+    /**
+     * The staged routes grouped by the resource type of the topic they subscribe to, in route order.
+     * @return Ingres resource type --> the egress resource types it is re-published as
+     */
+    public static Map<String, List<String>> egressResourceTypesByIngresResourceType(){
+        Map<String, List<String>> egressTypesByIngresType = new LinkedHashMap<>();
+        for(StagingRoute route: STAGED_ROUTES){
+            egressTypesByIngresType.computeIfAbsent(route.getIngresResourceType(), ingresType -> new ArrayList<>()).add(route.getEgressResourceType());
+        }
+        return(egressTypesByIngresType);
+    }
+
+    public static final class StagingRoute {
+        private final String ingresResourceType;
+        private final String egressResourceType;
+
+        public StagingRoute(String ingresResourceType, String egressResourceType){
+            this.ingresResourceType = ingresResourceType;
+            this.egressResourceType = egressResourceType;
+        }
+
+        public String getIngresResourceType() {
+            return ingresResourceType;
+        }
+
+        public String getEgressResourceType() {
+            return egressResourceType;
+        }
+
+        @Override
+        public String toString() {
+            return(ingresResourceType + " --> " + egressResourceType);
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package net.fhirfactory.pegacorn.ladon.statespace.stimuli.model;
 
+import java.util.Objects;
+
 public class StimulusPackageIdentifier {
     private String id;
 
@@ -10,4 +12,25 @@ public class StimulusPackageIdentifier {
     public String getId() {
         return id;
     }
+
+    @Override
+    public boolean equals(Object other) {
+        if(this == other){
+            return(true);
+        }
+        if(!(other instanceof StimulusPackageIdentifier)){
+            return(false);
+        }
+        return(Objects.equals(id, ((StimulusPackageIdentifier)other).id));
+    }
+
+    @Override
+    public int hashCode() {
+        return(Objects.hashCode(id));
+    }
+
+    @Override
+    public String toString() {
+        return "StimulusPackageIdentifier{" + id + '}';
+    }
 }
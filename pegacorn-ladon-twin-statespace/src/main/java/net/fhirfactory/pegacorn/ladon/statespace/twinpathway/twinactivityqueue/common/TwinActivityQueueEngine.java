@@ -0,0 +1,245 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.statespace.twinpathway.twinactivityqueue.common;
+
+import net.fhirfactory.pegacorn.ladon.model.twin.DigitalTwinIdentifier;
+import net.fhirfactory.pegacorn.ladon.statespace.stimuli.model.StimulusPackage;
+import net.fhirfactory.pegacorn.ladon.statespace.stimuli.model.StimulusPackageIdentifier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The queue engine behind the TwinInstanceActivityQueues: one bounded, lock-free (multi-producer) TwinStimulusQueue
+ * per Digital Twin instance with queued stimuli, held in shards selected by the DigitalTwinIdentifier.
+ *
+ * - A twin's queue is created atomically (computeIfAbsent()) by the first stimulus for it, and retired (and removed)
+ *   once a poll leaves it empty. A producer racing with the retirement simply retries against a new queue.
+ * - Duplicate stimuli are detected in O(1) via a concurrent set of the StimulusPackageIdentifiers currently queued:
+ *   a stimulus whose identifier is already queued (for any twin) is refused. The identifier leaves the set when the
+ *   stimulus is dequeued (or refused because the twin's queue is full).
+ * - Depth, wait (age) and throughput counters are kept in LongAdders, so that they don't become a point of
+ *   contention between producers; see getStatistics().
+ */
+public class TwinActivityQueueEngine {
+    private static final Logger LOG = LoggerFactory.getLogger(TwinActivityQueueEngine.class);
+
+    public static final int DEFAULT_SHARD_COUNT = 16;
+    public static final int DEFAULT_TWIN_QUEUE_CAPACITY = 1024;
+
+    private final ConcurrentMap<DigitalTwinIdentifier, TwinStimulusQueue<QueuedStimulus>>[] shards;
+    private final int shardMask;
+    private final int twinQueueCapacity;
+    private final Set<StimulusPackageIdentifier> queuedStimulusIds;
+
+    private final LongAdder enqueuedCount;
+    private final LongAdder dequeuedCount;
+    private final LongAdder duplicateCount;
+    private final LongAdder rejectedCount;
+    private final LongAdder totalWaitInNanos;
+    private final LongAccumulator maximumWaitInNanos;
+
+    public TwinActivityQueueEngine(){
+        this(DEFAULT_SHARD_COUNT, DEFAULT_TWIN_QUEUE_CAPACITY);
+    }
+
+    @SuppressWarnings("unchecked")
+    public TwinActivityQueueEngine(int shardCount, int twinQueueCapacity){
+        if(shardCount <= 0){
+            throw(new IllegalArgumentException("shardCount must be positive, was " + shardCount));
+        }
+        if(twinQueueCapacity <= 0){
+            throw(new IllegalArgumentException("twinQueueCapacity must be positive, was " + twinQueueCapacity));
+        }
+        int roundedShardCount = Integer.highestOneBit(shardCount);
+        if(roundedShardCount < shardCount){
+            roundedShardCount = roundedShardCount << 1;
+        }
+        this.shards = new ConcurrentMap[roundedShardCount];
+        for(int shard = 0; shard < roundedShardCount; shard++){
+            this.shards[shard] = new ConcurrentHashMap<>();
+        }
+        this.shardMask = roundedShardCount - 1;
+        this.twinQueueCapacity = twinQueueCapacity;
+        this.queuedStimulusIds = ConcurrentHashMap.newKeySet();
+        this.enqueuedCount = new LongAdder();
+        this.dequeuedCount = new LongAdder();
+        this.duplicateCount = new LongAdder();
+        this.rejectedCount = new LongAdder();
+        this.totalWaitInNanos = new LongAdder();
+        this.maximumWaitInNanos = new LongAccumulator(Long::max, 0);
+    }
+
+    /**
+     * Adds a stimulus to the queue of the given twin.
+     *
+     * @return true if the stimulus was queued, false if it is a duplicate of a queued stimulus or the twin's queue
+     * is full
+     */
+    public boolean offer(DigitalTwinIdentifier twinIdentifier, StimulusPackage stimulus){
+        StimulusPackageIdentifier stimulusId = stimulus.getId();
+        if(stimulusId != null && !queuedStimulusIds.add(stimulusId)){
+            duplicateCount.increment();
+            LOG.trace(".offer(): Duplicate stimulus refused, stimulusId --> {}", stimulusId);
+            return(false);
+        }
+        QueuedStimulus queuedStimulus = new QueuedStimulus(stimulus, System.nanoTime());
+        ConcurrentMap<DigitalTwinIdentifier, TwinStimulusQueue<QueuedStimulus>> shard = selectShard(twinIdentifier);
+        while(true){
+            TwinStimulusQueue<QueuedStimulus> twinQueue = shard.computeIfAbsent(twinIdentifier, key -> new TwinStimulusQueue<>(twinQueueCapacity));
+            int outcome = twinQueue.offer(queuedStimulus);
+            if(outcome == TwinStimulusQueue.OFFER_ACCEPTED){
+                enqueuedCount.increment();
+                return(true);
+            }
+            if(outcome == TwinStimulusQueue.OFFER_FULL){
+                if(stimulusId != null){
+                    queuedStimulusIds.remove(stimulusId);
+                }
+                rejectedCount.increment();
+                LOG.warn(".offer(): Stimulus queue of twin {} is full ({} stimuli), stimulus refused", twinIdentifier, twinQueueCapacity);
+                return(false);
+            }
+            // The queue was retired (emptied) under us, so replace it
+            shard.remove(twinIdentifier, twinQueue);
+        }
+    }
+
+    /**
+     * @return the next stimulus for the given twin, or null if it has none queued
+     */
+    public StimulusPackage poll(DigitalTwinIdentifier twinIdentifier){
+        ConcurrentMap<DigitalTwinIdentifier, TwinStimulusQueue<QueuedStimulus>> shard = selectShard(twinIdentifier);
+        TwinStimulusQueue<QueuedStimulus> twinQueue = shard.get(twinIdentifier);
+        if(twinQueue == null){
+            return(null);
+        }
+        QueuedStimulus queuedStimulus = twinQueue.poll();
+        if(twinQueue.isEmpty() && twinQueue.tryRetire()){
+            shard.remove(twinIdentifier, twinQueue);
+        }
+        if(queuedStimulus == null){
+            return(null);
+        }
+        long waitInNanos = System.nanoTime() - queuedStimulus.getEnqueueTimeInNanos();
+        dequeuedCount.increment();
+        totalWaitInNanos.add(waitInNanos);
+        maximumWaitInNanos.accumulate(waitInNanos);
+        StimulusPackageIdentifier stimulusId = queuedStimulus.getStimulus().getId();
+        if(stimulusId != null){
+            queuedStimulusIds.remove(stimulusId);
+        }
+        return(queuedStimulus.getStimulus());
+    }
+
+    /**
+     * @return the number of stimuli queued for the given twin
+     */
+    public int getDepth(DigitalTwinIdentifier twinIdentifier){
+        TwinStimulusQueue<QueuedStimulus> twinQueue = selectShard(twinIdentifier).get(twinIdentifier);
+        if(twinQueue == null){
+            return(0);
+        }
+        return(twinQueue.size());
+    }
+
+    /**
+     * @return the number of stimuli queued across all twins
+     */
+    public long getDepth(){
+        return(Math.max(0, enqueuedCount.sum() - dequeuedCount.sum()));
+    }
+
+    /**
+     * @return how long (in milliseconds) the oldest stimulus queued for the given twin has been waiting, or 0 if it
+     * has none queued
+     */
+    public long getOldestStimulusAgeInMillis(DigitalTwinIdentifier twinIdentifier){
+        TwinStimulusQueue<QueuedStimulus> twinQueue = selectShard(twinIdentifier).get(twinIdentifier);
+        if(twinQueue == null){
+            return(0);
+        }
+        QueuedStimulus oldestStimulus = twinQueue.peek();
+        if(oldestStimulus == null){
+            return(0);
+        }
+        return((System.nanoTime() - oldestStimulus.getEnqueueTimeInNanos()) / 1000000);
+    }
+
+    public boolean isQueued(StimulusPackageIdentifier stimulusId){
+        return(queuedStimulusIds.contains(stimulusId));
+    }
+
+    public int getActiveTwinCount(){
+        int activeTwinCount = 0;
+        for(ConcurrentMap<DigitalTwinIdentifier, TwinStimulusQueue<QueuedStimulus>> shard: shards){
+            activeTwinCount += shard.size();
+        }
+        return(activeTwinCount);
+    }
+
+    public int getShardCount(){
+        return(shards.length);
+    }
+
+    public int getTwinQueueCapacity(){
+        return(twinQueueCapacity);
+    }
+
+    public TwinActivityQueueStatistics getStatistics(){
+        long dequeued = dequeuedCount.sum();
+        double meanWaitInMillis = (dequeued == 0) ? 0.0 : (totalWaitInNanos.sum() / 1000000.0) / dequeued;
+        return(new TwinActivityQueueStatistics(System.currentTimeMillis(), enqueuedCount.sum(), dequeued, duplicateCount.sum(),
+                rejectedCount.sum(), getActiveTwinCount(), meanWaitInMillis, maximumWaitInNanos.get() / 1000000.0));
+    }
+
+    private ConcurrentMap<DigitalTwinIdentifier, TwinStimulusQueue<QueuedStimulus>> selectShard(DigitalTwinIdentifier twinIdentifier){
+        int hash = twinIdentifier.hashCode();
+        return(shards[(hash ^ (hash >>> 16)) & shardMask]);
+    }
+
+    /**
+     * A queued stimulus, along with the time at which it was queued.
+     */
+    private static class QueuedStimulus {
+        private final StimulusPackage stimulus;
+        private final long enqueueTimeInNanos;
+
+        QueuedStimulus(StimulusPackage stimulus, long enqueueTimeInNanos){
+            this.stimulus = stimulus;
+            this.enqueueTimeInNanos = enqueueTimeInNanos;
+        }
+
+        StimulusPackage getStimulus() {
+            return stimulus;
+        }
+
+        long getEnqueueTimeInNanos() {
+            return enqueueTimeInNanos;
+        }
+    }
+}
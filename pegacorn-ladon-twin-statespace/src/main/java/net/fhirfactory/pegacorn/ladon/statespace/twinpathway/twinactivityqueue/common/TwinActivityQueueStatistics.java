@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.statespace.twinpathway.twinactivityqueue.common;
+
+/**
+ * A point-in-time snapshot of the counters of a TwinActivityQueueEngine. Throughput is derived by comparing two
+ * snapshots (see getDequeueRatePerSecondSince()).
+ */
+public class TwinActivityQueueStatistics {
+    private long snapshotTime;
+    private long enqueuedCount;
+    private long dequeuedCount;
+    private long duplicateCount;
+    private long rejectedCount;
+    private long depth;
+    private int activeTwinCount;
+    private double meanWaitInMillis;
+    private double maximumWaitInMillis;
+
+    public TwinActivityQueueStatistics(long snapshotTime, long enqueuedCount, long dequeuedCount, long duplicateCount, long rejectedCount,
+                                       int activeTwinCount, double meanWaitInMillis, double maximumWaitInMillis){
+        this.snapshotTime = snapshotTime;
+        this.enqueuedCount = enqueuedCount;
+        this.dequeuedCount = dequeuedCount;
+        this.duplicateCount = duplicateCount;
+        this.rejectedCount = rejectedCount;
+        this.depth = Math.max(0, enqueuedCount - dequeuedCount);
+        this.activeTwinCount = activeTwinCount;
+        this.meanWaitInMillis = meanWaitInMillis;
+        this.maximumWaitInMillis = maximumWaitInMillis;
+    }
+
+    /**
+     * The time (milliseconds since the epoch) at which the snapshot was taken.
+     */
+    public long getSnapshotTime() {
+        return snapshotTime;
+    }
+
+    public long getEnqueuedCount() {
+        return enqueuedCount;
+    }
+
+    public long getDequeuedCount() {
+        return dequeuedCount;
+    }
+
+    /**
+     * The number of stimuli refused because a stimulus with the same StimulusPackageIdentifier was already queued.
+     */
+    public long getDuplicateCount() {
+        return duplicateCount;
+    }
+
+    /**
+     * The number of stimuli refused because their twin's queue was full.
+     */
+    public long getRejectedCount() {
+        return rejectedCount;
+    }
+
+    /**
+     * The number of stimuli queued (across all twins).
+     */
+    public long getDepth() {
+        return depth;
+    }
+
+    public int getActiveTwinCount() {
+        return activeTwinCount;
+    }
+
+    /**
+     * The mean time the dequeued stimuli spent queued.
+     */
+    public double getMeanWaitInMillis() {
+        return meanWaitInMillis;
+    }
+
+    public double getMaximumWaitInMillis() {
+        return maximumWaitInMillis;
+    }
+
+    /**
+     * The rate at which stimuli were dequeued between an earlier snapshot and this one.
+     */
+    public double getDequeueRatePerSecondSince(TwinActivityQueueStatistics earlier){
+        long elapsed = snapshotTime - earlier.getSnapshotTime();
+        if(elapsed <= 0){
+            return(0.0);
+        }
+        return((dequeuedCount - earlier.getDequeuedCount()) * 1000.0 / elapsed);
+    }
+
+    @Override
+    public String toString() {
+        return "TwinActivityQueueStatistics{" +
+                "enqueuedCount=" + enqueuedCount +
+                ", dequeuedCount=" + dequeuedCount +
+                ", duplicateCount=" + duplicateCount +
+                ", rejectedCount=" + rejectedCount +
+                ", depth=" + depth +
+                ", activeTwinCount=" + activeTwinCount +
+                ", meanWaitInMillis=" + meanWaitInMillis +
+                ", maximumWaitInMillis=" + maximumWaitInMillis +
+                '}';
+    }
+}
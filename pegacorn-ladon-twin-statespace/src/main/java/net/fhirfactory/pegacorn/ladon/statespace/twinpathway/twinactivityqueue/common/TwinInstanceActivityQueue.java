@@ -23,55 +23,72 @@ package net.fhirfactory.pegacorn.ladon.statespace.twinpathway.twinactivityqueue.
 
 import net.fhirfactory.pegacorn.ladon.model.twin.DigitalTwinIdentifier;
 import net.fhirfactory.pegacorn.ladon.statespace.stimuli.model.StimulusPackage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import java.util.Queue;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import javax.annotation.PostConstruct;
 
+/**
+ * The queue of stimuli awaiting each Digital Twin instance (of a twin type). The queueing itself is done by a
+ * TwinActivityQueueEngine, whose shard count and per-twin capacity are taken from the "ladon.twin.activityqueue.*"
+ * system properties, or by overriding the specify*() methods.
+ */
 public abstract class TwinInstanceActivityQueue {
-    private ConcurrentHashMap<DigitalTwinIdentifier, ConcurrentLinkedQueue<StimulusPackage>> twinInstanceQueue;
+    private static final Logger LOG = LoggerFactory.getLogger(TwinInstanceActivityQueue.class);
+
+    private static final String SHARD_COUNT_PROPERTY = "ladon.twin.activityqueue.shards";
+    private static final String TWIN_QUEUE_CAPACITY_PROPERTY = "ladon.twin.activityqueue.capacity";
+
+    private TwinActivityQueueEngine queueEngine;
 
     public TwinInstanceActivityQueue() {
-        this.twinInstanceQueue = new ConcurrentHashMap<>();
+        this.queueEngine = null;
+    }
+
+    @PostConstruct
+    protected void initialise(){
+        getQueueEngine();
+    }
+
+    protected int specifyShardCount(){
+        return(Integer.getInteger(SHARD_COUNT_PROPERTY, TwinActivityQueueEngine.DEFAULT_SHARD_COUNT));
+    }
+
+    protected int specifyTwinQueueCapacity(){
+        return(Integer.getInteger(TWIN_QUEUE_CAPACITY_PROPERTY, TwinActivityQueueEngine.DEFAULT_TWIN_QUEUE_CAPACITY));
     }
 
-    public void addStimulus2Queue(DigitalTwinIdentifier twinInstanceIdentifier, StimulusPackage newStimuli) {
-        if (twinInstanceQueue.containsKey(twinInstanceIdentifier)) {
-            Queue<StimulusPackage> twinStimuli = twinInstanceQueue.get(twinInstanceIdentifier);
-            if (!twinStimuli.contains(newStimuli)) {
-                twinStimuli.add(newStimuli);
-            }
-        } else {
-            ConcurrentLinkedQueue<StimulusPackage> stimuliQueue = new ConcurrentLinkedQueue<>();
-            stimuliQueue.add(newStimuli);
-            twinInstanceQueue.put(twinInstanceIdentifier, stimuliQueue);
+    protected synchronized TwinActivityQueueEngine getQueueEngine(){
+        if(queueEngine == null){
+            LOG.debug(".getQueueEngine(): Creating the queue engine, shards --> {}, capacity --> {}", specifyShardCount(), specifyTwinQueueCapacity());
+            queueEngine = new TwinActivityQueueEngine(specifyShardCount(), specifyTwinQueueCapacity());
         }
+        return(queueEngine);
+    }
+
+    /**
+     * Adds a stimulus to the twin instance's queue, unless a stimulus with the same StimulusPackageIdentifier is
+     * already queued or the twin instance's queue is full.
+     *
+     * @return true if the stimulus was queued
+     */
+    public boolean addStimulus2Queue(DigitalTwinIdentifier twinInstanceIdentifier, StimulusPackage newStimuli) {
+        return(getQueueEngine().offer(twinInstanceIdentifier, newStimuli));
     }
 
     public StimulusPackage getNextStimulus(DigitalTwinIdentifier twinInstanceIdentifier) {
-        if (twinInstanceQueue.containsKey(twinInstanceIdentifier)) {
-            StimulusPackage nextStimulusPackage;
-            Queue<StimulusPackage> twinStimuli = twinInstanceQueue.get(twinInstanceIdentifier);
-            if (!twinStimuli.isEmpty()){
-                nextStimulusPackage = twinStimuli.poll();
-                if(twinStimuli.isEmpty()){
-                    twinInstanceQueue.remove(twinInstanceIdentifier);
-                }
-                return(nextStimulusPackage);
-            }
-            return(null);
-        }
-        return(null);
+        return(getQueueEngine().poll(twinInstanceIdentifier));
     }
 
     public int getStimulusCount(DigitalTwinIdentifier twinInstanceIdentifier){
-        if (twinInstanceQueue.containsKey(twinInstanceIdentifier)) {
-            StimulusPackage nextStimulusPackage;
-            Queue<StimulusPackage> twinStimuli = twinInstanceQueue.get(twinInstanceIdentifier);
-            if (!twinStimuli.isEmpty()) {
-                return (twinStimuli.size());
-            }
-        }
-        return(0);
+        return(getQueueEngine().getDepth(twinInstanceIdentifier));
+    }
+
+    public long getOldestStimulusAgeInMillis(DigitalTwinIdentifier twinInstanceIdentifier){
+        return(getQueueEngine().getOldestStimulusAgeInMillis(twinInstanceIdentifier));
+    }
+
+    public TwinActivityQueueStatistics getStatistics(){
+        return(getQueueEngine().getStatistics());
     }
 }
@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.statespace.twinpathway.twinactivityqueue.common;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded, lock-free, multi-producer queue of the stimuli awaiting a single Digital Twin instance.
+ *
+ * A producer claims a slot by a CAS on the producer index, and then publishes its element into the slot. The
+ * consumer side is serialised (by the consumer lock), so the consumer index is only ever advanced by one thread; a
+ * consumer that finds its slot claimed but not yet published waits (briefly) for the element. A producer never
+ * blocks: if the queue holds capacity elements, offer() returns OFFER_FULL.
+ *
+ * Once empty, the queue can be retired (tryRetire()), which closes it to producers. The retiring CAS only succeeds
+ * if no producer has claimed a slot since the queue was seen to be empty, so an element is never left in a retired
+ * queue; a producer that finds the queue retired gets OFFER_RETIRED and must obtain a new queue for the twin.
+ */
+class TwinStimulusQueue<E> {
+    static final int OFFER_ACCEPTED = 0;
+    static final int OFFER_FULL = 1;
+    static final int OFFER_RETIRED = 2;
+
+    private static final long RETIRED = Long.MIN_VALUE;
+
+    private final AtomicReferenceArray<E> slots;
+    private final int slotMask;
+    private final int capacity;
+    private final AtomicLong producerIndex;
+    private volatile long consumerIndex;
+    private final Object consumerLock;
+
+    TwinStimulusQueue(int capacity){
+        if(capacity <= 0 || capacity > (1 << 30)){
+            throw(new IllegalArgumentException("capacity must be between 1 and 2^30, was " + capacity));
+        }
+        int slotCount = Integer.highestOneBit(capacity);
+        if(slotCount < capacity){
+            slotCount = slotCount << 1;
+        }
+        this.slots = new AtomicReferenceArray<>(slotCount);
+        this.slotMask = slotCount - 1;
+        this.capacity = capacity;
+        this.producerIndex = new AtomicLong(0);
+        this.consumerIndex = 0;
+        this.consumerLock = new Object();
+    }
+
+    /**
+     * @return OFFER_ACCEPTED, OFFER_FULL or OFFER_RETIRED
+     */
+    int offer(E element){
+        while(true){
+            long claimedIndex = producerIndex.get();
+            if(claimedIndex == RETIRED){
+                return(OFFER_RETIRED);
+            }
+            if(claimedIndex - consumerIndex >= capacity){
+                return(OFFER_FULL);
+            }
+            if(producerIndex.compareAndSet(claimedIndex, claimedIndex + 1)){
+                slots.lazySet((int)(claimedIndex & slotMask), element);
+                return(OFFER_ACCEPTED);
+            }
+        }
+    }
+
+    /**
+     * @return the element at the head of the queue, or null if the queue is empty
+     */
+    E poll(){
+        synchronized(consumerLock){
+            long currentConsumerIndex = consumerIndex;
+            int slot = (int)(currentConsumerIndex & slotMask);
+            E element = slots.get(slot);
+            if(element == null){
+                long currentProducerIndex = producerIndex.get();
+                if(currentProducerIndex == RETIRED || currentProducerIndex == currentConsumerIndex){
+                    return(null);
+                }
+                // The slot has been claimed, but the producer hasn't yet published its element
+                while((element = slots.get(slot)) == null){
+                    Thread.yield();
+                }
+            }
+            slots.lazySet(slot, null);
+            consumerIndex = currentConsumerIndex + 1;
+            return(element);
+        }
+    }
+
+    /**
+     * @return the element at the head of the queue (without removing it), or null if there is no (published) head
+     */
+    E peek(){
+        synchronized(consumerLock){
+            return(slots.get((int)(consumerIndex & slotMask)));
+        }
+    }
+
+    /**
+     * Retires the queue, if it is empty.
+     *
+     * @return true if the queue was retired by this call
+     */
+    boolean tryRetire(){
+        synchronized(consumerLock){
+            return(producerIndex.compareAndSet(consumerIndex, RETIRED));
+        }
+    }
+
+    boolean isRetired(){
+        return(producerIndex.get() == RETIRED);
+    }
+
+    int size(){
+        long currentConsumerIndex = consumerIndex;
+        long currentProducerIndex = producerIndex.get();
+        if(currentProducerIndex == RETIRED){
+            return(0);
+        }
+        return((int)Math.max(0, currentProducerIndex - currentConsumerIndex));
+    }
+
+    boolean isEmpty(){
+        return(size() == 0);
+    }
+
+    int getCapacity(){
+        return(capacity);
+    }
+}
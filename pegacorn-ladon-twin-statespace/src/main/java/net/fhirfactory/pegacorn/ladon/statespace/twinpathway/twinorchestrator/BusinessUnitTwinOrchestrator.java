@@ -21,6 +21,8 @@
  */
 package net.fhirfactory.pegacorn.ladon.statespace.twinpathway.twinorchestrator;
 
+import net.fhirfactory.pegacorn.ladon.statespace.twinpathway.twinactivityqueue.BusinessUnitTwinInstanceActivityQueue;
+import net.fhirfactory.pegacorn.ladon.statespace.twinpathway.twinactivityqueue.common.TwinInstanceActivityQueue;
 import net.fhirfactory.pegacorn.ladon.statespace.twinpathway.twinorchestrator.common.TwinOrchestratorBase;
 import net.fhirfactory.pegacorn.ladon.statespace.twinpathwaycontroller.ICTSystemTwinPathwayController;
 import net.fhirfactory.pegacorn.ladon.statespace.twinpathwaycontroller.common.TwinPathwayControllerBase;
@@ -35,6 +37,9 @@ public class BusinessUnitTwinOrchestrator extends TwinOrchestratorBase {
     @Inject
     ICTSystemTwinPathwayController twinPathwayController;
 
+    @Inject
+    BusinessUnitTwinInstanceActivityQueue twinActivityQueue;
+
     @Override
     protected TwinPathwayControllerBase specifyPathwayController() {
         return (twinPathwayController);
@@ -44,4 +49,9 @@ public class BusinessUnitTwinOrchestrator extends TwinOrchestratorBase {
     protected TwinTypeEnum specifyTwinType() {
         return (TwinTypeEnum.BUSINESS_UNIT_TWIN);
     }
+
+    @Override
+    protected TwinInstanceActivityQueue specifyActivityQueue() {
+        return (twinActivityQueue);
+    }
 }
@@ -21,15 +21,20 @@
  */
 package net.fhirfactory.pegacorn.ladon.statespace.twinpathway.twinorchestrator;
 
+import net.fhirfactory.pegacorn.ladon.statespace.twinpathway.twinactivityqueue.EndpointTwinInstanceActivityQueue;
+import net.fhirfactory.pegacorn.ladon.statespace.twinpathway.twinactivityqueue.common.TwinInstanceActivityQueue;
 import net.fhirfactory.pegacorn.ladon.statespace.twinpathway.twinorchestrator.common.TwinOrchestratorBase;
 import net.fhirfactory.pegacorn.ladon.statespace.twinpathwaycontroller.common.TwinPathwayControllerBase;
 import net.fhirfactory.pegacorn.ladon.statespace.twinpathwaycontroller.common.TwinTypeEnum;
 
 import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
 
 @ApplicationScoped
 public class EndpointTwinOrchestrator extends TwinOrchestratorBase {
 
+    @Inject
+    EndpointTwinInstanceActivityQueue twinActivityQueue;
 
     @Override
     protected TwinPathwayControllerBase specifyPathwayController() {
@@ -40,4 +45,9 @@ public class EndpointTwinOrchestrator extends TwinOrchestratorBase {
     protected TwinTypeEnum specifyTwinType() {
         return (TwinTypeEnum.ENDPOINT_TWIN);
     }
+
+    @Override
+    protected TwinInstanceActivityQueue specifyActivityQueue() {
+        return (twinActivityQueue);
+    }
 }
@@ -23,6 +23,8 @@ package net.fhirfactory.pegacorn.ladon.statespace.twinpathway.twinorchestrator;
 
 import net.fhirfactory.pegacorn.ladon.statespace.twinpathwaycontroller.ICTSystemTwinPathwayController;
 import net.fhirfactory.pegacorn.ladon.statespace.twinpathwaycontroller.common.TwinPathwayControllerBase;
+import net.fhirfactory.pegacorn.ladon.statespace.twinpathway.twinactivityqueue.ICTSystemTwinInstanceActivityQueue;
+import net.fhirfactory.pegacorn.ladon.statespace.twinpathway.twinactivityqueue.common.TwinInstanceActivityQueue;
 import net.fhirfactory.pegacorn.ladon.statespace.twinpathway.twinorchestrator.common.TwinOrchestratorBase;
 import net.fhirfactory.pegacorn.ladon.statespace.twinpathwaycontroller.common.TwinTypeEnum;
 
@@ -35,6 +37,9 @@ public class ICTSystemTwinOrchestrator extends TwinOrchestratorBase {
     @Inject
     ICTSystemTwinPathwayController twinPathwayController;
 
+    @Inject
+    ICTSystemTwinInstanceActivityQueue twinActivityQueue;
+
     @Override
     protected TwinPathwayControllerBase specifyPathwayController() {
         return (twinPathwayController);
@@ -45,4 +50,8 @@ public class ICTSystemTwinOrchestrator extends TwinOrchestratorBase {
         return (TwinTypeEnum.ICTSYSTEM_TWIN);
     }
 
+    @Override
+    protected TwinInstanceActivityQueue specifyActivityQueue() {
+        return (twinActivityQueue);
+    }
 }
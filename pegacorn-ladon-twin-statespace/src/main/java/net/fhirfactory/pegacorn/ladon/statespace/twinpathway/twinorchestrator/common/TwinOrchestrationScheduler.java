@@ -0,0 +1,343 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.statespace.twinpathway.twinorchestrator.common;
+
+import net.fhirfactory.pegacorn.ladon.model.twin.DigitalTwinIdentifier;
+import net.fhirfactory.pegacorn.ladon.statespace.stimuli.model.StimulusPackage;
+import net.fhirfactory.pegacorn.ladon.statespace.twinpathway.twinactivityqueue.common.TwinInstanceActivityQueue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs the stimuli queued (in a TwinInstanceActivityQueue) for each Digital Twin instance, treating each twin as an
+ * actor with a mailbox:
+ *
+ * - A twin is signal()'d once stimuli have been queued for it. Its mailbox moves from IDLE to SCHEDULED (only once,
+ *   however many signals arrive) and is placed on a worker's ready deque.
+ * - At most one worker runs a given twin at a time, and processes its stimuli in queue order - so stimulus processors
+ *   need no per-twin locking of their own.
+ * - A run processes at most runQuantum stimuli. If the twin still has stimuli waiting it goes to the back of its
+ *   worker's ready deque, behind the other twins scheduled there, so a busy twin cannot monopolise a worker.
+ * - Each worker takes twins from the front of its own ready deque and, when that is empty, steals the oldest twin
+ *   from another worker's deque. Workers with nothing to run or steal park until signalled.
+ * - An idle mailbox with nothing queued is retired (IDLE to RETIRED, which is terminal) and removed, so the mailbox map
+ *   only holds twins with work in hand. A signal racing with the retirement creates a new mailbox.
+ *
+ * Starvation is measured as the "ready wait" of each run - the time between the twin being scheduled and a worker
+ * picking it up - and runs waiting longer than the starvation threshold are counted; see getStatistics().
+ */
+public class TwinOrchestrationScheduler {
+    private static final Logger LOG = LoggerFactory.getLogger(TwinOrchestrationScheduler.class);
+
+    public static final int DEFAULT_RUN_QUANTUM = 16;
+    public static final long DEFAULT_STARVATION_THRESHOLD_IN_MILLIS = 1000;
+
+    private static final int MAILBOX_IDLE = 0;
+    private static final int MAILBOX_SCHEDULED = 1;
+    private static final int MAILBOX_RUNNING = 2;
+    private static final int MAILBOX_RETIRED = 3;
+
+    // A parked worker re-scans at least this often, which bounds the cost of a wake-up going to a busy worker
+    private static final long IDLE_PARK_IN_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final TwinInstanceActivityQueue activityQueue;
+    private final TwinStimulusProcessor stimulusProcessor;
+    private final int runQuantum;
+    private final long starvationThresholdInNanos;
+    private final ConcurrentMap<DigitalTwinIdentifier, TwinMailbox> mailboxes;
+    private final TwinWorker[] workers;
+    private final ThreadLocal<TwinWorker> currentWorker;
+    private final ConcurrentLinkedQueue<TwinWorker> parkedWorkers;
+    private final AtomicInteger nextExternalWorker;
+    private volatile boolean running;
+
+    private final AtomicInteger scheduledTwinCount;
+    private final LongAdder runCount;
+    private final LongAdder stolenRunCount;
+    private final LongAdder processedCount;
+    private final LongAdder failedCount;
+    private final LongAdder preemptedCount;
+    private final LongAdder starvedRunCount;
+    private final LongAdder totalReadyWaitInNanos;
+    private final LongAccumulator maximumReadyWaitInNanos;
+
+    public TwinOrchestrationScheduler(TwinInstanceActivityQueue activityQueue, TwinStimulusProcessor stimulusProcessor, int workerCount,
+                                      int runQuantum, long starvationThresholdInMillis, String workerNamePrefix){
+        if(workerCount <= 0){
+            throw(new IllegalArgumentException("workerCount must be positive, was " + workerCount));
+        }
+        if(runQuantum <= 0){
+            throw(new IllegalArgumentException("runQuantum must be positive, was " + runQuantum));
+        }
+        this.activityQueue = activityQueue;
+        this.stimulusProcessor = stimulusProcessor;
+        this.runQuantum = runQuantum;
+        this.starvationThresholdInNanos = TimeUnit.MILLISECONDS.toNanos(starvationThresholdInMillis);
+        this.mailboxes = new ConcurrentHashMap<>();
+        this.currentWorker = new ThreadLocal<>();
+        this.parkedWorkers = new ConcurrentLinkedQueue<>();
+        this.nextExternalWorker = new AtomicInteger(0);
+        this.scheduledTwinCount = new AtomicInteger(0);
+        this.runCount = new LongAdder();
+        this.stolenRunCount = new LongAdder();
+        this.processedCount = new LongAdder();
+        this.failedCount = new LongAdder();
+        this.preemptedCount = new LongAdder();
+        this.starvedRunCount = new LongAdder();
+        this.totalReadyWaitInNanos = new LongAdder();
+        this.maximumReadyWaitInNanos = new LongAccumulator(Long::max, 0);
+        this.running = true;
+        this.workers = new TwinWorker[workerCount];
+        for(int worker = 0; worker < workerCount; worker++){
+            this.workers[worker] = new TwinWorker(workerNamePrefix + "-" + (worker + 1));
+        }
+        for(TwinWorker worker: workers){
+            worker.thread.start();
+        }
+    }
+
+    /**
+     * Tells the scheduler that stimuli have been queued for the twin. The twin is scheduled unless it is already
+     * scheduled or running (in which case the current run will find the new stimuli).
+     */
+    public void signal(DigitalTwinIdentifier twinIdentifier){
+        while(true){
+            TwinMailbox mailbox = mailboxes.computeIfAbsent(twinIdentifier, TwinMailbox::new);
+            int state = mailbox.state.get();
+            if(state == MAILBOX_RETIRED){
+                mailboxes.remove(twinIdentifier, mailbox);
+                continue;
+            }
+            if(state != MAILBOX_IDLE){
+                return;
+            }
+            if(mailbox.state.compareAndSet(MAILBOX_IDLE, MAILBOX_SCHEDULED)){
+                schedule(mailbox);
+                return;
+            }
+        }
+    }
+
+    public boolean isScheduled(DigitalTwinIdentifier twinIdentifier){
+        TwinMailbox mailbox = mailboxes.get(twinIdentifier);
+        if(mailbox == null){
+            return(false);
+        }
+        int state = mailbox.state.get();
+        return(state == MAILBOX_SCHEDULED || state == MAILBOX_RUNNING);
+    }
+
+    /**
+     * Waits until no twin is scheduled or running, or the timeout elapses.
+     *
+     * @return true if the scheduler went idle within the timeout
+     */
+    public boolean awaitIdle(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while(scheduledTwinCount.get() > 0){
+            if(System.nanoTime() - deadline > 0){
+                return(false);
+            }
+            Thread.sleep(1);
+        }
+        return(true);
+    }
+
+    /**
+     * Stops the workers once their current runs complete. Stimuli not yet run stay in the activity queue.
+     */
+    public void shutdown(){
+        LOG.debug(".shutdown(): Entry, scheduledTwinCount --> {}", scheduledTwinCount.get());
+        running = false;
+        for(TwinWorker worker: workers){
+            LockSupport.unpark(worker.thread);
+        }
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for(TwinWorker worker: workers){
+            long remainingInMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if(remainingInMillis <= 0){
+                return(!worker.thread.isAlive());
+            }
+            worker.thread.join(remainingInMillis);
+            if(worker.thread.isAlive()){
+                return(false);
+            }
+        }
+        return(true);
+    }
+
+    public int getRunQuantum(){
+        return(runQuantum);
+    }
+
+    public int getWorkerCount(){
+        return(workers.length);
+    }
+
+    public TwinSchedulerStatistics getStatistics(){
+        long runs = runCount.sum();
+        double meanReadyWaitInMillis = (runs == 0) ? 0.0 : totalReadyWaitInNanos.sum() / (runs * 1000000.0);
+        return(new TwinSchedulerStatistics(System.currentTimeMillis(), runs, stolenRunCount.sum(), processedCount.sum(),
+                failedCount.sum(), preemptedCount.sum(), starvedRunCount.sum(), meanReadyWaitInMillis,
+                maximumReadyWaitInNanos.get() / 1000000.0, scheduledTwinCount.get(), workers.length));
+    }
+
+    //
+    // Scheduling
+    //
+
+    private void schedule(TwinMailbox mailbox){
+        scheduledTwinCount.incrementAndGet();
+        mailbox.scheduledAtNanos = System.nanoTime();
+        // A worker rescheduling (or signalling) a twin keeps it on its own deque; anyone else spreads twins round-robin
+        TwinWorker worker = currentWorker.get();
+        if(worker == null){
+            worker = workers[(nextExternalWorker.getAndIncrement() & Integer.MAX_VALUE) % workers.length];
+        }
+        worker.readyTwins.offerLast(mailbox);
+        TwinWorker parkedWorker = parkedWorkers.poll();
+        if(parkedWorker != null){
+            LockSupport.unpark(parkedWorker.thread);
+        }
+    }
+
+    private TwinMailbox steal(TwinWorker thief){
+        int start = ThreadLocalRandom.current().nextInt(workers.length);
+        for(int offset = 0; offset < workers.length; offset++){
+            TwinWorker victim = workers[(start + offset) % workers.length];
+            if(victim != thief){
+                TwinMailbox mailbox = victim.readyTwins.pollFirst();
+                if(mailbox != null){
+                    stolenRunCount.increment();
+                    return(mailbox);
+                }
+            }
+        }
+        return(null);
+    }
+
+    private void runMailbox(TwinMailbox mailbox){
+        mailbox.state.set(MAILBOX_RUNNING);
+        long readyWait = System.nanoTime() - mailbox.scheduledAtNanos;
+        runCount.increment();
+        totalReadyWaitInNanos.add(readyWait);
+        maximumReadyWaitInNanos.accumulate(readyWait);
+        if(readyWait > starvationThresholdInNanos){
+            starvedRunCount.increment();
+            LOG.debug(".runMailbox(): Twin waited {}ms for a worker, twinIdentifier --> {}", TimeUnit.NANOSECONDS.toMillis(readyWait), mailbox.twinIdentifier);
+        }
+        int processed = 0;
+        while(processed < runQuantum){
+            StimulusPackage stimulus = activityQueue.getNextStimulus(mailbox.twinIdentifier);
+            if(stimulus == null){
+                break;
+            }
+            processed += 1;
+            try {
+                stimulusProcessor.processStimulus(mailbox.twinIdentifier, stimulus);
+                processedCount.increment();
+            } catch(RuntimeException ex){
+                failedCount.increment();
+                LOG.error(".runMailbox(): Stimulus processing failed, twinIdentifier --> {}, stimulusId --> {}", mailbox.twinIdentifier, stimulus.getId(), ex);
+            }
+        }
+        // Go idle before looking at the queue again, so that a stimulus queued after our last poll is seen either by
+        // us (below) or by the producer's signal() (which will find the mailbox IDLE)
+        mailbox.state.set(MAILBOX_IDLE);
+        if(activityQueue.getStimulusCount(mailbox.twinIdentifier) > 0){
+            if(processed == runQuantum){
+                preemptedCount.increment();
+            }
+            if(mailbox.state.compareAndSet(MAILBOX_IDLE, MAILBOX_SCHEDULED)){
+                schedule(mailbox);
+            }
+        } else if(mailbox.state.compareAndSet(MAILBOX_IDLE, MAILBOX_RETIRED)){
+            mailboxes.remove(mailbox.twinIdentifier, mailbox);
+        }
+        // Only now is this run over (a reschedule, above, has already been counted)
+        scheduledTwinCount.decrementAndGet();
+    }
+
+    private void workerLoop(TwinWorker worker){
+        currentWorker.set(worker);
+        LOG.debug(".workerLoop(): Worker started, worker --> {}", worker.thread.getName());
+        while(running){
+            TwinMailbox mailbox = worker.readyTwins.pollFirst();
+            if(mailbox == null){
+                mailbox = steal(worker);
+            }
+            if(mailbox == null){
+                // Advertise that we're parking, then look once more so that a twin scheduled in between isn't missed
+                parkedWorkers.offer(worker);
+                mailbox = steal(worker);
+                if(mailbox == null){
+                    mailbox = worker.readyTwins.pollFirst();
+                }
+                if(mailbox == null){
+                    LockSupport.parkNanos(this, IDLE_PARK_IN_NANOS);
+                    parkedWorkers.remove(worker);
+                    continue;
+                }
+                parkedWorkers.remove(worker);
+            }
+            runMailbox(mailbox);
+        }
+        LOG.debug(".workerLoop(): Worker stopped, worker --> {}", worker.thread.getName());
+    }
+
+    private class TwinMailbox {
+        private final DigitalTwinIdentifier twinIdentifier;
+        private final AtomicInteger state;
+        // Written before the mailbox is placed on a ready deque, which publishes it to the worker that takes it
+        private long scheduledAtNanos;
+
+        TwinMailbox(DigitalTwinIdentifier twinIdentifier){
+            this.twinIdentifier = twinIdentifier;
+            this.state = new AtomicInteger(MAILBOX_IDLE);
+        }
+    }
+
+    private class TwinWorker {
+        private final ConcurrentLinkedDeque<TwinMailbox> readyTwins;
+        private final Thread thread;
+
+        TwinWorker(String threadName){
+            this.readyTwins = new ConcurrentLinkedDeque<>();
+            this.thread = new Thread(() -> workerLoop(this), threadName);
+            this.thread.setDaemon(true);
+        }
+    }
+}
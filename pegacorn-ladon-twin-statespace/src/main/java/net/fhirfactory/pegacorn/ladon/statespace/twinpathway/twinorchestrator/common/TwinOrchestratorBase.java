@@ -21,6 +21,7 @@
  */
 package net.fhirfactory.pegacorn.ladon.statespace.twinpathway.twinorchestrator.common;
 
+import net.fhirfactory.pegacorn.ladon.model.behaviours.BehaviourIdentifier;
 import net.fhirfactory.pegacorn.ladon.model.behaviours.ExplicitStimulus2TwinInstanceMap;
 import net.fhirfactory.pegacorn.ladon.model.stimuli.Stimulus;
 import net.fhirfactory.pegacorn.ladon.model.twin.DigitalTwinIdentifier;
@@ -28,25 +29,40 @@ import net.fhirfactory.pegacorn.ladon.processingplant.LadonProcessingPlant;
 import net.fhirfactory.pegacorn.ladon.statespace.stimuli.model.BehaviourCentricExclusiveFilterRulesInterface;
 import net.fhirfactory.pegacorn.ladon.statespace.stimuli.model.BehaviourCentricInclusiveFilterRulesInterface;
 import net.fhirfactory.pegacorn.ladon.statespace.stimuli.model.StimulusPackage;
+import net.fhirfactory.pegacorn.ladon.statespace.twinpathway.twinactivityqueue.common.TwinInstanceActivityQueue;
 import net.fhirfactory.pegacorn.ladon.statespace.twinpathwaycontroller.common.TwinPathwayControllerBase;
 import net.fhirfactory.pegacorn.ladon.statespace.twinpathwaycontroller.common.TwinTypeEnum;
 import net.fhirfactory.pegacorn.petasos.model.topics.TopicToken;
 import org.apache.camel.builder.RouteBuilder;
 import org.hl7.fhir.r4.model.Identifier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.inject.Inject;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
 
+/**
+ * Orchestrates the Digital Twin instances of one twin type: stimuli are queued per twin in the type's
+ * TwinInstanceActivityQueue and run by a TwinOrchestrationScheduler, which guarantees per-twin ordering and that no
+ * twin is run by more than one worker at a time. The worker count, run quantum and starvation threshold are taken
+ * from the "ladon.twin.orchestrator.*" system properties, or by overriding the specify*() methods.
+ */
 public abstract class TwinOrchestratorBase extends RouteBuilder {
+    private static final Logger LOG = LoggerFactory.getLogger(TwinOrchestratorBase.class);
+
+    private static final String WORKER_COUNT_PROPERTY = "ladon.twin.orchestrator.workers";
+    private static final String RUN_QUANTUM_PROPERTY = "ladon.twin.orchestrator.quantum";
+    private static final String STARVATION_THRESHOLD_PROPERTY = "ladon.twin.orchestrator.starvation.threshold";
 
     private ConcurrentHashMap<Stimulus, DigitalTwinIdentifier> stimulusInterestSet;
     private List<BehaviourCentricInclusiveFilterRulesInterface> inclusiveFilterList;
     private List<BehaviourCentricExclusiveFilterRulesInterface> exclusiveFilterList;
     private TwinTypeEnum twinType;
+    private TwinOrchestrationScheduler scheduler;
 
     @Inject
     private LadonProcessingPlant ladonPlant;
@@ -58,18 +74,96 @@ public abstract class TwinOrchestratorBase extends RouteBuilder {
     @PostConstruct
     protected void initialise(){
         ladonPlant.initialisePlant();
+        getScheduler();
+    }
 
+    @PreDestroy
+    protected void shutdown(){
+        LOG.debug(".shutdown(): Entry, twinType --> {}", twinType);
+        synchronized(this){
+            if(scheduler != null){
+                scheduler.shutdown();
+            }
+        }
     }
 
     abstract protected TwinPathwayControllerBase specifyPathwayController();
     abstract protected TwinTypeEnum specifyTwinType();
+    abstract protected TwinInstanceActivityQueue specifyActivityQueue();
 
-    public void processNextStimulusPackageForInstance(Identifier instanceId){
+    protected int specifyWorkerCount(){
+        return(Integer.getInteger(WORKER_COUNT_PROPERTY, Runtime.getRuntime().availableProcessors()));
+    }
 
+    protected int specifyRunQuantum(){
+        return(Integer.getInteger(RUN_QUANTUM_PROPERTY, TwinOrchestrationScheduler.DEFAULT_RUN_QUANTUM));
+    }
+
+    protected long specifyStarvationThresholdInMillis(){
+        return(Long.getLong(STARVATION_THRESHOLD_PROPERTY, TwinOrchestrationScheduler.DEFAULT_STARVATION_THRESHOLD_IN_MILLIS));
+    }
+
+    protected synchronized TwinOrchestrationScheduler getScheduler(){
+        if(scheduler == null){
+            LOG.debug(".getScheduler(): Creating the scheduler, twinType --> {}, workers --> {}, quantum --> {}", twinType, specifyWorkerCount(), specifyRunQuantum());
+            scheduler = new TwinOrchestrationScheduler(specifyActivityQueue(), this::runStimulus, specifyWorkerCount(),
+                    specifyRunQuantum(), specifyStarvationThresholdInMillis(), "TwinOrchestrator-" + twinType);
+        }
+        return(scheduler);
+    }
+
+    /**
+     * Queues a stimulus for a twin instance and schedules the twin to run.
+     *
+     * @return true if the stimulus was queued (see TwinInstanceActivityQueue.addStimulus2Queue())
+     */
+    public boolean submitStimulus(DigitalTwinIdentifier twinIdentifier, StimulusPackage stimulus){
+        boolean queued = specifyActivityQueue().addStimulus2Queue(twinIdentifier, stimulus);
+        if(queued){
+            getScheduler().signal(twinIdentifier);
+        }
+        return(queued);
+    }
+
+    /**
+     * Schedules a twin instance to run its queued stimuli (if it isn't already scheduled or running).
+     */
+    public void orchestrate(DigitalTwinIdentifier twinIdentifier){
+        getScheduler().signal(twinIdentifier);
+    }
+
+    public void processNextStimulusPackageForInstance(Identifier instanceId){
+        orchestrateInstance(instanceId);
     }
 
     public void orchestrateInstance(Identifier instanceId){
+        orchestrate(new DigitalTwinIdentifier(instanceId, null));
+    }
+
+    public TwinSchedulerStatistics getSchedulerStatistics(){
+        return(getScheduler().getStatistics());
+    }
 
+    /**
+     * Processes one stimulus for a twin instance; subclasses override this to apply their behaviours. It is only
+     * called by the scheduler, and never concurrently for the same twin.
+     */
+    protected void processStimulus(DigitalTwinIdentifier twinIdentifier, StimulusPackage stimulus){
+        LOG.debug(".processStimulus(): No behaviours to apply, twinType --> {}, stimulusId --> {}", twinType, stimulus.getId());
+    }
+
+    private void runStimulus(DigitalTwinIdentifier twinIdentifier, StimulusPackage stimulus){
+        // Show the twin as active (in the targeted behaviour) in the pathway controller while the stimulus is processed
+        TwinPathwayControllerBase pathwayController = specifyPathwayController();
+        BehaviourIdentifier targetBehaviour = stimulus.getTargetBehaviourIdentifier();
+        boolean locked = (pathwayController != null && targetBehaviour != null) && pathwayController.lockTwinInstance(twinIdentifier, targetBehaviour);
+        try {
+            processStimulus(twinIdentifier, stimulus);
+        } finally {
+            if(locked){
+                pathwayController.unlockTwinInstance(twinIdentifier);
+            }
+        }
     }
 
     @Override
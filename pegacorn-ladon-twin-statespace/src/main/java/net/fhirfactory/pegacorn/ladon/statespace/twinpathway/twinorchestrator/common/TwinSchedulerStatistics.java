@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2020 Mark A. Hunter
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fhirfactory.pegacorn.ladon.statespace.twinpathway.twinorchestrator.common;
+
+/**
+ * A point-in-time snapshot of the counters of a TwinOrchestrationScheduler. The "ready wait" of a run is the time a
+ * twin spent scheduled (with stimuli waiting) before a worker picked it up; runs whose ready wait exceeded the
+ * scheduler's starvation threshold are counted as starved.
+ */
+public class TwinSchedulerStatistics {
+    private long snapshotTime;
+    private long runCount;
+    private long stolenRunCount;
+    private long processedCount;
+    private long failedCount;
+    private long preemptedCount;
+    private long starvedRunCount;
+    private double meanReadyWaitInMillis;
+    private double maximumReadyWaitInMillis;
+    private int scheduledTwinCount;
+    private int workerCount;
+
+    public TwinSchedulerStatistics(long snapshotTime, long runCount, long stolenRunCount, long processedCount, long failedCount, long preemptedCount,
+                                   long starvedRunCount, double meanReadyWaitInMillis, double maximumReadyWaitInMillis,
+                                   int scheduledTwinCount, int workerCount){
+        this.snapshotTime = snapshotTime;
+        this.runCount = runCount;
+        this.stolenRunCount = stolenRunCount;
+        this.processedCount = processedCount;
+        this.failedCount = failedCount;
+        this.preemptedCount = preemptedCount;
+        this.starvedRunCount = starvedRunCount;
+        this.meanReadyWaitInMillis = meanReadyWaitInMillis;
+        this.maximumReadyWaitInMillis = maximumReadyWaitInMillis;
+        this.scheduledTwinCount = scheduledTwinCount;
+        this.workerCount = workerCount;
+    }
+
+    /**
+     * The time (milliseconds since the epoch) at which the snapshot was taken.
+     */
+    public long getSnapshotTime() {
+        return snapshotTime;
+    }
+
+    /**
+     * The number of times a worker has run a twin (each run processes up to one run quantum of stimuli).
+     */
+    public long getRunCount() {
+        return runCount;
+    }
+
+    /**
+     * The number of runs taken from another worker's ready deque.
+     */
+    public long getStolenRunCount() {
+        return stolenRunCount;
+    }
+
+    public long getProcessedCount() {
+        return processedCount;
+    }
+
+    /**
+     * The number of stimuli whose processing threw an exception.
+     */
+    public long getFailedCount() {
+        return failedCount;
+    }
+
+    /**
+     * The number of runs that used their whole run quantum with stimuli still waiting, and so yielded the worker.
+     */
+    public long getPreemptedCount() {
+        return preemptedCount;
+    }
+
+    public long getStarvedRunCount() {
+        return starvedRunCount;
+    }
+
+    public double getMeanReadyWaitInMillis() {
+        return meanReadyWaitInMillis;
+    }
+
+    public double getMaximumReadyWaitInMillis() {
+        return maximumReadyWaitInMillis;
+    }
+
+    /**
+     * The number of twins currently scheduled or running.
+     */
+    public int getScheduledTwinCount() {
+        return scheduledTwinCount;
+    }
+
+    public int getWorkerCount() {
+        return workerCount;
+    }
+
+    /**
+     * The number of stimuli processed per second between an earlier snapshot and this one.
+     */
+    public double getProcessingRatePerSecondSince(TwinSchedulerStatistics earlier){
+        long elapsed = snapshotTime - earlier.getSnapshotTime();
+        if(elapsed <= 0){
+            return(0.0);
+        }
+        return((processedCount - earlier.getProcessedCount()) * 1000.0 / elapsed);
+    }
+
+    @Override
+    public String toString() {
+        return "TwinSchedulerStatistics{" +
+                "snapshotTime=" + snapshotTime +
+                ", runCount=" + runCount +
+                ", stolenRunCount=" + stolenRunCount +
+                ", processedCount=" + processedCount +
+                ", failedCount=" + failedCount +
+                ", preemptedCount=" + preemptedCount +
+                ", starvedRunCount=" + starvedRunCount +
+                ", meanReadyWaitInMillis=" + meanReadyWaitInMillis +
+                ", maximumReadyWaitInMillis=" + maximumReadyWaitInMillis +
+                ", scheduledTwinCount=" + scheduledTwinCount +
+                ", workerCount=" + workerCount +
+                '}';
+    }
+}
@@ -46,32 +46,24 @@ public abstract class TwinPathwayControllerBase {
 
     // Twin Instance Active Status
 
-    public void lockTwinInstance(DigitalTwinIdentifier twinIdentifier, BehaviourIdentifier behaviourIdentifier){
-        if(twinInstanceActiveStatus.containsKey(twinIdentifier)){
-            return;
-        }
-        twinInstanceActiveStatus.put(twinIdentifier, behaviourIdentifier);
+    /**
+     * Marks the twin instance as active in the given behaviour.
+     *
+     * @return true if the twin was locked, false if it was already locked (by any behaviour)
+     */
+    public boolean lockTwinInstance(DigitalTwinIdentifier twinIdentifier, BehaviourIdentifier behaviourIdentifier){
+        return(twinInstanceActiveStatus.putIfAbsent(twinIdentifier, behaviourIdentifier) == null);
     }
 
     public void unlockTwinInstance(DigitalTwinIdentifier twinIdentifier){
-        if(twinInstanceActiveStatus.containsKey(twinIdentifier)){
-            twinInstanceActiveStatus.remove(twinIdentifier);
-        }
+        twinInstanceActiveStatus.remove(twinIdentifier);
     }
 
     public boolean isTwinLocked(DigitalTwinIdentifier twinIdentifier){
-        if(twinInstanceActiveStatus.containsKey(twinIdentifier)){
-            return(true);
-        } else {
-            return(false);
-        }
+        return(twinInstanceActiveStatus.containsKey(twinIdentifier));
     }
 
     public BehaviourIdentifier getTwinActiveBehaviour(DigitalTwinIdentifier twinIdentifier){
-        if(twinInstanceActiveStatus.containsKey(twinIdentifier)){
-            return(twinInstanceActiveStatus.get(twinIdentifier));
-        } else {
-            return(null);
-        }
+        return(twinInstanceActiveStatus.get(twinIdentifier));
     }
 }
@@ -0,0 +1,175 @@
+package net.fhirfactory.pegacorn.ladon.statespace.inputs.staging;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.Endpoint;
+import org.apache.camel.ProducerTemplate;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.impl.DefaultCamelContext;
+
+/**
+ * Compares the StateSpace staging hop as it was - one pass-through route per staged route, so three routes for the
+ * shared Patient topic - against the single demultiplexing route of the StateSpaceStagingDemuxWUP, both built from
+ * StateSpaceStagingResourceTypes.STAGED_ROUTES, on startup time (creating and starting a CamelContext with the
+ * routes) and per-message latency (delivering one message per staged ingres topic to every route subscribed to it).
+ * Only the staging routes themselves are modelled (with direct: endpoints), not the Petasos ingres/egress routes that
+ * each WUP adds, so the real startup saving is larger than reported here.
+ *
+ * Run with: mvn -pl pegacorn-ladon-twin-statespace test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=net.fhirfactory.pegacorn.ladon.statespace.inputs.staging.StateSpaceStagingRouteBenchmark
+ */
+public class StateSpaceStagingRouteBenchmark {
+
+    private static final int STARTUP_ROUNDS = 5;
+    private static final int WARMUP_MESSAGES = 50000;
+    private static final int MEASURED_MESSAGES = 200000;
+
+    private static final String INGRES_TOPIC_HEADER = "IngresTopic";
+    private static final String EGRESS_TOPIC_HEADER = "EgressTopic";
+    private static final String PUBSUB_ENDPOINT = "direct:pubsub";
+
+    public static void main(String[] args) throws Exception {
+        List<StateSpaceStagingResourceTypes.StagingRoute> routes = StateSpaceStagingResourceTypes.STAGED_ROUTES;
+        Map<String, List<String>> dispatchTable = StateSpaceStagingResourceTypes.egressResourceTypesByIngresResourceType();
+        for(int round = 0; round < STARTUP_ROUNDS; round++){
+            long perTopicStartup = measureStartupInMillis(perTopicRoutes(routes));
+            long demuxStartup = measureStartupInMillis(demuxRoute(dispatchTable));
+            System.out.println(String.format("startup round %d: per-topic routes (%d) %dms, demux route %dms",
+                    round, routes.size(), perTopicStartup, demuxStartup));
+        }
+        String[] ingresTypes = dispatchTable.keySet().toArray(new String[0]);
+        String[][] perTopicEndpoints = new String[ingresTypes.length][];
+        String[][] demuxEndpoints = new String[ingresTypes.length][];
+        for(int index = 0; index < ingresTypes.length; index++){
+            // Petasos delivers the ingres topic to every WUP subscribed to it
+            List<String> subscribedRoutes = new ArrayList<>();
+            for(int routeIndex = 0; routeIndex < routes.size(); routeIndex++){
+                if(routes.get(routeIndex).getIngresResourceType().equals(ingresTypes[index])){
+                    subscribedRoutes.add("direct:staging-" + routeIndex);
+                }
+            }
+            perTopicEndpoints[index] = subscribedRoutes.toArray(new String[0]);
+            demuxEndpoints[index] = new String[]{"direct:staging"};
+        }
+        measureLatency("per-topic", perTopicRoutes(routes), ingresTypes, perTopicEndpoints);
+        measureLatency("demux", demuxRoute(dispatchTable), ingresTypes, demuxEndpoints);
+    }
+
+    //
+    // The two route sets
+    //
+
+    private static RouteBuilder perTopicRoutes(List<StateSpaceStagingResourceTypes.StagingRoute> routes){
+        return(new RouteBuilder() {
+            @Override
+            public void configure() {
+                for(int routeIndex = 0; routeIndex < routes.size(); routeIndex++){
+                    String egressTopic = egressTopicOf(routes.get(routeIndex).getEgressResourceType());
+                    from("direct:staging-" + routeIndex)
+                            .routeId("staging-" + routeIndex)
+                            .process(exchange -> exchange.getIn().setHeader(EGRESS_TOPIC_HEADER, egressTopic))
+                            .to(PUBSUB_ENDPOINT);
+                }
+                from(PUBSUB_ENDPOINT).routeId("pubsub").process(exchange -> exchange.getIn().getHeader(EGRESS_TOPIC_HEADER));
+            }
+        });
+    }
+
+    private static RouteBuilder demuxRoute(Map<String, List<String>> routeTable){
+        Map<String, List<String>> dispatchTable = new HashMap<>();
+        for(Map.Entry<String, List<String>> route: routeTable.entrySet()){
+            List<String> egressTopics = new ArrayList<>();
+            for(String egressType: route.getValue()){
+                egressTopics.add(egressTopicOf(egressType));
+            }
+            dispatchTable.put(ingresTopicOf(route.getKey()), egressTopics);
+        }
+        return(new RouteBuilder() {
+            @Override
+            public void configure() {
+                // One exchange carries every egress payload, as the UoW's egress content does
+                from("direct:staging")
+                        .routeId("staging-demux")
+                        .process(exchange -> exchange.getIn().setHeader(EGRESS_TOPIC_HEADER,
+                                dispatchTable.get(exchange.getIn().getHeader(INGRES_TOPIC_HEADER, String.class))))
+                        .to(PUBSUB_ENDPOINT);
+                from(PUBSUB_ENDPOINT).routeId("pubsub").process(exchange -> exchange.getIn().getHeader(EGRESS_TOPIC_HEADER));
+            }
+        });
+    }
+
+    //
+    // Measurement
+    //
+
+    private static long measureStartupInMillis(RouteBuilder routes) throws Exception {
+        long startTime = System.nanoTime();
+        CamelContext context = new DefaultCamelContext();
+        context.addRoutes(routes);
+        context.start();
+        long elapsed = System.nanoTime() - startTime;
+        context.stop();
+        return(TimeUnit.NANOSECONDS.toMillis(elapsed));
+    }
+
+    private static void measureLatency(String name, RouteBuilder routes, String[] ingresTypes, String[][] endpointUris) throws Exception {
+        CamelContext context = new DefaultCamelContext();
+        context.addRoutes(routes);
+        context.start();
+        ProducerTemplate template = context.createProducerTemplate();
+        // Resolve the endpoints up front, as Petasos' topic routing would, so that only the routes are measured
+        Endpoint[][] endpoints = new Endpoint[ingresTypes.length][];
+        String[] ingresTopics = new String[ingresTypes.length];
+        for(int index = 0; index < ingresTypes.length; index++){
+            endpoints[index] = new Endpoint[endpointUris[index].length];
+            for(int subscriber = 0; subscriber < endpointUris[index].length; subscriber++){
+                endpoints[index][subscriber] = context.getEndpoint(endpointUris[index][subscriber]);
+            }
+            ingresTopics[index] = ingresTopicOf(ingresTypes[index]);
+        }
+        String body = "{\"resourceType\":\"Observation\"}";
+        LongAdder sink = new LongAdder();
+        for(int message = 0; message < WARMUP_MESSAGES; message++){
+            int index = message % ingresTypes.length;
+            for(Endpoint endpoint: endpoints[index]){
+                template.sendBodyAndHeader(endpoint, body, INGRES_TOPIC_HEADER, ingresTopics[index]);
+                sink.increment();
+            }
+        }
+        long[] latencies = new long[MEASURED_MESSAGES];
+        for(int message = 0; message < MEASURED_MESSAGES; message++){
+            int index = message % ingresTypes.length;
+            long sendTime = System.nanoTime();
+            for(Endpoint endpoint: endpoints[index]){
+                template.sendBodyAndHeader(endpoint, body, INGRES_TOPIC_HEADER, ingresTopics[index]);
+                sink.increment();
+            }
+            latencies[message] = System.nanoTime() - sendTime;
+        }
+        template.stop();
+        context.stop();
+        Arrays.sort(latencies);
+        long total = 0;
+        for(long latency: latencies){
+            total += latency;
+        }
+        System.out.println(String.format("%s: %d messages, mean %.2fus, p50 %.2fus, p99 %.2fus (sent %d)", name, MEASURED_MESSAGES,
+                total / (MEASURED_MESSAGES * 1000.0), latencies[MEASURED_MESSAGES / 2] / 1000.0,
+                latencies[(int)(MEASURED_MESSAGES * 0.99)] / 1000.0, sink.sum()));
+    }
+
+    private static String ingresTopicOf(String resourceType){
+        return("FHIR.R4." + resourceType + "|" + StateSpaceStagingResourceTypes.SOURCE_DISCRIMINATOR + "=" + StateSpaceStagingResourceTypes.NORMALISER_SOURCE);
+    }
+
+    private static String egressTopicOf(String resourceType){
+        return("FHIR.R4." + resourceType + "|" + StateSpaceStagingResourceTypes.SOURCE_DISCRIMINATOR + "=" + StateSpaceStagingResourceTypes.PUBSUB_SOURCE);
+    }
+}
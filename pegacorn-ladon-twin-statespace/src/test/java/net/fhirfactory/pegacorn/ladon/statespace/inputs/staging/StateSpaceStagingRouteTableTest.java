@@ -0,0 +1,167 @@
+package net.fhirfactory.pegacorn.ladon.statespace.inputs.staging;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class StateSpaceStagingRouteTableTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(StateSpaceStagingRouteTableTest.class);
+
+    // The per-resource staging WUPs the demux replaced --> {WUP, subscribed resource type, published resource type}
+    private static final String[][] BASELINE_ROUTES = {
+            {"AccountSSTopic", "Account", "Account"},
+            {"AdverseEventSSTopic", "AdverseEvent", "AdverseEvent"},
+            {"AllergyIntoleranceSSTopic", "AllergyIntolerance", "AllergyIntolerance"},
+            {"AppointmentSSTopic", "Appointment", "Appointment"},
+            {"AppointmentResponseSSTopic", "AppointmentResponse", "AppointmentResponse"},
+            {"AuditEventSSTopic", "AuditEvent", "AuditEvent"},
+            {"BasicSSTopic", "Basic", "Basic"},
+            {"BinarySSTopic", "Binary", "Binary"},
+            {"BiologicallyDerivedProductSSTopic", "BiologicallyDerivedProduct", "BiologicalDerivedProduct"},
+            {"BodyStructureSSTopic", "BodyStructure", "BodyStructure"},
+            {"BundleSSTopic", "Bundle", "Bundle"},
+            {"CapabilityStatementSSTopic", "CapabilityStatement", "Bundle"},
+            {"CarePlanSSTopic", "CarePlan", "CarePlan"},
+            {"CareTeamSSTopic", "CareTeam", "CareTeam"},
+            {"CatalogEntrySSTopic", "CatalogEntry", "CatalogEntry"},
+            {"ChargeItemSSTopic", "ChargeItem", "ChargeItem"},
+            {"ChargeItemDefinitionSSTopic", "ChargeItemDefinition", "ChargeItemDefinition"},
+            {"ClaimSSTopic", "Claim", "Claim"},
+            {"ClaimResponseSSTopic", "ClaimResponse", "ClaimResponse"},
+            {"ClinicalImpressionSSTopic", "ClinicalImpression", "ClinicalImpression"},
+            {"CodeSystemSSTopic", "CodeSystem", "CodeSystem"},
+            {"CommunicationSSTopic", "Communication", "Communication"},
+            {"CommunicationRequestSSTopic", "CommunicationRequest", "CommunicationRequest"},
+            {"CompartmentDefinitionSSTopic", "CompartmentDefinition", "CompartmentDefinition"},
+            {"CompositionSSTopic", "Patient", "Composition"},
+            {"ConceptMapSSTopic", "ConceptMap", "ConceptMap"},
+            {"ConditionSSTopic", "Condition", "Condition"},
+            {"ConsentSSTopic", "Consent", "Consent"},
+            {"ContractSSTopic", "Contract", "Contract"},
+            {"CoverageSSTopic", "Coverage", "Coverage"},
+            {"CoverageEligibilityRequestSSTopic", "CoverageEligibilityRequest", "CoverageEligibilityRequest"},
+            {"CoverageEligibilityResponseSSTopic", "CoverageEligibilityResponse", "CoverageEligibilityResponse"},
+            {"DetectedIssueSSTopic", "DetectedIssue", "DetectedIssue"},
+            {"DeviceSSTopic", "Device", "Device"},
+            {"DeviceMetricSSTopic", "DeviceMetric", "DeviceMetric"},
+            {"DeviceRequestSSTopic", "DeviceRequest", "DeviceRequest"},
+            {"DeviceUseStatementSSTopic", "DeviceUseStatement", "DeviceUseStatement"},
+            {"DiagnosticReportSSTopic", "DiagnosticReport", "DiagnosticReport"},
+            {"DocumentManifestSSTopic", "DocumentManifest", "DocumentManifest"},
+            {"DocumentReferenceSSTopic", "DocumentReference", "DocumentReference"},
+            {"EncounterMetricSSTopic", "Encounter", "Encounter"},
+            {"EndpointSSTopic", "Endpoint", "Endpoint"},
+            {"EnrollmentRequestSSTopic", "EnrollmentRequest", "EnrollmentRequest"},
+            {"EnrollmentResponseSSTopic", "EnrollmentResponse", "EnrollmentResponse"},
+            {"EpisodeOfCareSSTopic", "EpisodeOfCare", "EpisodeOfCare"},
+            {"ExampleScenarioSSTopic", "ExampleScenario", "Bundle"},
+            {"ExplanationOfBenefitSSTopic", "ExplanationOfBenefit", "ExplanationOfBenefit"},
+            {"FamilyMemberHistorySSTopic", "FamilyMemberHistory", "FamilyMemberHistory"},
+            {"FlagSSTopic", "Flag", "Flag"},
+            {"GoalSSTopic", "Goal", "Goal"},
+            {"GraphDefinitionSSTopic", "GraphDefinition", "GraphDefinition"},
+            {"GroupSSTopic", "Group", "Group"},
+            {"GuidanceResponseSSTopic", "GuidanceResponse", "GuidanceResponse"},
+            {"HealthcareServiceSSTopic", "HealthcareService", "HealthcareService"},
+            {"ImagingStudySSTopic", "ImagingStudy", "ImagingStudy"},
+            {"ImmunizationSSTopic", "Immunization", "Immunization"},
+            {"ImmunizationEvaluationSSTopic", "ImmunizationEvaluation", "ImmunizationEvaluation"},
+            {"ImmunizationRecommendationSSTopic", "ImmunizationRecommendation", "ImmunizationRecommendation"},
+            {"ImplementationGuideSSTopic", "ImplementationGuide", "ImplementationGuide"},
+            {"InsurancePlanSSTopic", "InsurancePlan", "InsurancePlan"},
+            {"InvoiceSSTopic", "Invoice", "Invoice"},
+            {"LibrarySSTopic", "LibraryMetric", "Library"},
+            {"LinkageSSTopic", "Linkage", "Linkage"},
+            {"ListSSTopic", "List", "List"},
+            {"LocationSSTopic", "Location", "Location"},
+            {"MediaSSTopic", "Media", "Media"},
+            {"MedicationAdministrationSSTopic", "MedicationAdministration", "MedicationAdministration"},
+            {"MedicationDispenseSSTopic", "MedicationDispense", "MedicationDispense"},
+            {"MedicationKnowledgeSSTopic", "MedicationKnowledge", "MedicationKnowledge"},
+            {"MedicationRequestSSTopic", "MedicationRequest", "MedicationRequest"},
+            {"MedicationStatementSSTopic", "MedicationStatement", "MedicationStatement"},
+            {"MessageHeaderSSTopic", "MessageHeader", "MessageHeader"},
+            {"MolecularSequenceSSTopic", "MolecularSequence", "MolecularSequence"},
+            {"NamingSystemSSTopic", "NamingSystem", "NamingSystem"},
+            {"NutritionOrderSSTopic", "NutritionOrder", "NutritionOrder"},
+            {"ObservationSSTopic", "Observation", "Observation"},
+            {"OperationDefinitionSSTopic", "OperationDefinition", "OperationDefinition"},
+            {"OperationOutcomeSSTopic", "OperationOutcome", "OperationOutcome"},
+            {"OrganizationSSTopic", "Organization", "Organization"},
+            {"OrganizationAffiliationSSTopic", "OrganizationAffiliation", "OrganizationAffiliation"},
+            {"ParametersSSTopic", "Parameters", "Parameters"},
+            {"PatientSSTopic", "Patient", "Bundle"},
+            {"PaymentNoticeSSTopic", "PaymentNotice", "PaymentNotice"},
+            {"PaymentReconciliationSSTopic", "PaymentReconciliation", "PaymentReconciliation"},
+            {"PersonSSTopic", "Person", "Person"},
+            {"PractitionerSSTopic", "Patient", "PractitionerRole"},
+            {"PractitionerRoleSSTopic", "PractitionerRole", "PractitionerRole"},
+            {"ProcedureSSTopic", "Procedure", "Procedure"},
+            {"ProvenanceSSTopic", "Provenance", "Provenance"},
+            {"QuestionnaireResponseSSTopic", "QuestionnaireResponse", "QuestionnaireReponse"},
+            {"RelatedPersonSSTopic", "RelatedPerson", "RelatedPerson"},
+            {"RequestGroupSSTopic", "RequestGroup", "RequestGroup"},
+            {"RiskAssessmentSSTopic", "RiskAssessment", "RiskAssessment"},
+            {"ScheduleSSTopic", "Schedule", "Schedule"},
+            {"SearchParameterSSTopic", "SearchParameter", "SearchParameter"},
+            {"ServiceRequestSSTopic", "ServiceRequest", "ServiceRequest"},
+            {"SlotSSTopic", "Slot", "Slot"},
+            {"SpecimenSSTopic", "Specimen", "Specimen"},
+            {"StructureDefinitionSSTopic", "StructureDefinition", "StructureDefinition"},
+            {"StructureMapSSTopic", "StructureMap", "StructureMap"},
+            {"SubscriptionSSTopic", "Subscription", "Subscription"},
+            {"SubstanceSSTopic", "Substance", "Substance"},
+            {"SupplyDeliverySSTopic", "SupplyDelivery", "SupplyDelivery"},
+            {"SupplyRequestSSTopic", "SupplyRequest", "SupplyRequest"},
+            {"TaskSSTopic", "Task", "Task"},
+            {"TerminologyCapabilitiesSSTopic", "TerminologyCapabilities", "TerminologyCapabilities"},
+            {"ValueSetSSTopic", "ValueSet", "ValueSet"},
+            {"VerificationResultSSTopic", "VerificationResult", "VerificationResult"},
+            {"VisionPrescriptionSSTopic", "VisionPrescription", "VisionPrescription"}
+    };
+
+    @Test
+    public void stagedRoutesMatchTheReplacedStagingWUPs() {
+        LOG.debug(".stagedRoutesMatchTheReplacedStagingWUPs(): Entry");
+        List<String> expectedRoutes = new ArrayList<>();
+        for(String[] baselineRoute: BASELINE_ROUTES){
+            expectedRoutes.add(baselineRoute[1] + " --> " + baselineRoute[2]);
+        }
+        List<String> stagedRoutes = new ArrayList<>();
+        for(StateSpaceStagingResourceTypes.StagingRoute route: StateSpaceStagingResourceTypes.STAGED_ROUTES){
+            stagedRoutes.add(route.toString());
+        }
+        assertEquals(109, expectedRoutes.size());
+        Collections.sort(expectedRoutes);
+        Collections.sort(stagedRoutes);
+        assertEquals(expectedRoutes, stagedRoutes);
+    }
+
+    @Test
+    public void dispatchTableFansOutSharedIngresTopics() {
+        LOG.debug(".dispatchTableFansOutSharedIngresTopics(): Entry");
+        Map<String, List<String>> dispatchTable = StateSpaceStagingResourceTypes.egressResourceTypesByIngresResourceType();
+        assertEquals(107, dispatchTable.size());
+        List<String> patientEgressTypes = new ArrayList<>(dispatchTable.get("Patient"));
+        Collections.sort(patientEgressTypes);
+        assertEquals(Arrays.asList("Bundle", "Composition", "PractitionerRole"), patientEgressTypes);
+        assertEquals(Collections.singletonList("Library"), dispatchTable.get("LibraryMetric"));
+        assertEquals(Collections.singletonList("BiologicalDerivedProduct"), dispatchTable.get("BiologicallyDerivedProduct"));
+        assertEquals(Collections.singletonList("QuestionnaireReponse"), dispatchTable.get("QuestionnaireResponse"));
+        assertEquals(Collections.singletonList("Bundle"), dispatchTable.get("CapabilityStatement"));
+        int routeCount = 0;
+        for(List<String> egressTypes: dispatchTable.values()){
+            routeCount += egressTypes.size();
+        }
+        assertEquals(BASELINE_ROUTES.length, routeCount);
+    }
+}
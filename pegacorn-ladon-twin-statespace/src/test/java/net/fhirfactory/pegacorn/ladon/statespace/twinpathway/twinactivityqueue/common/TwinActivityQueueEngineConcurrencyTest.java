@@ -0,0 +1,245 @@
+package net.fhirfactory.pegacorn.ladon.statespace.twinpathway.twinactivityqueue.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import net.fhirfactory.pegacorn.ladon.model.twin.DigitalTwinIdentifier;
+import net.fhirfactory.pegacorn.ladon.statespace.stimuli.model.StimulusPackage;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Concurrency tests in the style of jcstress: each test races a small number of actors against a fresh engine many
+ * times over, records the outcome of each race (as a string), and then checks that only acceptable outcomes were
+ * observed. The last test is a longer soak with several producers and a concurrent consumer.
+ */
+public class TwinActivityQueueEngineConcurrencyTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TwinActivityQueueEngineConcurrencyTest.class);
+
+    private static final int RACE_ITERATIONS = 2000;
+    private static final int SOAK_PRODUCERS = 4;
+    private static final int SOAK_TWINS = 8;
+    private static final int SOAK_STIMULI_PER_PRODUCER = 20000;
+
+    private ExecutorService actorPool;
+
+    @Before
+    public void createActorPool() {
+        actorPool = Executors.newFixedThreadPool(SOAK_PRODUCERS + 1);
+    }
+
+    @After
+    public void shutdownActorPool() {
+        actorPool.shutdownNow();
+    }
+
+    @Test
+    public void racingDuplicateOffersQueueExactlyOneStimulus() throws Exception {
+        LOG.debug(".racingDuplicateOffersQueueExactlyOneStimulus(): Entry");
+        Map<String, Integer> outcomes = race(RACE_ITERATIONS, () -> {
+            TwinActivityQueueEngine engine = new TwinActivityQueueEngine(4, 16);
+            List<Callable<String>> actors = new ArrayList<>();
+            // The same stimulus, directed at the same twin and at a different twin
+            actors.add(() -> Boolean.toString(engine.offer(TwinActivityQueueEngineTest.buildTwin(1), TwinActivityQueueEngineTest.buildStimulus("S"))));
+            actors.add(() -> Boolean.toString(engine.offer(TwinActivityQueueEngineTest.buildTwin(1), TwinActivityQueueEngineTest.buildStimulus("S"))));
+            actors.add(() -> Boolean.toString(engine.offer(TwinActivityQueueEngineTest.buildTwin(2), TwinActivityQueueEngineTest.buildStimulus("S"))));
+            return(new Race(actors, results -> results + ", depth=" + engine.getDepth()));
+        });
+        for(String outcome: outcomes.keySet()){
+            assertEquals("Unacceptable outcome " + outcome, 1, countOccurrences(outcome, "true"));
+            assertTrue("Unacceptable outcome " + outcome, outcome.endsWith("depth=1"));
+        }
+    }
+
+    @Test
+    public void racingFirstOffersCreateASingleTwinQueue() throws Exception {
+        LOG.debug(".racingFirstOffersCreateASingleTwinQueue(): Entry");
+        Map<String, Integer> outcomes = race(RACE_ITERATIONS, () -> {
+            TwinActivityQueueEngine engine = new TwinActivityQueueEngine(4, 16);
+            List<Callable<String>> actors = new ArrayList<>();
+            for(int actor = 0; actor < 4; actor++){
+                String stimulusId = "S" + actor;
+                actors.add(() -> Boolean.toString(engine.offer(TwinActivityQueueEngineTest.buildTwin(1), TwinActivityQueueEngineTest.buildStimulus(stimulusId))));
+            }
+            return(new Race(actors, results -> "twins=" + engine.getActiveTwinCount() + ", depth=" + engine.getDepth(TwinActivityQueueEngineTest.buildTwin(1))
+                    + ", drained=" + drain(engine, TwinActivityQueueEngineTest.buildTwin(1)).size()));
+        });
+        assertEquals(1, outcomes.size());
+        assertTrue(outcomes.containsKey("twins=1, depth=4, drained=4"));
+    }
+
+    @Test
+    public void offerRacingTheRetirementOfAnEmptiedQueueIsNeverLost() throws Exception {
+        LOG.debug(".offerRacingTheRetirementOfAnEmptiedQueueIsNeverLost(): Entry");
+        Map<String, Integer> outcomes = race(RACE_ITERATIONS, () -> {
+            TwinActivityQueueEngine engine = new TwinActivityQueueEngine(4, 16);
+            DigitalTwinIdentifier twin = TwinActivityQueueEngineTest.buildTwin(1);
+            engine.offer(twin, TwinActivityQueueEngineTest.buildStimulus("first"));
+            List<Callable<String>> actors = new ArrayList<>();
+            // The poll empties (and so retires) the queue, while the offer races to add to it
+            actors.add(() -> {
+                StimulusPackage polled = engine.poll(twin);
+                return((polled == null) ? "null" : polled.getId().getId());
+            });
+            actors.add(() -> Boolean.toString(engine.offer(twin, TwinActivityQueueEngineTest.buildStimulus("second"))));
+            return(new Race(actors, results -> results + ", remaining=" + drain(engine, twin)));
+        });
+        for(String outcome: outcomes.keySet()){
+            assertTrue("Unacceptable outcome " + outcome, outcome.equals("first, true, remaining=[second]"));
+        }
+    }
+
+    @Test
+    public void producersAndAConsumerSoakWithoutLossDuplicationOrReordering() throws Exception {
+        LOG.debug(".producersAndAConsumerSoakWithoutLossDuplicationOrReordering(): Entry");
+        TwinActivityQueueEngine engine = new TwinActivityQueueEngine(4, 64);
+        int totalStimuli = SOAK_PRODUCERS * SOAK_STIMULI_PER_PRODUCER;
+        CyclicBarrier startBarrier = new CyclicBarrier(SOAK_PRODUCERS + 1);
+        List<Future<Integer>> producers = new ArrayList<>();
+        for(int producer = 0; producer < SOAK_PRODUCERS; producer++){
+            int producerNumber = producer;
+            producers.add(actorPool.submit(() -> {
+                startBarrier.await();
+                int refusals = 0;
+                for(int sequence = 0; sequence < SOAK_STIMULI_PER_PRODUCER; sequence++){
+                    DigitalTwinIdentifier twin = TwinActivityQueueEngineTest.buildTwin(sequence % SOAK_TWINS);
+                    StimulusPackage stimulus = TwinActivityQueueEngineTest.buildStimulus(producerNumber + ":" + sequence);
+                    // A full queue is back-pressure: retry until the consumer catches up
+                    while(!engine.offer(twin, stimulus)){
+                        refusals += 1;
+                        Thread.yield();
+                    }
+                }
+                return(refusals);
+            }));
+        }
+        Future<List<String>> consumer = actorPool.submit(() -> {
+            startBarrier.await();
+            List<String> received = new ArrayList<>(totalStimuli);
+            long deadline = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(2);
+            while(received.size() < totalStimuli && System.currentTimeMillis() < deadline){
+                for(int twinNumber = 0; twinNumber < SOAK_TWINS; twinNumber++){
+                    StimulusPackage stimulus = engine.poll(TwinActivityQueueEngineTest.buildTwin(twinNumber));
+                    if(stimulus != null){
+                        received.add(stimulus.getId().getId());
+                    }
+                }
+            }
+            return(received);
+        });
+        int totalRefusals = 0;
+        for(Future<Integer> producer: producers){
+            totalRefusals += producer.get(2, TimeUnit.MINUTES);
+        }
+        List<String> received = consumer.get(2, TimeUnit.MINUTES);
+
+        assertEquals(totalStimuli, received.size());
+        assertEquals(totalStimuli, new HashSet<>(received).size());
+        // Each twin queue is FIFO, so a producer's stimuli for any one twin must arrive in the order they were offered
+        int[][] lastSequence = new int[SOAK_PRODUCERS][SOAK_TWINS];
+        for(int[] producerSequences: lastSequence){
+            Arrays.fill(producerSequences, -1);
+        }
+        for(String stimulusId: received){
+            String[] parts = stimulusId.split(":");
+            int producer = Integer.parseInt(parts[0]);
+            int sequence = Integer.parseInt(parts[1]);
+            int twinNumber = sequence % SOAK_TWINS;
+            assertTrue(stimulusId + " arrived after " + lastSequence[producer][twinNumber], sequence > lastSequence[producer][twinNumber]);
+            lastSequence[producer][twinNumber] = sequence;
+        }
+        TwinActivityQueueStatistics statistics = engine.getStatistics();
+        assertEquals(totalStimuli, statistics.getEnqueuedCount());
+        assertEquals(totalStimuli, statistics.getDequeuedCount());
+        assertEquals(totalRefusals, statistics.getRejectedCount());
+        assertEquals(0, statistics.getDepth());
+        assertEquals(0, statistics.getDuplicateCount());
+        for(int twinNumber = 0; twinNumber < SOAK_TWINS; twinNumber++){
+            assertNull(engine.poll(TwinActivityQueueEngineTest.buildTwin(twinNumber)));
+        }
+        assertEquals(0, engine.getActiveTwinCount());
+        assertFalse(engine.isQueued(TwinActivityQueueEngineTest.buildStimulus("0:0").getId()));
+    }
+
+    //
+    // Race harness
+    //
+
+    /**
+     * The actors of a single race, and the arbiter that (once they have all finished) turns their results into the
+     * observed outcome.
+     */
+    private static class Race {
+        private final List<Callable<String>> actors;
+        private final Function<String, String> arbiter;
+
+        Race(List<Callable<String>> actors, Function<String, String> arbiter){
+            this.actors = actors;
+            this.arbiter = arbiter;
+        }
+    }
+
+    private Map<String, Integer> race(int iterations, Callable<Race> raceFactory) throws Exception {
+        Map<String, Integer> outcomes = new TreeMap<>();
+        for(int iteration = 0; iteration < iterations; iteration++){
+            Race race = raceFactory.call();
+            CyclicBarrier startBarrier = new CyclicBarrier(race.actors.size());
+            List<Future<String>> actorResults = new ArrayList<>();
+            for(Callable<String> actor: race.actors){
+                actorResults.add(actorPool.submit(() -> {
+                    startBarrier.await();
+                    return(actor.call());
+                }));
+            }
+            StringBuilder results = new StringBuilder();
+            for(Future<String> actorResult: actorResults){
+                if(results.length() > 0){
+                    results.append(", ");
+                }
+                results.append(actorResult.get(10, TimeUnit.SECONDS));
+            }
+            outcomes.merge(race.arbiter.apply(results.toString()), 1, Integer::sum);
+        }
+        LOG.debug(".race(): outcomes --> {}", outcomes);
+        return(outcomes);
+    }
+
+    private static List<String> drain(TwinActivityQueueEngine engine, DigitalTwinIdentifier twin){
+        List<String> drained = new ArrayList<>();
+        StimulusPackage stimulus;
+        while((stimulus = engine.poll(twin)) != null){
+            drained.add(stimulus.getId().getId());
+        }
+        return(drained);
+    }
+
+    private static int countOccurrences(String text, String token){
+        int count = 0;
+        int position = text.indexOf(token);
+        while(position >= 0){
+            count += 1;
+            position = text.indexOf(token, position + token.length());
+        }
+        return(count);
+    }
+}
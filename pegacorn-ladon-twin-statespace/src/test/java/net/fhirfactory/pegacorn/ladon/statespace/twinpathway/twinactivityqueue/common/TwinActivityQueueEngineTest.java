@@ -0,0 +1,115 @@
+package net.fhirfactory.pegacorn.ladon.statespace.twinpathway.twinactivityqueue.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import net.fhirfactory.pegacorn.ladon.model.twin.DigitalTwinIdentifier;
+import net.fhirfactory.pegacorn.ladon.statespace.stimuli.model.StimulusPackage;
+import net.fhirfactory.pegacorn.ladon.statespace.stimuli.model.StimulusPackageIdentifier;
+import org.hl7.fhir.r4.model.IdType;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class TwinActivityQueueEngineTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TwinActivityQueueEngineTest.class);
+
+    @Test
+    public void stimuliAreDeliveredInOrderPerTwin() {
+        LOG.debug(".stimuliAreDeliveredInOrderPerTwin(): Entry");
+        TwinActivityQueueEngine engine = new TwinActivityQueueEngine(4, 16);
+        for(int sequence = 0; sequence < 10; sequence++){
+            assertTrue(engine.offer(buildTwin(1), buildStimulus("1-" + sequence)));
+            assertTrue(engine.offer(buildTwin(2), buildStimulus("2-" + sequence)));
+        }
+        assertEquals(10, engine.getDepth(buildTwin(1)));
+        assertEquals(20, engine.getDepth());
+        assertEquals(2, engine.getActiveTwinCount());
+        for(int sequence = 0; sequence < 10; sequence++){
+            assertEquals("1-" + sequence, engine.poll(buildTwin(1)).getId().getId());
+        }
+        assertNull(engine.poll(buildTwin(1)));
+        // An emptied twin queue is retired, and the twin is no longer active
+        assertEquals(1, engine.getActiveTwinCount());
+        assertEquals("2-0", engine.poll(buildTwin(2)).getId().getId());
+    }
+
+    @Test
+    public void queuedDuplicatesAreRefused() {
+        LOG.debug(".queuedDuplicatesAreRefused(): Entry");
+        TwinActivityQueueEngine engine = new TwinActivityQueueEngine(4, 16);
+        assertTrue(engine.offer(buildTwin(1), buildStimulus("A")));
+        assertFalse(engine.offer(buildTwin(1), buildStimulus("A")));
+        assertFalse(engine.offer(buildTwin(2), buildStimulus("A")));
+        assertTrue(engine.isQueued(new StimulusPackageIdentifier("A")));
+        assertEquals(2, engine.getStatistics().getDuplicateCount());
+        // Once dequeued, the same stimulus may be queued again
+        assertEquals("A", engine.poll(buildTwin(1)).getId().getId());
+        assertFalse(engine.isQueued(new StimulusPackageIdentifier("A")));
+        assertTrue(engine.offer(buildTwin(1), buildStimulus("A")));
+    }
+
+    @Test
+    public void fullTwinQueueRefusesWithoutBlocking() {
+        LOG.debug(".fullTwinQueueRefusesWithoutBlocking(): Entry");
+        TwinActivityQueueEngine engine = new TwinActivityQueueEngine(1, 3);
+        assertTrue(engine.offer(buildTwin(1), buildStimulus("A")));
+        assertTrue(engine.offer(buildTwin(1), buildStimulus("B")));
+        assertTrue(engine.offer(buildTwin(1), buildStimulus("C")));
+        assertFalse(engine.offer(buildTwin(1), buildStimulus("D")));
+        assertEquals(1, engine.getStatistics().getRejectedCount());
+        // The refused stimulus is not left in the duplicate set, and other twins are unaffected
+        assertFalse(engine.isQueued(new StimulusPackageIdentifier("D")));
+        assertTrue(engine.offer(buildTwin(2), buildStimulus("D")));
+        engine.poll(buildTwin(1));
+        assertTrue(engine.offer(buildTwin(1), buildStimulus("E")));
+    }
+
+    @Test
+    public void equalTwinIdentifiersShareAQueue() {
+        LOG.debug(".equalTwinIdentifiersShareAQueue(): Entry");
+        TwinActivityQueueEngine engine = new TwinActivityQueueEngine(8, 16);
+        engine.offer(new DigitalTwinIdentifier(new IdType("Patient/7"), new IdType("Person/7")), buildStimulus("A"));
+        engine.offer(new DigitalTwinIdentifier(new IdType("Patient/7"), new IdType("Person/7")), buildStimulus("B"));
+        assertEquals(1, engine.getActiveTwinCount());
+        assertEquals(2, engine.getDepth(new DigitalTwinIdentifier(new IdType("Patient/7"), new IdType("Person/7"))));
+    }
+
+    @Test
+    public void countersTrackDepthWaitAndThroughput() throws Exception {
+        LOG.debug(".countersTrackDepthWaitAndThroughput(): Entry");
+        TwinActivityQueueEngine engine = new TwinActivityQueueEngine(4, 16);
+        TwinActivityQueueStatistics before = engine.getStatistics();
+        engine.offer(buildTwin(1), buildStimulus("A"));
+        engine.offer(buildTwin(1), buildStimulus("B"));
+        Thread.sleep(20);
+        assertTrue(engine.getOldestStimulusAgeInMillis(buildTwin(1)) >= 20);
+        engine.poll(buildTwin(1));
+        Thread.sleep(5);
+        TwinActivityQueueStatistics after = engine.getStatistics();
+        assertEquals(2, after.getEnqueuedCount());
+        assertEquals(1, after.getDequeuedCount());
+        assertEquals(1, after.getDepth());
+        assertTrue(after.getMaximumWaitInMillis() >= 20);
+        assertTrue(after.getMeanWaitInMillis() >= 20);
+        assertTrue(after.getDequeueRatePerSecondSince(before) > 0);
+        assertEquals(0, engine.getOldestStimulusAgeInMillis(buildTwin(2)));
+    }
+
+    //
+    // Helpers
+    //
+
+    static DigitalTwinIdentifier buildTwin(int twinNumber){
+        return(new DigitalTwinIdentifier(new IdType("Patient/" + twinNumber), new IdType("Person/" + twinNumber)));
+    }
+
+    static StimulusPackage buildStimulus(String stimulusId){
+        StimulusPackage stimulus = new StimulusPackage();
+        stimulus.setId(new StimulusPackageIdentifier(stimulusId));
+        return(stimulus);
+    }
+}
@@ -0,0 +1,82 @@
+package net.fhirfactory.pegacorn.ladon.statespace.twinpathway.twinorchestrator.common;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import net.fhirfactory.pegacorn.ladon.model.twin.DigitalTwinIdentifier;
+import net.fhirfactory.pegacorn.ladon.statespace.twinpathway.twinactivityqueue.common.TwinInstanceActivityQueue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Throughput benchmark for TwinOrchestrationScheduler: several producer threads queue and signal stimuli across
+ * 100,000 synthetic twins, and the time to process them all (plus the starvation figures) is reported. The stimulus
+ * processor does a small amount of CPU work per stimulus.
+ *
+ * Run with: mvn -pl pegacorn-ladon-twin-statespace test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=net.fhirfactory.pegacorn.ladon.statespace.twinpathway.twinorchestrator.common.TwinOrchestrationSchedulerBenchmark
+ */
+public class TwinOrchestrationSchedulerBenchmark {
+    private static final Logger LOG = LoggerFactory.getLogger(TwinOrchestrationSchedulerBenchmark.class);
+
+    private static final int TWIN_COUNT = 100000;
+    private static final int STIMULI_PER_TWIN = 5;
+    private static final int PRODUCER_COUNT = 4;
+    private static final int WORK_ITERATIONS_PER_STIMULUS = 200;
+
+    public static void main(String[] args) throws Exception {
+        int workerCount = Runtime.getRuntime().availableProcessors();
+        DigitalTwinIdentifier[] twins = new DigitalTwinIdentifier[TWIN_COUNT];
+        for(int twinNumber = 0; twinNumber < TWIN_COUNT; twinNumber++){
+            twins[twinNumber] = TwinOrchestrationSchedulerTest.buildTwin(twinNumber);
+        }
+        for(int quantum: new int[]{1, TwinOrchestrationScheduler.DEFAULT_RUN_QUANTUM}){
+            // The first pass warms up the JIT
+            runOnce(twins, workerCount, quantum);
+            runOnce(twins, workerCount, quantum);
+        }
+    }
+
+    private static void runOnce(DigitalTwinIdentifier[] twins, int workerCount, int quantum) throws Exception {
+        TwinInstanceActivityQueue activityQueue = new TwinOrchestrationSchedulerTest.TestActivityQueue();
+        LongAdder workResult = new LongAdder();
+        TwinOrchestrationScheduler scheduler = new TwinOrchestrationScheduler(activityQueue, (twin, stimulus) -> {
+            long hash = stimulus.getId().getId().hashCode();
+            for(int iteration = 0; iteration < WORK_ITERATIONS_PER_STIMULUS; iteration++){
+                hash = hash * 31 + iteration;
+            }
+            workResult.add(hash & 1);
+        }, workerCount, quantum, TwinOrchestrationScheduler.DEFAULT_STARVATION_THRESHOLD_IN_MILLIS, "BenchmarkOrchestrator");
+
+        long startTime = System.nanoTime();
+        Thread[] producers = new Thread[PRODUCER_COUNT];
+        for(int producer = 0; producer < PRODUCER_COUNT; producer++){
+            int producerNumber = producer;
+            producers[producer] = new Thread(() -> {
+                for(int sequence = 0; sequence < STIMULI_PER_TWIN; sequence++){
+                    for(int twinNumber = producerNumber; twinNumber < twins.length; twinNumber += PRODUCER_COUNT){
+                        activityQueue.addStimulus2Queue(twins[twinNumber], TwinOrchestrationSchedulerTest.buildStimulus(twinNumber + ":" + sequence));
+                        scheduler.signal(twins[twinNumber]);
+                    }
+                }
+            });
+            producers[producer].start();
+        }
+        for(Thread producer: producers){
+            producer.join();
+        }
+        if(!scheduler.awaitIdle(5, TimeUnit.MINUTES)){
+            LOG.warn(".runOnce(): Scheduler did not go idle");
+        }
+        long elapsedInMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+        TwinSchedulerStatistics statistics = scheduler.getStatistics();
+        scheduler.shutdown();
+        scheduler.awaitTermination(10, TimeUnit.SECONDS);
+
+        System.out.println(String.format("twins=%d, stimuli=%d, workers=%d, quantum=%d: %dms, %.0f stimuli/s, %d runs (%d stolen), mean ready wait %.3fms, max %.3fms, starved runs %d",
+                twins.length, statistics.getProcessedCount(), workerCount, quantum, elapsedInMillis,
+                statistics.getProcessedCount() * 1000.0 / Math.max(1, elapsedInMillis), statistics.getRunCount(),
+                statistics.getStolenRunCount(), statistics.getMeanReadyWaitInMillis(), statistics.getMaximumReadyWaitInMillis(),
+                statistics.getStarvedRunCount()));
+    }
+}
@@ -0,0 +1,227 @@
+package net.fhirfactory.pegacorn.ladon.statespace.twinpathway.twinorchestrator.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.fhirfactory.pegacorn.ladon.model.twin.DigitalTwinIdentifier;
+import net.fhirfactory.pegacorn.ladon.statespace.stimuli.model.StimulusPackage;
+import net.fhirfactory.pegacorn.ladon.statespace.stimuli.model.StimulusPackageIdentifier;
+import net.fhirfactory.pegacorn.ladon.statespace.twinpathway.twinactivityqueue.common.TwinInstanceActivityQueue;
+import org.hl7.fhir.r4.model.IdType;
+import org.junit.After;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class TwinOrchestrationSchedulerTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TwinOrchestrationSchedulerTest.class);
+
+    private TwinOrchestrationScheduler scheduler;
+
+    @After
+    public void shutdownScheduler() throws Exception {
+        if(scheduler != null){
+            scheduler.shutdown();
+            assertTrue(scheduler.awaitTermination(10, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void twinsRunOnOneWorkerAtATimeAndInQueueOrder() throws Exception {
+        LOG.debug(".twinsRunOnOneWorkerAtATimeAndInQueueOrder(): Entry");
+        int twinCount = 50;
+        int stimuliPerTwin = 200;
+        TwinInstanceActivityQueue activityQueue = new TestActivityQueue();
+        Map<DigitalTwinIdentifier, AtomicInteger> inFlight = new ConcurrentHashMap<>();
+        Map<DigitalTwinIdentifier, List<Integer>> processedSequences = new ConcurrentHashMap<>();
+        AtomicInteger overlaps = new AtomicInteger(0);
+        scheduler = new TwinOrchestrationScheduler(activityQueue, (twin, stimulus) -> {
+            AtomicInteger twinInFlight = inFlight.computeIfAbsent(twin, key -> new AtomicInteger(0));
+            if(twinInFlight.incrementAndGet() != 1){
+                overlaps.incrementAndGet();
+            }
+            processedSequences.computeIfAbsent(twin, key -> Collections.synchronizedList(new ArrayList<>())).add(sequenceOf(stimulus));
+            Thread.yield();
+            twinInFlight.decrementAndGet();
+        }, 4, 8, TwinOrchestrationScheduler.DEFAULT_STARVATION_THRESHOLD_IN_MILLIS, "TestOrchestrator");
+
+        // Interleave the twins, signalling after every stimulus so that twins are re-signalled while running
+        for(int sequence = 0; sequence < stimuliPerTwin; sequence++){
+            for(int twinNumber = 0; twinNumber < twinCount; twinNumber++){
+                DigitalTwinIdentifier twin = buildTwin(twinNumber);
+                assertTrue(activityQueue.addStimulus2Queue(twin, buildStimulus(twinNumber + ":" + sequence)));
+                scheduler.signal(twin);
+            }
+        }
+        assertTrue(scheduler.awaitIdle(30, TimeUnit.SECONDS));
+
+        assertEquals(0, overlaps.get());
+        assertEquals(twinCount, processedSequences.size());
+        for(List<Integer> sequences: processedSequences.values()){
+            assertEquals(stimuliPerTwin, sequences.size());
+            for(int sequence = 0; sequence < stimuliPerTwin; sequence++){
+                assertEquals(sequence, (int)sequences.get(sequence));
+            }
+        }
+        TwinSchedulerStatistics statistics = scheduler.getStatistics();
+        assertEquals((long)twinCount * stimuliPerTwin, statistics.getProcessedCount());
+        assertEquals(0, statistics.getScheduledTwinCount());
+        assertFalse(scheduler.isScheduled(buildTwin(0)));
+    }
+
+    @Test
+    public void busyTwinYieldsTheWorkerAfterItsRunQuantum() throws Exception {
+        LOG.debug(".busyTwinYieldsTheWorkerAfterItsRunQuantum(): Entry");
+        TwinInstanceActivityQueue activityQueue = new TestActivityQueue();
+        List<String> processingOrder = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch releaseWorker = new CountDownLatch(1);
+        scheduler = new TwinOrchestrationScheduler(activityQueue, (twin, stimulus) -> {
+            awaitQuietly(releaseWorker);
+            processingOrder.add(stimulus.getId().getId());
+        }, 1, 4, TwinOrchestrationScheduler.DEFAULT_STARVATION_THRESHOLD_IN_MILLIS, "TestOrchestrator");
+
+        for(int sequence = 0; sequence < 40; sequence++){
+            activityQueue.addStimulus2Queue(buildTwin(1), buildStimulus("busy:" + sequence));
+        }
+        scheduler.signal(buildTwin(1));
+        activityQueue.addStimulus2Queue(buildTwin(2), buildStimulus("quiet:0"));
+        scheduler.signal(buildTwin(2));
+        releaseWorker.countDown();
+        assertTrue(scheduler.awaitIdle(10, TimeUnit.SECONDS));
+
+        assertEquals(41, processingOrder.size());
+        // The quiet twin only has to wait for one quantum of the busy twin, not for all of it
+        assertTrue("quiet twin ran at position " + processingOrder.indexOf("quiet:0"), processingOrder.indexOf("quiet:0") <= 4);
+        TwinSchedulerStatistics statistics = scheduler.getStatistics();
+        assertEquals(9, statistics.getPreemptedCount());
+        assertEquals(11, statistics.getRunCount());
+    }
+
+    @Test
+    public void idleWorkersStealFromABusyWorker() throws Exception {
+        LOG.debug(".idleWorkersStealFromABusyWorker(): Entry");
+        TwinInstanceActivityQueue activityQueue = new TestActivityQueue();
+        Map<String, Boolean> workerThreads = new ConcurrentHashMap<>();
+        AtomicInteger stolenTwinsProcessed = new AtomicInteger(0);
+        TwinOrchestrationScheduler[] schedulerHolder = new TwinOrchestrationScheduler[1];
+        scheduler = new TwinOrchestrationScheduler(activityQueue, (twin, stimulus) -> {
+            if(twin.equals(buildTwin(0))){
+                // Twins signalled from within a run land on the running worker's own ready deque
+                for(int twinNumber = 1; twinNumber <= 16; twinNumber++){
+                    schedulerHolder[0].signal(buildTwin(twinNumber));
+                }
+                return;
+            }
+            workerThreads.put(Thread.currentThread().getName(), Boolean.TRUE);
+            stolenTwinsProcessed.incrementAndGet();
+            sleepQuietly(5);
+        }, 4, 1, TwinOrchestrationScheduler.DEFAULT_STARVATION_THRESHOLD_IN_MILLIS, "TestOrchestrator");
+        schedulerHolder[0] = scheduler;
+
+        for(int twinNumber = 1; twinNumber <= 16; twinNumber++){
+            activityQueue.addStimulus2Queue(buildTwin(twinNumber), buildStimulus("S" + twinNumber));
+        }
+        activityQueue.addStimulus2Queue(buildTwin(0), buildStimulus("seed"));
+        scheduler.signal(buildTwin(0));
+        assertTrue(scheduler.awaitIdle(10, TimeUnit.SECONDS));
+
+        assertEquals(16, stolenTwinsProcessed.get());
+        assertTrue("only " + workerThreads.keySet() + " ran twins", workerThreads.size() > 1);
+        assertTrue(scheduler.getStatistics().getStolenRunCount() > 0);
+    }
+
+    @Test
+    public void starvationIsMeasuredAgainstTheThreshold() throws Exception {
+        LOG.debug(".starvationIsMeasuredAgainstTheThreshold(): Entry");
+        TwinInstanceActivityQueue activityQueue = new TestActivityQueue();
+        scheduler = new TwinOrchestrationScheduler(activityQueue, (twin, stimulus) -> sleepQuietly(30), 1, 1, 20, "TestOrchestrator");
+
+        for(int twinNumber = 0; twinNumber < 4; twinNumber++){
+            activityQueue.addStimulus2Queue(buildTwin(twinNumber), buildStimulus("S" + twinNumber));
+            scheduler.signal(buildTwin(twinNumber));
+        }
+        assertTrue(scheduler.awaitIdle(10, TimeUnit.SECONDS));
+
+        TwinSchedulerStatistics statistics = scheduler.getStatistics();
+        assertEquals(4, statistics.getRunCount());
+        // With one worker, each twin after the first waits for the 30ms runs ahead of it
+        assertEquals(3, statistics.getStarvedRunCount());
+        assertTrue(statistics.getMaximumReadyWaitInMillis() >= 60);
+    }
+
+    @Test
+    public void failingStimulusDoesNotStallTheTwin() throws Exception {
+        LOG.debug(".failingStimulusDoesNotStallTheTwin(): Entry");
+        TwinInstanceActivityQueue activityQueue = new TestActivityQueue();
+        List<String> processed = Collections.synchronizedList(new ArrayList<>());
+        scheduler = new TwinOrchestrationScheduler(activityQueue, (twin, stimulus) -> {
+            if(stimulus.getId().getId().equals("bad")){
+                throw(new IllegalStateException("Test failure"));
+            }
+            processed.add(stimulus.getId().getId());
+        }, 2, 4, TwinOrchestrationScheduler.DEFAULT_STARVATION_THRESHOLD_IN_MILLIS, "TestOrchestrator");
+
+        activityQueue.addStimulus2Queue(buildTwin(1), buildStimulus("good"));
+        activityQueue.addStimulus2Queue(buildTwin(1), buildStimulus("bad"));
+        activityQueue.addStimulus2Queue(buildTwin(1), buildStimulus("better"));
+        scheduler.signal(buildTwin(1));
+        assertTrue(scheduler.awaitIdle(10, TimeUnit.SECONDS));
+
+        assertEquals(2, processed.size());
+        assertEquals("better", processed.get(1));
+        assertEquals(1, scheduler.getStatistics().getFailedCount());
+    }
+
+    //
+    // Helpers
+    //
+
+    static class TestActivityQueue extends TwinInstanceActivityQueue {
+        @Override
+        protected int specifyTwinQueueCapacity() {
+            return(4096);
+        }
+    }
+
+    static DigitalTwinIdentifier buildTwin(int twinNumber){
+        return(new DigitalTwinIdentifier(new IdType("Patient/" + twinNumber), new IdType("Person/" + twinNumber)));
+    }
+
+    static StimulusPackage buildStimulus(String stimulusId){
+        StimulusPackage stimulus = new StimulusPackage();
+        stimulus.setId(new StimulusPackageIdentifier(stimulusId));
+        return(stimulus);
+    }
+
+    private static int sequenceOf(StimulusPackage stimulus){
+        String stimulusId = stimulus.getId().getId();
+        return(Integer.parseInt(stimulusId.substring(stimulusId.indexOf(':') + 1)));
+    }
+
+    private static void awaitQuietly(CountDownLatch latch){
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch(InterruptedException ex){
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleepQuietly(long millis){
+        try {
+            Thread.sleep(millis);
+        } catch(InterruptedException ex){
+            Thread.currentThread().interrupt();
+        }
+    }
+}